@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk;
+
+import mjson.Json;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH result files written with {@code -rf json}, and reports the change in score, and in allocation
+ * per operation when the results were produced with {@code -prof gc}, for every benchmark and parameter combination.
+ * A change larger than the threshold in the slower (or more allocating) direction is reported as a regression.
+ *
+ * Usage: {@code BenchmarkComparison <baseline.json> <results.json> <threshold percent> <report file> <fail on regression>}
+ */
+public final class BenchmarkComparison {
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+    // allocation per operation is measured in bytes and is not exact, so ignore changes of less than this
+    private static final double ALLOCATION_TOLERANCE = 1.0;
+
+    private BenchmarkComparison() {}
+
+    static final class Result {
+        final String mode;
+        final double score;
+        final String unit;
+        final Double allocation;
+
+        Result(final Json json) {
+            final Json primary = json.at("primaryMetric");
+            mode = json.at("mode").asString();
+            score = primary.at("score").asDouble();
+            unit = primary.at("scoreUnit").asString();
+            Double alloc = null;
+            if (json.has("secondaryMetrics")) {
+                for (final Map.Entry<String, Json> metric : json.at("secondaryMetrics").asJsonMap().entrySet()) {
+                    if (metric.getKey().endsWith(ALLOCATION_METRIC)) {
+                        alloc = metric.getValue().at("score").asDouble();
+                    }
+                }
+            }
+            allocation = alloc;
+        }
+
+        /** @return true if a higher score is better, as for throughput */
+        boolean higherIsBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 5) {
+            System.err.println("Usage: BenchmarkComparison <baseline.json> <results.json> <threshold percent> <report file> <fail on regression>");
+            System.exit(2);
+        }
+        final Map<String, Result> baseline = readResults(Paths.get(args[0]));
+        final Map<String, Result> current = readResults(Paths.get(args[1]));
+        final double threshold = Double.parseDouble(args[2]) / 100.0;
+        final Path reportPath = Paths.get(args[3]);
+        final boolean failOnRegression = Boolean.parseBoolean(args[4]);
+
+        if (reportPath.getParent() != null) {
+            Files.createDirectories(reportPath.getParent());
+        }
+        final int regressions;
+        try (final PrintStream report = new PrintStream(Files.newOutputStream(reportPath), true, StandardCharsets.UTF_8.name())) {
+            regressions = compare(baseline, current, threshold, new TeePrintStream(report, System.out));
+        }
+        System.out.println("Comparison written to " + reportPath);
+        if (regressions > 0 && failOnRegression) {
+            System.err.println(regressions + " benchmark(s) regressed by more than " + args[2] + "%");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Write the comparison of each benchmark in {@code current} with the same benchmark in {@code baseline}.
+     * @return the number of regressions
+     */
+    static int compare(final Map<String, Result> baseline, final Map<String, Result> current, final double threshold, final PrintStream out) {
+        int regressions = 0;
+        out.println(String.format("%-90s %14s %14s %9s  %s", "Benchmark", "Baseline", "Current", "Change", "Unit"));
+        for (final Map.Entry<String, Result> entry : current.entrySet()) {
+            final Result now = entry.getValue();
+            final Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                out.println(String.format("%-90s %14s %14.3f %9s  %s", entry.getKey(), "-", now.score, "new", now.unit));
+                continue;
+            }
+            final double change = (now.score - before.score) / before.score;
+            final boolean regressed = now.higherIsBetter() ? change < -threshold : change > threshold;
+            final boolean improved = now.higherIsBetter() ? change > threshold : change < -threshold;
+            out.println(String.format("%-90s %14.3f %14.3f %+8.1f%%  %s%s", entry.getKey(), before.score, now.score,
+                    100 * change, now.unit, regressed ? "  REGRESSION" : improved ? "  improved" : ""));
+            if (regressed) {
+                regressions++;
+            }
+            if (before.allocation != null && now.allocation != null) {
+                final double allocationChange = before.allocation == 0 ? 0 : (now.allocation - before.allocation) / before.allocation;
+                final boolean allocationRegressed = now.allocation > before.allocation * (1 + threshold) + ALLOCATION_TOLERANCE;
+                out.println(String.format("%-90s %14.1f %14.1f %+8.1f%%  %s%s", "  " + ALLOCATION_METRIC, before.allocation,
+                        now.allocation, 100 * allocationChange, "B/op", allocationRegressed ? "  REGRESSION" : ""));
+                if (allocationRegressed) {
+                    regressions++;
+                }
+            }
+        }
+        for (final String name : baseline.keySet()) {
+            if (!current.containsKey(name)) {
+                out.println(String.format("%-90s %14.3f %14s %9s  %s", name, baseline.get(name).score, "-", "missing", baseline.get(name).unit));
+            }
+        }
+        out.println(String.format("%d regression(s) with a threshold of %.1f%%", regressions, 100 * threshold));
+        return regressions;
+    }
+
+    /**
+     * Read a JMH json result file into a map from the benchmark name, mode and parameters to its result.
+     */
+    static Map<String, Result> readResults(final Path path) throws IOException {
+        final Json json = Json.read(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+        final Map<String, Result> results = new LinkedHashMap<>();
+        for (final Json benchmark : json.asJsonList()) {
+            final StringBuilder name = new StringBuilder(benchmark.at("benchmark").asString())
+                    .append(" (").append(benchmark.at("mode").asString()).append(")");
+            if (benchmark.has("params")) {
+                // sort the parameters so the key doesn't depend on their order in the file
+                final Map<String, Object> params = new TreeMap<>(benchmark.at("params").asMap());
+                params.forEach((k, v) -> name.append(' ').append(k).append('=').append(v));
+            }
+            results.put(name.toString(), new Result(benchmark));
+        }
+        return results;
+    }
+
+    /**
+     * Writes everything to both the report file and the console.
+     */
+    private static final class TeePrintStream extends PrintStream {
+        private final PrintStream second;
+
+        TeePrintStream(final PrintStream first, final PrintStream second) {
+            super(first, true);
+            this.second = second;
+        }
+
+        @Override
+        public void println(final String x) {
+            super.println(x);
+            second.println(x);
+        }
+    }
+}
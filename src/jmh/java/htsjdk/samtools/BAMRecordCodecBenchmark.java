@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of BAM records with {@link BAMRecordCodec}, without BGZF compression.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BAMRecordCodecBenchmark {
+    private static final int NUM_RECORDS = 1000;
+
+    @Param({"100", "250"})
+    public int readLength;
+
+    private SAMFileHeader header;
+    private List<SAMRecord> records;
+    private byte[] encoded;
+    private ByteArrayOutputStream outputStream;
+    private BAMRecordCodec codec;
+
+    @Setup
+    public void setup() {
+        final SAMRecordSetBuilder builder = SAMBenchmarkData.makeRecords(NUM_RECORDS, readLength, 100000);
+        header = builder.getHeader();
+        records = SAMBenchmarkData.toList(builder);
+        codec = new BAMRecordCodec(header);
+        outputStream = new ByteArrayOutputStream();
+        encode();
+        encoded = outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public int encode() {
+        outputStream.reset();
+        codec.setOutputStream(outputStream);
+        for (final SAMRecord record : records) {
+            codec.encode(record);
+        }
+        return outputStream.size();
+    }
+
+    /**
+     * Decode records without touching the lazily decoded fields.
+     */
+    @Benchmark
+    public void decode(final Blackhole blackhole) {
+        codec.setInputStream(new ByteArrayInputStream(encoded));
+        SAMRecord record;
+        while ((record = codec.decode()) != null) {
+            blackhole.consume(record);
+        }
+    }
+
+    /**
+     * Decode records and all of their fields, including the bases, qualities, cigar and attributes.
+     */
+    @Benchmark
+    public void decodeEagerly(final Blackhole blackhole) {
+        codec.setInputStream(new ByteArrayInputStream(encoded));
+        SAMRecord record;
+        while ((record = codec.decode()) != null) {
+            record.eagerDecode();
+            blackhole.consume(record);
+        }
+    }
+}
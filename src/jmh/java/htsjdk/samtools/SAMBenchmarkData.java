@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic SAM records shared by the htsjdk.samtools benchmarks.
+ */
+final class SAMBenchmarkData {
+    private SAMBenchmarkData() {}
+
+    /**
+     * Make a mix of coordinate sorted pairs and fragments with the given read length, over a small number of
+     * distinct positions when {@code distinctPositions} is small, so that comparisons often fall through to the
+     * later fields.
+     */
+    static SAMRecordSetBuilder makeRecords(final int numRecords, final int readLength, final int distinctPositions) {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(false, SAMFileHeader.SortOrder.unsorted);
+        builder.setReadLength(readLength);
+        final Random random = new Random(42);
+        while (builder.size() < numRecords) {
+            final String name = "read_" + random.nextInt(numRecords);
+            final int contig = random.nextInt(3);
+            final int start1 = 1 + random.nextInt(distinctPositions);
+            final int start2 = 1 + random.nextInt(distinctPositions);
+            if (random.nextInt(4) == 0) {
+                builder.addFrag(name, contig, start1, random.nextBoolean());
+            } else {
+                builder.addPair(name, contig, start1, start2);
+            }
+        }
+        return builder;
+    }
+
+    static List<SAMRecord> toList(final SAMRecordSetBuilder builder) {
+        final List<SAMRecord> records = new ArrayList<>(builder.size());
+        builder.forEach(records::add);
+        return records;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of SAM text lines with {@link SAMLineParser}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SAMLineParserBenchmark {
+    private static final int NUM_RECORDS = 1000;
+
+    @Param({"100", "250"})
+    public int readLength;
+
+    @Param({"STRICT", "SILENT"})
+    public ValidationStringency validationStringency;
+
+    private List<String> lines;
+    private SAMLineParser parser;
+
+    @Setup
+    public void setup() {
+        final SAMRecordSetBuilder builder = SAMBenchmarkData.makeRecords(NUM_RECORDS, readLength, 100000);
+        lines = new ArrayList<>(builder.size());
+        for (final SAMRecord record : builder) {
+            // getSAMString includes the line terminator, which the parser doesn't expect
+            final String line = record.getSAMString();
+            lines.add(line.substring(0, line.length() - 1));
+        }
+        parser = new SAMLineParser(new DefaultSAMRecordFactory(), validationStringency, builder.getHeader(), null, null);
+    }
+
+    @Benchmark
+    public void parseLines(final Blackhole blackhole) {
+        int lineNumber = 0;
+        for (final String line : lines) {
+            blackhole.consume(parser.parseLine(line, ++lineNumber));
+        }
+    }
+}
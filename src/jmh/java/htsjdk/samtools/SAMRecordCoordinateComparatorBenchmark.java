@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting records with {@link SAMRecordCoordinateComparator}. With few distinct positions most comparisons are
+ * ties on the coordinate and have to compare read names, flags and the mate fields.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SAMRecordCoordinateComparatorBenchmark {
+    private static final int NUM_RECORDS = 10000;
+
+    @Param({"10", "1000000"})
+    public int distinctPositions;
+
+    private final SAMRecordCoordinateComparator comparator = new SAMRecordCoordinateComparator();
+    private SAMRecord[] shuffled;
+    private SAMRecord[] toSort;
+
+    @Setup
+    public void setup() {
+        final List<SAMRecord> records = SAMBenchmarkData.toList(SAMBenchmarkData.makeRecords(NUM_RECORDS, 100, distinctPositions));
+        Collections.shuffle(records, new Random(42));
+        shuffled = records.toArray(new SAMRecord[0]);
+        toSort = new SAMRecord[shuffled.length];
+    }
+
+    @Benchmark
+    public SAMRecord[] sort() {
+        System.arraycopy(shuffled, 0, toSort, 0, shuffled.length);
+        Arrays.sort(toSort, comparator);
+        return toSort;
+    }
+}
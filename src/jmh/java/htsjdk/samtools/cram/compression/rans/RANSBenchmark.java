@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.cram.compression.rans;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compression and decompression with the CRAM 3.0 {@link RANS} codec, over data drawn from a geometric distribution
+ * like the quality scores and other small-alphabet series in CRAM blocks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RANSBenchmark {
+    @Param({"ZERO", "ONE"})
+    public RANS.ORDER order;
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    /** the success probability of the geometric distribution; smaller values give a larger alphabet */
+    @Param({"0.1", "0.01"})
+    public double probability;
+
+    private final RANS rans = new RANS();
+    private byte[] data;
+    private byte[] compressed;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (Math.ceil(Math.log(1 - random.nextDouble()) / Math.log(1 - probability)) - 1);
+        }
+        final ByteBuffer compressedBuffer = rans.compress(ByteBuffer.wrap(data), order);
+        compressed = new byte[compressedBuffer.remaining()];
+        compressedBuffer.get(compressed);
+    }
+
+    @Benchmark
+    public ByteBuffer compress() {
+        return rans.compress(ByteBuffer.wrap(data), order);
+    }
+
+    @Benchmark
+    public ByteBuffer uncompress() {
+        return rans.uncompress(ByteBuffer.wrap(compressed));
+    }
+}
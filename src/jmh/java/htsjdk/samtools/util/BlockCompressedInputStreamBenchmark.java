@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.seekablestream.SeekableMemoryStream;
+import htsjdk.samtools.util.zip.BlockDecompressor;
+import htsjdk.samtools.util.zip.BlockInflater;
+import htsjdk.samtools.util.zip.InflaterFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading an in-memory BGZF file with {@link BlockCompressedInputStream}, either in large buffers or a byte at a
+ * time, and seeking to the start of every block, with either the JDK inflater or the pure Java {@link BlockInflater}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockCompressedInputStreamBenchmark {
+    private static final int UNCOMPRESSED_SIZE = 8 * 1024 * 1024;
+
+    /** "sequence" is random bases, which compress moderately well, "random" is incompressible */
+    @Param({"sequence", "random"})
+    public String data;
+
+    @Param({"1", "65536"})
+    public int readSize;
+
+    @Param({"jdk", "java"})
+    public String inflater;
+
+    private byte[] compressed;
+    private long[] blockAddresses;
+    private byte[] buffer;
+    private InflaterFactory inflaterFactory;
+
+    @Setup
+    public void setup() throws IOException {
+        inflaterFactory = inflater.equals("jdk") ? new InflaterFactory() : new InflaterFactory() {
+            @Override
+            public BlockDecompressor makeBlockDecompressor() {
+                return new BlockInflater();
+            }
+        };
+        final Random random = new Random(42);
+        final byte[] uncompressed = new byte[UNCOMPRESSED_SIZE];
+        if (data.equals("sequence")) {
+            final byte[] bases = {'A', 'C', 'G', 'T'};
+            for (int i = 0; i < uncompressed.length; i++) {
+                uncompressed[i] = bases[random.nextInt(bases.length)];
+            }
+        } else {
+            random.nextBytes(uncompressed);
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final BlockCompressedOutputStream out = new BlockCompressedOutputStream(bytes, (File) null)) {
+            out.write(uncompressed);
+        }
+        compressed = bytes.toByteArray();
+
+        blockAddresses = new long[UNCOMPRESSED_SIZE / BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE + 1];
+        int numBlocks = 0;
+        try (final BlockCompressedInputStream in = new BlockCompressedInputStream(new ByteArrayInputStream(compressed))) {
+            while (in.available() > 0 && numBlocks < blockAddresses.length) {
+                blockAddresses[numBlocks++] = in.getFilePointer();
+                in.skip(in.available());
+            }
+        }
+        blockAddresses = Arrays.copyOf(blockAddresses, numBlocks);
+        buffer = new byte[readSize];
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        long total = 0;
+        try (final BlockCompressedInputStream in = new BlockCompressedInputStream(new ByteArrayInputStream(compressed), true, inflaterFactory)) {
+            if (readSize == 1) {
+                while (in.read() != -1) {
+                    total++;
+                }
+            } else {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    total += n;
+                }
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long seekToEveryBlock() throws IOException {
+        long total = 0;
+        try (final BlockCompressedInputStream in = new BlockCompressedInputStream(new SeekableMemoryStream(compressed, "benchmark"), inflaterFactory)) {
+            for (final long address : blockAddresses) {
+                in.seek(address);
+                total += in.read(buffer);
+            }
+        }
+        return total;
+    }
+}
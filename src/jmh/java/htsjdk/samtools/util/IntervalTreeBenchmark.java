@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building an {@link IntervalTree} and querying it for overlapping intervals.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IntervalTreeBenchmark {
+    private static final int GENOME_LENGTH = 100_000_000;
+    private static final int NUM_QUERIES = 10000;
+
+    @Param({"1000", "100000"})
+    public int numIntervals;
+
+    @Param({"100", "10000"})
+    public int intervalLength;
+
+    private int[] starts;
+    private int[] queryStarts;
+    private IntervalTree<Integer> tree;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        starts = new int[numIntervals];
+        for (int i = 0; i < numIntervals; i++) {
+            starts[i] = 1 + random.nextInt(GENOME_LENGTH);
+        }
+        queryStarts = new int[NUM_QUERIES];
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            queryStarts[i] = 1 + random.nextInt(GENOME_LENGTH);
+        }
+        tree = build();
+    }
+
+    @Benchmark
+    public IntervalTree<Integer> build() {
+        final IntervalTree<Integer> newTree = new IntervalTree<>();
+        for (int i = 0; i < starts.length; i++) {
+            newTree.put(starts[i], starts[i] + intervalLength - 1, i);
+        }
+        return newTree;
+    }
+
+    @Benchmark
+    public long overlappers() {
+        long count = 0;
+        for (final int start : queryStarts) {
+            final Iterator<IntervalTree.Node<Integer>> it = tree.overlappers(start, start + intervalLength - 1);
+            while (it.hasNext()) {
+                count += it.next().getValue();
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long minOverlapper() {
+        long count = 0;
+        for (final int start : queryStarts) {
+            final IntervalTree.Node<Integer> node = tree.minOverlapper(start, start + intervalLength - 1);
+            if (node != null) {
+                count += node.getValue();
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.variant.bcf2;
+
+import htsjdk.tribble.readers.PositionalBufferedStream;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.VCFBenchmarkData;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding an in-memory BCF file with {@link BCF2Codec}, either leaving the genotypes lazily decoded or fully
+ * decoding them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BCF2CodecBenchmark {
+    private static final int NUM_VARIANTS = 1000;
+
+    @Param({"0", "10", "100"})
+    public int numSamples;
+
+    @Param({"false", "true"})
+    public boolean fullyDecode;
+
+    private byte[] bcf;
+
+    @Setup
+    public void setup() {
+        final VCFCodec vcfCodec = VCFBenchmarkData.makeCodec(numSamples);
+        final VCFHeader header = vcfCodec.getHeader();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final VariantContextWriter writer = new VariantContextWriterBuilder()
+                .setOutputBCFStream(bytes)
+                .unsetOption(Options.INDEX_ON_THE_FLY)
+                .build()) {
+            writer.writeHeader(header);
+            for (final String line : VCFBenchmarkData.makeLines(NUM_VARIANTS, numSamples)) {
+                writer.add(vcfCodec.decode(line));
+            }
+        }
+        bcf = bytes.toByteArray();
+    }
+
+    @Benchmark
+    public void decode(final Blackhole blackhole) {
+        final BCF2Codec codec = new BCF2Codec();
+        final PositionalBufferedStream stream = new PositionalBufferedStream(new ByteArrayInputStream(bcf));
+        final VCFHeader header = (VCFHeader) codec.readHeader(stream).getHeaderValue();
+        while (!codec.isDone(stream)) {
+            final VariantContext vc = codec.decode(stream);
+            blackhole.consume(fullyDecode ? vc.fullyDecode(header, false) : vc);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.variant.vcf;
+
+import htsjdk.tribble.readers.LineIteratorImpl;
+import htsjdk.tribble.readers.SynchronousLineReader;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic VCF text shared by the VCF and BCF benchmarks: biallelic SNPs with typical site and genotype fields.
+ */
+public final class VCFBenchmarkData {
+    private static final String[] BASES = {"A", "C", "G", "T"};
+
+    private VCFBenchmarkData() {}
+
+    /**
+     * @return the header lines of a VCF with {@code numSamples} samples, including the #CHROM line
+     */
+    public static String makeHeader(final int numSamples) {
+        final StringBuilder header = new StringBuilder()
+                .append("##fileformat=VCFv4.2\n")
+                .append("##contig=<ID=1,length=249250621>\n")
+                .append("##FILTER=<ID=LowQual,Description=\"Low quality\">\n")
+                .append("##INFO=<ID=AC,Number=A,Type=Integer,Description=\"Allele count\">\n")
+                .append("##INFO=<ID=AF,Number=A,Type=Float,Description=\"Allele frequency\">\n")
+                .append("##INFO=<ID=AN,Number=1,Type=Integer,Description=\"Total number of alleles\">\n")
+                .append("##INFO=<ID=DP,Number=1,Type=Integer,Description=\"Total depth\">\n")
+                .append("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n")
+                .append("##FORMAT=<ID=AD,Number=R,Type=Integer,Description=\"Allelic depths\">\n")
+                .append("##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Read depth\">\n")
+                .append("##FORMAT=<ID=GQ,Number=1,Type=Integer,Description=\"Genotype quality\">\n")
+                .append("##FORMAT=<ID=PL,Number=G,Type=Integer,Description=\"Phred-scaled genotype likelihoods\">\n")
+                .append("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO");
+        if (numSamples > 0) {
+            header.append("\tFORMAT");
+            for (int i = 0; i < numSamples; i++) {
+                header.append("\tsample").append(i);
+            }
+        }
+        return header.append('\n').toString();
+    }
+
+    /**
+     * @return {@code numVariants} data lines, without line terminators, for a VCF with {@code numSamples} samples
+     */
+    public static List<String> makeLines(final int numVariants, final int numSamples) {
+        final Random random = new Random(42);
+        final List<String> lines = new ArrayList<>(numVariants);
+        int position = 0;
+        for (int i = 0; i < numVariants; i++) {
+            position += 1 + random.nextInt(1000);
+            final int ref = random.nextInt(BASES.length);
+            final int alt = (ref + 1 + random.nextInt(BASES.length - 1)) % BASES.length;
+            final int ac = random.nextInt(2 * Math.max(numSamples, 1)) + 1;
+            final StringBuilder line = new StringBuilder()
+                    .append("1\t").append(position).append("\trs").append(i).append('\t')
+                    .append(BASES[ref]).append('\t').append(BASES[alt]).append('\t')
+                    .append(random.nextInt(10000) / 10.0).append('\t')
+                    .append(random.nextInt(10) == 0 ? "LowQual" : "PASS").append('\t')
+                    .append("AC=").append(ac)
+                    .append(";AF=").append(String.format("%.3f", ac / (2.0 * Math.max(numSamples, 1))))
+                    .append(";AN=").append(2 * numSamples)
+                    .append(";DP=").append(random.nextInt(30 * Math.max(numSamples, 1)));
+            if (numSamples > 0) {
+                line.append("\tGT:AD:DP:GQ:PL");
+                for (int s = 0; s < numSamples; s++) {
+                    final int refDepth = random.nextInt(30);
+                    final int altDepth = random.nextInt(30);
+                    line.append('\t').append(random.nextInt(3) == 0 ? "0/1" : random.nextBoolean() ? "0/0" : "1/1")
+                            .append(':').append(refDepth).append(',').append(altDepth)
+                            .append(':').append(refDepth + altDepth)
+                            .append(':').append(random.nextInt(100))
+                            .append(':').append(random.nextInt(500)).append(',').append(random.nextInt(100))
+                            .append(',').append(random.nextInt(500));
+                }
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * @return a {@link VCFCodec} that has read the header made by {@link #makeHeader(int)}
+     */
+    public static VCFCodec makeCodec(final int numSamples) {
+        final VCFCodec codec = new VCFCodec();
+        codec.readActualHeader(new LineIteratorImpl(new SynchronousLineReader(new StringReader(makeHeader(numSamples)))));
+        return codec;
+    }
+}
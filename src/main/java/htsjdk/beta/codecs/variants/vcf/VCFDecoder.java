@@ -64,6 +64,7 @@ public abstract class VCFDecoder implements VariantsDecoder {
         this.inputBundle = inputBundle;
         this.variantsDecoderOptions = variantsDecoderOptions;
         this.displayName = inputBundle.getOrThrow(BundleResourceType.VARIANT_CONTEXTS).getDisplayName();
+        vcfCodec.setDecodingProjection(variantsDecoderOptions.getDecodingProjection());
         vcfReader = getVCFReader(inputBundle, vcfCodec, variantsDecoderOptions);
         vcfHeader = (VCFHeader) vcfReader.getHeader();
     }
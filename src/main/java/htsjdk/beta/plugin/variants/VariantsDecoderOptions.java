@@ -2,6 +2,8 @@ package htsjdk.beta.plugin.variants;
 
 import htsjdk.beta.plugin.HtsDecoderOptions;
 import htsjdk.annotations.InternalAPI;
+import htsjdk.utils.ValidationUtils;
+import htsjdk.variant.vcf.VCFDecodingProjection;
 
 import java.nio.channels.SeekableByteChannel;
 import java.util.Optional;
@@ -11,6 +13,7 @@ public class VariantsDecoderOptions implements HtsDecoderOptions {
     //TODO: replace these with a prefetch size args, and use a local channel wrapper implementation
     private Function<SeekableByteChannel, SeekableByteChannel> variantsChannelTransformer;
     private Function<SeekableByteChannel, SeekableByteChannel> indexChannelTransformer;
+    private VCFDecodingProjection decodingProjection = VCFDecodingProjection.ALL;
 
     // Temporary channel wrapper implementation.
 
@@ -64,4 +67,25 @@ public class VariantsDecoderOptions implements HtsDecoderOptions {
         return this;
     }
 
+    /**
+     * Get the samples, INFO keys and FORMAT keys to decode.
+     *
+     * @return the decoding projection, {@link VCFDecodingProjection#ALL} by default
+     */
+    public VCFDecodingProjection getDecodingProjection() {
+        return decodingProjection;
+    }
+
+    /**
+     * Set the samples, INFO keys and FORMAT keys to decode. Other fields are skipped without being decoded,
+     * and if samples are selected the decoder's header has only those samples.
+     *
+     * @param decodingProjection the decoding projection, may not be null
+     * @return updated VariantsDecoderOptions
+     */
+    public VariantsDecoderOptions setDecodingProjection(final VCFDecodingProjection decodingProjection) {
+        ValidationUtils.nonNull(decodingProjection, "decodingProjection");
+        this.decodingProjection = decodingProjection;
+        return this;
+    }
 }
@@ -24,18 +24,22 @@
 package htsjdk.samtools;
 
 
+import htsjdk.samtools.seekablestream.SeekableFileStream;
 import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.util.*;
 import htsjdk.samtools.util.zip.InflaterFactory;
 
 import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.Supplier;
 
 /**
  * Class for reading and querying BAM files.
@@ -59,9 +63,11 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
     private long mFirstRecordPointer = 0;
     // If non-null, there is an unclosed iterator extant.
     private CloseableIterator<SAMRecord> mCurrentIterator = null;
+    private RawBAMFileIterator mCurrentRawIterator = null;
 
     // If true, all SAMRecords are fully decoded as they are read.
     private boolean eagerDecode;
+    private boolean reuseRecords = false;
 
     // For error-checking.
     private ValidationStringency mValidationStringency;
@@ -69,6 +75,12 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
     // For creating BAMRecords
     private SAMRecordFactory samRecordFactory;
 
+    // For reading the chunks of index queries concurrently: opens a new stream over the file, or null if that isn't possible
+    private Supplier<SeekableStream> mStreamSupplier = null;
+    private Path mSplittingIndexPath = null;
+    private InflaterFactory mInflaterFactory = BlockGunzipper.getDefaultInflaterFactory();
+    private int queryThreads = Defaults.BAM_QUERY_THREADS;
+
     /**
      * Use the caching index reader implementation rather than the disk-hit-per-file model.
      */
@@ -79,6 +91,11 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
      */
     private boolean mEnableIndexMemoryMapping = true;
 
+    /**
+     * Use the index from the process-wide registry of fully loaded indexes, shared with other readers.
+     */
+    private boolean mEnableIndexSharing = false;
+
     /**
      * Add information about the origin (reader and position) to SAM records.
      */
@@ -126,7 +143,7 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
             throws IOException {
         mIndexFile = indexFile;
         mIsSeekable = false;
-        mCompressedInputStream = useAsynchronousIO ? new AsyncBlockCompressedInputStream(stream, inflaterFactory) : new BlockCompressedInputStream(stream, inflaterFactory);
+        mCompressedInputStream = openCompressedStream(stream, useAsynchronousIO, inflaterFactory);
         mStream = new BinaryCodec(new DataInputStream(mCompressedInputStream));
         this.eagerDecode = eagerDecode;
         this.mValidationStringency = validationStringency;
@@ -173,8 +190,16 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
                   final SAMRecordFactory samRecordFactory,
                   final InflaterFactory inflaterFactory)
         throws IOException {
-        this(useAsynchronousIO ? new AsyncBlockCompressedInputStream(file, inflaterFactory) : new BlockCompressedInputStream(file, inflaterFactory),
+        this(openCompressedStream(new SeekableFileStream(file), useAsynchronousIO, inflaterFactory),
                 indexFile!=null ? indexFile : SamFiles.findIndex(file), eagerDecode, useAsynchronousIO, file.getAbsolutePath(), validationStringency, samRecordFactory);
+        mInflaterFactory = inflaterFactory;
+        mStreamSupplier = () -> {
+            try {
+                return new SeekableFileStream(file);
+            } catch (final FileNotFoundException e) {
+                throw new RuntimeIOException(e);
+            }
+        };
         if (mIndexFile != null && mIndexFile.lastModified() < file.lastModified()) {
             System.err.println("WARNING: BAM index file " + mIndexFile.getAbsolutePath() +
                     " is older than BAM " + file.getAbsolutePath());
@@ -222,8 +247,9 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
                   final SAMRecordFactory samRecordFactory,
                   final InflaterFactory inflaterFactory)
         throws IOException {
-        this(useAsynchronousIO ? new AsyncBlockCompressedInputStream(strm, inflaterFactory) : new BlockCompressedInputStream(strm, inflaterFactory),
+        this(openCompressedStream(strm, useAsynchronousIO, inflaterFactory),
                 indexFile, eagerDecode, useAsynchronousIO, strm.getSource(), validationStringency, samRecordFactory);
+        mInflaterFactory = inflaterFactory;
     }
 
     /**
@@ -265,8 +291,35 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
                   final SAMRecordFactory samRecordFactory,
                   final InflaterFactory inflaterFactory)
         throws IOException {
-        this(useAsynchronousIO ? new AsyncBlockCompressedInputStream(strm, inflaterFactory) : new BlockCompressedInputStream(strm, inflaterFactory),
+        this(openCompressedStream(strm, useAsynchronousIO, inflaterFactory),
                 indexStream, eagerDecode, useAsynchronousIO, strm.getSource(), validationStringency, samRecordFactory);
+        mInflaterFactory = inflaterFactory;
+    }
+
+    /**
+     * Wraps a non-seekable stream, inflating blocks in parallel if {@link Defaults#BGZF_DECOMPRESSION_THREADS} is set,
+     * or on a read-ahead thread if asynchronous I/O is requested.
+     */
+    private static BlockCompressedInputStream openCompressedStream(final InputStream stream,
+                                                                   final boolean useAsynchronousIO,
+                                                                   final InflaterFactory inflaterFactory) {
+        if (Defaults.BGZF_DECOMPRESSION_THREADS > 0) {
+            return new ParallelBlockCompressedInputStream(stream, inflaterFactory, Defaults.BGZF_DECOMPRESSION_THREADS);
+        }
+        return useAsynchronousIO ? new AsyncBlockCompressedInputStream(stream, inflaterFactory) : new BlockCompressedInputStream(stream, inflaterFactory);
+    }
+
+    /**
+     * Wraps a seekable stream, inflating blocks in parallel if {@link Defaults#BGZF_DECOMPRESSION_THREADS} is set,
+     * or on a read-ahead thread if asynchronous I/O is requested.
+     */
+    private static BlockCompressedInputStream openCompressedStream(final SeekableStream strm,
+                                                                   final boolean useAsynchronousIO,
+                                                                   final InflaterFactory inflaterFactory) {
+        if (Defaults.BGZF_DECOMPRESSION_THREADS > 0) {
+            return new ParallelBlockCompressedInputStream(strm, inflaterFactory, Defaults.BGZF_DECOMPRESSION_THREADS);
+        }
+        return useAsynchronousIO ? new AsyncBlockCompressedInputStream(strm, inflaterFactory) : new BlockCompressedInputStream(strm, inflaterFactory);
     }
 
     /**
@@ -379,6 +432,18 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         this.mEnableIndexMemoryMapping = enabled;
     }
 
+    /**
+     * If true, a BAI or CSI index file is loaded into memory in full and shared with all other readers of the same index
+     * that enable sharing, see {@link SharedBAMFileIndex}.  Takes precedence over index caching and memory mapping.
+     * @param enabled true to use the shared index.
+     */
+    void enableIndexSharing(final boolean enabled) {
+        if (mIndex != null) {
+            throw new SAMException("Unable to turn on index sharing; index file has already been loaded.");
+        }
+        this.mEnableIndexSharing = enabled;
+    }
+
     @Override void enableCrcChecking(final boolean enabled) {
         this.mCompressedInputStream.setCheckCrcs(enabled);
     }
@@ -414,6 +479,8 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
             if (samIndex == null) {
                 mIndex = mEnableIndexCaching ? new CachingBAMFileIndex(mIndexStream, getFileHeader().getSequenceDictionary())
                         : new DiskBasedBAMFileIndex(mIndexStream, getFileHeader().getSequenceDictionary());
+            } else if (mEnableIndexSharing) {
+                    mIndex = SharedBAMFileIndex.getSharedIndex(mIndexFile.toPath());
             } else if (samIndex.equals(SamIndexes.BAI)) {
                     mIndex = mEnableIndexCaching ? new CachingBAMFileIndex(mIndexFile, getFileHeader().getSequenceDictionary(), mEnableIndexMemoryMapping)
                             : new DiskBasedBAMFileIndex(mIndexFile, getFileHeader().getSequenceDictionary(), mEnableIndexMemoryMapping);
@@ -447,6 +514,131 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
 
     public void setEagerDecode(final boolean desired) { this.eagerDecode = desired; }
 
+    /**
+     * If true, the iterator returned by {@link #getIterator()} decodes each record into one of a small number of
+     * reused {@link BAMRecord} objects rather than allocating a new record for each read. A returned record is only
+     * valid until the next call to next(), so callers must use {@link SAMRecord#deepCopy()} to retain a record, and the
+     * records' file sources are not set. Indexed queries always return new records. Records are created by the
+     * {@link SAMRecordFactory} the first time, but only the state of {@link BAMRecord} is reset when they are reused.
+     */
+    public void setReuseRecords(final boolean desired) { this.reuseRecords = desired; }
+
+    /**
+     * Set the number of parts of the file that are read and decoded concurrently by index queries for intervals,
+     * using a shared pool of worker threads.  This requires that the reader can open further streams over the file,
+     * which is the case when it was opened from a file, path or URL, otherwise queries are read sequentially.
+     * Chunks that are close together in the file are coalesced to avoid seeks, and the records are returned in the
+     * same order as by a sequential query.  0 reads the chunks sequentially on the calling thread.
+     * Defaults to {@link Defaults#BAM_QUERY_THREADS}.
+     *
+     * @param queryThreads the number of parts of the file to read concurrently
+     */
+    public void setQueryThreads(final int queryThreads) {
+        if (queryThreads < 0) {
+            throw new IllegalArgumentException("The number of query threads must be >= 0: " + queryThreads);
+        }
+        this.queryThreads = queryThreads;
+    }
+
+    public int getQueryThreads() {
+        return queryThreads;
+    }
+
+    /**
+     * Set the source of further streams over the file, used for reading the chunks of index queries concurrently.
+     */
+    void setStreamSupplier(final Supplier<SeekableStream> streamSupplier) {
+        this.mStreamSupplier = streamSupplier;
+    }
+
+    /**
+     * Set the splitting index used by {@link #getShards(int)}.
+     */
+    void setSplittingIndexPath(final Path splittingIndexPath) {
+        this.mSplittingIndexPath = splittingIndexPath;
+    }
+
+    /**
+     * Split the file into at most numShards parts of similar size on disk, each of which can be read with
+     * {@link #getShardIterator(SAMFileSpan)}, and that together contain every record in the file exactly once, in
+     * order.  Shard boundaries are taken from the splitting index (SBI) next to the file if there is one, otherwise
+     * from the BAI index if there is one, and otherwise found by scanning the file for BGZF blocks and records.
+     * This requires that the reader can open further streams over the file, which is the case when it was opened
+     * from a file, path or URL.
+     *
+     * @param numShards the maximum number of shards, fewer are returned for small files
+     * @return contiguous, non-empty spans of the file in order
+     */
+    public List<SAMFileSpan> getShards(final int numShards) {
+        SBIIndex splittingIndex = null;
+        if (mSplittingIndexPath != null) {
+            try {
+                splittingIndex = SBIIndex.load(mSplittingIndexPath);
+            } catch (final IOException e) {
+                throw new RuntimeIOException("Error reading splitting index " + mSplittingIndexPath.toUri(), e);
+            }
+        }
+        return getShards(numShards, splittingIndex);
+    }
+
+    /**
+     * Split the file into at most numShards parts of similar size on disk, using the given splitting index, see
+     * {@link #getShards(int)}.
+     *
+     * @param numShards the maximum number of shards, fewer are returned for small files
+     * @param splittingIndex the splitting index of the file, or null to use the BAI index or scan the file
+     * @return contiguous, non-empty spans of the file in order
+     */
+    public List<SAMFileSpan> getShards(final int numShards, final SBIIndex splittingIndex) {
+        if (numShards <= 0) {
+            throw new IllegalArgumentException("The number of shards must be > 0: " + numShards);
+        }
+        assertCanOpenStreams("Splitting");
+        final long fileLength;
+        try (SeekableStream stream = mStreamSupplier.get()) {
+            fileLength = stream.length();
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Error reading BAM file length", e);
+        }
+
+        final long[] recordStarts;
+        if (splittingIndex != null) {
+            // the last offset is the end of the file
+            recordStarts = Arrays.copyOf(splittingIndex.getVirtualOffsets(), (int) splittingIndex.size() - 1);
+        } else if (hasIndex()) {
+            recordStarts = BAMShardSplitter.getLinearIndexRecordStarts(getIndex(), getFileHeader().getSequenceDictionary().size());
+        } else {
+            recordStarts = new long[0];
+        }
+        final BAMShardSplitter splitter = new BAMShardSplitter(mStreamSupplier, mInflaterFactory,
+                getFileHeader().getSequenceDictionary().size());
+        return new ArrayList<>(splitter.split(mFirstRecordPointer, fileLength <= 0 ? 0 : fileLength,
+                recordStarts, fileLength <= 0 ? 1 : numShards));
+    }
+
+    /**
+     * Iterate over the records in a shard returned by {@link #getShards(int)}, or any other span of the file.  Unlike
+     * {@link #getIterator(SAMFileSpan)}, each iterator reads through its own stream, so any number of them can be
+     * used at the same time, from different threads, along with the iterators of this reader.
+     */
+    public CloseableIterator<SAMRecord> getShardIterator(final SAMFileSpan shard) {
+        if (!(shard instanceof BAMFileSpan)) {
+            throw new IllegalArgumentException("BAMFileReader cannot handle this type of file span.");
+        }
+        assertCanOpenStreams("Shard iteration");
+        return new ParallelBAMQueryIterator(((BAMFileSpan) shard).toCoordinateArray(), getFileHeader(), samRecordFactory,
+                mValidationStringency, eagerDecode, mReader, mStreamSupplier, mInflaterFactory, 1);
+    }
+
+    private void assertCanOpenStreams(final String operation) {
+        if (mStream == null) {
+            throw new IllegalStateException("File reader is closed");
+        }
+        if (mStreamSupplier == null) {
+            throw new UnsupportedOperationException(operation + " requires a BAM file opened from a file, path or URL");
+        }
+    }
+
     @Override
     public void close() {
         if (mCompressedInputStream != null) {
@@ -498,7 +690,7 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         if (mStream == null) {
             throw new IllegalStateException("File reader is closed");
         }
-        if (mCurrentIterator != null) {
+        if (mCurrentIterator != null || mCurrentRawIterator != null) {
             throw new IllegalStateException("Iteration in progress");
         }
         if (mIsSeekable) {
@@ -508,16 +700,40 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
                 throw new RuntimeIOException(exc.getMessage(), exc);
             }
         }
-        mCurrentIterator = new BAMFileIterator();
+        mCurrentIterator = new BAMFileIterator(true, reuseRecords);
         return mCurrentIterator;
     }
 
+    /**
+     * Prepare to iterate through the records in file order in their binary encoding, without decoding them.
+     * Returned records are reused, and are only valid until the following call to next(), so use
+     * {@link RawBAMRecord#deepCopy()} to retain a record. The records are not validated. As with {@link #getIterator()}, only a single iterator can be
+     * extant at a time.
+     */
+    public CloseableIterator<RawBAMRecord> getRawIterator() {
+        if (mStream == null) {
+            throw new IllegalStateException("File reader is closed");
+        }
+        if (mCurrentIterator != null || mCurrentRawIterator != null) {
+            throw new IllegalStateException("Iteration in progress");
+        }
+        if (mIsSeekable) {
+            try {
+                mCompressedInputStream.seek(mFirstRecordPointer);
+            } catch (final IOException exc) {
+                throw new RuntimeIOException(exc.getMessage(), exc);
+            }
+        }
+        mCurrentRawIterator = new RawBAMFileIterator();
+        return mCurrentRawIterator;
+    }
+
     @Override
     public CloseableIterator<SAMRecord> getIterator(final SAMFileSpan chunks) {
         if (mStream == null) {
             throw new IllegalStateException("File reader is closed");
         }
-        if (mCurrentIterator != null) {
+        if (mCurrentIterator != null || mCurrentRawIterator != null) {
             throw new IllegalStateException("Iteration in progress");
         }
         if (!(chunks instanceof BAMFileSpan)) {
@@ -564,7 +780,7 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         if (mStream == null) {
             throw new IllegalStateException("File reader is closed");
         }
-        if (mCurrentIterator != null) {
+        if (mCurrentIterator != null || mCurrentRawIterator != null) {
             throw new IllegalStateException("Iteration in progress");
         }
         if (!mIsSeekable) {
@@ -603,7 +819,7 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         if (mStream == null) {
             throw new IllegalStateException("File reader is closed");
         }
-        if (mCurrentIterator != null) {
+        if (mCurrentIterator != null || mCurrentRawIterator != null) {
             throw new IllegalStateException("Iteration in progress");
         }
         if (!mIsSeekable) {
@@ -634,7 +850,7 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         if (mStream == null) {
             throw new IllegalStateException("File reader is closed");
         }
-        if (mCurrentIterator != null) {
+        if (mCurrentIterator != null || mCurrentRawIterator != null) {
             throw new IllegalStateException("Iteration in progress");
         }
         if (!mIsSeekable) {
@@ -661,7 +877,7 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         if (mStream == null) {
             throw new IllegalStateException("File reader is closed");
         }
-        if (mCurrentIterator != null) {
+        if (mCurrentIterator != null || mCurrentRawIterator != null) {
             throw new IllegalStateException("Iteration in progress");
         }
         if (!mIsSeekable) {
@@ -803,6 +1019,10 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         private SAMRecord mNextRecord = null;
         private final BAMRecordCodec bamRecordCodec;
         private long samRecordIndex = 0; // Records at what position (counted in records) we are at in the file
+        // Records that are decoded into in turn, if reusing records. There must be enough that the record returned
+        // by the previous call to next() isn't overwritten when advancing, since AssertingIterator uses it.
+        private final BAMRecord[] reusableRecords;
+        private int nextReusableRecord = 0;
 
         BAMFileIterator() {
             this(true);
@@ -812,6 +1032,15 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
          * @param advance Trick to enable subclass to do more setup before advancing
          */
         BAMFileIterator(final boolean advance) {
+            this(advance, false);
+        }
+
+        /**
+         * @param advance Trick to enable subclass to do more setup before advancing
+         * @param reuseRecords if true, decode into reused records rather than allocating a new record for each read
+         */
+        BAMFileIterator(final boolean advance, final boolean reuseRecords) {
+            this.reusableRecords = reuseRecords ? new BAMRecord[3] : null;
             this.bamRecordCodec = new BAMRecordCodec(getFileHeader(), samRecordFactory);
             this.bamRecordCodec.setInputStream(BAMFileReader.this.mStream.getInputStream(),
                     BAMFileReader.this.mStream.getInputFileName());
@@ -862,6 +1091,12 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
          * Read the next record from the input stream.
          */
         SAMRecord getNextRecord() throws IOException {
+            if (reusableRecords != null) {
+                final BAMRecord next = bamRecordCodec.decode(reusableRecords[nextReusableRecord]);
+                reusableRecords[nextReusableRecord] = next;
+                nextReusableRecord = (nextReusableRecord + 1) % reusableRecords.length;
+                return next;
+            }
             final long startCoordinate = mCompressedInputStream.getFilePointer();
             final SAMRecord next = bamRecordCodec.decode();
             final long stopCoordinate = mCompressedInputStream.getFilePointer();
@@ -880,6 +1115,60 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         }
     }
 
+    /**
+     * Iterator for the records of the file in their binary encoding.
+     */
+    private class RawBAMFileIterator implements CloseableIterator<RawBAMRecord> {
+        private final BAMRecordCodec bamRecordCodec;
+        // the iterator reads one record ahead, so it alternates between two records in order that the one
+        // returned by next() isn't overwritten until the following call
+        private final RawBAMRecord[] records = {new RawBAMRecord(), new RawBAMRecord()};
+        private int nextRecordIndex = 0;
+        private RawBAMRecord mNextRecord;
+        private boolean isClosed = false;
+
+        RawBAMFileIterator() {
+            this.bamRecordCodec = new BAMRecordCodec(getFileHeader(), samRecordFactory);
+            this.bamRecordCodec.setInputStream(BAMFileReader.this.mStream.getInputStream(),
+                    BAMFileReader.this.mStream.getInputFileName());
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            assertOpen();
+            return mNextRecord != null;
+        }
+
+        @Override
+        public RawBAMRecord next() {
+            assertOpen();
+            if (mNextRecord == null) {
+                throw new NoSuchElementException("next called on exhausted iterator");
+            }
+            final RawBAMRecord result = mNextRecord;
+            advance();
+            return result;
+        }
+
+        private void advance() {
+            mNextRecord = bamRecordCodec.decodeRaw(records[nextRecordIndex]);
+            nextRecordIndex ^= 1;
+        }
+
+        @Override
+        public void close() {
+            if (!isClosed) {
+                mCurrentRawIterator = null;
+                isClosed = true;
+            }
+        }
+
+        private void assertOpen() {
+            if (isClosed) throw new AssertionError("Iterator has been closed");
+        }
+    }
+
     /**
      * Prepare to iterate through SAMRecords in the given reference that start exactly at the given start coordinate.
      * @param referenceIndex Desired reference sequence.
@@ -931,7 +1220,14 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
         BAMFileSpan span = getFileSpan(intervals, getIndex());
 
         // Create an iterator over the above chunk boundaries.
-        final BAMFileIndexIterator iterator = new BAMFileIndexIterator(span == null ? null : span.toCoordinateArray());
+        final CloseableIterator<SAMRecord> iterator;
+        if (queryThreads > 0 && mStreamSupplier != null) {
+            iterator = new ParallelBAMQueryIterator(span == null ? null : span.toCoordinateArray(), getFileHeader(),
+                    samRecordFactory, mValidationStringency, eagerDecode, mReader, mStreamSupplier, mInflaterFactory,
+                    queryThreads);
+        } else {
+            iterator = new BAMFileIndexIterator(span == null ? null : span.toCoordinateArray());
+        }
 
         // Add some preprocessing filters for edge-case reads that don't fit into this
         // query type.
@@ -1027,6 +1323,13 @@ public class BAMFileReader extends SamReader.ReaderImplementation {
             mNextRecord = advance();
         }
 
+        @Override
+        public void close() {
+            super.close();
+            // the wrapped iterator is no longer the current one, so it can be closed
+            wrappedIterator.close();
+        }
+
         /**
          * Returns true if a next element exists; false otherwise.
          */
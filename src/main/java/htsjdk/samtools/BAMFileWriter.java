@@ -37,6 +37,8 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 /**
  * Concrete implementation of SAMFileWriter for writing gzipped BAM files.
@@ -47,6 +49,8 @@ public class BAMFileWriter extends SAMFileWriterImpl {
     private BAMRecordCodec bamRecordCodec = null;
     private final BlockCompressedOutputStream blockCompressedOutputStream;
     private BAMIndexer bamIndexer = null;
+    /** Alignments that have been written but not yet indexed because their blocks are still being compressed. */
+    private final Deque<UnindexedAlignment> unindexedAlignments = new ArrayDeque<>();
 
     protected BAMFileWriter(final File path) {
         blockCompressedOutputStream = new BlockCompressedOutputStream(path);
@@ -130,12 +134,12 @@ public class BAMFileWriter extends SAMFileWriterImpl {
 
         if (bamIndexer != null) {
             try {
-                final long startOffset = blockCompressedOutputStream.getFilePointer();
+                // deferred pointers avoid waiting for the blocks that are being compressed on other threads
+                final long startOffset = blockCompressedOutputStream.getDeferredFilePointer();
                 bamRecordCodec.encode(alignment);
-                final long stopOffset = blockCompressedOutputStream.getFilePointer();
-                // set the alignment's SourceInfo and then prepare its index information
-                alignment.setFileSource(new SAMFileSource(null, new BAMFileSpan(new Chunk(startOffset, stopOffset))));
-                bamIndexer.processAlignment(alignment);
+                final long stopOffset = blockCompressedOutputStream.getDeferredFilePointer();
+                unindexedAlignments.addLast(new UnindexedAlignment(alignment, startOffset, stopOffset));
+                indexAlignments(false);
             } catch (Exception e) {
                 bamIndexer = null;
                 throw new SAMException("Exception when processing alignment for BAM index " + alignment, e);
@@ -145,6 +149,16 @@ public class BAMFileWriter extends SAMFileWriterImpl {
         }
     }
 
+    @Override
+    protected void writeRawRecord(final RawBAMRecord record) {
+        if (bamIndexer != null) {
+            // the indexer needs the alignment end, which requires decoding the CIGAR
+            writeAlignment(record.toSAMRecord(getFileHeader()));
+        } else {
+            outputBinaryCodec.writeBytes(record.getData(), 0, record.getLength());
+        }
+    }
+
     @Override
     protected void writeHeader(final String textHeader) {
         writeHeader(outputBinaryCodec, getFileHeader(), textHeader);
@@ -155,6 +169,7 @@ public class BAMFileWriter extends SAMFileWriterImpl {
         outputBinaryCodec.close();
             try {
                 if (bamIndexer != null) {
+                    indexAlignments(true);
                     bamIndexer.finish();
                 }
             } catch (Exception e) {
@@ -162,6 +177,23 @@ public class BAMFileWriter extends SAMFileWriterImpl {
             }
     }
 
+    /**
+     * Passes written alignments to the indexer, in order, once the addresses of the blocks they were written to
+     * are known.
+     * @param waitForBlocks if true, index all remaining alignments, waiting for their blocks to be written
+     */
+    private void indexAlignments(final boolean waitForBlocks) {
+        while (!unindexedAlignments.isEmpty() && (waitForBlocks ||
+                blockCompressedOutputStream.isFilePointerResolvable(unindexedAlignments.peekFirst().stopOffset))) {
+            final UnindexedAlignment unindexed = unindexedAlignments.removeFirst();
+            final long startOffset = blockCompressedOutputStream.resolveFilePointer(unindexed.startOffset);
+            final long stopOffset = blockCompressedOutputStream.resolveFilePointer(unindexed.stopOffset);
+            // set the alignment's SourceInfo and then prepare its index information
+            unindexed.alignment.setFileSource(new SAMFileSource(null, new BAMFileSpan(new Chunk(startOffset, stopOffset))));
+            bamIndexer.processAlignment(unindexed.alignment);
+        }
+    }
+
     /** @return absolute path in URI format, or null if this writer does not correspond to a file.
      * To get a Path from this, use: IOUtil.getPath(getFilename()) */
     @Override
@@ -212,4 +244,19 @@ public class BAMFileWriter extends SAMFileWriterImpl {
             throw new RuntimeIOException(ioe);
         }
     }
+
+    /**
+     * An alignment and the deferred file pointers to its start and end in the output.
+     */
+    private static final class UnindexedAlignment {
+        private final SAMRecord alignment;
+        private final long startOffset;
+        private final long stopOffset;
+
+        private UnindexedAlignment(final SAMRecord alignment, final long startOffset, final long stopOffset) {
+            this.alignment = alignment;
+            this.startOffset = startOffset;
+            this.stopOffset = stopOffset;
+        }
+    }
 }
@@ -23,10 +23,12 @@
  */
 package htsjdk.samtools;
 
+import htsjdk.samtools.util.BinaryCodec;
 import htsjdk.samtools.util.StringUtil;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 
 import static htsjdk.samtools.SAMTag.CG;
 
@@ -66,15 +68,17 @@ public class BAMRecord extends SAMRecord {
      * Variable-length part of BAMRecord.  Lazily decoded.
      */
     private byte[] mRestOfBinaryData = null;
+    // The number of bytes of mRestOfBinaryData in use, which is less than its length if the array is being reused
+    private int mRestOfBinaryDataLength = 0;
 
     // Various lengths are stored, because they are in the fixed-length part of the BAMRecord, and it is
     // more efficient to remember them than decode the element they store the length of.
     // The length becomes invalid if the element is changed with a set() method.
     private int mReadLength = 0;
     private boolean mReadLengthValid = true;
-    private final short mReadNameLength;
+    private short mReadNameLength;
     private boolean mReadNameLengthValid = true;
-    private final int mCigarLength;
+    private int mCigarLength;
     private boolean mCigarLengthValid = true;
 
     // Whether or not the getter needs to decode the corresponding element.
@@ -82,6 +86,11 @@ public class BAMRecord extends SAMRecord {
     private boolean mAttributesDecoded = false;
     private boolean mCigarDecoded = false;
 
+    // Offsets in mRestOfBinaryData of each tag, found the first time a single tag is looked up before the attributes
+    // have been decoded, and the number of such lookups, after which all the attributes are decoded.
+    private int[] mTagOffsets = null;
+    private int mNumTagLookups = 0;
+
     /**
      * If any of the properties set from mRestOfBinaryData have been overridden by calls to setters,
      * this is set to true, indicating that mRestOfBinaryData cannot be used to write this record to disk.
@@ -107,6 +116,55 @@ public class BAMRecord extends SAMRecord {
                         final int insertSize,
                         final byte[] restOfData) {
         super(header);
+        initialize(referenceID, coordinate, readNameLength, mappingQuality, cigarLen, flags, readLen,
+                mateReferenceID, mateCoordinate, insertSize, restOfData, restOfData == null ? 0 : restOfData.length);
+    }
+
+    /**
+     * Reinitialize this record from the fields of a different BAM record, discarding all of its current state, so that
+     * the object (and the array holding its variable-length data) can be reused to avoid allocating a new record. The
+     * result is equivalent to constructing a new BAMRecord with the same arguments.
+     *
+     * @param restOfData the variable-length part of the record, of which only the first restOfDataLength bytes are used
+     * @param restOfDataLength the length of the variable-length part of the record
+     */
+    void reinitialize(final SAMFileHeader header,
+                      final int referenceID,
+                      final int coordinate,
+                      final short readNameLength,
+                      final short mappingQuality,
+                      final int cigarLen,
+                      final int flags,
+                      final int readLen,
+                      final int mateReferenceID,
+                      final int mateCoordinate,
+                      final int insertSize,
+                      final byte[] restOfData,
+                      final int restOfDataLength) {
+        resetState(header);
+        mReadLengthValid = true;
+        mReadNameLengthValid = true;
+        mCigarLengthValid = true;
+        mAttributesDecoded = false;
+        mCigarDecoded = false;
+        mTagOffsets = null;
+        mNumTagLookups = 0;
+        initialize(referenceID, coordinate, readNameLength, mappingQuality, cigarLen, flags, readLen,
+                mateReferenceID, mateCoordinate, insertSize, restOfData, restOfDataLength);
+    }
+
+    private void initialize(final int referenceID,
+                            final int coordinate,
+                            final short readNameLength,
+                            final short mappingQuality,
+                            final int cigarLen,
+                            final int flags,
+                            final int readLen,
+                            final int mateReferenceID,
+                            final int mateCoordinate,
+                            final int insertSize,
+                            final byte[] restOfData,
+                            final int restOfDataLength) {
         setReferenceIndex(referenceID);
         setAlignmentStart(coordinate);
         mReadNameLength = readNameLength;
@@ -118,6 +176,7 @@ public class BAMRecord extends SAMRecord {
         setMateAlignmentStart(mateCoordinate);
         setInferredInsertSize(insertSize);
         mRestOfBinaryData = restOfData;
+        mRestOfBinaryDataLength = restOfDataLength;
 
         // Set these to null in order to mark them as being candidates for lazy initialization.
         // If this is not done, they will have non-null defaults.
@@ -130,6 +189,30 @@ public class BAMRecord extends SAMRecord {
         mBinaryDataStale = false;
     }
 
+    /**
+     * @return an array of at least the given length that may be used to hold the variable-length part of the next
+     * record decoded into this object, reusing this record's array if it is large enough
+     */
+    byte[] getReusableBinaryDataBuffer(final int length) {
+        if (mRestOfBinaryData != null && mRestOfBinaryData.length >= length) {
+            return mRestOfBinaryData;
+        }
+        return new byte[Math.max(length, mRestOfBinaryData == null ? 0 : mRestOfBinaryData.length * 2)];
+    }
+
+    /**
+     * Write the variable-length part of this record, if it has a valid binary representation.
+     *
+     * @return true if the binary representation was written, false if there isn't one
+     */
+    boolean writeVariableBinaryRepresentation(final BinaryCodec binaryCodec) {
+        if (mBinaryDataStale || mRestOfBinaryData == null) {
+            return false;
+        }
+        binaryCodec.writeBytes(mRestOfBinaryData, 0, mRestOfBinaryDataLength);
+        return true;
+    }
+
     /**
      * Force all the lazily-initialized attributes to be decoded.
      */
@@ -156,6 +239,10 @@ public class BAMRecord extends SAMRecord {
             return null;
         }
         // This may have been set to null by eagerDecode()
+        if (mRestOfBinaryData != null && mRestOfBinaryData.length != mRestOfBinaryDataLength) {
+            // the array is being reused, and is larger than this record
+            return Arrays.copyOf(mRestOfBinaryData, mRestOfBinaryDataLength);
+        }
         return mRestOfBinaryData;
     }
 
@@ -171,7 +258,7 @@ public class BAMRecord extends SAMRecord {
             return -1;
         }
         final int tagsOffset = readNameSize() + cigarSize() + basesSize() + qualsSize();
-        return mRestOfBinaryData.length - tagsOffset;
+        return mRestOfBinaryDataLength - tagsOffset;
     }
 
     @Override
@@ -385,14 +472,50 @@ public class BAMRecord extends SAMRecord {
         return ret;
     }
 
+    /**
+     * Until all the attributes have been decoded, a tag is looked up by scanning the binary block and only its value is
+     * decoded, so that reading one or two tags doesn't require decoding them all. The scan records where each tag
+     * starts, so later lookups are cheap, and once as many tags have been looked up as the record has, the attributes
+     * are decoded since the values are evidently wanted repeatedly.
+     */
     @Override
     public Object getAttribute(final short tag) {
         if (!mAttributesDecoded) {
-            decodeAttributes();
+            // a CG tag may hold the real CIGAR, in which case it is moved out of the attributes when they are decoded
+            if (tag != CG.getBinaryTag() && mRestOfBinaryData != null) {
+                final Object value = lookupUndecodedAttribute(tag);
+                if (!mAttributesDecoded) {
+                    return value;
+                }
+            } else {
+                decodeAttributes();
+            }
         }
         return super.getAttribute(tag);
     }
 
+    /**
+     * Decode the value of a single tag from the binary block, or decode all of the attributes if enough single tags have
+     * been looked up, in which case null is returned.
+     */
+    private Object lookupUndecodedAttribute(final short tag) {
+        final int tagsOffset = readNameSize() + cigarSize() + basesSize() + qualsSize();
+        if (mTagOffsets == null) {
+            mTagOffsets = BinaryTagCodec.findTagOffsets(mRestOfBinaryData, tagsOffset, mRestOfBinaryDataLength - tagsOffset);
+        }
+        if (++mNumTagLookups > mTagOffsets.length) {
+            decodeAttributes();
+            return null;
+        }
+        // if a tag is repeated the last value wins, as when all the attributes are decoded
+        for (int i = mTagOffsets.length - 1; i >= 0; i--) {
+            if (BinaryTagCodec.getTag(mRestOfBinaryData, mTagOffsets[i]) == tag) {
+                return BinaryTagCodec.readTagValue(mRestOfBinaryData, mTagOffsets[i], mRestOfBinaryDataLength, getValidationStringency());
+            }
+        }
+        return null;
+    }
+
     @Override
     protected SAMBinaryTagAndValue getBinaryAttributes() {
         if (!mAttributesDecoded) {
@@ -408,7 +531,7 @@ public class BAMRecord extends SAMRecord {
 
         mAttributesDecoded = true;
         final int tagsOffset = readNameSize() + cigarSize() + basesSize() + qualsSize();
-        final int tagsSize = mRestOfBinaryData.length - tagsOffset;
+        final int tagsSize = mRestOfBinaryDataLength - tagsOffset;
         final SAMBinaryTagAndValue attributes = BinaryTagCodec.readTags(mRestOfBinaryData, tagsOffset, tagsSize, getValidationStringency());
         setAttributes(attributes);
 
@@ -161,12 +161,7 @@ public class BAMRecordCodec implements SortingCollection.Codec<SAMRecord> {
         this.binaryCodec.writeInt(alignment.getMateReferenceIndex());
         this.binaryCodec.writeInt(alignment.getMateAlignmentStart() - 1);
         this.binaryCodec.writeInt(alignment.getInferredInsertSize());
-        final byte[] variableLengthBinaryBlock = alignment.getVariableBinaryRepresentation();
-        if (variableLengthBinaryBlock != null) {
-            // Don't need to encode variable-length block, because it is unchanged from
-            // when the record was read from a BAM file.
-            this.binaryCodec.writeBytes(variableLengthBinaryBlock);
-        } else {
+        if (!writeUnchangedVariableLengthBlock(alignment)) {
             if (alignment.getReadLength() != alignment.getBaseQualities().length &&
                     alignment.getBaseQualities().length != 0) {
                 throw new RuntimeException("Mismatch between read length and quals length writing read " +
@@ -204,6 +199,24 @@ public class BAMRecordCodec implements SortingCollection.Codec<SAMRecord> {
         }
     }
 
+    /**
+     * Don't need to encode the variable-length block if it is unchanged from when the record was read from a BAM file.
+     *
+     * @return true if the unchanged block was written, false if it must be encoded
+     */
+    private boolean writeUnchangedVariableLengthBlock(final SAMRecord alignment) {
+        if (alignment instanceof BAMRecord) {
+            // avoids copying the block if the record's buffer is being reused
+            return ((BAMRecord) alignment).writeVariableBinaryRepresentation(this.binaryCodec);
+        }
+        final byte[] variableLengthBinaryBlock = alignment.getVariableBinaryRepresentation();
+        if (variableLengthBinaryBlock == null) {
+            return false;
+        }
+        this.binaryCodec.writeBytes(variableLengthBinaryBlock);
+        return true;
+    }
+
     /**
      * Create a "Sentinel" cigar that will be placed in BAM file when the actual cigar has more than 0xffff operator,
      * which are not supported by the bam format. The actual cigar will be encoded and placed in the CG attribute.
@@ -256,6 +269,21 @@ public class BAMRecordCodec implements SortingCollection.Codec<SAMRecord> {
      */
     @Override
     public SAMRecord decode() {
+        return decode(null);
+    }
+
+    /**
+     * Read the next record from the input stream into an existing record, if one is provided, rather than creating a
+     * new one. All the state of the reused record is replaced, and the array that holds its undecoded variable-length
+     * data is reused if it is large enough, so records can be decoded without allocating. The caller must not retain
+     * any reference to the previous contents of the reused record, including arrays returned by its getters;
+     * use {@link SAMRecord#deepCopy()} to make a copy that can be retained.
+     *
+     * @param recordToReuse the record to decode into, or null to create a new record using the
+     * {@link SAMRecordFactory}
+     * @return the decoded record, which is recordToReuse if it was provided, or null if there are no more records
+     */
+    public BAMRecord decode(final BAMRecord recordToReuse) {
         final int recordLength;
         try {
             recordLength = this.binaryCodec.readInt();
@@ -278,11 +306,22 @@ public class BAMRecordCodec implements SortingCollection.Codec<SAMRecord> {
         final int mateReferenceID = this.binaryCodec.readInt();
         final int mateCoordinate = this.binaryCodec.readInt() + 1;
         final int insertSize = this.binaryCodec.readInt();
-        final byte[] restOfRecord = new byte[recordLength - BAMFileConstants.FIXED_BLOCK_SIZE];
-        this.binaryCodec.readBytes(restOfRecord);
-        final BAMRecord ret = this.samRecordFactory.createBAMRecord(
-                header, referenceID, coordinate, readNameLength, mappingQuality,
-                bin, cigarLen, flags, readLen, mateReferenceID, mateCoordinate, insertSize, restOfRecord);
+        final int restOfRecordLength = recordLength - BAMFileConstants.FIXED_BLOCK_SIZE;
+        final BAMRecord ret;
+        if (recordToReuse == null) {
+            final byte[] restOfRecord = new byte[restOfRecordLength];
+            this.binaryCodec.readBytes(restOfRecord);
+            ret = this.samRecordFactory.createBAMRecord(
+                    header, referenceID, coordinate, readNameLength, mappingQuality,
+                    bin, cigarLen, flags, readLen, mateReferenceID, mateCoordinate, insertSize, restOfRecord);
+        } else {
+            final byte[] restOfRecord = recordToReuse.getReusableBinaryDataBuffer(restOfRecordLength);
+            this.binaryCodec.readBytes(restOfRecord, 0, restOfRecordLength);
+            recordToReuse.reinitialize(
+                    header, referenceID, coordinate, readNameLength, mappingQuality,
+                    cigarLen, flags, readLen, mateReferenceID, mateCoordinate, insertSize, restOfRecord, restOfRecordLength);
+            ret = recordToReuse;
+        }
 
         if (null != header) {
             // don't reset a null header as this will clobber the reference and mate reference indices
@@ -290,4 +329,32 @@ public class BAMRecordCodec implements SortingCollection.Codec<SAMRecord> {
         }
         return ret;
     }
+
+    /**
+     * Read the next record from the input stream in its binary encoding, without decoding it.
+     *
+     * @param recordToReuse if non-null, the record whose buffer is filled, and which is returned
+     * @return the record, or null at EOF
+     */
+    public RawBAMRecord decodeRaw(final RawBAMRecord recordToReuse) {
+        final int recordLength;
+        try {
+            recordLength = this.binaryCodec.readInt();
+        } catch (final RuntimeEOFException e) {
+            return null;
+        }
+
+        if (recordLength < BAMFileConstants.FIXED_BLOCK_SIZE) {
+            throw new SAMFormatException("Invalid record length: " + recordLength);
+        }
+
+        final RawBAMRecord ret = recordToReuse != null ? recordToReuse : new RawBAMRecord();
+        final byte[] buffer = ret.prepareBuffer(recordLength + 4);
+        buffer[0] = (byte) recordLength;
+        buffer[1] = (byte) (recordLength >> 8);
+        buffer[2] = (byte) (recordLength >> 16);
+        buffer[3] = (byte) (recordLength >> 24);
+        this.binaryCodec.readBytes(buffer, 4, recordLength);
+        return ret;
+    }
 }
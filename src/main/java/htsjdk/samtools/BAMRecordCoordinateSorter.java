@@ -0,0 +1,504 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.SortingCollection;
+import htsjdk.samtools.util.TempStreamFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static htsjdk.samtools.RawBAMRecord.BIN_OFFSET;
+import static htsjdk.samtools.RawBAMRecord.BLOCK_SIZE_LENGTH;
+import static htsjdk.samtools.RawBAMRecord.CIGAR_LENGTH_OFFSET;
+import static htsjdk.samtools.RawBAMRecord.FLAGS_OFFSET;
+import static htsjdk.samtools.RawBAMRecord.INSERT_SIZE_OFFSET;
+import static htsjdk.samtools.RawBAMRecord.MAPPING_QUALITY_OFFSET;
+import static htsjdk.samtools.RawBAMRecord.MATE_POSITION_OFFSET;
+import static htsjdk.samtools.RawBAMRecord.MATE_REFERENCE_INDEX_OFFSET;
+import static htsjdk.samtools.RawBAMRecord.POSITION_OFFSET;
+import static htsjdk.samtools.RawBAMRecord.READ_LENGTH_OFFSET;
+import static htsjdk.samtools.RawBAMRecord.READ_NAME_LENGTH_OFFSET;
+import static htsjdk.samtools.RawBAMRecord.READ_NAME_OFFSET;
+import static htsjdk.samtools.RawBAMRecord.REFERENCE_INDEX_OFFSET;
+import static htsjdk.samtools.RawBAMRecord.readInt;
+import static htsjdk.samtools.RawBAMRecord.readUShort;
+
+/**
+ * Sorts SAMRecords into the order defined by {@link SAMRecordCoordinateComparator} while holding them in their
+ * BAM binary encoding, rather than as SAMRecord objects.
+ * <p>
+ * Each record is encoded once with {@link BAMRecordCodec} into large, reused byte[] arenas.  Alongside each record two
+ * packed primitive sort keys are kept: reference index and alignment start in one long, strand and the first
+ * bytes of the read name in another.  Records are sorted with {@link Arrays#parallelSort(long[], int, int)} on
+ * their coordinates packed with their index into a single primitive key, and runs of records at the same coordinates
+ * are then sorted on the strand and name key, falling back to comparing the raw bytes of the read name, flags, mapping
+ * quality and mate fields only when the keys are equal, so no record is decoded to be compared.  When more than
+ * maxRecordsInRam records have been added they are written, still in binary form, to a temporary file, and the files
+ * are merged by a {@link SortingCollection}, which honours {@link #setMaxFilesToMerge(int)}.
+ * <p>
+ * Records returned by the iterator are {@link BAMRecord}s created from the binary encoding, so their variable length
+ * fields are only decoded if accessed, and are written by {@link BAMRecordCodec} without being re-encoded.  As with
+ * {@link htsjdk.samtools.util.SortingCollection}, they are equal to, but not the same objects as, the records that
+ * were added.  Records that compare equal are returned in the order in which they were added.
+ */
+public class BAMRecordCoordinateSorter implements Iterable<SAMRecord> {
+    /** Size of each arena in which encoded records are stored. Larger records get an arena to themselves. */
+    private static final int ARENA_SIZE = 8 * 1024 * 1024;
+
+    /** Number of read name bytes packed into the name key. */
+    private static final int NAME_KEY_BYTES = 7;
+
+    private final SAMFileHeader header;
+    private final SAMRecordFactory samRecordFactory;
+    private final Path[] tmpDirs;
+    private final int maxRecordsInRam;
+    private final TempStreamFactory tempStreamFactory = new TempStreamFactory();
+
+    private final RecordBuffer recordBuffer = new RecordBuffer();
+    private final BAMRecordCodec encoder;
+
+    private final List<byte[]> arenas = new ArrayList<>();
+    private int currentArena = 0;
+    private int arenaPosition = 0;
+
+    // parallel arrays, one entry per record in RAM
+    private final long[] coordinateKeys;
+    private final long[] nameKeys;
+    private final long[] locations;
+    private int numRecordsInRam = 0;
+
+    // coordinates and index of each record packed for sorting, the sorted order of the records in RAM,
+    // and scratch space for the merge sort
+    private final long[] packedKeys;
+    private final int[] order;
+    private final int[] scratch;
+
+    // merges the files of records spilled to disk, decoding them with BAMRecordCodec
+    private final SortingCollection<SAMRecord> spilledRecords;
+    private boolean spilled = false;
+    private boolean doneAdding = false;
+    private boolean cleanedUp = false;
+
+    /**
+     * @param header          header of the records to be sorted, whose sequence dictionary resolves reference indices
+     * @param maxRecordsInRam how many records to accumulate before spilling to disk
+     * @param tmpDirs         where to write files of records that will not fit in RAM
+     */
+    public BAMRecordCoordinateSorter(final SAMFileHeader header, final int maxRecordsInRam, final Path... tmpDirs) {
+        if (maxRecordsInRam <= 0) {
+            throw new IllegalArgumentException("maxRecordsInRam must be > 0");
+        }
+        if (tmpDirs == null || tmpDirs.length == 0) {
+            throw new IllegalArgumentException("At least one temp directory must be provided.");
+        }
+        this.header = header;
+        this.samRecordFactory = new DefaultSAMRecordFactory();
+        this.tmpDirs = tmpDirs;
+        this.maxRecordsInRam = maxRecordsInRam;
+        this.encoder = new BAMRecordCodec(header);
+        this.encoder.setOutputStream(recordBuffer);
+        this.coordinateKeys = new long[maxRecordsInRam];
+        this.nameKeys = new long[maxRecordsInRam];
+        this.locations = new long[maxRecordsInRam];
+        this.packedKeys = new long[maxRecordsInRam];
+        this.order = new int[maxRecordsInRam];
+        this.scratch = new int[maxRecordsInRam];
+        // no records are added to it directly, so it needs room for only one in RAM
+        this.spilledRecords = SortingCollection.newInstance(SAMRecord.class, new BAMRecordCodec(header),
+                new SAMRecordCoordinateComparator(), 1, tmpDirs);
+    }
+
+    /**
+     * @return The maximum number of temporary files that are merged at the same time.
+     */
+    public int getMaxFilesToMerge() {
+        return spilledRecords.getMaxFilesToMerge();
+    }
+
+    /**
+     * Limit the number of temporary files that are merged (and so held open) at the same time.
+     * See {@link SortingCollection#setMaxFilesToMerge(int)}.  The default is no limit.
+     * @param maxFilesToMerge must be at least 2
+     */
+    public void setMaxFilesToMerge(final int maxFilesToMerge) {
+        spilledRecords.setMaxFilesToMerge(maxFilesToMerge);
+    }
+
+    /**
+     * Encode the record and add it to the records to be sorted.
+     */
+    public void add(final SAMRecord rec) {
+        if (doneAdding) {
+            throw new IllegalStateException("Cannot add after calling doneAdding()");
+        }
+        if (numRecordsInRam == maxRecordsInRam) {
+            spillToDisk();
+        }
+        recordBuffer.reset();
+        encoder.encode(rec);
+        final int length = recordBuffer.size();
+
+        byte[] arena = currentArena < arenas.size() ? arenas.get(currentArena) : null;
+        if (arena == null || arenaPosition + length > arena.length) {
+            if (arena != null) {
+                currentArena++;
+            }
+            arenaPosition = 0;
+            if (currentArena == arenas.size() || arenas.get(currentArena).length < length) {
+                arenas.add(currentArena, new byte[Math.max(ARENA_SIZE, length)]);
+            }
+            arena = arenas.get(currentArena);
+        }
+        System.arraycopy(recordBuffer.buffer(), 0, arena, arenaPosition, length);
+
+        coordinateKeys[numRecordsInRam] = coordinateKey(arena, arenaPosition);
+        nameKeys[numRecordsInRam] = nameKey(arena, arenaPosition);
+        locations[numRecordsInRam] = ((long) currentArena << 32) | arenaPosition;
+        numRecordsInRam++;
+        arenaPosition += length;
+    }
+
+    /**
+     * Called after the caller is done adding records.  Writes the records in RAM to disk if other records
+     * have already been written there.  iterator() also triggers this.
+     */
+    public void doneAdding() {
+        if (cleanedUp) {
+            throw new IllegalStateException("Cannot call doneAdding() after cleanup() was called.");
+        }
+        if (doneAdding) {
+            return;
+        }
+        doneAdding = true;
+        if (!spilled) {
+            sortRecordsInRam();
+        } else {
+            if (numRecordsInRam > 0) {
+                spillToDisk();
+            }
+            // Facilitate GC
+            arenas.clear();
+            spilledRecords.doneAdding();
+        }
+    }
+
+    /**
+     * Prepare to iterate through the records in order.  This method may be called more than once,
+     * but add() may not be called after this method has been called.
+     */
+    @Override
+    public CloseableIterator<SAMRecord> iterator() {
+        if (cleanedUp) {
+            throw new IllegalStateException("Cannot call iterator() after cleanup() was called.");
+        }
+        doneAdding();
+        return spilled ? spilledRecords.iterator() : new InMemoryIterator();
+    }
+
+    /**
+     * Delete any temporary files.  After this method is called, iterator() may not be called.
+     */
+    public void cleanup() {
+        doneAdding = true;
+        cleanedUp = true;
+        spilledRecords.cleanup();
+    }
+
+    /**
+     * Sort the records in RAM, write them to a temporary file that is handed to the SortingCollection that merges
+     * them, and clear the arenas for reuse.
+     */
+    private void spillToDisk() {
+        sortRecordsInRam();
+        final Path f;
+        try {
+            f = IOUtil.newTempPath("bamrecordsorter.", ".tmp", tmpDirs, IOUtil.FIVE_GBS);
+        } catch (final IOException e) {
+            throw new RuntimeIOException(e);
+        }
+        try (OutputStream os = tempStreamFactory.wrapTempOutputStream(Files.newOutputStream(f), Defaults.BUFFER_SIZE)) {
+            for (int i = 0; i < numRecordsInRam; i++) {
+                final long location = locations[order[i]];
+                final byte[] arena = arenas.get((int) (location >>> 32));
+                final int offset = (int) location;
+                os.write(arena, offset, readInt(arena, offset) + BLOCK_SIZE_LENGTH);
+            }
+            os.flush();
+        } catch (final IOException e) {
+            IOUtil.deletePaths(f);
+            throw new RuntimeIOException("Problem writing temporary file " + f.toUri() +
+                    ".  Try setting TMP_DIR to a file system with lots of space.", e);
+        }
+        spilledRecords.addSortedFile(f);
+        spilled = true;
+        numRecordsInRam = 0;
+        currentArena = 0;
+        arenaPosition = 0;
+    }
+
+    private void sortRecordsInRam() {
+        if (sortPackedKeys()) {
+            return;
+        }
+        for (int i = 0; i < numRecordsInRam; i++) {
+            order[i] = i;
+        }
+        mergeSort(0, numRecordsInRam);
+    }
+
+    /**
+     * Sort by packing the reference index, alignment start and index of each record into one long, sorting those
+     * with {@link Arrays#parallelSort(long[], int, int)}, and then merge sorting each run of records with the same
+     * coordinates on the remaining fields.  Because the index is the least significant part of the packed key,
+     * each run starts out in the order in which its records were added, and records that compare equal keep it.
+     * @return false, without sorting, if the coordinates and indices of the records do not fit in a long
+     */
+    private boolean sortPackedKeys() {
+        long maxReferenceIndex = -1;
+        long maxAlignmentStart = 0;
+        for (int i = 0; i < numRecordsInRam; i++) {
+            final long key = coordinateKeys[i];
+            if (key != Long.MAX_VALUE) {
+                maxReferenceIndex = Math.max(maxReferenceIndex, key >>> 32);
+                maxAlignmentStart = Math.max(maxAlignmentStart, key & 0xFFFFFFFFL);
+            }
+        }
+        // unmapped reads without a position sort after those on any reference
+        final long unmappedReferenceIndex = maxReferenceIndex + 1;
+        final int indexBits = bitsNeeded(numRecordsInRam - 1);
+        final int startBits = bitsNeeded(maxAlignmentStart);
+        if (indexBits + startBits + bitsNeeded(unmappedReferenceIndex) > 63) {
+            return false;
+        }
+        for (int i = 0; i < numRecordsInRam; i++) {
+            final long key = coordinateKeys[i];
+            final long referenceIndex = key == Long.MAX_VALUE ? unmappedReferenceIndex : key >>> 32;
+            final long alignmentStart = key == Long.MAX_VALUE ? 0 : key & 0xFFFFFFFFL;
+            packedKeys[i] = (referenceIndex << (startBits + indexBits)) | (alignmentStart << indexBits) | i;
+        }
+        Arrays.parallelSort(packedKeys, 0, numRecordsInRam);
+
+        final long indexMask = (1L << indexBits) - 1;
+        for (int i = 0; i < numRecordsInRam; i++) {
+            order[i] = (int) (packedKeys[i] & indexMask);
+        }
+        int runStart = 0;
+        for (int i = 1; i <= numRecordsInRam; i++) {
+            if (i == numRecordsInRam || (packedKeys[i] >>> indexBits) != (packedKeys[runStart] >>> indexBits)) {
+                if (i - runStart > 1) {
+                    mergeSort(runStart, i);
+                }
+                runStart = i;
+            }
+        }
+        return true;
+    }
+
+    private static int bitsNeeded(final long value) {
+        return Long.SIZE - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * Stable merge sort of order[from, to) by comparing the records they index.
+     */
+    private void mergeSort(final int from, final int to) {
+        if (to - from <= 16) {
+            // insertion sort small ranges
+            for (int i = from + 1; i < to; i++) {
+                final int value = order[i];
+                int j = i - 1;
+                while (j >= from && compareInRam(order[j], value) > 0) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = value;
+            }
+            return;
+        }
+        final int mid = (from + to) >>> 1;
+        mergeSort(from, mid);
+        mergeSort(mid, to);
+        if (compareInRam(order[mid - 1], order[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(order, from, scratch, from, to - from);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < mid && compareInRam(scratch[left], scratch[right]) <= 0)) {
+                order[i] = scratch[left++];
+            } else {
+                order[i] = scratch[right++];
+            }
+        }
+    }
+
+    private int compareInRam(final int i, final int j) {
+        int cmp = Long.compare(coordinateKeys[i], coordinateKeys[j]);
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = Long.compare(nameKeys[i], nameKeys[j]);
+        if (cmp != 0) {
+            return cmp;
+        }
+        final long location1 = locations[i];
+        final long location2 = locations[j];
+        return compareTieBreakFields(arenas.get((int) (location1 >>> 32)), (int) location1,
+                arenas.get((int) (location2 >>> 32)), (int) location2);
+    }
+
+    /**
+     * Packs reference index and alignment start so that comparing keys is equivalent to
+     * {@link SAMRecordCoordinateComparator#fileOrderCompare(SAMRecord, SAMRecord)}.
+     */
+    static long coordinateKey(final byte[] record, final int offset) {
+        final int referenceIndex = readInt(record, offset + REFERENCE_INDEX_OFFSET);
+        if (referenceIndex == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+            // unmapped reads without a position sort last, in no particular coordinate order
+            return Long.MAX_VALUE;
+        }
+        final int alignmentStart = readInt(record, offset + POSITION_OFFSET) + 1;
+        return ((long) referenceIndex << 32) | (alignmentStart & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Packs the strand and the first bytes of the read name so that, for records with equal coordinate keys,
+     * comparing keys is consistent with {@link SAMRecordCoordinateComparator}.
+     */
+    static long nameKey(final byte[] record, final int offset) {
+        final boolean negativeStrand = (readUShort(record, offset + FLAGS_OFFSET) & SAMFlag.READ_REVERSE_STRAND.intValue()) != 0;
+        long key = negativeStrand ? 1L << 62 : 0L;
+        // the length includes the null terminator, which pads shorter names with zeros
+        final int nameLength = Math.min(record[offset + READ_NAME_LENGTH_OFFSET] & 0xFF, NAME_KEY_BYTES);
+        for (int k = 0; k < nameLength; k++) {
+            key |= (long) (record[offset + READ_NAME_OFFSET + k] & 0xFF) << (8 * (NAME_KEY_BYTES - 1 - k));
+        }
+        return key;
+    }
+
+    /**
+     * Compares the fields that {@link SAMRecordCoordinateComparator} uses after coordinate and strand:
+     * the full read name, flags, mapping quality, mate reference index, mate alignment start and insert size.
+     */
+    static int compareTieBreakFields(final byte[] record1, final int offset1, final byte[] record2, final int offset2) {
+        // names are compared without their null terminators
+        final int nameLength1 = (record1[offset1 + READ_NAME_LENGTH_OFFSET] & 0xFF) - 1;
+        final int nameLength2 = (record2[offset2 + READ_NAME_LENGTH_OFFSET] & 0xFF) - 1;
+        final int minLength = Math.min(nameLength1, nameLength2);
+        for (int k = 0; k < minLength; k++) {
+            final int cmp = (record1[offset1 + READ_NAME_OFFSET + k] & 0xFF) - (record2[offset2 + READ_NAME_OFFSET + k] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        int cmp = nameLength1 - nameLength2;
+        if (cmp != 0) return cmp;
+        cmp = Integer.compare(readUShort(record1, offset1 + FLAGS_OFFSET), readUShort(record2, offset2 + FLAGS_OFFSET));
+        if (cmp != 0) return cmp;
+        cmp = Integer.compare(record1[offset1 + MAPPING_QUALITY_OFFSET] & 0xFF, record2[offset2 + MAPPING_QUALITY_OFFSET] & 0xFF);
+        if (cmp != 0) return cmp;
+        cmp = Integer.compare(readInt(record1, offset1 + MATE_REFERENCE_INDEX_OFFSET), readInt(record2, offset2 + MATE_REFERENCE_INDEX_OFFSET));
+        if (cmp != 0) return cmp;
+        cmp = Integer.compare(readInt(record1, offset1 + MATE_POSITION_OFFSET), readInt(record2, offset2 + MATE_POSITION_OFFSET));
+        if (cmp != 0) return cmp;
+        return Integer.compare(readInt(record1, offset1 + INSERT_SIZE_OFFSET), readInt(record2, offset2 + INSERT_SIZE_OFFSET));
+    }
+
+    /**
+     * Creates a (lazily decoded) BAMRecord from its binary encoding, as {@link BAMRecordCodec#decode()} would.
+     */
+    private SAMRecord decode(final byte[] record, final int offset) {
+        final int blockSize = readInt(record, offset);
+        final byte[] restOfRecord = Arrays.copyOfRange(record, offset + READ_NAME_OFFSET, offset + BLOCK_SIZE_LENGTH + blockSize);
+        final BAMRecord ret = samRecordFactory.createBAMRecord(header,
+                readInt(record, offset + REFERENCE_INDEX_OFFSET),
+                readInt(record, offset + POSITION_OFFSET) + 1,
+                (short) (record[offset + READ_NAME_LENGTH_OFFSET] & 0xFF),
+                (short) (record[offset + MAPPING_QUALITY_OFFSET] & 0xFF),
+                readUShort(record, offset + BIN_OFFSET),
+                readUShort(record, offset + CIGAR_LENGTH_OFFSET),
+                readUShort(record, offset + FLAGS_OFFSET),
+                readInt(record, offset + READ_LENGTH_OFFSET),
+                readInt(record, offset + MATE_REFERENCE_INDEX_OFFSET),
+                readInt(record, offset + MATE_POSITION_OFFSET) + 1,
+                readInt(record, offset + INSERT_SIZE_OFFSET),
+                restOfRecord);
+        if (null != header) {
+            // don't reset a null header as this will clobber the reference and mate reference indices
+            ret.setHeader(header);
+        }
+        return ret;
+    }
+
+    /**
+     * ByteArrayOutputStream that exposes its buffer, so encoded records can be copied without an extra allocation.
+     */
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+        RecordBuffer() {
+            super(1024);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * For iteration when all records fit in RAM.
+     */
+    private class InMemoryIterator implements CloseableIterator<SAMRecord> {
+        private int iterationIndex = 0;
+
+        @Override
+        public boolean hasNext() {
+            return iterationIndex < numRecordsInRam;
+        }
+
+        @Override
+        public SAMRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final long location = locations[order[iterationIndex++]];
+            return decode(arenas.get((int) (location >>> 32)), (int) location);
+        }
+
+        @Override
+        public void close() {
+            // nothing to do
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.zip.InflaterFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Splits a BAM file into shards of similar compressed size that can be read independently.  Each shard starts at the
+ * first record that starts at or after an evenly spaced position in the file.  Record start positions are taken from
+ * a splitting index (SBI) or the linear index of a BAI if there is one in the part of the file being split, and are
+ * otherwise found by scanning for a BGZF block and then for a sequence of bytes that decode as valid records.
+ */
+final class BAMShardSplitter {
+    /** Number of uncompressed bytes read when looking for records after a block boundary. */
+    private static final int RECORD_SEARCH_BYTES = 512 * 1024;
+    /** Number of consecutive records that must be valid for a position to be accepted as a record start. */
+    private static final int RECORDS_TO_VALIDATE = 5;
+    /** Block size of a record that has only its fixed length fields. */
+    private static final int MIN_RECORD_BLOCK_SIZE = RawBAMRecord.READ_NAME_OFFSET - RawBAMRecord.BLOCK_SIZE_LENGTH;
+
+    private final Supplier<SeekableStream> streamSupplier;
+    private final InflaterFactory inflaterFactory;
+    private final int numReferences;
+
+    BAMShardSplitter(final Supplier<SeekableStream> streamSupplier, final InflaterFactory inflaterFactory,
+                     final int numReferences) {
+        this.streamSupplier = streamSupplier;
+        this.inflaterFactory = inflaterFactory;
+        this.numReferences = numReferences;
+    }
+
+    /**
+     * @param firstRecordPointer virtual file pointer of the first record in the file
+     * @param fileLength the length of the file in bytes
+     * @param recordStarts virtual file pointers of known record starts in ascending order, which may be empty
+     * @param numShards the maximum number of shards
+     * @return contiguous spans, the last of which extends to the end of the file
+     */
+    List<BAMFileSpan> split(final long firstRecordPointer, final long fileLength, final long[] recordStarts, final int numShards) {
+        final List<Long> boundaries = new ArrayList<>();
+        boundaries.add(firstRecordPointer);
+        for (int i = 1; i < numShards; i++) {
+            final long splitAddress = fileLength * i / numShards;
+            final long nextSplitAddress = fileLength * (i + 1) / numShards;
+            long boundary = ceiling(recordStarts, BlockCompressedFilePointerUtil.makeFilePointer(splitAddress));
+            if (boundary < 0 || BlockCompressedFilePointerUtil.getBlockAddress(boundary) >= nextSplitAddress) {
+                // the index has no record starts in this part of the file, for example in unmapped reads at the end
+                boundary = findRecordStart(splitAddress, nextSplitAddress);
+            }
+            if (boundary > boundaries.get(boundaries.size() - 1)) {
+                boundaries.add(boundary);
+            }
+        }
+
+        final List<BAMFileSpan> shards = new ArrayList<>(boundaries.size());
+        for (int i = 0; i < boundaries.size(); i++) {
+            final long end = i + 1 < boundaries.size() ? boundaries.get(i + 1) : Long.MAX_VALUE;
+            shards.add(new BAMFileSpan(new Chunk(boundaries.get(i), end)));
+        }
+        return shards;
+    }
+
+    /**
+     * @return the distinct non-zero entries of the linear indexes of a BAI index in ascending order, each of which is
+     * the start of a record, or an empty array if the index has no linear index
+     */
+    static long[] getLinearIndexRecordStarts(final BAMIndex index, final int numReferences) {
+        long[] recordStarts = new long[0];
+        for (int ref = 0; ref < numReferences; ref++) {
+            final long[] linearIndex;
+            if (index instanceof SharedBAMFileIndex) {
+                linearIndex = ((SharedBAMFileIndex) index).getCompactIndex().getLinearIndex(ref);
+            } else if (index instanceof CompactBAMFileIndex) {
+                linearIndex = ((CompactBAMFileIndex) index).getLinearIndex(ref);
+            } else if (index instanceof AbstractBAMFileIndex && !(index instanceof CSIIndex) &&
+                    ref < ((AbstractBAMFileIndex) index).getNumberOfReferences()) {
+                final BAMIndexContent content = ((AbstractBAMFileIndex) index).query(ref, 1, -1);
+                linearIndex = content == null ? null : content.getLinearIndex().getIndexEntries();
+            } else {
+                linearIndex = null;
+            }
+            if (linearIndex != null) {
+                final int length = recordStarts.length;
+                recordStarts = Arrays.copyOf(recordStarts, length + linearIndex.length);
+                System.arraycopy(linearIndex, 0, recordStarts, length, linearIndex.length);
+            }
+        }
+        Arrays.sort(recordStarts);
+        int numDistinct = 0;
+        for (final long recordStart : recordStarts) {
+            if (recordStart > 0 && (numDistinct == 0 || recordStart != recordStarts[numDistinct - 1])) {
+                recordStarts[numDistinct++] = recordStart;
+            }
+        }
+        return Arrays.copyOf(recordStarts, numDistinct);
+    }
+
+    /**
+     * @return the first of the sorted values that is at least value, or -1 if there is none
+     */
+    private static long ceiling(final long[] sortedValues, final long value) {
+        int index = Arrays.binarySearch(sortedValues, value);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < sortedValues.length ? sortedValues[index] : -1;
+    }
+
+    /**
+     * Find the first record that starts in a block at or after startAddress.
+     * @return the virtual file pointer of the record, or -1 if there is no block starting before endAddress that
+     * contains the start of a record
+     */
+    long findRecordStart(final long startAddress, final long endAddress) {
+        try (SeekableStream stream = streamSupplier.get();
+             BlockCompressedInputStream compressedStream = new BlockCompressedInputStream(stream, inflaterFactory)) {
+            long blockAddress = findBlock(stream, startAddress);
+            final byte[] buffer = new byte[RECORD_SEARCH_BYTES];
+            while (blockAddress >= 0 && blockAddress < endAddress) {
+                compressedStream.seek(BlockCompressedFilePointerUtil.makeFilePointer(blockAddress));
+                final int blockLength = compressedStream.available();
+                int length = 0;
+                int n;
+                while (length < buffer.length && (n = compressedStream.read(buffer, length, buffer.length - length)) > 0) {
+                    length += n;
+                }
+                for (int offset = 0; offset < blockLength; offset++) {
+                    if (isRecordStart(buffer, offset, length)) {
+                        return BlockCompressedFilePointerUtil.makeFilePointer(blockAddress, offset);
+                    }
+                }
+                blockAddress = blockLength == 0 ? -1 : advance(compressedStream, blockAddress);
+            }
+            return -1;
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Error finding a record start in BAM file", e);
+        }
+    }
+
+    /**
+     * @return the address of the block after the one at blockAddress
+     */
+    private static long advance(final BlockCompressedInputStream compressedStream, final long blockAddress) throws IOException {
+        compressedStream.seek(BlockCompressedFilePointerUtil.makeFilePointer(blockAddress));
+        final long blockLength = compressedStream.available();
+        if (compressedStream.skip(blockLength) != blockLength) {
+            throw new IOException("Unexpected end of block at " + blockAddress);
+        }
+        // at the end of a block, the file pointer is the start of the next block
+        return BlockCompressedFilePointerUtil.getBlockAddress(compressedStream.getFilePointer());
+    }
+
+    /**
+     * Find the first BGZF block that starts at or after address, which is recognized by a block header whose length
+     * points at another block header or at the end of the file.
+     * @return the address of the block, or -1 if there is none
+     */
+    static long findBlock(final SeekableStream stream, final long address) throws IOException {
+        final long fileLength = stream.length();
+        final byte[] buffer = new byte[2 * BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE + BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH];
+        for (long bufferStart = address; bufferStart < fileLength; bufferStart += BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE) {
+            stream.seek(bufferStart);
+            final int length = readFully(stream, buffer);
+            final int searchEnd = Math.min(length, BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE);
+            for (int offset = 0; offset < searchEnd; offset++) {
+                final int blockSize = getBlockSize(buffer, offset, length);
+                if (blockSize > 0) {
+                    final long nextBlock = bufferStart + offset + blockSize;
+                    if (nextBlock == fileLength || (nextBlock - bufferStart < length &&
+                            getBlockSize(buffer, offset + blockSize, length) > 0)) {
+                        return bufferStart + offset;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int readFully(final SeekableStream stream, final byte[] buffer) throws IOException {
+        int length = 0;
+        int n;
+        while (length < buffer.length && (n = stream.read(buffer, length, buffer.length - length)) > 0) {
+            length += n;
+        }
+        return length;
+    }
+
+    /**
+     * @return the total size of the BGZF block whose header is at offset, or 0 if there is no block header there
+     */
+    private static int getBlockSize(final byte[] buffer, final int offset, final int length) {
+        if (offset + BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH > length ||
+                buffer[offset] != BlockCompressedStreamConstants.GZIP_ID1 ||
+                (buffer[offset + 1] & 0xFF) != BlockCompressedStreamConstants.GZIP_ID2 ||
+                buffer[offset + 2] != BlockCompressedStreamConstants.GZIP_CM_DEFLATE ||
+                buffer[offset + 3] != BlockCompressedStreamConstants.GZIP_FLG ||
+                RawBAMRecord.readUShort(buffer, offset + 10) != BlockCompressedStreamConstants.GZIP_XLEN ||
+                buffer[offset + 12] != BlockCompressedStreamConstants.BGZF_ID1 ||
+                buffer[offset + 13] != BlockCompressedStreamConstants.BGZF_ID2 ||
+                RawBAMRecord.readUShort(buffer, offset + 14) != BlockCompressedStreamConstants.BGZF_LEN) {
+            return 0;
+        }
+        return RawBAMRecord.readUShort(buffer, offset + BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET) + 1;
+    }
+
+    /**
+     * @return true if the uncompressed data at offset decodes as a sequence of valid records, up to
+     * {@link #RECORDS_TO_VALIDATE} records or the end of the data.  A record that is cut off by the end of the data
+     * is only accepted after at least one whole record has been validated.
+     */
+    boolean isRecordStart(final byte[] buffer, final int offset, final int length) {
+        int recordOffset = offset;
+        for (int i = 0; i < RECORDS_TO_VALIDATE && recordOffset < length; i++) {
+            if (!isValidRecord(buffer, recordOffset, length, i)) {
+                return false;
+            }
+            if (recordOffset + RawBAMRecord.READ_NAME_OFFSET > length) {
+                // a valid partial record after a whole one, which is as far as the data goes
+                return true;
+            }
+            final long recordEnd = recordOffset + (long) RawBAMRecord.BLOCK_SIZE_LENGTH + RawBAMRecord.readInt(buffer, recordOffset);
+            if (recordEnd > length && i == 0) {
+                // the first record is cut off, so nothing after it can be checked
+                return false;
+            }
+            recordOffset = (int) Math.min(recordEnd, length);
+        }
+        return true;
+    }
+
+    /**
+     * Check the fields of a record that is at least partly in the buffer, as far as they are in the buffer.
+     * @param chainIndex the number of records before this one that have already been validated
+     */
+    private boolean isValidRecord(final byte[] buffer, final int offset, final int length, final int chainIndex) {
+        if (offset + RawBAMRecord.READ_NAME_OFFSET > length) {
+            // too little of the record to check, which is only accepted after a whole valid record
+            return chainIndex > 0;
+        }
+        final int blockSize = RawBAMRecord.readInt(buffer, offset);
+        if (blockSize < MIN_RECORD_BLOCK_SIZE) {
+            // also rejects negative sizes, before anything is read at an offset computed from them
+            return false;
+        }
+        final int referenceIndex = RawBAMRecord.readInt(buffer, offset + RawBAMRecord.REFERENCE_INDEX_OFFSET);
+        final int alignmentStart = RawBAMRecord.readInt(buffer, offset + RawBAMRecord.POSITION_OFFSET);
+        final int readNameLength = buffer[offset + RawBAMRecord.READ_NAME_LENGTH_OFFSET] & 0xFF;
+        final int cigarLength = RawBAMRecord.readUShort(buffer, offset + RawBAMRecord.CIGAR_LENGTH_OFFSET);
+        final int readLength = RawBAMRecord.readInt(buffer, offset + RawBAMRecord.READ_LENGTH_OFFSET);
+        final int mateReferenceIndex = RawBAMRecord.readInt(buffer, offset + RawBAMRecord.MATE_REFERENCE_INDEX_OFFSET);
+        final int mateAlignmentStart = RawBAMRecord.readInt(buffer, offset + RawBAMRecord.MATE_POSITION_OFFSET);
+        if (readNameLength < 1 || readLength < 0 ||
+                referenceIndex < -1 || referenceIndex >= numReferences ||
+                mateReferenceIndex < -1 || mateReferenceIndex >= numReferences ||
+                alignmentStart < -1 || mateAlignmentStart < -1 ||
+                (referenceIndex == -1 && alignmentStart != -1)) {
+            return false;
+        }
+        if ((long) MIN_RECORD_BLOCK_SIZE + readNameLength + 4L * cigarLength + (readLength + 1) / 2 + (long) readLength > blockSize) {
+            return false;
+        }
+        final int nameStart = offset + RawBAMRecord.READ_NAME_OFFSET;
+        for (int i = 0; i < readNameLength && nameStart + i < length; i++) {
+            final byte b = buffer[nameStart + i];
+            if (i == readNameLength - 1 ? b != 0 : (b < '!' || b > '~')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
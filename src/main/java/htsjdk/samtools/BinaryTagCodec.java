@@ -29,6 +29,7 @@ import htsjdk.samtools.util.StringUtil;
 import java.lang.reflect.Array;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 
 /**
  * Converter between disk and in-memory representation of a SAMRecord tag.
@@ -305,6 +306,115 @@ public class BinaryTagCodec {
         return head;
     }
 
+    /**
+     * Find where each tag starts in the disk representation of tags, skipping over the values without decoding them.
+     * @param binaryRep Byte buffer containing file representation of tags.
+     * @param offset Where in binaryRep tags start.
+     * @param length How many bytes in binaryRep are tag storage.
+     * @return the offset in binaryRep of each tag, in the order in which they are stored
+     */
+    public static int[] findTagOffsets(final byte[] binaryRep, final int offset, final int length) {
+        int[] offsets = new int[16];
+        int numTags = 0;
+        final int end = offset + length;
+        int position = offset;
+        while (position < end) {
+            if (numTags == offsets.length) {
+                offsets = Arrays.copyOf(offsets, numTags * 2);
+            }
+            offsets[numTags++] = position;
+            position = skipTag(binaryRep, position, end);
+        }
+        return Arrays.copyOf(offsets, numTags);
+    }
+
+    /**
+     * @param binaryRep Byte buffer containing file representation of tags.
+     * @param tagOffset Where in binaryRep the tag starts, as returned by {@link #findTagOffsets(byte[], int, int)}.
+     * @return Binary representation of the 2-char tag name, as created by {@link SAMTag#makeBinaryTag(String)}.
+     */
+    public static short getTag(final byte[] binaryRep, final int tagOffset) {
+        return (short) ((binaryRep[tagOffset] & 0xff) | (binaryRep[tagOffset + 1] << 8));
+    }
+
+    /**
+     * Convert the value of a single tag from little-endian disk representation to in-memory representation.
+     * @param binaryRep Byte buffer containing file representation of tags.
+     * @param tagOffset Where in binaryRep the tag starts, as returned by {@link #findTagOffsets(byte[], int, int)}.
+     * @param end Where in binaryRep tag storage ends.
+     * @return Value in in-memory Object form, as it would be returned by {@link #readTags}.
+     */
+    public static Object readTagValue(final byte[] binaryRep, final int tagOffset, final int end,
+                                      final ValidationStringency validationStringency) {
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(binaryRep, tagOffset + 2, end - tagOffset - 2);
+        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        final byte tagType = byteBuffer.get();
+        if (tagType != 'B') {
+            return readSingleValue(tagType, byteBuffer, validationStringency);
+        }
+        return readArray(byteBuffer, validationStringency).value;
+    }
+
+    /**
+     * @return the position in binaryRep following the tag that starts at position
+     */
+    private static int skipTag(final byte[] binaryRep, final int position, final int end) {
+        if (end - position < FIXED_TAG_SIZE) {
+            throw new SAMFormatException("Truncated tag at offset " + position);
+        }
+        final byte tagType = binaryRep[position + 2];
+        long next = position + FIXED_TAG_SIZE;
+        switch (tagType) {
+            case 'Z':
+            case 'H':
+                while (next < end && binaryRep[(int) next] != 0) {
+                    next++;
+                }
+                // skip the null terminator
+                next++;
+                break;
+            case 'B': {
+                if (end - next < FIXED_BINARY_ARRAY_TAG_SIZE) {
+                    throw new SAMFormatException("Truncated array tag at offset " + position);
+                }
+                final int p = (int) next;
+                final int length = (binaryRep[p + 1] & 0xff) | ((binaryRep[p + 2] & 0xff) << 8) |
+                        ((binaryRep[p + 3] & 0xff) << 16) | ((binaryRep[p + 4] & 0xff) << 24);
+                next += FIXED_BINARY_ARRAY_TAG_SIZE + (long) getSingleValueSize(Character.toLowerCase(binaryRep[p]), 'B') * length;
+                break;
+            }
+            default:
+                next += getSingleValueSize(tagType, tagType);
+        }
+        if (next > end || next < position) {
+            throw new SAMFormatException("Tag at offset " + position + " extends beyond the end of the tags");
+        }
+        return (int) next;
+    }
+
+    /**
+     * @return the size in bytes of a fixed-size value of the given type
+     */
+    private static int getSingleValueSize(final int valueType, final int tagType) {
+        switch (valueType) {
+            case 'A':
+            case 'c':
+            case 'C':
+                return 1;
+            case 's':
+            case 'S':
+                return 2;
+            case 'i':
+            case 'I':
+            case 'f':
+                return 4;
+            default:
+                throw new SAMFormatException(tagType == 'B' ?
+                        "Unrecognized tag array type: " + (char) valueType :
+                        "Unrecognized tag type: " + (char) valueType);
+        }
+    }
+
     /**
      * Read value of specified non-array type.
      * @param tagType What type to read.
@@ -1,17 +1,29 @@
 package htsjdk.samtools;
 
+import htsjdk.samtools.cram.build.CompressionHeaderFactory;
 import htsjdk.samtools.cram.build.ContainerFactory;
 import htsjdk.samtools.cram.build.CramIO;
-import htsjdk.samtools.cram.common.CramVersions;
+import htsjdk.samtools.cram.common.CRAMVersion;
 import htsjdk.samtools.cram.ref.CRAMReferenceSource;
 import htsjdk.samtools.cram.structure.*;
 import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.SharedThreadPool;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Class for writing SAMRecords into a series of CRAM containers on an output stream, with an optional index.
+ *
+ * If the {@link CRAMEncodingStrategy} requests more than zero encoding threads, each container's compression
+ * header and slices are created and compressed on a shared pool of worker threads while the caller continues to
+ * add records for the next container. Containers are always written and indexed in the order in which they were
+ * accumulated.
  */
 public class CRAMContainerStreamWriter {
     private final OutputStream outputStream;
@@ -19,6 +31,15 @@ public class CRAMContainerStreamWriter {
     private final SAMFileHeader samFileHeader;
     private final ContainerFactory containerFactory;
     private final CRAMIndexer cramIndexer;
+    private final CRAMVersion cramVersion;
+
+    // State used only when containers are encoded on the shared thread pool.
+    private final CRAMEncodingStrategy encodingStrategy;
+    private final int encodingThreads;
+    /** Containers that have been handed to the thread pool, in the order they must be written. */
+    private final Deque<Future<EncodedContainer>> pendingContainers = new ArrayDeque<>();
+    /** Compression header factories that are not used by a pending container. */
+    private final Deque<CompressionHeaderFactory> freeCompressionHeaderFactories = new ArrayDeque<>();
 
     private long streamOffset = 0;
 
@@ -88,6 +109,12 @@ public class CRAMContainerStreamWriter {
         this.outputStream = outputStream;
         this.cramIndexer = indexer;
         this.outputStreamIdentifier = outputIdentifier;
+        this.cramVersion = encodingStrategy.getCRAMVersion();
+        this.encodingStrategy = encodingStrategy;
+        // the compressors of a custom encoding map would be shared by all containers, so can't be used concurrently
+        this.encodingThreads = encodingStrategy.getCustomCompressionHeaderEncodingMap() == null ?
+                encodingStrategy.getEncodingThreads() :
+                0;
         this.containerFactory = new ContainerFactory(samFileHeader, encodingStrategy, referenceSource);
     }
 
@@ -96,9 +123,16 @@ public class CRAMContainerStreamWriter {
      * @param alignment must not be null
      */
     public void writeAlignment(final SAMRecord alignment) {
-        final Container container = containerFactory.getNextContainer(alignment, streamOffset);
-        if (container != null) {
-            writeContainer(container);
+        if (encodingThreads == 0) {
+            final Container container = containerFactory.getNextContainer(alignment, streamOffset);
+            if (container != null) {
+                writeContainer(container);
+            }
+        } else {
+            final ContainerFactory.PendingContainer pendingContainer = containerFactory.getNextPendingContainer(alignment);
+            if (pendingContainer != null) {
+                submitContainer(pendingContainer);
+            }
         }
     }
 
@@ -107,7 +141,7 @@ public class CRAMContainerStreamWriter {
      */
     // TODO: retained for backward compatibility for disq in order to run GATK tests (remove before merging this branch)
     public void writeHeader(final SAMFileHeader requestedSAMFileHeader) {
-        final CramHeader cramHeader = new CramHeader(CramVersions.DEFAULT_CRAM_VERSION, outputStreamIdentifier);
+        final CramHeader cramHeader = new CramHeader(cramVersion, outputStreamIdentifier);
         streamOffset = CramIO.writeCramHeader(cramHeader, outputStream);
         streamOffset += Container.writeSAMFileHeaderContainer(cramHeader.getCRAMVersion(), requestedSAMFileHeader, outputStream);
     }
@@ -126,12 +160,20 @@ public class CRAMContainerStreamWriter {
      */
     public void finish(final boolean writeEOFContainer) {
         try {
-            final Container container = containerFactory.getFinalContainer(streamOffset);
-            if (container != null) {
-                writeContainer(container);
+            if (encodingThreads == 0) {
+                final Container container = containerFactory.getFinalContainer(streamOffset);
+                if (container != null) {
+                    writeContainer(container);
+                }
+            } else {
+                final ContainerFactory.PendingContainer pendingContainer = containerFactory.getFinalPendingContainer();
+                if (pendingContainer != null) {
+                    submitContainer(pendingContainer);
+                }
+                drainPendingContainers(0);
             }
             if (writeEOFContainer) {
-                CramIO.writeCramEOF(CramVersions.DEFAULT_CRAM_VERSION, outputStream);
+                CramIO.writeCramEOF(cramVersion, outputStream);
             }
             outputStream.flush();
             if (cramIndexer != null) {
@@ -144,7 +186,11 @@ public class CRAMContainerStreamWriter {
     }
 
     protected void writeContainer(final Container container) {
-        streamOffset += container.write(CramVersions.DEFAULT_CRAM_VERSION, outputStream);
+        streamOffset += container.write(cramVersion, outputStream);
+        indexContainer(container);
+    }
+
+    private void indexContainer(final Container container) {
         if (cramIndexer != null) {
             // using silent validation here because the reads have been through validation already or
             // they have been generated somehow through the htsjdk
@@ -152,4 +198,68 @@ public class CRAMContainerStreamWriter {
         }
     }
 
+    /**
+     * Queue a container to be built, compressed and serialized on the thread pool. Each pending container uses
+     * its own {@link CompressionHeaderFactory}, since the factory's encoding map and compressors are not thread-safe.
+     */
+    private void submitContainer(final ContainerFactory.PendingContainer pendingContainer) {
+        // Bound the number of containers in flight so that memory use does not grow without limit
+        drainPendingContainers(encodingThreads - 1);
+
+        final CompressionHeaderFactory compressionHeaderFactory = freeCompressionHeaderFactories.isEmpty() ?
+                new CompressionHeaderFactory(encodingStrategy) :
+                freeCompressionHeaderFactories.removeFirst();
+        pendingContainers.addLast(SharedThreadPool.submit(() -> {
+            // the byte offset isn't known until all preceding containers have been written
+            final Container container = pendingContainer.build(compressionHeaderFactory, 0);
+            final ByteArrayOutputStream containerBytes = new ByteArrayOutputStream();
+            container.write(cramVersion, containerBytes);
+            return new EncodedContainer(container, containerBytes, compressionHeaderFactory);
+        }));
+    }
+
+    /**
+     * Waits for queued containers to be encoded and writes them in order until no more than maxPending remain.
+     */
+    private void drainPendingContainers(final int maxPending) {
+        while (pendingContainers.size() > maxPending) {
+            final EncodedContainer encodedContainer;
+            try {
+                encodedContainer = pendingContainers.removeFirst().get();
+            } catch (final InterruptedException e) {
+                throw new RuntimeException("Interrupted waiting for CRAM encoding thread", e);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException("Failed to encode CRAM container", e.getCause());
+            }
+            encodedContainer.container.setContainerByteOffset(streamOffset);
+            try {
+                encodedContainer.containerBytes.writeTo(outputStream);
+            } catch (final IOException e) {
+                throw new RuntimeIOException(e);
+            }
+            streamOffset += encodedContainer.containerBytes.size();
+            indexContainer(encodedContainer.container);
+            // the factory can't be reused until the container has been indexed, since the container shares its encoding map
+            freeCompressionHeaderFactories.addLast(encodedContainer.compressionHeaderFactory);
+        }
+    }
+
+    private static final class EncodedContainer {
+        private final Container container;
+        private final ByteArrayOutputStream containerBytes;
+        private final CompressionHeaderFactory compressionHeaderFactory;
+
+        private EncodedContainer(
+                final Container container,
+                final ByteArrayOutputStream containerBytes,
+                final CompressionHeaderFactory compressionHeaderFactory) {
+            this.container = container;
+            this.containerBytes = containerBytes;
+            this.compressionHeaderFactory = compressionHeaderFactory;
+        }
+    }
+
 }
@@ -47,6 +47,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
     private boolean mEnableIndexMemoryMapping;
 
     private ValidationStringency validationStringency;
+    private int decodingThreads = Defaults.CRAM_DECODING_THREADS;
 
     private final static Log log = Log.getInstance(CRAMFileReader.class);
 
@@ -199,6 +200,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
         this.inputStream = inputStream;
         this.validationStringency = validationStringency;
         iterator = new CRAMIterator(inputStream, referenceSource, validationStringency);
+        iterator.setDecodingThreads(decodingThreads);
         if (indexInputStream != null) {
             SeekableStream baiStream = SamIndexes.asBaiSeekableStreamOrNull(indexInputStream, iterator.getSAMFileHeader().getSequenceDictionary());
             if (null != baiStream)  {
@@ -293,7 +295,9 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
 
         // create an input stream that reads the source cram stream only within the coordinate pairs:
         final SeekableStream seekableStream = getSeekableStreamOrFailWithRTE();
-        return new CRAMIterator(seekableStream, referenceSource, validationStringency, null, coordinateArray);
+        final CRAMIterator spanIterator = new CRAMIterator(seekableStream, referenceSource, validationStringency, null, coordinateArray);
+        spanIterator.setDecodingThreads(decodingThreads);
+        return spanIterator;
     }
 
     @Override
@@ -310,6 +314,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
             } else {
                 iterator = new CRAMIterator(inputStream, referenceSource, validationStringency);
             }
+            iterator.setDecodingThreads(decodingThreads);
             return iterator;
         } catch (final IOException e) {
             throw new RuntimeIOException(e);
@@ -374,6 +379,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
         try {
             seekableStream.seek(0);
             iterator = new CRAMIterator(seekableStream, referenceSource, validationStringency);
+            iterator.setDecodingThreads(decodingThreads);
             seekableStream.seek(startOfLastLinearBin >>> 16);
             boolean atAlignments;
             do {
@@ -476,6 +482,26 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
         }
     }
 
+    /**
+     * Set the number of containers that iterators created by this reader may decode concurrently, using a shared
+     * pool of worker threads. 0 decodes containers on the calling thread. See {@link CRAMIterator#setDecodingThreads(int)}.
+     *
+     * @param decodingThreads the number of containers to decode concurrently
+     */
+    public void setDecodingThreads(final int decodingThreads) {
+        if (decodingThreads < 0) {
+            throw new IllegalArgumentException("The number of decoding threads must be >= 0: " + decodingThreads);
+        }
+        this.decodingThreads = decodingThreads;
+        if (iterator != null) {
+            iterator.setDecodingThreads(decodingThreads);
+        }
+    }
+
+    public int getDecodingThreads() {
+        return decodingThreads;
+    }
+
     @Override
     public ValidationStringency getValidationStringency() {
         return validationStringency;
@@ -559,6 +585,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
                         queryIntervals,
                         coordinates
                 );
+                unfilteredIterator.setDecodingThreads(decodingThreads);
                 getNextRecord(); // advance to the first record that matches the filter criteria
             }
         }
@@ -27,9 +27,21 @@ import htsjdk.samtools.seekablestream.SeekableStream;
 import java.io.Closeable;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.SharedThreadPool;
 
+/**
+ * Iterator over the records in a CRAM stream.
+ *
+ * If the number of decoding threads is greater than zero (see {@link #setDecodingThreads(int)}), containers are read
+ * ahead on the calling thread, and the slices of up to that many containers are decoded and normalized concurrently
+ * on a shared pool of worker threads. Records are always returned in stream order. In this mode the
+ * {@link CRAMReferenceSource} may be called from the worker threads for containers that span multiple references,
+ * so it must be thread-safe.
+ */
 public class CRAMIterator implements SAMRecordIterator, Closeable {
     private final CountingInputStream countingInputStream;
     private final CramContainerIterator containerIterator;
@@ -49,6 +61,15 @@ public class CRAMIterator implements SAMRecordIterator, Closeable {
     // allocates ~256k small objects every time its instantiated.
     private final CompressorCache compressorCache = new CompressorCache();
 
+    // State used only when containers are decoded on the shared thread pool.
+    private int decodingThreads = Defaults.CRAM_DECODING_THREADS;
+    private boolean endOfContainers = false;
+    /** Containers that have been handed to the thread pool, in stream order. */
+    private final Deque<Future<DecodedContainer>> pendingContainers = new ArrayDeque<>();
+    /** Reference regions and compressor caches that are not used by a pending container. */
+    private final Deque<DecodingContext> freeDecodingContexts = new ArrayDeque<>();
+    private final CRAMReferenceSource referenceSource;
+
     /**
      * `samRecordIndex` only used when validation is not `SILENT`
      * (for identification by the validator which records are invalid)
@@ -65,6 +86,7 @@ public class CRAMIterator implements SAMRecordIterator, Closeable {
         this.validationStringency = validationStringency;
         samFileHeader = containerIterator.getSamFileHeader();
         cramReferenceState = new CRAMReferenceRegion(referenceSource, samFileHeader);
+        this.referenceSource = referenceSource;
         cramHeader = containerIterator.getCramHeader();
         firstContainerOffset = this.countingInputStream.getCount();
         samRecords = new ArrayList<>(new CRAMEncodingStrategy().getReadsPerSlice());
@@ -82,13 +104,35 @@ public class CRAMIterator implements SAMRecordIterator, Closeable {
         this.validationStringency = validationStringency;
         samFileHeader = containerIterator.getSamFileHeader();
         cramReferenceState = new CRAMReferenceRegion(referenceSource, samFileHeader);
+        this.referenceSource = referenceSource;
         cramHeader = containerIterator.getCramHeader();
         firstContainerOffset = this.countingInputStream.getCount();
         samRecords = new ArrayList<>(new CRAMEncodingStrategy().getReadsPerSlice());
         this.queryIntervals = queryIntervals;
     }
 
+    /**
+     * Set the number of containers that may be decoded concurrently, using a shared pool of worker threads.
+     * 0 decodes each container on the calling thread when its first record is requested.
+     * Containers that have already been read ahead are unaffected.
+     *
+     * @param decodingThreads the number of containers to decode concurrently
+     */
+    public void setDecodingThreads(final int decodingThreads) {
+        if (decodingThreads < 0) {
+            throw new IllegalArgumentException("The number of decoding threads must be >= 0: " + decodingThreads);
+        }
+        this.decodingThreads = decodingThreads;
+    }
+
+    public int getDecodingThreads() {
+        return decodingThreads;
+    }
+
     private BAMIteratorFilter.FilteringIteratorState nextContainer() {
+        if (decodingThreads > 0 || !pendingContainers.isEmpty()) {
+            return nextDecodedContainer();
+        }
         if (containerIterator != null) {
             if (!containerIterator.hasNext()) {
                 samRecords.clear();
@@ -121,6 +165,101 @@ public class CRAMIterator implements SAMRecordIterator, Closeable {
         }
     }
 
+    /**
+     * Read ahead until decodingThreads containers that match the query are being decoded, then wait for the first
+     * of them.
+     */
+    private BAMIteratorFilter.FilteringIteratorState nextDecodedContainer() {
+        while (!endOfContainers && pendingContainers.size() < Math.max(decodingThreads, 1)) {
+            if (!containerIterator.hasNext()) {
+                endOfContainers = true;
+                break;
+            }
+            final Container nextContainer = containerIterator.next();
+            if (nextContainer.isEOF()) {
+                endOfContainers = true;
+            } else if (containerMatchesQuery(nextContainer)) {
+                submitContainer(nextContainer);
+            }
+        }
+
+        if (pendingContainers.isEmpty()) {
+            samRecords.clear();
+            return BAMIteratorFilter.FilteringIteratorState.STOP_ITERATION;
+        }
+
+        final DecodedContainer decodedContainer;
+        try {
+            decodedContainer = pendingContainers.removeFirst().get();
+        } catch (final InterruptedException e) {
+            throw new RuntimeException("Interrupted waiting for CRAM decoding thread", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Failed to decode CRAM container", e.getCause());
+        }
+        freeDecodingContexts.addLast(decodedContainer.decodingContext);
+        container = decodedContainer.container;
+        samRecords = decodedContainer.samRecords;
+        samRecordIterator = samRecords.iterator();
+        return BAMIteratorFilter.FilteringIteratorState.MATCHES_FILTER;
+    }
+
+    /**
+     * Queue a container to be decoded on the thread pool. Each pending container uses its own reference region and
+     * compressor cache, since neither is thread-safe.
+     */
+    private void submitContainer(final Container containerToDecode) {
+        final DecodingContext decodingContext = freeDecodingContexts.isEmpty() ?
+                new DecodingContext(new CRAMReferenceRegion(referenceSource, samFileHeader), new CompressorCache()) :
+                freeDecodingContexts.removeFirst();
+
+        // fetch the reference bases for single reference containers here rather than on a worker thread,
+        // so that the reference source is only called concurrently for multiple reference containers
+        final AlignmentContext alignmentContext = containerToDecode.getAlignmentContext();
+        if (alignmentContext.getReferenceContext().isMappedSingleRef() &&
+                containerToDecode.getCompressionHeader().isReferenceRequired()) {
+            decodingContext.cramReferenceRegion.getReferenceBases(
+                    alignmentContext.getReferenceContext().getReferenceSequenceID());
+        }
+
+        final ValidationStringency decodingValidationStringency = validationStringency;
+        pendingContainers.addLast(SharedThreadPool.submit(() -> new DecodedContainer(
+                containerToDecode,
+                containerToDecode.getSAMRecords(
+                        decodingValidationStringency,
+                        decodingContext.cramReferenceRegion,
+                        decodingContext.compressorCache,
+                        samFileHeader),
+                decodingContext)));
+    }
+
+    private static final class DecodingContext {
+        private final CRAMReferenceRegion cramReferenceRegion;
+        private final CompressorCache compressorCache;
+
+        private DecodingContext(final CRAMReferenceRegion cramReferenceRegion, final CompressorCache compressorCache) {
+            this.cramReferenceRegion = cramReferenceRegion;
+            this.compressorCache = compressorCache;
+        }
+    }
+
+    private static final class DecodedContainer {
+        private final Container container;
+        private final List<SAMRecord> samRecords;
+        private final DecodingContext decodingContext;
+
+        private DecodedContainer(
+                final Container container,
+                final List<SAMRecord> samRecords,
+                final DecodingContext decodingContext) {
+            this.container = container;
+            this.samRecords = samRecords;
+            this.decodingContext = decodingContext;
+        }
+    }
+
     private boolean containerMatchesQuery(final Container container) {
         if (queryIntervals == null) {
             return true;
@@ -230,6 +369,10 @@ public class CRAMIterator implements SAMRecordIterator, Closeable {
     @Override
     public void close() {
         samRecords.clear();
+        for (final Future<DecodedContainer> pendingContainer : pendingContainers) {
+            pendingContainer.cancel(false);
+        }
+        pendingContainers.clear();
         try {
             if (countingInputStream != null) {
                 countingInputStream.close();
@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.seekablestream.SeekablePathStream;
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.RuntimeIOException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A BAI or CSI index held in memory as a few primitive arrays per reference sequence, rather than as the
+ * {@link Bin}, {@link Chunk} and {@link LinearIndex} objects of {@link BAMIndexContent}, which take several times
+ * the memory.  The index file is read in full when the index is created, straight from a memory-mapped
+ * {@link MemoryMappedFileBuffer} into the arrays, after which the index never changes and can be queried from
+ * multiple threads.  {@link Chunk}s are only created for the spans returned by queries.
+ *
+ * For each reference, the bin numbers are kept in ascending order, and the chunks of bin i are the start and end
+ * pairs in {@code chunks[2 * chunkStarts[i]]} to {@code chunks[2 * chunkStarts[i + 1]]}.
+ */
+public final class CompactBAMFileIndex implements BrowseableBAMIndex {
+    private static final int BAI_MIN_SHIFT = 14;
+    private static final int BAI_BIN_DEPTH = GenomicIndexUtil.LEVEL_STARTS.length;
+
+    private final boolean isCSI;
+    private final int minShift;
+    private final int binDepth;
+    /** Bin number of the pseudo-bin that holds the metadata of a reference. */
+    private final int metaDataBin;
+
+    private final int[][] binNumbers;
+    private final int[][] chunkStarts;
+    private final long[][] chunks;
+    /** CSI only: the virtual file offset of the first record in each bin, in the same order as binNumbers. */
+    private final long[][] binOffsets;
+    /** BAI only: the linear index of each reference. */
+    private final long[][] linearIndexes;
+    /** Start and end pairs of the chunks of the metadata pseudo-bin of each reference. */
+    private final long[][] metaData;
+
+    private final long startOfLastLinearBin;
+    private final Long noCoordinateCount;
+
+    /**
+     * Read a BAI or CSI index file, which may be block compressed.
+     * @param indexFile the index file
+     */
+    public CompactBAMFileIndex(final File indexFile) {
+        this(IndexFileBufferFactory.getBuffer(indexFile, true), indexFile.getName());
+    }
+
+    /**
+     * Read a BAI or CSI index file, which may be block compressed.
+     * @param indexPath the index file
+     */
+    public CompactBAMFileIndex(final Path indexPath) {
+        this(openBuffer(indexPath), indexPath.toUri().toString());
+    }
+
+    /**
+     * Read an index from a buffer positioned anywhere, and close the buffer.
+     */
+    CompactBAMFileIndex(final IndexFileBuffer buffer, final String source) {
+        try {
+            buffer.seek(0);
+            final byte[] magic = new byte[4];
+            buffer.readBytes(magic);
+            if (Arrays.equals(magic, BAMFileConstants.CSI_INDEX_MAGIC)) {
+                isCSI = true;
+                minShift = buffer.readInteger();
+                // HTSlib doesn't count the first level (bin 0)
+                binDepth = buffer.readInteger() + 1;
+                buffer.skipBytes(buffer.readInteger()); // auxiliary data
+            } else if (Arrays.equals(magic, BAMFileConstants.BAI_INDEX_MAGIC)) {
+                isCSI = false;
+                minShift = BAI_MIN_SHIFT;
+                binDepth = BAI_BIN_DEPTH;
+            } else {
+                throw new RuntimeIOException("Invalid file header in BAM index " + source + ": " + new String(magic));
+            }
+            metaDataBin = getFirstBinInLevel(binDepth) + 1;
+
+            final int numReferences = buffer.readInteger();
+            binNumbers = new int[numReferences][];
+            chunkStarts = new int[numReferences][];
+            chunks = new long[numReferences][];
+            binOffsets = isCSI ? new long[numReferences][] : null;
+            linearIndexes = isCSI ? null : new long[numReferences][];
+            metaData = new long[numReferences][];
+
+            long lastOffset = -1;
+            for (int ref = 0; ref < numReferences; ref++) {
+                lastOffset = readReference(buffer, ref, lastOffset);
+            }
+            startOfLastLinearBin = lastOffset;
+
+            Long count;
+            try { // in case of old index file without meta data
+                count = buffer.readLong();
+            } catch (final Exception e) {
+                count = null;
+            }
+            noCoordinateCount = count;
+        } finally {
+            buffer.close();
+        }
+    }
+
+    private static IndexFileBuffer openBuffer(final Path indexPath) {
+        if (indexPath.getFileSystem() == FileSystems.getDefault()) {
+            return IndexFileBufferFactory.getBuffer(indexPath.toFile(), true);
+        }
+        try {
+            final boolean isCompressed = IOUtil.isBlockCompressed(indexPath);
+            final SeekableStream stream = IOUtil.maybeBufferedSeekableStream(new SeekablePathStream(indexPath));
+            return isCompressed ? new CompressedIndexFileBuffer(stream) : new IndexStreamBuffer(stream);
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Error opening BAM index " + indexPath.toUri(), e);
+        }
+    }
+
+    /**
+     * Read the bins, and the linear index for BAI, of one reference.
+     * @param lastOffset the start of the last linear bin (BAI) or the offset of the last bin (CSI) read so far
+     * @return lastOffset updated with this reference
+     */
+    private long readReference(final IndexFileBuffer buffer, final int ref, final long lastOffset) {
+        long newLastOffset = lastOffset;
+        final int numBins = buffer.readInteger();
+
+        // read the bins in file order, then sort them by bin number, which also drops the metadata pseudo-bin
+        final long[] sortKeys = new long[numBins];
+        final int[] fileChunkStarts = new int[numBins + 1];
+        final long[] fileBinOffsets = isCSI ? new long[numBins] : null;
+        long[] fileChunks = new long[0];
+        long[] metaDataChunks = new long[0];
+        int numChunks = 0;
+        int numRegularBins = 0;
+        for (int i = 0; i < numBins; i++) {
+            final int bin = buffer.readInteger();
+            if (isCSI) {
+                fileBinOffsets[i] = buffer.readLong();
+                newLastOffset = fileBinOffsets[i];
+            }
+            final int nChunks = buffer.readInteger();
+            if (bin == metaDataBin) {
+                metaDataChunks = new long[2 * nChunks];
+                for (int j = 0; j < metaDataChunks.length; j++) {
+                    metaDataChunks[j] = buffer.readLong();
+                }
+                fileChunkStarts[i + 1] = numChunks;
+                continue;
+            }
+            if (2 * (numChunks + nChunks) > fileChunks.length) {
+                fileChunks = Arrays.copyOf(fileChunks, Math.max(2 * (numChunks + nChunks), 2 * fileChunks.length));
+            }
+            for (int j = 0; j < 2 * nChunks; j++) {
+                fileChunks[2 * numChunks + j] = buffer.readLong();
+            }
+            numChunks += nChunks;
+            fileChunkStarts[i + 1] = numChunks;
+            sortKeys[numRegularBins++] = ((long) bin << 32) | i;
+        }
+        Arrays.sort(sortKeys, 0, numRegularBins);
+
+        final int[] refBinNumbers = new int[numRegularBins];
+        final int[] refChunkStarts = new int[numRegularBins + 1];
+        final long[] refChunks = new long[2 * numChunks];
+        final long[] refBinOffsets = isCSI ? new long[numRegularBins] : null;
+        int chunkIndex = 0;
+        for (int i = 0; i < numRegularBins; i++) {
+            final int fileIndex = (int) sortKeys[i];
+            refBinNumbers[i] = (int) (sortKeys[i] >>> 32);
+            refChunkStarts[i] = chunkIndex;
+            final int n = fileChunkStarts[fileIndex + 1] - fileChunkStarts[fileIndex];
+            System.arraycopy(fileChunks, 2 * fileChunkStarts[fileIndex], refChunks, 2 * chunkIndex, 2 * n);
+            chunkIndex += n;
+            if (isCSI) {
+                refBinOffsets[i] = fileBinOffsets[fileIndex];
+            }
+        }
+        refChunkStarts[numRegularBins] = chunkIndex;
+
+        binNumbers[ref] = refBinNumbers;
+        chunkStarts[ref] = refChunkStarts;
+        chunks[ref] = refChunks;
+        metaData[ref] = metaDataChunks;
+        if (isCSI) {
+            binOffsets[ref] = refBinOffsets;
+        } else {
+            final long[] linearIndex = new long[buffer.readInteger()];
+            for (int i = 0; i < linearIndex.length; i++) {
+                linearIndex[i] = buffer.readLong();
+            }
+            linearIndexes[ref] = linearIndex;
+            if (linearIndex.length > 0) {
+                newLastOffset = linearIndex[linearIndex.length - 1];
+            }
+        }
+        return newLastOffset;
+    }
+
+    /**
+     * @return true if this is a CSI index, false for a BAI index
+     */
+    public boolean isCSI() {
+        return isCSI;
+    }
+
+    /**
+     * @return 2^(min shift) is the width of the smallest bins
+     */
+    public int getMinShift() {
+        return minShift;
+    }
+
+    /**
+     * @return the number of levels of bins, including bin 0
+     */
+    public int getBinDepth() {
+        return binDepth;
+    }
+
+    public int getNumberOfReferences() {
+        return binNumbers.length;
+    }
+
+    /**
+     * @return the count of records with no coordinates, or null if the index does not record it
+     */
+    public Long getNoCoordinateCount() {
+        return noCoordinateCount;
+    }
+
+    /**
+     * @return the linear index of a reference, or null for a CSI index
+     */
+    long[] getLinearIndex(final int referenceIndex) {
+        return linearIndexes == null ? null : linearIndexes[referenceIndex];
+    }
+
+    /**
+     * @return the position of the bin in the reference's arrays, or a negative value if the bin is not in the index
+     */
+    private int findBin(final int ref, final int binNumber) {
+        return Arrays.binarySearch(binNumbers[ref], binNumber);
+    }
+
+    private void addChunks(final int ref, final int binIndex, final List<Chunk> chunkList) {
+        final long[] refChunks = chunks[ref];
+        for (int i = chunkStarts[ref][binIndex]; i < chunkStarts[ref][binIndex + 1]; i++) {
+            chunkList.add(new Chunk(refChunks[2 * i], refChunks[2 * i + 1]));
+        }
+    }
+
+    private BitSet regionToBins(final int startPos, final int endPos) {
+        return isCSI ? GenomicIndexUtil.regionToBins(startPos, endPos, minShift, binDepth) :
+                GenomicIndexUtil.regionToBins(startPos, endPos);
+    }
+
+    /**
+     * The virtual file offset before which no records overlap the given position.
+     */
+    private long getMinimumOffset(final int ref, final int startPos) {
+        if (!isCSI) {
+            final long[] linearIndex = linearIndexes[ref];
+            final int linearBin = ((startPos <= 0) ? 0 : startPos - 1) >> LinearIndex.BAM_LIDX_SHIFT;
+            return linearBin < linearIndex.length ? linearIndex[linearBin] : 0;
+        }
+        // search the lowest level bin containing startPos; if that bin is not in the index, try the next bin to the
+        // left with the same parent, and then the parent bin
+        int binNumber = getFirstBinInLevel(binDepth - 1) + ((startPos - 1) >> minShift);
+        int binIndex;
+        do {
+            binIndex = findBin(ref, binNumber);
+            if (binIndex >= 0) {
+                break;
+            }
+            final int parentBinNumber = (binNumber - 1) >> 3;
+            if (binNumber > (parentBinNumber << 3) + 1) {
+                binNumber--;
+            } else {
+                binNumber = parentBinNumber;
+            }
+        } while (binNumber != 0);
+        if (binNumber == 0) {
+            binIndex = findBin(ref, 0);
+        }
+        return binIndex >= 0 ? binOffsets[ref][binIndex] : 0L;
+    }
+
+    @Override
+    public BAMFileSpan getSpanOverlapping(final int referenceIndex, final int startPos, final int endPos) {
+        if (referenceIndex < 0 || referenceIndex >= getNumberOfReferences()) {
+            return null;
+        }
+        final BitSet regionBins = regionToBins(startPos, endPos);
+        if (regionBins == null) {
+            return null;
+        }
+        final List<Chunk> chunkList = new ArrayList<>();
+        final int[] refBinNumbers = binNumbers[referenceIndex];
+        if (regionBins.cardinality() < refBinNumbers.length) {
+            for (int bin = regionBins.nextSetBit(0); bin >= 0; bin = regionBins.nextSetBit(bin + 1)) {
+                final int binIndex = findBin(referenceIndex, bin);
+                if (binIndex >= 0) {
+                    addChunks(referenceIndex, binIndex, chunkList);
+                }
+            }
+        } else {
+            for (int binIndex = 0; binIndex < refBinNumbers.length; binIndex++) {
+                if (regionBins.get(refBinNumbers[binIndex])) {
+                    addChunks(referenceIndex, binIndex, chunkList);
+                }
+            }
+        }
+        if (chunkList.isEmpty()) {
+            return null;
+        }
+        return new BAMFileSpan(Chunk.optimizeChunkList(chunkList, getMinimumOffset(referenceIndex, startPos)));
+    }
+
+    @Override
+    public BAMFileSpan getSpanOverlapping(final Bin bin) {
+        if (bin == null || bin.getReferenceSequence() < 0 || bin.getReferenceSequence() >= getNumberOfReferences()) {
+            return null;
+        }
+        final int ref = bin.getReferenceSequence();
+        final int binLevel = getLevelForBin(bin);
+        final int firstLocusInBin = getFirstLocusInBin(bin);
+
+        // the bin itself, and the bins that contain it in each of the levels above
+        final List<Chunk> chunkList = new ArrayList<>();
+        final int binIndex = findBin(ref, bin.getBinNumber());
+        if (binIndex >= 0) {
+            addChunks(ref, binIndex, chunkList);
+        }
+        for (int level = binLevel - 1; level >= 0; level--) {
+            final int parentBinIndex = findBin(ref, (int) (firstLocusInBin / getBinWidth(level)) + getFirstBinInLevel(level));
+            if (parentBinIndex >= 0) {
+                addChunks(ref, parentBinIndex, chunkList);
+            }
+        }
+
+        final long minimumOffset;
+        if (isCSI) {
+            minimumOffset = bin instanceof BinWithOffset ? ((BinWithOffset) bin).getlOffset() : 0L;
+        } else {
+            minimumOffset = getMinimumOffset(ref, firstLocusInBin);
+        }
+        return new BAMFileSpan(Chunk.optimizeChunkList(chunkList, minimumOffset));
+    }
+
+    @Override
+    public BinList getBinsOverlapping(final int referenceIndex, final int startPos, final int endPos) {
+        final BitSet regionBins = regionToBins(startPos, endPos);
+        return regionBins == null ? null : new BinList(referenceIndex, regionBins);
+    }
+
+    private static int getFirstBinInLevel(final int levelNumber) {
+        return ((1 << 3 * levelNumber) - 1) / 7;
+    }
+
+    /**
+     * @return the genomic length covered by each bin of a level, which may exceed the range of an int for CSI
+     */
+    private long getBinWidth(final int level) {
+        return 1L << (minShift + 3 * (binDepth - 1 - level));
+    }
+
+    @Override
+    public int getLevelSize(final int levelNumber) {
+        if (levelNumber >= binDepth) {
+            throw new SAMException("Level number (" + levelNumber + ") is greater than or equal to maximum (" + binDepth + ").");
+        }
+        return 1 << 3 * levelNumber;
+    }
+
+    @Override
+    public int getLevelForBin(final Bin bin) {
+        if (bin == null || bin.getBinNumber() > getFirstBinInLevel(binDepth)) {
+            throw new SAMException("Tried to get level for invalid bin: " + bin);
+        }
+        for (int level = binDepth - 1; level >= 0; level--) {
+            if (bin.getBinNumber() >= getFirstBinInLevel(level)) {
+                return level;
+            }
+        }
+        throw new SAMException("Unable to find correct level for bin: " + bin);
+    }
+
+    @Override
+    public int getFirstLocusInBin(final Bin bin) {
+        final int level = getLevelForBin(bin);
+        return (int) ((bin.getBinNumber() - getFirstBinInLevel(level)) * getBinWidth(level) + 1);
+    }
+
+    @Override
+    public int getLastLocusInBin(final Bin bin) {
+        final int level = getLevelForBin(bin);
+        return (int) ((bin.getBinNumber() - getFirstBinInLevel(level) + 1) * getBinWidth(level));
+    }
+
+    @Override
+    public long getStartOfLastLinearBin() {
+        return startOfLastLinearBin;
+    }
+
+    @Override
+    public BAMIndexMetaData getMetaData(final int reference) {
+        if (reference < 0 || reference >= getNumberOfReferences()) {
+            return null;
+        }
+        final long[] refMetaData = metaData[reference];
+        final List<Chunk> metaDataChunks = refMetaData.length == 0 ? Collections.emptyList() : new ArrayList<>();
+        for (int i = 0; i < refMetaData.length; i += 2) {
+            metaDataChunks.add(new Chunk(refMetaData[i], refMetaData[i + 1]));
+        }
+        return new BAMIndexMetaData(metaDataChunks);
+    }
+
+    /**
+     * Does nothing, since the index file is closed once it has been read.
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -1,5 +1,6 @@
 package htsjdk.samtools;
 
+import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.util.BinaryCodec;
 import htsjdk.samtools.util.BlockCompressedInputStream;
 import htsjdk.samtools.util.RuntimeIOException;
@@ -25,6 +26,11 @@ class CompressedIndexFileBuffer implements IndexFileBuffer {
         }
     }
 
+    CompressedIndexFileBuffer(SeekableStream stream) {
+        mCompressedStream = new BlockCompressedInputStream(stream);
+        binaryCodec = new BinaryCodec(mCompressedStream);
+    }
+
     @Override
     public void readBytes(final byte[] bytes) {
         binaryCodec.readBytes(bytes);
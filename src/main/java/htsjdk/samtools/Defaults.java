@@ -41,6 +41,82 @@ public class Defaults {
     /** Compression level to be used for writing BAM and other block-compressed outputs.  Default = 5. */
     public static final int COMPRESSION_LEVEL;
 
+    /**
+     * Number of blocks that may be deflated concurrently by each {@link htsjdk.samtools.util.BlockCompressedOutputStream},
+     * using a shared pool of worker threads.  0 compresses on the writing thread.  Default = 0.
+     */
+    public static final int BGZF_COMPRESSION_THREADS;
+
+    /**
+     * Number of blocks that each BAM reader reads ahead and inflates concurrently, using a shared pool of worker
+     * threads (see {@link htsjdk.samtools.util.ParallelBlockCompressedInputStream}).  0 disables parallel
+     * decompression.  Default = 0.
+     */
+    public static final int BGZF_DECOMPRESSION_THREADS;
+
+    /**
+     * Decompress BGZF blocks with the pure Java {@link htsjdk.samtools.util.zip.BlockInflater} rather than the JDK's
+     * zlib based {@link java.util.zip.Inflater}, when the default {@link htsjdk.samtools.util.zip.InflaterFactory}
+     * is in use.  Default = false.
+     */
+    public static final boolean USE_JAVA_BLOCK_INFLATER;
+
+    /**
+     * Number of daemon threads in the pool shared by all of the multi-threaded readers and writers, see
+     * {@link htsjdk.samtools.util.SharedThreadPool}.  Default = the number of available processors.
+     */
+    public static final int SHARED_THREAD_POOL_SIZE;
+
+    /**
+     * Number of CRAM containers that may be encoded and compressed concurrently by each CRAM writer, using a shared
+     * pool of worker threads.  0 encodes containers on the writing thread.  Default = 0.
+     */
+    public static final int CRAM_ENCODING_THREADS;
+
+    /**
+     * Number of CRAM containers that may be decoded concurrently by each CRAM iterator, using a shared pool of
+     * worker threads.  0 decodes containers on the reading thread.  Default = 0.
+     */
+    public static final int CRAM_DECODING_THREADS;
+
+    /**
+     * Number of parts of a BAM file that each index query reads and decodes concurrently, using a shared pool of
+     * worker threads.  0 reads the chunks of a query sequentially.  Default = 0.
+     */
+    public static final int BAM_QUERY_THREADS;
+
+    /**
+     * Size in bytes of the block cache placed in front of each URL, or path on a non-default file system, opened
+     * through a {@link htsjdk.samtools.SamInputResource} (see {@link htsjdk.samtools.seekablestream.CachingSeekableStream}).
+     * 0 reads these resources through a small read buffer.  Default = 0.
+     */
+    public static final long SEEKABLE_STREAM_CACHE_SIZE;
+
+    /**
+     * Should the VCF and BCF codecs store the genotypes of each record in primitive columns
+     * (see {@link htsjdk.variant.variantcontext.ColumnarGenotypesContext}) rather than as one object per sample?
+     * This greatly reduces the memory used by records with many samples.  Default = false.
+     */
+    public static final boolean USE_COLUMNAR_GENOTYPES;
+
+    /**
+     * Should the VCF codecs decode records directly from the bytes of each line, rather than splitting each line into
+     * Strings?  This avoids most of the per-site and per-sample allocation of VCF decoding.  Default = false.
+     */
+    public static final boolean USE_BYTE_VCF_DECODING;
+
+    /**
+     * Number of batches of records that may be decoded concurrently when iterating over a whole VCF or BCF file with
+     * a VCFFileReader, using a shared pool of worker threads.  0 decodes records on the reading thread.  Default = 0.
+     */
+    public static final int VCF_DECODING_THREADS;
+
+    /**
+     * Number of batches of records that may be encoded concurrently by each VCF writer, using a shared pool of worker
+     * threads.  0 encodes records on the writing thread.  Default = 0.
+     */
+    public static final int VCF_ENCODING_THREADS;
+
     /** Buffer size, in bytes, used whenever reading/writing files or streams.  Default = 128k. */
     public static final int BUFFER_SIZE;
 
@@ -86,6 +162,20 @@ public class Defaults {
      */
     public static final boolean USE_CRAM_REF_DOWNLOAD;
 
+    /**
+     * Size in bytes of a reference cache shared by all CRAM reference sources that are not given their own
+     * {@link htsjdk.samtools.cram.ref.ReferenceCache}.  0 disables the shared cache, in which case each reference
+     * source only retains weak references to the bases it loads.  Default = 0.
+     */
+    public static final long CRAM_REFERENCE_CACHE_SIZE;
+
+    /**
+     * Boolean describing whether {@link htsjdk.samtools.reference.ReferenceSequenceFileFactory} should memory-map
+     * indexed, uncompressed fasta files on the default file system rather than reading them through a channel.
+     * Default = false.
+     */
+    public static final boolean USE_MEMORY_MAPPED_FASTA;
+
     /**
      * A mask (pattern) to use when building EBI reference service URL for a
      * given MD5 checksum. Must contain one and only one string placeholder.
@@ -119,6 +209,18 @@ public class Defaults {
         USE_ASYNC_IO_WRITE_FOR_SAMTOOLS = getBooleanProperty("use_async_io_write_samtools", false);
         USE_ASYNC_IO_WRITE_FOR_TRIBBLE = getBooleanProperty("use_async_io_write_tribble", false);
         COMPRESSION_LEVEL = getIntProperty("compression_level", 5);
+        BGZF_COMPRESSION_THREADS = getIntProperty("bgzf_compression_threads", 0);
+        SHARED_THREAD_POOL_SIZE = getIntProperty("shared_thread_pool_size", Runtime.getRuntime().availableProcessors());
+        CRAM_ENCODING_THREADS = getIntProperty("cram_encoding_threads", 0);
+        CRAM_DECODING_THREADS = getIntProperty("cram_decoding_threads", 0);
+        BGZF_DECOMPRESSION_THREADS = getIntProperty("bgzf_decompression_threads", 0);
+        USE_JAVA_BLOCK_INFLATER = getBooleanProperty("use_java_block_inflater", false);
+        BAM_QUERY_THREADS = getIntProperty("bam_query_threads", 0);
+        SEEKABLE_STREAM_CACHE_SIZE = getLongProperty("seekable_stream_cache_size", 0);
+        USE_COLUMNAR_GENOTYPES = getBooleanProperty("use_columnar_genotypes", false);
+        USE_BYTE_VCF_DECODING = getBooleanProperty("use_byte_vcf_decoding", false);
+        VCF_DECODING_THREADS = getIntProperty("vcf_decoding_threads", 0);
+        VCF_ENCODING_THREADS = getIntProperty("vcf_encoding_threads", 0);
         DEFAULT_SAM_EXTENSION = getStringProperty("default_sam_type", "bam");
         DEFAULT_VCF_EXTENSION = getStringProperty("default_vcf_type", "vcf");
         BUFFER_SIZE = getIntProperty("buffer_size", 1024 * 128);
@@ -129,6 +231,8 @@ public class Defaults {
         }
         REFERENCE_FASTA = getFileProperty("reference_fasta", null);
         USE_CRAM_REF_DOWNLOAD = getBooleanProperty("use_cram_ref_download", false);
+        CRAM_REFERENCE_CACHE_SIZE = getLongProperty("cram_reference_cache_size", 0);
+        USE_MEMORY_MAPPED_FASTA = getBooleanProperty("use_memory_mapped_fasta", false);
         EBI_REFERENCE_SERVICE_URL_MASK = "https://www.ebi.ac.uk/ena/cram/md5/%s";
         CUSTOM_READER_FACTORY = getStringProperty("custom_reader", "");
         SAM_FLAG_FIELD_FORMAT = SamFlagField.valueOf(getStringProperty("sam_flag_field_format", SamFlagField.DECIMAL.name()));
@@ -149,10 +253,24 @@ public class Defaults {
         result.put("USE_ASYNC_IO_WRITE_FOR_SAMTOOLS", USE_ASYNC_IO_WRITE_FOR_SAMTOOLS);
         result.put("USE_ASYNC_IO_WRITE_FOR_TRIBBLE", USE_ASYNC_IO_WRITE_FOR_TRIBBLE);
         result.put("COMPRESSION_LEVEL", COMPRESSION_LEVEL);
+        result.put("BGZF_COMPRESSION_THREADS", BGZF_COMPRESSION_THREADS);
+        result.put("SHARED_THREAD_POOL_SIZE", SHARED_THREAD_POOL_SIZE);
+        result.put("CRAM_ENCODING_THREADS", CRAM_ENCODING_THREADS);
+        result.put("CRAM_DECODING_THREADS", CRAM_DECODING_THREADS);
+        result.put("BGZF_DECOMPRESSION_THREADS", BGZF_DECOMPRESSION_THREADS);
+        result.put("USE_JAVA_BLOCK_INFLATER", USE_JAVA_BLOCK_INFLATER);
+        result.put("BAM_QUERY_THREADS", BAM_QUERY_THREADS);
+        result.put("SEEKABLE_STREAM_CACHE_SIZE", SEEKABLE_STREAM_CACHE_SIZE);
+        result.put("USE_COLUMNAR_GENOTYPES", USE_COLUMNAR_GENOTYPES);
+        result.put("USE_BYTE_VCF_DECODING", USE_BYTE_VCF_DECODING);
+        result.put("VCF_DECODING_THREADS", VCF_DECODING_THREADS);
+        result.put("VCF_ENCODING_THREADS", VCF_ENCODING_THREADS);
         result.put("BUFFER_SIZE", BUFFER_SIZE);
         result.put("NON_ZERO_BUFFER_SIZE", NON_ZERO_BUFFER_SIZE);
         result.put("REFERENCE_FASTA", REFERENCE_FASTA);
         result.put("USE_CRAM_REF_DOWNLOAD", USE_CRAM_REF_DOWNLOAD);
+        result.put("CRAM_REFERENCE_CACHE_SIZE", CRAM_REFERENCE_CACHE_SIZE);
+        result.put("USE_MEMORY_MAPPED_FASTA", USE_MEMORY_MAPPED_FASTA);
         result.put("EBI_REFERENCE_SERVICE_URL_MASK", EBI_REFERENCE_SERVICE_URL_MASK);
         result.put("CUSTOM_READER_FACTORY", CUSTOM_READER_FACTORY);
         result.put("SAM_FLAG_FIELD_FORMAT", SAM_FLAG_FIELD_FORMAT);
@@ -196,6 +314,12 @@ public class Defaults {
         return Integer.parseInt(value);
     }
 
+    /** Gets a long system property, prefixed with "samjdk." using the default if the property does not exist. */
+    private static long getLongProperty(final String name, final long def) {
+        final String value = getStringProperty(name, Long.toString(def));
+        return Long.parseLong(value);
+    }
+
     /** Gets a File system property, prefixed with "samjdk." using the default if the property does not exist. */
     private static File getFileProperty(final String name, final String def) {
         final String value = getStringProperty(name, def);
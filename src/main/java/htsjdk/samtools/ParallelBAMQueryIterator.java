@@ -0,0 +1,331 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.SharedThreadPool;
+import htsjdk.samtools.util.zip.InflaterFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Iterates over the records in the chunks of a BAM file returned by an index query, reading and decoding several
+ * parts of the file concurrently.
+ * <p>
+ * Chunks separated by less than {@link #DEFAULT_MAX_COALESCING_GAP} compressed bytes are coalesced into a single range, so
+ * that the records between them are read rather than seeking; they must be filtered out by the caller, as the records
+ * in chunks returned by the index that don't overlap the query are. Ranges are read in batches of up to
+ * {@link #BATCH_SIZE} records on a shared pool of worker threads, each through its own stream, and the batches are
+ * returned in file order, so the records are in the same order as when the chunks are read sequentially.  While
+ * the records of one batch are consumed, up to the given number of following batches are read ahead.
+ */
+class ParallelBAMQueryIterator implements CloseableIterator<SAMRecord> {
+    /** Chunks closer than this many compressed bytes are read as a single range. */
+    static final long DEFAULT_MAX_COALESCING_GAP = 256 * 1024;
+
+    /** Maximum number of records read by a single task, which bounds the memory used for records read ahead. */
+    static final int BATCH_SIZE = 10000;
+
+    private final SAMFileHeader header;
+    private final SAMRecordFactory samRecordFactory;
+    private final ValidationStringency validationStringency;
+    private final boolean eagerDecode;
+    private final SamReader reader;
+    private final Supplier<SeekableStream> streamSupplier;
+    private final InflaterFactory inflaterFactory;
+    private final int threads;
+    private final int batchSize;
+
+    /** Start and end virtual file pointers of the ranges to be read, after coalescing. */
+    private final long[] ranges;
+    private int nextRange = 0;
+
+    /** Batches that have been handed to the thread pool, in file order. */
+    private final Deque<Future<Batch>> pendingBatches = new ArrayDeque<>();
+    /** Streams that are not used by a pending batch. */
+    private final Deque<RangeReader> freeReaders = new ArrayDeque<>();
+    private final List<RangeReader> allReaders = new ArrayList<>();
+    private Iterator<SAMRecord> currentBatch = Collections.emptyIterator();
+    private boolean isClosed = false;
+
+    /**
+     * @param filePointers start and end virtual file pointers of the chunks to read, in file order, as returned by
+     *                     {@link BAMFileSpan#toCoordinateArray()}, or null if there are none
+     * @param streamSupplier opens a new stream over the BAM file each time it is called
+     * @param threads the maximum number of batches read concurrently
+     * @param reader if non-null, the reader that is set as the file source of the records
+     */
+    ParallelBAMQueryIterator(final long[] filePointers,
+                             final SAMFileHeader header,
+                             final SAMRecordFactory samRecordFactory,
+                             final ValidationStringency validationStringency,
+                             final boolean eagerDecode,
+                             final SamReader reader,
+                             final Supplier<SeekableStream> streamSupplier,
+                             final InflaterFactory inflaterFactory,
+                             final int threads) {
+        this(filePointers, header, samRecordFactory, validationStringency, eagerDecode, reader, streamSupplier,
+                inflaterFactory, threads, BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize the maximum number of records read by a single task
+     */
+    ParallelBAMQueryIterator(final long[] filePointers,
+                             final SAMFileHeader header,
+                             final SAMRecordFactory samRecordFactory,
+                             final ValidationStringency validationStringency,
+                             final boolean eagerDecode,
+                             final SamReader reader,
+                             final Supplier<SeekableStream> streamSupplier,
+                             final InflaterFactory inflaterFactory,
+                             final int threads,
+                             final int batchSize) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of query threads must be > 0: " + threads);
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be > 0: " + batchSize);
+        }
+        this.header = header;
+        this.samRecordFactory = samRecordFactory;
+        this.validationStringency = validationStringency;
+        this.eagerDecode = eagerDecode;
+        this.reader = reader;
+        this.streamSupplier = streamSupplier;
+        this.inflaterFactory = inflaterFactory;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.ranges = coalesceChunks(filePointers == null ? new long[0] : filePointers, DEFAULT_MAX_COALESCING_GAP);
+        fillPendingBatches();
+    }
+
+    /**
+     * Merges chunks whose compressed offsets are no more than maxGap bytes apart.
+     * @param filePointers start and end virtual file pointers of chunks, in file order
+     * @return start and end virtual file pointers of the coalesced ranges
+     */
+    static long[] coalesceChunks(final long[] filePointers, final long maxGap) {
+        if (filePointers.length % 2 != 0) {
+            throw new IllegalArgumentException("File pointers must come in start/end pairs");
+        }
+        final long[] ranges = new long[filePointers.length];
+        int numRanges = 0;
+        for (int i = 0; i < filePointers.length; i += 2) {
+            final long start = filePointers[i];
+            final long end = filePointers[i + 1];
+            if (numRanges > 0 && BlockCompressedFilePointerUtil.getBlockAddress(start) -
+                    BlockCompressedFilePointerUtil.getBlockAddress(ranges[2 * numRanges - 1]) <= maxGap) {
+                ranges[2 * numRanges - 1] = Math.max(end, ranges[2 * numRanges - 1]);
+            } else {
+                ranges[2 * numRanges] = start;
+                ranges[2 * numRanges + 1] = end;
+                numRanges++;
+            }
+        }
+        final long[] ret = new long[2 * numRanges];
+        System.arraycopy(ranges, 0, ret, 0, ret.length);
+        return ret;
+    }
+
+    @Override
+    public boolean hasNext() {
+        assertOpen();
+        while (!currentBatch.hasNext()) {
+            if (pendingBatches.isEmpty()) {
+                return false;
+            }
+            currentBatch = nextBatch().iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public SAMRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("next called on exhausted iterator");
+        }
+        return currentBatch.next();
+    }
+
+    /**
+     * Wait for the first pending batch, and queue the batches that follow it.
+     */
+    private List<SAMRecord> nextBatch() {
+        final Batch batch;
+        try {
+            batch = pendingBatches.removeFirst().get();
+        } catch (final InterruptedException e) {
+            throw new RuntimeException("Interrupted waiting for BAM query thread", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Failed to read BAM records", e.getCause());
+        }
+        if (batch.rangeEnd >= 0) {
+            // continue the range with the same stream, which is positioned where the batch ended, ahead of the
+            // batches of the following ranges
+            pendingBatches.addFirst(submitBatch(batch.rangeReader, -1, batch.rangeEnd));
+        } else {
+            freeReaders.addLast(batch.rangeReader);
+        }
+        fillPendingBatches();
+        return batch.records;
+    }
+
+    private void fillPendingBatches() {
+        while (pendingBatches.size() < threads && nextRange < ranges.length) {
+            final RangeReader rangeReader = freeReaders.isEmpty() ? newRangeReader() : freeReaders.removeFirst();
+            pendingBatches.addLast(submitBatch(rangeReader, ranges[nextRange], ranges[nextRange + 1]));
+            nextRange += 2;
+        }
+    }
+
+    private RangeReader newRangeReader() {
+        final RangeReader rangeReader = new RangeReader(
+                new BlockCompressedInputStream(IOUtil.maybeBufferedSeekableStream(streamSupplier.get()), inflaterFactory));
+        allReaders.add(rangeReader);
+        return rangeReader;
+    }
+
+    /**
+     * @param start virtual file pointer to seek to before reading, or -1 to continue from the stream's position
+     * @param end virtual file pointer at which the range ends
+     */
+    private Future<Batch> submitBatch(final RangeReader rangeReader, final long start, final long end) {
+        return SharedThreadPool.submit(() -> rangeReader.readBatch(start, end));
+    }
+
+    @Override
+    public void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        currentBatch = Collections.emptyIterator();
+        // wait for running tasks so that their streams aren't closed under them
+        for (final Future<Batch> pendingBatch : pendingBatches) {
+            pendingBatch.cancel(false);
+        }
+        for (final Future<Batch> pendingBatch : pendingBatches) {
+            try {
+                if (!pendingBatch.isCancelled()) {
+                    pendingBatch.get();
+                }
+            } catch (final InterruptedException | ExecutionException e) {
+                // the records are being discarded
+            }
+        }
+        pendingBatches.clear();
+        for (final RangeReader rangeReader : allReaders) {
+            CloserUtil.close(rangeReader.compressedStream);
+        }
+        allReaders.clear();
+        freeReaders.clear();
+    }
+
+    private void assertOpen() {
+        if (isClosed) throw new AssertionError("Iterator has been closed");
+    }
+
+    /**
+     * A stream over the BAM file, and the codec that decodes records from it, used by one task at a time.
+     */
+    private final class RangeReader {
+        private final BlockCompressedInputStream compressedStream;
+        private final BAMRecordCodec bamRecordCodec;
+
+        private RangeReader(final BlockCompressedInputStream compressedStream) {
+            this.compressedStream = compressedStream;
+            this.bamRecordCodec = new BAMRecordCodec(header, samRecordFactory);
+            this.bamRecordCodec.setInputStream(compressedStream);
+        }
+
+        private Batch readBatch(final long start, final long end) {
+            try {
+                if (start >= 0) {
+                    compressedStream.seek(start);
+                }
+                final List<SAMRecord> records = new ArrayList<>();
+                boolean endOfFile = false;
+                while (records.size() < batchSize && compressedStream.getFilePointer() < end) {
+                    final long recordStart = compressedStream.getFilePointer();
+                    final SAMRecord record = bamRecordCodec.decode();
+                    if (record == null) {
+                        endOfFile = true;
+                        break;
+                    }
+                    if (reader != null) {
+                        record.setFileSource(new SAMFileSource(reader,
+                                new BAMFileSpan(new Chunk(recordStart, compressedStream.getFilePointer()))));
+                    }
+                    // Because some decoding is done lazily, the record needs to remember the validation stringency.
+                    record.setValidationStringency(validationStringency);
+                    if (validationStringency != ValidationStringency.SILENT) {
+                        SAMUtils.processValidationErrors(record.isValid(validationStringency == ValidationStringency.STRICT),
+                                -1, validationStringency);
+                    }
+                    if (eagerDecode) {
+                        record.eagerDecode();
+                    }
+                    records.add(record);
+                }
+                final boolean rangeFinished = endOfFile || compressedStream.getFilePointer() >= end;
+                return new Batch(records, this, rangeFinished ? -1 : end);
+            } catch (final IOException e) {
+                throw new RuntimeIOException(e.getMessage(), e);
+            }
+        }
+    }
+
+    private static final class Batch {
+        private final List<SAMRecord> records;
+        private final RangeReader rangeReader;
+        /** End of the range if it has more records to be read, otherwise -1. */
+        private final long rangeEnd;
+
+        private Batch(final List<SAMRecord> records, final RangeReader rangeReader, final long rangeEnd) {
+            this.records = records;
+            this.rangeReader = rangeReader;
+            this.rangeEnd = rangeEnd;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A BAM alignment record held in its binary encoding, as it appears in a BAM file: the 4 byte block size, the
+ * fixed-length fields, and the variable-length block holding the read name, CIGAR, bases, qualities and tags.
+ * <p>
+ * The fixed-length fields can be read without decoding anything else, so records can be filtered on reference,
+ * position, flags, mapping quality or read name and written with {@link SAMFileWriter#addRawRecord(RawBAMRecord)}
+ * without being decoded and re-encoded. Use {@link #toSAMRecord(SAMFileHeader)} to get a (lazily decoded)
+ * {@link BAMRecord} for the records that need more.
+ * <p>
+ * Reference indices are those of the header of the file the record was read from, so raw records may only be written
+ * to a writer whose sequence dictionary is the same.
+ * <p>
+ * Instances returned by {@link BAMFileReader#getRawIterator()} are reused; use {@link #deepCopy()}
+ * to retain one.
+ */
+public class RawBAMRecord {
+    // the layout of an encoded record: the block size, then the fixed length fields at these offsets. These are
+    // shared with the other classes in this package that work on encoded records.
+    static final int BLOCK_SIZE_LENGTH = 4;
+    static final int REFERENCE_INDEX_OFFSET = 4;
+    static final int POSITION_OFFSET = 8;
+    static final int READ_NAME_LENGTH_OFFSET = 12;
+    static final int MAPPING_QUALITY_OFFSET = 13;
+    static final int BIN_OFFSET = 14;
+    static final int CIGAR_LENGTH_OFFSET = 16;
+    static final int FLAGS_OFFSET = 18;
+    static final int READ_LENGTH_OFFSET = 20;
+    static final int MATE_REFERENCE_INDEX_OFFSET = 24;
+    static final int MATE_POSITION_OFFSET = 28;
+    static final int INSERT_SIZE_OFFSET = 32;
+    static final int READ_NAME_OFFSET = 36;
+
+    private byte[] data;
+    private int length;
+
+    /**
+     * Creates an empty record to be filled by {@link BAMRecordCodec#decodeRaw(RawBAMRecord)}.
+     */
+    public RawBAMRecord() {
+        this.data = new byte[READ_NAME_OFFSET];
+        this.length = 0;
+    }
+
+    /**
+     * Creates a record from its binary encoding, including the leading block size.
+     * @param data the encoded record, which is not copied
+     * @param length the number of bytes of data that hold the record
+     */
+    public RawBAMRecord(final byte[] data, final int length) {
+        if (length < READ_NAME_OFFSET || length > data.length) {
+            throw new IllegalArgumentException("Invalid encoded record length: " + length);
+        }
+        if (readInt(data, 0) != length - 4) {
+            throw new SAMFormatException("Record block size " + readInt(data, 0) + " does not match length " + length);
+        }
+        this.data = data;
+        this.length = length;
+    }
+
+    /**
+     * Returns a buffer of at least {@code length} bytes for the codec to read the next record into, and sets the
+     * record's length. The previous contents are discarded.
+     */
+    byte[] prepareBuffer(final int length) {
+        if (data.length < length) {
+            data = new byte[Math.max(length, data.length * 2)];
+        }
+        this.length = length;
+        return data;
+    }
+
+    /** @return the array holding the encoded record, including the leading block size, which may be longer than the record */
+    public byte[] getData() {
+        return data;
+    }
+
+    /** @return the number of bytes of {@link #getData()} that hold the record, including the 4 byte block size */
+    public int getLength() {
+        return length;
+    }
+
+    /** @return the index of the reference sequence in the header of the source file, or -1 if none */
+    public int getReferenceIndex() {
+        return readInt(data, REFERENCE_INDEX_OFFSET);
+    }
+
+    /** @return 1-based alignment start, or 0 if none, as {@link SAMRecord#getAlignmentStart()} */
+    public int getAlignmentStart() {
+        return readInt(data, POSITION_OFFSET) + 1;
+    }
+
+    public int getMappingQuality() {
+        return data[MAPPING_QUALITY_OFFSET] & 0xFF;
+    }
+
+    /** @return the indexing bin stored in the record */
+    public int getIndexingBin() {
+        return readUShort(data, BIN_OFFSET);
+    }
+
+    /** @return the number of CIGAR operations */
+    public int getCigarLength() {
+        return readUShort(data, CIGAR_LENGTH_OFFSET);
+    }
+
+    public int getFlags() {
+        return readUShort(data, FLAGS_OFFSET);
+    }
+
+    /** @return true if the given flag is set */
+    public boolean isSet(final SAMFlag flag) {
+        return flag.isSet(getFlags());
+    }
+
+    public int getReadLength() {
+        return readInt(data, READ_LENGTH_OFFSET);
+    }
+
+    /** @return the index of the mate's reference sequence in the header of the source file, or -1 if none */
+    public int getMateReferenceIndex() {
+        return readInt(data, MATE_REFERENCE_INDEX_OFFSET);
+    }
+
+    /** @return 1-based mate alignment start, or 0 if none */
+    public int getMateAlignmentStart() {
+        return readInt(data, MATE_POSITION_OFFSET) + 1;
+    }
+
+    public int getInferredInsertSize() {
+        return readInt(data, INSERT_SIZE_OFFSET);
+    }
+
+    public String getReadName() {
+        // the length includes the null terminator
+        final int readNameLength = (data[READ_NAME_LENGTH_OFFSET] & 0xFF) - 1;
+        return new String(data, READ_NAME_OFFSET, readNameLength, StandardCharsets.US_ASCII);
+    }
+
+    /** @return the offset in {@link #getData()} of the variable-length block, which starts with the read name */
+    public int getVariableDataOffset() {
+        return READ_NAME_OFFSET;
+    }
+
+    /** @return the offset in {@link #getData()} of the tags, which continue to the end of the record */
+    public int getAttributesOffset() {
+        final int readLength = getReadLength();
+        return READ_NAME_OFFSET + (data[READ_NAME_LENGTH_OFFSET] & 0xFF) + getCigarLength() * 4 +
+                (readLength + 1) / 2 + readLength;
+    }
+
+    /**
+     * @return a copy of this record that does not share its buffer
+     */
+    public RawBAMRecord deepCopy() {
+        return new RawBAMRecord(Arrays.copyOf(data, length), length);
+    }
+
+    /**
+     * Creates a (lazily decoded) BAMRecord from this record, as {@link BAMRecordCodec#decode()} would.
+     * The bytes are copied, so the result remains valid if this record is reused.
+     * @param header the header of the file this record was read from, or one with the same sequence dictionary
+     */
+    public BAMRecord toSAMRecord(final SAMFileHeader header) {
+        return toSAMRecord(header, DefaultSAMRecordFactory.getInstance());
+    }
+
+    /**
+     * Creates a (lazily decoded) BAMRecord from this record using the given factory.
+     * @see #toSAMRecord(SAMFileHeader)
+     */
+    public BAMRecord toSAMRecord(final SAMFileHeader header, final SAMRecordFactory factory) {
+        final BAMRecord ret = factory.createBAMRecord(header,
+                getReferenceIndex(),
+                getAlignmentStart(),
+                (short) (data[READ_NAME_LENGTH_OFFSET] & 0xFF),
+                (short) getMappingQuality(),
+                getIndexingBin(),
+                getCigarLength(),
+                getFlags(),
+                getReadLength(),
+                getMateReferenceIndex(),
+                getMateAlignmentStart(),
+                getInferredInsertSize(),
+                Arrays.copyOfRange(data, READ_NAME_OFFSET, length));
+        if (null != header) {
+            // don't reset a null header as this will clobber the reference and mate reference indices
+            ret.setHeader(header);
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return getReadName() + " " + getReferenceIndex() + ":" + getAlignmentStart();
+    }
+
+    static int readInt(final byte[] buffer, final int offset) {
+        return (buffer[offset] & 0xFF) | ((buffer[offset + 1] & 0xFF) << 8) |
+                ((buffer[offset + 2] & 0xFF) << 16) | ((buffer[offset + 3] & 0xFF) << 24);
+    }
+
+    static int readUShort(final byte[] buffer, final int offset) {
+        return (buffer[offset] & 0xFF) | ((buffer[offset + 1] & 0xFF) << 8);
+    }
+}
@@ -35,6 +35,16 @@ public interface SAMFileWriter extends Closeable {
 
 	void addAlignment(SAMRecord alignment);
 
+    /**
+     * Add a record in its BAM binary encoding, as returned by {@link SamReader#rawIterator()}.  Writers that can't
+     * write the encoding directly decode the record and add it with {@link #addAlignment(SAMRecord)}.
+     *
+     * @param record the record, whose reference indices must be those of this writer's sequence dictionary
+     */
+    default void addRawRecord(final RawBAMRecord record) {
+        addAlignment(record.toSAMRecord(getFileHeader()));
+    }
+
     SAMFileHeader getFileHeader();
 
 	/**
@@ -59,6 +59,7 @@ public class SAMFileWriterFactory implements Cloneable {
     private int compressionLevel = BlockCompressedOutputStream.getDefaultCompressionLevel();
     private SamFlagField samFlagFieldOutput = SamFlagField.NONE;
     private Integer maxRecordsInRam = null;
+    private boolean useBinaryCoordinateSort = false;
     private DeflaterFactory deflaterFactory = BlockCompressedOutputStream.getDefaultDeflaterFactory();
 
     /** simple constructor */
@@ -76,6 +77,7 @@ public class SAMFileWriterFactory implements Cloneable {
         this.tmpDir = other.tmpDir;
         this.compressionLevel = other.compressionLevel;
         this.maxRecordsInRam = other.maxRecordsInRam;
+        this.useBinaryCoordinateSort = other.useBinaryCoordinateSort;
     }
     
     @Override
@@ -186,6 +188,26 @@ public class SAMFileWriterFactory implements Cloneable {
         return maxRecordsInRam;
     }
 
+    /**
+     * Before creating a coordinate sorted writer that is not presorted, this method may be called to sort
+     * records in their BAM binary encoding using {@link BAMRecordCoordinateSorter}, which uses less memory and
+     * garbage collection per record than sorting SAMRecord objects.  The resulting order is the same.
+     *
+     * @param useBinaryCoordinateSort whether to sort coordinate sorted output in binary form
+     */
+    public SAMFileWriterFactory setUseBinaryCoordinateSort(final boolean useBinaryCoordinateSort) {
+        this.useBinaryCoordinateSort = useBinaryCoordinateSort;
+        return this;
+    }
+
+    /**
+     * Gets whether coordinate sorted output is sorted in binary form.
+     * @see #setUseBinaryCoordinateSort(boolean)
+     */
+    public boolean getUseBinaryCoordinateSort() {
+        return useBinaryCoordinateSort;
+    }
+
     /**
      * Turn on or off the use of asynchronous IO for writing output SAM and BAM files.  If true then
      * each SAMFileWriter creates a dedicated thread which is used for compression and IO activities.
@@ -313,6 +335,7 @@ public class SAMFileWriterFactory implements Cloneable {
             writer.setMaxRecordsInRam(maxRecordsInRam);
         }
         if (this.tmpDir != null) writer.setTempDirectory(this.tmpDir);
+        writer.setUseBinaryCoordinateSort(useBinaryCoordinateSort);
         writer.setHeader(header);
         if (createIndex && writer.getSortOrder().equals(SAMFileHeader.SortOrder.coordinate)) {
             writer.enableBamIndexConstruction();
@@ -407,6 +430,7 @@ public class SAMFileWriterFactory implements Cloneable {
             writer.setMaxRecordsInRam(maxRecordsInRam);
         }
         if (this.tmpDir != null) writer.setTempDirectory(this.tmpDir);
+        writer.setUseBinaryCoordinateSort(useBinaryCoordinateSort);
         writer.setHeader(header);
 
         if (this.useAsyncIo) return new AsyncSAMFileWriter(writer, this.asyncOutputBufferSize);
@@ -692,7 +716,7 @@ public class SAMFileWriterFactory implements Cloneable {
         return "SAMFileWriterFactory [createIndex=" + createIndex + ", createMd5File=" + createMd5File + ", useAsyncIo="
                 + useAsyncIo + ", asyncOutputBufferSize=" + asyncOutputBufferSize + ", bufferSize=" + bufferSize
                 + ", tmpDir=" + tmpDir + ", compressionLevel=" + compressionLevel + ", maxRecordsInRam="
-                + maxRecordsInRam + "]";
+                + maxRecordsInRam + ", useBinaryCoordinateSort=" + useBinaryCoordinateSort + "]";
     }
 
 }
@@ -43,6 +43,8 @@ public abstract class SAMFileWriterImpl implements SAMFileWriter
     private SAMFileHeader.SortOrder sortOrder;
     private SAMFileHeader header;
     private SortingCollection<SAMRecord> alignmentSorter;
+    private BAMRecordCoordinateSorter binaryCoordinateSorter;
+    private boolean useBinaryCoordinateSort = false;
     private File tmpDir = new File(System.getProperty("java.io.tmpdir"));
     private ProgressLoggerInterface progressLogger = null;
     private boolean isClosed = false;
@@ -132,6 +134,23 @@ public abstract class SAMFileWriterImpl implements SAMFileWriter
         return tmpDir;
     }
 
+    /**
+     * When writing coordinate sorted records that are not presorted, sort them in their BAM binary encoding
+     * with a {@link BAMRecordCoordinateSorter} rather than as SAMRecord objects in a {@link SortingCollection}.
+     * The resulting order is the same.  Must be called before setHeader().
+     * @param useBinaryCoordinateSort whether to sort records in their binary encoding
+     */
+    protected void setUseBinaryCoordinateSort(final boolean useBinaryCoordinateSort) {
+        if (this.header != null) {
+            throw new IllegalStateException("setUseBinaryCoordinateSort must be called before setHeader()");
+        }
+        this.useBinaryCoordinateSort = useBinaryCoordinateSort;
+    }
+
+    protected boolean getUseBinaryCoordinateSort() {
+        return useBinaryCoordinateSort;
+    }
+
     /**
      * Must be called before addAlignment. Header cannot be null.
      */
@@ -154,6 +173,8 @@ public abstract class SAMFileWriterImpl implements SAMFileWriter
             } else {
                 sortOrderChecker = new SAMSortOrderChecker(sortOrder);
             }
+        } else if (useBinaryCoordinateSort && sortOrder.equals(SAMFileHeader.SortOrder.coordinate)) {
+            binaryCoordinateSorter = new BAMRecordCoordinateSorter(header, maxRecordsInRam, tmpDir.toPath());
         } else if (!sortOrder.equals(SAMFileHeader.SortOrder.unsorted)) {
             alignmentSorter = SortingCollection.newInstance(SAMRecord.class,
                     new BAMRecordCodec(header), sortOrder.getComparatorInstance(), maxRecordsInRam, tmpDir);
@@ -183,11 +204,42 @@ public abstract class SAMFileWriterImpl implements SAMFileWriter
         } else if (presorted) {
             assertPresorted(alignment);
             writeAlignment(alignment);
+        } else if (binaryCoordinateSorter != null) {
+            binaryCoordinateSorter.add(alignment);
         } else {
             alignmentSorter.add(alignment);
         }
     }
 
+    /**
+     * Add a record in its BAM binary encoding.  When the records don't need to be sorted, a BAM writer writes
+     * the encoding without decoding it.  Otherwise, and for other formats, the record is decoded as needed.
+     *
+     * @param record the record, whose reference indices must be those of this writer's sequence dictionary
+     * @throws IllegalArgumentException if the record's reference or mate reference index isn't in the sequence dictionary
+     */
+    @Override
+    public void addRawRecord(final RawBAMRecord record) {
+        final int numSequences = header.getSequenceDictionary().size();
+        if (record.getReferenceIndex() >= numSequences || record.getMateReferenceIndex() >= numSequences) {
+            throw new IllegalArgumentException("Reference index of record " + record.getReadName() +
+                    " is not in the sequence dictionary of " + getFilename());
+        }
+        if (sortOrder.equals(SAMFileHeader.SortOrder.unsorted)) {
+            writeRawRecord(record);
+        } else if (presorted) {
+            assertPresorted(record.toSAMRecord(header));
+            writeRawRecord(record);
+        } else {
+            final SAMRecord alignment = record.toSAMRecord(header);
+            if (binaryCoordinateSorter != null) {
+                binaryCoordinateSorter.add(alignment);
+            } else {
+                alignmentSorter.add(alignment);
+            }
+        }
+    }
+
     private void assertPresorted(final SAMRecord alignment) {
         final SAMRecord prev = sortOrderChecker.getPreviousRecord();
         if (!sortOrderChecker.isSorted(alignment)) {
@@ -217,6 +269,17 @@ public abstract class SAMFileWriterImpl implements SAMFileWriter
                         alignmentSorter.cleanup();
                     }
                 }
+                if (binaryCoordinateSorter != null) {
+                    try {
+                        for (final SAMRecord alignment : binaryCoordinateSorter) {
+                            writeAlignment(alignment);
+                            if (progressLogger != null)
+                                progressLogger.record(alignment);
+                        }
+                    } finally {
+                        binaryCoordinateSorter.cleanup();
+                    }
+                }
                 finish();
             }
         } finally {
@@ -231,6 +294,14 @@ public abstract class SAMFileWriterImpl implements SAMFileWriter
      */
     abstract protected void writeAlignment(SAMRecord alignment);
 
+    /**
+     * Writes a record in its BAM binary encoding.  Sort order has been taken care of by the time this
+     * method is called.  The default implementation decodes the record and calls {@link #writeAlignment(SAMRecord)}.
+     */
+    protected void writeRawRecord(final RawBAMRecord record) {
+        writeAlignment(record.toSAMRecord(header));
+    }
+
     /**
      * Write the header to disk.  Header object is available via getHeader().
      * @param textHeader for convenience if the implementation needs it.
@@ -216,6 +216,34 @@ public class SAMRecord implements HtsRecord, Cloneable, Locatable, Serializable
         mHeader = header;
     }
 
+    /**
+     * Restore every field to the value it has in a newly constructed record with the given header, so that
+     * the object can be reused for a different record.
+     */
+    void resetState(final SAMFileHeader header) {
+        mReadName = null;
+        mReadBases = NULL_SEQUENCE;
+        mBaseQualities = NULL_QUALS;
+        mReferenceName = NO_ALIGNMENT_REFERENCE_NAME;
+        mAlignmentStart = NO_ALIGNMENT_START;
+        mAlignmentEnd = NO_ALIGNMENT_START;
+        mMappingQuality = NO_MAPPING_QUALITY;
+        mCigarString = NO_ALIGNMENT_CIGAR;
+        mCigar = null;
+        mAlignmentBlocks = null;
+        mFlags = 0;
+        mMateReferenceName = NO_ALIGNMENT_REFERENCE_NAME;
+        mMateAlignmentStart = 0;
+        mInferredInsertSize = 0;
+        mAttributes = null;
+        mReferenceIndex = null;
+        mMateReferenceIndex = null;
+        mValidationStringency = ValidationStringency.SILENT;
+        mFileSource = null;
+        mHeader = header;
+        transientAttributes = null;
+    }
+
     public String getReadName() {
         return mReadName;
     }
@@ -24,6 +24,7 @@
 
 package htsjdk.samtools;
 
+import htsjdk.samtools.seekablestream.CachingSeekableStream;
 import htsjdk.samtools.seekablestream.SeekableFileStream;
 import htsjdk.samtools.seekablestream.SeekablePathStream;
 import htsjdk.samtools.seekablestream.SeekableStream;
@@ -249,6 +250,28 @@ abstract class InputResource {
     /** Returns null if this resource cannot be represented as a {@link htsjdk.samtools.seekablestream.SeekableStream}. */
     abstract SeekableStream asUnbufferedSeekableStream();
 
+    /**
+     * Returns a supplier of new, independent streams over this resource, each time it is called, or null if this
+     * resource cannot be reopened.
+     */
+    Supplier<SeekableStream> asSeekableStreamSupplier() {
+        return null;
+    }
+
+    /**
+     * Returns a stream opened by {@code seekableStreamSupplier}, wrapped in a {@link CachingSeekableStream} that fetches
+     * blocks over several streams from the supplier if {@link Defaults#SEEKABLE_STREAM_CACHE_SIZE} is set.
+     */
+    static SeekableStream maybeCachingSeekableStream(final Supplier<SeekableStream> seekableStreamSupplier) {
+        if (Defaults.SEEKABLE_STREAM_CACHE_SIZE <= 0) {
+            return seekableStreamSupplier.get();
+        }
+        final int blocks = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                Defaults.SEEKABLE_STREAM_CACHE_SIZE / CachingSeekableStream.DEFAULT_BLOCK_SIZE));
+        return new CachingSeekableStream(seekableStreamSupplier, CachingSeekableStream.DEFAULT_BLOCK_SIZE, blocks,
+                Math.min(CachingSeekableStream.DEFAULT_MAX_READ_AHEAD_BLOCKS, blocks - 1), CachingSeekableStream.DEFAULT_FETCH_STREAMS);
+    }
+
     /** All resource types support {@link java.io.InputStream} generation. */
     abstract InputStream asUnbufferedInputStream();
 
@@ -290,7 +313,7 @@ abstract class InputResource {
 class FileInputResource extends InputResource {
 
     final File fileResource;
-    final Lazy<SeekableStream> lazySeekableStream = new Lazy<>(new Supplier<SeekableStream>() {
+    final Supplier<SeekableStream> seekableStreamSupplier = new Supplier<SeekableStream>() {
         @Override
         public SeekableStream get() {
             try {
@@ -299,7 +322,8 @@ class FileInputResource extends InputResource {
                 throw new RuntimeIOException(e);
             }
         }
-    });
+    };
+    final Lazy<SeekableStream> lazySeekableStream = new Lazy<>(seekableStreamSupplier);
 
 
     FileInputResource(final File fileResource) {
@@ -337,6 +361,11 @@ class FileInputResource extends InputResource {
         }
     }
 
+    @Override
+    Supplier<SeekableStream> asSeekableStreamSupplier() {
+        return fileResource.isFile() ? seekableStreamSupplier : null;
+    }
+
     @Override
     public InputStream asUnbufferedInputStream() {
         final SeekableStream seekableStream = asUnbufferedSeekableStream();
@@ -361,7 +390,7 @@ class PathInputResource extends InputResource {
 
     final Path pathResource;
     final Function<SeekableByteChannel, SeekableByteChannel> wrapper;
-    final Lazy<SeekableStream> lazySeekableStream = new Lazy<>(new Supplier<SeekableStream>() {
+    final Supplier<SeekableStream> seekableStreamSupplier = new Supplier<SeekableStream>() {
         @Override
         public SeekableStream get() {
             try {
@@ -370,6 +399,14 @@ class PathInputResource extends InputResource {
                 throw new RuntimeIOException(e);
             }
         }
+    };
+    // local files are read directly, other file systems are usually remote and benefit from a block cache
+    final Lazy<SeekableStream> lazySeekableStream = new Lazy<>(new Supplier<SeekableStream>() {
+        @Override
+        public SeekableStream get() {
+            return pathResource.getFileSystem() == FileSystems.getDefault() ?
+                    seekableStreamSupplier.get() : maybeCachingSeekableStream(seekableStreamSupplier);
+        }
     });
 
 
@@ -412,6 +449,11 @@ class PathInputResource extends InputResource {
         return lazySeekableStream.get();
     }
 
+    @Override
+    Supplier<SeekableStream> asSeekableStreamSupplier() {
+        return seekableStreamSupplier;
+    }
+
     @Override
     public InputStream asUnbufferedInputStream() {
         return asUnbufferedSeekableStream();
@@ -426,13 +468,14 @@ class PathInputResource extends InputResource {
 class UrlInputResource extends InputResource {
 
     final URL urlResource;
-    final Lazy<SeekableStream> lazySeekableStream = new Lazy<>(new Supplier<SeekableStream>() {
+    final Supplier<SeekableStream> seekableStreamSupplier = new Supplier<SeekableStream>() {
         @Override
         public SeekableStream get() {
             try { return SeekableStreamFactory.getInstance().getStreamFor(urlResource); }
             catch (final IOException ioe) { throw new RuntimeIOException(ioe); }
         }
-    });
+    };
+    final Lazy<SeekableStream> lazySeekableStream = new Lazy<>(() -> maybeCachingSeekableStream(seekableStreamSupplier));
 
     UrlInputResource(final URL urlResource) {
         super(Type.URL);
@@ -464,6 +507,11 @@ class UrlInputResource extends InputResource {
         return lazySeekableStream.get();
     }
 
+    @Override
+    Supplier<SeekableStream> asSeekableStreamSupplier() {
+        return seekableStreamSupplier;
+    }
+
     @Override
     public InputStream asUnbufferedInputStream() {
         return asUnbufferedSeekableStream();
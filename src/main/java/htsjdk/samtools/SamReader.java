@@ -28,6 +28,7 @@ import htsjdk.samtools.util.CloseableIterator;
 
 import java.io.Closeable;
 import java.text.MessageFormat;
+import java.util.List;
 
 /**
  * Describes functionality for objects that produce {@link SAMRecord}s and associated information.
@@ -180,6 +181,43 @@ public interface SamReader extends Iterable<SAMRecord>, Closeable {
     @Override
     public SAMRecordIterator iterator();
 
+    /**
+     * Iterate through a BAM file in order, returning records in their binary encoding without decoding them, so that
+     * they can be filtered on their fixed-length fields and passed to {@link SAMFileWriter#addRawRecord(RawBAMRecord)}.
+     * Returned records are reused, and are only valid until the following call to next().  The same restriction
+     * on open iterators as for {@link #iterator()} applies.
+     *
+     * @throws UnsupportedOperationException if the input is not a BAM file
+     */
+    default CloseableIterator<RawBAMRecord> rawIterator() {
+        throw new UnsupportedOperationException("Raw record iteration is only supported for BAM input: " + getResourceDescription());
+    }
+
+    /**
+     * Split a BAM file into at most numShards parts of similar size on disk, that together contain every record in
+     * the file exactly once, so that the file can be processed in parallel by iterating over each shard with
+     * {@link #shardIterator(SAMFileSpan)}.  A splitting index (SBI) next to the file or a BAI index is used to find
+     * shard boundaries if there is one, otherwise the file is scanned for records near each boundary.
+     *
+     * @param numShards the maximum number of shards, fewer are returned for small files
+     * @return contiguous, non-empty spans of the file in order
+     * @throws UnsupportedOperationException if the input is not a BAM file opened from a file, path or URL
+     */
+    default List<SAMFileSpan> getShards(final int numShards) {
+        throw new UnsupportedOperationException("Splitting is only supported for BAM input: " + getResourceDescription());
+    }
+
+    /**
+     * Iterate over the records in a shard returned by {@link #getShards(int)}.  Each iterator reads the file through
+     * its own stream, so unlike other iterators, any number of shard iterators can be open at the same time and used
+     * from different threads.
+     *
+     * @throws UnsupportedOperationException if the input is not a BAM file opened from a file, path or URL
+     */
+    default CloseableIterator<SAMRecord> shardIterator(final SAMFileSpan shard) {
+        throw new UnsupportedOperationException("Splitting is only supported for BAM input: " + getResourceDescription());
+    }
+
     /**
      * Iterate over records that match the given interval.  Only valid to call this if hasIndex() == true.
      * <p/>
@@ -495,6 +533,30 @@ public interface SamReader extends Iterable<SAMRecord>, Closeable {
             return new AssertingIterator(p.getIterator());
         }
 
+        @Override
+        public CloseableIterator<RawBAMRecord> rawIterator() {
+            if (p instanceof BAMFileReader) {
+                return ((BAMFileReader) p).getRawIterator();
+            }
+            return SamReader.super.rawIterator();
+        }
+
+        @Override
+        public List<SAMFileSpan> getShards(final int numShards) {
+            if (p instanceof BAMFileReader) {
+                return ((BAMFileReader) p).getShards(numShards);
+            }
+            return SamReader.super.getShards(numShards);
+        }
+
+        @Override
+        public CloseableIterator<SAMRecord> shardIterator(final SAMFileSpan shard) {
+            if (p instanceof BAMFileReader) {
+                return ((BAMFileReader) p).getShardIterator(shard);
+            }
+            return SamReader.super.shardIterator(shard);
+        }
+
         @Override
         public SAMRecordIterator iterator(final SAMFileSpan chunks) {
             return new AssertingIterator(p.getIterator(chunks));
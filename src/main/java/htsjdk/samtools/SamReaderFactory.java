@@ -36,6 +36,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -445,6 +446,17 @@ public abstract class SamReaderFactory {
                     }
                 }
 
+                if (primitiveSamReader instanceof BAMFileReader && data.asSeekableStreamSupplier() != null) {
+                    ((BAMFileReader) primitiveSamReader).setStreamSupplier(data.asSeekableStreamSupplier());
+                    final Path path = data.asPath();
+                    if (path != null && path.getFileName() != null) {
+                        final Path splittingIndexPath = path.resolveSibling(path.getFileName() + FileExtensions.SBI);
+                        if (Files.isRegularFile(splittingIndexPath)) {
+                            ((BAMFileReader) primitiveSamReader).setSplittingIndexPath(splittingIndexPath);
+                        }
+                    }
+                }
+
                 // Apply the options defined by this factory to this reader
                 final SamReader.PrimitiveSamReaderToSamReaderAdapter reader =
                         new SamReader.PrimitiveSamReaderToSamReaderAdapter(primitiveSamReader, resource);
@@ -579,6 +591,41 @@ public abstract class SamReaderFactory {
             }
         },
 
+        /**
+         * The factory's BAM {@link SamReader}s with index files use a {@link SharedBAMFileIndex}: each index file is
+         * loaded into memory in full once, in a compact form, and the index is shared by all readers of the file that use this option,
+         * which can query it concurrently.  Takes precedence over {@link #CACHE_FILE_BASED_INDEXES} and
+         * {@link #DONT_MEMORY_MAP_INDEX} for such readers.
+         *
+         * @see SharedBAMFileIndex#getSharedIndex(java.nio.file.Path)
+         */
+        SHARE_INDEXES {
+            @Override
+            void applyTo(final BAMFileReader underlyingReader, final SamReader reader) {
+                underlyingReader.enableIndexSharing(true);
+            }
+
+            @Override
+            void applyTo(final SAMTextReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+
+            @Override
+            void applyTo(final CRAMFileReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+
+            @Override
+            void applyTo(final SRAFileReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+
+            @Override
+            void applyTo(final HtsgetBAMFileReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+        },
+
         /**
          * Eagerly decode {@link htsjdk.samtools.SamReader}'s {@link htsjdk.samtools.SAMRecord}s, which can reduce memory footprint if many
          * fields are being read per record, or if fields are going to be updated.
@@ -610,6 +657,39 @@ public abstract class SamReaderFactory {
             }
         },
 
+        /**
+         * The iterator returned by {@link SamReader#iterator()} for BAM files reuses a small number of record objects
+         * rather than allocating a new record for each read, which greatly reduces garbage collection when streaming
+         * through a file. Each record returned is only valid until the next call to next(); use
+         * {@link SAMRecord#deepCopy()} to retain a record. The records' file sources are not set.
+         */
+        REUSE_RECORDS {
+            @Override
+            void applyTo(final BAMFileReader underlyingReader, final SamReader reader) {
+                underlyingReader.setReuseRecords(true);
+            }
+
+            @Override
+            void applyTo(final SAMTextReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+
+            @Override
+            void applyTo(final CRAMFileReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+
+            @Override
+            void applyTo(final SRAFileReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+
+            @Override
+            void applyTo(final HtsgetBAMFileReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+        },
+
         /**
          * For {@link htsjdk.samtools.SamReader}s backed by block-compressed streams, enable CRC validation of those streams.  This is an
          * expensive operation, but serves to ensure validity of the stream.
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A BAI or CSI index that is read into memory in full when it is created and never changes afterwards, so that a
+ * single instance can be shared by any number of readers and threads, and queried concurrently without locking.  The
+ * {@link CachingBAMFileIndex} and {@link DiskBasedBAMFileIndex} instead read from the index file on demand, and keep
+ * the position in the file and their caches in the index object, so each reader needs its own copy.  The index is
+ * held as a {@link CompactBAMFileIndex}.
+ *
+ * {@link #getSharedIndex(Path)} returns the instance for an index file from a process-wide registry, loading it the
+ * first time it is requested, and again if the file has been modified since.  Readers use the shared instance when
+ * opened with {@link SamReaderFactory.Option#SHARE_INDEXES}.
+ *
+ * Closing a shared index does nothing, since it does not hold any open files.
+ */
+public final class SharedBAMFileIndex implements BrowseableBAMIndex {
+    private static final ConcurrentMap<Path, SharedBAMFileIndex> registry = new ConcurrentHashMap<>();
+
+    private final CompactBAMFileIndex index;
+    /** The modification time of the index file when it was loaded, or null if it is not known. */
+    private final FileTime lastModified;
+
+    /**
+     * Read an index into memory.
+     * @param indexPath the BAI or CSI file
+     */
+    public SharedBAMFileIndex(final Path indexPath) {
+        this(indexPath, getLastModifiedTime(indexPath));
+    }
+
+    private SharedBAMFileIndex(final Path indexPath, final FileTime lastModified) {
+        this.index = new CompactBAMFileIndex(indexPath);
+        this.lastModified = lastModified;
+    }
+
+    private static FileTime getLastModifiedTime(final Path indexPath) {
+        try {
+            return Files.getLastModifiedTime(indexPath);
+        } catch (final IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the shared index for an index file, loading it if it has not been loaded yet, or if the file has been
+     * modified since it was loaded.  Concurrent requests for an index that is not loaded wait for a single load.
+     * @param indexPath the BAI or CSI file
+     * @return the shared index
+     */
+    public static SharedBAMFileIndex getSharedIndex(final Path indexPath) {
+        final Path key = indexPath.toAbsolutePath().normalize();
+        final FileTime lastModified = getLastModifiedTime(key);
+        final SharedBAMFileIndex index = registry.get(key);
+        if (index != null && isCurrent(index, lastModified)) {
+            return index;
+        }
+        return registry.compute(key, (path, existing) -> existing != null && isCurrent(existing, lastModified) ?
+                existing : new SharedBAMFileIndex(path, lastModified));
+    }
+    private static boolean isCurrent(final SharedBAMFileIndex index, final FileTime lastModified) {
+        return lastModified == null || lastModified.equals(index.lastModified);
+    }
+
+    /**
+     * Remove an index from the registry, so that its memory can be reclaimed once readers using it are closed.
+     * @param indexPath the BAI or CSI file
+     * @return true if the index was loaded
+     */
+    public static boolean removeSharedIndex(final Path indexPath) {
+        return registry.remove(indexPath.toAbsolutePath().normalize()) != null;
+    }
+
+    /**
+     * Remove all indexes from the registry.
+     */
+    public static void clearSharedIndexes() {
+        registry.clear();
+    }
+
+    CompactBAMFileIndex getCompactIndex() {
+        return index;
+    }
+
+    /**
+     * @return the number of reference sequences in the index
+     */
+    public int getNumberOfReferences() {
+        return index.getNumberOfReferences();
+    }
+
+    /**
+     * @return the count of records with no coordinates, or null if the index does not record it
+     */
+    public Long getNoCoordinateCount() {
+        return index.getNoCoordinateCount();
+    }
+
+    @Override
+    public BAMFileSpan getSpanOverlapping(final int referenceIndex, final int startPos, final int endPos) {
+        return index.getSpanOverlapping(referenceIndex, startPos, endPos);
+    }
+
+    @Override
+    public BAMFileSpan getSpanOverlapping(final Bin bin) {
+        return index.getSpanOverlapping(bin);
+    }
+
+    @Override
+    public BinList getBinsOverlapping(final int referenceIndex, final int startPos, final int endPos) {
+        return index.getBinsOverlapping(referenceIndex, startPos, endPos);
+    }
+
+    @Override
+    public int getLevelSize(final int levelNumber) {
+        return index.getLevelSize(levelNumber);
+    }
+
+    @Override
+    public int getLevelForBin(final Bin bin) {
+        return index.getLevelForBin(bin);
+    }
+
+    @Override
+    public int getFirstLocusInBin(final Bin bin) {
+        return index.getFirstLocusInBin(bin);
+    }
+
+    @Override
+    public int getLastLocusInBin(final Bin bin) {
+        return index.getLastLocusInBin(bin);
+    }
+
+    @Override
+    public long getStartOfLastLinearBin() {
+        return index.getStartOfLastLinearBin();
+    }
+
+    @Override
+    public BAMIndexMetaData getMetaData(final int reference) {
+        return index.getMetaData(reference);
+    }
+
+    /**
+     * Does nothing, since the index is shared and holds no open files.
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -101,7 +101,22 @@ public final class ContainerFactory {
      * @return a {@link Container} if the threshold for emitting a {@link Container} has been reached, otherwise null
      */
     public final Container getNextContainer(final SAMRecord samRecord, final long containerByteOffset) {
-        Container container = null;
+        final PendingContainer pendingContainer = getNextPendingContainer(samRecord);
+        return pendingContainer == null ? null : pendingContainer.build(compressionHeaderFactory, containerByteOffset);
+    }
+
+    /**
+     * Add a new {@link SAMRecord} object to the factory, obtaining a {@link PendingContainer} if the threshold for
+     * emitting a {@link Container} has been reached. Unlike {@link #getNextContainer(SAMRecord, long)}, the
+     * (expensive) creation of the compression header and Slices is deferred until {@link PendingContainer#build}
+     * is called, which may be on another thread.
+     *
+     * @param samRecord the next SAMRecord to be written
+     * @return a {@link PendingContainer} if the threshold for emitting a {@link Container} has been reached,
+     * otherwise null
+     */
+    public final PendingContainer getNextPendingContainer(final SAMRecord samRecord) {
+        PendingContainer pendingContainer = null;
 
         if (samRecord.getHeader() == null) {
             samRecord.setHeaderStrict(samFileHeader);
@@ -122,7 +137,7 @@ public final class ContainerFactory {
                     currentReferenceContextID,
                     nextRecordIndex,
                     sliceFactory.getNumberOfSliceEntries())) {
-                container = makeContainer(containerByteOffset);
+                pendingContainer = makePendingContainer();
             }
             currentReferenceContextID = nextRecordIndex;
         } else {
@@ -130,7 +145,7 @@ public final class ContainerFactory {
         }
 
         sliceSAMRecords.add(samRecord);
-        return container;
+        return pendingContainer;
     }
 
     /**
@@ -140,18 +155,23 @@ public final class ContainerFactory {
      * @return a {@link Container} if any record have been accumulated, otherwise null
      */
     public Container getFinalContainer(final long containerByteOffset) {
+        final PendingContainer pendingContainer = getFinalPendingContainer();
+        return pendingContainer == null ? null : pendingContainer.build(compressionHeaderFactory, containerByteOffset);
+    }
+
+    /**
+     * Obtain a {@link PendingContainer} from any remaining accumulated SAMRecords, if any.
+     *
+     * @return a {@link PendingContainer} if any record have been accumulated, otherwise null
+     */
+    public PendingContainer getFinalPendingContainer() {
         // write a final slice, if any, and a final container, if there are any slices
         if (sliceSAMRecords.size() > 0) {
             sliceFactory.createNewSliceEntry(currentReferenceContextID, sliceSAMRecords);
             sliceSAMRecords.clear();
         }
-        if (sliceFactory.getNumberOfSliceEntries() != 0) {
-            final Container container = makeContainer(containerByteOffset);
-            currentReferenceContextID = ReferenceContext.UNINITIALIZED_REFERENCE_ID;
-            return container;
-        }
         currentReferenceContextID = ReferenceContext.UNINITIALIZED_REFERENCE_ID;
-        return null;
+        return sliceFactory.getNumberOfSliceEntries() != 0 ? makePendingContainer() : null;
     }
 
     /**
@@ -192,32 +212,84 @@ public final class ContainerFactory {
     }
 
     /**
-     * Build a Container (and its constituent Slices) from {@link CRAMCompressionRecord}s.
-     * Note that this will always result in a single Container, regardless of how many Slices
-     * are created.  It is up to the caller to divide the records into multiple Containers,
-     * if that is desired.
+     * Remove the accumulated slice entries from the slice factory, and package them, along with the
+     * state needed to create the Container, into a {@link PendingContainer}. Note that this will always result in
+     * a single Container, regardless of how many Slices are created.  It is up to the caller to divide the records
+     * into multiple Containers, if that is desired.
      *
-     * @param containerByteOffset the Container's byte offset from the start of the stream
-     * @return the container built from the records
+     * @return the pending container for the accumulated records
      */
-    private final Container makeContainer(final long containerByteOffset) {
+    private PendingContainer makePendingContainer() {
         ValidationUtils.validateArg(
                 sliceFactory.getNumberOfSliceEntries() != 0,
                 "must have slice entries to create a container");
 
-        // Create the compression header, then convert to slices. The compression header  must
-        // be presented with ALL reads that will be included in the container, no matter how
-        // they may be distributed across slices.
-        final CompressionHeader compressionHeader = compressionHeaderFactory.createCompressionHeader(
-                sliceFactory.getCRAMRecordsForAllSlices(),
-                coordinateSorted);
-        final Container container = new Container(
-                compressionHeader,
-                sliceFactory.createSlices(compressionHeader, containerByteOffset),
-                containerByteOffset,
+        final byte[] referenceBases = sliceFactory.getCurrentReferenceBases();
+        final PendingContainer pendingContainer = new PendingContainer(
+                sliceFactory.removeSliceEntries(),
+                referenceBases,
+                coordinateSorted,
                 globalRecordCounter);
-        globalRecordCounter += container.getContainerHeader().getNumberOfRecords();
-        return container;
+        globalRecordCounter += pendingContainer.getNumberOfRecords();
+        return pendingContainer;
+    }
+
+    /**
+     * The records for a single {@link Container}, grouped into slices, which have been accumulated by a
+     * {@link ContainerFactory} but not yet compressed. Building the Container does not depend on any state
+     * in the ContainerFactory, so pending containers can be built concurrently, provided that each one
+     * uses its own {@link CompressionHeaderFactory}.
+     */
+    public static final class PendingContainer {
+        private final List<SliceFactory.SliceStagingEntry> sliceStagingEntries;
+        private final byte[] referenceBases;
+        private final boolean coordinateSorted;
+        private final long globalRecordCounter;
+
+        private PendingContainer(
+                final List<SliceFactory.SliceStagingEntry> sliceStagingEntries,
+                final byte[] referenceBases,
+                final boolean coordinateSorted,
+                final long globalRecordCounter) {
+            this.sliceStagingEntries = sliceStagingEntries;
+            this.referenceBases = referenceBases;
+            this.coordinateSorted = coordinateSorted;
+            this.globalRecordCounter = globalRecordCounter;
+        }
+
+        /**
+         * @return the number of records in this pending container
+         */
+        public int getNumberOfRecords() {
+            int numberOfRecords = 0;
+            for (final SliceFactory.SliceStagingEntry sliceStagingEntry : sliceStagingEntries) {
+                numberOfRecords += sliceStagingEntry.getRecords().size();
+            }
+            return numberOfRecords;
+        }
+
+        /**
+         * Build the Container (and its constituent Slices), creating the compression header and compressing
+         * the slice blocks.
+         *
+         * @param compressionHeaderFactory the factory used to create the compression header; must not be in
+         *                                 use by another thread
+         * @param containerByteOffset the Container's byte offset from the start of the stream
+         * @return the container built from the records
+         */
+        public Container build(final CompressionHeaderFactory compressionHeaderFactory, final long containerByteOffset) {
+            // Create the compression header, then convert to slices. The compression header  must
+            // be presented with ALL reads that will be included in the container, no matter how
+            // they may be distributed across slices.
+            final CompressionHeader compressionHeader = compressionHeaderFactory.createCompressionHeader(
+                    SliceFactory.getCRAMRecordsForAllSlices(sliceStagingEntries),
+                    coordinateSorted);
+            return new Container(
+                    compressionHeader,
+                    SliceFactory.createSlices(compressionHeader, containerByteOffset, sliceStagingEntries, referenceBases),
+                    containerByteOffset,
+                    globalRecordCounter);
+        }
     }
 
 }
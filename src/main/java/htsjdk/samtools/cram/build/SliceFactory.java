@@ -26,7 +26,6 @@ package htsjdk.samtools.cram.build;
 
 import htsjdk.samtools.*;
 import htsjdk.samtools.cram.CRAMException;
-import htsjdk.samtools.cram.common.CramVersions;
 import htsjdk.samtools.cram.ref.CRAMReferenceSource;
 import htsjdk.samtools.cram.ref.ReferenceContext;
 import htsjdk.samtools.cram.structure.CRAMEncodingStrategy;
@@ -105,14 +104,18 @@ public final class SliceFactory {
      * @return the list of all CRAMRecords
      */
     public List<CRAMCompressionRecord> getCRAMRecordsForAllSlices() {
+        return getCRAMRecordsForAllSlices(cramRecordSliceEntries);
+    }
+
+    static List<CRAMCompressionRecord> getCRAMRecordsForAllSlices(final List<SliceStagingEntry> sliceStagingEntries) {
         // Create a list of ALL reads from all accumulated slices (used to create the container
         // compression header, which must be presented with ALL reads that will be included in the
         // container, no matter how they may be distributed across slices). So if more than one slice
         // entry has been accumulated, we need to temporarily stream all the records into a single
         // list to present to compressionHeaderFactory.
-        return cramRecordSliceEntries.size() > 1 ?
-                cramRecordSliceEntries.stream().flatMap(e -> e.records.stream()).collect(Collectors.toList()) :
-                cramRecordSliceEntries.get(0).getRecords();
+        return sliceStagingEntries.size() > 1 ?
+                sliceStagingEntries.stream().flatMap(e -> e.records.stream()).collect(Collectors.toList()) :
+                sliceStagingEntries.get(0).getRecords();
     }
 
     public int getNumberOfSliceEntries() {
@@ -128,18 +131,43 @@ public final class SliceFactory {
     public List<Slice> createSlices(
             final CompressionHeader compressionHeader,
             final long containerByteOffset) {
-        final List<Slice> slices = new ArrayList<>(cramRecordSliceEntries.size());
-        for (final SliceStagingEntry sliceStagingEntry : cramRecordSliceEntries) {
+        return createSlices(compressionHeader, containerByteOffset, removeSliceEntries(), getCurrentReferenceBases());
+    }
+
+    /**
+     * Remove and return the slice entries accumulated by the factory, so that the Slices can be created
+     * later, possibly on another thread, using {@link #createSlices(CompressionHeader, long, List, byte[])}.
+     * @return the accumulated slice entries
+     */
+    List<SliceStagingEntry> removeSliceEntries() {
+        final List<SliceStagingEntry> sliceStagingEntries = new ArrayList<>(cramRecordSliceEntries);
+        cramRecordSliceEntries.clear();
+        return sliceStagingEntries;
+    }
+
+    /**
+     * @return the reference bases used to compute the reference MD5 of Slices created from the current slice entries
+     */
+    byte[] getCurrentReferenceBases() {
+        return cramReferenceRegion.getCurrentReferenceBases();
+    }
+
+    static List<Slice> createSlices(
+            final CompressionHeader compressionHeader,
+            final long containerByteOffset,
+            final List<SliceStagingEntry> sliceStagingEntries,
+            final byte[] referenceBases) {
+        final List<Slice> slices = new ArrayList<>(sliceStagingEntries.size());
+        for (final SliceStagingEntry sliceStagingEntry : sliceStagingEntries) {
             final Slice slice = new Slice(
                     sliceStagingEntry.getRecords(),
                     compressionHeader,
                     containerByteOffset,
                     sliceStagingEntry.getGlobalRecordCounter()
             );
-            slice.setReferenceMD5(cramReferenceRegion.getCurrentReferenceBases());
+            slice.setReferenceMD5(referenceBases);
             slices.add(slice);
         }
-        cramRecordSliceEntries.clear();
         return slices;
     }
 
@@ -151,7 +179,7 @@ public final class SliceFactory {
         for (final SAMRecord samRecord : samRecords) {
             int referenceIndex = samRecord.getReferenceIndex();
             final CRAMCompressionRecord cramCompressionRecord = new CRAMCompressionRecord(
-                    CramVersions.DEFAULT_CRAM_VERSION,
+                    encodingStrategy.getCRAMVersion(),
                     encodingStrategy,
                     samRecord,
                     cramReferenceRegion.getReferenceBases(referenceIndex),
@@ -255,7 +283,7 @@ public final class SliceFactory {
     // header until we've seen all records that will live in a container. SliceStagingEntry objects are
     // used to accumulate and hold sets of records that will populate a Slice until we're ready to create
     // the actual container with real Slice objects.
-    private static class SliceStagingEntry {
+    static class SliceStagingEntry {
         private final List<CRAMCompressionRecord> records;
         private final ReferenceContext referenceContext;
         private final long sliceRecordCounter;
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.cram.compression;
+
+import htsjdk.samtools.cram.CRAMException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Helpers shared by the CRAM 3.1 codecs (rANS Nx16 and the adaptive arithmetic coder): the uint7 variable
+ * length integer, and the PACK and STRIPE transforms described in the CRAM codecs specification.
+ */
+public final class CompressionUtils {
+
+    private CompressionUtils() {}
+
+    /**
+     * Write an unsigned 32 bit value as a uint7: big-endian groups of 7 bits, with the top bit set on
+     * every byte except the last.
+     */
+    public static void writeUint7(final ByteArrayOutputStream outputStream, final int value) {
+        int shift = 28;
+        while (shift > 0 && (value >>> shift) == 0) {
+            shift -= 7;
+        }
+        for (; shift > 0; shift -= 7) {
+            outputStream.write(((value >>> shift) & 0x7F) | 0x80);
+        }
+        outputStream.write(value & 0x7F);
+    }
+
+    /**
+     * Read a uint7 value written by {@link #writeUint7(ByteArrayOutputStream, int)}.
+     */
+    public static int readUint7(final ByteBuffer inputBuffer) {
+        int value = 0;
+        int b;
+        int count = 0;
+        do {
+            if (!inputBuffer.hasRemaining() || ++count > 5) {
+                throw new CRAMException("Invalid or truncated uint7 value");
+            }
+            b = inputBuffer.get() & 0xFF;
+            value = (value << 7) | (b & 0x7F);
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Return a buffer for the next {@code length} bytes of {@code inputBuffer}, and advance past them.
+     */
+    public static ByteBuffer slice(final ByteBuffer inputBuffer, final int length) {
+        if (length < 0 || length > inputBuffer.remaining()) {
+            throw new CRAMException(String.format("Invalid compressed length %d, %d bytes remaining", length, inputBuffer.remaining()));
+        }
+        final ByteBuffer slice = inputBuffer.slice();
+        slice.limit(length);
+        slice.order(inputBuffer.order());
+        inputBuffer.position(inputBuffer.position() + length);
+        return slice;
+    }
+
+    /**
+     * Return the next {@code length} bytes of {@code inputBuffer}, and advance past them.
+     */
+    public static byte[] readBytes(final ByteBuffer inputBuffer, final int length) {
+        if (length < 0 || length > inputBuffer.remaining()) {
+            throw new CRAMException(String.format("Invalid data length %d, %d bytes remaining", length, inputBuffer.remaining()));
+        }
+        final byte[] bytes = new byte[length];
+        inputBuffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Return the remaining bytes of a buffer as an array, advancing the buffer to its limit.
+     */
+    public static byte[] toByteArray(final ByteBuffer inputBuffer) {
+        return readBytes(inputBuffer, inputBuffer.remaining());
+    }
+
+    /**
+     * @return the distinct symbols in {@code data}, in ascending order, if there are at most 16 of them,
+     * otherwise null, since the data cannot be packed
+     */
+    public static byte[] getPackAlphabet(final byte[] data) {
+        final boolean[] present = new boolean[256];
+        int nsym = 0;
+        for (final byte b : data) {
+            if (!present[b & 0xFF]) {
+                present[b & 0xFF] = true;
+                if (++nsym > 16) {
+                    return null;
+                }
+            }
+        }
+        final byte[] alphabet = new byte[nsym];
+        for (int i = 0, j = 0; i < 256; i++) {
+            if (present[i]) {
+                alphabet[j++] = (byte) i;
+            }
+        }
+        return alphabet;
+    }
+
+    /**
+     * Pack {@code data}, whose symbols must all be in {@code alphabet}, replacing each symbol with its index in the
+     * alphabet using 1, 2 or 4 bits per symbol, starting with the least significant bits of each byte. If the alphabet
+     * has a single symbol, nothing needs to be stored.
+     */
+    public static byte[] encodePack(final byte[] data, final byte[] alphabet) {
+        final int bits = getPackBits(alphabet.length);
+        if (bits == 0) {
+            return new byte[0];
+        }
+        final int[] map = new int[256];
+        for (int i = 0; i < alphabet.length; i++) {
+            map[alphabet[i] & 0xFF] = i;
+        }
+        final int symbolsPerByte = 8 / bits;
+        final byte[] packed = new byte[(data.length + symbolsPerByte - 1) / symbolsPerByte];
+        for (int i = 0; i < data.length; i++) {
+            packed[i / symbolsPerByte] |= map[data[i] & 0xFF] << ((i % symbolsPerByte) * bits);
+        }
+        return packed;
+    }
+
+    /**
+     * Reverse {@link #encodePack(byte[], byte[])}, producing {@code outputLength} symbols.
+     */
+    public static byte[] decodePack(final byte[] packed, final byte[] alphabet, final int outputLength) {
+        if (alphabet.length == 0 || alphabet.length > 16) {
+            throw new CRAMException("Invalid number of packed symbols: " + alphabet.length);
+        }
+        final byte[] data = new byte[outputLength];
+        final int bits = getPackBits(alphabet.length);
+        if (bits == 0) {
+            Arrays.fill(data, alphabet[0]);
+            return data;
+        }
+        final int symbolsPerByte = 8 / bits;
+        if (packed.length < (outputLength + symbolsPerByte - 1) / symbolsPerByte) {
+            throw new CRAMException("Packed data is too short for the expected output length " + outputLength);
+        }
+        final int mask = (1 << bits) - 1;
+        for (int i = 0; i < outputLength; i++) {
+            final int index = (packed[i / symbolsPerByte] >> ((i % symbolsPerByte) * bits)) & mask;
+            if (index >= alphabet.length) {
+                throw new CRAMException("Invalid packed symbol index " + index);
+            }
+            data[i] = alphabet[index];
+        }
+        return data;
+    }
+
+    private static int getPackBits(final int nsym) {
+        if (nsym <= 1) {
+            return 0;
+        } else if (nsym <= 2) {
+            return 1;
+        } else if (nsym <= 4) {
+            return 2;
+        } else {
+            return 4;
+        }
+    }
+
+    /**
+     * @return the length of the i'th of {@code numStripes} streams when striping {@code length} bytes
+     */
+    public static int getStripeLength(final int length, final int numStripes, final int i) {
+        return length / numStripes + ((length % numStripes) > i ? 1 : 0);
+    }
+
+    /**
+     * Split data into {@code numStripes} streams, where stream i holds the bytes at positions i, i + numStripes, ...
+     */
+    public static byte[][] encodeStripe(final byte[] data, final int numStripes) {
+        final byte[][] stripes = new byte[numStripes][];
+        for (int i = 0; i < numStripes; i++) {
+            final byte[] stripe = new byte[getStripeLength(data.length, numStripes, i)];
+            for (int j = 0; j < stripe.length; j++) {
+                stripe[j] = data[j * numStripes + i];
+            }
+            stripes[i] = stripe;
+        }
+        return stripes;
+    }
+
+    /**
+     * Reverse {@link #encodeStripe(byte[], int)}.
+     */
+    public static byte[] decodeStripe(final byte[][] stripes, final int length) {
+        final byte[] data = new byte[length];
+        final int numStripes = stripes.length;
+        for (int i = 0; i < numStripes; i++) {
+            final byte[] stripe = stripes[i];
+            if (stripe.length != getStripeLength(length, numStripes, i)) {
+                throw new CRAMException(String.format("Stripe %d has length %d, expected %d",
+                        i, stripe.length, getStripeLength(length, numStripes, i)));
+            }
+            for (int j = 0; j < stripe.length; j++) {
+                data[j * numStripes + i] = stripe[j];
+            }
+        }
+        return data;
+    }
+}
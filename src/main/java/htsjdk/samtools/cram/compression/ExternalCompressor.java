@@ -44,8 +44,9 @@ public abstract class ExternalCompressor {
      * Return an ExternalCompressor subclass based on the BlockCompressionMethod. Compressor-specific arguments
      * must be populated by the caller.
      * @param compressionMethod the type of compressor required ({@link BlockCompressionMethod})
-     * @param compressorSpecificArg the required order for RANS compressors; or the desired write compression
-     *                             level for GZIP
+     * @param compressorSpecificArg the required order for RANS compressors; the flags for RANSNx16 and
+     *                             ADAPTIVE_ARITHMETIC compressors; the token stream codec for NAME_TOKENISER
+     *                             compressors; or the desired write compression level for GZIP
      * @return an ExternalCompressor of the requested type, populated with an compressor-specific args
      */
     public static ExternalCompressor getCompressorForMethod(
@@ -80,6 +81,30 @@ public abstract class ExternalCompressor {
                         String.format(argErrorMessage, compressorSpecificArg, compressionMethod));
                 return new BZIP2ExternalCompressor();
 
+            case RANSNx16:
+                return new RANSNx16ExternalCompressor(
+                        compressorSpecificArg == NO_COMPRESSION_ARG ? 0 : compressorSpecificArg);
+
+            case ADAPTIVE_ARITHMETIC:
+                return new AdaptiveArithmeticExternalCompressor(
+                        compressorSpecificArg == NO_COMPRESSION_ARG ? 0 : compressorSpecificArg);
+
+            case FQZCOMP:
+                ValidationUtils.validateArg(
+                        compressorSpecificArg == NO_COMPRESSION_ARG,
+                        String.format(argErrorMessage, compressorSpecificArg, compressionMethod));
+                return new FQZCompExternalCompressor();
+
+            case NAME_TOKENISER:
+                ValidationUtils.validateArg(
+                        compressorSpecificArg == NO_COMPRESSION_ARG ||
+                                compressorSpecificArg == NameTokeniserExternalCompressor.USE_RANS ||
+                                compressorSpecificArg == NameTokeniserExternalCompressor.USE_ARITHMETIC,
+                        String.format(argErrorMessage, compressorSpecificArg, compressionMethod));
+                return new NameTokeniserExternalCompressor(compressorSpecificArg == NO_COMPRESSION_ARG ?
+                        NameTokeniserExternalCompressor.USE_RANS :
+                        compressorSpecificArg);
+
             default:
                 throw new IllegalArgumentException(String.format("Unknown compression method %s", compressionMethod));
         }
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.cram.compression;
+
+import htsjdk.samtools.cram.compression.fqzcomp.FQZComp;
+import htsjdk.samtools.cram.structure.block.BlockCompressionMethod;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link ExternalCompressor} for the CRAM 3.1 fqzcomp quality codec. Blocks don't carry record boundaries, so
+ * the data is compressed as a single record; any fqzcomp stream can be uncompressed.
+ */
+public final class FQZCompExternalCompressor extends ExternalCompressor {
+    private final FQZComp fqzComp;
+
+    public FQZCompExternalCompressor() {
+        this(new FQZComp());
+    }
+
+    /**
+     * @param fqzComp the codec instance to use
+     */
+    public FQZCompExternalCompressor(final FQZComp fqzComp) {
+        super(BlockCompressionMethod.FQZCOMP);
+        this.fqzComp = fqzComp;
+    }
+
+    @Override
+    public byte[] compress(final byte[] data) {
+        return CompressionUtils.toByteArray(fqzComp.compress(ByteBuffer.wrap(data)));
+    }
+
+    @Override
+    public byte[] uncompress(final byte[] data) {
+        return CompressionUtils.toByteArray(fqzComp.uncompress(ByteBuffer.wrap(data)));
+    }
+}
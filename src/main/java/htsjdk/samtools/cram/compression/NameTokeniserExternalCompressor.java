@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.cram.compression;
+
+import htsjdk.samtools.cram.compression.nametokenisation.NameTokeniser;
+import htsjdk.samtools.cram.structure.block.BlockCompressionMethod;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * An {@link ExternalCompressor} for the CRAM 3.1 name tokeniser. The data must be a sequence of names, each
+ * terminated by {@link NameTokeniser#NAME_TERMINATOR}.
+ */
+public final class NameTokeniserExternalCompressor extends ExternalCompressor {
+    /** Compress the token streams with rANS Nx16. */
+    public static final int USE_RANS = 0;
+    /** Compress the token streams with the adaptive arithmetic coder. */
+    public static final int USE_ARITHMETIC = 1;
+
+    private final int streamCodec;
+    private final NameTokeniser nameTokeniser;
+
+    /**
+     * @param streamCodec {@link #USE_RANS} or {@link #USE_ARITHMETIC}
+     */
+    public NameTokeniserExternalCompressor(final int streamCodec) {
+        this(streamCodec, new NameTokeniser());
+    }
+
+    /**
+     * @param streamCodec {@link #USE_RANS} or {@link #USE_ARITHMETIC}
+     * @param nameTokeniser the (not thread-safe) codec instance to use
+     */
+    public NameTokeniserExternalCompressor(final int streamCodec, final NameTokeniser nameTokeniser) {
+        super(BlockCompressionMethod.NAME_TOKENISER);
+        this.streamCodec = streamCodec;
+        this.nameTokeniser = nameTokeniser;
+    }
+
+    @Override
+    public byte[] compress(final byte[] data) {
+        return CompressionUtils.toByteArray(nameTokeniser.compress(ByteBuffer.wrap(data), streamCodec == USE_ARITHMETIC));
+    }
+
+    @Override
+    public byte[] uncompress(final byte[] data) {
+        return CompressionUtils.toByteArray(nameTokeniser.uncompress(ByteBuffer.wrap(data)));
+    }
+
+    public int getStreamCodec() { return streamCodec; }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%d)", this.getMethod(), streamCodec);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        NameTokeniserExternalCompressor that = (NameTokeniserExternalCompressor) o;
+
+        return this.streamCodec == that.streamCodec;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getMethod(), streamCodec);
+    }
+}
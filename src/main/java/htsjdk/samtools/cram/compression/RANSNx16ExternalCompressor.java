@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.cram.compression;
+
+import htsjdk.samtools.cram.compression.rans.RANSNx16;
+import htsjdk.samtools.cram.structure.block.BlockCompressionMethod;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+public final class RANSNx16ExternalCompressor extends ExternalCompressor {
+    private final int flags;
+    private final RANSNx16 rans;
+
+    /**
+     * @param flags combination of the {@link RANSNx16} flags to use when compressing
+     */
+    public RANSNx16ExternalCompressor(final int flags) {
+        this(flags, new RANSNx16());
+    }
+
+    /**
+     * @param flags combination of the {@link RANSNx16} flags to use when compressing
+     * @param rans the (not thread-safe) codec instance to use
+     */
+    public RANSNx16ExternalCompressor(final int flags, final RANSNx16 rans) {
+        super(BlockCompressionMethod.RANSNx16);
+        this.flags = flags;
+        this.rans = rans;
+    }
+
+    @Override
+    public byte[] compress(final byte[] data) {
+        return CompressionUtils.toByteArray(rans.compress(ByteBuffer.wrap(data), flags));
+    }
+
+    @Override
+    public byte[] uncompress(final byte[] data) {
+        return CompressionUtils.toByteArray(rans.uncompress(ByteBuffer.wrap(data)));
+    }
+
+    public int getFlags() { return flags; }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%d)", this.getMethod(), flags);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        RANSNx16ExternalCompressor that = (RANSNx16ExternalCompressor) o;
+
+        return this.flags == that.flags;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getMethod(), flags);
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.cram.compression.fqzcomp;
+
+import htsjdk.samtools.cram.CRAMException;
+import htsjdk.samtools.cram.compression.CompressionUtils;
+import htsjdk.samtools.cram.compression.range.ByteModel;
+import htsjdk.samtools.cram.compression.range.RangeCoder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The CRAM 3.1 fqzcomp quality score codec (block compression method 7). Each quality value is range coded with an
+ * adaptive model selected by a 16 bit context, built from the previous quality values in the record, the position
+ * in the record and the number of times the quality value has changed so far. The stream header holds one or more
+ * parameter blocks describing how the context is built, so the decoder supports any layout an encoder chooses.
+ * <p>
+ * The encoder uses a single parameter block. Record boundaries can be supplied to
+ * {@link #compress(ByteBuffer, int[])}; without them the data is coded as a single record.
+ */
+public final class FQZComp {
+    private static final int VERSION = 5;
+
+    private static final int GFLAG_MULTI_PARAM = 0x01;
+    private static final int GFLAG_HAVE_STAB = 0x02;
+    private static final int GFLAG_DO_REV = 0x04;
+
+    private static final int NUMBER_OF_CONTEXTS = 1 << 16;
+    private static final int NUMBER_OF_SELECTORS = 256;
+
+    // context layout used by the encoder: previous qualities, then remaining positions, then deltas
+    private static final int POSITION_BITS = 3;
+    private static final int DELTA_BITS = 3;
+
+    /**
+     * Compress the remaining bytes of {@code inBuffer} as a single record.
+     *
+     * @param inBuffer quality values to compress
+     * @return the compressed stream
+     */
+    public ByteBuffer compress(final ByteBuffer inBuffer) {
+        return compress(inBuffer, null);
+    }
+
+    /**
+     * Compress the remaining bytes of {@code inBuffer}, which hold the quality values of consecutive records.
+     *
+     * @param inBuffer quality values to compress
+     * @param recordLengths the length of each record, which must add up to the size of the data, or null to code
+     *                      the data as a single record
+     * @return the compressed stream
+     */
+    public ByteBuffer compress(final ByteBuffer inBuffer, final int[] recordLengths) {
+        return ByteBuffer.wrap(encode(CompressionUtils.toByteArray(inBuffer), recordLengths));
+    }
+
+    /**
+     * Uncompress a stream produced by {@link #compress(ByteBuffer, int[])}, or by any other fqzcomp encoder.
+     *
+     * @param inBuffer compressed stream, which is consumed entirely
+     * @return the uncompressed quality values
+     */
+    public ByteBuffer uncompress(final ByteBuffer inBuffer) {
+        final ByteBuffer in = ByteBuffer.wrap(CompressionUtils.toByteArray(inBuffer));
+        try {
+            return ByteBuffer.wrap(decode(in));
+        } catch (final IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new CRAMException("Truncated or corrupt fqzcomp stream", e);
+        }
+    }
+
+    private static byte[] encode(final byte[] in, final int[] requestedLengths) {
+        final int[] recordLengths = requestedLengths != null ?
+                requestedLengths :
+                (in.length == 0 ? new int[0] : new int[] { in.length });
+        long total = 0;
+        boolean fixedLength = true;
+        boolean hasDuplicates = false;
+        for (int r = 0, start = 0; r < recordLengths.length; start += recordLengths[r++]) {
+            if (recordLengths[r] <= 0) {
+                throw new IllegalArgumentException("fqzcomp record lengths must be positive");
+            }
+            total += recordLengths[r];
+            if (total > in.length) {
+                break;
+            }
+            if (r > 0) {
+                fixedLength &= recordLengths[r] == recordLengths[0];
+                hasDuplicates |= isDuplicate(in, start, recordLengths[r], recordLengths[r - 1]);
+            }
+        }
+        if (total != in.length) {
+            throw new IllegalArgumentException(String.format(
+                    "fqzcomp record lengths add up to %d, but there are %d quality values", total, in.length));
+        }
+
+        final FQZParam param = createParam(in, recordLengths.length > 1, fixedLength, hasDuplicates);
+        final int[] symbolIndex = FQZParam.identity(FQZParam.QTAB_SIZE);
+        if ((param.pflags & FQZParam.PFLAG_HAVE_QMAP) != 0) {
+            for (int i = 0; i < param.maxSymbol; i++) {
+                symbolIndex[param.qmap[i]] = i;
+            }
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompressionUtils.writeUint7(out, in.length);
+        out.write(VERSION);
+        out.write(0);
+        param.write(out);
+
+        final Models models = new Models(param.maxSymbol + 1, 0);
+        final State state = new State();
+        final RangeCoder rangeCoder = new RangeCoder();
+        for (int r = 0, start = 0; r < recordLengths.length; start += recordLengths[r++]) {
+            final int length = recordLengths[r];
+            if (r == 0 || !param.isFixedLength()) {
+                for (int i = 0; i < 4; i++) {
+                    models.length[i].encodeSymbol(rangeCoder, (length >>> (8 * i)) & 0xFF);
+                }
+            }
+            if (param.isDedup()) {
+                final boolean duplicate = r > 0 && isDuplicate(in, start, length, recordLengths[r - 1]);
+                models.duplicate.encodeSymbol(rangeCoder, duplicate ? 1 : 0);
+                if (duplicate) {
+                    continue;
+                }
+            }
+            int context = state.startRecord(param, length, 0);
+            for (int i = start; i < start + length; i++) {
+                final int symbol = symbolIndex[in[i] & 0xFF];
+                models.getQualityModel(context).encodeSymbol(rangeCoder, symbol);
+                context = state.update(param, symbol);
+            }
+        }
+        final byte[] encoded = rangeCoder.finishEncode();
+        out.write(encoded, 0, encoded.length);
+        return out.toByteArray();
+    }
+
+    private static byte[] decode(final ByteBuffer in) {
+        final int outputSize = CompressionUtils.readUint7(in);
+        final int version = in.get() & 0xFF;
+        if (version != VERSION) {
+            throw new CRAMException(String.format("Unsupported fqzcomp version %d, expected %d", version, VERSION));
+        }
+        final int gflags = in.get() & 0xFF;
+        final int numParams = (gflags & GFLAG_MULTI_PARAM) != 0 ? in.get() & 0xFF : 1;
+        if (numParams == 0) {
+            throw new CRAMException("fqzcomp stream has no parameter blocks");
+        }
+        int maxSelector = numParams > 1 ? numParams : 0;
+        final int[] selectorTable;
+        if ((gflags & GFLAG_HAVE_STAB) != 0) {
+            maxSelector = in.get() & 0xFF;
+            selectorTable = FQZParam.readArray(in, NUMBER_OF_SELECTORS);
+        } else {
+            selectorTable = new int[NUMBER_OF_SELECTORS];
+            for (int i = 0; i < NUMBER_OF_SELECTORS; i++) {
+                selectorTable[i] = Math.min(i, numParams - 1);
+            }
+        }
+        final FQZParam[] params = new FQZParam[numParams];
+        int maxSymbol = 0;
+        for (int i = 0; i < numParams; i++) {
+            params[i] = FQZParam.read(in);
+            maxSymbol = Math.max(maxSymbol, params[i].maxSymbol);
+        }
+
+        final boolean doReverse = (gflags & GFLAG_DO_REV) != 0;
+        int[] reversedRecords = new int[16];
+        int numReversed = 0;
+
+        final Models models = new Models(maxSymbol + 1, maxSelector + 1);
+        final State state = new State();
+        final RangeCoder rangeCoder = new RangeCoder(in);
+        final byte[] out = new byte[outputSize];
+        FQZParam param = params[0];
+        int remaining = 0;
+        int lastLength = 0;
+        int context = 0;
+        for (int i = 0; i < outputSize; ) {
+            if (remaining == 0) {
+                final int selector = maxSelector > 0 ? models.selector.decodeSymbol(rangeCoder) : 0;
+                if (selectorTable[selector] >= numParams) {
+                    throw new CRAMException("Invalid fqzcomp parameter selector " + selector);
+                }
+                param = params[selectorTable[selector]];
+
+                int length = lastLength;
+                if (lastLength == 0 || !param.isFixedLength()) {
+                    length = 0;
+                    for (int b = 0; b < 4; b++) {
+                        length |= models.length[b].decodeSymbol(rangeCoder) << (8 * b);
+                    }
+                    lastLength = length;
+                }
+                if (length <= 0 || length > outputSize - i) {
+                    throw new CRAMException(String.format("Invalid fqzcomp record length %d", length & 0xFFFFFFFFL));
+                }
+                if (doReverse && models.reverse.decodeSymbol(rangeCoder) != 0) {
+                    if (numReversed + 2 > reversedRecords.length) {
+                        reversedRecords = Arrays.copyOf(reversedRecords, reversedRecords.length * 2);
+                    }
+                    reversedRecords[numReversed++] = i;
+                    reversedRecords[numReversed++] = length;
+                }
+                if (param.isDedup() && models.duplicate.decodeSymbol(rangeCoder) != 0) {
+                    if (length > i) {
+                        throw new CRAMException("fqzcomp duplicate record has no preceding record");
+                    }
+                    System.arraycopy(out, i - length, out, i, length);
+                    i += length;
+                    continue;
+                }
+                remaining = length;
+                context = state.startRecord(param, length, selector);
+            }
+            final int symbol = models.getQualityModel(context).decodeSymbol(rangeCoder);
+            out[i++] = (byte) param.qmap[symbol];
+            context = state.update(param, symbol);
+            remaining--;
+        }
+
+        for (int r = 0; r < numReversed; r += 2) {
+            reverse(out, reversedRecords[r], reversedRecords[r + 1]);
+        }
+        return out;
+    }
+
+    private static boolean isDuplicate(final byte[] in, final int start, final int length, final int previousLength) {
+        if (length != previousLength) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (in[start + i] != in[start - length + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void reverse(final byte[] data, final int start, final int length) {
+        for (int i = start, j = start + length - 1; i < j; i++, j--) {
+            final byte b = data[i];
+            data[i] = data[j];
+            data[j] = b;
+        }
+    }
+
+    /**
+     * Choose the parameters used to encode {@code in}: the distinct quality values are mapped to consecutive
+     * symbols, and the context holds as many previous symbols as fit alongside the position and delta buckets.
+     */
+    private static FQZParam createParam(final byte[] in,
+                                        final boolean usePositions,
+                                        final boolean fixedLength,
+                                        final boolean dedup) {
+        final boolean[] present = new boolean[256];
+        for (final byte b : in) {
+            present[b & 0xFF] = true;
+        }
+        final int[] qmap = FQZParam.identity(FQZParam.QTAB_SIZE);
+        int numSymbols = 0;
+        int maxValue = 0;
+        for (int i = 0; i < 256; i++) {
+            if (present[i]) {
+                qmap[numSymbols++] = i;
+                maxValue = i;
+            }
+        }
+        // the map is only worth storing if it shrinks the alphabet
+        final boolean useMap = numSymbols < maxValue + 1;
+        final int maxSymbol = useMap ? numSymbols : maxValue;
+        final int symbolBits = 32 - Integer.numberOfLeadingZeros(Math.max(0, (useMap ? numSymbols : maxValue + 1) - 1));
+
+        final int positionBits = usePositions ? POSITION_BITS : 0;
+        final int qbits = Math.min(
+                16 - positionBits - DELTA_BITS,
+                symbolBits * (symbolBits <= 3 ? 3 : 2));
+
+        final int[] ptab = new int[FQZParam.PTAB_SIZE];
+        if (usePositions) {
+            for (int p = 0; p < ptab.length; p++) {
+                ptab[p] = Math.min((1 << POSITION_BITS) - 1, p >> 4);
+            }
+        }
+        final int[] dtab = new int[FQZParam.DTAB_SIZE];
+        for (int d = 0; d < dtab.length; d++) {
+            // buckets 0, 1, 2, 3-4, 5-8, 9-16, 17-32, 33+
+            dtab[d] = d == 0 ? 0 : Math.min((1 << DELTA_BITS) - 1, 33 - Integer.numberOfLeadingZeros(d - 1));
+        }
+
+        final int pflags = (useMap ? FQZParam.PFLAG_HAVE_QMAP : 0) |
+                (usePositions ? FQZParam.PFLAG_HAVE_PTAB : 0) |
+                FQZParam.PFLAG_HAVE_DTAB |
+                (fixedLength ? FQZParam.PFLAG_FIXED_LEN : 0) |
+                (dedup ? FQZParam.PFLAG_DO_DEDUP : 0);
+        return new FQZParam(0, pflags, maxSymbol,
+                qbits, symbolBits,
+                0, 0,
+                qbits, qbits + positionBits,
+                qmap, FQZParam.identity(FQZParam.QTAB_SIZE), ptab, dtab);
+    }
+
+    // the per-record context state shared by the encoder and decoder
+    private static final class State {
+        private int qualityContext;
+        private int position;
+        private int delta;
+        private int previousSymbol;
+        private int selector;
+
+        /**
+         * @return the context for the first quality value of a record
+         */
+        int startRecord(final FQZParam param, final int length, final int selector) {
+            this.qualityContext = 0;
+            this.position = length;
+            this.delta = 0;
+            this.previousSymbol = 0;
+            this.selector = selector;
+            return param.context;
+        }
+
+        /**
+         * @return the context for the quality value that follows {@code symbol}
+         */
+        int update(final FQZParam param, final int symbol) {
+            int context = param.context;
+            qualityContext = (qualityContext << param.qshift) + param.qtab[symbol];
+            context += (qualityContext & ((1 << param.qbits) - 1)) << param.qloc;
+            context += param.ptab[Math.min(FQZParam.PTAB_SIZE - 1, position)] << param.ploc;
+            context += param.dtab[Math.min(FQZParam.DTAB_SIZE - 1, delta)] << param.dloc;
+            if (param.isSelector()) {
+                context += selector << param.sloc;
+            }
+            delta += previousSymbol != symbol ? 1 : 0;
+            previousSymbol = symbol;
+            position--;
+            return context & (NUMBER_OF_CONTEXTS - 1);
+        }
+    }
+
+    private static final class Models {
+        private final ByteModel[] quality = new ByteModel[NUMBER_OF_CONTEXTS];
+        private final int numSymbols;
+        private final ByteModel[] length = new ByteModel[4];
+        private final ByteModel reverse = new ByteModel(2);
+        private final ByteModel duplicate = new ByteModel(2);
+        private final ByteModel selector;
+
+        Models(final int numSymbols, final int numSelectors) {
+            this.numSymbols = numSymbols;
+            for (int i = 0; i < length.length; i++) {
+                length[i] = new ByteModel(256);
+            }
+            selector = numSelectors > 1 ? new ByteModel(numSelectors) : null;
+        }
+
+        // most of the 64k contexts are never used, so create their models on demand
+        ByteModel getQualityModel(final int context) {
+            ByteModel model = quality[context];
+            if (model == null) {
+                model = new ByteModel(numSymbols);
+                quality[context] = model;
+            }
+            return model;
+        }
+    }
+}
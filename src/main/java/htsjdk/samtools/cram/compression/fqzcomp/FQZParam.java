@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.cram.compression.fqzcomp;
+
+import htsjdk.samtools.cram.CRAMException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * One fqzcomp parameter block: the layout of the 16 bit model context, and the tables that map quality values,
+ * positions and deltas into it.
+ */
+final class FQZParam {
+    static final int PFLAG_DO_DEDUP = 0x02;
+    static final int PFLAG_FIXED_LEN = 0x04;
+    static final int PFLAG_DO_SEL = 0x08;
+    static final int PFLAG_HAVE_QMAP = 0x10;
+    static final int PFLAG_HAVE_PTAB = 0x20;
+    static final int PFLAG_HAVE_DTAB = 0x40;
+    static final int PFLAG_HAVE_QTAB = 0x80;
+
+    static final int QTAB_SIZE = 256;
+    static final int PTAB_SIZE = 1024;
+    static final int DTAB_SIZE = 256;
+
+    // the most runs a table can be stored as
+    private static final int MAX_RUNS = 1024;
+
+    final int context;
+    final int pflags;
+    final int maxSymbol;
+    final int qbits;
+    final int qshift;
+    final int qloc;
+    final int sloc;
+    final int ploc;
+    final int dloc;
+    final int[] qmap;
+    final int[] qtab;
+    final int[] ptab;
+    final int[] dtab;
+
+    FQZParam(final int context,
+             final int pflags,
+             final int maxSymbol,
+             final int qbits,
+             final int qshift,
+             final int qloc,
+             final int sloc,
+             final int ploc,
+             final int dloc,
+             final int[] qmap,
+             final int[] qtab,
+             final int[] ptab,
+             final int[] dtab) {
+        this.context = context;
+        this.pflags = pflags;
+        this.maxSymbol = maxSymbol;
+        this.qbits = qbits;
+        this.qshift = qshift;
+        this.qloc = qloc;
+        this.sloc = sloc;
+        this.ploc = ploc;
+        this.dloc = dloc;
+        this.qmap = qmap;
+        this.qtab = qtab;
+        this.ptab = ptab;
+        this.dtab = dtab;
+    }
+
+    boolean isDedup() {
+        return (pflags & PFLAG_DO_DEDUP) != 0;
+    }
+
+    boolean isFixedLength() {
+        return (pflags & PFLAG_FIXED_LEN) != 0;
+    }
+
+    boolean isSelector() {
+        return (pflags & PFLAG_DO_SEL) != 0;
+    }
+
+    static FQZParam read(final ByteBuffer in) {
+        final int context = (in.get() & 0xFF) | ((in.get() & 0xFF) << 8);
+        final int pflags = in.get() & 0xFF;
+        final int maxSymbol = in.get() & 0xFF;
+        final int qbitsAndShift = in.get() & 0xFF;
+        final int qlocAndSloc = in.get() & 0xFF;
+        final int plocAndDloc = in.get() & 0xFF;
+
+        final int[] qmap = identity(QTAB_SIZE);
+        if ((pflags & PFLAG_HAVE_QMAP) != 0) {
+            for (int i = 0; i < maxSymbol; i++) {
+                qmap[i] = in.get() & 0xFF;
+            }
+        }
+        final int qbits = qbitsAndShift >> 4;
+        int[] qtab = identity(QTAB_SIZE);
+        if (qbits > 0 && (pflags & PFLAG_HAVE_QTAB) != 0) {
+            qtab = readArray(in, QTAB_SIZE);
+        }
+        final int[] ptab = (pflags & PFLAG_HAVE_PTAB) != 0 ? readArray(in, PTAB_SIZE) : new int[PTAB_SIZE];
+        final int[] dtab = (pflags & PFLAG_HAVE_DTAB) != 0 ? readArray(in, DTAB_SIZE) : new int[DTAB_SIZE];
+
+        return new FQZParam(context, pflags, maxSymbol,
+                qbits, qbitsAndShift & 0x0F,
+                qlocAndSloc >> 4, qlocAndSloc & 0x0F,
+                plocAndDloc >> 4, plocAndDloc & 0x0F,
+                qmap, qtab, ptab, dtab);
+    }
+
+    void write(final ByteArrayOutputStream out) {
+        out.write(context & 0xFF);
+        out.write((context >> 8) & 0xFF);
+        out.write(pflags);
+        out.write(maxSymbol);
+        out.write((qbits << 4) | qshift);
+        out.write((qloc << 4) | sloc);
+        out.write((ploc << 4) | dloc);
+        if ((pflags & PFLAG_HAVE_QMAP) != 0) {
+            for (int i = 0; i < maxSymbol; i++) {
+                out.write(qmap[i]);
+            }
+        }
+        if (qbits > 0 && (pflags & PFLAG_HAVE_QTAB) != 0) {
+            writeArray(out, qtab);
+        }
+        if ((pflags & PFLAG_HAVE_PTAB) != 0) {
+            writeArray(out, ptab);
+        }
+        if ((pflags & PFLAG_HAVE_DTAB) != 0) {
+            writeArray(out, dtab);
+        }
+    }
+
+    /**
+     * Read a table of non-decreasing values starting at 0. The table is stored as the number of entries holding
+     * each successive value (with 255 meaning that the count continues in the next byte), and those counts are in
+     * turn run length encoded: a count that repeats the previous one is followed by the number of further repeats.
+     */
+    static int[] readArray(final ByteBuffer in, final int size) {
+        final int[] runs = new int[MAX_RUNS];
+        int numRuns = 0;
+        int total = 0;
+        int last = -1;
+        while (total < size) {
+            final int run = in.get() & 0xFF;
+            runs[numRuns++] = run;
+            total += run;
+            if (run == last) {
+                int copies = in.get() & 0xFF;
+                total += run * copies;
+                while (copies-- > 0 && total <= size && numRuns < MAX_RUNS) {
+                    runs[numRuns++] = run;
+                }
+            }
+            if (numRuns >= MAX_RUNS) {
+                throw new CRAMException("Too many runs in fqzcomp table");
+            }
+            last = run;
+        }
+
+        final int[] array = new int[size];
+        int r = 0;
+        for (int value = 0, i = 0; i < size; value++) {
+            int runLength = 0;
+            if (r >= numRuns) {
+                throw new CRAMException("Truncated fqzcomp table");
+            }
+            int part;
+            do {
+                part = runs[r++];
+                runLength += part;
+            } while (part == 255 && r < numRuns);
+            for (; runLength > 0 && i < size; runLength--) {
+                array[i++] = value;
+            }
+        }
+        return array;
+    }
+
+    /**
+     * Write a table of non-decreasing values starting at 0 in the format read by {@link #readArray(ByteBuffer, int)}.
+     */
+    static void writeArray(final ByteArrayOutputStream out, final int[] array) {
+        final ByteArrayOutputStream runs = new ByteArrayOutputStream();
+        for (int value = 0, i = 0; i < array.length; value++) {
+            if (array[i] < value) {
+                throw new IllegalArgumentException("fqzcomp tables must be non-decreasing");
+            }
+            int runLength = 0;
+            for (; i < array.length && array[i] == value; i++) {
+                runLength++;
+            }
+            // a count of 255 continues in the next byte, unless it completes the table
+            int part;
+            do {
+                part = Math.min(255, runLength);
+                runs.write(part);
+                runLength -= part;
+            } while (part == 255 && (runLength > 0 || i < array.length));
+        }
+
+        final byte[] counts = runs.toByteArray();
+        int last = -1;
+        for (int j = 0; j < counts.length; ) {
+            final int count = counts[j++] & 0xFF;
+            out.write(count);
+            if (count == last) {
+                final int start = j;
+                while (j < counts.length && (counts[j] & 0xFF) == last && j - start < 255) {
+                    j++;
+                }
+                out.write(j - start);
+            } else {
+                last = count;
+            }
+        }
+    }
+
+    static int[] identity(final int size) {
+        final int[] table = new int[size];
+        for (int i = 0; i < size; i++) {
+            table[i] = i;
+        }
+        return table;
+    }
+}
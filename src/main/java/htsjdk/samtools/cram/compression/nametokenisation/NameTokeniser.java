@@ -0,0 +1,581 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.cram.compression.nametokenisation;
+
+import htsjdk.samtools.cram.CRAMException;
+import htsjdk.samtools.cram.compression.CompressionUtils;
+import htsjdk.samtools.cram.compression.range.AdaptiveArithmetic;
+import htsjdk.samtools.cram.compression.rans.RANSNx16;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The CRAM 3.1 name tokeniser (block compression method 8). Each read name is split into tokens (runs of letters,
+ * runs of digits and single punctuation characters), and each token is stored relative to the token at the same
+ * position in an earlier name: as a match, as a small numeric delta, or as a literal value. Every combination of
+ * token position and token type has its own stream, compressed with rANS Nx16 or the adaptive arithmetic coder.
+ * <p>
+ * The uncompressed data is a sequence of names, each terminated by a NUL byte.
+ * <p>
+ * Like {@link RANSNx16}, instances reuse working memory across calls and are not thread-safe.
+ */
+public final class NameTokeniser {
+    /** The byte that terminates each name in the uncompressed data. */
+    public static final byte NAME_TERMINATOR = 0;
+
+    // token types; types 8 to 10 are reserved
+    private static final int TYPE = 0;
+    private static final int ALPHA = 1;
+    private static final int CHAR = 2;
+    private static final int DIGITS0 = 3;
+    private static final int DZLEN = 4;
+    private static final int DUP = 5;
+    private static final int DIFF = 6;
+    private static final int DIGITS = 7;
+    private static final int DELTA = 11;
+    private static final int DELTA0 = 12;
+    private static final int MATCH = 13;
+    private static final int NOP = 14;
+    private static final int END = 15;
+    private static final int NUMBER_OF_TYPES = 16;
+
+    private static final int MAX_TOKENS = 256;
+    // the most digits that always fit in the 32 bit value of a DIGITS token
+    private static final int MAX_DIGITS = 9;
+    private static final int MAX_DELTA = 255;
+
+    private static final int NEW_POSITION_FLAG = 0x80;
+    private static final int DUP_STREAM_FLAG = 0x40;
+    private static final int TYPE_MASK = 0x3F;
+
+    private static final int[] RANS_FLAGS = {
+            0,
+            RANSNx16.ORDER_FLAG,
+            RANSNx16.RLE_FLAG,
+            RANSNx16.ORDER_FLAG | RANSNx16.RLE_FLAG,
+            RANSNx16.PACK_FLAG,
+            RANSNx16.PACK_FLAG | RANSNx16.ORDER_FLAG,
+            RANSNx16.STRIPE_FLAG
+    };
+    private static final int[] ARITHMETIC_FLAGS = {
+            0,
+            AdaptiveArithmetic.ORDER_FLAG,
+            AdaptiveArithmetic.RLE_FLAG,
+            AdaptiveArithmetic.ORDER_FLAG | AdaptiveArithmetic.RLE_FLAG,
+            AdaptiveArithmetic.PACK_FLAG,
+            AdaptiveArithmetic.PACK_FLAG | AdaptiveArithmetic.ORDER_FLAG,
+            AdaptiveArithmetic.STRIPE_FLAG
+    };
+
+    private final RANSNx16 rans = new RANSNx16();
+    private final AdaptiveArithmetic arithmetic = new AdaptiveArithmetic();
+
+    /**
+     * Compress the remaining bytes of {@code inBuffer}, a sequence of names each terminated by
+     * {@link #NAME_TERMINATOR}.
+     *
+     * @param inBuffer names to compress
+     * @param useArithmetic true to compress the token streams with the adaptive arithmetic coder, false to use
+     *                      rANS Nx16
+     * @return the compressed stream
+     */
+    public ByteBuffer compress(final ByteBuffer inBuffer, final boolean useArithmetic) {
+        return ByteBuffer.wrap(encode(CompressionUtils.toByteArray(inBuffer), useArithmetic));
+    }
+
+    /**
+     * Uncompress a stream produced by {@link #compress(ByteBuffer, boolean)}, or by any other name tokeniser.
+     *
+     * @param inBuffer compressed stream, which is consumed entirely
+     * @return the names, each terminated by {@link #NAME_TERMINATOR}
+     */
+    public ByteBuffer uncompress(final ByteBuffer inBuffer) {
+        final ByteBuffer in = ByteBuffer.wrap(CompressionUtils.toByteArray(inBuffer)).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            return ByteBuffer.wrap(decode(in));
+        } catch (final IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new CRAMException("Truncated or corrupt name tokeniser stream", e);
+        }
+    }
+
+    private byte[] encode(final byte[] in, final boolean useArithmetic) {
+        if (in.length > 0 && in[in.length - 1] != NAME_TERMINATOR) {
+            throw new IllegalArgumentException("The name tokeniser input must be a sequence of NUL terminated names");
+        }
+        final ByteArrayOutputStream[][] streams = new ByteArrayOutputStream[MAX_TOKENS][NUMBER_OF_TYPES];
+        int numNames = 0;
+        int previousStart = -1;
+        int previousEnd = -1;
+        List<Token> previousTokens = null;
+        for (int start = 0; start < in.length; numNames++) {
+            int end = start;
+            while (in[end] != NAME_TERMINATOR) {
+                end++;
+            }
+            if (previousTokens != null && Arrays.equals(
+                    Arrays.copyOfRange(in, start, end), Arrays.copyOfRange(in, previousStart, previousEnd))) {
+                getStream(streams, 0, TYPE).write(DUP);
+                writeInt(getStream(streams, 0, DUP), 1);
+            } else {
+                getStream(streams, 0, TYPE).write(DIFF);
+                writeInt(getStream(streams, 0, DIFF), previousTokens == null ? 0 : 1);
+                final List<Token> tokens = tokenise(in, start, end);
+                for (int i = 0; i < tokens.size(); i++) {
+                    final Token previous = previousTokens != null && i < previousTokens.size() ? previousTokens.get(i) : null;
+                    encodeToken(streams, i + 1, tokens.get(i), previous);
+                }
+                getStream(streams, tokens.size() + 1, TYPE).write(END);
+                previousTokens = tokens;
+            }
+            previousStart = start;
+            previousEnd = end;
+            start = end + 1;
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteBuffer header = ByteBuffer.allocate(9).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(in.length).putInt(numNames).put((byte) (useArithmetic ? 1 : 0));
+        out.write(header.array(), 0, header.capacity());
+        for (int position = 0; position < MAX_TOKENS && streams[position][TYPE] != null; position++) {
+            for (int type = 0; type < NUMBER_OF_TYPES; type++) {
+                if (streams[position][type] == null) {
+                    continue;
+                }
+                // the type stream comes first, and marks the start of a new token position
+                out.write(type == TYPE ? type | NEW_POSITION_FLAG : type);
+                final byte[] compressed = compressStream(streams[position][type].toByteArray(), useArithmetic);
+                CompressionUtils.writeUint7(out, compressed.length);
+                out.write(compressed, 0, compressed.length);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void encodeToken(final ByteArrayOutputStream[][] streams,
+                                    final int position,
+                                    final Token token,
+                                    final Token previous) {
+        final ByteArrayOutputStream types = getStream(streams, position, TYPE);
+        if (previous != null && previous.type == token.type) {
+            if (token.matches(previous)) {
+                types.write(MATCH);
+                return;
+            }
+            final long delta = (long) token.value - previous.value;
+            final boolean isNumeric = token.type == DIGITS || (token.type == DIGITS0 && token.width == previous.width);
+            if (isNumeric && delta > 0 && delta <= MAX_DELTA) {
+                final int deltaType = token.type == DIGITS ? DELTA : DELTA0;
+                types.write(deltaType);
+                getStream(streams, position, deltaType).write((int) delta);
+                return;
+            }
+        }
+        types.write(token.type);
+        switch (token.type) {
+            case CHAR:
+                getStream(streams, position, CHAR).write(token.value);
+                break;
+            case ALPHA:
+                final ByteArrayOutputStream alpha = getStream(streams, position, ALPHA);
+                alpha.write(token.bytes, 0, token.bytes.length);
+                alpha.write(NAME_TERMINATOR);
+                break;
+            case DIGITS:
+                writeInt(getStream(streams, position, DIGITS), token.value);
+                break;
+            case DIGITS0:
+                getStream(streams, position, DZLEN).write(token.width);
+                writeInt(getStream(streams, position, DIGITS0), token.value);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected token type " + token.type);
+        }
+    }
+
+    /**
+     * Split a name into tokens. A name with too many tokens is stored as a single string.
+     */
+    private static List<Token> tokenise(final byte[] in, final int start, final int end) {
+        final List<Token> tokens = new ArrayList<>();
+        for (int i = start; i < end; ) {
+            int j = i + 1;
+            if (isDigit(in[i])) {
+                while (j < end && isDigit(in[j])) {
+                    j++;
+                }
+                if (j - i > MAX_DIGITS) {
+                    tokens.add(Token.alpha(Arrays.copyOfRange(in, i, j)));
+                } else {
+                    int value = 0;
+                    for (int k = i; k < j; k++) {
+                        value = value * 10 + in[k] - '0';
+                    }
+                    tokens.add(in[i] == '0' && j - i > 1 ? Token.digits0(value, j - i) : Token.digits(value));
+                }
+            } else if (isLetter(in[i])) {
+                while (j < end && isLetter(in[j])) {
+                    j++;
+                }
+                tokens.add(Token.alpha(Arrays.copyOfRange(in, i, j)));
+            } else {
+                tokens.add(Token.character(in[i]));
+            }
+            i = j;
+        }
+        // leave room for the END token
+        if (tokens.size() >= MAX_TOKENS - 1) {
+            tokens.clear();
+            tokens.add(Token.alpha(Arrays.copyOfRange(in, start, end)));
+        }
+        return tokens;
+    }
+
+    private byte[] compressStream(final byte[] data, final boolean useArithmetic) {
+        byte[] best = null;
+        for (final int flags : useArithmetic ? ARITHMETIC_FLAGS : RANS_FLAGS) {
+            final ByteBuffer compressed = useArithmetic ?
+                    arithmetic.compress(ByteBuffer.wrap(data), flags) :
+                    rans.compress(ByteBuffer.wrap(data), flags);
+            if (best == null || compressed.remaining() < best.length) {
+                best = CompressionUtils.toByteArray(compressed);
+            }
+        }
+        return best;
+    }
+
+    private byte[] decode(final ByteBuffer in) {
+        final int outputSize = in.getInt();
+        final int numNames = in.getInt();
+        final boolean useArithmetic = in.get() != 0;
+        // every name takes at least its terminator
+        if (outputSize < 0 || numNames < 0 || numNames > outputSize) {
+            throw new CRAMException(String.format(
+                    "Invalid name tokeniser header: %d names in %d bytes", numNames, outputSize));
+        }
+
+        final ByteBuffer[][] streams = new ByteBuffer[MAX_TOKENS][];
+        int position = -1;
+        while (in.hasRemaining()) {
+            final int flags = in.get() & 0xFF;
+            final int type = flags & TYPE_MASK;
+            if (type >= NUMBER_OF_TYPES) {
+                throw new CRAMException("Invalid name tokeniser token type " + type);
+            }
+            if ((flags & NEW_POSITION_FLAG) != 0) {
+                if (++position == MAX_TOKENS) {
+                    throw new CRAMException("Too many name tokeniser token positions");
+                }
+                streams[position] = new ByteBuffer[NUMBER_OF_TYPES];
+                if (type != TYPE) {
+                    // the type stream is omitted when every name has the same token type at this position
+                    final byte[] types = new byte[numNames];
+                    Arrays.fill(types, (byte) type);
+                    streams[position][TYPE] = ByteBuffer.wrap(types);
+                }
+            } else if (position < 0) {
+                throw new CRAMException("Name tokeniser stream does not start with a token position");
+            }
+
+            final ByteBuffer stream;
+            if ((flags & DUP_STREAM_FLAG) != 0) {
+                final int duplicatePosition = in.get() & 0xFF;
+                final int duplicateType = in.get() & 0xFF;
+                if (duplicatePosition > position || duplicateType >= NUMBER_OF_TYPES ||
+                        streams[duplicatePosition][duplicateType] == null) {
+                    throw new CRAMException(String.format(
+                            "Invalid name tokeniser duplicate stream %d/%d", duplicatePosition, duplicateType));
+                }
+                stream = streams[duplicatePosition][duplicateType].duplicate();
+            } else {
+                final ByteBuffer compressed = CompressionUtils.slice(in, CompressionUtils.readUint7(in));
+                stream = useArithmetic ? arithmetic.uncompress(compressed) : rans.uncompress(compressed);
+            }
+            streams[position][type] = stream.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        final byte[] out = new byte[outputSize];
+        final DecodedName[] names = new DecodedName[numNames];
+        int offset = 0;
+        for (int n = 0; n < numNames; n++) {
+            final int nameType = nextByte(streams, 0, TYPE);
+            if (nameType != DIFF && nameType != DUP) {
+                throw new CRAMException("Invalid name tokeniser name type " + nameType);
+            }
+            final int distance = nextInt(streams, 0, nameType);
+            if (distance < 0 || distance > n || (nameType == DUP && distance == 0)) {
+                throw new CRAMException("Invalid name tokeniser name distance " + distance);
+            }
+            final DecodedName previous = distance == 0 ? null : names[n - distance];
+            if (nameType == DUP) {
+                System.arraycopy(out, previous.start, out, offset, previous.length);
+                names[n] = previous.copyAt(offset);
+            } else {
+                names[n] = decodeName(streams, out, offset, previous);
+            }
+            offset += names[n].length;
+        }
+        if (offset != outputSize) {
+            throw new CRAMException(String.format(
+                    "Name tokeniser stream decoded to %d bytes, expected %d", offset, outputSize));
+        }
+        return out;
+    }
+
+    private static DecodedName decodeName(final ByteBuffer[][] streams,
+                                          final byte[] out,
+                                          final int start,
+                                          final DecodedName previous) {
+        final DecodedName name = new DecodedName(start);
+        int offset = start;
+        for (int position = 1; ; position++) {
+            if (position == MAX_TOKENS) {
+                throw new CRAMException("Name tokeniser name has too many tokens");
+            }
+            final int type = nextByte(streams, position, TYPE);
+            switch (type) {
+                case CHAR: {
+                    final int c = nextByte(streams, position, CHAR);
+                    out[offset++] = (byte) c;
+                    name.add(CHAR, c, 0, 0);
+                    break;
+                }
+                case ALPHA: {
+                    final int alphaStart = offset;
+                    for (int c = nextByte(streams, position, ALPHA); c != NAME_TERMINATOR; c = nextByte(streams, position, ALPHA)) {
+                        out[offset++] = (byte) c;
+                    }
+                    name.add(ALPHA, 0, alphaStart, offset - alphaStart);
+                    break;
+                }
+                case DIGITS0: {
+                    final int width = nextByte(streams, position, DZLEN);
+                    final int value = nextInt(streams, position, DIGITS0);
+                    offset = writeDigits(out, offset, value, width);
+                    name.add(DIGITS0, value, 0, width);
+                    break;
+                }
+                case DELTA0: {
+                    checkPrevious(previous, position, DIGITS0);
+                    final int value = previous.values[position] + nextByte(streams, position, DELTA0);
+                    final int width = previous.lengths[position];
+                    offset = writeDigits(out, offset, value, width);
+                    name.add(DIGITS0, value, 0, width);
+                    break;
+                }
+                case DIGITS: {
+                    final int value = nextInt(streams, position, DIGITS);
+                    offset = writeDigits(out, offset, value, 0);
+                    name.add(DIGITS, value, 0, 0);
+                    break;
+                }
+                case DELTA: {
+                    checkPrevious(previous, position, DIGITS);
+                    final int value = previous.values[position] + nextByte(streams, position, DELTA);
+                    offset = writeDigits(out, offset, value, 0);
+                    name.add(DIGITS, value, 0, 0);
+                    break;
+                }
+                case MATCH: {
+                    checkPrevious(previous, position, -1);
+                    final int previousType = previous.types[position];
+                    final int value = previous.values[position];
+                    final int length = previous.lengths[position];
+                    switch (previousType) {
+                        case CHAR:
+                            out[offset++] = (byte) value;
+                            name.add(CHAR, value, 0, 0);
+                            break;
+                        case ALPHA:
+                            System.arraycopy(out, previous.starts[position], out, offset, length);
+                            name.add(ALPHA, 0, offset, length);
+                            offset += length;
+                            break;
+                        case DIGITS:
+                        case DIGITS0:
+                            offset = writeDigits(out, offset, value, length);
+                            name.add(previousType, value, 0, length);
+                            break;
+                        default:
+                            throw new CRAMException("Name tokeniser match against a token of type " + previousType);
+                    }
+                    break;
+                }
+                case NOP:
+                    name.add(NOP, 0, 0, 0);
+                    break;
+                case END:
+                    out[offset++] = NAME_TERMINATOR;
+                    name.add(END, 0, 0, 0);
+                    name.length = offset - start;
+                    return name;
+                default:
+                    throw new CRAMException("Invalid name tokeniser token type " + type);
+            }
+        }
+    }
+
+    private static void checkPrevious(final DecodedName previous, final int position, final int type) {
+        if (previous == null || position >= previous.numTokens || (type >= 0 && previous.types[position] != type)) {
+            throw new CRAMException("Name tokeniser token refers to a missing token in a previous name");
+        }
+    }
+
+    /**
+     * Write the unsigned decimal representation of {@code value}, zero padded to {@code width} digits.
+     */
+    private static int writeDigits(final byte[] out, final int offset, final int value, final int width) {
+        final String digits = Integer.toUnsignedString(value);
+        int o = offset;
+        for (int i = digits.length(); i < width; i++) {
+            out[o++] = '0';
+        }
+        for (int i = 0; i < digits.length(); i++) {
+            out[o++] = (byte) digits.charAt(i);
+        }
+        return o;
+    }
+
+    private static int nextByte(final ByteBuffer[][] streams, final int position, final int type) {
+        return getStream(streams, position, type).get() & 0xFF;
+    }
+
+    private static int nextInt(final ByteBuffer[][] streams, final int position, final int type) {
+        return getStream(streams, position, type).getInt();
+    }
+
+    private static ByteBuffer getStream(final ByteBuffer[][] streams, final int position, final int type) {
+        final ByteBuffer stream = streams[position] == null ? null : streams[position][type];
+        if (stream == null || !stream.hasRemaining()) {
+            throw new CRAMException(String.format("Name tokeniser stream %d/%d is missing or exhausted", position, type));
+        }
+        return stream;
+    }
+
+    private static ByteArrayOutputStream getStream(final ByteArrayOutputStream[][] streams, final int position, final int type) {
+        if (streams[position][type] == null) {
+            streams[position][type] = new ByteArrayOutputStream();
+        }
+        return streams[position][type];
+    }
+
+    private static void writeInt(final ByteArrayOutputStream out, final int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    private static boolean isDigit(final byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isLetter(final byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    // a token of a name being encoded
+    private static final class Token {
+        private final int type;
+        private final int value;
+        private final int width;
+        private final byte[] bytes;
+
+        private Token(final int type, final int value, final int width, final byte[] bytes) {
+            this.type = type;
+            this.value = value;
+            this.width = width;
+            this.bytes = bytes;
+        }
+
+        static Token alpha(final byte[] bytes) {
+            return new Token(ALPHA, 0, 0, bytes);
+        }
+
+        static Token character(final byte c) {
+            return new Token(CHAR, c & 0xFF, 0, null);
+        }
+
+        static Token digits(final int value) {
+            return new Token(DIGITS, value, 0, null);
+        }
+
+        static Token digits0(final int value, final int width) {
+            return new Token(DIGITS0, value, width, null);
+        }
+
+        boolean matches(final Token other) {
+            return type == other.type && value == other.value && width == other.width && Arrays.equals(bytes, other.bytes);
+        }
+    }
+
+    // the tokens of a decoded name, which later names can refer to
+    private static final class DecodedName {
+        private final int start;
+        private int length;
+        private int numTokens = 1;
+        private int[] types = new int[8];
+        private int[] values = new int[8];
+        // the offset of ALPHA tokens in the output
+        private int[] starts = new int[8];
+        // the length of ALPHA tokens, and the width of DIGITS0 tokens
+        private int[] lengths = new int[8];
+
+        DecodedName(final int start) {
+            this.start = start;
+        }
+
+        void add(final int type, final int value, final int start, final int length) {
+            if (numTokens == types.length) {
+                types = Arrays.copyOf(types, numTokens * 2);
+                values = Arrays.copyOf(values, numTokens * 2);
+                starts = Arrays.copyOf(starts, numTokens * 2);
+                lengths = Arrays.copyOf(lengths, numTokens * 2);
+            }
+            types[numTokens] = type;
+            values[numTokens] = value;
+            starts[numTokens] = start;
+            lengths[numTokens] = length;
+            numTokens++;
+        }
+
+        // a duplicate name shares the tokens of the name it copies
+        DecodedName copyAt(final int start) {
+            final DecodedName copy = new DecodedName(start);
+            copy.length = length;
+            copy.numTokens = numTokens;
+            copy.types = types;
+            copy.values = values;
+            copy.starts = starts;
+            copy.lengths = lengths;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.cram.compression.range;
+
+import htsjdk.samtools.cram.CRAMException;
+import htsjdk.samtools.cram.compression.BZIP2ExternalCompressor;
+import htsjdk.samtools.cram.compression.CompressionUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * The CRAM 3.1 adaptive arithmetic codec (block compression method 6): order-0 and order-1 adaptive models driving
+ * a range coder, optionally with run length modelling, and the STRIPE and PACK transforms shared with rANS Nx16.
+ * <p>
+ * A compressed stream starts with a flags byte that describes how the data was encoded. The flags passed to
+ * {@link #compress(ByteBuffer, int)} select the transforms to try; transforms that do not apply to the data are
+ * dropped, and data that does not compress is stored uncompressed (CAT).
+ */
+public final class AdaptiveArithmetic {
+    /** Use an order-1 (rather than order-0) model. */
+    public static final int ORDER_FLAG = 0x01;
+    /** Compress the data with bzip2 rather than the range coder. */
+    public static final int EXT_FLAG = 0x04;
+    /** Split the data into 4 interleaved streams, each of which is compressed separately. */
+    public static final int STRIPE_FLAG = 0x08;
+    /** The uncompressed size is not stored, because the container already records it. */
+    public static final int NOSZ_FLAG = 0x10;
+    /** The data is stored uncompressed. */
+    public static final int CAT_FLAG = 0x20;
+    /** Model run lengths alongside the symbols. */
+    public static final int RLE_FLAG = 0x40;
+    /** Pack data with at most 16 distinct symbols into 1, 2 or 4 bits per symbol. */
+    public static final int PACK_FLAG = 0x80;
+
+    private static final int NUMBER_OF_STRIPES = 4;
+    private static final int NUMBER_OF_SYMBOLS = 256;
+    // run length contexts: the literal symbol for the first part of a run, then 256 and 257 for the remainder
+    private static final int NUMBER_OF_RUN_CONTEXTS = NUMBER_OF_SYMBOLS + 2;
+
+    /**
+     * Compress the remaining bytes of {@code inBuffer}.
+     *
+     * @param inBuffer data to compress
+     * @param flags combination of the *_FLAG values selecting the transforms to use
+     * @return the compressed stream
+     */
+    public ByteBuffer compress(final ByteBuffer inBuffer, final int flags) {
+        return ByteBuffer.wrap(compress(CompressionUtils.toByteArray(inBuffer), flags));
+    }
+
+    /**
+     * Uncompress a stream produced by {@link #compress(ByteBuffer, int)}, or by any other adaptive arithmetic
+     * encoder.
+     *
+     * @param inBuffer compressed stream, which is consumed entirely
+     * @return the uncompressed data
+     */
+    public ByteBuffer uncompress(final ByteBuffer inBuffer) {
+        final ByteBuffer in = ByteBuffer.wrap(CompressionUtils.toByteArray(inBuffer));
+        return ByteBuffer.wrap(uncompress(in, -1));
+    }
+
+    private byte[] compress(final byte[] in, final int requestedFlags) {
+        if ((requestedFlags & STRIPE_FLAG) != 0) {
+            return compressStripe(in, requestedFlags & ~STRIPE_FLAG);
+        }
+        int flags = requestedFlags & (ORDER_FLAG | EXT_FLAG | NOSZ_FLAG | CAT_FLAG | RLE_FLAG | PACK_FLAG);
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        if ((flags & NOSZ_FLAG) == 0) {
+            CompressionUtils.writeUint7(header, in.length);
+        }
+
+        byte[] data = in;
+        if ((flags & PACK_FLAG) != 0) {
+            final byte[] alphabet = CompressionUtils.getPackAlphabet(data);
+            if (alphabet != null && alphabet.length > 0) {
+                header.write(alphabet.length);
+                header.write(alphabet, 0, alphabet.length);
+                data = CompressionUtils.encodePack(data, alphabet);
+                CompressionUtils.writeUint7(header, data.length);
+            } else {
+                flags &= ~PACK_FLAG;
+            }
+        }
+
+        byte[] body = null;
+        if ((flags & CAT_FLAG) == 0 && data.length > 0) {
+            if ((flags & EXT_FLAG) != 0) {
+                flags &= ~(ORDER_FLAG | RLE_FLAG);
+                body = new BZIP2ExternalCompressor().compress(data);
+            } else {
+                body = encode(data, (flags & ORDER_FLAG) != 0, (flags & RLE_FLAG) != 0);
+            }
+        }
+        if (body == null || body.length >= data.length) {
+            flags = (flags | CAT_FLAG) & ~(ORDER_FLAG | EXT_FLAG | RLE_FLAG);
+            body = data;
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(1 + header.size() + body.length);
+        out.write(flags);
+        out.write(header.toByteArray(), 0, header.size());
+        out.write(body, 0, body.length);
+        return out.toByteArray();
+    }
+
+    private byte[] uncompress(final ByteBuffer in, final int knownSize) {
+        try {
+            final int flags = in.get() & 0xFF;
+            final int size;
+            if ((flags & NOSZ_FLAG) != 0) {
+                if (knownSize < 0) {
+                    throw new CRAMException("Arithmetic coder stream does not specify its uncompressed size");
+                }
+                size = knownSize;
+            } else {
+                size = CompressionUtils.readUint7(in);
+            }
+            if ((flags & STRIPE_FLAG) != 0) {
+                return uncompressStripe(in, size);
+            }
+
+            byte[] alphabet = null;
+            int dataSize = size;
+            if ((flags & PACK_FLAG) != 0) {
+                alphabet = CompressionUtils.readBytes(in, in.get() & 0xFF);
+                dataSize = CompressionUtils.readUint7(in);
+            }
+
+            byte[] data;
+            if ((flags & CAT_FLAG) != 0) {
+                data = CompressionUtils.readBytes(in, dataSize);
+            } else if (dataSize == 0) {
+                data = new byte[0];
+            } else if ((flags & EXT_FLAG) != 0) {
+                data = new BZIP2ExternalCompressor().uncompress(CompressionUtils.toByteArray(in));
+                if (data.length != dataSize) {
+                    throw new CRAMException(String.format(
+                            "bzip2 data in arithmetic coder stream has size %d, expected %d", data.length, dataSize));
+                }
+            } else {
+                data = decode(in, dataSize, (flags & 3) == ORDER_FLAG, (flags & RLE_FLAG) != 0);
+            }
+
+            if (alphabet != null) {
+                data = CompressionUtils.decodePack(data, alphabet, size);
+            }
+            return data;
+        } catch (final IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new CRAMException("Truncated or corrupt arithmetic coder stream", e);
+        }
+    }
+
+    private byte[] compressStripe(final byte[] in, final int flags) {
+        final byte[][] stripes = CompressionUtils.encodeStripe(in, NUMBER_OF_STRIPES);
+        final byte[][] compressedStripes = new byte[NUMBER_OF_STRIPES][];
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(STRIPE_FLAG);
+        CompressionUtils.writeUint7(out, in.length);
+        out.write(NUMBER_OF_STRIPES);
+        for (int i = 0; i < NUMBER_OF_STRIPES; i++) {
+            // the stripe sizes are implied by the total size
+            compressedStripes[i] = compress(stripes[i], flags | NOSZ_FLAG);
+            CompressionUtils.writeUint7(out, compressedStripes[i].length);
+        }
+        for (final byte[] compressedStripe : compressedStripes) {
+            out.write(compressedStripe, 0, compressedStripe.length);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] uncompressStripe(final ByteBuffer in, final int size) {
+        final int numStripes = in.get() & 0xFF;
+        if (numStripes == 0) {
+            throw new CRAMException("Invalid number of arithmetic coder stripes: 0");
+        }
+        final int[] compressedSizes = new int[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            compressedSizes[i] = CompressionUtils.readUint7(in);
+        }
+        final byte[][] stripes = new byte[numStripes][];
+        for (int i = 0; i < numStripes; i++) {
+            stripes[i] = uncompress(CompressionUtils.slice(in, compressedSizes[i]), CompressionUtils.getStripeLength(size, numStripes, i));
+        }
+        return CompressionUtils.decodeStripe(stripes, size);
+    }
+
+    /**
+     * Range code {@code data}. The output starts with the size of the model alphabet (the largest symbol plus one,
+     * with 0 meaning 256), followed by the range coder output.
+     */
+    private static byte[] encode(final byte[] data, final boolean order1, final boolean rle) {
+        int maxSymbol = 0;
+        for (final byte b : data) {
+            maxSymbol = Math.max(maxSymbol, b & 0xFF);
+        }
+        final int numSymbols = maxSymbol + 1;
+        final ByteModel[] models = createModels(order1 ? numSymbols : 1, numSymbols);
+        final ByteModel[] runModels = rle ? createModels(NUMBER_OF_RUN_CONTEXTS, 4) : null;
+
+        final RangeCoder rangeCoder = new RangeCoder();
+        int last = 0;
+        for (int i = 0; i < data.length; i++) {
+            final int symbol = data[i] & 0xFF;
+            models[order1 ? last : 0].encodeSymbol(rangeCoder, symbol);
+            last = symbol;
+            if (rle) {
+                int run = 0;
+                while (i + 1 < data.length && data[i + 1] == data[i]) {
+                    run++;
+                    i++;
+                }
+                // the run is coded in parts of 0 to 3, where a part of 3 means that more follow
+                int context = symbol;
+                int part;
+                do {
+                    part = Math.min(run, 3);
+                    runModels[context].encodeSymbol(rangeCoder, part);
+                    run -= part;
+                    context = nextRunContext(context, symbol);
+                } while (part == 3);
+            }
+        }
+        final byte[] encoded = rangeCoder.finishEncode();
+        final byte[] out = new byte[encoded.length + 1];
+        out[0] = (byte) numSymbols;
+        System.arraycopy(encoded, 0, out, 1, encoded.length);
+        return out;
+    }
+
+    private static byte[] decode(final ByteBuffer in, final int size, final boolean order1, final boolean rle) {
+        int numSymbols = in.get() & 0xFF;
+        if (numSymbols == 0) {
+            numSymbols = NUMBER_OF_SYMBOLS;
+        }
+        final ByteModel[] models = createModels(order1 ? numSymbols : 1, numSymbols);
+        final ByteModel[] runModels = rle ? createModels(NUMBER_OF_RUN_CONTEXTS, 4) : null;
+
+        final RangeCoder rangeCoder = new RangeCoder(in);
+        final byte[] out = new byte[size];
+        int last = 0;
+        for (int i = 0; i < size; ) {
+            final int symbol = models[order1 ? last : 0].decodeSymbol(rangeCoder);
+            last = symbol;
+            out[i++] = (byte) symbol;
+            if (rle) {
+                int run = 0;
+                int context = symbol;
+                int part;
+                do {
+                    part = runModels[context].decodeSymbol(rangeCoder);
+                    run += part;
+                    context = nextRunContext(context, symbol);
+                } while (part == 3);
+                if (i + run > size) {
+                    throw new CRAMException("Arithmetic coder run length exceeds the uncompressed size");
+                }
+                for (; run > 0; run--) {
+                    out[i++] = (byte) symbol;
+                }
+            }
+        }
+        return out;
+    }
+
+    private static int nextRunContext(final int context, final int symbol) {
+        if (context == symbol) {
+            return NUMBER_OF_SYMBOLS;
+        }
+        return context < NUMBER_OF_SYMBOLS + 1 ? context + 1 : context;
+    }
+
+    private static ByteModel[] createModels(final int numModels, final int numSymbols) {
+        final ByteModel[] models = new ByteModel[numModels];
+        for (int i = 0; i < numModels; i++) {
+            models[i] = new ByteModel(numSymbols);
+        }
+        return models;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.cram.compression.range;
+
+import htsjdk.samtools.cram.CRAMException;
+
+/**
+ * An adaptive frequency model for an alphabet of up to 256 symbols, used with a {@link RangeCoder}. Symbols are
+ * kept approximately sorted by descending frequency, so that frequent symbols are found quickly.
+ */
+public final class ByteModel {
+    private static final int MAX_FREQUENCY = (1 << 16) - 17;
+    private static final int STEP = 16;
+
+    private final int[] frequencies;
+    private final int[] symbols;
+    private int totalFrequency;
+
+    /**
+     * @param numSymbols the size of the alphabet, at most 256
+     */
+    public ByteModel(final int numSymbols) {
+        frequencies = new int[numSymbols];
+        symbols = new int[numSymbols];
+        for (int i = 0; i < numSymbols; i++) {
+            frequencies[i] = 1;
+            symbols[i] = i;
+        }
+        totalFrequency = numSymbols;
+    }
+
+    public void encodeSymbol(final RangeCoder rangeCoder, final int symbol) {
+        int cumulativeFrequency = 0;
+        int x = 0;
+        while (symbols[x] != symbol) {
+            cumulativeFrequency += frequencies[x];
+            if (++x == symbols.length) {
+                throw new CRAMException(String.format("Symbol %d is outside of the model alphabet", symbol));
+            }
+        }
+        rangeCoder.encode(cumulativeFrequency, frequencies[x], totalFrequency);
+        update(x);
+    }
+
+    public int decodeSymbol(final RangeCoder rangeCoder) {
+        final int target = rangeCoder.getFrequency(totalFrequency);
+        int cumulativeFrequency = 0;
+        int x = 0;
+        while (cumulativeFrequency + frequencies[x] <= target) {
+            cumulativeFrequency += frequencies[x];
+            x++;
+        }
+        rangeCoder.decode(cumulativeFrequency, frequencies[x]);
+        final int symbol = symbols[x];
+        update(x);
+        return symbol;
+    }
+
+    private void update(final int x) {
+        frequencies[x] += STEP;
+        totalFrequency += STEP;
+        if (totalFrequency > MAX_FREQUENCY) {
+            totalFrequency = 0;
+            for (int i = 0; i < frequencies.length; i++) {
+                frequencies[i] -= frequencies[i] >> 1;
+                totalFrequency += frequencies[i];
+            }
+        }
+        if (x > 0 && frequencies[x] > frequencies[x - 1]) {
+            final int frequency = frequencies[x];
+            frequencies[x] = frequencies[x - 1];
+            frequencies[x - 1] = frequency;
+            final int symbol = symbols[x];
+            symbols[x] = symbols[x - 1];
+            symbols[x - 1] = symbol;
+        }
+    }
+}
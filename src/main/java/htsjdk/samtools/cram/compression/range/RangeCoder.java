@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.cram.compression.range;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The carry-less range coder used by the CRAM 3.1 adaptive arithmetic and fqzcomp codecs. Frequencies are supplied
+ * by the caller, normally from a {@link ByteModel}. An instance is used either for encoding or for decoding, not both.
+ */
+public final class RangeCoder {
+    private static final long MASK_32 = 0xFFFFFFFFL;
+    private static final long TOP = 1L << 24;
+
+    private long low;
+    private long range = MASK_32;
+    private long code;
+
+    // encoder state for propagating carries into bytes that have already been produced
+    private int carry;
+    private int cache;
+    private int ffNum;
+    private final ByteArrayOutputStream outputStream;
+
+    private final ByteBuffer inputBuffer;
+
+    /**
+     * Create a range coder that encodes symbols; the encoded bytes are returned by {@link #finishEncode()}.
+     */
+    public RangeCoder() {
+        this.outputStream = new ByteArrayOutputStream();
+        this.inputBuffer = null;
+    }
+
+    /**
+     * Create a range coder that decodes symbols from the remaining bytes of {@code inputBuffer}.
+     */
+    public RangeCoder(final ByteBuffer inputBuffer) {
+        this.outputStream = null;
+        this.inputBuffer = inputBuffer;
+        for (int i = 0; i < 5; i++) {
+            code = ((code << 8) | nextByte()) & MASK_32;
+        }
+    }
+
+    public void encode(final int cumulativeFrequency, final int frequency, final int totalFrequency) {
+        range /= totalFrequency;
+        low += cumulativeFrequency * range;
+        if (low > MASK_32) {
+            low &= MASK_32;
+            carry++;
+        }
+        range *= frequency;
+        while (range < TOP) {
+            range <<= 8;
+            shiftLow();
+        }
+    }
+
+    /**
+     * @return the encoded bytes
+     */
+    public byte[] finishEncode() {
+        for (int i = 0; i < 5; i++) {
+            shiftLow();
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * @return the cumulative frequency of the next symbol, which must then be consumed with
+     * {@link #decode(int, int)}
+     */
+    public int getFrequency(final int totalFrequency) {
+        range /= totalFrequency;
+        final long frequency = code / range;
+        // only corrupt input can produce a value out of range
+        return (int) Math.min(frequency, totalFrequency - 1);
+    }
+
+    public void decode(final int cumulativeFrequency, final int frequency) {
+        code -= cumulativeFrequency * range;
+        range *= frequency;
+        while (range < TOP) {
+            code = ((code << 8) | nextByte()) & MASK_32;
+            range <<= 8;
+        }
+    }
+
+    private void shiftLow() {
+        if (low < 0xFF000000L || carry != 0) {
+            outputStream.write(cache + carry);
+            for (; ffNum > 0; ffNum--) {
+                outputStream.write(carry - 1);
+            }
+            cache = (int) (low >>> 24);
+            carry = 0;
+        } else {
+            ffNum++;
+        }
+        low = (low << 8) & MASK_32;
+    }
+
+    private int nextByte() {
+        // the encoder flushes enough bytes for decoding; reading past the end only happens on corrupt input
+        return inputBuffer.hasRemaining() ? inputBuffer.get() & 0xFF : 0;
+    }
+}
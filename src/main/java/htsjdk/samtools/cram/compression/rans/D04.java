@@ -3,78 +3,76 @@ package htsjdk.samtools.cram.compression.rans;
 import java.nio.ByteBuffer;
 
 final class D04 {
+    private static final int MASK = (1 << Constants.TF_SHIFT) - 1;
+
+    // Decodes directly from/into the buffers' backing arrays, with the symbol step and
+    // re-normalization of the 4 interleaved states inlined.
     static void uncompress(
             final ByteBuffer inBuffer,
             final ArithmeticDecoder D,
             final RANSDecodingSymbol[] syms,
             final ByteBuffer outBuffer) {
-        int rans0, rans1, rans2, rans3;
-        rans0 = inBuffer.getInt();
-        rans1 = inBuffer.getInt();
-        rans2 = inBuffer.getInt();
-        rans3 = inBuffer.getInt();
+        final byte[] in = inBuffer.array();
+        int inPos = inBuffer.arrayOffset() + inBuffer.position();
+        final byte[] out = outBuffer.array();
+        final int outOffset = outBuffer.arrayOffset();
+        final byte[] R = D.R;
+
+        int rans0 = Utils.readIntLE(in, inPos);
+        int rans1 = Utils.readIntLE(in, inPos + 4);
+        int rans2 = Utils.readIntLE(in, inPos + 8);
+        int rans3 = Utils.readIntLE(in, inPos + 12);
+        inPos += 16;
 
         final int out_sz = outBuffer.remaining();
         final int out_end = (out_sz & ~3);
         for (int i = 0; i < out_end; i += 4) {
-            final byte c0 = D.R[Utils.RANSDecodeGet(rans0, Constants.TF_SHIFT)];
-            final byte c1 = D.R[Utils.RANSDecodeGet(rans1, Constants.TF_SHIFT)];
-            final byte c2 = D.R[Utils.RANSDecodeGet(rans2, Constants.TF_SHIFT)];
-            final byte c3 = D.R[Utils.RANSDecodeGet(rans3, Constants.TF_SHIFT)];
+            final int c0 = 0xFF & R[rans0 & MASK];
+            final int c1 = 0xFF & R[rans1 & MASK];
+            final int c2 = 0xFF & R[rans2 & MASK];
+            final int c3 = 0xFF & R[rans3 & MASK];
 
-            outBuffer.put(i, c0);
-            outBuffer.put(i + 1, c1);
-            outBuffer.put(i + 2, c2);
-            outBuffer.put(i + 3, c3);
+            out[outOffset + i] = (byte) c0;
+            out[outOffset + i + 1] = (byte) c1;
+            out[outOffset + i + 2] = (byte) c2;
+            out[outOffset + i + 3] = (byte) c3;
 
-            rans0 = syms[0xFF & c0].advanceSymbolStep(rans0, Constants.TF_SHIFT);
-            rans1 = syms[0xFF & c1].advanceSymbolStep(rans1, Constants.TF_SHIFT);
-            rans2 = syms[0xFF & c2].advanceSymbolStep(rans2, Constants.TF_SHIFT);
-            rans3 = syms[0xFF & c3].advanceSymbolStep(rans3,  Constants.TF_SHIFT);
+            final RANSDecodingSymbol s0 = syms[c0];
+            final RANSDecodingSymbol s1 = syms[c1];
+            final RANSDecodingSymbol s2 = syms[c2];
+            final RANSDecodingSymbol s3 = syms[c3];
+            rans0 = s0.freq * (rans0 >> Constants.TF_SHIFT) + (rans0 & MASK) - s0.start;
+            rans1 = s1.freq * (rans1 >> Constants.TF_SHIFT) + (rans1 & MASK) - s1.start;
+            rans2 = s2.freq * (rans2 >> Constants.TF_SHIFT) + (rans2 & MASK) - s2.start;
+            rans3 = s3.freq * (rans3 >> Constants.TF_SHIFT) + (rans3 & MASK) - s3.start;
 
-            rans0 = Utils.RANSDecodeRenormalize(rans0, inBuffer);
-            rans1 = Utils.RANSDecodeRenormalize(rans1, inBuffer);
-            rans2 = Utils.RANSDecodeRenormalize(rans2, inBuffer);
-            rans3 = Utils.RANSDecodeRenormalize(rans3, inBuffer);
+            while (rans0 < Constants.RANS_BYTE_L) {
+                rans0 = (rans0 << 8) | (0xFF & in[inPos++]);
+            }
+            while (rans1 < Constants.RANS_BYTE_L) {
+                rans1 = (rans1 << 8) | (0xFF & in[inPos++]);
+            }
+            while (rans2 < Constants.RANS_BYTE_L) {
+                rans2 = (rans2 << 8) | (0xFF & in[inPos++]);
+            }
+            while (rans3 < Constants.RANS_BYTE_L) {
+                rans3 = (rans3 << 8) | (0xFF & in[inPos++]);
+            }
         }
 
-        outBuffer.position(out_end);
-        byte c;
-        switch (out_sz & 3) {
-            case 0:
-                break;
-
-            case 1:
-                c = D.R[Utils.RANSDecodeGet(rans0, Constants.TF_SHIFT)];
-                syms[0xFF & c].advanceSymbol(rans0, inBuffer, Constants.TF_SHIFT);
-                outBuffer.put(c);
-                break;
-
-            case 2:
-                c = D.R[Utils.RANSDecodeGet(rans0, Constants.TF_SHIFT)];
-                syms[0xFF & c].advanceSymbol(rans0, inBuffer, Constants.TF_SHIFT);
-                outBuffer.put(c);
-
-                c = D.R[Utils.RANSDecodeGet(rans1, Constants.TF_SHIFT)];
-                syms[0xFF & c].advanceSymbol(rans1, inBuffer, Constants.TF_SHIFT);
-                outBuffer.put(c);
-                break;
-
-            case 3:
-                c = D.R[Utils.RANSDecodeGet(rans0, Constants.TF_SHIFT)];
-                syms[0xFF & c].advanceSymbol(rans0, inBuffer,  Constants.TF_SHIFT);
-                outBuffer.put(c);
-
-                c = D.R[Utils.RANSDecodeGet(rans1, Constants.TF_SHIFT)];
-                syms[0xFF & c].advanceSymbol(rans1, inBuffer, Constants.TF_SHIFT);
-                outBuffer.put(c);
-
-                c = D.R[Utils.RANSDecodeGet(rans2, Constants.TF_SHIFT)];
-                syms[0xFF & c].advanceSymbol(rans2, inBuffer, Constants.TF_SHIFT);
-                outBuffer.put(c);
-                break;
+        // the remaining (up to 3) symbols come from the first states, in order
+        final int[] remainingStates = {rans0, rans1, rans2};
+        for (int i = out_end; i < out_sz; i++) {
+            int r = remainingStates[i - out_end];
+            final int c = 0xFF & R[r & MASK];
+            out[outOffset + i] = (byte) c;
+            r = syms[c].freq * (r >> Constants.TF_SHIFT) + (r & MASK) - syms[c].start;
+            while (r < Constants.RANS_BYTE_L) {
+                r = (r << 8) | (0xFF & in[inPos++]);
+            }
         }
 
+        inBuffer.position(inPos - inBuffer.arrayOffset());
         outBuffer.position(0);
     }
 }
@@ -1,51 +1,71 @@
 package htsjdk.samtools.cram.compression.rans;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 final class D14 {
+    private static final int MASK = (1 << Constants.TF_SHIFT) - 1;
+
+    // Decodes directly from/into the buffers' backing arrays, with the symbol step and
+    // re-normalization of the 4 interleaved states inlined.
     static void uncompress(
             final ByteBuffer inBuffer,
             final ByteBuffer outBuffer,
             final ArithmeticDecoder[] D,
             final RANSDecodingSymbol[][] syms) {
+        final byte[] in = inBuffer.array();
+        int inPos = inBuffer.arrayOffset() + inBuffer.position();
+        final byte[] out = outBuffer.array();
+        final int outOffset = outBuffer.arrayOffset();
+
         final int out_sz = outBuffer.remaining();
-        int rans0, rans1, rans2, rans7;
-        inBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        rans0 = inBuffer.getInt();
-        rans1 = inBuffer.getInt();
-        rans2 = inBuffer.getInt();
-        rans7 = inBuffer.getInt();
+        int rans0 = Utils.readIntLE(in, inPos);
+        int rans1 = Utils.readIntLE(in, inPos + 4);
+        int rans2 = Utils.readIntLE(in, inPos + 8);
+        int rans7 = Utils.readIntLE(in, inPos + 12);
+        inPos += 16;
 
         final int isz4 = out_sz >> 2;
-        int i0 = 0;
-        int i1 = isz4;
-        int i2 = 2 * isz4;
-        int i7 = 3 * isz4;
+        int i0 = outOffset;
+        int i1 = outOffset + isz4;
+        int i2 = outOffset + 2 * isz4;
+        int i7 = outOffset + 3 * isz4;
+        final int end0 = outOffset + isz4;
         int l0 = 0;
         int l1 = 0;
         int l2 = 0;
         int l7 = 0;
-        for (; i0 < isz4; i0++, i1++, i2++, i7++) {
-            final int c0 = 0xFF & D[l0].R[Utils.RANSDecodeGet(rans0, Constants.TF_SHIFT)];
-            final int c1 = 0xFF & D[l1].R[Utils.RANSDecodeGet(rans1, Constants.TF_SHIFT)];
-            final int c2 = 0xFF & D[l2].R[Utils.RANSDecodeGet(rans2, Constants.TF_SHIFT)];
-            final int c7 = 0xFF & D[l7].R[Utils.RANSDecodeGet(rans7, Constants.TF_SHIFT)];
+        for (; i0 < end0; i0++, i1++, i2++, i7++) {
+            final int c0 = 0xFF & D[l0].R[rans0 & MASK];
+            final int c1 = 0xFF & D[l1].R[rans1 & MASK];
+            final int c2 = 0xFF & D[l2].R[rans2 & MASK];
+            final int c7 = 0xFF & D[l7].R[rans7 & MASK];
 
-            outBuffer.put(i0, (byte) c0);
-            outBuffer.put(i1, (byte) c1);
-            outBuffer.put(i2, (byte) c2);
-            outBuffer.put(i7, (byte) c7);
+            out[i0] = (byte) c0;
+            out[i1] = (byte) c1;
+            out[i2] = (byte) c2;
+            out[i7] = (byte) c7;
 
-            rans0 = syms[l0][c0].advanceSymbolStep(rans0,  Constants.TF_SHIFT);
-            rans1 = syms[l1][c1].advanceSymbolStep(rans1, Constants.TF_SHIFT);
-            rans2 = syms[l2][c2].advanceSymbolStep(rans2, Constants.TF_SHIFT);
-            rans7 = syms[l7][c7].advanceSymbolStep(rans7,  Constants.TF_SHIFT);
+            final RANSDecodingSymbol s0 = syms[l0][c0];
+            final RANSDecodingSymbol s1 = syms[l1][c1];
+            final RANSDecodingSymbol s2 = syms[l2][c2];
+            final RANSDecodingSymbol s7 = syms[l7][c7];
+            rans0 = s0.freq * (rans0 >> Constants.TF_SHIFT) + (rans0 & MASK) - s0.start;
+            rans1 = s1.freq * (rans1 >> Constants.TF_SHIFT) + (rans1 & MASK) - s1.start;
+            rans2 = s2.freq * (rans2 >> Constants.TF_SHIFT) + (rans2 & MASK) - s2.start;
+            rans7 = s7.freq * (rans7 >> Constants.TF_SHIFT) + (rans7 & MASK) - s7.start;
 
-            rans0 = Utils.RANSDecodeRenormalize(rans0, inBuffer);
-            rans1 = Utils.RANSDecodeRenormalize(rans1, inBuffer);
-            rans2 = Utils.RANSDecodeRenormalize(rans2, inBuffer);
-            rans7 = Utils.RANSDecodeRenormalize(rans7, inBuffer);
+            while (rans0 < Constants.RANS_BYTE_L) {
+                rans0 = (rans0 << 8) | (0xFF & in[inPos++]);
+            }
+            while (rans1 < Constants.RANS_BYTE_L) {
+                rans1 = (rans1 << 8) | (0xFF & in[inPos++]);
+            }
+            while (rans2 < Constants.RANS_BYTE_L) {
+                rans2 = (rans2 << 8) | (0xFF & in[inPos++]);
+            }
+            while (rans7 < Constants.RANS_BYTE_L) {
+                rans7 = (rans7 << 8) | (0xFF & in[inPos++]);
+            }
 
             l0 = c0;
             l1 = c1;
@@ -54,11 +74,18 @@ final class D14 {
         }
 
         // Remainder
-        for (; i7 < out_sz; i7++) {
-            final int c7 = 0xFF & D[l7].R[Utils.RANSDecodeGet(rans7, Constants.TF_SHIFT)];
-            outBuffer.put(i7, (byte) c7);
-            rans7 = syms[l7][c7].advanceSymbol(rans7, inBuffer, Constants.TF_SHIFT);
+        final int end7 = outOffset + out_sz;
+        for (; i7 < end7; i7++) {
+            final int c7 = 0xFF & D[l7].R[rans7 & MASK];
+            out[i7] = (byte) c7;
+            final RANSDecodingSymbol s7 = syms[l7][c7];
+            rans7 = s7.freq * (rans7 >> Constants.TF_SHIFT) + (rans7 & MASK) - s7.start;
+            while (rans7 < Constants.RANS_BYTE_L) {
+                rans7 = (rans7 << 8) | (0xFF & in[inPos++]);
+            }
             l7 = c7;
         }
+
+        inBuffer.position(inPos - inBuffer.arrayOffset());
     }
 }
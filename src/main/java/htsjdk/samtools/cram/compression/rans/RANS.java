@@ -40,22 +40,23 @@ public final class RANS {
 
     // working variables used by the encoder and decoder; initialize them lazily since
     // they consist of lots of small objects, and we don't want to instantiate them
-    // until we actually use them
+    // until we actually use them. They are reused across calls without being reset, since every
+    // table entry that a valid stream can reach is overwritten when its frequency table is read
+    // or built.
     private ArithmeticDecoder[] D;
     private RANSDecodingSymbol[][] decodingSymbols;
     private RANSEncodingSymbol[][] encodingSymbols;
 
-    // Lazy initialization of working memory for the encoder/decoder
-    private void initializeRANSCoder() {
+    // reusable buffer for compressed output, which is copied into an exactly sized buffer once its length is known
+    private ByteBuffer compressionBuffer;
+
+    // Lazy initialization of working memory for the decoder
+    private void initializeRANSDecoder() {
         if (D == null) {
             D = new ArithmeticDecoder[NUMBER_OF_SYMBOLS];
             for (int i = 0; i < NUMBER_OF_SYMBOLS; i++) {
                 D[i] = new ArithmeticDecoder();
             }
-        } else {
-            for (int i = 0; i < NUMBER_OF_SYMBOLS; i++) {
-                D[i].reset();
-            }
         }
         if (decodingSymbols == null) {
             decodingSymbols = new RANSDecodingSymbol[NUMBER_OF_SYMBOLS][NUMBER_OF_SYMBOLS];
@@ -64,13 +65,11 @@ public final class RANS {
                     decodingSymbols[i][j] = new RANSDecodingSymbol();
                 }
             }
-        } else {
-            for (int i = 0; i < decodingSymbols.length; i++) {
-                for (int j = 0; j < decodingSymbols[i].length; j++) {
-                    decodingSymbols[i][j].set(0, 0);
-                }
-            }
         }
+    }
+
+    // Lazy initialization of working memory for the encoder
+    private void initializeRANSEncoder() {
         if (encodingSymbols == null) {
             encodingSymbols = new RANSEncodingSymbol[NUMBER_OF_SYMBOLS][NUMBER_OF_SYMBOLS];
             for (int i = 0; i < encodingSymbols.length; i++) {
@@ -78,12 +77,6 @@ public final class RANS {
                     encodingSymbols[i][j] = new RANSEncodingSymbol();
                 }
             }
-        } else {
-            for (int i = 0; i < encodingSymbols.length; i++) {
-                for (int j = 0; j < encodingSymbols[i].length; j++) {
-                    encodingSymbols[i][j].reset();
-                }
-            }
         }
     }
 
@@ -92,28 +85,36 @@ public final class RANS {
             return EMPTY_BUFFER;
         }
 
-        initializeRANSCoder();
+        initializeRANSDecoder();
 
-        final ORDER order = ORDER.fromInt(inBuffer.get());
+        // the decoders work directly on the backing arrays of the buffers
+        final ByteBuffer in = inBuffer.hasArray() ? inBuffer : copyToHeapBuffer(inBuffer);
+        final ORDER order = ORDER.fromInt(in.get());
 
-        inBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        final int inSize = inBuffer.getInt();
-        if (inSize != inBuffer.remaining() - RAW_BYTE_LENGTH) {
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        final int inSize = in.getInt();
+        if (inSize != in.remaining() - RAW_BYTE_LENGTH) {
             throw new RuntimeException("Incorrect input length.");
         }
-        final int outSize = inBuffer.getInt();
+        final int outSize = in.getInt();
         final ByteBuffer outBuffer = ByteBuffer.allocate(outSize);
 
         switch (order) {
             case ZERO:
-                return uncompressOrder0Way4(inBuffer, outBuffer);
+                uncompressOrder0Way4(in, outBuffer);
+                break;
 
             case ONE:
-                return uncompressOrder1Way4(inBuffer, outBuffer);
+                uncompressOrder1Way4(in, outBuffer);
+                break;
 
             default:
                 throw new RuntimeException("Unknown rANS order: " + order);
         }
+        if (in != inBuffer) {
+            inBuffer.position(inBuffer.limit());
+        }
+        return outBuffer;
     }
 
     public ByteBuffer compress(final ByteBuffer inBuffer, final ORDER order) {
@@ -121,7 +122,7 @@ public final class RANS {
             return EMPTY_BUFFER;
         }
 
-        initializeRANSCoder();
+        initializeRANSEncoder();
 
         if (inBuffer.remaining() < MINIMUM__ORDER_1_SIZE) {
             // ORDER-1 encoding of less than 4 bytes is not permitted, so just use ORDER-0
@@ -159,7 +160,7 @@ public final class RANS {
 
         // rewind and write the prefix
         writeCompressionPrefix(ORDER.ZERO, outBuffer, inSize, frequencyTableSize, compressedBlobSize);
-        return outBuffer;
+        return copyToHeapBuffer(outBuffer);
     }
 
     private ByteBuffer compressOrder1Way4(final ByteBuffer inBuffer) {
@@ -180,34 +181,42 @@ public final class RANS {
 
         // rewind and write the prefix
         writeCompressionPrefix(ORDER.ONE, outBuffer, inSize, frequencyTableSize, compressedBlobSize);
-        return outBuffer;
+        return copyToHeapBuffer(outBuffer);
     }
 
-    private ByteBuffer uncompressOrder0Way4(final ByteBuffer inBuffer, final ByteBuffer outBuffer) {
+    private void uncompressOrder0Way4(final ByteBuffer inBuffer, final ByteBuffer outBuffer) {
         Frequencies.readStatsOrder0(inBuffer, D[0], decodingSymbols[0]);
         D04.uncompress(inBuffer, D[0], decodingSymbols[0], outBuffer);
-
-        return outBuffer;
     }
 
-    private ByteBuffer uncompressOrder1Way4(final ByteBuffer in, final ByteBuffer outBuffer) {
+    private void uncompressOrder1Way4(final ByteBuffer in, final ByteBuffer outBuffer) {
         Frequencies.readStatsOrder1(in, D, decodingSymbols);
         D14.uncompress(in, outBuffer, D, decodingSymbols);
-        return outBuffer;
     }
 
-    private static ByteBuffer allocateOutputBuffer(final int inSize) {
+    // copies the remaining bytes of the buffer into a new, exactly sized, heap buffer with the same byte order
+    private static ByteBuffer copyToHeapBuffer(final ByteBuffer buffer) {
+        final ByteBuffer copy = ByteBuffer.allocate(buffer.remaining()).order(buffer.order());
+        copy.put(buffer);
+        copy.rewind();
+        return copy;
+    }
+
+    private ByteBuffer allocateOutputBuffer(final int inSize) {
         // This calculation is identical to the one in samtools rANS_static.c
         // Presumably the frequency table (always big enough for order 1) = 257*257, then * 3 for each entry
         // (byte->symbol, 2 bytes -> scaled frequency), + 9 for the header (order byte, and 2 int lengths
         // for compressed/uncompressed lengths) ? Plus additional 5% for..., for what ???
         final int compressedSize = (int) (1.05 * inSize + 257 * 257 * 3 + 9);
-        final ByteBuffer outputBuffer = ByteBuffer.allocate(compressedSize);
-        if (outputBuffer.remaining() < compressedSize) {
+        if (compressionBuffer == null || compressionBuffer.capacity() < compressedSize) {
+            compressionBuffer = ByteBuffer.allocate(compressedSize);
+        }
+        compressionBuffer.clear();
+        if (compressionBuffer.remaining() < compressedSize) {
             throw new RuntimeException("Failed to allocate sufficient buffer size for RANS coder.");
         }
-        outputBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        return outputBuffer;
+        compressionBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        return compressionBuffer;
     }
 
     private static void writeCompressionPrefix(
@@ -0,0 +1,785 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.cram.compression.rans;
+
+import htsjdk.samtools.cram.CRAMException;
+import htsjdk.samtools.cram.compression.CompressionUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * The CRAM 3.1 rANS Nx16 codec (block compression method 5): order-0 and order-1 rANS with 16 bit renormalization
+ * and 4 or 32 interleaved states, optionally combined with the STRIPE, RLE and PACK transforms.
+ * <p>
+ * A compressed stream starts with a flags byte that describes the transforms applied. The flags passed to
+ * {@link #compress(ByteBuffer, int)} select the transforms to try; transforms that do not apply to the data (for
+ * instance PACK when there are more than 16 distinct symbols) are dropped, and data that does not compress is
+ * stored uncompressed (CAT).
+ * <p>
+ * Like {@link RANS}, instances reuse their working memory across calls and are not thread-safe.
+ */
+public final class RANSNx16 {
+    /** Use order-1 (rather than order-0) entropy coding. */
+    public static final int ORDER_FLAG = 0x01;
+    /** Use 32 (rather than 4) interleaved rANS states. */
+    public static final int N32_FLAG = 0x04;
+    /** Split the data into 4 interleaved streams, each of which is compressed separately. */
+    public static final int STRIPE_FLAG = 0x08;
+    /** The uncompressed size is not stored, because the container already records it. */
+    public static final int NOSZ_FLAG = 0x10;
+    /** The data is stored uncompressed. */
+    public static final int CAT_FLAG = 0x20;
+    /** Run length encode the symbols for which it is beneficial. */
+    public static final int RLE_FLAG = 0x40;
+    /** Pack data with at most 16 distinct symbols into 1, 2 or 4 bits per symbol. */
+    public static final int PACK_FLAG = 0x80;
+
+    private static final int TF_SHIFT = 12;
+    private static final int TOTFREQ = 1 << TF_SHIFT;
+    private static final int MASK = TOTFREQ - 1;
+    private static final int RANS_BYTE_L = 1 << 15;
+    private static final int NUMBER_OF_STRIPES = 4;
+    private static final int NUMBER_OF_SYMBOLS = 256;
+
+    // working memory for order-1 coding, reused across calls
+    private final int[][] frequencies = new int[NUMBER_OF_SYMBOLS][NUMBER_OF_SYMBOLS];
+    private final int[][] cumulativeFrequencies = new int[NUMBER_OF_SYMBOLS][NUMBER_OF_SYMBOLS];
+    private final byte[][] reverseLookup = new byte[NUMBER_OF_SYMBOLS][];
+
+    /**
+     * Compress the remaining bytes of {@code inBuffer}.
+     *
+     * @param inBuffer data to compress
+     * @param flags combination of the *_FLAG values selecting the transforms to use
+     * @return the compressed stream
+     */
+    public ByteBuffer compress(final ByteBuffer inBuffer, final int flags) {
+        final byte[] compressed = compress(CompressionUtils.toByteArray(inBuffer), flags);
+        return ByteBuffer.wrap(compressed).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Uncompress a stream produced by {@link #compress(ByteBuffer, int)}, or by any other rANS Nx16 encoder.
+     *
+     * @param inBuffer compressed stream, which is consumed entirely
+     * @return the uncompressed data
+     */
+    public ByteBuffer uncompress(final ByteBuffer inBuffer) {
+        final ByteBuffer in = ByteBuffer.wrap(CompressionUtils.toByteArray(inBuffer)).order(ByteOrder.LITTLE_ENDIAN);
+        return ByteBuffer.wrap(uncompress(in, -1));
+    }
+
+    private byte[] compress(final byte[] in, final int requestedFlags) {
+        if ((requestedFlags & STRIPE_FLAG) != 0) {
+            return compressStripe(in, requestedFlags & ~STRIPE_FLAG);
+        }
+        int flags = requestedFlags & (ORDER_FLAG | N32_FLAG | NOSZ_FLAG | CAT_FLAG | RLE_FLAG | PACK_FLAG);
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        if ((flags & NOSZ_FLAG) == 0) {
+            CompressionUtils.writeUint7(header, in.length);
+        }
+
+        byte[] data = in;
+        if ((flags & PACK_FLAG) != 0) {
+            final byte[] alphabet = CompressionUtils.getPackAlphabet(data);
+            if (alphabet != null && alphabet.length > 0) {
+                header.write(alphabet.length);
+                header.write(alphabet, 0, alphabet.length);
+                data = CompressionUtils.encodePack(data, alphabet);
+                CompressionUtils.writeUint7(header, data.length);
+            } else {
+                flags &= ~PACK_FLAG;
+            }
+        }
+
+        if ((flags & RLE_FLAG) != 0) {
+            final byte[] literals = encodeRLE(data, header);
+            if (literals != null) {
+                data = literals;
+            } else {
+                flags &= ~RLE_FLAG;
+            }
+        }
+
+        byte[] body = null;
+        if ((flags & CAT_FLAG) == 0 && data.length > 0) {
+            final int numStates = (flags & N32_FLAG) != 0 ? 32 : 4;
+            if ((flags & ORDER_FLAG) != 0 && data.length >= numStates) {
+                body = encodeOrder1(data, numStates);
+            } else {
+                flags &= ~ORDER_FLAG;
+                body = encodeOrder0(data, numStates);
+            }
+        }
+        if (body == null || body.length >= data.length) {
+            flags = (flags | CAT_FLAG) & ~(ORDER_FLAG | N32_FLAG);
+            body = data;
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(1 + header.size() + body.length);
+        out.write(flags);
+        out.write(header.toByteArray(), 0, header.size());
+        out.write(body, 0, body.length);
+        return out.toByteArray();
+    }
+
+    private byte[] uncompress(final ByteBuffer in, final int knownSize) {
+        try {
+            final int flags = in.get() & 0xFF;
+            final int size;
+            if ((flags & NOSZ_FLAG) != 0) {
+                if (knownSize < 0) {
+                    throw new CRAMException("rANS Nx16 stream does not specify its uncompressed size");
+                }
+                size = knownSize;
+            } else {
+                size = CompressionUtils.readUint7(in);
+            }
+            if ((flags & STRIPE_FLAG) != 0) {
+                return uncompressStripe(in, size);
+            }
+
+            byte[] alphabet = null;
+            int packedSize = size;
+            if ((flags & PACK_FLAG) != 0) {
+                alphabet = CompressionUtils.readBytes(in, in.get() & 0xFF);
+                packedSize = CompressionUtils.readUint7(in);
+            }
+
+            byte[] rleMetadata = null;
+            int dataSize = packedSize;
+            if ((flags & RLE_FLAG) != 0) {
+                final int rleMetadataSize = CompressionUtils.readUint7(in);
+                dataSize = CompressionUtils.readUint7(in);
+                if ((rleMetadataSize & 1) != 0) {
+                    rleMetadata = CompressionUtils.readBytes(in, rleMetadataSize / 2);
+                } else {
+                    final int compressedMetadataSize = CompressionUtils.readUint7(in);
+                    rleMetadata = decodeOrder0(CompressionUtils.slice(in, compressedMetadataSize), rleMetadataSize / 2, 4);
+                }
+            }
+
+            byte[] data;
+            if ((flags & CAT_FLAG) != 0) {
+                data = CompressionUtils.readBytes(in, dataSize);
+            } else if (dataSize == 0) {
+                data = new byte[0];
+            } else {
+                final int numStates = (flags & N32_FLAG) != 0 ? 32 : 4;
+                data = (flags & ORDER_FLAG) != 0 ?
+                        decodeOrder1(in, dataSize, numStates) :
+                        decodeOrder0(in, dataSize, numStates);
+            }
+
+            if (rleMetadata != null) {
+                data = decodeRLE(data, rleMetadata, packedSize);
+            }
+            if (alphabet != null) {
+                data = CompressionUtils.decodePack(data, alphabet, size);
+            }
+            return data;
+        } catch (final IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new CRAMException("Truncated or corrupt rANS Nx16 stream", e);
+        }
+    }
+
+    private byte[] compressStripe(final byte[] in, final int flags) {
+        final byte[][] stripes = CompressionUtils.encodeStripe(in, NUMBER_OF_STRIPES);
+        final byte[][] compressedStripes = new byte[NUMBER_OF_STRIPES][];
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(STRIPE_FLAG);
+        CompressionUtils.writeUint7(out, in.length);
+        out.write(NUMBER_OF_STRIPES);
+        for (int i = 0; i < NUMBER_OF_STRIPES; i++) {
+            // the stripe sizes are implied by the total size
+            compressedStripes[i] = compress(stripes[i], flags | NOSZ_FLAG);
+            CompressionUtils.writeUint7(out, compressedStripes[i].length);
+        }
+        for (final byte[] compressedStripe : compressedStripes) {
+            out.write(compressedStripe, 0, compressedStripe.length);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] uncompressStripe(final ByteBuffer in, final int size) {
+        final int numStripes = in.get() & 0xFF;
+        if (numStripes == 0) {
+            throw new CRAMException("Invalid number of rANS Nx16 stripes: 0");
+        }
+        final int[] compressedSizes = new int[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            compressedSizes[i] = CompressionUtils.readUint7(in);
+        }
+        final byte[][] stripes = new byte[numStripes][];
+        for (int i = 0; i < numStripes; i++) {
+            stripes[i] = uncompress(CompressionUtils.slice(in, compressedSizes[i]), CompressionUtils.getStripeLength(size, numStripes, i));
+        }
+        return CompressionUtils.decodeStripe(stripes, size);
+    }
+
+    /**
+     * Run length encode the symbols whose runs save space, writing the RLE metadata (the symbols that are run
+     * length encoded, followed by their run lengths) to {@code header}.
+     *
+     * @return the literals, or null if no symbol benefits from run length encoding
+     */
+    private byte[] encodeRLE(final byte[] data, final ByteArrayOutputStream header) {
+        final long[] saved = new long[NUMBER_OF_SYMBOLS];
+        int last = -1;
+        for (final byte b : data) {
+            final int sym = b & 0xFF;
+            if (sym == last) {
+                saved[sym]++;
+            } else {
+                saved[sym]--;
+                last = sym;
+            }
+        }
+        final ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+        int numRLESymbols = 0;
+        for (int i = 0; i < NUMBER_OF_SYMBOLS; i++) {
+            if (saved[i] > 0) {
+                numRLESymbols++;
+            }
+        }
+        if (numRLESymbols == 0) {
+            return null;
+        }
+        // a count of 0 means all 256 symbols
+        metadata.write(numRLESymbols & 0xFF);
+        for (int i = 0; i < NUMBER_OF_SYMBOLS; i++) {
+            if (saved[i] > 0) {
+                metadata.write(i);
+            }
+        }
+
+        final byte[] literals = new byte[data.length];
+        int numLiterals = 0;
+        for (int i = 0; i < data.length; i++) {
+            final byte b = data[i];
+            literals[numLiterals++] = b;
+            if (saved[b & 0xFF] > 0) {
+                int run = 0;
+                while (i + 1 < data.length && data[i + 1] == b) {
+                    run++;
+                    i++;
+                }
+                CompressionUtils.writeUint7(metadata, run);
+            }
+        }
+
+        // store the metadata order-0 compressed if that is smaller; the low bit of the size records which
+        final byte[] uncompressedMetadata = metadata.toByteArray();
+        final byte[] compressedMetadata = encodeOrder0(uncompressedMetadata, 4);
+        if (compressedMetadata.length < uncompressedMetadata.length) {
+            CompressionUtils.writeUint7(header, uncompressedMetadata.length * 2);
+            CompressionUtils.writeUint7(header, numLiterals);
+            CompressionUtils.writeUint7(header, compressedMetadata.length);
+            header.write(compressedMetadata, 0, compressedMetadata.length);
+        } else {
+            CompressionUtils.writeUint7(header, uncompressedMetadata.length * 2 + 1);
+            CompressionUtils.writeUint7(header, numLiterals);
+            header.write(uncompressedMetadata, 0, uncompressedMetadata.length);
+        }
+        final byte[] trimmed = new byte[numLiterals];
+        System.arraycopy(literals, 0, trimmed, 0, numLiterals);
+        return trimmed;
+    }
+
+    private static byte[] decodeRLE(final byte[] literals, final byte[] metadata, final int size) {
+        final ByteBuffer metadataBuffer = ByteBuffer.wrap(metadata);
+        final boolean[] isRLESymbol = new boolean[NUMBER_OF_SYMBOLS];
+        int numRLESymbols = metadataBuffer.get() & 0xFF;
+        if (numRLESymbols == 0) {
+            numRLESymbols = NUMBER_OF_SYMBOLS;
+        }
+        for (int i = 0; i < numRLESymbols; i++) {
+            isRLESymbol[metadataBuffer.get() & 0xFF] = true;
+        }
+        final byte[] out = new byte[size];
+        int outPos = 0;
+        for (final byte b : literals) {
+            if (isRLESymbol[b & 0xFF]) {
+                final int run = CompressionUtils.readUint7(metadataBuffer);
+                if (run < 0 || outPos + run + 1 > size) {
+                    throw new CRAMException("rANS Nx16 run length exceeds the uncompressed size");
+                }
+                for (int j = 0; j <= run; j++) {
+                    out[outPos++] = b;
+                }
+            } else {
+                if (outPos >= size) {
+                    throw new CRAMException("rANS Nx16 literals exceed the uncompressed size");
+                }
+                out[outPos++] = b;
+            }
+        }
+        if (outPos != size) {
+            throw new CRAMException(String.format("rANS Nx16 RLE data decoded to %d bytes, expected %d", outPos, size));
+        }
+        return out;
+    }
+
+    private static byte[] encodeOrder0(final byte[] data, final int numStates) {
+        final int[] counts = new int[NUMBER_OF_SYMBOLS];
+        for (final byte b : data) {
+            counts[b & 0xFF]++;
+        }
+        final int[] freq = normalizeFrequencies(counts, data.length, TOTFREQ);
+        final int[] cumulative = new int[NUMBER_OF_SYMBOLS];
+        for (int i = 1; i < NUMBER_OF_SYMBOLS; i++) {
+            cumulative[i] = cumulative[i - 1] + freq[i - 1];
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeAlphabet(out, freq);
+        for (int i = 0; i < NUMBER_OF_SYMBOLS; i++) {
+            if (freq[i] != 0) {
+                CompressionUtils.writeUint7(out, freq[i]);
+            }
+        }
+
+        // each symbol emits at most one 16 bit word
+        final byte[] buffer = new byte[data.length * 2 + numStates * 4];
+        int p = buffer.length;
+        final int[] states = new int[numStates];
+        Arrays.fill(states, RANS_BYTE_L);
+        for (int i = data.length - 1; i >= 0; i--) {
+            final int z = i & (numStates - 1);
+            final int sym = data[i] & 0xFF;
+            states[z] = encodeSymbol(states[z], cumulative[sym], freq[sym], TF_SHIFT, buffer, p);
+            if (states[z] < 0) {
+                p -= 2;
+                states[z] &= Integer.MAX_VALUE;
+            }
+        }
+        p = flushStates(states, buffer, p);
+        out.write(buffer, p, buffer.length - p);
+        return out.toByteArray();
+    }
+
+    private byte[] decodeOrder0(final ByteBuffer in, final int size, final int numStates) {
+        final int[] freq = new int[NUMBER_OF_SYMBOLS];
+        final boolean[] alphabet = readAlphabet(in);
+        int total = 0;
+        for (int i = 0; i < NUMBER_OF_SYMBOLS; i++) {
+            if (alphabet[i]) {
+                freq[i] = CompressionUtils.readUint7(in);
+                total += freq[i];
+            }
+        }
+        scaleFrequencies(freq, total, TF_SHIFT);
+
+        final int[] cumulative = new int[NUMBER_OF_SYMBOLS];
+        final byte[] lookup = new byte[TOTFREQ];
+        buildLookup(freq, cumulative, lookup, TOTFREQ);
+
+        final byte[] a = in.array();
+        int pos = in.arrayOffset() + in.position();
+        final int[] states = new int[numStates];
+        for (int z = 0; z < numStates; z++) {
+            states[z] = readIntLE(a, pos);
+            pos += 4;
+        }
+
+        final byte[] out = new byte[size];
+        final int stateMask = numStates - 1;
+        for (int i = 0; i < size; i++) {
+            final int z = i & stateMask;
+            int x = states[z];
+            final int m = x & MASK;
+            final int sym = lookup[m] & 0xFF;
+            out[i] = (byte) sym;
+            x = freq[sym] * (x >>> TF_SHIFT) + m - cumulative[sym];
+            if (x < RANS_BYTE_L) {
+                x = (x << 16) | (a[pos] & 0xFF) | ((a[pos + 1] & 0xFF) << 8);
+                pos += 2;
+            }
+            states[z] = x;
+        }
+        in.position(pos - in.arrayOffset());
+        return out;
+    }
+
+    private byte[] encodeOrder1(final byte[] data, final int numStates) {
+        final int length = data.length;
+        final int segmentLength = length / numStates;
+
+        // count exactly the (context, symbol) pairs that get encoded: each state starts in context 0
+        final int[][] F = frequencies;
+        for (final int[] row : F) {
+            Arrays.fill(row, 0);
+        }
+        final int[] contextTotals = new int[NUMBER_OF_SYMBOLS];
+        final boolean[] present = new boolean[NUMBER_OF_SYMBOLS];
+        for (int z = 0; z < numStates; z++) {
+            final int start = z * segmentLength;
+            final int end = z == numStates - 1 ? length : start + segmentLength;
+            int context = 0;
+            for (int i = start; i < end; i++) {
+                final int sym = data[i] & 0xFF;
+                F[context][sym]++;
+                contextTotals[context]++;
+                present[context] = true;
+                present[sym] = true;
+                context = sym;
+            }
+        }
+
+        final int[][] C = cumulativeFrequencies;
+        final ByteArrayOutputStream table = new ByteArrayOutputStream();
+        final int[] presentAsCounts = new int[NUMBER_OF_SYMBOLS];
+        for (int i = 0; i < NUMBER_OF_SYMBOLS; i++) {
+            presentAsCounts[i] = present[i] ? 1 : 0;
+        }
+        writeAlphabet(table, presentAsCounts);
+        for (int i = 0; i < NUMBER_OF_SYMBOLS; i++) {
+            if (!present[i]) {
+                continue;
+            }
+            if (contextTotals[i] > 0) {
+                F[i] = normalizeFrequencies(F[i], contextTotals[i], TOTFREQ);
+                C[i][0] = 0;
+                for (int j = 1; j < NUMBER_OF_SYMBOLS; j++) {
+                    C[i][j] = C[i][j - 1] + F[i][j - 1];
+                }
+            }
+            // frequencies for each symbol in the alphabet, where a zero is followed by the number of additional zeros
+            for (int j = 0; j < NUMBER_OF_SYMBOLS; j++) {
+                if (!present[j]) {
+                    continue;
+                }
+                CompressionUtils.writeUint7(table, F[i][j]);
+                if (F[i][j] == 0) {
+                    int run = 0;
+                    int k = j + 1;
+                    while (k < NUMBER_OF_SYMBOLS && run < 255) {
+                        if (present[k]) {
+                            if (F[i][k] != 0) {
+                                break;
+                            }
+                            run++;
+                        }
+                        k++;
+                    }
+                    table.write(run);
+                    j = k - 1;
+                }
+            }
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] uncompressedTable = table.toByteArray();
+        final byte[] compressedTable = encodeOrder0(uncompressedTable, 4);
+        if (compressedTable.length < uncompressedTable.length) {
+            out.write((TF_SHIFT << 4) | 1);
+            CompressionUtils.writeUint7(out, uncompressedTable.length);
+            CompressionUtils.writeUint7(out, compressedTable.length);
+            out.write(compressedTable, 0, compressedTable.length);
+        } else {
+            out.write(TF_SHIFT << 4);
+            out.write(uncompressedTable, 0, uncompressedTable.length);
+        }
+
+        // encode in the exact reverse of the decoding order: the tail of the last segment first, then the
+        // segments backwards, with states in descending order
+        final byte[] buffer = new byte[length * 2 + numStates * 4];
+        int p = buffer.length;
+        final int[] states = new int[numStates];
+        Arrays.fill(states, RANS_BYTE_L);
+        final int last = numStates - 1;
+        for (int i = length - 1; i >= numStates * segmentLength; i--) {
+            final int context = i == last * segmentLength ? 0 : data[i - 1] & 0xFF;
+            final int sym = data[i] & 0xFF;
+            states[last] = encodeSymbol(states[last], C[context][sym], F[context][sym], TF_SHIFT, buffer, p);
+            if (states[last] < 0) {
+                p -= 2;
+                states[last] &= Integer.MAX_VALUE;
+            }
+        }
+        for (int i = segmentLength - 1; i >= 0; i--) {
+            for (int z = last; z >= 0; z--) {
+                final int position = z * segmentLength + i;
+                final int context = i == 0 ? 0 : data[position - 1] & 0xFF;
+                final int sym = data[position] & 0xFF;
+                states[z] = encodeSymbol(states[z], C[context][sym], F[context][sym], TF_SHIFT, buffer, p);
+                if (states[z] < 0) {
+                    p -= 2;
+                    states[z] &= Integer.MAX_VALUE;
+                }
+            }
+        }
+        p = flushStates(states, buffer, p);
+        out.write(buffer, p, buffer.length - p);
+        return out.toByteArray();
+    }
+
+    private byte[] decodeOrder1(final ByteBuffer in, final int size, final int numStates) {
+        final int tableFlags = in.get() & 0xFF;
+        final int shift = tableFlags >> 4;
+        if (shift < 1 || shift > TF_SHIFT) {
+            throw new CRAMException("Invalid rANS Nx16 order-1 frequency shift: " + shift);
+        }
+        final ByteBuffer tableBuffer;
+        if ((tableFlags & 1) != 0) {
+            final int uncompressedTableSize = CompressionUtils.readUint7(in);
+            final int compressedTableSize = CompressionUtils.readUint7(in);
+            tableBuffer = ByteBuffer.wrap(decodeOrder0(CompressionUtils.slice(in, compressedTableSize), uncompressedTableSize, 4));
+        } else {
+            tableBuffer = in;
+        }
+
+        final int totalFrequency = 1 << shift;
+        final int mask = totalFrequency - 1;
+        final int[][] F = frequencies;
+        final int[][] C = cumulativeFrequencies;
+        final boolean[] alphabet = readAlphabet(tableBuffer);
+        for (int i = 0; i < NUMBER_OF_SYMBOLS; i++) {
+            if (!alphabet[i]) {
+                continue;
+            }
+            final int[] row = F[i];
+            Arrays.fill(row, 0);
+            int total = 0;
+            int run = 0;
+            for (int j = 0; j < NUMBER_OF_SYMBOLS; j++) {
+                if (!alphabet[j]) {
+                    continue;
+                }
+                if (run > 0) {
+                    run--;
+                } else {
+                    row[j] = CompressionUtils.readUint7(tableBuffer);
+                    total += row[j];
+                    if (row[j] == 0) {
+                        run = tableBuffer.get() & 0xFF;
+                    }
+                }
+            }
+            if (total == 0) {
+                continue;
+            }
+            scaleFrequencies(row, total, shift);
+            if (reverseLookup[i] == null || reverseLookup[i].length != totalFrequency) {
+                reverseLookup[i] = new byte[totalFrequency];
+            }
+            buildLookup(row, C[i], reverseLookup[i], totalFrequency);
+        }
+
+        final byte[] a = in.array();
+        int pos = in.arrayOffset() + in.position();
+        final int[] states = new int[numStates];
+        for (int z = 0; z < numStates; z++) {
+            states[z] = readIntLE(a, pos);
+            pos += 4;
+        }
+
+        final byte[] out = new byte[size];
+        final int segmentLength = size / numStates;
+        final int[] contexts = new int[numStates];
+        for (int i = 0; i < segmentLength; i++) {
+            for (int z = 0; z < numStates; z++) {
+                final int context = contexts[z];
+                int x = states[z];
+                final int m = x & mask;
+                final int sym = reverseLookup[context][m] & 0xFF;
+                out[z * segmentLength + i] = (byte) sym;
+                x = F[context][sym] * (x >>> shift) + m - C[context][sym];
+                if (x < RANS_BYTE_L) {
+                    x = (x << 16) | (a[pos] & 0xFF) | ((a[pos + 1] & 0xFF) << 8);
+                    pos += 2;
+                }
+                states[z] = x;
+                contexts[z] = sym;
+            }
+        }
+        // the remainder is decoded by the last state
+        final int last = numStates - 1;
+        int context = contexts[last];
+        int x = states[last];
+        for (int i = numStates * segmentLength; i < size; i++) {
+            final int m = x & mask;
+            final int sym = reverseLookup[context][m] & 0xFF;
+            out[i] = (byte) sym;
+            x = F[context][sym] * (x >>> shift) + m - C[context][sym];
+            if (x < RANS_BYTE_L) {
+                x = (x << 16) | (a[pos] & 0xFF) | ((a[pos + 1] & 0xFF) << 8);
+                pos += 2;
+            }
+            context = sym;
+        }
+        in.position(pos - in.arrayOffset());
+        return out;
+    }
+
+    /**
+     * Encode one symbol into state {@code x}, renormalizing by writing a 16 bit little-endian word just before
+     * position {@code p} of {@code buffer} if required.
+     *
+     * @return the new state, with the sign bit set if a word was written (states are always less than 2^31)
+     */
+    private static int encodeSymbol(final int x, final int start, final int freq, final int shift,
+                                    final byte[] buffer, final int p) {
+        int state = x;
+        boolean renormalized = false;
+        if (state >= ((long) freq << (31 - shift))) {
+            buffer[p - 1] = (byte) (state >>> 8);
+            buffer[p - 2] = (byte) state;
+            state >>>= 16;
+            renormalized = true;
+        }
+        state = ((state / freq) << shift) + (state % freq) + start;
+        return renormalized ? state | Integer.MIN_VALUE : state;
+    }
+
+    // write the final states, in order, immediately before position p; returns the new start position
+    private static int flushStates(final int[] states, final byte[] buffer, final int p) {
+        int pos = p - states.length * 4;
+        for (int z = 0; z < states.length; z++) {
+            final int x = states[z];
+            buffer[pos + z * 4] = (byte) x;
+            buffer[pos + z * 4 + 1] = (byte) (x >>> 8);
+            buffer[pos + z * 4 + 2] = (byte) (x >>> 16);
+            buffer[pos + z * 4 + 3] = (byte) (x >>> 24);
+        }
+        return pos;
+    }
+
+    private static int readIntLE(final byte[] a, final int pos) {
+        return (a[pos] & 0xFF) | ((a[pos + 1] & 0xFF) << 8) | ((a[pos + 2] & 0xFF) << 16) | ((a[pos + 3] & 0xFF) << 24);
+    }
+
+    /**
+     * Scale frequencies that sum to a power of two up to {@code 1 << shift}.
+     */
+    private static void scaleFrequencies(final int[] freq, final int total, final int shift) {
+        final int target = 1 << shift;
+        if (total <= 0 || total > target || Integer.bitCount(total) != 1) {
+            throw new CRAMException(String.format("Invalid rANS Nx16 frequency total %d", total));
+        }
+        final int scale = Integer.numberOfTrailingZeros(target) - Integer.numberOfTrailingZeros(total);
+        for (int i = 0; i < NUMBER_OF_SYMBOLS; i++) {
+            freq[i] <<= scale;
+        }
+    }
+
+    private static void buildLookup(final int[] freq, final int[] cumulative, final byte[] lookup, final int totalFrequency) {
+        int x = 0;
+        for (int i = 0; i < NUMBER_OF_SYMBOLS; i++) {
+            cumulative[i] = x;
+            if (freq[i] > 0) {
+                if (x + freq[i] > totalFrequency) {
+                    throw new CRAMException("rANS Nx16 frequencies exceed the total frequency");
+                }
+                Arrays.fill(lookup, x, x + freq[i], (byte) i);
+                x += freq[i];
+            }
+        }
+    }
+
+    /**
+     * Scale non-zero counts so they sum to exactly {@code target}, keeping every non-zero count at least 1.
+     */
+    private static int[] normalizeFrequencies(final int[] counts, final int total, final int target) {
+        final int[] freq = new int[NUMBER_OF_SYMBOLS];
+        int sum = 0;
+        int maxIndex = 0;
+        for (int i = 0; i < NUMBER_OF_SYMBOLS; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            freq[i] = Math.max(1, (int) ((long) counts[i] * target / total));
+            sum += freq[i];
+            if (counts[i] > counts[maxIndex]) {
+                maxIndex = i;
+            }
+        }
+        if (sum < target) {
+            freq[maxIndex] += target - sum;
+        } else {
+            // take the excess from the largest frequencies, without reducing any below 1
+            int excess = sum - target;
+            while (excess > 0) {
+                int largest = 0;
+                for (int i = 1; i < NUMBER_OF_SYMBOLS; i++) {
+                    if (freq[i] > freq[largest]) {
+                        largest = i;
+                    }
+                }
+                final int delta = Math.min(excess, Math.max(1, (freq[largest] - 1) / 2));
+                freq[largest] -= delta;
+                excess -= delta;
+            }
+        }
+        return freq;
+    }
+
+    // write the set of symbols with non-zero frequency, using the run length encoding shared with rANS 4x8
+    private static void writeAlphabet(final ByteArrayOutputStream out, final int[] freq) {
+        int rle = 0;
+        for (int j = 0; j < NUMBER_OF_SYMBOLS; j++) {
+            if (freq[j] != 0) {
+                if (rle != 0) {
+                    rle--;
+                } else {
+                    out.write(j);
+                    if (j != 0 && freq[j - 1] != 0) {
+                        for (rle = j + 1; rle < NUMBER_OF_SYMBOLS && freq[rle] != 0; rle++)
+                            ;
+                        rle -= j + 1;
+                        out.write(rle);
+                    }
+                }
+            }
+        }
+        out.write(0);
+    }
+
+    private static boolean[] readAlphabet(final ByteBuffer in) {
+        final boolean[] alphabet = new boolean[NUMBER_OF_SYMBOLS];
+        int rle = 0;
+        int j = in.get() & 0xFF;
+        do {
+            alphabet[j] = true;
+            if (rle == 0 && j + 1 == (in.get(in.position()) & 0xFF)) {
+                j = in.get() & 0xFF;
+                rle = in.get() & 0xFF;
+            } else if (rle != 0) {
+                rle--;
+                j++;
+                if (j > 255) {
+                    throw new CRAMException("Invalid rANS Nx16 alphabet");
+                }
+            } else {
+                j = in.get() & 0xFF;
+            }
+        } while (j != 0);
+        return alphabet;
+    }
+}
@@ -33,6 +33,14 @@ final class Utils {
         }
     }
 
+    // Reads a little-endian int from the array
+    static int readIntLE(final byte[] array, final int offset) {
+        return (0xFF & array[offset]) |
+                ((0xFF & array[offset + 1]) << 8) |
+                ((0xFF & array[offset + 2]) << 16) |
+                ((0xFF & array[offset + 3]) << 24);
+    }
+
     // Returns the current cumulative frequency (map it to a symbol yourself!)
     static int RANSDecodeGet(final int r, final int scaleBits) {
         return r & ((1 << scaleBits) - 1);
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.cram.ref;
+
+import htsjdk.samtools.Defaults;
+import htsjdk.samtools.util.Log;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe cache of reference sequence bases with a fixed byte budget, which can be shared by any number of
+ * {@link ReferenceSource}s (and so by any number of CRAM readers and writers) in a JVM. Unlike the per-source cache of
+ * weak references, cached bases are retained across garbage collections until the budget is exceeded, at which point
+ * the least recently used entries are evicted.
+ *
+ * Bases are cached under one or more keys: {@link #md5Key(String)} identifies a sequence globally, so is shared
+ * by all sources, while {@link #nameKey(String, String)} identifies a sequence by name within a particular reference.
+ * Bases stored under several keys are counted against the budget only once.
+ *
+ * The byte arrays returned by the cache are shared, and must not be modified by callers.
+ */
+public class ReferenceCache {
+    private static final Log log = Log.getInstance(ReferenceCache.class);
+
+    private static final ReferenceCache sharedCache = Defaults.CRAM_REFERENCE_CACHE_SIZE > 0 ?
+            new ReferenceCache(Defaults.CRAM_REFERENCE_CACHE_SIZE) :
+            null;
+
+    private final long maxBytes;
+
+    // keys in least to most recently used order
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // number of keys referring to each distinct array of bases
+    private final IdentityHashMap<byte[], Integer> keyCounts = new IdentityHashMap<>();
+    private long cachedBytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maxBytes the maximum number of bases to retain, summed over all cached sequences
+     */
+    public ReferenceCache(final long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The reference cache size must be > 0: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cache shared by {@link ReferenceSource}s that are not given an explicit cache, or null if
+     * {@link Defaults#CRAM_REFERENCE_CACHE_SIZE} is 0
+     */
+    public static ReferenceCache getSharedCache() {
+        return sharedCache;
+    }
+
+    /**
+     * @param md5 the MD5 of a reference sequence, as a hex string in either case
+     * @return the key under which the sequence with that MD5 is cached
+     */
+    public static String md5Key(final String md5) {
+        return "M5:" + md5.toLowerCase();
+    }
+
+    /**
+     * @param referenceId a string that identifies the reference containing the sequence, such as its path
+     * @param sequenceName the sequence name
+     * @return the key under which the sequence with that name is cached for that reference
+     */
+    public static String nameKey(final String referenceId, final String sequenceName) {
+        return "SN:" + referenceId + ":" + sequenceName;
+    }
+
+    /**
+     * Look up a sequence that may be cached under any of several keys. The lookup counts as a single hit or miss.
+     *
+     * @param keys the keys to try, in order
+     * @return the cached bases for the first key that is present, or null if none are
+     */
+    public synchronized byte[] get(final String... keys) {
+        for (final String key : keys) {
+            final byte[] bases = entries.get(key);
+            if (bases != null) {
+                hits++;
+                return bases;
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Cache bases under one or more keys, evicting least recently used entries as needed to stay within budget.
+     * Sequences larger than the whole budget are not cached.
+     *
+     * @param bases the bases to cache, which must not be modified after they are cached
+     * @param keys the keys under which the bases can be retrieved
+     * @return the bases
+     */
+    public synchronized byte[] put(final byte[] bases, final String... keys) {
+        if (bases.length > maxBytes) {
+            log.debug(String.format("Not caching %d reference bases, which exceeds the cache size %d", bases.length, maxBytes));
+            return bases;
+        }
+        for (final String key : keys) {
+            final byte[] previous = entries.put(key, bases);
+            if (previous != bases) {
+                if (previous != null) {
+                    release(previous);
+                }
+                final Integer count = keyCounts.get(bases);
+                if (count == null) {
+                    cachedBytes += bases.length;
+                    keyCounts.put(bases, 1);
+                } else {
+                    keyCounts.put(bases, count + 1);
+                }
+            }
+        }
+        evict();
+        return bases;
+    }
+
+    /**
+     * Remove all entries from the cache. The hit, miss and eviction counts are retained.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        keyCounts.clear();
+        cachedBytes = 0;
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<String, byte[]>> it = entries.entrySet().iterator();
+        while (cachedBytes > maxBytes && it.hasNext()) {
+            final byte[] bases = it.next().getValue();
+            it.remove();
+            if (release(bases)) {
+                evictions++;
+            }
+        }
+    }
+
+    // drop one key's reference to bases, returning true if no keys refer to them any more
+    private boolean release(final byte[] bases) {
+        final int count = keyCounts.get(bases);
+        if (count == 1) {
+            keyCounts.remove(bases);
+            cachedBytes -= bases.length;
+            return true;
+        }
+        keyCounts.put(bases, count - 1);
+        return false;
+    }
+
+    public long getMaxBytes() { return maxBytes; }
+    public synchronized long getCachedBytes() { return cachedBytes; }
+    public synchronized int getNumberOfSequences() { return keyCounts.size(); }
+    public synchronized long getHitCount() { return hits; }
+    public synchronized long getMissCount() { return misses; }
+
+    /**
+     * @return the number of sequences that have been removed from the cache to make room for others
+     */
+    public synchronized long getEvictionCount() { return evictions; }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("ReferenceCache{maxBytes=%d, cachedBytes=%d, sequences=%d, hits=%d, misses=%d, evictions=%d}",
+                maxBytes, cachedBytes, keyCounts.size(), hits, misses, evictions);
+    }
+}
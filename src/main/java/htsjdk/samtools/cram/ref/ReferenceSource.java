@@ -50,6 +50,12 @@ import java.util.regex.Pattern;
  * contains will be refactored and distributed into one or more separate reference
  * source implementations, each corresponding to the type of resource backing the
  * reference.
+ *
+ * Loaded bases are cached in a {@link ReferenceCache} if one is provided, or if the shared cache is enabled via
+ * {@link Defaults#CRAM_REFERENCE_CACHE_SIZE}. Otherwise each source retains only weak references to the bases it
+ * has loaded. Sequences found by name are shared through the cache by all sources created for the same fasta path;
+ * a source created from a {@link ReferenceSequenceFile} has no path to identify them, so it retains those sequences
+ * only weakly, and shares only sequences downloaded by MD5.
  */
 public class ReferenceSource implements CRAMReferenceSource {
     private static final Log log = Log.getInstance(ReferenceSource.class);
@@ -57,17 +63,52 @@ public class ReferenceSource implements CRAMReferenceSource {
     private int downloadTriesBeforeFailing = 2;
 
     private final Map<String, WeakReference<byte[]>> cacheW = new HashMap<>();
+    private final ReferenceCache referenceCache;
+    // the URI of the fasta, which identifies sequences found by name in referenceCache keys so that sources for the
+    // same file share them, or null if the source was created without a path
+    private final String referenceId;
 
     public ReferenceSource(final File file) {
         this(IOUtil.toPath(file));
     }
 
     public ReferenceSource(final Path path) {
-        this( path == null ? null : ReferenceSequenceFileFactory.getReferenceSequenceFile(path));
+        this(path, ReferenceCache.getSharedCache());
     }
 
     public ReferenceSource(final ReferenceSequenceFile rsFile) {
+        this(rsFile, ReferenceCache.getSharedCache());
+    }
+
+    /**
+     * @param path the reference fasta file
+     * @param referenceCache the cache in which to retain loaded bases, or null to retain only weak references
+     */
+    public ReferenceSource(final Path path, final ReferenceCache referenceCache) {
+        this(path == null ? null : ReferenceSequenceFileFactory.getReferenceSequenceFile(path),
+                path == null ? null : path.toUri().toString(),
+                referenceCache);
+    }
+
+    /**
+     * @param rsFile the reference sequence file
+     * @param referenceCache the cache in which to retain loaded bases, or null to retain only weak references
+     */
+    public ReferenceSource(final ReferenceSequenceFile rsFile, final ReferenceCache referenceCache) {
+        this(rsFile, null, referenceCache);
+    }
+
+    private ReferenceSource(final ReferenceSequenceFile rsFile, final String referenceId, final ReferenceCache referenceCache) {
         this.rsFile = rsFile;
+        this.referenceCache = referenceCache;
+        this.referenceId = referenceId;
+    }
+
+    /**
+     * @return the cache in which this source retains loaded bases, or null if it only retains weak references
+     */
+    public ReferenceCache getReferenceCache() {
+        return referenceCache;
     }
 
     /**
@@ -119,19 +160,28 @@ public class ReferenceSource implements CRAMReferenceSource {
 
     // Upper case (in-place), and add to the cache
     private byte[] addToCache(final String sequenceName, final byte[] bases) {
+        upperCase(bases);
+        cacheW.put(sequenceName, new WeakReference<>(bases));
+        return bases;
+    }
+
+    private static byte[] upperCase(final byte[] bases) {
         // Normalize to upper case only. We can't use the cram normalization utility Utils.normalizeBases, since
         // we don't want to normalize ambiguity codes, we can't use SamUtils.normalizeBases, since we don't want
         // to normalize no-call ('.') bases.
         for (int i = 0; i < bases.length; i++) {
             bases[i] = StringUtil.toUpperCase(bases[i]);
         }
-        cacheW.put(sequenceName, new WeakReference<>(bases));
         return bases;
     }
 
     @Override
     public synchronized byte[] getReferenceBases(final SAMSequenceRecord record,
                                                  final boolean tryNameVariants) {
+        if (referenceCache != null) {
+            return getReferenceBasesUsingCache(record, tryNameVariants);
+        }
+
         { // check cache by sequence name:
             final String name = record.getSequenceName();
             final byte[] bases = findInCache(name);
@@ -179,6 +229,41 @@ public class ReferenceSource implements CRAMReferenceSource {
         return null;
     }
 
+    private byte[] getReferenceBasesUsingCache(final SAMSequenceRecord record, final boolean tryNameVariants) {
+        final String md5 = record.getAttribute(SAMSequenceRecord.MD5_TAG);
+        byte[] bases;
+        if (referenceId == null) {
+            bases = findInCache(record.getSequenceName());
+            if (bases == null && md5 != null) {
+                bases = referenceCache.get(ReferenceCache.md5Key(md5));
+            }
+        } else {
+            final String nameKey = ReferenceCache.nameKey(referenceId, record.getSequenceName());
+            bases = md5 == null ?
+                    referenceCache.get(nameKey) :
+                    referenceCache.get(nameKey, ReferenceCache.md5Key(md5));
+        }
+        if (bases != null) {
+            return bases;
+        }
+
+        // bases found by name are only cached by name, since they haven't been checked against the MD5
+        bases = findBasesByName(record.getSequenceName(), tryNameVariants);
+        if (bases != null) {
+            return referenceId == null ?
+                    addToCache(record.getSequenceName(), bases) :
+                    referenceCache.put(upperCase(bases), ReferenceCache.nameKey(referenceId, record.getSequenceName()));
+        }
+
+        if (Defaults.USE_CRAM_REF_DOWNLOAD && md5 != null) {
+            bases = findBasesByMD5(md5.toLowerCase());
+            if (bases != null) {
+                return referenceCache.put(upperCase(bases), ReferenceCache.md5Key(md5));
+            }
+        }
+        return null;
+    }
+
     private byte[] findBasesByName(final String name, final boolean tryVariants) {
         if (rsFile == null || !rsFile.isIndexed())
             return null;
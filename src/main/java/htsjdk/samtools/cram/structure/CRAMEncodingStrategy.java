@@ -25,6 +25,8 @@
 package htsjdk.samtools.cram.structure;
 
 import htsjdk.samtools.Defaults;
+import htsjdk.samtools.cram.common.CRAMVersion;
+import htsjdk.samtools.cram.common.CramVersions;
 import htsjdk.utils.ValidationUtils;
 import htsjdk.samtools.cram.ref.ReferenceContextType;
 
@@ -42,6 +44,7 @@ public class CRAMEncodingStrategy {
     public static final int DEFAULT_READS_PER_SLICE = 10000;
 
     // encoding strategies
+    private CRAMVersion cramVersion = CramVersions.DEFAULT_CRAM_VERSION;
     private CompressionHeaderEncodingMap customCompressionHeaderEncodingMap;
 
     //Note: should this have separate values for tags (separate from CRAMRecord data) ?
@@ -54,6 +57,7 @@ public class CRAMEncodingStrategy {
     private int minimumSingleReferenceSliceSize = DEFAULT_MINIMUM_SINGLE_REFERENCE_SLICE_THRESHOLD;
     private int readsPerSlice = DEFAULT_READS_PER_SLICE;
     private int slicesPerContainer = 1;
+    private int encodingThreads = Defaults.CRAM_ENCODING_THREADS;
 
     /**
      * Create an encoding strategy that uses all default values.
@@ -62,6 +66,25 @@ public class CRAMEncodingStrategy {
         // use defaults;
     }
 
+    /**
+     * Set the CRAM version to write. Writing CRAM 3.1 enables the CRAM 3.1 codecs in the default compression
+     * header encoding map: rANS Nx16 in place of rANS 4x8, fqzcomp for quality scores and the name tokeniser
+     * for read names.
+     *
+     * @param cramVersion the CRAM version to write; must be a supported version
+     * @return updated CRAMEncodingStrategy
+     */
+    public CRAMEncodingStrategy setCRAMVersion(final CRAMVersion cramVersion) {
+        ValidationUtils.nonNull(cramVersion, "cramVersion");
+        ValidationUtils.validateArg(
+                CramVersions.isSupportedVersion(cramVersion) && cramVersion.compatibleWith(CramVersions.CRAM_v3),
+                String.format("CRAM version %s is not supported for writing", cramVersion));
+        this.cramVersion = cramVersion;
+        return this;
+    }
+
+    public CRAMVersion getCRAMVersion() { return cramVersion; }
+
     /**
      * Set number of slices per container. In some cases, a container containing fewer slices than the
      * requested value will be produced in order to honor the specification rule that all slices in a
@@ -124,6 +147,23 @@ public class CRAMEncodingStrategy {
         return this;
     }
 
+    /**
+     * Set the number of containers that may be encoded and compressed concurrently, using a shared pool of
+     * worker threads. Containers are always written, and indexed, in the order in which they are produced,
+     * so the output does not depend on this value. Containers are always encoded on the writing thread when
+     * a custom {@link CompressionHeaderEncodingMap} is used, since its compressors cannot be shared across threads.
+     *
+     * @param encodingThreads number of containers that may be encoded concurrently, 0 to encode on the writing thread
+     * @return updated CRAMEncodingStrategy
+     */
+    public CRAMEncodingStrategy setEncodingThreads(final int encodingThreads) {
+        ValidationUtils.validateArg(encodingThreads >= 0, "encodingThreads must be >= 0");
+        this.encodingThreads = encodingThreads;
+        return this;
+    }
+
+    public int getEncodingThreads() { return encodingThreads; }
+
     /**
      * Set the {@link CompressionHeaderEncodingMap} to use.
      *
@@ -141,10 +181,12 @@ public class CRAMEncodingStrategy {
     @Override
     public String toString() {
         return "CRAMEncodingStrategy{" +
+                "cramVersion=" + cramVersion +
                 ", customCompressionMap='" + customCompressionHeaderEncodingMap + '\'' +
                 ", gzipCompressionLevel=" + gzipCompressionLevel +
                 ", readsPerSlice=" + readsPerSlice +
                 ", slicesPerContainer=" + slicesPerContainer +
+                ", encodingThreads=" + encodingThreads +
                 '}';
     }
     @Override
@@ -154,10 +196,12 @@ public class CRAMEncodingStrategy {
 
         CRAMEncodingStrategy that = (CRAMEncodingStrategy) o;
 
+        if (!cramVersion.equals(that.cramVersion)) return false;
         if (gzipCompressionLevel != that.gzipCompressionLevel) return false;
         if (getMinimumSingleReferenceSliceSize() != that.getMinimumSingleReferenceSliceSize()) return false;
         if (getReadsPerSlice() != that.getReadsPerSlice()) return false;
         if (getSlicesPerContainer() != that.getSlicesPerContainer()) return false;
+        if (getEncodingThreads() != that.getEncodingThreads()) return false;
         return getCustomCompressionHeaderEncodingMap() != null ?
                 getCustomCompressionHeaderEncodingMap().equals(that.getCustomCompressionHeaderEncodingMap()) :
                 that.getCustomCompressionHeaderEncodingMap() == null;
@@ -167,10 +211,12 @@ public class CRAMEncodingStrategy {
     public int hashCode() {
         int result = getCustomCompressionHeaderEncodingMap() != null ?
                 getCustomCompressionHeaderEncodingMap().hashCode() : 0;
+        result = 31 * result + cramVersion.hashCode();
         result = 31 * result + gzipCompressionLevel;
         result = 31 * result + getMinimumSingleReferenceSliceSize();
         result = 31 * result + getReadsPerSlice();
         result = 31 * result + getSlicesPerContainer();
+        result = 31 * result + getEncodingThreads();
         return result;
     }
 
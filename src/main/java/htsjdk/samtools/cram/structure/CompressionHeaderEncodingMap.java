@@ -25,8 +25,12 @@
 package htsjdk.samtools.cram.structure;
 
 import htsjdk.samtools.cram.CRAMException;
+import htsjdk.samtools.cram.common.CramVersions;
 import htsjdk.samtools.cram.compression.ExternalCompressor;
+import htsjdk.samtools.cram.compression.NameTokeniserExternalCompressor;
 import htsjdk.samtools.cram.compression.rans.RANS;
+import htsjdk.samtools.cram.compression.nametokenisation.NameTokeniser;
+import htsjdk.samtools.cram.compression.rans.RANSNx16;
 import htsjdk.samtools.cram.encoding.CRAMEncoding;
 import htsjdk.samtools.cram.encoding.external.ByteArrayStopEncoding;
 import htsjdk.samtools.cram.encoding.external.ExternalByteEncoding;
@@ -107,12 +111,12 @@ public class CompressionHeaderEncodingMap {
         // data. The only use of core block encodings are as params for other (external)
         // encodings, i.e., the ByteArrayLenEncoding used for tag data uses a core (sub-)encoding
         // to store the length of the array that is stored in an external block.
-        putExternalRansOrderZeroEncoding(DataSeries.AP_AlignmentPositionOffset);
-        putExternalRansOrderOneEncoding(DataSeries.BA_Base);
+        putExternalRansOrderZeroEncoding(encodingStrategy, DataSeries.AP_AlignmentPositionOffset);
+        putExternalRansOrderOneEncoding(encodingStrategy, DataSeries.BA_Base);
         // the BB data series is not used by this implementation when writing CRAMs
-        putExternalRansOrderOneEncoding(DataSeries.BF_BitFlags);
+        putExternalRansOrderOneEncoding(encodingStrategy, DataSeries.BF_BitFlags);
         putExternalGzipEncoding(encodingStrategy, DataSeries.BS_BaseSubstitutionCode);
-        putExternalRansOrderOneEncoding(DataSeries.CF_CompressionBitFlags);
+        putExternalRansOrderOneEncoding(encodingStrategy, DataSeries.CF_CompressionBitFlags);
         putExternalGzipEncoding(encodingStrategy, DataSeries.DL_DeletionLength);
         putExternalGzipEncoding(encodingStrategy, DataSeries.FC_FeatureCode);
         putExternalGzipEncoding(encodingStrategy, DataSeries.FN_NumberOfReadFeatures);
@@ -123,20 +127,20 @@ public class CompressionHeaderEncodingMap {
         putExternalGzipEncoding(encodingStrategy, DataSeries.MQ_MappingQualityScore);
         putExternalGzipEncoding(encodingStrategy, DataSeries.NF_RecordsToNextFragment);
         putExternalGzipEncoding(encodingStrategy, DataSeries.NP_NextFragmentAlignmentStart);
-        putExternalRansOrderOneEncoding(DataSeries.NS_NextFragmentReferenceSequenceID);
+        putExternalRansOrderOneEncoding(encodingStrategy, DataSeries.NS_NextFragmentReferenceSequenceID);
         putExternalGzipEncoding(encodingStrategy, DataSeries.PD_padding);
         // the QQ data series is not used by this implementation when writing CRAMs
-        putExternalRansOrderOneEncoding(DataSeries.QS_QualityScore);
-        putExternalRansOrderOneEncoding(DataSeries.RG_ReadGroup);
-        putExternalRansOrderZeroEncoding(DataSeries.RI_RefId);
-        putExternalRansOrderOneEncoding(DataSeries.RL_ReadLength);
-        putExternalByteArrayStopTabGzipEncoding(encodingStrategy, DataSeries.RN_ReadName);
+        putQualityScoreEncoding(encodingStrategy);
+        putExternalRansOrderOneEncoding(encodingStrategy, DataSeries.RG_ReadGroup);
+        putExternalRansOrderZeroEncoding(encodingStrategy, DataSeries.RI_RefId);
+        putExternalRansOrderOneEncoding(encodingStrategy, DataSeries.RL_ReadLength);
+        putReadNameEncoding(encodingStrategy);
         putExternalGzipEncoding(encodingStrategy, DataSeries.RS_RefSkip);
         putExternalByteArrayStopTabGzipEncoding(encodingStrategy, DataSeries.SC_SoftClip);
         // the TC data series is obsolete
         putExternalGzipEncoding(encodingStrategy, DataSeries.TL_TagIdList);
         // the TN data series is obsolete
-        putExternalRansOrderOneEncoding(DataSeries.TS_InsertSize);
+        putExternalRansOrderOneEncoding(encodingStrategy, DataSeries.TS_InsertSize);
     }
 
     /**
@@ -276,14 +280,10 @@ public class CompressionHeaderEncodingMap {
                 encodingStrategy.getGZIPCompressionLevel());
         final int gzipLen = gzip.compress(data).length;
 
-        final ExternalCompressor rans0 = compressorCache.getCompressorForMethod(
-                BlockCompressionMethod.RANS,
-                RANS.ORDER.ZERO.ordinal());
+        final ExternalCompressor rans0 = getRANSCompressor(encodingStrategy, RANS.ORDER.ZERO);
         final int rans0Len = rans0.compress(data).length;
 
-        final ExternalCompressor rans1 = compressorCache.getCompressorForMethod(
-                BlockCompressionMethod.RANS,
-                RANS.ORDER.ONE.ordinal());
+        final ExternalCompressor rans1 = getRANSCompressor(encodingStrategy, RANS.ORDER.ONE);
         final int rans1Len = rans1.compress(data).length;
 
         // find the best of general purpose codecs:
@@ -376,6 +376,28 @@ public class CompressionHeaderEncodingMap {
                 compressorCache.getCompressorForMethod(BlockCompressionMethod.GZIP, encodingStrategy.getGZIPCompressionLevel()));
     }
 
+    // CRAM 3.1 has a dedicated codec for quality scores
+    private void putQualityScoreEncoding(final CRAMEncodingStrategy encodingStrategy) {
+        if (encodingStrategy.getCRAMVersion().compatibleWith(CramVersions.CRAM_v3_1)) {
+            putExternalEncoding(
+                    DataSeries.QS_QualityScore,
+                    compressorCache.getCompressorForMethod(BlockCompressionMethod.FQZCOMP, ExternalCompressor.NO_COMPRESSION_ARG));
+        } else {
+            putExternalRansOrderOneEncoding(encodingStrategy, DataSeries.QS_QualityScore);
+        }
+    }
+
+    // CRAM 3.1 has a dedicated codec for read names, which requires each name to be NUL terminated
+    private void putReadNameEncoding(final CRAMEncodingStrategy encodingStrategy) {
+        if (encodingStrategy.getCRAMVersion().compatibleWith(CramVersions.CRAM_v3_1)) {
+            putExternalEncoding(DataSeries.RN_ReadName,
+                    new ByteArrayStopEncoding(NameTokeniser.NAME_TERMINATOR, DataSeries.RN_ReadName.getExternalBlockContentId()).toEncodingDescriptor(),
+                    compressorCache.getCompressorForMethod(BlockCompressionMethod.NAME_TOKENISER, NameTokeniserExternalCompressor.USE_RANS));
+        } else {
+            putExternalByteArrayStopTabGzipEncoding(encodingStrategy, DataSeries.RN_ReadName);
+        }
+    }
+
     // add an external encoding appropriate for the dataSeries value type, with a GZIP compressor
     private void putExternalGzipEncoding(final CRAMEncodingStrategy encodingStrategy, final DataSeries dataSeries) {
         putExternalEncoding(
@@ -384,17 +406,23 @@ public class CompressionHeaderEncodingMap {
     }
 
     // add an external encoding appropriate for the dataSeries value type, with a RANS order 1 compressor
-    private void putExternalRansOrderOneEncoding(final DataSeries dataSeries) {
-        putExternalEncoding(
-                dataSeries,
-                compressorCache.getCompressorForMethod(BlockCompressionMethod.RANS, RANS.ORDER.ONE.ordinal()));
+    private void putExternalRansOrderOneEncoding(final CRAMEncodingStrategy encodingStrategy, final DataSeries dataSeries) {
+        putExternalEncoding(dataSeries, getRANSCompressor(encodingStrategy, RANS.ORDER.ONE));
     }
 
     // add an external encoding appropriate for the dataSeries value type, with a RANS order 0 compressor
-    private void putExternalRansOrderZeroEncoding(final DataSeries dataSeries) {
-        putExternalEncoding(
-                dataSeries,
-                compressorCache.getCompressorForMethod(BlockCompressionMethod.RANS, RANS.ORDER.ZERO.ordinal()));
+    private void putExternalRansOrderZeroEncoding(final CRAMEncodingStrategy encodingStrategy, final DataSeries dataSeries) {
+        putExternalEncoding(dataSeries, getRANSCompressor(encodingStrategy, RANS.ORDER.ZERO));
+    }
+
+    // CRAM 3.1 replaces the rANS 4x8 codec with rANS Nx16
+    private ExternalCompressor getRANSCompressor(final CRAMEncodingStrategy encodingStrategy, final RANS.ORDER order) {
+        if (encodingStrategy.getCRAMVersion().compatibleWith(CramVersions.CRAM_v3_1)) {
+            return compressorCache.getCompressorForMethod(
+                    BlockCompressionMethod.RANSNx16,
+                    order == RANS.ORDER.ONE ? RANSNx16.ORDER_FLAG : 0);
+        }
+        return compressorCache.getCompressorForMethod(BlockCompressionMethod.RANS, order.ordinal());
     }
 
     @Override
@@ -26,6 +26,7 @@ package htsjdk.samtools.cram.structure;
 
 import htsjdk.samtools.cram.compression.*;
 import htsjdk.samtools.cram.compression.rans.RANS;
+import htsjdk.samtools.cram.compression.rans.RANSNx16;
 import htsjdk.samtools.cram.structure.block.BlockCompressionMethod;
 import htsjdk.samtools.util.Tuple;
 import htsjdk.utils.ValidationUtils;
@@ -41,6 +42,7 @@ public class CompressorCache {
     private final String argErrorMessage = "Invalid compression arg (%d) requested for CRAM %s compressor";
     private final HashMap<Tuple<BlockCompressionMethod, Integer>, ExternalCompressor> compressorCache = new HashMap<>();
     private RANS sharedRANS;
+    private RANSNx16 sharedRANSNx16;
 
     /**
      * Return a compressor if its in our cache, otherwise spin one up and cache it and return it.
@@ -83,6 +85,25 @@ public class CompressorCache {
                 }
                 return getCachedCompressorForMethod(compressorTuple.a, compressorTuple.b);
 
+            case RANSNx16:
+                // as with RANS, share one RANSNx16 object across all flag combinations
+                final int ransNx16Flags = compressorSpecificArg == ExternalCompressor.NO_COMPRESSION_ARG ?
+                        0 :
+                        compressorSpecificArg;
+                return compressorCache.computeIfAbsent(
+                        new Tuple<>(BlockCompressionMethod.RANSNx16, ransNx16Flags),
+                        k -> {
+                            if (sharedRANSNx16 == null) {
+                                sharedRANSNx16 = new RANSNx16();
+                            }
+                            return new RANSNx16ExternalCompressor(ransNx16Flags, sharedRANSNx16);
+                        });
+
+            case ADAPTIVE_ARITHMETIC:
+            case FQZCOMP:
+            case NAME_TOKENISER:
+                return getCachedCompressorForMethod(compressionMethod, compressorSpecificArg);
+
             default:
                 throw new IllegalArgumentException(String.format("Unknown compression method %s", compressionMethod));
         }
@@ -49,7 +49,7 @@ public class Container {
     private final List<Slice> slices;
 
     // container's byte offset from the start of the containing stream, used for indexing
-    private final long containerByteOffset;
+    private long containerByteOffset;
 
     /**
      * Create a Container with a {@link ReferenceContext} derived from its {@link Slice}s.
@@ -335,6 +335,19 @@ public class Container {
     public CompressionHeader getCompressionHeader() { return compressionHeader; }
     public AlignmentContext getAlignmentContext() { return containerHeader.getAlignmentContext(); }
     public long getContainerByteOffset() { return containerByteOffset; }
+
+    /**
+     * Set the byte offset of this Container, and of its Slices, from the start of the containing stream. Used
+     * when a Container is built before its position in the output stream is known.
+     *
+     * @param containerByteOffset the Container's byte offset from the start of the stream
+     */
+    public void setContainerByteOffset(final long containerByteOffset) {
+        this.containerByteOffset = containerByteOffset;
+        for (final Slice slice : slices) {
+            slice.setByteOffsetOfContainer(containerByteOffset);
+        }
+    }
     public List<Slice> getSlices() { return slices; }
     public boolean isEOF() {
         return containerHeader.isEOF() && (getSlices() == null || getSlices().size() == 0);
@@ -78,7 +78,7 @@ public class Slice {
 
     private final CompressionHeader compressionHeader;
     private final SliceBlocks sliceBlocks;
-    private final long byteOffsetOfContainer;
+    private long byteOffsetOfContainer;
 
     private Block sliceHeaderBlock;
 
@@ -273,6 +273,19 @@ public class Slice {
     }
     public byte[] getReferenceMD5() { return referenceMD5; }
 
+    /**
+     * The stream byte offset of the start of the Container in which this Slice resides
+     *
+     * Used by BAI and CRAI indexing
+     */
+    public long getByteOffsetOfContainer() {
+        return byteOffsetOfContainer;
+    }
+
+    public void setByteOffsetOfContainer(final long byteOffsetOfContainer) {
+        this.byteOffsetOfContainer = byteOffsetOfContainer;
+    }
+
     /**
      * The Slice's offset in bytes from the beginning of the Container's Compression Header
      * (or the end of the Container Header), equal to {@link ContainerHeader#getLandmarks()}
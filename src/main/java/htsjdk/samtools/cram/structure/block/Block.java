@@ -274,6 +274,7 @@ public class Block {
 
         try {
             final BlockCompressionMethod compressionMethod = BlockCompressionMethod.byId(inputStream.read());
+            compressionMethod.validateForCRAMVersion(cramVersion);
             final BlockContentType contentType = BlockContentType.byId(inputStream.read());
             final int contentId = ITF8.readUnsignedITF8(inputStream);
             final int compressedSize = ITF8.readUnsignedITF8(inputStream);
@@ -304,6 +305,7 @@ public class Block {
      * @param outputStream output stream to write to
      */
     public final void write(final CRAMVersion cramVersion, final OutputStream outputStream) {
+        compressionMethod.validateForCRAMVersion(cramVersion);
         try {
             if (cramVersion.getMajor() >= CramVersions.CRAM_v3.getMajor()) {
                 final CRC32OutputStream crc32OutputStream = new CRC32OutputStream(outputStream);
@@ -18,6 +18,8 @@
 package htsjdk.samtools.cram.structure.block;
 
 import htsjdk.samtools.cram.CRAMException;
+import htsjdk.samtools.cram.common.CRAMVersion;
+import htsjdk.samtools.cram.common.CramVersions;
 
 import java.util.*;
 import java.util.function.Function;
@@ -28,20 +30,29 @@ import java.util.stream.Stream;
  * The block compression methods specified by Section 8 of the CRAM spec.
  */
 public enum BlockCompressionMethod {
-    RAW(0),
-    GZIP(1),
-    BZIP2(2),
-    LZMA(3),
-    RANS(4);
+    // accepted in every CRAM version htsjdk supports
+    RAW(0, CramVersions.CRAM_v2_1),
+    GZIP(1, CramVersions.CRAM_v2_1),
+    BZIP2(2, CramVersions.CRAM_v2_1),
+    LZMA(3, CramVersions.CRAM_v2_1),
+    RANS(4, CramVersions.CRAM_v2_1),
+    // CRAM 3.1 codecs
+    RANSNx16(5, CramVersions.CRAM_v3_1),
+    ADAPTIVE_ARITHMETIC(6, CramVersions.CRAM_v3_1),
+    FQZCOMP(7, CramVersions.CRAM_v3_1),
+    NAME_TOKENISER(8, CramVersions.CRAM_v3_1);
 
     private final int methodId;
+    private final CRAMVersion minimumCRAMVersion;
 
     /**
      * The block compression methods specified by Section 8 of the CRAM spec
      * @param id the number assigned to each block compression method in the CRAM spec
+     * @param minimumCRAMVersion the first CRAM version in which the method may be used
      */
-    BlockCompressionMethod(final int id) {
+    BlockCompressionMethod(final int id, final CRAMVersion minimumCRAMVersion) {
         methodId = id;
+        this.minimumCRAMVersion = minimumCRAMVersion;
     }
 
     /**
@@ -51,6 +62,20 @@ public enum BlockCompressionMethod {
         return methodId;
     }
 
+    /**
+     * Throw if this method can't be used in a block of a container of the given CRAM version.
+     *
+     * @param cramVersion the CRAM version of the container the block belongs to
+     * @throws CRAMException if the method was introduced in a later CRAM version
+     */
+    public void validateForCRAMVersion(final CRAMVersion cramVersion) {
+        if (!cramVersion.compatibleWith(minimumCRAMVersion)) {
+            throw new CRAMException(String.format(
+                    "Block compression method %s requires CRAM %s or later, but is used in CRAM %s",
+                    this, minimumCRAMVersion, cramVersion));
+        }
+    }
+
     /**
      * Return the BlockCompressionMethod specified by the ID
      *
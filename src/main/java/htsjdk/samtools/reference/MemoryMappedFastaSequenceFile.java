@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.reference;
+
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.util.IOUtil;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An indexed, uncompressed fasta file that is memory-mapped rather than read through a channel. Bases are copied
+ * directly from the mapped file one line at a time, using the line geometry recorded in the {@link FastaSequenceIndex}
+ * to skip line terminators, so lookups of short regions are cheap.
+ *
+ * {@link #getSequence(String)}, {@link #getSubsequenceAt(String, long, long)} and
+ * {@link #copyBases(String, long, long, byte[], int)} don't depend on any reader state, so they may be called
+ * concurrently by any number of threads sharing one instance. The iteration methods {@link #nextSequence()} and
+ * {@link #reset()} are not thread-safe.
+ */
+public class MemoryMappedFastaSequenceFile extends AbstractIndexedFastaSequenceFile {
+    // files larger than this are mapped as several consecutive segments
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private final MappedByteBuffer[] segments;
+    private final long fileSize;
+
+    /**
+     * Open and map the given indexed fasta file.
+     * @param path The file to open.
+     * @throws FileNotFoundException If the fasta or its index cannot be found.
+     */
+    public MemoryMappedFastaSequenceFile(final Path path) throws FileNotFoundException {
+        this(path, new FastaSequenceIndex(findRequiredFastaIndexFile(path)));
+    }
+
+    /**
+     * Open and map the given indexed fasta file.
+     * @param path The file to open.
+     * @param index Pre-built FastaSequenceIndex, for the case in which one does not exist on disk.
+     */
+    public MemoryMappedFastaSequenceFile(final Path path, final FastaSequenceIndex index) {
+        super(path, index);
+        try {
+            if (IOUtil.isBlockCompressed(path, true)) {
+                throw new SAMException("Block-compressed FASTA file cannot be memory-mapped: " + path);
+            }
+            try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                fileSize = channel.size();
+                segments = new MappedByteBuffer[(int) ((fileSize + MAX_SEGMENT_SIZE - 1) / MAX_SEGMENT_SIZE)];
+                for (int i = 0; i < segments.length; i++) {
+                    final long segmentStart = i * MAX_SEGMENT_SIZE;
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, Math.min(MAX_SEGMENT_SIZE, fileSize - segmentStart));
+                }
+            }
+        } catch (final IOException | UnsupportedOperationException e) {
+            throw new SAMException("FASTA file should be readable and mappable but is not: " + path, e);
+        }
+    }
+
+    /**
+     * Gets the subsequence of the contig in the range [start,stop].
+     * @param contig Contig whose subsequence to retrieve.
+     * @param start inclusive, 1-based start of region.
+     * @param stop inclusive, 1-based stop of region.
+     * @return The partial reference sequence associated with this range.
+     */
+    @Override
+    public ReferenceSequence getSubsequenceAt(final String contig, final long start, final long stop) {
+        final FastaSequenceIndexEntry indexEntry = getIndex().getIndexEntry(contig);
+        final byte[] bases = new byte[checkRegion(indexEntry, start, stop)];
+        copyBases(indexEntry, start, bases.length, bases, 0);
+        return new ReferenceSequence(contig, indexEntry.getSequenceIndex(), bases);
+    }
+
+    /**
+     * Copy the bases of the contig in the range [start,stop] into an existing array, avoiding an allocation for
+     * each lookup.
+     * @param contig Contig whose bases to copy.
+     * @param start inclusive, 1-based start of region.
+     * @param stop inclusive, 1-based stop of region.
+     * @param destination the array into which to copy the bases
+     * @param destinationOffset the offset in destination of the first base
+     * @return the number of bases copied
+     */
+    public int copyBases(final String contig, final long start, final long stop, final byte[] destination, final int destinationOffset) {
+        final FastaSequenceIndexEntry indexEntry = getIndex().getIndexEntry(contig);
+        final int length = checkRegion(indexEntry, start, stop);
+        if (destinationOffset < 0 || destinationOffset > destination.length - length) {
+            throw new IllegalArgumentException(String.format(
+                    "%d bases don't fit at offset %d of an array of length %d", length, destinationOffset, destination.length));
+        }
+        copyBases(indexEntry, start, length, destination, destinationOffset);
+        return length;
+    }
+
+    private static int checkRegion(final FastaSequenceIndexEntry indexEntry, final long start, final long stop) {
+        if (start > stop + 1) {
+            throw new SAMException(String.format("Malformed query; start point %d lies after end point %d", start, stop));
+        }
+        if (start < 1) {
+            throw new SAMException(String.format("Malformed query; start point %d is before the start of the contig", start));
+        }
+        if (stop > indexEntry.getSize()) {
+            throw new SAMException("Query asks for data past end of contig");
+        }
+        return (int) (stop - start + 1);
+    }
+
+    // copy the bases starting at 1-based start, one line at a time
+    private void copyBases(
+            final FastaSequenceIndexEntry indexEntry,
+            final long start,
+            final int length,
+            final byte[] destination,
+            final int destinationOffset) {
+        final int basesPerLine = indexEntry.getBasesPerLine();
+        final int bytesPerLine = indexEntry.getBytesPerLine();
+        long positionInContig = start - 1;
+        int copied = 0;
+        while (copied < length) {
+            final int positionInLine = (int) (positionInContig % basesPerLine);
+            final long fileOffset = indexEntry.getLocation() + (positionInContig / basesPerLine) * bytesPerLine + positionInLine;
+            final int count = Math.min(basesPerLine - positionInLine, length - copied);
+            copyFromFile(fileOffset, destination, destinationOffset + copied, count);
+            copied += count;
+            positionInContig += count;
+        }
+    }
+
+    @Override
+    protected int readFromPosition(final ByteBuffer buffer, final long position) throws IOException {
+        if (position >= fileSize) {
+            return -1;
+        }
+        final int length = (int) Math.min(buffer.remaining(), fileSize - position);
+        final byte[] bytes = new byte[length];
+        copyFromFile(position, bytes, 0, length);
+        buffer.put(bytes);
+        return length;
+    }
+
+    // copy bytes from the mapped file, which may span a segment boundary
+    private void copyFromFile(long position, final byte[] destination, int destinationOffset, int length) {
+        while (length > 0) {
+            final int segmentIndex = (int) (position / MAX_SEGMENT_SIZE);
+            final int segmentOffset = (int) (position % MAX_SEGMENT_SIZE);
+            // duplicate, since the position of the shared buffer can't be used by concurrent callers
+            final ByteBuffer segment = segments[segmentIndex].duplicate();
+            final int count = Math.min(length, segment.limit() - segmentOffset);
+            segment.position(segmentOffset);
+            segment.get(destination, destinationOffset, count);
+            position += count;
+            destinationOffset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * The file channel is closed as soon as the file has been mapped, and the mapping is released when this object is
+     * garbage collected, so there is nothing to close.
+     */
+    @Override
+    public void close() {
+    }
+}
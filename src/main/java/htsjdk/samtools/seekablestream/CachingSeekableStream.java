@@ -0,0 +1,539 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.seekablestream;
+
+import htsjdk.samtools.util.RuntimeIOException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A {@link SeekableStream} that reads the wrapped stream in large, aligned blocks and keeps the most recently used
+ * blocks in memory, so that the many small reads and seeks made by BAM, CRAM and index readers turn into a few
+ * large requests.  This is mostly useful for remote streams such as {@link SeekableHTTPStream} or a
+ * {@link SeekablePathStream} on a cloud file system, where each request has a high fixed cost.
+ *
+ * <p>When blocks are read in order, the stream reads ahead an increasing number of blocks (doubling up to
+ * {@code maxReadAheadBlocks}) on a shared pool of daemon threads, and stops reading ahead as soon as the reader
+ * jumps elsewhere.  Callers that know which range they will read next, e.g. the chunks of an index query, can
+ * fetch it concurrently with {@link #prefetch(long, long)}.  Blocks that fail to prefetch are read again on the
+ * reading thread, so that the error, if any, is reported to the caller.
+ *
+ * <p>When the stream is constructed from a {@link Supplier} of streams, up to {@code fetchStreams} streams are
+ * opened over the source and blocks are fetched over them concurrently; a stream constructed from a single
+ * {@link SeekableStream} fetches one block at a time.  As with other streams, an instance should only be used by
+ * one thread at a time.  {@link #getStatistics()} reports how well the cache is working.
+ */
+public class CachingSeekableStream extends SeekableStream {
+
+    /** Default size of a cached block, 1MB. */
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    /** Default number of blocks kept in memory. */
+    public static final int DEFAULT_MAX_CACHED_BLOCKS = 64;
+
+    /** Default maximum number of blocks read ahead of a sequential reader. */
+    public static final int DEFAULT_MAX_READ_AHEAD_BLOCKS = 8;
+
+    /** Default number of streams opened over the source when blocks can be fetched concurrently. */
+    public static final int DEFAULT_FETCH_STREAMS = 4;
+
+    // fetching is I/O bound, so the pool grows with the number of outstanding fetches
+    private static final ExecutorService prefetchPool = Executors.newCachedThreadPool(r -> {
+        final Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setName("CachingSeekableStream-" + t.getName());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final byte[] EMPTY_BLOCK = new byte[0];
+
+    private final Supplier<SeekableStream> streamSupplier;
+    private final String source;
+    private final long length;
+    private final int blockSize;
+    private final int maxCachedBlocks;
+    private final int maxReadAheadBlocks;
+    private final int maxStreams;
+
+    // streams over the source that are not currently fetching a block, and every stream opened so far
+    private final BlockingQueue<SeekableStream> idleStreams = new LinkedBlockingQueue<>();
+    private final List<SeekableStream> openedStreams = new ArrayList<>();
+
+    // blocks by index, in access order; guarded by itself
+    private final LinkedHashMap<Long, FutureTask<byte[]>> cache;
+
+    private long position = 0;
+    private long currentBlockIndex = -1;
+    private byte[] currentBlock = null;
+    private long lastBlockIndex = -1;
+    private int readAheadBlocks = 0;
+    private volatile boolean closed = false;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long prefetchedBlocks = 0;
+    private long evictions = 0;
+    private final AtomicLong bytesFetched = new AtomicLong();
+
+    /**
+     * Cache the given stream using the default block size, cache size and read-ahead.
+     */
+    public CachingSeekableStream(final SeekableStream stream) {
+        this(stream, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_CACHED_BLOCKS);
+    }
+
+    /**
+     * Cache the given stream, holding at most {@code maxCachedBlocks} blocks of {@code blockSize} bytes in memory.
+     */
+    public CachingSeekableStream(final SeekableStream stream, final int blockSize, final int maxCachedBlocks) {
+        this(null, stream, blockSize, maxCachedBlocks, Math.min(DEFAULT_MAX_READ_AHEAD_BLOCKS, maxCachedBlocks - 1), 1);
+    }
+
+    /**
+     * Cache a source that can be opened repeatedly by {@code streamSupplier}, using the default block size, cache
+     * size and read-ahead, and fetching blocks over up to {@link #DEFAULT_FETCH_STREAMS} streams concurrently.
+     */
+    public CachingSeekableStream(final Supplier<SeekableStream> streamSupplier) {
+        this(streamSupplier, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_CACHED_BLOCKS, DEFAULT_MAX_READ_AHEAD_BLOCKS, DEFAULT_FETCH_STREAMS);
+    }
+
+    /**
+     * Cache a source that can be opened repeatedly by {@code streamSupplier}.
+     *
+     * @param streamSupplier supplies new, independent streams over the source
+     * @param blockSize size in bytes of each cached block
+     * @param maxCachedBlocks number of blocks held in memory, least recently used blocks are evicted first
+     * @param maxReadAheadBlocks maximum number of blocks read ahead of a sequential reader, 0 to disable read-ahead;
+     *                           must be less than {@code maxCachedBlocks}
+     * @param fetchStreams maximum number of streams opened over the source to fetch blocks concurrently
+     */
+    public CachingSeekableStream(final Supplier<SeekableStream> streamSupplier, final int blockSize, final int maxCachedBlocks,
+                                 final int maxReadAheadBlocks, final int fetchStreams) {
+        this(streamSupplier, streamSupplier.get(), blockSize, maxCachedBlocks, maxReadAheadBlocks, fetchStreams);
+    }
+
+    private CachingSeekableStream(final Supplier<SeekableStream> streamSupplier, final SeekableStream stream, final int blockSize,
+                                  final int maxCachedBlocks, final int maxReadAheadBlocks, final int fetchStreams) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        if (maxCachedBlocks <= 0) {
+            throw new IllegalArgumentException("Number of cached blocks must be positive: " + maxCachedBlocks);
+        }
+        if (maxReadAheadBlocks < 0 || maxReadAheadBlocks >= maxCachedBlocks) {
+            throw new IllegalArgumentException(String.format(
+                    "Read-ahead must be between 0 and %d blocks: %d", maxCachedBlocks - 1, maxReadAheadBlocks));
+        }
+        if (fetchStreams <= 0) {
+            throw new IllegalArgumentException("Number of fetch streams must be positive: " + fetchStreams);
+        }
+        this.streamSupplier = streamSupplier;
+        this.source = stream.getSource();
+        this.length = stream.length();
+        this.blockSize = blockSize;
+        this.maxCachedBlocks = maxCachedBlocks;
+        this.maxReadAheadBlocks = maxReadAheadBlocks;
+        this.maxStreams = streamSupplier == null ? 1 : fetchStreams;
+        this.openedStreams.add(stream);
+        this.idleStreams.add(stream);
+        this.cache = new LinkedHashMap<Long, FutureTask<byte[]>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, FutureTask<byte[]>> eldest) {
+                if (size() > CachingSeekableStream.this.maxCachedBlocks) {
+                    // a block that is still being fetched finishes, but is dropped; one that has not started never runs
+                    eldest.getValue().cancel(false);
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** @return the size in bytes of each cached block */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Start fetching the blocks that overlap the byte range [start, end) in the background, so that later reads of
+     * the range are served from memory.  At most as many blocks as the cache holds are fetched.
+     */
+    public void prefetch(final long start, final long end) {
+        if (closed || end <= start) {
+            return;
+        }
+        final long first = Math.max(0, start) / blockSize;
+        long last = (end - 1) / blockSize;
+        if (length > 0) {
+            last = Math.min(last, (length - 1) / blockSize);
+        }
+        last = Math.min(last, first + maxCachedBlocks - 1);
+        for (long index = first; index <= last; index++) {
+            prefetchBlock(index);
+        }
+    }
+
+    /** @return a snapshot of the hit, miss, prefetch and eviction counts of this stream */
+    public Statistics getStatistics() {
+        synchronized (cache) {
+            return new Statistics(hits, misses, prefetchedBlocks, evictions, bytesFetched.get());
+        }
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public void seek(final long position) throws IOException {
+        if (position < 0) {
+            throw new IOException("Cannot seek to a negative position: " + position);
+        }
+        this.position = position;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        final long skipped = length > 0 ? Math.max(0, Math.min(n, length - position)) : n;
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] block = blockAt(position);
+        final int offset = (int) (position % blockSize);
+        if (offset >= block.length) {
+            return -1;
+        }
+        position++;
+        return block[offset] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        if (offset < 0 || length < 0 || length > buffer.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (length == 0) {
+            return 0;
+        }
+        int total = 0;
+        while (total < length) {
+            final byte[] block = blockAt(position);
+            final int blockOffset = (int) (position % blockSize);
+            if (blockOffset >= block.length) {
+                break;
+            }
+            final int n = Math.min(length - total, block.length - blockOffset);
+            System.arraycopy(block, blockOffset, buffer, offset + total, n);
+            position += n;
+            total += n;
+        }
+        return total == 0 ? -1 : total;
+    }
+
+    @Override
+    public boolean eof() throws IOException {
+        if (length > 0) {
+            return position >= length;
+        }
+        return position % blockSize >= blockAt(position).length;
+    }
+
+    @Override
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        synchronized (cache) {
+            cache.values().forEach(f -> f.cancel(false));
+            cache.clear();
+        }
+        currentBlock = null;
+        IOException exception = null;
+        synchronized (openedStreams) {
+            for (final SeekableStream stream : openedStreams) {
+                try {
+                    stream.close();
+                } catch (final IOException e) {
+                    if (exception == null) {
+                        exception = e;
+                    }
+                }
+            }
+            openedStreams.clear();
+        }
+        idleStreams.clear();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /** @return the block containing {@code position}, which is shorter than the block size at the end of the stream */
+    private byte[] blockAt(final long position) throws IOException {
+        if (length > 0 && position >= length) {
+            return EMPTY_BLOCK;
+        }
+        final long index = position / blockSize;
+        if (index != currentBlockIndex) {
+            if (closed) {
+                throw new IOException("Stream is closed: " + source);
+            }
+            currentBlock = getBlock(index);
+            currentBlockIndex = index;
+            readAhead(index);
+        }
+        return currentBlock;
+    }
+
+    private byte[] getBlock(final long index) throws IOException {
+        FutureTask<byte[]> task;
+        boolean fetchHere = false;
+        synchronized (cache) {
+            task = cache.get(index);
+            if (task == null) {
+                misses++;
+                task = newFetchTask(index);
+                cache.put(index, task);
+                fetchHere = true;
+            } else {
+                hits++;
+            }
+        }
+        while (true) {
+            if (fetchHere) {
+                task.run();
+            }
+            try {
+                return task.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading block " + index + " of " + source);
+            } catch (final ExecutionException e) {
+                if (fetchHere) {
+                    synchronized (cache) {
+                        cache.remove(index, task);
+                    }
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new RuntimeIOException(cause);
+                }
+            } catch (final CancellationException e) {
+                // the block was evicted before it was fetched, so fetch it again below
+            }
+            if (closed) {
+                throw new IOException("Stream is closed: " + source);
+            }
+            // a prefetch failed or was evicted before it ran, so fetch the block again on this thread
+            final FutureTask<byte[]> failed = task;
+            task = newFetchTask(index);
+            synchronized (cache) {
+                if (!cache.replace(index, failed, task)) {
+                    cache.put(index, task);
+                }
+            }
+            fetchHere = true;
+        }
+    }
+
+    /**
+     * Read ahead of a sequential reader, doubling the number of blocks read ahead on each sequential block, and
+     * stopping as soon as the reader moves to a block that is not the next one.
+     */
+    private void readAhead(final long index) {
+        if (index == lastBlockIndex + 1) {
+            readAheadBlocks = Math.min(maxReadAheadBlocks, Math.max(1, readAheadBlocks * 2));
+        } else if (index != lastBlockIndex) {
+            readAheadBlocks = 0;
+        }
+        lastBlockIndex = index;
+        final long lastBlock = length > 0 ? (length - 1) / blockSize : Long.MAX_VALUE;
+        for (long next = index + 1; next <= index + readAheadBlocks && next <= lastBlock; next++) {
+            prefetchBlock(next);
+        }
+    }
+
+    private void prefetchBlock(final long index) {
+        final FutureTask<byte[]> task;
+        synchronized (cache) {
+            if (cache.containsKey(index)) {
+                return;
+            }
+            task = newFetchTask(index);
+            cache.put(index, task);
+            prefetchedBlocks++;
+        }
+        prefetchPool.execute(task);
+    }
+
+    private FutureTask<byte[]> newFetchTask(final long index) {
+        return new FutureTask<>(() -> fetchBlock(index));
+    }
+
+    /** Read block {@code index} from one of the streams over the source, opening a new one if allowed. */
+    private byte[] fetchBlock(final long index) throws IOException, InterruptedException {
+        final SeekableStream stream = acquireStream();
+        try {
+            final long start = index * blockSize;
+            final int size = length > 0 ? (int) Math.max(0, Math.min(blockSize, length - start)) : blockSize;
+            final byte[] block = new byte[size];
+            int n = 0;
+            if (size > 0) {
+                stream.seek(start);
+                while (n < size) {
+                    final int count = stream.read(block, n, size - n);
+                    if (count < 0) {
+                        break;
+                    }
+                    n += count;
+                }
+            }
+            bytesFetched.addAndGet(n);
+            if (n < size) {
+                final byte[] truncated = new byte[n];
+                System.arraycopy(block, 0, truncated, 0, n);
+                return truncated;
+            }
+            return block;
+        } finally {
+            idleStreams.add(stream);
+        }
+    }
+
+    private SeekableStream acquireStream() throws IOException, InterruptedException {
+        SeekableStream stream = idleStreams.poll();
+        if (stream == null && streamSupplier != null) {
+            synchronized (openedStreams) {
+                if (!closed && openedStreams.size() < maxStreams) {
+                    stream = streamSupplier.get();
+                    openedStreams.add(stream);
+                }
+            }
+        }
+        while (stream == null && !closed) {
+            stream = idleStreams.poll(100, TimeUnit.MILLISECONDS);
+        }
+        if (closed) {
+            throw new IOException("Stream is closed: " + source);
+        }
+        return stream;
+    }
+
+    /**
+     * Counts of how blocks of a {@link CachingSeekableStream} were found.  A hit is a block that was already cached
+     * or being prefetched when the reader reached it, and a miss is a block that had to be fetched on the reading
+     * thread.
+     */
+    public static final class Statistics {
+        private final long hits;
+        private final long misses;
+        private final long prefetchedBlocks;
+        private final long evictions;
+        private final long bytesFetched;
+
+        Statistics(final long hits, final long misses, final long prefetchedBlocks, final long evictions, final long bytesFetched) {
+            this.hits = hits;
+            this.misses = misses;
+            this.prefetchedBlocks = prefetchedBlocks;
+            this.evictions = evictions;
+            this.bytesFetched = bytesFetched;
+        }
+
+        /** @return the number of blocks that were found in the cache */
+        public long getHits() {
+            return hits;
+        }
+
+        /** @return the number of blocks that were fetched on the reading thread */
+        public long getMisses() {
+            return misses;
+        }
+
+        /** @return the number of blocks fetched in the background by read-ahead or {@link #prefetch(long, long)} */
+        public long getPrefetchedBlocks() {
+            return prefetchedBlocks;
+        }
+
+        /** @return the number of blocks evicted from the cache to make room for others */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /** @return the number of bytes read from the source */
+        public long getBytesFetched() {
+            return bytesFetched;
+        }
+
+        /** @return the fraction of block lookups that were found in the cache, or 0 if no blocks were read */
+        public double getHitRate() {
+            final long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d, misses=%d, hitRate=%.3f, prefetchedBlocks=%d, evictions=%d, bytesFetched=%d",
+                    hits, misses, getHitRate(), prefetchedBlocks, evictions, bytesFetched);
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package htsjdk.samtools.seekablestream;
 
+import htsjdk.samtools.util.RuntimeIOException;
+
 import java.io.IOException;
 import java.net.URL;
 import java.nio.channels.SeekableByteChannel;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Factory for creating {@link SeekableStream}s based on URLs/paths.
@@ -52,4 +55,38 @@ public interface ISeekableStreamFactory {
             return this.getStreamFor(path);
         }
     }
+
+    /**
+     * Return a {@code SeekableStream} which wraps the input {@code stream} in a {@link CachingSeekableStream}, using
+     * the default block size, cache size and read-ahead
+     * @param stream
+     * @return
+     */
+    default SeekableStream getCachingStream(SeekableStream stream) {
+        return new CachingSeekableStream(stream);
+    }
+
+    /**
+     * Return a {@link CachingSeekableStream} over the resource at {@code path}, which opens several streams for the
+     * path so that blocks can be read ahead and prefetched concurrently
+     * @param path a uri like String representing a resource to open
+     * @return
+     */
+    default SeekableStream getCachingStreamFor(String path) throws IOException {
+        final Supplier<SeekableStream> streamSupplier = () -> {
+            try {
+                return getStreamFor(path);
+            } catch (final IOException e) {
+                throw new RuntimeIOException(e);
+            }
+        };
+        try {
+            return new CachingSeekableStream(streamSupplier);
+        } catch (final RuntimeIOException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
 }
@@ -69,6 +69,8 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
     private int mCurrentOffset = 0;
     private long mStreamOffset = 0;
     private final BlockGunzipper blockGunzipper;
+    private final InflaterFactory inflaterFactory;
+    private boolean checkCrcs = false;
 
     /**
      * Note that seek() is not supported if this ctor is used.
@@ -112,6 +114,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
 
         mFile = null;
         blockGunzipper = new BlockGunzipper(inflaterFactory);
+        this.inflaterFactory = inflaterFactory;
     }
 
     /**
@@ -133,6 +136,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         mFile = new SeekableFileStream(file);
         mStream = null;
         blockGunzipper = new BlockGunzipper(inflaterFactory);
+        this.inflaterFactory = inflaterFactory;
     }
 
     /**
@@ -150,6 +154,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         mFile = new SeekableBufferedStream(new SeekableHTTPStream(url));
         mStream = null;
         blockGunzipper = new BlockGunzipper(inflaterFactory);
+        this.inflaterFactory = inflaterFactory;
     }
 
     /**
@@ -173,6 +178,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         mFile = strm;
         mStream = null;
         blockGunzipper = new BlockGunzipper(inflaterFactory);
+        this.inflaterFactory = inflaterFactory;
     }
 
     /**
@@ -181,9 +187,20 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
      * operation and should be used accordingly.
      */
     public void setCheckCrcs(final boolean check) {
+        this.checkCrcs = check;
         this.blockGunzipper.setCheckCrcs(check);
     }
 
+    /**
+     * Creates an additional {@link BlockGunzipper} configured like the one used by this stream, for subclasses
+     * that inflate blocks on more than one thread.
+     */
+    protected BlockGunzipper makeBlockGunzipper() {
+        final BlockGunzipper gunzipper = new BlockGunzipper(inflaterFactory);
+        gunzipper.setCheckCrcs(checkCrcs);
+        return gunzipper;
+    }
+
     /**
      * @return the number of bytes that can be read (or skipped over) from this input stream without blocking by the
      * next caller of a method for this input stream. The next caller might be the same thread or another thread.
@@ -505,9 +522,31 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         if (mFileBuffer == null) {
             mFileBuffer = new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE];
         }
-        long blockAddress = mStreamOffset;
+        final long blockAddress = mStreamOffset;
+        final DecompressedBlock unreadable = readCompressedBlock(mFileBuffer);
+        if (unreadable != null) {
+            return unreadable;
+        }
+        return inflateBlock(blockAddress, mFileBuffer, bufferAvailableForReuse, blockGunzipper);
+    }
+
+    /**
+     * @return offset in the compressed stream of the next block that {@link #readCompressedBlock(byte[])} will read
+     */
+    protected long getCompressedStreamOffset() {
+        return mStreamOffset;
+    }
+
+    /**
+     * Reads the next block from the input stream into compressedBuffer without inflating it.
+     * @param compressedBuffer buffer of at least {@link BlockCompressedStreamConstants#MAX_COMPRESSED_BLOCK_SIZE} bytes
+     * @return null if a complete compressed block was read, otherwise the (empty or failed) block that should be
+     * returned in its place
+     */
+    protected DecompressedBlock readCompressedBlock(final byte[] compressedBuffer) {
+        final long blockAddress = mStreamOffset;
         try {
-            final int headerByteCount = readBytes(mFileBuffer, 0, BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH);
+            final int headerByteCount = readBytes(compressedBuffer, 0, BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH);
             mStreamOffset += headerByteCount;
             if (headerByteCount == 0) {
                 // Handle case where there is no empty gzip block at end.
@@ -516,20 +555,40 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
             if (headerByteCount != BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH) {
                 return new DecompressedBlock(blockAddress, headerByteCount, new IOException(INCORRECT_HEADER_SIZE_MSG + getSource()));
             }
-            final int blockLength = unpackInt16(mFileBuffer, BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET) + 1;
-            if (blockLength < BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH || blockLength > mFileBuffer.length) {
+            final int blockLength = unpackInt16(compressedBuffer, BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET) + 1;
+            if (blockLength < BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH || blockLength > compressedBuffer.length) {
                 return new DecompressedBlock(blockAddress, blockLength,
                         new IOException(UNEXPECTED_BLOCK_LENGTH_MSG + blockLength + " for " + getSource()));
             }
             final int remaining = blockLength - BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH;
-            final int dataByteCount = readBytes(mFileBuffer, BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH,
+            final int dataByteCount = readBytes(compressedBuffer, BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH,
                     remaining);
             mStreamOffset += dataByteCount;
             if (dataByteCount != remaining) {
                 return new DecompressedBlock(blockAddress, blockLength,
                         new FileTruncatedException(PREMATURE_END_MSG + getSource()));
             }
-            final byte[] decompressed = inflateBlock(mFileBuffer, blockLength, bufferAvailableForReuse);
+            return null;
+        } catch (IOException e) {
+            return new DecompressedBlock(blockAddress, 0, e);
+        }
+    }
+
+    /**
+     * Inflates a compressed block previously read by {@link #readCompressedBlock(byte[])}.  This method does not
+     * touch the state of the stream, so it may be called from any thread as long as each thread uses its own
+     * gunzipper (see {@link #makeBlockGunzipper()}).
+     * @param blockAddress stream offset of the start of the block
+     * @param compressedBlock complete compressed block, starting at offset 0
+     * @param bufferAvailableForReuse buffer in which to place the decompressed block, may be null
+     * @param gunzipper gunzipper to inflate with
+     * @return the decompressed block
+     */
+    protected DecompressedBlock inflateBlock(final long blockAddress, final byte[] compressedBlock,
+                                             final byte[] bufferAvailableForReuse, final BlockGunzipper gunzipper) {
+        final int blockLength = unpackInt16(compressedBlock, BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET) + 1;
+        try {
+            final byte[] decompressed = inflateBlock(compressedBlock, blockLength, bufferAvailableForReuse, gunzipper);
             return new DecompressedBlock(blockAddress, decompressed, blockLength);
         } catch (IOException e) {
             return new DecompressedBlock(blockAddress, 0, e);
@@ -537,7 +596,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
     }
 
     private byte[] inflateBlock(final byte[] compressedBlock, final int compressedLength,
-            final byte[] bufferAvailableForReuse) throws IOException {
+            final byte[] bufferAvailableForReuse, final BlockGunzipper gunzipper) throws IOException {
         final int uncompressedLength = unpackInt32(compressedBlock, compressedLength - 4);
         if (uncompressedLength < 0) {
             throw new RuntimeIOException(getSource() + " has invalid uncompressedLength: " + uncompressedLength);
@@ -547,7 +606,7 @@ public class BlockCompressedInputStream extends InputStream implements LocationA
         	// can't reuse the buffer since the size is incorrect
             buffer = new byte[uncompressedLength];
         }
-        blockGunzipper.unzipBlock(buffer, compressedBlock, compressedLength);
+        gunzipper.unzipBlock(buffer, compressedBlock, compressedLength);
         return buffer;
     }
 
@@ -23,6 +23,8 @@
  */
 package htsjdk.samtools.util;
 
+import htsjdk.samtools.Defaults;
+import htsjdk.samtools.util.zip.BlockCompressor;
 import htsjdk.samtools.util.zip.DeflaterFactory;
 
 import java.io.File;
@@ -30,7 +32,12 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.zip.CRC32;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.zip.Deflater;
 
 /**
@@ -46,6 +53,14 @@ import java.util.zip.Deflater;
  * number of buffered bytes has not reached threshold.  close(), on the other hand, must be called
  * when done writing in order to force the last gzip block to be written.
  *
+ * If the number of compression threads is greater than zero (see {@link #setDefaultCompressionThreads(int)}),
+ * full blocks are deflated on a shared pool of worker threads while the caller continues to fill the next block.
+ * Compressed blocks are always written in the order in which they were filled, so the output is byte-for-byte
+ * identical to the single-threaded output.  Because the address of a block is only known once all of the
+ * preceding blocks have been compressed, {@link #getFilePointer()} waits for any outstanding blocks.  Callers that
+ * need a pointer for every record, such as indexers, should instead use {@link #getDeferredFilePointer()} and
+ * resolve it with {@link #resolveFilePointer(long)} once {@link #isFilePointerResolvable(long)} returns true.
+ *
  * c.f. http://samtools.sourceforge.net/SAM1.pdf for details of BGZF file format.
  */
 public class BlockCompressedOutputStream
@@ -55,8 +70,12 @@ public class BlockCompressedOutputStream
 
     private static final Log log = Log.getInstance(BlockCompressedOutputStream.class);
 
+    // block type byte, and the length and its complement, that precede the data in an uncompressed DEFLATE block
+    private static final int STORED_BLOCK_OVERHEAD = 5;
+
     private static int defaultCompressionLevel = BlockCompressedStreamConstants.DEFAULT_COMPRESSION_LEVEL;
     private static DeflaterFactory defaultDeflaterFactory = new DeflaterFactory();
+    private static int defaultCompressionThreads = Defaults.BGZF_COMPRESSION_THREADS;
 
     /**
      * Sets the GZip compression level for subsequent BlockCompressedOutputStream object creation
@@ -90,32 +109,55 @@ public class BlockCompressedOutputStream
         return defaultDeflaterFactory;
     }
 
+    /**
+     * Sets the number of threads used to deflate blocks for subsequent BlockCompressedOutputStream object creation
+     * that do not specify the number of compression threads.  A value of 0 (the default unless changed by the
+     * samjdk.bgzf_compression_threads property) compresses each block on the calling thread.
+     * @param compressionThreads number of blocks that may be deflated concurrently, 0 to disable.
+     */
+    public static void setDefaultCompressionThreads(final int compressionThreads) {
+        if (compressionThreads < 0) {
+            throw new IllegalArgumentException("Invalid number of compression threads: " + compressionThreads);
+        }
+        defaultCompressionThreads = compressionThreads;
+    }
+
+    public static int getDefaultCompressionThreads() {
+        return defaultCompressionThreads;
+    }
+
     private final BinaryCodec codec;
-    private final byte[] uncompressedBuffer = new byte[BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE];
+    private byte[] uncompressedBuffer = new byte[BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE];
     private int numUncompressedBytes = 0;
     private final byte[] compressedBuffer =
             new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE -
                     BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH];
-    private final Deflater deflater;
-
-    // A second deflater is created for the very unlikely case where the regular deflation actually makes
-    // things bigger, and the compressed block is too big.  It should be possible to downshift the
-    // primary deflater to NO_COMPRESSION level, recompress, and then restore it to its original setting,
-    // but in practice that doesn't work.
-    // The motivation for deflating at NO_COMPRESSION level is that it will predictably produce compressed
-    // output that is 10 bytes larger than the input, and the threshold at which a block is generated is such that
-    // the size of tbe final gzip block will always be <= 64K.  This is preferred over the previous method,
-    // which would attempt to compress up to 64K bytes, and if the resulting compressed block was too large,
-    // try compressing fewer input bytes (aka "downshifting').  The problem with downshifting is that
-    // getFilePointer might return an inaccurate value.
-    // I assume (AW 29-Oct-2013) that there is no value in using hardware-assisted deflater for no-compression mode,
-    // so just use JDK standard.
-    private final Deflater noCompressionDeflater = new Deflater(Deflater.NO_COMPRESSION, true);
-    private final CRC32 crc32 = new CRC32();
+    private final BlockCompressor compressor;
     private Path file = null;
     private long mBlockAddress = 0;
     private GZIIndex.GZIIndexer indexer;
 
+    // State used only when blocks are deflated on the shared thread pool.
+    private final int compressionThreads;
+    private final int compressionLevel;
+    private final DeflaterFactory deflaterFactory;
+    /** Blocks that have been handed to the thread pool, in the order they must be written. */
+    private final Deque<Future<CompressedBlock>> pendingBlocks = new ArrayDeque<>();
+    /** Deflaters and buffers that are not currently in use by a compression task. */
+    private final BlockingQueue<BlockDeflater> freeDeflaters;
+    private final BlockingQueue<byte[]> freeBuffers;
+
+    // State used to resolve pointers handed out by getDeferredFilePointer.
+    /** Sequence number of the block currently being filled. */
+    private long blocksSubmitted = 0;
+    /** Number of blocks written so far, which is also the sequence number of the block at mBlockAddress. */
+    private long blocksWritten = 0;
+    /** Number of deferred pointers that have been handed out but not yet resolved. */
+    private int unresolvedFilePointers = 0;
+    /** Addresses of the written blocks from sequence number firstRetainedBlock on, kept while pointers are unresolved. */
+    private final Deque<Long> retainedBlockAddresses = new ArrayDeque<>();
+    private long firstRetainedBlock = 0;
+
     /**
      * Uses default compression level, which is 5 unless changed by setCompressionLevel
      * Note: this constructor uses the default {@link DeflaterFactory}, see {@link #getDefaultDeflaterFactory()}.
@@ -168,10 +210,17 @@ public class BlockCompressedOutputStream
      * @param deflaterFactory custom factory to create deflaters (overrides the default)
      */
     public BlockCompressedOutputStream(final Path path, final int compressionLevel, final DeflaterFactory deflaterFactory) {
-        this.file = path;
-        codec = new BinaryCodec(path, true);
-        deflater = deflaterFactory.makeDeflater(compressionLevel, true);
-        log.debug("Using deflater: " + deflater.getClass().getSimpleName());
+        this(path, compressionLevel, deflaterFactory, defaultCompressionThreads);
+    }
+
+    /**
+     * Prepare to compress at the given compression level
+     * @param compressionLevel 1 <= compressionLevel <= 9
+     * @param deflaterFactory custom factory to create deflaters (overrides the default)
+     * @param compressionThreads number of blocks that may be deflated concurrently, 0 to compress on the calling thread
+     */
+    public BlockCompressedOutputStream(final Path path, final int compressionLevel, final DeflaterFactory deflaterFactory, final int compressionThreads) {
+        this(new BinaryCodec(path, true), path, compressionLevel, deflaterFactory, compressionThreads);
     }
 
     /**
@@ -231,13 +280,43 @@ public class BlockCompressedOutputStream
      * @param deflaterFactory custom factory to create deflaters (overrides the default)
      */
     public BlockCompressedOutputStream(final OutputStream os, final Path file, final int compressionLevel, final DeflaterFactory deflaterFactory) {
-        this.file = file;
-        codec = new BinaryCodec(os);
+        this(os, file, compressionLevel, deflaterFactory, defaultCompressionThreads);
+    }
+
+    /**
+     * Creates the output stream.
+     * @param os output stream to create a BlockCompressedOutputStream from
+     * @param file file to which to write the output or null if not available
+     * @param compressionLevel the compression level (0-9)
+     * @param deflaterFactory custom factory to create deflaters (overrides the default)
+     * @param compressionThreads number of blocks that may be deflated concurrently, 0 to compress on the calling thread
+     */
+    public BlockCompressedOutputStream(final OutputStream os, final Path file, final int compressionLevel, final DeflaterFactory deflaterFactory, final int compressionThreads) {
+        this(new BinaryCodec(os), file, compressionLevel, deflaterFactory, compressionThreads);
         if (file != null) {
             codec.setOutputFileName(file.toAbsolutePath().toUri().toString());
         }
-        deflater = deflaterFactory.makeDeflater(compressionLevel, true);
-        log.debug("Using deflater: " + deflater.getClass().getSimpleName());
+    }
+
+    private BlockCompressedOutputStream(final BinaryCodec codec, final Path file, final int compressionLevel, final DeflaterFactory deflaterFactory, final int compressionThreads) {
+        if (compressionThreads < 0) {
+            throw new IllegalArgumentException("Invalid number of compression threads: " + compressionThreads);
+        }
+        this.file = file;
+        this.codec = codec;
+        this.compressionLevel = compressionLevel;
+        this.deflaterFactory = deflaterFactory;
+        this.compressionThreads = compressionThreads;
+        compressor = deflaterFactory.makeBlockCompressor(compressionLevel);
+        log.debug("Using compressor: " + compressor);
+        if (compressionThreads > 0) {
+            freeDeflaters = new ArrayBlockingQueue<>(compressionThreads);
+            freeDeflaters.add(new BlockDeflater(compressor));
+            freeBuffers = new ArrayBlockingQueue<>(compressionThreads + 1);
+        } else {
+            freeDeflaters = null;
+            freeBuffers = null;
+        }
     }
 
     /**
@@ -262,7 +341,7 @@ public class BlockCompressedOutputStream
      * @throws RuntimeException this method is called after output has already been written to the stream.
      */
     public void addIndexer(final OutputStream outputStream) {
-        if (mBlockAddress != 0) {
+        if (mBlockAddress != 0 || !pendingBlocks.isEmpty()) {
             throw new RuntimeException("Cannot add gzi indexer if this BlockCompressedOutput stream has already written Gzipped blocks");
         }
         indexer = new GZIIndex.GZIIndexer(outputStream);
@@ -298,7 +377,7 @@ public class BlockCompressedOutputStream
             numBytes -= bytesToWrite;
             assert(numBytes >= 0);
             if (numUncompressedBytes == uncompressedBuffer.length) {
-                deflateBlock();
+                submitBlock();
             }
         }
     }
@@ -306,7 +385,7 @@ public class BlockCompressedOutputStream
     @Override
     public void write(final int b) throws IOException {
         uncompressedBuffer[numUncompressedBytes++] = (byte) b;
-        if (numUncompressedBytes == uncompressedBuffer.length) deflateBlock();
+        if (numUncompressedBytes == uncompressedBuffer.length) submitBlock();
     }
 
     /**
@@ -318,8 +397,9 @@ public class BlockCompressedOutputStream
     @Override
     public void flush() throws IOException {
         while (numUncompressedBytes > 0) {
-            deflateBlock();
+            submitBlock();
         }
+        drainPendingBlocks(0);
         codec.getOutputStream().flush();
     }
 
@@ -334,7 +414,11 @@ public class BlockCompressedOutputStream
     }
 
     public void close(final boolean writeTerminatorBlock) throws IOException {
-        flush();
+        try {
+            flush();
+        } finally {
+            endCompressors();
+        }
         // For debugging...
         // if (numberOfThrottleBacks > 0) {
         //     System.err.println("In BlockCompressedOutputStream, had to throttle back " + numberOfThrottleBacks +
@@ -362,8 +446,10 @@ public class BlockCompressedOutputStream
     /** Encode virtual file pointer
      * Upper 48 bits is the byte offset into the compressed stream of a block.
      * Lower 16 bits is the byte offset into the uncompressed stream inside the block.
+     * When blocks are compressed on multiple threads this waits for all outstanding blocks to be written.
      */
     public long getFilePointer(){
+        drainPendingBlocks(0);
         return BlockCompressedFilePointerUtil.makeFilePointer(mBlockAddress, numUncompressedBytes);
     }
 
@@ -372,6 +458,112 @@ public class BlockCompressedOutputStream
         return getFilePointer();
     }
 
+    /**
+     * Returns a placeholder for the current virtual file pointer that can be obtained without waiting for the
+     * blocks that are still being compressed.  The upper 48 bits hold the sequence number of the current block
+     * rather than its address, and the lower 16 bits the offset into the block, so deferred pointers compare in
+     * the same order as the pointers they stand for.  Every deferred pointer must eventually be passed to
+     * {@link #resolveFilePointer(long)}, in the order in which they were obtained.
+     */
+    public long getDeferredFilePointer() {
+        if (unresolvedFilePointers++ == 0) {
+            retainedBlockAddresses.clear();
+            firstRetainedBlock = blocksSubmitted;
+        }
+        return BlockCompressedFilePointerUtil.makeFilePointer(blocksSubmitted, numUncompressedBytes);
+    }
+
+    /**
+     * @return true if {@link #resolveFilePointer(long)} can resolve the given deferred pointer without waiting
+     * for a block to be compressed.  Blocks that have finished compressing are written as a side effect.
+     */
+    public boolean isFilePointerResolvable(final long deferredFilePointer) {
+        while (!pendingBlocks.isEmpty() && pendingBlocks.peekFirst().isDone()) {
+            drainPendingBlocks(pendingBlocks.size() - 1);
+        }
+        return BlockCompressedFilePointerUtil.getBlockAddress(deferredFilePointer) <= blocksWritten;
+    }
+
+    /**
+     * Converts a pointer returned by {@link #getDeferredFilePointer()} into the virtual file pointer it stands for,
+     * waiting for preceding blocks to be written if necessary.  This may also be called after the stream is closed.
+     */
+    public long resolveFilePointer(final long deferredFilePointer) {
+        final long block = BlockCompressedFilePointerUtil.getBlockAddress(deferredFilePointer);
+        if (unresolvedFilePointers == 0 || block < firstRetainedBlock || block > blocksSubmitted) {
+            throw new IllegalArgumentException("Not an unresolved deferred file pointer: " + deferredFilePointer);
+        }
+        while (block > blocksWritten) {
+            drainPendingBlocks(pendingBlocks.size() - 1);
+        }
+        while (firstRetainedBlock < block) {
+            retainedBlockAddresses.removeFirst();
+            firstRetainedBlock++;
+        }
+        final long blockAddress = block == blocksWritten ? mBlockAddress : retainedBlockAddresses.getFirst();
+        if (--unresolvedFilePointers == 0) {
+            retainedBlockAddresses.clear();
+        }
+        return BlockCompressedFilePointerUtil.makeFilePointer(blockAddress, BlockCompressedFilePointerUtil.getBlockOffset(deferredFilePointer));
+    }
+
+    /**
+     * Compress the data in uncompressedBuffer, either immediately on the calling thread or, if compression threads
+     * are in use, by queueing it on the thread pool.  In the latter case a fresh buffer is swapped in so the
+     * caller can continue filling the next block.
+     */
+    private void submitBlock() {
+        if (compressionThreads == 0) {
+            deflateBlock();
+            return;
+        }
+        if (numUncompressedBytes == 0) {
+            return;
+        }
+        // Bound the number of blocks in flight so that memory use does not grow without limit
+        drainPendingBlocks(compressionThreads - 1);
+
+        final byte[] buffer = uncompressedBuffer;
+        final int bytesToCompress = numUncompressedBytes;
+        BlockDeflater blockDeflater = freeDeflaters.poll();
+        if (blockDeflater == null) {
+            blockDeflater = new BlockDeflater(deflaterFactory.makeBlockCompressor(compressionLevel));
+        }
+        final BlockDeflater taskDeflater = blockDeflater;
+        pendingBlocks.addLast(SharedThreadPool.submit(() -> taskDeflater.compress(buffer, bytesToCompress)));
+        blocksSubmitted++;
+
+        final byte[] nextBuffer = freeBuffers.poll();
+        uncompressedBuffer = nextBuffer != null ? nextBuffer : new byte[BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE];
+        numUncompressedBytes = 0;
+    }
+
+    /**
+     * Waits for queued blocks to be compressed and writes them in order until no more than maxPending remain.
+     */
+    private void drainPendingBlocks(final int maxPending) {
+        while (pendingBlocks.size() > maxPending) {
+            final CompressedBlock block;
+            try {
+                block = pendingBlocks.removeFirst().get();
+            } catch (final InterruptedException e) {
+                throw new RuntimeException("Interrupted waiting for compression thread", e);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException("Exception compressing block", e.getCause());
+            }
+            final int totalBlockSize = writeGzipBlock(block.deflater.compressedBuffer, block.compressedSize, block.uncompressedSize, block.crc);
+            if (indexer != null) {
+                indexer.addGzipBlock(mBlockAddress, block.uncompressedSize);
+            }
+            blockWritten(totalBlockSize);
+            freeDeflaters.offer(block.deflater);
+            freeBuffers.offer(block.uncompressedBuffer);
+        }
+    }
+
     /**
      * Attempt to write the data in uncompressedBuffer to the underlying file in a gzip block.
      * If the entire uncompressedBuffer does not fit in the maximum allowed size, reduce the amount
@@ -384,28 +576,10 @@ public class BlockCompressedOutputStream
             return 0;
         }
         final int bytesToCompress = numUncompressedBytes;
-        // Compress the input
-        deflater.reset();
-        deflater.setInput(uncompressedBuffer, 0, bytesToCompress);
-        deflater.finish();
-        int compressedSize = deflater.deflate(compressedBuffer, 0, compressedBuffer.length);
-
-        // If it didn't all fit in compressedBuffer.length, set compression level to NO_COMPRESSION
-        // and try again.  This should always fit.
-        if (!deflater.finished()) {
-            noCompressionDeflater.reset();
-            noCompressionDeflater.setInput(uncompressedBuffer, 0, bytesToCompress);
-            noCompressionDeflater.finish();
-            compressedSize = noCompressionDeflater.deflate(compressedBuffer, 0, compressedBuffer.length);
-            if (!noCompressionDeflater.finished()) {
-                throw new IllegalStateException("unpossible");
-            }
-        }
-        // Data compressed small enough, so write it out.
-        crc32.reset();
-        crc32.update(uncompressedBuffer, 0, bytesToCompress);
+        final int compressedSize = deflate(compressor, uncompressedBuffer, bytesToCompress, compressedBuffer);
+        final long crc = compressor.crc32(uncompressedBuffer, 0, bytesToCompress);
 
-        final int totalBlockSize = writeGzipBlock(compressedSize, bytesToCompress, crc32.getValue());
+        final int totalBlockSize = writeGzipBlock(compressedBuffer, compressedSize, bytesToCompress, crc);
         assert(bytesToCompress <= numUncompressedBytes);
 
         // Call out to the indexer if it exists
@@ -415,15 +589,71 @@ public class BlockCompressedOutputStream
 
         // Clear out from uncompressedBuffer the data that was written
         numUncompressedBytes = 0;
-        mBlockAddress += totalBlockSize;
+        blocksSubmitted++;
+        blockWritten(totalBlockSize);
         return totalBlockSize;
     }
 
+    /**
+     * Advances past a block that has just been written, remembering its address if deferred pointers may refer to it.
+     */
+    private void blockWritten(final int totalBlockSize) {
+        if (unresolvedFilePointers > 0 && blocksWritten >= firstRetainedBlock) {
+            retainedBlockAddresses.addLast(mBlockAddress);
+        }
+        mBlockAddress += totalBlockSize;
+        blocksWritten++;
+    }
+
+    /**
+     * Releases the compressors that are not in use by a compression task.
+     */
+    private void endCompressors() {
+        if (freeDeflaters != null) {
+            BlockDeflater blockDeflater;
+            while ((blockDeflater = freeDeflaters.poll()) != null) {
+                blockDeflater.compressor.end();
+            }
+        } else {
+            compressor.end();
+        }
+    }
+
+    /**
+     * Deflates the first bytesToCompress bytes of input into output.
+     * @return size of the compressed data
+     */
+    private static int deflate(final BlockCompressor compressor, final byte[] input, final int bytesToCompress, final byte[] output) {
+        final int compressedSize = compressor.compress(input, 0, bytesToCompress, output, 0, output.length);
+        return compressedSize != 0 ? compressedSize : store(input, bytesToCompress, output);
+    }
+
+    /**
+     * Writes the first bytesToCompress bytes of input into output as a single uncompressed (stored) DEFLATE block,
+     * for the very unlikely case where compressing the data makes it too big to fit in a gzip block.  This adds
+     * only STORED_BLOCK_OVERHEAD bytes, and the threshold at which a block is generated is such that the size of
+     * the final gzip block will then always be <= 64K.  This is preferred over the older method of compressing
+     * fewer input bytes (aka "downshifting"), which could make getFilePointer return an inaccurate value.
+     * @return size of the stored block
+     */
+    private static int store(final byte[] input, final int bytesToCompress, final byte[] output) {
+        if (bytesToCompress + STORED_BLOCK_OVERHEAD > output.length) {
+            throw new IllegalStateException("unpossible");
+        }
+        output[0] = 1; // final block, stored
+        output[1] = (byte) bytesToCompress;
+        output[2] = (byte) (bytesToCompress >>> 8);
+        output[3] = (byte) ~bytesToCompress;
+        output[4] = (byte) (~bytesToCompress >>> 8);
+        System.arraycopy(input, 0, output, STORED_BLOCK_OVERHEAD, bytesToCompress);
+        return bytesToCompress + STORED_BLOCK_OVERHEAD;
+    }
+
     /**
      * Writes the entire gzip block, assuming the compressed data is stored in compressedBuffer
      * @return  size of gzip block that was written.
      */
-    private int writeGzipBlock(final int compressedSize, final int uncompressedSize, final long crc) {
+    private int writeGzipBlock(final byte[] compressedBuffer, final int compressedSize, final int uncompressedSize, final long crc) {
         // Init gzip header
         codec.writeByte(BlockCompressedStreamConstants.GZIP_ID1);
         codec.writeByte(BlockCompressedStreamConstants.GZIP_ID2);
@@ -446,4 +676,44 @@ public class BlockCompressedOutputStream
         codec.writeInt(uncompressedSize);
         return totalBlockSize;
     }
+
+    /**
+     * Compressor and output buffer owned by a single compression task at a time.
+     */
+    private static final class BlockDeflater {
+        private final BlockCompressor compressor;
+        private final byte[] compressedBuffer =
+                new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE -
+                        BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH];
+
+        private BlockDeflater(final BlockCompressor compressor) {
+            this.compressor = compressor;
+        }
+
+        private CompressedBlock compress(final byte[] uncompressedBuffer, final int bytesToCompress) {
+            final int compressedSize = deflate(compressor, uncompressedBuffer, bytesToCompress, compressedBuffer);
+            final long crc = compressor.crc32(uncompressedBuffer, 0, bytesToCompress);
+            return new CompressedBlock(this, uncompressedBuffer, compressedSize, bytesToCompress, crc);
+        }
+    }
+
+    /**
+     * Result of compressing one block on the thread pool.
+     */
+    private static final class CompressedBlock {
+        private final BlockDeflater deflater;
+        private final byte[] uncompressedBuffer;
+        private final int compressedSize;
+        private final int uncompressedSize;
+        private final long crc;
+
+        private CompressedBlock(final BlockDeflater deflater, final byte[] uncompressedBuffer,
+                                final int compressedSize, final int uncompressedSize, final long crc) {
+            this.deflater = deflater;
+            this.uncompressedBuffer = uncompressedBuffer;
+            this.compressedSize = compressedSize;
+            this.uncompressedSize = uncompressedSize;
+            this.crc = crc;
+        }
+    }
 }
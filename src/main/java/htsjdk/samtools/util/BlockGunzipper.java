@@ -24,13 +24,12 @@
 package htsjdk.samtools.util;
 
 import htsjdk.samtools.SAMFormatException;
+import htsjdk.samtools.util.zip.BlockDecompressor;
 import htsjdk.samtools.util.zip.InflaterFactory;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.zip.CRC32;
 import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
 
 /**
  * Alternative to GZIPInputStream, for decompressing GZIP blocks that are already loaded into a byte[].
@@ -45,15 +44,14 @@ import java.util.zip.Inflater;
  */
 public class BlockGunzipper {
     private static InflaterFactory defaultInflaterFactory = new InflaterFactory();
-    private final Inflater inflater;
-    private final CRC32 crc32 = new CRC32();
+    private final BlockDecompressor decompressor;
     private boolean checkCrcs = false;
 
     /**
      * Create a BlockGunzipper using the default inflaterFactory
      */
     BlockGunzipper() {
-        inflater = defaultInflaterFactory.makeInflater(true); // GZIP mode
+        decompressor = defaultInflaterFactory.makeBlockDecompressor();
     }
 
     /**
@@ -61,12 +59,12 @@ public class BlockGunzipper {
      * @param inflaterFactory
      */
     BlockGunzipper(InflaterFactory inflaterFactory) {
-        inflater = inflaterFactory.makeInflater(true); // GZIP mode
+        decompressor = inflaterFactory.makeBlockDecompressor();
     }
 
     /**
      * Sets the default {@link InflaterFactory} that will be used for all instances unless specified otherwise in the constructor.
-     * If this method is not called the default is a factory that will create the JDK {@link Inflater}.
+     * If this method is not called the default is a factory that will create the JDK {@link java.util.zip.Inflater}.
      * @param inflaterFactory non-null default factory.
      */
     public static void setDefaultInflaterFactory(final InflaterFactory inflaterFactory) {
@@ -138,20 +136,17 @@ public class BlockGunzipper {
             byteBuffer.position(byteBuffer.position() + deflatedSize);
             int expectedCrc = byteBuffer.getInt();
             uncompressedSize = byteBuffer.getInt();
-            inflater.reset();
 
             // Decompress
-            inflater.setInput(compressedBlock, compressedBlockOffset + BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH, deflatedSize);
-            final int inflatedBytes = inflater.inflate(uncompressedBlock, uncompressedBlockOffset, uncompressedSize);
+            final int inflatedBytes = decompressor.decompress(compressedBlock, compressedBlockOffset + BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH,
+                    deflatedSize, uncompressedBlock, uncompressedBlockOffset, uncompressedSize);
             if (inflatedBytes != uncompressedSize) {
                 throw new SAMFormatException("Did not inflate expected amount");
             }
 
             // Validate CRC if so desired
             if (this.checkCrcs) {
-                crc32.reset();
-                crc32.update(uncompressedBlock, uncompressedBlockOffset, uncompressedSize);
-                final long crc = crc32.getValue();
+                final long crc = decompressor.crc32(uncompressedBlock, uncompressedBlockOffset, uncompressedSize);
                 if ((int)crc != expectedCrc) {
                     throw new SAMFormatException("CRC mismatch");
                 }
@@ -25,6 +25,7 @@ package htsjdk.samtools.util;
 
 import htsjdk.samtools.Defaults;
 import htsjdk.samtools.SAMException;
+import htsjdk.samtools.seekablestream.CachingSeekableStream;
 import htsjdk.samtools.seekablestream.SeekableBufferedStream;
 import htsjdk.samtools.seekablestream.SeekableFileStream;
 import htsjdk.samtools.seekablestream.SeekableHTTPStream;
@@ -226,7 +227,8 @@ public class IOUtil {
     }
 
     public static SeekableStream maybeBufferedSeekableStream(final SeekableStream stream, final int bufferSize) {
-        return bufferSize > 0 ? new SeekableBufferedStream(stream, bufferSize) : stream; 
+        // a caching stream already reads its source in large blocks
+        return bufferSize > 0 && !(stream instanceof CachingSeekableStream) ? new SeekableBufferedStream(stream, bufferSize) : stream; 
     }
     
     public static SeekableStream maybeBufferedSeekableStream(final SeekableStream stream) {
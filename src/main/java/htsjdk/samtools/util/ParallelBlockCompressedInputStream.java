@@ -0,0 +1,215 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.zip.InflaterFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Implementation of {@link BlockCompressedInputStream} that reads several compressed blocks ahead of the
+ * current position and inflates them concurrently on a shared, bounded thread pool.  Blocks are handed back
+ * in stream order, so {@link #seek(long)} and {@link #getFilePointer()} behave exactly as in the
+ * single-threaded implementation.
+ *
+ * Compressed blocks are read from the underlying stream on the calling thread; only inflation is done in parallel.
+ *
+ * Note that this implementation is not synchronized. If multiple threads access an instance concurrently, it must be synchronized externally.
+ */
+public class ParallelBlockCompressedInputStream extends BlockCompressedInputStream {
+    /**
+     * Maximum number of blocks that are read ahead and inflated concurrently for this stream.
+     */
+    private final int decompressionThreads;
+    /**
+     * Blocks (in stream order) that have been read and are being, or have been, inflated.
+     */
+    private final Deque<PendingBlock> pendingBlocks = new ArrayDeque<>();
+    /**
+     * Buffers and gunzippers that are not in use by an inflation task. Only accessed by the calling thread.
+     */
+    private final Deque<byte[]> freeCompressedBuffers = new ArrayDeque<>();
+    private final Deque<byte[]> freeBuffers = new ArrayDeque<>();
+    private final Deque<BlockGunzipper> freeGunzippers = new ArrayDeque<>();
+    /**
+     * Set once the end of the input (or an unreadable block) has been queued, so no further blocks are read ahead.
+     */
+    private boolean endOfInputQueued = false;
+
+    public ParallelBlockCompressedInputStream(final InputStream stream, final int decompressionThreads) {
+        this(stream, BlockGunzipper.getDefaultInflaterFactory(), decompressionThreads);
+    }
+
+    public ParallelBlockCompressedInputStream(final InputStream stream, final InflaterFactory inflaterFactory, final int decompressionThreads) {
+        super(stream, true, inflaterFactory);
+        this.decompressionThreads = checkDecompressionThreads(decompressionThreads);
+    }
+
+    public ParallelBlockCompressedInputStream(final File file, final int decompressionThreads) throws IOException {
+        this(file, BlockGunzipper.getDefaultInflaterFactory(), decompressionThreads);
+    }
+
+    public ParallelBlockCompressedInputStream(final File file, final InflaterFactory inflaterFactory, final int decompressionThreads) throws IOException {
+        super(file, inflaterFactory);
+        this.decompressionThreads = checkDecompressionThreads(decompressionThreads);
+    }
+
+    public ParallelBlockCompressedInputStream(final SeekableStream strm, final int decompressionThreads) {
+        this(strm, BlockGunzipper.getDefaultInflaterFactory(), decompressionThreads);
+    }
+
+    public ParallelBlockCompressedInputStream(final SeekableStream strm, final InflaterFactory inflaterFactory, final int decompressionThreads) {
+        super(strm, inflaterFactory);
+        this.decompressionThreads = checkDecompressionThreads(decompressionThreads);
+    }
+
+    private static int checkDecompressionThreads(final int decompressionThreads) {
+        if (decompressionThreads < 1) {
+            throw new IllegalArgumentException("Invalid number of decompression threads: " + decompressionThreads);
+        }
+        return decompressionThreads;
+    }
+
+    @Override
+    public void setCheckCrcs(final boolean check) {
+        // gunzippers created before this call would not pick up the new setting
+        flushReadAhead();
+        freeGunzippers.clear();
+        super.setCheckCrcs(check);
+    }
+
+    @Override
+    protected DecompressedBlock nextBlock(final byte[] bufferAvailableForReuse) {
+        if (bufferAvailableForReuse != null && freeBuffers.size() <= decompressionThreads) {
+            freeBuffers.addLast(bufferAvailableForReuse);
+        }
+        fillReadAhead();
+        final PendingBlock next = pendingBlocks.removeFirst();
+        if (pendingBlocks.isEmpty()) {
+            endOfInputQueued = false;
+        }
+        return next.await();
+    }
+
+    @Override
+    protected void prepareForSeek() {
+        flushReadAhead();
+        super.prepareForSeek();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Suppress interrupts while we close.
+        final boolean isInterrupted = Thread.interrupted();
+        try {
+            flushReadAhead();
+            super.close();
+        } finally {
+            if (isInterrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads compressed blocks until the read-ahead limit or the end of the input is reached, queueing each one
+     * for inflation on the thread pool.
+     */
+    private void fillReadAhead() {
+        while (!endOfInputQueued && pendingBlocks.size() < decompressionThreads) {
+            final byte[] compressedBuffer = freeCompressedBuffers.isEmpty() ?
+                    new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE] : freeCompressedBuffers.removeFirst();
+            final long blockAddress = getCompressedStreamOffset();
+            final DecompressedBlock unreadable = readCompressedBlock(compressedBuffer);
+            if (unreadable != null) {
+                freeCompressedBuffers.addLast(compressedBuffer);
+                pendingBlocks.addLast(new PendingBlock(CompletableFuture.completedFuture(unreadable), null, null));
+                endOfInputQueued = true;
+                return;
+            }
+            final BlockGunzipper gunzipper = freeGunzippers.isEmpty() ? makeBlockGunzipper() : freeGunzippers.removeFirst();
+            final byte[] buffer = freeBuffers.pollFirst();
+            final Future<DecompressedBlock> result = SharedThreadPool.submit(() -> {
+                try {
+                    return inflateBlock(blockAddress, compressedBuffer, buffer, gunzipper);
+                } catch (final RuntimeException e) {
+                    return new DecompressedBlock(blockAddress, 0, e);
+                }
+            });
+            pendingBlocks.addLast(new PendingBlock(result, compressedBuffer, gunzipper));
+        }
+    }
+
+    /**
+     * Foreground thread blocking operation that waits for all read-ahead tasks and discards their results.
+     */
+    private void flushReadAhead() {
+        while (!pendingBlocks.isEmpty()) {
+            pendingBlocks.removeFirst().await();
+        }
+        endOfInputQueued = false;
+    }
+
+    /**
+     * A block that has been read from the input and queued for inflation, along with the resources
+     * that can be reused once the inflation has finished.
+     */
+    private final class PendingBlock {
+        private final Future<DecompressedBlock> result;
+        private final byte[] compressedBuffer;
+        private final BlockGunzipper gunzipper;
+
+        private PendingBlock(final Future<DecompressedBlock> result, final byte[] compressedBuffer, final BlockGunzipper gunzipper) {
+            this.result = result;
+            this.compressedBuffer = compressedBuffer;
+            this.gunzipper = gunzipper;
+        }
+
+        /**
+         * Waits for the block to be inflated and returns its resources to the free lists.
+         */
+        private DecompressedBlock await() {
+            DecompressedBlock block;
+            try {
+                block = result.get();
+            } catch (final InterruptedException e) {
+                // the task may still be using the buffer and gunzipper, so they cannot be reused
+                return new DecompressedBlock(0, 0, e);
+            } catch (final ExecutionException e) {
+                block = new DecompressedBlock(0, 0, e);
+            }
+            if (compressedBuffer != null) {
+                freeCompressedBuffers.addLast(compressedBuffer);
+                freeGunzippers.addLast(gunzipper);
+            }
+            return block;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.Defaults;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The pool of daemon worker threads shared by all of the multi-threaded readers and writers, such as parallel BGZF
+ * compression and decompression, CRAM container encoding and decoding, parallel BAM queries and VCF decoding and
+ * encoding, so that using several of them in one process does not start several pools each sized to the machine.
+ * Its size is {@link Defaults#SHARED_THREAD_POOL_SIZE}.
+ * <p>
+ * Each user bounds the number of its own tasks in flight. A task submitted from one of the pool's own threads, for
+ * example a BGZF block inflated while a worker reads part of a BAM file, is run immediately on that thread, so that
+ * tasks never wait for queued tasks that can't be started because the pool is full.
+ */
+public final class SharedThreadPool {
+    private static final ExecutorService threadpool = Executors.newFixedThreadPool(checkPoolSize(Defaults.SHARED_THREAD_POOL_SIZE), new WorkerThreadFactory());
+
+    private SharedThreadPool() {
+    }
+
+    /**
+     * Queue a task to be run on the shared pool, or run it now if the calling thread belongs to the pool.
+     *
+     * @param task the task to run
+     * @return a Future for the result of the task
+     */
+    public static <T> Future<T> submit(final Callable<T> task) {
+        if (Thread.currentThread() instanceof WorkerThread) {
+            final FutureTask<T> futureTask = new FutureTask<>(task);
+            futureTask.run();
+            return futureTask;
+        }
+        return threadpool.submit(task);
+    }
+
+    /**
+     * @return the number of threads in the shared pool
+     */
+    public static int getPoolSize() {
+        return Defaults.SHARED_THREAD_POOL_SIZE;
+    }
+
+    private static int checkPoolSize(final int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("The shared thread pool size must be > 0: " + poolSize);
+        }
+        return poolSize;
+    }
+
+    private static final class WorkerThread extends Thread {
+        private WorkerThread(final Runnable runnable, final String name) {
+            super(runnable, name);
+            setDaemon(true);
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new WorkerThread(runnable, "htsjdk-worker-" + threadNumber.getAndIncrement());
+        }
+    }
+}
@@ -41,6 +41,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Collection to which many records can be added.  After all records are added, the collection can be
@@ -54,10 +59,30 @@ import java.util.TreeSet;
  * <p>
  * If Snappy DLL is available and snappy.disable system property is not set to true, then Snappy is used
  * to compress temporary files.
+ * <p>
+ * If {@link #setSpillInBackground(boolean)} is enabled, full batches of records are sorted and written to disk on
+ * a background thread while the caller continues to add records into a second in-memory array.  This overlaps
+ * the sort and the encoding/compression of temporary files with add(), at the cost of holding up to twice
+ * maxRecordsInRam records in memory.
+ * <p>
+ * If {@link #setMaxFilesToMerge(int)} is set and more temporary files than that have been written, groups of
+ * files are merged in parallel into larger intermediate files until no more than that many remain, so that the
+ * final merge only needs to hold that many files open.  The size and number of the concurrent merges are chosen so
+ * that they too hold no more than that many files open between them.
  */
 public class SortingCollection<T> implements Iterable<T> {
     private static final Log log = Log.getInstance(SortingCollection.class);
 
+    /**
+     * Shared pool for sorting and writing records to disk in the background.
+     */
+    private static final ExecutorService spillExecutor = Executors.newCachedThreadPool(r -> {
+        final Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setName("SortingCollection-" + t.getName());
+        t.setDaemon(true);
+        return t;
+    });
+
     /**
      * Client must implement this class, which defines the way in which records are written to and
      * read from file.
@@ -110,9 +135,20 @@ public class SortingCollection<T> implements Iterable<T> {
      * For sorting, both when spilling records to file, and merge sorting.
      */
     private final Comparator<T> comparator;
+    private final Class<T> componentType;
     private final int maxRecordsInRam;
     private int numRecordsInRam = 0;
     private T[] ramRecords;
+
+    private boolean spillInBackground = false;
+    private int maxFilesToMerge = Integer.MAX_VALUE;
+
+    /**
+     * Result of the background spill in progress, if any, and the array of records it is writing, which is
+     * reused for the next batch of records once the spill has completed.
+     */
+    private Future<Path> pendingSpill = null;
+    private T[] pendingSpillRecords = null;
     private boolean iterationStarted = false;
     private boolean doneAdding = false;
 
@@ -156,13 +192,18 @@ public class SortingCollection<T> implements Iterable<T> {
         this.tmpDirs = tmpDir;
         this.codec = codec;
         this.comparator = comparator;
+        this.componentType = componentType;
         this.maxRecordsInRam = maxRecordsInRam;
-        @SuppressWarnings("unchecked")
-        T[] ramRecords = (T[]) Array.newInstance(componentType, maxRecordsInRam);
-        this.ramRecords = ramRecords;
+        this.ramRecords = newRecordArray();
         this.printRecordSizeSampling = printRecordSizeSampling;
     }
 
+    private T[] newRecordArray() {
+        @SuppressWarnings("unchecked")
+        T[] records = (T[]) Array.newInstance(componentType, maxRecordsInRam);
+        return records;
+    }
+
     public void add(final T rec) {
         if (doneAdding) {
             throw new IllegalStateException("Cannot add after calling doneAdding()");
@@ -179,7 +220,11 @@ public class SortingCollection<T> implements Iterable<T> {
                 startMem = Runtime.getRuntime().freeMemory();
             }
 
-            spillToDisk();
+            if (spillInBackground) {
+                spillToDiskInBackground();
+            } else {
+                spillToDisk();
+            }
 
             if (printRecordSizeSampling) {
                 //Garbage collect again and get free memory
@@ -211,6 +256,9 @@ public class SortingCollection<T> implements Iterable<T> {
 
         doneAdding = true;
 
+        waitForBackgroundSpill();
+        this.pendingSpillRecords = null;
+
         if (this.files.isEmpty()) {
             return;
         }
@@ -221,6 +269,44 @@ public class SortingCollection<T> implements Iterable<T> {
 
         // Facilitate GC
         this.ramRecords = null;
+
+        mergeToMaxFiles();
+    }
+
+    /**
+     * @return True if full batches of records are sorted and written to disk on a background thread.
+     */
+    public boolean isSpillInBackground() {
+        return spillInBackground;
+    }
+
+    /**
+     * Tell this collection to sort and write full batches of records to disk on a background thread, so that
+     * add() can continue while the previous batch is written.  This requires memory for up to twice
+     * maxRecordsInRam records.  This is false by default.
+     */
+    public void setSpillInBackground(final boolean spillInBackground) {
+        this.spillInBackground = spillInBackground;
+    }
+
+    /**
+     * @return The maximum number of temporary files that are merged at the same time.
+     */
+    public int getMaxFilesToMerge() {
+        return maxFilesToMerge;
+    }
+
+    /**
+     * Limit the number of temporary files that are merged (and so held open) at the same time.  If more files
+     * than this have been written when adding is done, they are merged in groups, in parallel, into intermediate
+     * files until no more than maxFilesToMerge remain.  The default is no limit.
+     * @param maxFilesToMerge must be at least 2
+     */
+    public void setMaxFilesToMerge(final int maxFilesToMerge) {
+        if (maxFilesToMerge < 2) {
+            throw new IllegalArgumentException("maxFilesToMerge must be >= 2");
+        }
+        this.maxFilesToMerge = maxFilesToMerge;
     }
 
     /**
@@ -243,31 +329,233 @@ public class SortingCollection<T> implements Iterable<T> {
      * Sort the records in memory, write them to a file, and clear the buffer of records in memory.
      */
     public void spillToDisk() {
+        waitForBackgroundSpill();
+        this.files.add(writeSortedFile(this.ramRecords, this.numRecordsInRam));
+        this.numRecordsInRam = 0;
+    }
+
+    /**
+     * Add a file of records that were sorted and written elsewhere, as if this collection had spilled it.  The
+     * records must be in the order defined by the comparator, encoded by this collection's codec, and written to a
+     * stream wrapped by {@link TempStreamFactory#wrapTempOutputStream(OutputStream, int)}.  Records that compare
+     * equal are returned in the order in which their files were added.  This collection takes ownership of the file,
+     * and deletes it in cleanup().
+     * @throws IllegalStateException if there are records in memory, or after doneAdding() or iterator() was called
+     */
+    public void addSortedFile(final Path file) {
+        if (doneAdding || iterationStarted) {
+            throw new IllegalStateException("Cannot add a sorted file after calling doneAdding() or iterator()");
+        }
+        if (this.numRecordsInRam > 0) {
+            throw new IllegalStateException("Cannot add a sorted file while there are records in memory");
+        }
+        waitForBackgroundSpill();
+        this.files.add(file);
+    }
+
+    /**
+     * Hand the records in memory to a background thread to be sorted and written to a file, and continue
+     * with an empty buffer.  Waits for any previous background spill first, so at most one is in progress.
+     */
+    private void spillToDiskInBackground() {
+        waitForBackgroundSpill();
+        final T[] records = this.ramRecords;
+        final int numRecords = this.numRecordsInRam;
+        this.ramRecords = this.pendingSpillRecords != null ? this.pendingSpillRecords : newRecordArray();
+        this.numRecordsInRam = 0;
+        this.pendingSpillRecords = records;
+        this.pendingSpill = spillExecutor.submit(() -> writeSortedFile(records, numRecords));
+    }
+
+    /**
+     * Wait for the background spill in progress, if any, and record the file it wrote.
+     */
+    private void waitForBackgroundSpill() {
+        if (this.pendingSpill == null) {
+            return;
+        }
+        try {
+            this.files.add(this.pendingSpill.get());
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted waiting for records to be written to disk", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            this.pendingSpill = null;
+        }
+    }
+
+    /**
+     * Sort the first numRecords records, write them to a new temporary file and clear them from the array.
+     */
+    private Path writeSortedFile(final T[] records, final int numRecords) {
         try {
-            Arrays.parallelSort(this.ramRecords, 0, this.numRecordsInRam, this.comparator);
+            Arrays.parallelSort(records, 0, numRecords, this.comparator);
 
             final Path f = newTempFile();
             try (OutputStream os
                          = tempStreamFactory.wrapTempOutputStream(Files.newOutputStream(f), Defaults.BUFFER_SIZE)) {
                 this.codec.setOutputStream(os);
-                for (int i = 0; i < this.numRecordsInRam; ++i) {
-                    this.codec.encode(ramRecords[i]);
+                for (int i = 0; i < numRecords; ++i) {
+                    this.codec.encode(records[i]);
                     // Facilitate GC
-                    this.ramRecords[i] = null;
+                    records[i] = null;
                 }
                 os.flush();
             } catch (RuntimeIOException ex) {
+                IOUtil.deletePaths(f);
                 throw new RuntimeIOException("Problem writing temporary file " + f.toUri() +
                         ".  Try setting TMP_DIR to a file system with lots of space.", ex);
+            } catch (IOException | RuntimeException ex) {
+                IOUtil.deletePaths(f);
+                throw ex;
             }
+            return f;
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+    }
 
-            this.numRecordsInRam = 0;
-            this.files.add(f);
+    /**
+     * Merge consecutive groups of temporary files into single files until no more than maxFilesToMerge remain.
+     * Groups within a pass are merged in parallel on the {@link SharedThreadPool}.  Each merge holds its input files
+     * and its output file open, so the group size and the number of concurrent merges are chosen to keep the number
+     * of open files within maxFilesToMerge (except that a merge always needs at least two inputs).  Because each
+     * group is replaced by its merged file in the same position, records that compare equal are still returned in
+     * the order they were added.
+     */
+    private void mergeToMaxFiles() {
+        final int concurrentMerges = Math.max(1, Math.min(SharedThreadPool.getPoolSize(), this.maxFilesToMerge / 3));
+        final int groupSize = Math.max(2, this.maxFilesToMerge / concurrentMerges - 1);
+        while (this.files.size() > this.maxFilesToMerge) {
+            final List<List<Path>> groups = new ArrayList<>();
+            for (int i = 0; i < this.files.size(); i += groupSize) {
+                groups.add(new ArrayList<>(this.files.subList(i, Math.min(i + groupSize, this.files.size()))));
+            }
+            log.debug(String.format("Merging %d files into %d intermediate files", this.files.size(), groups.size()));
+            final int bufferSize = checkMemoryAndAdjustBuffer(Math.min(this.files.size(), concurrentMerges * (groupSize + 1)));
+            final List<Path> merged = mergeGroups(groups, concurrentMerges, bufferSize);
+            for (final List<Path> group : groups) {
+                if (group.size() > 1) {
+                    IOUtil.deletePaths(group);
+                }
+            }
+            this.files.clear();
+            this.files.addAll(merged);
+        }
+    }
+
+    /**
+     * Merge each group of more than one file, with no more than concurrentMerges merges in progress at a time.
+     * If a merge fails, waits for the others and deletes the files they wrote before rethrowing.
+     * @return the merged file of each group, or the file itself for a group of one
+     */
+    private List<Path> mergeGroups(final List<List<Path>> groups, final int concurrentMerges, final int bufferSize) {
+        final List<Future<Path>> merges = new ArrayList<>(groups.size());
+        final List<Path> merged = new ArrayList<>(groups.size());
+        try {
+            for (final List<Path> group : groups) {
+                if (merges.size() >= concurrentMerges) {
+                    getMergedFile(merges.get(merges.size() - concurrentMerges));
+                }
+                merges.add(group.size() == 1 ?
+                        CompletableFuture.completedFuture(group.get(0)) :
+                        SharedThreadPool.submit(() -> mergeFiles(group, bufferSize)));
+            }
+            for (final Future<Path> merge : merges) {
+                merged.add(getMergedFile(merge));
+            }
+            return merged;
+        } catch (final RuntimeException e) {
+            for (int i = 0; i < merges.size(); i++) {
+                try {
+                    final Path file = getMergedFile(merges.get(i));
+                    if (groups.get(i).size() > 1) {
+                        IOUtil.deletePaths(file);
+                    }
+                } catch (final RuntimeException ignored) {
+                    // the merge that failed, or another one that failed as well
+                }
+            }
+            throw e;
+        }
+    }
+
+    private static Path getMergedFile(final Future<Path> merge) {
+        try {
+            return merge.get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted waiting for temporary files to be merged", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Merge the given sorted files into a single new sorted temporary file.
+     */
+    private Path mergeFiles(final List<Path> group, final int bufferSize) {
+        try {
+            final Path f = newTempFile();
+            final Codec<T> writeCodec = this.codec.clone();
+            try (MergingIterator it = new MergingIterator(group, bufferSize);
+                 OutputStream os = tempStreamFactory.wrapTempOutputStream(Files.newOutputStream(f), Defaults.BUFFER_SIZE)) {
+                writeCodec.setOutputStream(os);
+                while (it.hasNext()) {
+                    writeCodec.encode(it.next());
+                }
+                os.flush();
+            } catch (RuntimeIOException ex) {
+                IOUtil.deletePaths(f);
+                throw new RuntimeIOException("Problem writing temporary file " + f.toUri() +
+                        ".  Try setting TMP_DIR to a file system with lots of space.", ex);
+            } catch (IOException | RuntimeException ex) {
+                IOUtil.deletePaths(f);
+                throw ex;
+            }
+            return f;
         } catch (IOException e) {
             throw new RuntimeIOException(e);
         }
     }
 
+    // Since we need to open and buffer all temp files in the sorting collection at once it is important
+    // to have enough memory left to do this. This method checks to make sure that, given the number of files and
+    // the size of the buffer, we can reasonably open all files. If we can't it will return a buffer size that
+    // is appropriate given the number of temp files and the amount of memory left on the heap. If there isn't
+    // enough memory for buffering it will return zero and all reading will be unbuffered.
+    private int checkMemoryAndAdjustBuffer(int numFiles) {
+        int bufferSize = Defaults.BUFFER_SIZE;
+
+        // garbage collect so that our calculation is accurate.
+        final Runtime rt = Runtime.getRuntime();
+        rt.gc();
+
+        //                             free in heap       space available to expand heap
+        final long allocatableMemory = rt.freeMemory() + (rt.maxMemory() - rt.totalMemory());
+
+        // There is ~20k in overhead per file.
+        final long freeMemory = allocatableMemory - (numFiles * 20 * 1024);
+        // use the floor value from the divide
+        final int memoryPerFile = (int) (freeMemory / numFiles);
+
+        if (memoryPerFile < 0) {
+            log.warn("There is not enough memory per file for buffering. Reading will be unbuffered.");
+            bufferSize = 0;
+        } else if (bufferSize > memoryPerFile) {
+            log.warn(String.format("Default io buffer size of %s is larger than available memory per file of %s.",
+                    StringUtil.humanReadableByteCount(bufferSize),
+                    StringUtil.humanReadableByteCount(memoryPerFile)));
+            bufferSize = memoryPerFile;
+        }
+        return bufferSize;
+    }
 
     /**
      * Creates a new tmp file on one of the available temp filesystems, registers it for deletion
@@ -304,7 +592,12 @@ public class SortingCollection<T> implements Iterable<T> {
         this.iterationStarted = true;
         this.cleanedUp = true;
 
-        IOUtil.deletePaths(this.files);
+        try {
+            // make sure a file being written in the background is also deleted
+            waitForBackgroundSpill();
+        } finally {
+            IOUtil.deletePaths(this.files);
+        }
     }
 
     /**
@@ -503,12 +796,15 @@ public class SortingCollection<T> implements Iterable<T> {
         private final TreeSet<PeekFileRecordIterator> queue;
 
         MergingIterator() {
+            this(files, checkMemoryAndAdjustBuffer(files.size()));
+        }
+
+        MergingIterator(final List<Path> filesToMerge, final int bufferSize) {
             this.queue = new TreeSet<>(new PeekFileRecordIteratorComparator());
             int n = 0;
-            log.debug(String.format("Creating merging iterator from %d files", files.size()));
-            int suggestedBufferSize = checkMemoryAndAdjustBuffer(files.size());
-            for (final Path f : files) {
-                final FileRecordIterator it = new FileRecordIterator(f, suggestedBufferSize);
+            log.debug(String.format("Creating merging iterator from %d files", filesToMerge.size()));
+            for (final Path f : filesToMerge) {
+                final FileRecordIterator it = new FileRecordIterator(f, bufferSize);
                 if (it.hasNext()) {
                     this.queue.add(new PeekFileRecordIterator(it, n++));
                 } else {
@@ -517,38 +813,6 @@ public class SortingCollection<T> implements Iterable<T> {
             }
         }
 
-        // Since we need to open and buffer all temp files in the sorting collection at once it is important
-        // to have enough memory left to do this. This method checks to make sure that, given the number of files and
-        // the size of the buffer, we can reasonably open all files. If we can't it will return a buffer size that
-        // is appropriate given the number of temp files and the amount of memory left on the heap. If there isn't
-        // enough memory for buffering it will return zero and all reading will be unbuffered.
-        private int checkMemoryAndAdjustBuffer(int numFiles) {
-            int bufferSize = Defaults.BUFFER_SIZE;
-
-            // garbage collect so that our calculation is accurate.
-            final Runtime rt = Runtime.getRuntime();
-            rt.gc();
-
-            //                             free in heap       space available to expand heap
-            final long allocatableMemory = rt.freeMemory() + (rt.maxMemory() - rt.totalMemory());
-
-            // There is ~20k in overhead per file.
-            final long freeMemory = allocatableMemory - (numFiles * 20 * 1024);
-            // use the floor value from the divide
-            final int memoryPerFile = (int) (freeMemory / numFiles);
-
-            if (memoryPerFile < 0) {
-                log.warn("There is not enough memory per file for buffering. Reading will be unbuffered.");
-                bufferSize = 0;
-            } else if (bufferSize > memoryPerFile) {
-                log.warn(String.format("Default io buffer size of %s is larger than available memory per file of %s.",
-                        StringUtil.humanReadableByteCount(bufferSize),
-                        StringUtil.humanReadableByteCount(memoryPerFile)));
-                bufferSize = memoryPerFile;
-            }
-            return bufferSize;
-        }
-
         @Override
         public boolean hasNext() {
             return !this.queue.isEmpty();
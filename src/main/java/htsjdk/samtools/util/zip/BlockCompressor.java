@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.util.zip;
+
+import java.util.zip.CRC32;
+
+/**
+ * Compresses a whole block of data, such as the contents of one BGZF block, into raw DEFLATE data in a single call,
+ * rather than through the streaming {@link java.util.zip.Deflater} interface. Implementations are not required to
+ * be thread safe, and are typically owned by a single stream.
+ *
+ * @see DeflaterFactory#makeBlockCompressor(int)
+ */
+public interface BlockCompressor {
+
+    /**
+     * Compress {@code inputLength} bytes of {@code input} as a complete raw DEFLATE stream.
+     * @return the size of the compressed data written to {@code output}, or 0 if it does not fit in
+     * {@code outputLength} bytes, in which case the contents of that part of {@code output} are undefined
+     */
+    int compress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int outputLength);
+
+    /**
+     * @return the CRC32 of {@code length} bytes of {@code data}, as stored in the gzip footer
+     */
+    default long crc32(final byte[] data, final int offset, final int length) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(data, offset, length);
+        return crc32.getValue();
+    }
+
+    /**
+     * Releases any resources, such as native zlib memory, held by this compressor. The compressor must not be
+     * used afterwards. The default implementation does nothing.
+     */
+    default void end() {
+    }
+}
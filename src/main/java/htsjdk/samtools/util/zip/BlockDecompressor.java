@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.util.zip;
+
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+
+/**
+ * Decompresses a whole block of raw DEFLATE data, such as the contents of one BGZF block, whose uncompressed size
+ * is known up front, in a single call rather than through the streaming {@link java.util.zip.Inflater} interface.
+ * Implementations are not required to be thread safe, and are typically owned by a single stream.
+ *
+ * @see InflaterFactory#makeBlockDecompressor()
+ */
+public interface BlockDecompressor {
+
+    /**
+     * Decompress the complete raw DEFLATE stream in {@code inputLength} bytes of {@code input}.
+     * @param outputLength the space available in {@code output}, normally the expected uncompressed size
+     * @return the number of bytes written to {@code output}, which callers should compare with the expected size
+     * @throws DataFormatException if the input is not valid DEFLATE data. Implementations may either throw or stop
+     * after {@code outputLength} bytes if the uncompressed data is larger than that.
+     */
+    int decompress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int outputLength)
+            throws DataFormatException;
+
+    /**
+     * @return the CRC32 of {@code length} bytes of {@code data}, as stored in the gzip footer
+     */
+    default long crc32(final byte[] data, final int offset, final int length) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(data, offset, length);
+        return crc32.getValue();
+    }
+}
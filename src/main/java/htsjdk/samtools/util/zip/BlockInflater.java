@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.util.zip;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+/**
+ * A pure Java {@link BlockDecompressor} for raw DEFLATE data (RFC 1951), tuned for BGZF blocks of at most 64KB
+ * whose compressed and uncompressed data are both entirely in memory. Because the whole input is available, bits
+ * are read from a 64 bit buffer that is refilled at most once per literal or length/distance pair, and Huffman
+ * codes of up to {@value #FAST_BITS} bits, which are almost all of them in practice, are decoded with a single
+ * table lookup. Longer codes fall back to canonical decoding one bit at a time.
+ *
+ * The default {@link InflaterFactory} returns this decompressor when the samjdk.use_java_block_inflater property is
+ * set; otherwise it uses the JDK's zlib based {@link java.util.zip.Inflater}, which is currently faster on most data.
+ * Instances may be reused for any number of blocks but are not thread safe.
+ */
+public final class BlockInflater implements BlockDecompressor {
+    private static final int FAST_BITS = 10;
+    private static final int FAST_MASK = (1 << FAST_BITS) - 1;
+    private static final int MAX_BITS = 15;
+    private static final int MAX_LITERAL_CODES = 288;
+    private static final int MAX_DISTANCE_CODES = 32;
+    private static final int END_OF_BLOCK = 256;
+    // worst case bits for a length/distance pair: 15 bit code + 5 extra bits + 15 bit code + 13 extra bits
+    private static final int MAX_BITS_PER_SYMBOL = 48;
+
+    private static final int[] LENGTH_BASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {
+            0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private static final int[] DISTANCE_BASE = {
+            1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073,
+            4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DISTANCE_EXTRA = {
+            0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private static final HuffmanTable FIXED_LITERALS = new HuffmanTable(MAX_LITERAL_CODES);
+    private static final HuffmanTable FIXED_DISTANCES = new HuffmanTable(MAX_DISTANCE_CODES);
+
+    static {
+        final int[] lengths = new int[MAX_LITERAL_CODES];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, MAX_LITERAL_CODES, 8);
+        final int[] distanceLengths = new int[30];
+        Arrays.fill(distanceLengths, 5);
+        try {
+            FIXED_LITERALS.build(lengths, 0, lengths.length);
+            FIXED_DISTANCES.build(distanceLengths, 0, distanceLengths.length);
+        } catch (final DataFormatException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final HuffmanTable literals = new HuffmanTable(MAX_LITERAL_CODES);
+    private final HuffmanTable distances = new HuffmanTable(MAX_DISTANCE_CODES);
+    private final HuffmanTable codeLengths = new HuffmanTable(CODE_LENGTH_ORDER.length);
+    private final int[] lengths = new int[MAX_LITERAL_CODES + MAX_DISTANCE_CODES];
+    private final int[] codeLengthLengths = new int[CODE_LENGTH_ORDER.length];
+
+    // Input state for the block being decompressed. Bytes are added to the top of bitBuffer as bits are consumed
+    // from the bottom; past the end of the input, zero bytes are added and counted in paddingBytes.
+    private byte[] input;
+    private int inputPosition;
+    private int inputEnd;
+    private long bitBuffer;
+    private int bitCount;
+    private int paddingBytes;
+
+    @Override
+    public int decompress(final byte[] input, final int inputOffset, final int inputLength,
+                          final byte[] output, final int outputOffset, final int outputLength) throws DataFormatException {
+        if (inputOffset < 0 || inputLength < 0 || inputOffset + inputLength > input.length ||
+                outputOffset < 0 || outputLength < 0 || outputOffset + outputLength > output.length) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        this.input = input;
+        inputPosition = inputOffset;
+        inputEnd = inputOffset + inputLength;
+        bitBuffer = 0;
+        bitCount = 0;
+        paddingBytes = 0;
+        try {
+            final int outputEnd = outputOffset + outputLength;
+            int outputPosition = outputOffset;
+            boolean lastBlock;
+            do {
+                refill();
+                lastBlock = bits(1) == 1;
+                switch (bits(2)) {
+                    case 0:
+                        outputPosition = copyStoredBlock(output, outputPosition, outputEnd);
+                        break;
+                    case 1:
+                        outputPosition = inflateBlock(FIXED_LITERALS, FIXED_DISTANCES, output, outputOffset, outputPosition, outputEnd);
+                        break;
+                    case 2:
+                        readDynamicTables();
+                        outputPosition = inflateBlock(literals, distances, output, outputOffset, outputPosition, outputEnd);
+                        break;
+                    default:
+                        throw new DataFormatException("Invalid deflate block type");
+                }
+            } while (!lastBlock);
+            checkNotTruncated();
+            return outputPosition - outputOffset;
+        } finally {
+            this.input = null;
+        }
+    }
+
+    /**
+     * Fill the bit buffer with at least 57 bits, padding with zeros past the end of the input.
+     */
+    private void refill() throws DataFormatException {
+        checkNotTruncated();
+        while (bitCount <= 56) {
+            if (inputPosition < inputEnd) {
+                bitBuffer |= (long) (input[inputPosition++] & 0xFF) << bitCount;
+            } else {
+                paddingBytes++;
+            }
+            bitCount += 8;
+        }
+    }
+
+    /**
+     * Throw if any of the zero bits added past the end of the input have been consumed.
+     */
+    private void checkNotTruncated() throws DataFormatException {
+        if (paddingBytes * 8 > bitCount) {
+            throw new DataFormatException("Unexpected end of deflate data");
+        }
+    }
+
+    /** Consume and return the next {@code n} bits, which must already be in the buffer. */
+    private int bits(final int n) {
+        final int value = (int) (bitBuffer & ((1L << n) - 1));
+        bitBuffer >>>= n;
+        bitCount -= n;
+        return value;
+    }
+
+    /** Decode the next symbol with {@code table}; the buffer must hold at least {@value #MAX_BITS} bits. */
+    private int decode(final HuffmanTable table) throws DataFormatException {
+        final int entry = table.fast[(int) bitBuffer & FAST_MASK];
+        if (entry >= 0) {
+            final int length = entry & 0xF;
+            bitBuffer >>>= length;
+            bitCount -= length;
+            return entry >>> 4;
+        }
+        return decodeSlow(table);
+    }
+
+    /**
+     * Decode a code longer than {@value #FAST_BITS} bits by walking the canonical code one bit at a time.
+     */
+    private int decodeSlow(final HuffmanTable table) throws DataFormatException {
+        long buffer = bitBuffer;
+        int code = 0;
+        int first = 0;
+        int index = 0;
+        for (int length = 1; length <= MAX_BITS; length++) {
+            code |= (int) (buffer & 1);
+            buffer >>>= 1;
+            final int count = table.counts[length];
+            if (code - count < first) {
+                bitBuffer = buffer;
+                bitCount -= length;
+                return table.symbols[index + (code - first)];
+            }
+            index += count;
+            first = (first + count) << 1;
+            code <<= 1;
+        }
+        throw new DataFormatException("Invalid deflate Huffman code");
+    }
+
+    /**
+     * Decode the literals and length/distance pairs of one Huffman coded block.
+     */
+    private int inflateBlock(final HuffmanTable literalTable, final HuffmanTable distanceTable, final byte[] output,
+                             final int outputStart, int outputPosition, final int outputEnd) throws DataFormatException {
+        while (true) {
+            if (bitCount < MAX_BITS_PER_SYMBOL) {
+                refill();
+            }
+            final int symbol = decode(literalTable);
+            if (symbol < END_OF_BLOCK) {
+                if (outputPosition == outputEnd) {
+                    throw new DataFormatException("Uncompressed data is larger than " + (outputEnd - outputStart) + " bytes");
+                }
+                output[outputPosition++] = (byte) symbol;
+            } else if (symbol == END_OF_BLOCK) {
+                return outputPosition;
+            } else {
+                final int lengthCode = symbol - END_OF_BLOCK - 1;
+                if (lengthCode >= LENGTH_BASE.length) {
+                    throw new DataFormatException("Invalid deflate length code " + symbol);
+                }
+                final int length = LENGTH_BASE[lengthCode] + bits(LENGTH_EXTRA[lengthCode]);
+                final int distanceCode = decode(distanceTable);
+                if (distanceCode >= DISTANCE_BASE.length) {
+                    throw new DataFormatException("Invalid deflate distance code " + distanceCode);
+                }
+                final int distance = DISTANCE_BASE[distanceCode] + bits(DISTANCE_EXTRA[distanceCode]);
+                if (distance > outputPosition - outputStart) {
+                    throw new DataFormatException("Invalid deflate distance " + distance + " too far back");
+                }
+                if (length > outputEnd - outputPosition) {
+                    throw new DataFormatException("Uncompressed data is larger than " + (outputEnd - outputStart) + " bytes");
+                }
+                int from = outputPosition - distance;
+                if (distance >= length) {
+                    System.arraycopy(output, from, output, outputPosition, length);
+                    outputPosition += length;
+                } else {
+                    // overlapping copy, which repeats the last distance bytes
+                    for (final int end = outputPosition + length; outputPosition < end; ) {
+                        output[outputPosition++] = output[from++];
+                    }
+                }
+            }
+        }
+    }
+
+    private int copyStoredBlock(final byte[] output, final int outputPosition, final int outputEnd) throws DataFormatException {
+        // skip to the byte boundary, and return the whole bytes still in the bit buffer to the input
+        bits(bitCount & 7);
+        final int bufferedInputBytes = bitCount / 8 - paddingBytes;
+        if (bufferedInputBytes < 0) {
+            throw new DataFormatException("Unexpected end of deflate data");
+        }
+        inputPosition -= bufferedInputBytes;
+        bitBuffer = 0;
+        bitCount = 0;
+        paddingBytes = 0;
+
+        if (inputEnd - inputPosition < 4) {
+            throw new DataFormatException("Unexpected end of deflate data");
+        }
+        final int length = (input[inputPosition] & 0xFF) | (input[inputPosition + 1] & 0xFF) << 8;
+        final int complement = (input[inputPosition + 2] & 0xFF) | (input[inputPosition + 3] & 0xFF) << 8;
+        if (length != (~complement & 0xFFFF)) {
+            throw new DataFormatException("Invalid stored block length");
+        }
+        inputPosition += 4;
+        if (inputEnd - inputPosition < length) {
+            throw new DataFormatException("Unexpected end of deflate data");
+        }
+        if (outputEnd - outputPosition < length) {
+            throw new DataFormatException("Uncompressed data is larger than the output");
+        }
+        System.arraycopy(input, inputPosition, output, outputPosition, length);
+        inputPosition += length;
+        return outputPosition + length;
+    }
+
+    private void readDynamicTables() throws DataFormatException {
+        final int numLiteralCodes = bits(5) + 257;
+        final int numDistanceCodes = bits(5) + 1;
+        final int numCodeLengthCodes = bits(4) + 4;
+        if (numLiteralCodes > 286 || numDistanceCodes > 30) {
+            throw new DataFormatException("Too many deflate length or distance codes");
+        }
+
+        Arrays.fill(codeLengthLengths, 0);
+        for (int i = 0; i < numCodeLengthCodes; i++) {
+            if (bitCount < 3) {
+                refill();
+            }
+            codeLengthLengths[CODE_LENGTH_ORDER[i]] = bits(3);
+        }
+        codeLengths.build(codeLengthLengths, 0, codeLengthLengths.length);
+
+        final int numLengths = numLiteralCodes + numDistanceCodes;
+        int i = 0;
+        while (i < numLengths) {
+            if (bitCount < MAX_BITS + 7) {
+                refill();
+            }
+            final int symbol = decode(codeLengths);
+            if (symbol < 16) {
+                lengths[i++] = symbol;
+            } else {
+                final int value;
+                final int repeat;
+                if (symbol == 16) {
+                    if (i == 0) {
+                        throw new DataFormatException("Deflate code length repeat with no previous length");
+                    }
+                    value = lengths[i - 1];
+                    repeat = 3 + bits(2);
+                } else if (symbol == 17) {
+                    value = 0;
+                    repeat = 3 + bits(3);
+                } else {
+                    value = 0;
+                    repeat = 11 + bits(7);
+                }
+                if (i + repeat > numLengths) {
+                    throw new DataFormatException("Too many deflate code lengths");
+                }
+                Arrays.fill(lengths, i, i + repeat, value);
+                i += repeat;
+            }
+        }
+        if (lengths[END_OF_BLOCK] == 0) {
+            throw new DataFormatException("Deflate block has no end of block code");
+        }
+        literals.build(lengths, 0, numLiteralCodes);
+        distances.build(lengths, numLiteralCodes, numDistanceCodes);
+    }
+
+    /**
+     * A canonical Huffman code, with a lookup table for codes of up to {@value #FAST_BITS} bits.
+     */
+    private static final class HuffmanTable {
+        /** indexed by the next FAST_BITS input bits: (symbol << 4) | code length, or -1 for longer or unused codes */
+        final int[] fast = new int[1 << FAST_BITS];
+        /** the number of codes of each length */
+        final int[] counts = new int[MAX_BITS + 1];
+        /** symbols ordered by code length and then by value, which is the order of their canonical codes */
+        final int[] symbols;
+        private final int[] offsets = new int[MAX_BITS + 2];
+
+        HuffmanTable(final int maxSymbols) {
+            symbols = new int[maxSymbols];
+        }
+
+        void build(final int[] codeLengths, final int offset, final int numSymbols) throws DataFormatException {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < numSymbols; i++) {
+                counts[codeLengths[offset + i]]++;
+            }
+            counts[0] = 0;
+            int left = 1;
+            for (int length = 1; length <= MAX_BITS; length++) {
+                left = (left << 1) - counts[length];
+                if (left < 0) {
+                    throw new DataFormatException("Over-subscribed deflate Huffman code");
+                }
+            }
+
+            offsets[1] = 0;
+            for (int length = 1; length <= MAX_BITS; length++) {
+                offsets[length + 1] = offsets[length] + counts[length];
+            }
+            for (int i = 0; i < numSymbols; i++) {
+                final int length = codeLengths[offset + i];
+                if (length != 0) {
+                    symbols[offsets[length]++] = i;
+                }
+            }
+
+            Arrays.fill(fast, -1);
+            int code = 0;
+            int index = 0;
+            for (int length = 1; length <= FAST_BITS; length++) {
+                for (int i = 0; i < counts[length]; i++, code++) {
+                    final int entry = (symbols[index++] << 4) | length;
+                    // codes are stored most significant bit first, but bits are read from the least significant end
+                    for (int j = Integer.reverse(code) >>> (32 - length); j < fast.length; j += 1 << length) {
+                        fast[j] = entry;
+                    }
+                }
+                code <<= 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.util.zip;
+
+import java.util.zip.Deflater;
+
+/**
+ * {@link BlockCompressor} backed by a {@link Deflater}, which must have been created in raw (gzip compatible) mode.
+ */
+public final class DeflaterBlockCompressor implements BlockCompressor {
+    private final Deflater deflater;
+
+    public DeflaterBlockCompressor(final Deflater deflater) {
+        this.deflater = deflater;
+    }
+
+    @Override
+    public int compress(final byte[] input, final int inputOffset, final int inputLength,
+                        final byte[] output, final int outputOffset, final int outputLength) {
+        deflater.reset();
+        deflater.setInput(input, inputOffset, inputLength);
+        deflater.finish();
+        final int compressedSize = deflater.deflate(output, outputOffset, outputLength);
+        return deflater.finished() ? compressedSize : 0;
+    }
+
+    @Override
+    public void end() {
+        deflater.end();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + deflater.getClass().getSimpleName() + ")";
+    }
+}
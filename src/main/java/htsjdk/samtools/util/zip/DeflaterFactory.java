@@ -27,7 +27,7 @@ import htsjdk.samtools.util.BlockCompressedOutputStream;
 import java.util.zip.Deflater;
 
 /**
- * Factory for {@link Deflater} objects used by {@link BlockCompressedOutputStream}.
+ * Factory for {@link Deflater} and {@link BlockCompressor} objects used by {@link BlockCompressedOutputStream}.
  * This class may be extended to provide alternative deflaters (e.g., for improved performance).
  */
 public class DeflaterFactory {
@@ -45,4 +45,14 @@ public class DeflaterFactory {
     public Deflater makeDeflater(final int compressionLevel, final boolean gzipCompatible) {
         return new Deflater(compressionLevel, gzipCompatible);
     }
+
+    /**
+     * Returns a compressor for whole raw DEFLATE blocks, which is what {@link BlockCompressedOutputStream} uses to
+     * compress BGZF blocks. Subclasses may override to provide a faster implementation.
+     * The default implementation wraps the deflater returned by {@link #makeDeflater(int, boolean)}.
+     * @param compressionLevel the compression level (0-9)
+     */
+    public BlockCompressor makeBlockCompressor(final int compressionLevel) {
+        return new DeflaterBlockCompressor(makeDeflater(compressionLevel, true));
+    }
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.samtools.util.zip;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * {@link BlockDecompressor} backed by an {@link Inflater}, which must have been created in raw (gzip compatible) mode.
+ */
+public final class InflaterBlockDecompressor implements BlockDecompressor {
+    private final Inflater inflater;
+
+    public InflaterBlockDecompressor(final Inflater inflater) {
+        this.inflater = inflater;
+    }
+
+    @Override
+    public int decompress(final byte[] input, final int inputOffset, final int inputLength,
+                          final byte[] output, final int outputOffset, final int outputLength) throws DataFormatException {
+        inflater.reset();
+        inflater.setInput(input, inputOffset, inputLength);
+        // the inflater may not consume the end of block code once the output is full, so don't require finished()
+        return inflater.inflate(output, outputOffset, outputLength);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + inflater.getClass().getSimpleName() + ")";
+    }
+}
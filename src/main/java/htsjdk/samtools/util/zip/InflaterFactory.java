@@ -23,13 +23,14 @@
  */
 package htsjdk.samtools.util.zip;
 
+import htsjdk.samtools.Defaults;
 import htsjdk.samtools.util.BlockGunzipper;
 import java.util.zip.Inflater;
 
 /**
- * Factory for {@link Inflater} objects used by {@link BlockGunzipper}.
+ * Factory for {@link Inflater} and {@link BlockDecompressor} objects used by {@link BlockGunzipper}.
  * This class may be extended to provide alternative inflaters (e.g., for improved performance).
- * The default implementation returns a JDK {@link Inflater}
+ * The default implementation returns a JDK {@link Inflater}.
  */
 public class InflaterFactory {
 
@@ -46,4 +47,26 @@ public class InflaterFactory {
     public Inflater makeInflater(final boolean gzipCompatible) {
         return new Inflater(gzipCompatible);
     }
+
+    /**
+     * Returns a decompressor for whole raw DEFLATE blocks, which is what {@link BlockGunzipper} uses to decompress
+     * BGZF blocks. Subclasses may override to provide a faster implementation.
+     * The default implementation wraps the inflater returned by {@link #makeInflater(boolean)}, or returns a pure
+     * Java {@link BlockInflater} if {@link Defaults#USE_JAVA_BLOCK_INFLATER} is set and a subclass has not
+     * overridden {@link #makeInflater(boolean)}.
+     */
+    public BlockDecompressor makeBlockDecompressor() {
+        if (Defaults.USE_JAVA_BLOCK_INFLATER && !overridesMakeInflater()) {
+            return new BlockInflater();
+        }
+        return new InflaterBlockDecompressor(makeInflater(true));
+    }
+
+    private boolean overridesMakeInflater() {
+        try {
+            return getClass().getMethod("makeInflater", boolean.class).getDeclaringClass() != InflaterFactory.class;
+        } catch (final NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.tribble.readers;
+
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.RuntimeIOException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link LineIterator} that reads the bytes of a stream into its own buffer and finds the lines in place, so that
+ * a codec can decode each line from the buffer with {@link #nextLine()} instead of from a String.  Lines may be
+ * terminated by '\n', '\r' or "\r\n", as for {@link java.io.BufferedReader#readLine()}.  The {@link #next()} and
+ * {@link #peek()} methods decode lines as UTF-8, and can be mixed with {@link #nextLine()}, e.g. to read a header.
+ */
+public class ByteLineIterator implements LineIterator, Closeable {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream inputStream;
+    private byte[] buffer;
+    // the unconsumed bytes are buffer[bufferStart, bufferEnd), and scanning for a terminator resumes at scanStart
+    private int bufferStart = 0;
+    private int bufferEnd = 0;
+    private int scanStart = 0;
+    private boolean eof = false;
+
+    // the next line, if it has been found, is buffer[lineStart, lineEnd), and the line after it starts at nextStart
+    private boolean lineFound = false;
+    private int lineStart;
+    private int lineEnd;
+    private int nextStart;
+    // true if the found line was returned by nextLine() and must stay in place until the next call
+    private boolean lineReturned = false;
+    private String peekedLine = null;
+
+    public ByteLineIterator(final InputStream inputStream) {
+        this(inputStream, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ByteLineIterator(final InputStream inputStream, final int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("The buffer size must be positive: " + bufferSize);
+        }
+        this.inputStream = inputStream;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Advances to the next line, which is then held in {@link #getLineBuffer()} between {@link #getLineStart()} and
+     * {@link #getLineEnd()}, excluding the terminator, until the next call to any method of this iterator.
+     *
+     * @return false if there are no more lines
+     */
+    public boolean nextLine() {
+        if (!findLine()) {
+            return false;
+        }
+        peekedLine = null;
+        lineReturned = true;
+        return true;
+    }
+
+    /**
+     * @return the buffer holding the line found by the last call to {@link #nextLine()}
+     */
+    public byte[] getLineBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the offset of the first byte of the line found by the last call to {@link #nextLine()}
+     */
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    /**
+     * @return the offset just past the last byte of the line found by the last call to {@link #nextLine()}
+     */
+    public int getLineEnd() {
+        return lineEnd;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return findLine();
+    }
+
+    @Override
+    public String next() {
+        if (!findLine()) {
+            throw new NoSuchElementException();
+        }
+        final String line = peekedLine != null ? peekedLine : currentLineAsString();
+        peekedLine = null;
+        consumeLine();
+        return line;
+    }
+
+    @Override
+    public String peek() {
+        if (!findLine()) {
+            return null;
+        }
+        if (peekedLine == null) {
+            peekedLine = currentLineAsString();
+        }
+        return peekedLine;
+    }
+
+    @Override
+    public void close() {
+        CloserUtil.close(inputStream);
+    }
+
+    private String currentLineAsString() {
+        return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    private void consumeLine() {
+        bufferStart = nextStart;
+        scanStart = nextStart;
+        lineFound = false;
+        lineReturned = false;
+    }
+
+    /**
+     * Finds the next line in the buffer, reading more of the stream as needed
+     * @return false if there are no more lines
+     */
+    private boolean findLine() {
+        if (lineReturned) {
+            consumeLine();
+        }
+        while (!lineFound) {
+            for (int i = scanStart; i < bufferEnd; i++) {
+                final byte b = buffer[i];
+                if (b == '\n' || b == '\r') {
+                    if (b == '\r' && i + 1 == bufferEnd && !eof) {
+                        // a following '\n' would belong to this terminator, so read on before deciding
+                        break;
+                    }
+                    lineStart = bufferStart;
+                    lineEnd = i;
+                    nextStart = b == '\r' && i + 1 < bufferEnd && buffer[i + 1] == '\n' ? i + 2 : i + 1;
+                    lineFound = true;
+                    return true;
+                }
+                scanStart = i + 1;
+            }
+            if (eof) {
+                if (bufferStart == bufferEnd) {
+                    return false;
+                }
+                // the last line has no terminator
+                lineStart = bufferStart;
+                lineEnd = bufferEnd;
+                nextStart = bufferEnd;
+                lineFound = true;
+                return true;
+            }
+            fill();
+        }
+        return true;
+    }
+
+    /**
+     * Reads more of the stream, first moving the unconsumed bytes to the front of the buffer, or growing the
+     * buffer if they fill it
+     */
+    private void fill() {
+        final int remaining = bufferEnd - bufferStart;
+        if (bufferStart > 0) {
+            System.arraycopy(buffer, bufferStart, buffer, 0, remaining);
+            scanStart -= bufferStart;
+            bufferStart = 0;
+            bufferEnd = remaining;
+        } else if (bufferEnd == buffer.length) {
+            final byte[] grown = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, bufferEnd);
+            buffer = grown;
+        }
+        try {
+            final int n = inputStream.read(buffer, bufferEnd, buffer.length - bufferEnd);
+            if (n < 0) {
+                eof = true;
+            } else {
+                bufferEnd += n;
+            }
+        } catch (final IOException e) {
+            throw new RuntimeIOException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ByteLineIterator(" + inputStream + ")";
+    }
+}
@@ -25,6 +25,7 @@
 
 package htsjdk.variant.bcf2;
 
+import htsjdk.samtools.Defaults;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.tribble.BinaryFeatureCodec;
 import htsjdk.tribble.Feature;
@@ -33,6 +34,7 @@ import htsjdk.tribble.TribbleException;
 import htsjdk.tribble.readers.*;
 import htsjdk.variant.utils.GeneralUtils;
 import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.ColumnarGenotypesContext;
 import htsjdk.variant.variantcontext.GenotypeBuilder;
 import htsjdk.variant.variantcontext.LazyGenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
@@ -42,6 +44,7 @@ import htsjdk.variant.vcf.VCFCodec;
 import htsjdk.variant.vcf.VCFCompoundHeaderLine;
 import htsjdk.variant.vcf.VCFConstants;
 import htsjdk.variant.vcf.VCFContigHeaderLine;
+import htsjdk.variant.vcf.VCFDecodingProjection;
 import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFHeaderLineType;
 
@@ -102,6 +105,22 @@ public class BCF2Codec extends BinaryFeatureCodec<VariantContext> {
      */
     private GenotypeBuilder[] builders = null;
 
+    /**
+     * If true, genotypes are decoded into a {@link ColumnarGenotypesContext} rather than one object per sample
+     */
+    private boolean columnarGenotypes = Defaults.USE_COLUMNAR_GENOTYPES;
+
+    /**
+     * The samples and fields to decode, and the header of the decoded records, which holds only the projected samples
+     */
+    private VCFDecodingProjection projection = VCFDecodingProjection.ALL;
+    private VCFHeader projectedHeader = null;
+
+    /**
+     * The offsets of the projected samples among all samples, or null if all samples are decoded
+     */
+    private int[] projectedSampleOffsets = null;
+
     // for error handling
     private int recordNo = 0;
     private int pos = 0;
@@ -217,15 +236,11 @@ public class BCF2Codec extends BinaryFeatureCodec<VariantContext> {
         // prepare the genotype field decoders
         gtFieldDecoders = new BCF2GenotypeFieldDecoders(header);
 
-        // create and initialize the genotype builder array
-        final int nSamples = header.getNGenotypeSamples();
-        builders = new GenotypeBuilder[nSamples];
-        for ( int i = 0; i < nSamples; i++ ) {
-            builders[i] = new GenotypeBuilder(header.getGenotypeSamples().get(i));
-        }
+        // create and initialize the genotype builder array, for the projected samples only
+        updateProjectedHeader();
 
         // position right before next line (would be right before first real record byte at end of header)
-        return new FeatureCodecHeader(header, inputStream.getPosition());
+        return new FeatureCodecHeader(projectedHeader, inputStream.getPosition());
     }
 
     @Override
@@ -407,6 +422,10 @@ public class BCF2Codec extends BinaryFeatureCodec<VariantContext> {
         final Map<String, Object> infoFieldEntries = new HashMap<String, Object>(numInfoFields);
         for ( int i = 0; i < numInfoFields; i++ ) {
             final String key = getDictionaryString();
+            if ( ! projection.includesInfoKey(key) ) {
+                decoder.skipTypedValue();
+                continue;
+            }
             Object value = decoder.decodeTypedValue();
             final VCFCompoundHeaderLine metaData = VariantContextUtils.getMetaDataForField(header, key);
             if ( metaData.getType() == VCFHeaderLineType.Flag ) value = true; // special case for flags
@@ -431,15 +450,18 @@ public class BCF2Codec extends BinaryFeatureCodec<VariantContext> {
      */
     private void createLazyGenotypesDecoder( final SitesInfoForDecoding siteInfo,
                                              final VariantContextBuilder builder ) {
-        if (siteInfo.nSamples > 0) {
+        if (siteInfo.nSamples > 0 && projectedHeader.hasGenotypingData()) {
             final LazyGenotypesContext.LazyParser lazyParser =
                     new BCF2LazyGenotypesDecoder(this, siteInfo.alleles, siteInfo.nSamples, siteInfo.nFormatFields, builders);
 
-            final LazyData lazyData = new LazyData(header, siteInfo.nFormatFields, decoder.getRecordBytes());
-            final LazyGenotypesContext lazy = new LazyGenotypesContext(lazyParser, lazyData, header.getNGenotypeSamples());
+            final boolean projected = projectedSampleOffsets != null || projection.getFormatKeys() != null;
+            final LazyData lazyData = new LazyData(header, siteInfo.nFormatFields, decoder.getRecordBytes(), projected);
+            final LazyGenotypesContext lazy = columnarGenotypes ?
+                    new ColumnarGenotypesContext(lazyParser, lazyData, projectedHeader.getNGenotypeSamples()) :
+                    new LazyGenotypesContext(lazyParser, lazyData, projectedHeader.getNGenotypeSamples());
 
             // did we resort the sample names?  If so, we need to load the genotype data
-            if ( !header.samplesWereAlreadySorted() )
+            if ( !projectedHeader.samplesWereAlreadySorted() )
                 lazy.decode();
 
             builder.genotypesNoValidation(lazy);
@@ -450,11 +472,20 @@ public class BCF2Codec extends BinaryFeatureCodec<VariantContext> {
         final public VCFHeader header;
         final public int nGenotypeFields;
         final public byte[] bytes;
+        /**
+         * true if the decoding projection drops samples or fields from these bytes, which then can't be written as is
+         */
+        final public boolean projected;
 
         public LazyData(final VCFHeader header, final int nGenotypeFields, final byte[] bytes) {
+            this(header, nGenotypeFields, bytes, false);
+        }
+
+        public LazyData(final VCFHeader header, final int nGenotypeFields, final byte[] bytes, final boolean projected) {
             this.header = header;
             this.nGenotypeFields = nGenotypeFields;
             this.bytes = bytes;
+            this.projected = projected;
         }
     }
 
@@ -494,6 +525,96 @@ public class BCF2Codec extends BinaryFeatureCodec<VariantContext> {
         return header;
     }
 
+    /**
+     * @return the header of the decoded records, which has only the samples of the decoding projection
+     */
+    protected VCFHeader getProjectedHeader() {
+        return projectedHeader;
+    }
+
+    /**
+     * @return the offsets of the projected samples among the samples of the file, or null if all are decoded
+     */
+    protected int[] getProjectedSampleOffsets() {
+        return projectedSampleOffsets;
+    }
+
+    /**
+     * Decode only the samples, INFO keys and FORMAT keys in the given projection; the other fields are skipped
+     * without being decoded.  If the projection selects samples, the header returned by {@link #readHeader} has only
+     * those samples.  Should be set before the header is read.
+     *
+     * @param projection the fields to decode, {@link VCFDecodingProjection#ALL} to decode everything
+     */
+    public void setDecodingProjection(final VCFDecodingProjection projection) {
+        if ( projection == null )
+            throw new IllegalArgumentException("projection cannot be null");
+        this.projection = projection;
+        if ( header != null )
+            updateProjectedHeader();
+    }
+
+    /**
+     * Prepare to decode the records of the file whose header was read by headerSource, sharing its parsed header,
+     * dictionaries and decoding projection rather than reading the header again.  None of these are modified while
+     * decoding, so several codecs that share them can decode records of the same file concurrently.
+     *
+     * @param headerSource a codec that has read the header of the file
+     */
+    public void shareHeader(final BCF2Codec headerSource) {
+        if ( headerSource.header == null )
+            throw new IllegalArgumentException("headerSource has not read a header");
+        bcfVersion = headerSource.bcfVersion;
+        header = headerSource.header;
+        contigNames.clear();
+        contigNames.addAll(headerSource.contigNames);
+        dictionary = headerSource.dictionary;
+        gtFieldDecoders = headerSource.gtFieldDecoders;
+        projection = headerSource.projection;
+        projectedHeader = headerSource.projectedHeader;
+        projectedSampleOffsets = headerSource.projectedSampleOffsets;
+        createBuilders();
+    }
+
+    private void updateProjectedHeader() {
+        projectedHeader = projection.projectHeader(header);
+        projectedSampleOffsets = projection.getSampleOffsets(header);
+        createBuilders();
+    }
+
+    private void createBuilders() {
+        final int nSamples = projectedHeader.getNGenotypeSamples();
+        builders = new GenotypeBuilder[nSamples];
+        for ( int i = 0; i < nSamples; i++ ) {
+            builders[i] = new GenotypeBuilder(projectedHeader.getGenotypeSamples().get(i));
+        }
+    }
+
+    /**
+     * @return the samples and fields this codec decodes
+     */
+    public VCFDecodingProjection getDecodingProjection() {
+        return projection;
+    }
+
+    /**
+     * Decode the genotypes of each record into primitive columns held by a {@link ColumnarGenotypesContext}, rather
+     * than into one {@link htsjdk.variant.variantcontext.Genotype} object per sample.  Defaults to
+     * {@link Defaults#USE_COLUMNAR_GENOTYPES}.
+     *
+     * @param columnarGenotypes true to decode genotypes into columns
+     */
+    public void setColumnarGenotypes(final boolean columnarGenotypes) {
+        this.columnarGenotypes = columnarGenotypes;
+    }
+
+    /**
+     * @return true if genotypes are decoded into a {@link ColumnarGenotypesContext}
+     */
+    public boolean isColumnarGenotypes() {
+        return columnarGenotypes;
+    }
+
     protected BCF2GenotypeFieldDecoders.Decoder getGenotypeFieldDecoder(final String field) {
         return gtFieldDecoders.getDecoder(field);
     }
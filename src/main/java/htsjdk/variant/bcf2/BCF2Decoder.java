@@ -114,6 +114,28 @@ public final class BCF2Decoder {
         this.recordStream = new ByteArrayInputStream(recordBytes);
     }
 
+    /**
+     * Skip the next numBytes bytes of the current block
+     *
+     * @param numBytes
+     */
+    public void skipBytes(final int numBytes) {
+        if ( numBytes < 0 || recordStream.skip(numBytes) != numBytes )
+            throw new TribbleException("Failed to skip " + numBytes + " bytes of the BCF2 record");
+    }
+
+    /**
+     * Read the next length bytes of the current block into dest, starting at offset
+     *
+     * @param dest
+     * @param offset
+     * @param length
+     */
+    public void readBytes(final byte[] dest, final int offset, final int length) {
+        if ( recordStream.read(dest, offset, length) != length )
+            throw new TribbleException("Failed to read " + length + " bytes of the BCF2 record");
+    }
+
     // ----------------------------------------------------------------------
     //
     // High-level decoder
@@ -152,6 +174,15 @@ public final class BCF2Decoder {
         }
     }
 
+    /**
+     * Skip over the next typed value without decoding it
+     */
+    public final void skipTypedValue() throws IOException {
+        final byte typeDescriptor = readTypeDescriptor();
+        final int size = decodeNumberOfElements(typeDescriptor);
+        skipBytes(size * BCF2Utils.decodeType(typeDescriptor).getSizeInBytes());
+    }
+
     public final Object decodeSingleValue(final BCF2Type type) throws IOException {
         // TODO -- decodeTypedValue should integrate this routine
         final int value = decodeInt(type);
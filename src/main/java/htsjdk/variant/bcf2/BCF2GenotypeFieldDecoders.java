@@ -27,6 +27,7 @@ package htsjdk.variant.bcf2;
 
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.GenotypeColumns;
 import htsjdk.variant.vcf.VCFConstants;
 import htsjdk.variant.vcf.VCFHeader;
 
@@ -95,6 +96,9 @@ public class BCF2GenotypeFieldDecoders {
      * decoders for specific genotype field values. For example,
      * we use a special decoder to directly read the BCF2 data for
      * the PL field into a int[] rather than the generic List of Integer
+     *
+     * The second decode method writes the field of each sample directly
+     * into GenotypeColumns, for columnar genotypes, instead of into builders.
      */
     public interface Decoder {
         public void decode(final List<Allele> siteAlleles,
@@ -103,6 +107,15 @@ public class BCF2GenotypeFieldDecoders {
                            final byte typeDescriptor,
                            final int numElements,
                            final GenotypeBuilder[] gbs) throws IOException;
+
+        public default void decode(final List<Allele> siteAlleles,
+                                   final String field,
+                                   final BCF2Decoder decoder,
+                                   final byte typeDescriptor,
+                                   final int numElements,
+                                   final GenotypeColumns.Builder columns) throws IOException {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot decode " + field + " into columns");
+        }
     }
 
     private class GTDecoder implements Decoder {
@@ -115,6 +128,35 @@ public class BCF2GenotypeFieldDecoders {
             }
         }
 
+        @Override
+        public void decode(final List<Allele> siteAlleles, final String field, final BCF2Decoder decoder, final byte typeDescriptor, final int numElements, final GenotypeColumns.Builder columns) throws IOException {
+            final BCF2Type type = BCF2Utils.decodeType(typeDescriptor);
+            if ( ENABLE_FASTPATH_GT && siteAlleles.size() == 2 && numElements == 2 ) {
+                // as fastBiallelicDiploidDecode does, but writing allele by allele rather than caching lists
+                for ( int sample = 0; sample < columns.size(); sample++ ) {
+                    final int a1 = decoder.decodeInt(type);
+                    final int a2 = decoder.decodeInt(type);
+                    if ( a1 != type.getMissingBytes() ) {
+                        columns.allele(sample, getAlleleFromEncoded(siteAlleles, a1));
+                        if ( a2 != type.getMissingBytes() )
+                            columns.allele(sample, getAlleleFromEncoded(siteAlleles, a2));
+                    }
+                    columns.phased(sample, (a2 & 0x01) == 1);
+                }
+            } else {
+                // a single cache for the encoded genotypes, since we don't actually need this vector
+                final int[] tmp = new int[numElements];
+                for ( int sample = 0; sample < columns.size(); sample++ ) {
+                    final int[] encoded = decoder.decodeIntArray(numElements, type, tmp);
+                    if ( encoded != null ) {
+                        for ( final int encode : encoded )
+                            columns.allele(sample, getAlleleFromEncoded(siteAlleles, encode));
+                        columns.phased(sample, ((encoded.length > 1 ? encoded[1] : encoded[0]) & 0x01) == 1);
+                    }
+                }
+            }
+        }
+
         /**
          * fast path for many samples with diploid genotypes
          *
@@ -216,6 +258,14 @@ public class BCF2GenotypeFieldDecoders {
                 gb.DP(decoder.decodeInt(typeDescriptor, -1));
             }
         }
+
+        @Override
+        public void decode(final List<Allele> siteAlleles, final String field, final BCF2Decoder decoder, final byte typeDescriptor, final int numElements, final GenotypeColumns.Builder columns) throws IOException {
+            for ( int sample = 0; sample < columns.size(); sample++ ) {
+                // the -1 is for missing
+                columns.DP(sample, decoder.decodeInt(typeDescriptor, -1));
+            }
+        }
     }
 
     private class GQDecoder implements Decoder {
@@ -226,6 +276,14 @@ public class BCF2GenotypeFieldDecoders {
                 gb.GQ(decoder.decodeInt(typeDescriptor, -1));
             }
         }
+
+        @Override
+        public void decode(final List<Allele> siteAlleles, final String field, final BCF2Decoder decoder, final byte typeDescriptor, final int numElements, final GenotypeColumns.Builder columns) throws IOException {
+            for ( int sample = 0; sample < columns.size(); sample++ ) {
+                // the -1 is for missing
+                columns.GQ(sample, decoder.decodeInt(typeDescriptor, -1));
+            }
+        }
     }
 
     private class ADDecoder implements Decoder {
@@ -235,6 +293,13 @@ public class BCF2GenotypeFieldDecoders {
                 gb.AD(decoder.decodeIntArray(typeDescriptor, numElements));
             }
         }
+
+        @Override
+        public void decode(final List<Allele> siteAlleles, final String field, final BCF2Decoder decoder, final byte typeDescriptor, final int numElements, final GenotypeColumns.Builder columns) throws IOException {
+            for ( int sample = 0; sample < columns.size(); sample++ ) {
+                columns.AD(sample, decoder.decodeIntArray(typeDescriptor, numElements));
+            }
+        }
     }
 
     private class PLDecoder implements Decoder {
@@ -244,25 +309,45 @@ public class BCF2GenotypeFieldDecoders {
                 gb.PL(decoder.decodeIntArray(typeDescriptor, numElements));
             }
         }
+
+        @Override
+        public void decode(final List<Allele> siteAlleles, final String field, final BCF2Decoder decoder, final byte typeDescriptor, final int numElements, final GenotypeColumns.Builder columns) throws IOException {
+            for ( int sample = 0; sample < columns.size(); sample++ ) {
+                columns.PL(sample, decoder.decodeIntArray(typeDescriptor, numElements));
+            }
+        }
     }
 
     private class GenericDecoder implements Decoder {
         @Override
         public void decode(final List<Allele> siteAlleles, final String field, final BCF2Decoder decoder, final byte typeDescriptor, final int numElements, final GenotypeBuilder[] gbs) throws IOException {
             for ( final GenotypeBuilder gb : gbs ) {
-                Object value = decoder.decodeTypedValue(typeDescriptor, numElements);
-                if ( value != null ) { // don't add missing values
-                    if ( value instanceof List && ((List)value).size() == 1) {
-                        // todo -- I really hate this, and it suggests that the code isn't completely right
-                        // the reason it's here is that it's possible to prune down a vector to a singleton
-                        // value and there we have the contract that the value comes back as an atomic value
-                        // not a vector of size 1
-                        value = ((List)value).get(0);
-                    }
+                final Object value = decodeValue(decoder, typeDescriptor, numElements);
+                if ( value != null ) // don't add missing values
                     gb.attribute(field, value);
-                }
             }
         }
+
+        @Override
+        public void decode(final List<Allele> siteAlleles, final String field, final BCF2Decoder decoder, final byte typeDescriptor, final int numElements, final GenotypeColumns.Builder columns) throws IOException {
+            for ( int sample = 0; sample < columns.size(); sample++ ) {
+                final Object value = decodeValue(decoder, typeDescriptor, numElements);
+                if ( value != null ) // don't add missing values
+                    columns.attribute(sample, field, value);
+            }
+        }
+
+        private Object decodeValue(final BCF2Decoder decoder, final byte typeDescriptor, final int numElements) throws IOException {
+            final Object value = decoder.decodeTypedValue(typeDescriptor, numElements);
+            if ( value instanceof List && ((List<?>)value).size() == 1) {
+                // todo -- I really hate this, and it suggests that the code isn't completely right
+                // the reason it's here is that it's possible to prune down a vector to a singleton
+                // value and there we have the contract that the value comes back as an atomic value
+                // not a vector of size 1
+                return ((List<?>)value).get(0);
+            }
+            return value;
+        }
     }
 
     private class FTDecoder implements Decoder {
@@ -274,5 +359,14 @@ public class BCF2GenotypeFieldDecoders {
                 gb.filter((String)value);
             }
         }
+
+        @Override
+        public void decode(final List<Allele> siteAlleles, final String field, final BCF2Decoder decoder, final byte typeDescriptor, final int numElements, final GenotypeColumns.Builder columns) throws IOException {
+            for ( int sample = 0; sample < columns.size(); sample++ ) {
+                Object value = decoder.decodeTypedValue(typeDescriptor, numElements);
+                assert value == null || value instanceof String;
+                columns.filter(sample, (String)value);
+            }
+        }
     }
 }
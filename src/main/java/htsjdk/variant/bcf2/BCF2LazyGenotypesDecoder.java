@@ -29,7 +29,9 @@ import htsjdk.tribble.TribbleException;
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.GenotypeColumns;
 import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.vcf.VCFDecodingProjection;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -66,9 +68,20 @@ public class BCF2LazyGenotypesDecoder implements LazyGenotypesContext.LazyParser
 
             // load our byte[] data into the decoder
             final BCF2Decoder decoder = new BCF2Decoder(((BCF2Codec.LazyData)data).bytes);
+            final VCFDecodingProjection projection = codec.getDecodingProjection();
+            final int[] sampleOffsets = codec.getProjectedSampleOffsets();
+            final BCF2Decoder projectedDecoder = sampleOffsets == null ? null : new BCF2Decoder();
 
-            for ( int i = 0; i < nSamples; i++ )
-                builders[i].reset(true);
+            // in columnar mode each field is decoded directly into the columns, otherwise
+            // builders holds one builder per projected sample
+            final GenotypeColumns.Builder columns = codec.isColumnarGenotypes() ?
+                    new GenotypeColumns.Builder(siteAlleles, codec.getProjectedHeader().getGenotypeSamples(),
+                            codec.getProjectedHeader().getSampleNamesInOrder(), codec.getProjectedHeader().getSampleNameToOffset()) :
+                    null;
+            if ( columns == null ) {
+                for ( final GenotypeBuilder gb : builders )
+                    gb.reset(true);
+            }
 
             for ( int i = 0; i < nFields; i++ ) {
                 // get the field name
@@ -78,22 +91,60 @@ public class BCF2LazyGenotypesDecoder implements LazyGenotypesContext.LazyParser
                 // the type of each element
                 final byte typeDescriptor = decoder.readTypeDescriptor();
                 final int numElements = decoder.decodeNumberOfElements(typeDescriptor);
+                final int valueSize = numElements * BCF2Utils.decodeType(typeDescriptor).getSizeInBytes();
+                if ( ! projection.includesFormatKey(field) ) {
+                    decoder.skipBytes(nSamples * valueSize);
+                    continue;
+                }
+
                 final BCF2GenotypeFieldDecoders.Decoder fieldDecoder = codec.getGenotypeFieldDecoder(field);
                 try {
-                    fieldDecoder.decode(siteAlleles, field, decoder, typeDescriptor, numElements, builders);
+                    BCF2Decoder fieldValues = decoder;
+                    if ( sampleOffsets != null ) {
+                        // the values of each sample have the same size, so copy out those of the projected samples
+                        projectedDecoder.setRecordBytes(readProjectedSamples(decoder, sampleOffsets, valueSize));
+                        fieldValues = projectedDecoder;
+                    }
+                    if ( columns != null )
+                        fieldDecoder.decode(siteAlleles, field, fieldValues, typeDescriptor, numElements, columns);
+                    else
+                        fieldDecoder.decode(siteAlleles, field, fieldValues, typeDescriptor, numElements, builders);
                 } catch ( ClassCastException e ) {
                     throw new TribbleException("BUG: expected encoding of field " + field
                             + " inconsistent with the value observed in the decoded value");
                 }
             }
 
-            final ArrayList<Genotype> genotypes = new ArrayList<Genotype>(nSamples);
+            if ( columns != null )
+                return new LazyGenotypesContext.LazyData(columns.make());
+
+            final ArrayList<Genotype> genotypes = new ArrayList<Genotype>(builders.length);
             for ( final GenotypeBuilder gb : builders )
                 genotypes.add(gb.make());
 
-            return new LazyGenotypesContext.LazyData(genotypes, codec.getHeader().getSampleNamesInOrder(), codec.getHeader().getSampleNameToOffset());
+            return new LazyGenotypesContext.LazyData(genotypes, codec.getProjectedHeader().getSampleNamesInOrder(), codec.getProjectedHeader().getSampleNameToOffset());
         } catch ( IOException e ) {
             throw new TribbleException("Unexpected IOException parsing already read genotypes data block", e);
         }
     }
+
+    /**
+     * Read the values of one genotype field for all samples, keeping only those of the projected samples
+     *
+     * @param decoder the decoder, positioned at the value of the first sample
+     * @param sampleOffsets the offsets of the projected samples, in increasing order
+     * @param valueSize the size in bytes of the value of each sample
+     * @return the values of the projected samples, in order
+     */
+    private byte[] readProjectedSamples(final BCF2Decoder decoder, final int[] sampleOffsets, final int valueSize) {
+        final byte[] values = new byte[sampleOffsets.length * valueSize];
+        int nextSample = 0;
+        for ( int i = 0; i < sampleOffsets.length; i++ ) {
+            decoder.skipBytes((sampleOffsets[i] - nextSample) * valueSize);
+            decoder.readBytes(values, i * valueSize, valueSize);
+            nextSample = sampleOffsets[i] + 1;
+        }
+        decoder.skipBytes((nSamples - nextSample) * valueSize);
+        return values;
+    }
 }
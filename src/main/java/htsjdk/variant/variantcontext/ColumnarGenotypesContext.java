@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.variant.variantcontext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A GenotypesContext backed by {@link GenotypeColumns}, which stores the genotypes of all samples in primitive
+ * arrays and creates a {@link Genotype} view of a sample only when it is requested.  Like a
+ * {@link LazyGenotypesContext}, it may also be created with a parser and undecoded genotype data, in which case
+ * the parser must produce {@link LazyGenotypesContext.LazyData} holding columns.
+ *
+ * <p>Read operations (size, get, iteration, sample lookups) are served from the columns.  Operations that modify
+ * the context, and the few that need the genotype objects themselves, first turn the columns into a list of
+ * {@link FastGenotype}s, after which this context behaves like any other GenotypesContext.
+ */
+public class ColumnarGenotypesContext extends LazyGenotypesContext {
+
+    public static final long serialVersionUID = 1L;
+
+    private static final LazyParser COLUMNS_PARSER = data -> new LazyData((GenotypeColumns) data);
+
+    /**
+     * The decoded genotypes, or null if they have not been decoded yet or have been turned into genotype objects.
+     *
+     * Transient because the genotypes are always turned into genotype objects before serialization.
+     */
+    private transient GenotypeColumns columns;
+
+    /**
+     * Create a context holding the genotypes in {@code columns}
+     */
+    public ColumnarGenotypesContext(final GenotypeColumns columns) {
+        super(COLUMNS_PARSER, columns, columns.size());
+        decode();
+    }
+
+    /**
+     * Create a context that decodes {@code unparsedGenotypeData} with {@code parser} when the genotypes are first
+     * needed
+     *
+     * @param parser a parser that returns {@link LazyGenotypesContext.LazyData} holding {@link GenotypeColumns}
+     * @param unparsedGenotypeData the encoded genotypes data that we will decode if necessary
+     * @param nUnparsedGenotypes the number of genotypes that will be produced if / when we actually decode the genotypes data
+     */
+    public ColumnarGenotypesContext(final LazyParser parser, final Object unparsedGenotypeData, final int nUnparsedGenotypes) {
+        super(parser, unparsedGenotypeData, nUnparsedGenotypes);
+    }
+
+    @Override
+    protected void setDecodedData(final LazyData parsed) {
+        if (parsed.columns != null) {
+            columns = parsed.columns;
+            notToBeDirectlyAccessedGenotypes = null;
+            sampleNamesInOrder = parsed.sampleNamesInOrder;
+            sampleNameToOffset = parsed.sampleNameToOffset;
+        } else {
+            super.setDecodedData(parsed);
+        }
+    }
+
+    /**
+     * @return the columns holding the genotypes, decoding them if necessary, or null if the genotypes have already
+     * been turned into genotype objects
+     */
+    public GenotypeColumns getColumns() {
+        decode();
+        return columns;
+    }
+
+    /**
+     * Turns the columns into genotype objects, since the caller needs the list itself
+     */
+    @Override
+    protected ArrayList<Genotype> getGenotypes() {
+        decode();
+        if (columns != null) {
+            notToBeDirectlyAccessedGenotypes = columns.toGenotypes();
+            // the name lookups may be shared with the header, so copy them before they can be modified
+            sampleNameToOffset = new HashMap<>(columns.getSampleNameToOffset());
+            sampleNamesInOrder = new ArrayList<>(columns.getSampleNamesOrderedByName());
+            columns = null;
+        }
+        return notToBeDirectlyAccessedGenotypes;
+    }
+
+    @Override
+    protected void invalidateSampleNameMap() {
+        getGenotypes();
+        super.invalidateSampleNameMap();
+    }
+
+    @Override
+    protected void invalidateSampleOrdering() {
+        getGenotypes();
+        super.invalidateSampleOrdering();
+    }
+
+    @Override
+    public int size() {
+        return isLoaded() && columns != null ? columns.size() : super.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return isLoaded() && columns != null ? columns.size() == 0 : super.isEmpty();
+    }
+
+    @Override
+    public Genotype get(final int i) {
+        decode();
+        return columns != null ? columns.getGenotype(i) : super.get(i);
+    }
+
+    @Override
+    public Genotype get(final String sampleName) {
+        decode();
+        return columns != null ? columns.getGenotype(sampleName) : super.get(sampleName);
+    }
+
+    @Override
+    public int getMaxPloidy(final int defaultPloidy) {
+        if (defaultPloidy < 0) throw new IllegalArgumentException("defaultPloidy must be greater than or equal to 0");
+        decode();
+        return columns != null ? columns.getMaxPloidy(defaultPloidy) : super.getMaxPloidy(defaultPloidy);
+    }
+
+    @Override
+    public Iterator<Genotype> iterator() {
+        decode();
+        if (columns == null) {
+            return super.iterator();
+        }
+        final GenotypeColumns iterated = columns;
+        return new Iterator<Genotype>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < iterated.size();
+            }
+
+            @Override
+            public Genotype next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return iterated.getGenotype(next++);
+            }
+        };
+    }
+}
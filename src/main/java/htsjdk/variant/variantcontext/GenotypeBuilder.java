@@ -63,15 +63,17 @@ public final class GenotypeBuilder {
     private static final List<Allele> DIPLOID_NO_CALL = Arrays.asList(Allele.NO_CALL, Allele.NO_CALL);
 
     private String sampleName = null;
-    private List<Allele> alleles = Collections.emptyList();
-
-    private boolean isPhased = false;
-    private int GQ = -1;
-    private int DP = -1;
-    private int[] AD = null;
-    private int[] PL = null;
-    private Map<String, Object> extendedAttributes = null;
-    private String filters = null;
+
+    // the genotype fields are package-private so that GenotypeColumns.Builder can copy them without a Genotype
+    List<Allele> alleles = Collections.emptyList();
+
+    boolean isPhased = false;
+    int GQ = -1;
+    int DP = -1;
+    int[] AD = null;
+    int[] PL = null;
+    Map<String, Object> extendedAttributes = null;
+    String filters = null;
     private int initialAttributeMapSize = 5;
 
     private final static Map<String, Object> NO_ATTRIBUTES =
@@ -0,0 +1,626 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.variant.variantcontext;
+
+import htsjdk.tribble.util.ParsingUtils;
+import htsjdk.variant.vcf.VCFConstants;
+
+import java.io.ObjectStreamException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The genotypes of all samples at a site, stored column by column in primitive arrays rather than as one
+ * {@link Genotype} object per sample.  GT is stored as indexes into a small table of alleles, GQ and DP as one
+ * {@code int} per sample, AD and PL as packed {@code int} arrays, and other FORMAT fields as one array of values
+ * per field.  For sites with many samples this needs a small fraction of the memory of a list of
+ * {@link FastGenotype}s, and creates far fewer objects for the garbage collector to track.
+ *
+ * <p>{@link #getGenotype(int)} returns a lightweight view of one sample that reads its fields from the columns
+ * when they are requested.  Use a {@link Builder} to populate the columns, either field by field as a decoder reads
+ * them or from a {@link GenotypeBuilder} per sample, and {@link ColumnarGenotypesContext} to expose them as a
+ * {@link GenotypesContext}.
+ */
+public final class GenotypeColumns {
+    private static final Map<String, Object> NO_ATTRIBUTES = Collections.unmodifiableMap(new HashMap<>(0));
+
+    private final List<String> sampleNames;
+    private final List<String> sampleNamesInOrder;
+    private final Map<String, Integer> sampleNameToOffset;
+    private final Allele[] alleleTable;
+
+    // GT: the allele indexes of sample i are at [i * ploidy, (i + 1) * ploidy) if every sample has the same ploidy,
+    // otherwise at [alleleStarts[i], alleleStarts[i + 1]); only one of the index arrays is used, depending on the
+    // size of the allele table
+    private final int ploidy;
+    private final int[] alleleStarts;
+    private final byte[] byteAlleleIndexes;
+    private final int[] intAlleleIndexes;
+    private final BitSet phased;
+
+    // null if no sample has a value
+    private final int[] gq;
+    private final int[] dp;
+    private final IntArrayColumn ad;
+    private final IntArrayColumn pl;
+    private final String[] filters;
+
+    // other FORMAT fields, with a null value for samples that don't have the field
+    private final Map<String, Object[]> attributes;
+
+    private GenotypeColumns(final Builder builder) {
+        this.sampleNames = builder.sampleNames;
+        this.sampleNamesInOrder = builder.sampleNamesInOrder;
+        this.sampleNameToOffset = builder.sampleNameToOffset;
+        this.alleleTable = builder.alleleTable.toArray(new Allele[0]);
+
+        final int n = builder.sampleNames.size();
+        builder.openAlleles(n - 1);
+        final int nIndexes = builder.alleleStarts[n];
+        final int firstPloidy = n == 0 ? 0 : builder.alleleStarts[1];
+        boolean uniformPloidy = true;
+        for (int i = 1; i < n && uniformPloidy; i++) {
+            uniformPloidy = builder.alleleStarts[i + 1] - builder.alleleStarts[i] == firstPloidy;
+        }
+        this.ploidy = uniformPloidy ? firstPloidy : -1;
+        this.alleleStarts = uniformPloidy ? null : builder.alleleStarts;
+        if (alleleTable.length <= Byte.MAX_VALUE) {
+            byteAlleleIndexes = new byte[nIndexes];
+            for (int i = 0; i < nIndexes; i++) {
+                byteAlleleIndexes[i] = (byte) builder.alleleIndexes[i];
+            }
+            intAlleleIndexes = null;
+        } else {
+            byteAlleleIndexes = null;
+            intAlleleIndexes = Arrays.copyOf(builder.alleleIndexes, nIndexes);
+        }
+        this.phased = builder.phased;
+        this.gq = builder.gq;
+        this.dp = builder.dp;
+        this.ad = builder.ad.make(n);
+        this.pl = builder.pl.make(n);
+        this.filters = builder.filters;
+        this.attributes = builder.attributes;
+    }
+
+    /** @return the number of samples */
+    public int size() {
+        return sampleNames.size();
+    }
+
+    /** @return the sample names in the order of the genotypes */
+    public List<String> getSampleNames() {
+        return sampleNames;
+    }
+
+    /** @return the sample names, sorted alphabetically */
+    public List<String> getSampleNamesOrderedByName() {
+        return sampleNamesInOrder;
+    }
+
+    /** @return the offset of each sample name in the genotypes */
+    public Map<String, Integer> getSampleNameToOffset() {
+        return sampleNameToOffset;
+    }
+
+    /**
+     * @return a view of the genotype of sample {@code i}, which reads its fields from these columns
+     */
+    public Genotype getGenotype(final int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException("Genotype index " + i + " is not in [0, " + size() + ")");
+        }
+        return new ColumnarGenotype(this, i);
+    }
+
+    /**
+     * @return the genotype of the named sample, or null if there is no such sample
+     */
+    public Genotype getGenotype(final String sampleName) {
+        final Integer offset = sampleNameToOffset.get(sampleName);
+        return offset == null ? null : getGenotype(offset);
+    }
+
+    /**
+     * @return the largest ploidy of any sample, or {@code defaultPloidy} if no sample has any alleles
+     */
+    public int getMaxPloidy(final int defaultPloidy) {
+        int max = ploidy;
+        if (alleleStarts != null) {
+            for (int i = 0; i < size(); i++) {
+                max = Math.max(max, getPloidy(i));
+            }
+        }
+        return max <= 0 ? defaultPloidy : max;
+    }
+
+    /**
+     * @return fully materialized {@link FastGenotype}s that do not refer to these columns
+     */
+    public ArrayList<Genotype> toGenotypes() {
+        final ArrayList<Genotype> genotypes = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            genotypes.add(new GenotypeBuilder(getGenotype(i)).make());
+        }
+        return genotypes;
+    }
+
+    private int getPloidy(final int i) {
+        return alleleStarts == null ? ploidy : alleleStarts[i + 1] - alleleStarts[i];
+    }
+
+    private Allele getAllele(final int i, final int j) {
+        final int k = (alleleStarts == null ? i * ploidy : alleleStarts[i]) + j;
+        return alleleTable[byteAlleleIndexes != null ? byteAlleleIndexes[k] : intAlleleIndexes[k]];
+    }
+
+    private Map<String, Object> getAttributes(final int i) {
+        Map<String, Object> map = null;
+        for (final Map.Entry<String, Object[]> column : attributes.entrySet()) {
+            final Object value = column.getValue()[i];
+            if (value != null) {
+                if (map == null) {
+                    map = new HashMap<>();
+                }
+                map.put(column.getKey(), value);
+            }
+        }
+        return map == null ? NO_ATTRIBUTES : map;
+    }
+
+    /**
+     * The values of AD or PL for every sample, packed into one array.  Sample i's values are at
+     * [i * width, (i + 1) * width) if every sample has the same number of values, and at [starts[i], starts[i + 1])
+     * otherwise.
+     */
+    private static final class IntArrayColumn {
+        final int[] values;
+        final int width;
+        final int[] starts;
+        final BitSet present;
+
+        IntArrayColumn(final int[] values, final int width, final int[] starts, final BitSet present) {
+            this.values = values;
+            this.width = width;
+            this.starts = starts;
+            this.present = present;
+        }
+
+        int[] get(final int i) {
+            if (present != null && !present.get(i)) {
+                return null;
+            }
+            final int start = starts == null ? i * width : starts[i];
+            final int end = starts == null ? start + width : starts[i + 1];
+            return Arrays.copyOfRange(values, start, end);
+        }
+
+        boolean has(final int i) {
+            return present == null || present.get(i);
+        }
+    }
+
+    private static final class IntArrayColumnBuilder {
+        private final int[] starts;
+        private int[] values = new int[0];
+        private final BitSet present = new BitSet();
+        private int size = 0;
+
+        IntArrayColumnBuilder(final int nSamples) {
+            starts = new int[nSamples + 1];
+        }
+
+        /**
+         * Set the values of a sample.  Samples must be set in increasing order, and those skipped have no values.
+         */
+        void set(final int sample, final int[] sampleValues) {
+            if (sample < size - 1) {
+                throw new IllegalStateException("Values were set for sample " + sample + " after a later sample");
+            }
+            if (sample == size - 1) {
+                // replace the values of the last sample
+                size--;
+                present.clear(size);
+            }
+            while (size < sample) {
+                add(null);
+            }
+            add(sampleValues);
+        }
+
+        private void add(final int[] sampleValues) {
+            final int start = starts[size];
+            if (sampleValues != null) {
+                if (start + sampleValues.length > values.length) {
+                    values = Arrays.copyOf(values, Math.max(start + sampleValues.length, values.length * 2));
+                }
+                System.arraycopy(sampleValues, 0, values, start, sampleValues.length);
+                present.set(size);
+                starts[size + 1] = start + sampleValues.length;
+            } else {
+                starts[size + 1] = start;
+            }
+            size++;
+        }
+
+        IntArrayColumn make(final int nSamples) {
+            if (present.isEmpty()) {
+                return null;
+            }
+            while (size < nSamples) {
+                add(null);
+            }
+            final int width = size == 0 ? 0 : starts[1] - starts[0];
+            boolean uniform = present.cardinality() == size;
+            for (int i = 1; i < size && uniform; i++) {
+                uniform = starts[i + 1] - starts[i] == width;
+            }
+            final int[] packed = Arrays.copyOf(values, starts[size]);
+            return uniform ?
+                    new IntArrayColumn(packed, width, null, null) :
+                    new IntArrayColumn(packed, 0, starts, present);
+        }
+    }
+
+    /**
+     * A genotype that reads its fields from the columns on demand.  It is serialized as a {@link FastGenotype} so
+     * that serializing a genotype doesn't serialize the genotypes of all the other samples.
+     */
+    private static final class ColumnarGenotype extends Genotype {
+        public static final long serialVersionUID = 1L;
+
+        private final transient GenotypeColumns columns;
+        private final int i;
+
+        private transient List<Allele> alleles;
+        private transient int[] ad;
+        private transient int[] pl;
+        private transient Map<String, Object> extendedAttributes;
+
+        ColumnarGenotype(final GenotypeColumns columns, final int i) {
+            super(columns.sampleNames.get(i), columns.filters == null ? null : columns.filters[i]);
+            this.columns = columns;
+            this.i = i;
+        }
+
+        @Override
+        public List<Allele> getAlleles() {
+            if (alleles == null) {
+                final int ploidy = columns.getPloidy(i);
+                if (ploidy == 0) {
+                    alleles = Collections.emptyList();
+                } else {
+                    final Allele[] gt = new Allele[ploidy];
+                    for (int j = 0; j < ploidy; j++) {
+                        gt[j] = columns.getAllele(i, j);
+                    }
+                    alleles = Collections.unmodifiableList(Arrays.asList(gt));
+                }
+            }
+            return alleles;
+        }
+
+        @Override
+        public Allele getAllele(final int j) {
+            if (j < 0 || j >= columns.getPloidy(i)) {
+                throw new IndexOutOfBoundsException("Allele index " + j + " for a genotype of ploidy " + columns.getPloidy(i));
+            }
+            return columns.getAllele(i, j);
+        }
+
+        @Override
+        public int getPloidy() {
+            return columns.getPloidy(i);
+        }
+
+        @Override
+        public boolean isPhased() {
+            return columns.phased.get(i);
+        }
+
+        @Override
+        public int getDP() {
+            return columns.dp == null ? -1 : columns.dp[i];
+        }
+
+        @Override
+        public int getGQ() {
+            return columns.gq == null ? -1 : columns.gq[i];
+        }
+
+        @Override
+        public int[] getAD() {
+            if (ad == null && hasAD()) {
+                ad = columns.ad.get(i);
+            }
+            return ad;
+        }
+
+        @Override
+        public boolean hasAD() {
+            return columns.ad != null && columns.ad.has(i);
+        }
+
+        @Override
+        public int[] getPL() {
+            if (pl == null && hasPL()) {
+                pl = columns.pl.get(i);
+            }
+            return pl;
+        }
+
+        @Override
+        public boolean hasPL() {
+            return columns.pl != null && columns.pl.has(i);
+        }
+
+        @Override
+        public Map<String, Object> getExtendedAttributes() {
+            if (extendedAttributes == null) {
+                extendedAttributes = columns.getAttributes(i);
+            }
+            return extendedAttributes;
+        }
+
+        private Object writeReplace() throws ObjectStreamException {
+            return new GenotypeBuilder(this).make();
+        }
+    }
+
+    /**
+     * Builds {@link GenotypeColumns}.  Decoders write each field of each sample directly into the columns, so that
+     * no per-sample objects are needed; the alleles, AD and PL of samples must be written in increasing sample order,
+     * and samples for which nothing is written have no alleles and no fields.  Alternatively the genotype described
+     * by a {@link GenotypeBuilder} can be added for each sample in turn with {@link #add(GenotypeBuilder)}.
+     */
+    public static final class Builder {
+        private final List<String> sampleNames;
+        private final List<String> sampleNamesInOrder;
+        private final Map<String, Integer> sampleNameToOffset;
+        private final List<Allele> alleleTable;
+        private final Map<Allele, Integer> alleleTableIndex = new HashMap<>();
+
+        // the number of samples whose alleles have been started, and the number added with add(GenotypeBuilder)
+        private int allelesSize = 0;
+        private int added = 0;
+        private final int[] alleleStarts;
+        private int[] alleleIndexes;
+        private final BitSet phased = new BitSet();
+        private int[] gq = null;
+        private int[] dp = null;
+        private final IntArrayColumnBuilder ad;
+        private final IntArrayColumnBuilder pl;
+        private String[] filters = null;
+        private final Map<String, Object[]> attributes = new LinkedHashMap<>();
+
+        /**
+         * @param siteAlleles the alleles of the site, which most genotype alleles are expected to be drawn from
+         * @param sampleNames the names of the samples, in the order of their offsets
+         * @param sampleNamesInOrder the sample names, sorted alphabetically
+         * @param sampleNameToOffset the offset of each name in {@code sampleNames}
+         */
+        public Builder(final List<Allele> siteAlleles,
+                       final List<String> sampleNames,
+                       final List<String> sampleNamesInOrder,
+                       final Map<String, Integer> sampleNameToOffset) {
+            this.sampleNames = sampleNames;
+            this.sampleNamesInOrder = sampleNamesInOrder;
+            this.sampleNameToOffset = sampleNameToOffset;
+            this.alleleTable = new ArrayList<>(siteAlleles.size() + 1);
+            for (final Allele allele : siteAlleles) {
+                alleleIndex(allele);
+            }
+            alleleIndex(Allele.NO_CALL);
+
+            final int n = sampleNames.size();
+            this.alleleStarts = new int[n + 1];
+            this.alleleIndexes = new int[n * 2];
+            this.ad = new IntArrayColumnBuilder(n);
+            this.pl = new IntArrayColumnBuilder(n);
+        }
+
+        /** @return the number of samples */
+        public int size() {
+            return sampleNames.size();
+        }
+
+        /**
+         * Set the alleles of a sample, replacing any already set for it.
+         * @param alleles the alleles, or null for none
+         */
+        public Builder alleles(final int sample, final List<Allele> alleles) {
+            openAlleles(sample);
+            alleleStarts[sample + 1] = alleleStarts[sample];
+            if (alleles != null) {
+                for (int j = 0; j < alleles.size(); j++) {
+                    allele(sample, alleles.get(j));
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Append an allele to the alleles of a sample, so that a decoder need not make a list for each sample.
+         */
+        public Builder allele(final int sample, final Allele allele) {
+            openAlleles(sample);
+            final int end = alleleStarts[sample + 1];
+            if (end == alleleIndexes.length) {
+                alleleIndexes = Arrays.copyOf(alleleIndexes, Math.max(end + 1, alleleIndexes.length * 2));
+            }
+            alleleIndexes[end] = alleleIndex(allele);
+            alleleStarts[sample + 1] = end + 1;
+            return this;
+        }
+
+        public Builder phased(final int sample, final boolean isPhased) {
+            phased.set(sample, isPhased);
+            return this;
+        }
+
+        /** @param value the GQ of the sample, or -1 for none */
+        public Builder GQ(final int sample, final int value) {
+            gq = setInt(gq, sample, value);
+            return this;
+        }
+
+        /** @param value the DP of the sample, or -1 for none */
+        public Builder DP(final int sample, final int value) {
+            dp = setInt(dp, sample, value);
+            return this;
+        }
+
+        /** @param values the AD of the sample, which are copied, or null for none */
+        public Builder AD(final int sample, final int[] values) {
+            ad.set(sample, values);
+            return this;
+        }
+
+        /** @param values the PL of the sample, which are copied, or null for none */
+        public Builder PL(final int sample, final int[] values) {
+            pl.set(sample, values);
+            return this;
+        }
+
+        /**
+         * @param filter the filters of the sample, joined by semicolons, or null or "PASS" if it is unfiltered, as
+         * for {@link GenotypeBuilder#filter(String)}
+         */
+        public Builder filter(final int sample, final String filter) {
+            final String value = VCFConstants.PASSES_FILTERS_v4.equals(filter) ? null : filter;
+            if (value != null && filters == null) {
+                filters = new String[sampleNames.size()];
+            }
+            if (filters != null) {
+                filters[sample] = value;
+            }
+            return this;
+        }
+
+        /**
+         * @param sampleFilters the filters of the sample, as for {@link GenotypeBuilder#filters(List)}
+         */
+        public Builder filters(final int sample, final List<String> sampleFilters) {
+            if (sampleFilters.isEmpty()) {
+                return filter(sample, null);
+            } else if (sampleFilters.size() == 1) {
+                return filter(sample, sampleFilters.get(0));
+            } else {
+                return filter(sample, ParsingUtils.join(";", ParsingUtils.sortList(sampleFilters)));
+            }
+        }
+
+        /** Set an extended (non-standard) FORMAT field of a sample. */
+        public Builder attribute(final int sample, final String key, final Object value) {
+            attributes.computeIfAbsent(key, k -> new Object[sampleNames.size()])[sample] = value;
+            return this;
+        }
+
+        /**
+         * Add the genotype described by {@code gb} as the next sample.  The sample name set on {@code gb} is
+         * ignored, the sample is the next one in the names given to the constructor.  The arrays and values in
+         * {@code gb} are copied, so it may be reset and reused for the next sample.
+         */
+        public Builder add(final GenotypeBuilder gb) {
+            if (added == sampleNames.size()) {
+                throw new IllegalStateException("All " + added + " samples have already been added");
+            }
+            final int sample = added++;
+            alleles(sample, gb.alleles);
+            phased(sample, gb.isPhased);
+            GQ(sample, gb.GQ);
+            DP(sample, gb.DP);
+            AD(sample, gb.AD);
+            PL(sample, gb.PL);
+            filter(sample, gb.filters);
+            if (gb.extendedAttributes != null) {
+                for (final Map.Entry<String, Object> attribute : gb.extendedAttributes.entrySet()) {
+                    attribute(sample, attribute.getKey(), attribute.getValue());
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @return the columns
+         * @throws IllegalStateException if genotypes were added with {@link #add(GenotypeBuilder)} for some but not
+         * all samples
+         */
+        public GenotypeColumns make() {
+            if (added != 0 && added != sampleNames.size()) {
+                throw new IllegalStateException(String.format("Genotypes were added for %d of %d samples", added, sampleNames.size()));
+            }
+            return new GenotypeColumns(this);
+        }
+
+        /**
+         * Start the alleles of every sample up to and including {@code sample}, those skipped having none.
+         */
+        private void openAlleles(final int sample) {
+            if (sample < allelesSize - 1) {
+                throw new IllegalStateException("Alleles were set for sample " + sample + " after a later sample");
+            }
+            for (; allelesSize <= sample; allelesSize++) {
+                alleleStarts[allelesSize + 1] = alleleStarts[allelesSize];
+            }
+        }
+
+        private int[] setInt(final int[] column, final int sample, final int value) {
+            if (column == null) {
+                if (value == -1) {
+                    return null;
+                }
+                final int[] newColumn = new int[sampleNames.size()];
+                Arrays.fill(newColumn, -1);
+                newColumn[sample] = value;
+                return newColumn;
+            }
+            column[sample] = value;
+            return column;
+        }
+
+        private int alleleIndex(final Allele allele) {
+            // genotype alleles are almost always the site's own allele objects
+            for (int i = 0; i < alleleTable.size(); i++) {
+                if (alleleTable.get(i) == allele) {
+                    return i;
+                }
+            }
+            Integer index = alleleTableIndex.get(allele);
+            if (index == null) {
+                index = alleleTable.size();
+                alleleTable.add(allele);
+                alleleTableIndex.put(allele, index);
+            }
+            return index;
+        }
+    }
+}
@@ -93,8 +93,9 @@ public class GenotypesContext implements List<Genotype>, Serializable {
         // by the time that's called we'll already have serialized the superclass
         // data in GenotypesContext, and we need to make sure that we decode any lazy
         // data BEFORE serializing the fields in GenotypesContext.
-        if ( getClass() == LazyGenotypesContext.class ) {
-            ((LazyGenotypesContext)this).decode();
+        // A ColumnarGenotypesContext also turns its columns into genotype objects at this point.
+        if ( this instanceof LazyGenotypesContext ) {
+            getGenotypes();
         }
 
         out.defaultWriteObject();
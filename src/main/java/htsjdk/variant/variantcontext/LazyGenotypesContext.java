@@ -108,6 +108,7 @@ public class LazyGenotypesContext extends GenotypesContext {
      */
     public static class LazyData {
         final ArrayList<Genotype> genotypes;
+        final GenotypeColumns columns;
         final Map<String, Integer> sampleNameToOffset;
         final List<String> sampleNamesInOrder;
 
@@ -115,9 +116,21 @@ public class LazyGenotypesContext extends GenotypesContext {
                         final List<String> sampleNamesInOrder,
                         final Map<String, Integer> sampleNameToOffset) {
             this.genotypes = genotypes;
+            this.columns = null;
             this.sampleNamesInOrder = sampleNamesInOrder;
             this.sampleNameToOffset = sampleNameToOffset;
         }
+
+        /**
+         * Genotypes decoded into columns, which a {@link ColumnarGenotypesContext} keeps as they are, and other lazy
+         * contexts turn into genotype objects
+         */
+        public LazyData(final GenotypeColumns columns) {
+            this.genotypes = null;
+            this.columns = columns;
+            this.sampleNamesInOrder = columns.getSampleNamesOrderedByName();
+            this.sampleNameToOffset = columns.getSampleNameToOffset();
+        }
     }
 
     /**
@@ -156,9 +169,7 @@ public class LazyGenotypesContext extends GenotypesContext {
         if ( ! loaded ) {
             //System.out.printf("Loading genotypes... %s:%d%n", contig, start);
             LazyData parsed = parser.parse(unparsedGenotypeData);
-            notToBeDirectlyAccessedGenotypes = parsed.genotypes;
-            sampleNamesInOrder = parsed.sampleNamesInOrder;
-            sampleNameToOffset = parsed.sampleNameToOffset;
+            setDecodedData(parsed);
             loaded = true;
             unparsedGenotypeData = null; // don't hold the unparsed data any longer
             nUnparsedGenotypes = 0;
@@ -169,6 +180,22 @@ public class LazyGenotypesContext extends GenotypesContext {
         }
     }
 
+    /**
+     * Store the data produced by the parser in this context
+     */
+    protected void setDecodedData(final LazyData parsed) {
+        notToBeDirectlyAccessedGenotypes = parsed.genotypes != null ? parsed.genotypes : parsed.columns.toGenotypes();
+        sampleNamesInOrder = parsed.sampleNamesInOrder;
+        sampleNameToOffset = parsed.sampleNameToOffset;
+    }
+
+    /**
+     * @return true if the genotypes data has been decoded
+     */
+    protected boolean isLoaded() {
+        return loaded;
+    }
+
     /**
      * Overrides the ensure* functionality.  If the data hasn't been loaded
      * yet and we want to build the cache, just decode it and we're done.  If we've
@@ -310,6 +310,10 @@ class BCF2Writer extends IndexingVariantContextWriter {
      * @return
      */
     private boolean canSafelyWriteRawGenotypesBytes(final BCF2Codec.LazyData lazyData) {
+        if ( lazyData.projected ) {
+            // the decoded genotypes have fewer samples or fields than the bytes
+            return false;
+        }
         if ( lazyData.header != lastVCFHeaderOfUnparsedGenotypes ) {
             // result is already cached
             canPassOnUnparsedGenotypeDataForLastVCFHeader = BCF2Utils.headerLinesAreOrderedConsistently(this.header,lazyData.header);
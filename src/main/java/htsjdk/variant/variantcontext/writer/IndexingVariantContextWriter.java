@@ -26,6 +26,7 @@
 package htsjdk.variant.variantcontext.writer;
 
 import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.LocationAware;
 import htsjdk.samtools.util.RuntimeIOException;
@@ -42,6 +43,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 /**
  * this class writes VCF files
@@ -54,6 +57,10 @@ abstract class IndexingVariantContextWriter implements VariantContextWriter {
     private OutputStream outputStream;
     private LocationAware locationSource = null;
     private IndexCreator indexer = null;
+    /** Set when locations come from a block compressed stream, whose file pointers are resolved lazily. */
+    private BlockCompressedOutputStream blockCompressedOutputStream = null;
+    /** Records that have been added but not yet indexed because their blocks are still being compressed. */
+    private final Deque<UnindexedRecord> unindexedRecords = new ArrayDeque<>();
 
     private IndexingVariantContextWriter(final String name, final Path location, final OutputStream output, final SAMSequenceDictionary refDict) {
         this.name = name;
@@ -133,7 +140,10 @@ abstract class IndexingVariantContextWriter implements VariantContextWriter {
 
     private void initIndexingWriter(final IndexCreator idxCreator) {
         indexer = idxCreator;
-        if (outputStream instanceof LocationAware) {
+        if (outputStream instanceof BlockCompressedOutputStream) {
+            blockCompressedOutputStream = (BlockCompressedOutputStream)outputStream;
+            locationSource = blockCompressedOutputStream;
+        } else if (outputStream instanceof LocationAware) {
             locationSource = (LocationAware)outputStream;
         } else {
             final PositionalOutputStream positionalOutputStream = new PositionalOutputStream(outputStream);
@@ -173,6 +183,7 @@ abstract class IndexingVariantContextWriter implements VariantContextWriter {
 
             // close the index stream (keep it separate to help debugging efforts)
             if (indexer != null) {
+                indexRecords(true);
                 indexer.setIndexSequenceDictionary(refDict);
                 final Index index = indexer.finalizeIndex(locationSource.getPosition());
                 index.writeBasedOnFeaturePath(location);
@@ -199,8 +210,26 @@ abstract class IndexingVariantContextWriter implements VariantContextWriter {
     @Override
     public void add(final VariantContext vc) {
         // if we are doing on the fly indexing, add the record ***before*** we write any bytes
-        if ( indexer != null )
-            indexer.addFeature(vc, locationSource.getPosition());
+        if ( indexer != null ) {
+            if ( blockCompressedOutputStream != null ) {
+                unindexedRecords.addLast(new UnindexedRecord(vc, blockCompressedOutputStream.getDeferredFilePointer()));
+                indexRecords(false);
+            } else {
+                indexer.addFeature(vc, locationSource.getPosition());
+            }
+        }
+    }
+
+    /**
+     * Passes added records to the indexer, in order, once the addresses of the blocks they start in are known.
+     * @param waitForBlocks if true, index all remaining records, waiting for their blocks to be written
+     */
+    private void indexRecords(final boolean waitForBlocks) {
+        while (!unindexedRecords.isEmpty() && (waitForBlocks ||
+                blockCompressedOutputStream.isFilePointerResolvable(unindexedRecords.peekFirst().position))) {
+            final UnindexedRecord unindexed = unindexedRecords.removeFirst();
+            indexer.addFeature(unindexed.vc, blockCompressedOutputStream.resolveFilePointer(unindexed.position));
+        }
     }
 
     /**
@@ -224,4 +253,17 @@ abstract class IndexingVariantContextWriter implements VariantContextWriter {
     protected static final String writerName(final Path location, final OutputStream stream) {
         return location == null ? stream == null ? DEFAULT_READER_NAME : stream.toString() : location.toAbsolutePath().toUri().toString();
     }
+
+    /**
+     * A record and the deferred file pointer to its start in the output.
+     */
+    private static final class UnindexedRecord {
+        private final VariantContext vc;
+        private final long position;
+
+        private UnindexedRecord(final VariantContext vc, final long position) {
+            this.vc = vc;
+            this.position = position;
+        }
+    }
 }
@@ -28,7 +28,9 @@ package htsjdk.variant.variantcontext.writer;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.SharedThreadPool;
 import htsjdk.tribble.index.IndexCreator;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
 import htsjdk.variant.vcf.VCFConstants;
@@ -45,11 +47,27 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * this class writes VCF files
+ *
+ * If the number of encoding threads is greater than zero (see {@link #setEncodingThreads(int)}), records are
+ * collected into batches that are encoded concurrently on a shared pool of worker threads, and the encoded batches
+ * are written in the order in which their records were added, so the output is identical to the single-threaded
+ * output. In this mode records must not be modified after they are added, which includes decoding their genotypes
+ * if they are decoded lazily, and an error encoding a record is thrown by a later call to {@link #add(VariantContext)}
+ * or by {@link #close()}, once the preceding records have been written.
  */
 class VCFWriter extends IndexingVariantContextWriter {
+    // batches are sized to encode to about this many bytes, based on the average size of the records written so far
+    private static final int TARGET_BATCH_SIZE = 1024 * 1024;
+    private static final int MAX_RECORDS_PER_BATCH = 4096;
 
     private static final String VERSION_LINE =
             VCFHeader.METADATA_INDICATOR + VCFHeaderVersion.VCF4_2.getFormatString() + "=" + VCFHeaderVersion.VCF4_2.getVersionString();
@@ -84,6 +102,18 @@ class VCFWriter extends IndexingVariantContextWriter {
     /* Wrapping in a {@link BufferedWriter} avoids frequent conversions with individual writes to OutputStreamWriter. */
     private final Writer writer = new BufferedWriter(new OutputStreamWriter(lineBuffer, VCFEncoder.VCF_CHARSET));
 
+    // State used only when records are encoded on the shared thread pool.
+    private int encodingThreads = 0;
+    private List<VariantContext> batchRecords = new ArrayList<>();
+    /** Batches that have been handed to the thread pool, in the order in which their records were added. */
+    private final Deque<Future<EncodedBatch>> pendingBatches = new ArrayDeque<>();
+    /** Buffers that are not used by a pending batch. */
+    private final Deque<EncodingBuffer> freeEncodingBuffers = new ArrayDeque<>();
+    private long encodedRecords = 0;
+    private long encodedBytes = 0;
+    /** The first failure to encode or write a batch, after which nothing more is written. */
+    private RuntimeException encodingFailure = null;
+
     public VCFWriter(final File location, final OutputStream output, final SAMSequenceDictionary refDict,
                      final boolean enableOnTheFlyIndexing,
                      final boolean doNotWriteGenotypes, final boolean allowMissingFieldsInHeader,
@@ -120,6 +150,25 @@ class VCFWriter extends IndexingVariantContextWriter {
         this.writeFullFormatField = writeFullFormatField;
     }
 
+    /**
+     * Set the number of batches of records that may be encoded concurrently, using a shared pool of worker threads.
+     * 0 encodes each record on the calling thread when it is added. Any records that are waiting to be encoded are
+     * written first.
+     *
+     * @param encodingThreads the number of batches to encode concurrently
+     */
+    public void setEncodingThreads(final int encodingThreads) {
+        if (encodingThreads < 0) {
+            throw new IllegalArgumentException("The number of encoding threads must be >= 0: " + encodingThreads);
+        }
+        writePendingBatches();
+        this.encodingThreads = encodingThreads;
+    }
+
+    public int getEncodingThreads() {
+        return encodingThreads;
+    }
+
     // --------------------------------------------------------------------------------
     //
     // VCFWriter interface functions
@@ -222,15 +271,19 @@ class VCFWriter extends IndexingVariantContextWriter {
      */
     @Override
     public void close() {
-        // try to close the vcf stream
         try {
-            // TODO -- would it be useful to null out the line buffer so we don't have it around unnecessarily?
-            writer.close();
-        } catch (IOException e) {
-            throw new RuntimeIOException("Unable to close " + getStreamName(), e);
-        }
+            writePendingBatches();
+        } finally {
+            // try to close the vcf stream
+            try {
+                // TODO -- would it be useful to null out the line buffer so we don't have it around unnecessarily?
+                writer.close();
+            } catch (IOException e) {
+                throw new RuntimeIOException("Unable to close " + getStreamName(), e);
+            }
 
-        super.close();
+            super.close();
+        }
     }
 
     /**
@@ -238,6 +291,10 @@ class VCFWriter extends IndexingVariantContextWriter {
      */
     @Override
     public void add(final VariantContext context) {
+        if (encodingThreads > 0) {
+            addToBatch(context);
+            return;
+        }
         try {
             super.add(context);
             if (this.mHeader == null) {
@@ -258,6 +315,137 @@ class VCFWriter extends IndexingVariantContextWriter {
         }
     }
 
+    /**
+     * Queue a record to be encoded on the thread pool, submitting the batch once it is full. Lazily decoded
+     * genotypes that can't be copied to the output as they are are decoded here, since the codec that decodes them
+     * is not thread-safe.
+     */
+    private void addToBatch(final VariantContext context) {
+        if (encodingFailure != null) {
+            throw encodingFailure;
+        }
+        if (this.mHeader == null) {
+            throw new IllegalStateException("Unable to write the VCF: header is missing, " +
+                    "try to call writeHeader or setHeader first.");
+        }
+        if (!doNotWriteGenotypes && context.getGenotypes() instanceof LazyGenotypesContext &&
+                !VCFEncoder.writesUnparsedGenotypes(context)) {
+            ((LazyGenotypesContext) context.getGenotypes()).decode();
+        }
+        batchRecords.add(context);
+        outputHasBeenWritten = true;
+        if (batchRecords.size() >= getRecordsPerBatch()) {
+            submitBatch();
+        }
+    }
+
+    private int getRecordsPerBatch() {
+        final long averageRecordSize = encodedRecords == 0 ?
+                64 + 16L * mHeader.getNGenotypeSamples() :
+                Math.max(encodedBytes / encodedRecords, 1);
+        return (int) Math.max(1, Math.min(MAX_RECORDS_PER_BATCH, TARGET_BATCH_SIZE / averageRecordSize));
+    }
+
+    private void submitBatch() {
+        // Bound the number of batches in flight so that memory use does not grow without limit
+        writeEncodedBatches(encodingThreads - 1);
+
+        final List<VariantContext> records = batchRecords;
+        batchRecords = new ArrayList<>(records.size());
+        final EncodingBuffer encodingBuffer = freeEncodingBuffers.isEmpty() ? new EncodingBuffer() : freeEncodingBuffers.removeFirst();
+        final VCFEncoder encoder = vcfEncoder;
+        final boolean noGenotypes = doNotWriteGenotypes;
+        pendingBatches.addLast(SharedThreadPool.submit(() -> encodeBatch(encoder, noGenotypes, records, encodingBuffer)));
+    }
+
+    /**
+     * Encode records into encodingBuffer, stopping at the first record that cannot be encoded.
+     */
+    private static EncodedBatch encodeBatch(final VCFEncoder encoder, final boolean noGenotypes,
+                                            final List<VariantContext> records, final EncodingBuffer encodingBuffer) {
+        final int[] recordEnds = new int[records.size()];
+        int encoded = 0;
+        Exception failure = null;
+        try {
+            for (final VariantContext record : records) {
+                encoder.write(encodingBuffer.writer, noGenotypes ? new VariantContextBuilder(record).noGenotypes().make() : record);
+                encodingBuffer.writer.write("\n");
+                encodingBuffer.writer.flush();
+                recordEnds[encoded++] = encodingBuffer.size();
+            }
+        } catch (final IOException | RuntimeException e) {
+            failure = e;
+        }
+        return new EncodedBatch(records, encodingBuffer, recordEnds, encoded, failure);
+    }
+
+    /**
+     * Submit any partial batch, then write every pending batch.
+     */
+    private void writePendingBatches() {
+        if (encodingFailure != null) {
+            throw encodingFailure;
+        }
+        if (!batchRecords.isEmpty()) {
+            submitBatch();
+        }
+        writeEncodedBatches(0);
+    }
+
+    /**
+     * Waits for pending batches to be encoded and writes them in order until no more than maxPending remain.
+     * Records are indexed one at a time, as they are written. If a batch fails, the records that precede the
+     * failure are written, every later record is discarded and the writer is marked as failed.
+     */
+    private void writeEncodedBatches(final int maxPending) {
+        while (pendingBatches.size() > maxPending) {
+            try {
+                writeEncodedBatch(pendingBatches.removeFirst());
+            } catch (final RuntimeException e) {
+                encodingFailure = e;
+                pendingBatches.forEach(batch -> batch.cancel(true));
+                pendingBatches.clear();
+                batchRecords.clear();
+                throw e;
+            }
+        }
+    }
+
+    private void writeEncodedBatch(final Future<EncodedBatch> pendingBatch) {
+        final EncodedBatch batch;
+        try {
+            batch = pendingBatch.get();
+        } catch (final InterruptedException e) {
+            throw new RuntimeException("Interrupted waiting for VCF encoding thread", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Failed to encode VCF records", e.getCause());
+        }
+        try {
+            int start = 0;
+            for (int i = 0; i < batch.encodedRecords; i++) {
+                super.add(batch.records.get(i));
+                getOutputStream().write(batch.encodingBuffer.buffer(), start, batch.recordEnds[i] - start);
+                start = batch.recordEnds[i];
+            }
+            encodedRecords += batch.encodedRecords;
+            encodedBytes += start;
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Unable to write the VCF object to " + getStreamName(), e);
+        }
+        if (batch.failure == null) {
+            // a buffer whose batch failed may hold part of a record in its writer, so it is not reused
+            batch.encodingBuffer.reset();
+            freeEncodingBuffers.addLast(batch.encodingBuffer);
+        } else if (batch.failure instanceof RuntimeException) {
+            throw (RuntimeException) batch.failure;
+        } else {
+            throw new RuntimeIOException("Unable to write the VCF object to " + getStreamName(), batch.failure);
+        }
+    }
+
     @Override
     public void setHeader(final VCFHeader header) {
         rejectVCFV43Headers(header);
@@ -276,4 +464,36 @@ class VCFWriter extends IndexingVariantContextWriter {
         }
 
     }
+
+    /** A line buffer, with a writer that encodes as {@link #writer} does, whose contents can be written without a copy. */
+    private static final class EncodingBuffer extends ByteArrayOutputStream {
+        private final Writer writer = new BufferedWriter(new OutputStreamWriter(this, VCFEncoder.VCF_CHARSET));
+
+        private EncodingBuffer() {
+            super(INITIAL_BUFFER_SIZE);
+        }
+
+        private byte[] buffer() {
+            return buf;
+        }
+    }
+
+    private static final class EncodedBatch {
+        private final List<VariantContext> records;
+        private final EncodingBuffer encodingBuffer;
+        // the offset in encodingBuffer just past each encoded record
+        private final int[] recordEnds;
+        private final int encodedRecords;
+        // the exception that stopped encoding, thrown once the encoded records have been written
+        private final Exception failure;
+
+        private EncodedBatch(final List<VariantContext> records, final EncodingBuffer encodingBuffer, final int[] recordEnds,
+                             final int encodedRecords, final Exception failure) {
+            this.records = records;
+            this.encodingBuffer = encodingBuffer;
+            this.recordEnds = recordEnds;
+            this.encodedRecords = encodedRecords;
+            this.failure = failure;
+        }
+    }
 }
@@ -130,6 +130,7 @@ public class VariantContextWriterBuilder {
     private IndexCreator idxCreator = null;
     private int bufferSize = Defaults.BUFFER_SIZE;
     private boolean createMD5 = Defaults.CREATE_MD5;
+    private int encodingThreads = Defaults.VCF_ENCODING_THREADS;
     protected EnumSet<Options> options = DEFAULT_OPTIONS.clone();
 
     /**
@@ -318,6 +319,22 @@ public class VariantContextWriterBuilder {
         return setCreateMD5(false);
     }
 
+    /**
+     * Set the number of batches of records that the next VCF <code>VariantContextWriter</code> created by this builder
+     * may encode concurrently, using a shared pool of worker threads.  Set to 0 to encode records on the calling thread.
+     * Block compressed VCFs are also compressed with at least this many threads.  Does not affect BCF output.
+     *
+     * @param encodingThreads the number of batches to encode concurrently
+     * @return this <code>VariantContextWriterBuilder</code>
+     */
+    public VariantContextWriterBuilder setEncodingThreads(final int encodingThreads) {
+        if (encodingThreads < 0) {
+            throw new IllegalArgumentException("The number of encoding threads must be >= 0: " + encodingThreads);
+        }
+        this.encodingThreads = encodingThreads;
+        return this;
+    }
+
     /**
      * Replace the set of <code>Options</code> for the <code>VariantContextWriterBuilder</code> with a new set.
      *
@@ -475,7 +492,10 @@ public class VariantContextWriterBuilder {
                     idxCreator = new TabixIndexCreator(refDict, TabixFormat.VCF);
 
                 writer = createVCFWriter(
-                    outPath, new BlockCompressedOutputStream(outStreamFromFile, outPath));
+                    outPath, new BlockCompressedOutputStream(outStreamFromFile, outPath,
+                            BlockCompressedOutputStream.getDefaultCompressionLevel(),
+                            BlockCompressedOutputStream.getDefaultDeflaterFactory(),
+                            Math.max(encodingThreads, BlockCompressedOutputStream.getDefaultCompressionThreads())));
                 break;
             case BCF:
                 if ((refDict == null) && (options.contains(Options.INDEX_ON_THE_FLY)))
@@ -569,20 +589,23 @@ public class VariantContextWriterBuilder {
     }
 
     private VariantContextWriter createVCFWriter(final Path writerPath, final OutputStream writerStream) {
+        final VCFWriter vcfWriter;
         if (idxCreator == null) {
-            return new VCFWriter(writerPath, writerStream, refDict,
+            vcfWriter = new VCFWriter(writerPath, writerStream, refDict,
                     options.contains(Options.INDEX_ON_THE_FLY),
                     options.contains(Options.DO_NOT_WRITE_GENOTYPES),
                     options.contains(Options.ALLOW_MISSING_FIELDS_IN_HEADER),
                     options.contains(Options.WRITE_FULL_FORMAT_FIELD));
         }
         else {
-            return new VCFWriter(writerPath, writerStream, refDict, idxCreator,
+            vcfWriter = new VCFWriter(writerPath, writerStream, refDict, idxCreator,
                     options.contains(Options.INDEX_ON_THE_FLY),
                     options.contains(Options.DO_NOT_WRITE_GENOTYPES),
                     options.contains(Options.ALLOW_MISSING_FIELDS_IN_HEADER),
                     options.contains(Options.WRITE_FULL_FORMAT_FIELD));
         }
+        vcfWriter.setEncodingThreads(encodingThreads);
+        return vcfWriter;
     }
 
     private VariantContextWriter createBCFWriter(final Path writerPath, final OutputStream writerStream) {
@@ -25,6 +25,7 @@
 
 package htsjdk.variant.vcf;
 
+import htsjdk.samtools.Defaults;
 import htsjdk.samtools.util.BlockCompressedInputStream;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.tribble.AsciiFeatureCodec;
@@ -32,6 +33,8 @@ import htsjdk.tribble.Feature;
 import htsjdk.tribble.NameAwareCodec;
 import htsjdk.tribble.TribbleException;
 import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.readers.ByteLineIterator;
+import htsjdk.tribble.readers.LineIterator;
 import htsjdk.tribble.util.ParsingUtils;
 import htsjdk.utils.ValidationUtils;
 import htsjdk.variant.utils.GeneralUtils;
@@ -43,6 +46,7 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.function.IntFunction;
 import java.util.zip.GZIPInputStream;
 
 public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext> implements NameAwareCodec {
@@ -94,6 +98,45 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
      */
     protected String remappedSampleName = null;
 
+    /**
+     * If true, genotypes are decoded into a {@link ColumnarGenotypesContext} rather than one object per sample
+     */
+    protected boolean columnarGenotypes = Defaults.USE_COLUMNAR_GENOTYPES;
+
+    /**
+     * The samples and fields to decode; the header of decoded records, which holds only the projected samples; the
+     * offsets of the projected samples among all samples, or null if all are decoded; and the projected INFO keys, or
+     * null if all are decoded
+     */
+    protected VCFDecodingProjection projection = VCFDecodingProjection.ALL;
+    protected VCFHeader projectedHeader = null;
+    private int[] projectedSampleOffsets = null;
+    private String[] projectedInfoKeys = null;
+
+    /**
+     * If true, records read from a stream are decoded from the bytes of each line rather than from Strings
+     */
+    protected boolean byteDecoding = Defaults.USE_BYTE_VCF_DECODING;
+
+    // state reused by the byte decoding path: tokenizers for the columns of a line, the genotype columns of a record
+    // and the values of a genotype; the most recent CHROM, FILTER, INFO keys and FORMAT keys, which usually repeat;
+    // and the allele lists of the GT values of the current record
+    private static final int GT_CACHE_SIZE = 32;
+    private final VCFLineTokenizer lineTokenizer = new VCFLineTokenizer();
+    private final VCFLineTokenizer genotypeTokenizer = new VCFLineTokenizer();
+    private final VCFLineTokenizer valueTokenizer = new VCFLineTokenizer();
+    private String recentChrom = null;
+    private String recentFilter = null;
+    private String[] recentInfoKeys = new String[16];
+    private String recentFormat = null;
+    private List<String> recentFormatKeys = null;
+    private boolean[] recentProjectedFormatKeys = null;
+    private final byte[][] gtCacheKeys = new byte[GT_CACHE_SIZE][];
+    // there is no way to create a generic array without a raw type
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final List<Allele>[] gtCacheAlleles = new List[GT_CACHE_SIZE];
+    private int gtCacheSize = 0;
+
     protected AbstractVCFCodec() {
         super(VariantContext.class);
     }
@@ -118,7 +161,45 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         @Override
         public LazyGenotypesContext.LazyData parse(final Object data) {
             //System.out.printf("Loading genotypes... %s:%d%n", contig, start);
-            return createGenotypeMap((String) data, alleles, contig, start);
+            final Object genotypeData = data instanceof ProjectedGenotypeData ? ((ProjectedGenotypeData) data).genotypeData : data;
+            if (genotypeData instanceof GenotypeBytes) {
+                return createGenotypeMap((GenotypeBytes) genotypeData, alleles, contig, start);
+            }
+            return createGenotypeMap((String) genotypeData, alleles, contig, start);
+        }
+    }
+
+    /**
+     * The unparsed genotype columns of a record when the decoding projection drops samples or FORMAT keys.  Writers
+     * copy unparsed String genotype data through as is, which would write the dropped fields, so it is wrapped.
+     */
+    private static final class ProjectedGenotypeData {
+        final Object genotypeData;
+
+        ProjectedGenotypeData(final Object genotypeData) {
+            this.genotypeData = genotypeData;
+        }
+
+        @Override
+        public String toString() {
+            return genotypeData.toString();
+        }
+    }
+
+    /**
+     * The unparsed genotype columns of a record decoded from bytes, which are the UTF-8 encoding of the columns.
+     * Like unparsed String genotype data, writers copy them through as is.
+     */
+    static final class GenotypeBytes {
+        final byte[] bytes;
+
+        GenotypeBytes(final byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String toString() {
+            return VCFLineTokenizer.toString(bytes, 0, bytes.length);
         }
     }
 
@@ -133,7 +214,7 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
      * create a VCF header from a set of header record lines
      *
      * @param headerStrings a list of strings that represent all the ## and # entries
-     * @return a VCFHeader object
+     * @return a VCFHeader object, with only the samples of the decoding projection
      */
     protected VCFHeader parseHeaderFromLines( final List<String> headerStrings, final VCFHeaderVersion version ) {
         this.version = version;
@@ -218,7 +299,7 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         }
 
         setVCFHeader(new VCFHeader(version, metaData, sampleNames), version);
-        return this.header;
+        return this.projectedHeader;
     }
 
     /**
@@ -261,10 +342,69 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
 
         this.version = newVersion;
         this.vcfTextTransformer = getTextTransformerForVCFVersion(newVersion);
+        updateProjectedHeader();
 
         return this.header;
     }
 
+    /**
+     * Prepare to decode the records of the file whose header was read by headerSource, sharing its parsed header
+     * and decoding projection rather than parsing and repairing the header again.  Neither is modified while
+     * decoding, so several codecs that share them can decode records of the same file concurrently.
+     *
+     * @param headerSource a codec that has read the header of the file
+     */
+    public void shareHeader(final AbstractVCFCodec headerSource) {
+        ValidationUtils.validateArg(headerSource.header != null, "headerSource has not read a header");
+        this.header = headerSource.header;
+        this.version = headerSource.version;
+        this.vcfTextTransformer = headerSource.vcfTextTransformer;
+        this.projection = headerSource.projection;
+        this.projectedHeader = headerSource.projectedHeader;
+        this.projectedSampleOffsets = headerSource.projectedSampleOffsets;
+        this.projectedInfoKeys = headerSource.projectedInfoKeys;
+        this.recentFormatKeys = null;
+    }
+
+    /**
+     * Decode only the samples, INFO keys and FORMAT keys in the given projection; the other fields are skipped
+     * without being parsed.  If the projection selects samples, the header returned when reading a file, and
+     * {@link #getProjectedHeader()}, have only those samples.  Should be set before the header is read.
+     *
+     * @param projection the fields to decode, {@link VCFDecodingProjection#ALL} to decode everything
+     * @throws IllegalArgumentException if the header is already known and lacks a projected sample
+     */
+    public void setDecodingProjection(final VCFDecodingProjection projection) {
+        ValidationUtils.nonNull(projection, "projection");
+        this.projection = projection;
+        updateProjectedHeader();
+    }
+
+    /**
+     * @return the samples and fields this codec decodes
+     */
+    public VCFDecodingProjection getDecodingProjection() {
+        return projection;
+    }
+
+    /**
+     * @return the header that describes the decoded records: the header of the file if all samples are decoded,
+     * otherwise a copy of it with only the samples of the decoding projection.  May be null.
+     */
+    public VCFHeader getProjectedHeader() {
+        return projectedHeader;
+    }
+
+    private void updateProjectedHeader() {
+        if (header == null) {
+            return;
+        }
+        projectedHeader = projection.projectHeader(header);
+        projectedSampleOffsets = projection.getSampleOffsets(header);
+        projectedInfoKeys = projection.getInfoKeys() == null ? null : projection.getInfoKeys().toArray(new String[0]);
+        recentFormatKeys = null;
+    }
+
     /**
      * Create and return a VCFAltHeaderLine object from a header line string that conforms to the {@code sourceVersion}
      * @param headerLineString VCF header line being parsed without the leading "##ALT="
@@ -328,6 +468,47 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         return decodeLine(line, true);
     }
 
+    /**
+     * decode the next line of the source into a feature (VariantContext), directly from the bytes of the line if
+     * the source was made by this codec with byte decoding enabled
+     * @param lineIterator the source
+     * @return a VariantContext
+     */
+    @Override
+    public VariantContext decode(final LineIterator lineIterator) {
+        if (lineIterator instanceof ByteLineIterator) {
+            final ByteLineIterator lines = (ByteLineIterator) lineIterator;
+            if (!lines.nextLine()) {
+                throw new NoSuchElementException();
+            }
+            return decodeLine(lines.getLineBuffer(), lines.getLineStart(), lines.getLineEnd(), true);
+        }
+        return super.decode(lineIterator);
+    }
+
+    @Override
+    public LineIterator makeSourceFromStream(final InputStream bufferedInputStream) {
+        return byteDecoding ? new ByteLineIterator(bufferedInputStream) : super.makeSourceFromStream(bufferedInputStream);
+    }
+
+    /**
+     * Decode the records of streams read by this codec directly from the bytes of each line, parsing numbers without
+     * creating intermediate Strings, rather than from a String per line.  The decoded records are the same either
+     * way.  Defaults to {@link Defaults#USE_BYTE_VCF_DECODING}; takes effect for sources made after it is set.
+     *
+     * @param byteDecoding true to decode records from bytes
+     */
+    public void setByteDecoding(final boolean byteDecoding) {
+        this.byteDecoding = byteDecoding;
+    }
+
+    /**
+     * @return true if records read from a stream are decoded from bytes
+     */
+    public boolean isByteDecoding() {
+        return byteDecoding;
+    }
+
     /**
      * Throw if new a version/header are not compatible with the existing version/header. Generally, any version
      * before v4.2 can be up-converted to v4.2, but not to v4.3. Once a header is established as v4.3, it cannot
@@ -381,16 +562,111 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
             throw new TribbleException("Line " + lineNo + ": there aren't enough columns for line " + line + " (we expected " + (header == null ? NUM_STANDARD_FIELDS : NUM_STANDARD_FIELDS + 1) +
                     " tokens, and saw " + nParts + " )");
 
-        return parseVCFLine(parts, includeGenotypes);
+        return parseVCFLine(new StringColumns(parts, nParts), includeGenotypes);
+    }
+
+    /**
+     * decode a line from the bytes of the line, as decodeLine(String, boolean) decodes it from a String
+     *
+     * @param line the buffer holding the line
+     * @param start the offset of the first byte of the line
+     * @param end the offset just past the last byte of the line, excluding the terminator
+     * @param includeGenotypes whether to decode the genotypes
+     * @return a VariantContext, or null for a header line
+     */
+    private VariantContext decodeLine(final byte[] line, final int start, final int end, final boolean includeGenotypes) {
+        // the same line reader is not used for parsing the header and parsing lines, if we see a #, we've seen a header line
+        if (end > start && line[start] == VCFHeader.HEADER_INDICATOR.charAt(0)) return null;
+
+        // our header cannot be null, we need the genotype sample names and counts
+        if (header == null) throw new TribbleException("VCF Header cannot be null when decoding a record");
+
+        final int nParts = lineTokenizer.tokenize(line, start, end, (byte) VCFConstants.FIELD_SEPARATOR_CHAR,
+                Math.min(header.getColumnCount(), NUM_STANDARD_FIELDS + 1), true);
+        if ( (!header.hasGenotypingData() && nParts != NUM_STANDARD_FIELDS) ||
+                (header.hasGenotypingData() && nParts != (NUM_STANDARD_FIELDS + 1)) )
+            throw new TribbleException("Line " + lineNo + ": there aren't enough columns for line " + VCFLineTokenizer.toString(line, start, end) +
+                    " (we expected " + (NUM_STANDARD_FIELDS + 1) + " tokens, and saw " + nParts + " )");
+
+        return parseVCFLine(new ByteColumns(line), includeGenotypes);
+    }
+
+    /**
+     * The columns of a record that parseVCFLine reads, held either as Strings split out of the line or at the
+     * offsets found by the line tokenizer in the bytes of the line
+     */
+    private interface RecordColumns {
+        int count();
+        String get(int column);
+        boolean isEmpty(int column);
+        boolean is(int column, String value);
+        boolean contains(int column, char c);
+        String chrom();
+        int pos();
+        double qual();
+        String filter();
+        Map<String, Object> info();
+        Object genotypes();
+    }
+
+    private final class StringColumns implements RecordColumns {
+        private final String[] parts;
+        private final int count;
+
+        StringColumns(final String[] parts, final int count) {
+            this.parts = parts;
+            this.count = count;
+        }
+
+        @Override public int count() { return count; }
+        @Override public String get(final int column) { return parts[column]; }
+        @Override public boolean isEmpty(final int column) { return parts[column].isEmpty(); }
+        @Override public boolean is(final int column, final String value) { return parts[column].equals(value); }
+        @Override public boolean contains(final int column, final char c) { return parts[column].indexOf(c) != -1; }
+        @Override public String chrom() { return getCachedString(parts[0]); }
+        @Override public int pos() { return Integer.parseInt(parts[1]); }
+        @Override public double qual() { return parseQual(parts[5]); }
+        @Override public String filter() { return getCachedString(parts[6]); }
+        @Override public Map<String, Object> info() { return parseInfo(parts[7]); }
+        @Override public Object genotypes() { return parts[8]; }
+    }
+
+    /**
+     * Reads the columns without creating Strings for those that are parsed as numbers, and takes the CHROM and
+     * FILTER values from the previous record when they are the same
+     */
+    private final class ByteColumns implements RecordColumns {
+        private final byte[] line;
+
+        ByteColumns(final byte[] line) {
+            this.line = line;
+        }
+
+        private int start(final int column) { return lineTokenizer.start(column); }
+        private int end(final int column) { return lineTokenizer.end(column); }
+
+        @Override public int count() { return lineTokenizer.count(); }
+        @Override public String get(final int column) { return VCFLineTokenizer.toString(line, start(column), end(column)); }
+        @Override public boolean isEmpty(final int column) { return start(column) == end(column); }
+        @Override public boolean is(final int column, final String value) { return VCFLineTokenizer.regionEquals(line, start(column), end(column), value); }
+        @Override public boolean contains(final int column, final char c) { return VCFLineTokenizer.indexOf(line, start(column), end(column), (byte) c) != -1; }
+        @Override public String chrom() { return recentChrom = getCachedString(line, start(0), end(0), recentChrom); }
+        @Override public int pos() { return VCFLineTokenizer.parseInt(line, start(1), end(1)); }
+        @Override public double qual() { return parseQual(line, start(5), end(5)); }
+        @Override public String filter() { return recentFilter = getCachedString(line, start(6), end(6), recentFilter); }
+        @Override public Map<String, Object> info() { return parseInfo(line, start(7), end(7)); }
+
+        // the line buffer is reused, so the genotype columns are copied out for lazy decoding
+        @Override public Object genotypes() { return new GenotypeBytes(Arrays.copyOfRange(line, start(8), end(8))); }
     }
 
     /**
      * parse out the VCF line
      *
-     * @param parts the parts split up
+     * @param columns the columns of the line
      * @return a variant context object
      */
-    private VariantContext parseVCFLine(final String[] parts, final boolean includeGenotypes) {
+    private VariantContext parseVCFLine(final RecordColumns columns, final boolean includeGenotypes) {
         VariantContextBuilder builder = new VariantContextBuilder();
         builder.source(getName());
 
@@ -400,32 +676,42 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         lineNo++;
 
         // parse out the required fields
-        final String chr = getCachedString(parts[0]);
+        final String chr = columns.chrom();
         builder.chr(chr);
         int pos = -1;
         try {
-            pos = Integer.parseInt(parts[1]);
+            pos = columns.pos();
         } catch (NumberFormatException e) {
-            generateException(parts[1] + " is not a valid start position in the VCF format");
+            generateException(columns.get(1) + " is not a valid start position in the VCF format");
         }
         builder.start(pos);
 
-        if ( parts[2].isEmpty() )
+        if ( columns.isEmpty(2) )
             generateException("The VCF specification requires a valid ID field");
-        else if ( parts[2].equals(VCFConstants.EMPTY_ID_FIELD) )
+        else if ( columns.is(2, VCFConstants.EMPTY_ID_FIELD) )
             builder.noID();
         else
-            builder.id(parts[2]);
+            builder.id(columns.get(2));
 
-        final String ref = parts[3].toUpperCase();
-        final String alts = parts[4];
-        builder.log10PError(parseQual(parts[5]));
+        final String ref = columns.get(3).toUpperCase();
+        final String alts = columns.get(4);
+        builder.log10PError(columns.qual());
 
-        final List<String> filters = parseFilters(getCachedString(parts[6]));
+        final List<String> filters = parseFilters(columns.filter());
         if ( filters != null ) {
             builder.filters(new HashSet<>(filters));
         }
-        final Map<String, Object> attrs = parseInfo(parts[7]);
+
+        if ( columns.isEmpty(7) )
+            generateException("The VCF specification requires a valid (non-zero length) info field");
+        final Map<String, Object> attrs;
+        if ( columns.is(7, VCFConstants.EMPTY_INFO_FIELD) ) {
+            attrs = new HashMap<>();
+        } else {
+            if ( columns.contains(7, '\t') || columns.contains(7, ' ') )
+                generateException("The VCF specification does not allow for whitespace in the INFO field. Offending field value was \"" + columns.get(7) + "\"");
+            attrs = columns.info();
+        }
         builder.attributes(attrs);
 
         if ( attrs.containsKey(VCFConstants.END_KEY) ) {
@@ -443,19 +729,36 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         final List<Allele> alleles = parseAlleles(ref, alts, lineNo);
         builder.alleles(alleles);
 
-        // do we have genotyping data
-        if (parts.length > NUM_STANDARD_FIELDS && includeGenotypes) {
-            final LazyGenotypesContext.LazyParser lazyParser = new LazyVCFGenotypesParser(alleles, chr, pos);
-            final int nGenotypes = header.getNGenotypeSamples();
-            LazyGenotypesContext lazy = new LazyGenotypesContext(lazyParser, parts[8], nGenotypes);
+        // do we have genotyping data, for at least one of the projected samples
+        if (columns.count() > NUM_STANDARD_FIELDS && includeGenotypes && projectedHeader.hasGenotypingData()) {
+            addLazyGenotypes(builder, columns.genotypes(), alleles, chr, pos);
+        }
 
-            // did we resort the sample names?  If so, we need to load the genotype data
-            if ( !header.samplesWereAlreadySorted() )
-                lazy.decode();
+        return makeVariantContext(builder);
+    }
 
-            builder.genotypesNoValidation(lazy);
-        }
+    /**
+     * add the genotypes of a record, to be decoded from the unparsed genotype columns when they are needed
+     */
+    private void addLazyGenotypes(final VariantContextBuilder builder, final Object unparsedGenotypes,
+                                  final List<Allele> alleles, final String chr, final int pos) {
+        final LazyGenotypesContext.LazyParser lazyParser = new LazyVCFGenotypesParser(alleles, chr, pos);
+        final int nGenotypes = projectedHeader.getNGenotypeSamples();
+        final Object genotypeData = projectedSampleOffsets == null && projection.getFormatKeys() == null ?
+                unparsedGenotypes :
+                new ProjectedGenotypeData(unparsedGenotypes);
+        LazyGenotypesContext lazy = columnarGenotypes ?
+                new ColumnarGenotypesContext(lazyParser, genotypeData, nGenotypes) :
+                new LazyGenotypesContext(lazyParser, genotypeData, nGenotypes);
+
+        // did we resort the sample names?  If so, we need to load the genotype data
+        if ( !projectedHeader.samplesWereAlreadySorted() )
+            lazy.decode();
+
+        builder.genotypesNoValidation(lazy);
+    }
 
+    private VariantContext makeVariantContext(final VariantContextBuilder builder) {
         VariantContext vc = null;
         try {
             vc = builder.make();
@@ -499,67 +802,179 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         return internedString;
     }
 
+    /**
+     * Return a cached copy of the string held in buffer[start, end), without creating a String if it is the same as
+     * the recent string.
+     *
+     * @param recent a recently returned string, which is likely to be the same, or null
+     * @return interned string
+     */
+    private String getCachedString(final byte[] buffer, final int start, final int end, final String recent) {
+        if ( recent != null && VCFLineTokenizer.regionEquals(buffer, start, end, recent) )
+            return recent;
+        return getCachedString(VCFLineTokenizer.toString(buffer, start, end));
+    }
+
     /**
      * parse out the info fields
-     * @param infoField the fields
+     * @param infoField the fields, which are neither empty nor missing
      * @return a mapping of keys to objects
      */
     private Map<String, Object> parseInfo(String infoField) {
         Map<String, Object> attributes = new HashMap<String, Object>();
 
-        if ( infoField.isEmpty() )
-            generateException("The VCF specification requires a valid (non-zero length) info field");
+        List<String> infoFields = projectedInfoKeys == null ?
+                ParsingUtils.split(infoField, VCFConstants.INFO_FIELD_SEPARATOR_CHAR) :
+                splitProjectedInfo(infoField);
+        for (int i = 0; i < infoFields.size(); i++) {
+            int eqI = infoFields.get(i).indexOf("=");
+            if ( eqI != -1 ) {
+                // split on the INFO field separator
+                final String valueString = infoFields.get(i).substring(eqI + 1);
+                addInfoAttribute(attributes, infoFields.get(i).substring(0, eqI),
+                        ParsingUtils.split(valueString, VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR));
+            } else {
+                addInfoAttribute(attributes, infoFields.get(i), null);
+            }
+        }
 
-        if ( !infoField.equals(VCFConstants.EMPTY_INFO_FIELD) ) {
-            if ( infoField.indexOf('\t') != -1 || infoField.indexOf(' ') != -1 )
-                generateException("The VCF specification does not allow for whitespace in the INFO field. Offending field value was \"" + infoField + "\"");
-
-            List<String> infoFields = ParsingUtils.split(infoField, VCFConstants.INFO_FIELD_SEPARATOR_CHAR);
-            for (int i = 0; i < infoFields.size(); i++) {
-                String key;
-                Object value;
-
-                int eqI = infoFields.get(i).indexOf("=");
-                if ( eqI != -1 ) {
-                    key = infoFields.get(i).substring(0, eqI);
-                    String valueString = infoFields.get(i).substring(eqI + 1);
-
-                    // split on the INFO field separator
-                    List<String> infoValueSplit = ParsingUtils.split(valueString, VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR);
-                    if ( infoValueSplit.size() == 1 ) {
-                        value = vcfTextTransformer.decodeText(infoValueSplit.get(0));
-                        final VCFInfoHeaderLine headerLine = header.getInfoHeaderLine(key);
-                        if ( headerLine != null && headerLine.getType() == VCFHeaderLineType.Flag && value.equals("0") ) {
-                            // deal with the case where a flag field has =0, such as DB=0, by skipping the add
-                            continue;
-                        }
-                    } else {
-                        value = vcfTextTransformer.decodeText(infoValueSplit);
-                    }
-                } else {
-                    key = infoFields.get(i);
-                    final VCFInfoHeaderLine headerLine = header.getInfoHeaderLine(key);
-                    if ( headerLine != null && headerLine.getType() != VCFHeaderLineType.Flag ) {
-                        if ( GeneralUtils.DEBUG_MODE_ENABLED && ! warnedAboutNoEqualsForNonFlag ) {
-                            System.err.println("Found info key " + key + " without a = value, but the header says the field is of type "
-                                               + headerLine.getType() + " but this construct is only value for FLAG type fields");
-                            warnedAboutNoEqualsForNonFlag = true;
-                        }
+        return attributes;
+    }
 
-                        value = VCFConstants.MISSING_VALUE_v4;
-                    } else {
-                        value = true;
-                    }
+    /**
+     * parse out the info fields from bytes, as parseInfo(String) does
+     * @param line the buffer holding the info field
+     * @param start the offset of the start of the info field
+     * @param end the offset just past the end of the info field
+     * @return a mapping of keys to objects
+     */
+    private Map<String, Object> parseInfo(final byte[] line, final int start, final int end) {
+        final Map<String, Object> attributes = new HashMap<>();
+
+        int entry = 0;
+        for (int entryStart = start; entryStart <= end; entryStart++) {
+            int entryEnd = VCFLineTokenizer.indexOf(line, entryStart, end, (byte) VCFConstants.INFO_FIELD_SEPARATOR_CHAR);
+            if ( entryEnd == -1 ) entryEnd = end;
+            final int eqI = VCFLineTokenizer.indexOf(line, entryStart, entryEnd, (byte) '=');
+            final int keyEnd = eqI == -1 ? entryEnd : eqI;
+            final int keyStart = entryStart;
+            entryStart = entryEnd;
+
+            if ( projectedInfoKeys != null && !isProjectedInfoKey(line, keyStart, keyEnd) )
+                continue;
+            final String key = getInfoKey(line, keyStart, keyEnd, entry++);
+
+            if ( eqI == -1 ) {
+                addInfoAttribute(attributes, key, null);
+            } else if ( VCFLineTokenizer.indexOf(line, eqI + 1, entryEnd, (byte) VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR) == -1 ) {
+                addInfoAttribute(attributes, key, Collections.singletonList(VCFLineTokenizer.toString(line, eqI + 1, entryEnd)));
+            } else {
+                final List<String> values = new ArrayList<>();
+                for (int valueStart = eqI + 1; valueStart <= entryEnd; valueStart++) {
+                    int valueEnd = VCFLineTokenizer.indexOf(line, valueStart, entryEnd, (byte) VCFConstants.INFO_FIELD_ARRAY_SEPARATOR_CHAR);
+                    if ( valueEnd == -1 ) valueEnd = entryEnd;
+                    values.add(VCFLineTokenizer.toString(line, valueStart, valueEnd));
+                    valueStart = valueEnd;
                 }
+                addInfoAttribute(attributes, key, values);
+            }
+        }
+
+        return attributes;
+    }
 
-                // this line ensures that key/value pairs that look like key=; are parsed correctly as MISSING
-                if ( "".equals(value) ) value = VCFConstants.MISSING_VALUE_v4;
+    /**
+     * decode the value of one info field and add it to the attributes
+     * @param key the key of the field
+     * @param values the values of the field, split on the INFO array separator, or null for a field without a value
+     */
+    private void addInfoAttribute(final Map<String, Object> attributes, final String key, final List<String> values) {
+        Object value;
+        if ( values != null ) {
+            if ( values.size() == 1 ) {
+                value = vcfTextTransformer.decodeText(values.get(0));
+                final VCFInfoHeaderLine headerLine = header.getInfoHeaderLine(key);
+                if ( headerLine != null && headerLine.getType() == VCFHeaderLineType.Flag && value.equals("0") ) {
+                    // deal with the case where a flag field has =0, such as DB=0, by skipping the add
+                    return;
+                }
+            } else {
+                value = vcfTextTransformer.decodeText(values);
+            }
+        } else {
+            final VCFInfoHeaderLine headerLine = header.getInfoHeaderLine(key);
+            if ( headerLine != null && headerLine.getType() != VCFHeaderLineType.Flag ) {
+                if ( GeneralUtils.DEBUG_MODE_ENABLED && ! warnedAboutNoEqualsForNonFlag ) {
+                    System.err.println("Found info key " + key + " without a = value, but the header says the field is of type "
+                                       + headerLine.getType() + " but this construct is only value for FLAG type fields");
+                    warnedAboutNoEqualsForNonFlag = true;
+                }
 
-                attributes.put(key, value);
+                value = VCFConstants.MISSING_VALUE_v4;
+            } else {
+                value = true;
             }
         }
 
-        return attributes;
+        // this line ensures that key/value pairs that look like key=; are parsed correctly as MISSING
+        if ( "".equals(value) ) value = VCFConstants.MISSING_VALUE_v4;
+
+        attributes.put(key, value);
+    }
+
+    private boolean isProjectedInfoKey(final byte[] line, final int start, final int end) {
+        if ( VCFLineTokenizer.regionEquals(line, start, end, VCFConstants.END_KEY) ) return true;
+        for (final String key : projectedInfoKeys) {
+            if ( VCFLineTokenizer.regionEquals(line, start, end, key) ) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the INFO key held in line[start, end), which is taken from the keys of recent records if the key
+     * at the same index was the same
+     */
+    private String getInfoKey(final byte[] line, final int start, final int end, final int index) {
+        if ( index == recentInfoKeys.length )
+            recentInfoKeys = Arrays.copyOf(recentInfoKeys, index * 2);
+        final String recent = recentInfoKeys[index];
+        if ( recent != null && VCFLineTokenizer.regionEquals(line, start, end, recent) )
+            return recent;
+        return recentInfoKeys[index] = VCFLineTokenizer.toString(line, start, end);
+    }
+
+    /**
+     * split out the entries of the info field whose keys are in the decoding projection, without allocating
+     * strings for the other entries
+     * @param infoField the info field
+     * @return the key=value entries of the projected keys
+     */
+    private List<String> splitProjectedInfo(final String infoField) {
+        final List<String> infoFields = new ArrayList<>(projectedInfoKeys.length + 1);
+        int start = 0;
+        while (start < infoField.length()) {
+            int end = infoField.indexOf(VCFConstants.INFO_FIELD_SEPARATOR_CHAR, start);
+            if (end == -1) end = infoField.length();
+            int keyEnd = infoField.indexOf('=', start);
+            if (keyEnd == -1 || keyEnd > end) keyEnd = end;
+
+            if (regionIsProjectedKey(infoField, start, keyEnd, projectedInfoKeys) ||
+                    regionIsKey(infoField, start, keyEnd, VCFConstants.END_KEY))
+                infoFields.add(infoField.substring(start, end));
+            start = end + 1;
+        }
+        return infoFields;
+    }
+
+    private static boolean regionIsProjectedKey(final String str, final int start, final int end, final String[] keys) {
+        for (final String key : keys) {
+            if (regionIsKey(str, start, end, key)) return true;
+        }
+        return false;
+    }
+
+    private static boolean regionIsKey(final String str, final int start, final int end, final String key) {
+        return key.length() == end - start && str.regionMatches(start, key, 0, key.length());
     }
 
     /**
@@ -607,6 +1022,52 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         return GTAlleles;
     }
 
+    /**
+     * parse genotype alleles from the GT value in data[start, end), as parseGenotypeAlleles(String, List, Map) does,
+     * caching the allele lists of the current record
+     * @param alleles    list of possible alleles
+     * @return the allele list for the GT value
+     */
+    private List<Allele> parseGenotypeAlleles(final byte[] data, final int start, final int end, final List<Allele> alleles) {
+        for (int i = 0; i < gtCacheSize; i++) {
+            if ( VCFLineTokenizer.regionEquals(data, start, end, gtCacheKeys[i]) )
+                return gtCacheAlleles[i];
+        }
+
+        final List<Allele> GTAlleles = new ArrayList<>(2);
+        int tokenStart = start;
+        for (int i = start; i <= end; i++) {
+            if ( i == end || VCFConstants.PHASING_TOKENS.indexOf(data[i]) != -1 ) {
+                // like StringTokenizer, empty tokens are skipped
+                if ( i > tokenStart )
+                    GTAlleles.add(oneAllele(data, tokenStart, i, alleles));
+                tokenStart = i + 1;
+            }
+        }
+        if ( gtCacheSize < GT_CACHE_SIZE ) {
+            gtCacheKeys[gtCacheSize] = Arrays.copyOfRange(data, start, end);
+            gtCacheAlleles[gtCacheSize++] = GTAlleles;
+        }
+        return GTAlleles;
+    }
+
+    /**
+     * create an allele from the index in data[start, end) and an array of alleles, as oneAllele(String, List) does
+     */
+    private static Allele oneAllele(final byte[] data, final int start, final int end, final List<Allele> alleles) {
+        if ( VCFLineTokenizer.regionEquals(data, start, end, VCFConstants.EMPTY_ALLELE) )
+            return Allele.NO_CALL;
+        final int i;
+        try {
+            i = VCFLineTokenizer.parseInt(data, start, end);
+        } catch ( NumberFormatException e ) {
+            throw new TribbleException.InternalCodecException("The following invalid GT allele index was encountered in the file: " + VCFLineTokenizer.toString(data, start, end));
+        }
+        if ( i >= alleles.size() )
+            throw new TribbleException.InternalCodecException("The allele with index " + VCFLineTokenizer.toString(data, start, end) + " is not defined in the REF/ALT columns in the record");
+        return alleles.get(i);
+    }
+
     /**
      * parse out the qual value
      * @param qualString the quality string
@@ -617,8 +1078,22 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         if ( qualString.equals(VCFConstants.MISSING_VALUE_v4))
             return VariantContext.NO_LOG10_PERROR;
 
-        Double val = VCFUtils.parseVcfDouble(qualString);
+        return qualToLog10PError(VCFUtils.parseVcfDouble(qualString));
+    }
+
+    /**
+     * parse out the qual value from bytes
+     * @return return a double
+     */
+    private static double parseQual(final byte[] line, final int start, final int end) {
+        // if we're the VCF 4 missing char, return immediately
+        if ( VCFLineTokenizer.regionEquals(line, start, end, VCFConstants.MISSING_VALUE_v4) )
+            return VariantContext.NO_LOG10_PERROR;
+
+        return qualToLog10PError(VCFLineTokenizer.parseDouble(line, start, end));
+    }
 
+    private static double qualToLog10PError(final double val) {
         // check to see if they encoded the missing qual score in VCF 3 style, with either the -1 or -1.0.  check for val < 0 to save some CPU cycles
         if ((val < 0) && (Math.abs(val - VCFConstants.MISSING_QUALITY_v3_DOUBLE) < VCFConstants.VCF_ENCODING_EPSILON))
             return VariantContext.NO_LOG10_PERROR;
@@ -656,6 +1131,8 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
      * @param isRef are we the reference allele?
      * @param lineNo  the line number for this record
      */
+    // Allele has no replacements for its deprecated checks of the bases of an allele
+    @SuppressWarnings("deprecation")
     private static void checkAllele(String allele, boolean isRef, int lineNo) {
         if ( allele == null || allele.isEmpty() )
             generateException(generateExceptionTextForBadAlleleBases(""), lineNo);
@@ -754,96 +1231,422 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         if (genotypeParts == null)
             genotypeParts = new String[header.getColumnCount() - NUM_STANDARD_FIELDS];
 
-        int nParts = ParsingUtils.split(str, genotypeParts, VCFConstants.FIELD_SEPARATOR_CHAR);
-        if ( nParts != genotypeParts.length )
-            generateException("there are " + (nParts-1) + " genotypes while the header requires that " + (genotypeParts.length-1) + " genotypes be present for all records at " + chr + ":" + pos, lineNo);
+        // with a sample projection only the columns of the projected samples are split out
+        int nParts = projectedSampleOffsets == null ?
+                ParsingUtils.split(str, genotypeParts, VCFConstants.FIELD_SEPARATOR_CHAR) :
+                splitProjectedSamples(str, genotypeParts, projectedSampleOffsets);
+        checkGenotypeColumnCount(nParts, chr, pos);
 
-        ArrayList<Genotype> genotypes = new ArrayList<Genotype>(nParts);
-
-        // get the format keys
+        // get the format keys, and which of them are projected
         List<String> genotypeKeys = ParsingUtils.split(genotypeParts[0], VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR);
+        final boolean[] projectedKeys = getProjectedFormatKeys(genotypeKeys);
+
+        return decodeGenotypes(genotypeParts[0], genotypeKeys, projectedKeys, alleles, chr, pos, sample -> {
+            final String genotypeColumn = genotypeParts[sample + 1];
+            return new StringValues(splitGenotypeValues(genotypeColumn, projectedKeys), genotypeColumn);
+        });
+    }
+
+    /**
+     * create a genotype map from the bytes of the genotype columns, as createGenotypeMap(String, ...) does
+     *
+     * @param genotypeBytes the genotype columns
+     * @param alleles the list of alleles
+     * @return a mapping of sample name to genotype object
+     */
+    private LazyGenotypesContext.LazyData createGenotypeMap(final GenotypeBytes genotypeBytes,
+                                                            final List<Allele> alleles,
+                                                            final String chr,
+                                                            final int pos) {
+        final byte[] data = genotypeBytes.bytes;
+        final int nParts = genotypeTokenizer.tokenize(data, 0, data.length, (byte) VCFConstants.FIELD_SEPARATOR_CHAR,
+                header.getColumnCount() - NUM_STANDARD_FIELDS, false);
+        checkGenotypeColumnCount(nParts, chr, pos);
+
+        // get the format keys, and which of them are projected, unless they are the same as for the last record
+        if ( recentFormatKeys == null || !VCFLineTokenizer.regionEquals(data, genotypeTokenizer.start(0), genotypeTokenizer.end(0), recentFormat) ) {
+            recentFormat = VCFLineTokenizer.toString(data, genotypeTokenizer.start(0), genotypeTokenizer.end(0));
+            recentFormatKeys = ParsingUtils.split(recentFormat, VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR);
+            recentProjectedFormatKeys = getProjectedFormatKeys(recentFormatKeys);
+        }
+        final boolean[] projectedKeys = recentProjectedFormatKeys;
+        final boolean percentEncoded = vcfTextTransformer == percentEncodingTextTransformer;
+        final ByteValues values = new ByteValues(data);
+
+        return decodeGenotypes(recentFormat, recentFormatKeys, projectedKeys, alleles, chr, pos, sample -> {
+            // column 0 is the FORMAT column, and column n the sample at offset n - 1
+            final int column = 1 + (projectedSampleOffsets == null ? sample : projectedSampleOffsets[sample]);
+            final int columnStart = genotypeTokenizer.start(column);
+            final int columnEnd = genotypeTokenizer.end(column);
+            if ( percentEncoded && VCFLineTokenizer.indexOf(data, columnStart, columnEnd, (byte) '%') != -1 ) {
+                // values with percent-encoded characters are decoded from Strings
+                final String genotypeColumn = VCFLineTokenizer.toString(data, columnStart, columnEnd);
+                return new StringValues(splitGenotypeValues(genotypeColumn, projectedKeys), genotypeColumn);
+            }
+            return values.column(columnStart, columnEnd);
+        });
+    }
+
+    private void checkGenotypeColumnCount(final int nParts, final String chr, final int pos) {
+        final int nColumns = header.getColumnCount() - NUM_STANDARD_FIELDS;
+        if ( nParts != nColumns )
+            generateException("there are " + (nParts-1) + " genotypes while the header requires that " + (nColumns-1) + " genotypes be present for all records at " + chr + ":" + pos, lineNo);
+    }
+
+    /**
+     * decode the genotypes of the projected samples of a record
+     *
+     * @param format the FORMAT column
+     * @param genotypeKeys the FORMAT keys
+     * @param projectedKeys for each FORMAT key, whether it is projected, or null if all keys are decoded
+     * @param alleles the list of alleles
+     * @param sampleValues the values of the genotype of each projected sample, in order
+     * @return a mapping of sample name to genotype object
+     */
+    private LazyGenotypesContext.LazyData decodeGenotypes(final String format,
+                                                          final List<String> genotypeKeys,
+                                                          final boolean[] projectedKeys,
+                                                          final List<Allele> alleles,
+                                                          final String chr,
+                                                          final int pos,
+                                                          final IntFunction<GenotypeValues> sampleValues) {
+        final int nSamples = projectedHeader.getNGenotypeSamples();
+
+        // in columnar mode each genotype is decoded directly into the columns
+        final ArrayList<Genotype> genotypes = columnarGenotypes ? null : new ArrayList<Genotype>(nSamples);
+        final ColumnFields columns = columnarGenotypes ? new ColumnFields(alleles) : null;
 
         // cycle through the sample names
-        Iterator<String> sampleNameIterator = header.getGenotypeSamples().iterator();
+        Iterator<String> sampleNameIterator = projectedHeader.getGenotypeSamples().iterator();
 
         // clear out our allele mapping
         alleleMap.clear();
+        gtCacheSize = 0;
 
         // cycle through the genotype strings
         boolean PlIsSet = false;
-        for (int genotypeOffset = 1; genotypeOffset < nParts; genotypeOffset++) {
-            List<String> genotypeValues = ParsingUtils.split(genotypeParts[genotypeOffset], VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR);
-            genotypeValues = vcfTextTransformer.decodeText(genotypeValues);
+        for (int sample = 0; sample < nSamples; sample++) {
+            final GenotypeValues genotypeValues = sampleValues.apply(sample);
 
             final String sampleName = sampleNameIterator.next();
-            final GenotypeBuilder gb = new GenotypeBuilder(sampleName);
+            final GenotypeFields fields = columnarGenotypes ?
+                    columns.sample(sample) :
+                    new BuilderFields(new GenotypeBuilder(sampleName));
 
             // check to see if the value list is longer than the key list, which is a problem
             if (genotypeKeys.size() < genotypeValues.size())
-                generateException("There are too many keys for the sample " + sampleName + ", keys = " + parts[8] + ", values = " + parts[genotypeOffset]);
-
-            int genotypeAlleleLocation = -1;
-            if (!genotypeKeys.isEmpty()) {
-                gb.maxAttributes(genotypeKeys.size() - 1);
-
-                for (int i = 0; i < genotypeKeys.size(); i++) {
-                    final String gtKey = genotypeKeys.get(i);
-                    boolean missing = i >= genotypeValues.size();
-
-                    // todo -- all of these on the fly parsing of the missing value should be static constants
-                    if (gtKey.equals(VCFConstants.GENOTYPE_KEY)) {
-                        genotypeAlleleLocation = i;
-                    } else if ( missing ) {
-                        // if its truly missing (there no provided value) skip adding it to the attributes
-                    } else if (gtKey.equals(VCFConstants.GENOTYPE_FILTER_KEY)) {
-                        final List<String> filters = parseFilters(getCachedString(genotypeValues.get(i)));
-                        if ( filters != null ) gb.filters(filters);
-                    } else if ( genotypeValues.get(i).equals(VCFConstants.MISSING_VALUE_v4) ) {
-                        // don't add missing values to the map
-                    } else {
-                        if (gtKey.equals(VCFConstants.GENOTYPE_QUALITY_KEY)) {
-                            if ( genotypeValues.get(i).equals(VCFConstants.MISSING_GENOTYPE_QUALITY_v3) )
-                                gb.noGQ();
-                            else
-                                gb.GQ((int)Math.round(VCFUtils.parseVcfDouble(genotypeValues.get(i))));
-                        } else if (gtKey.equals(VCFConstants.GENOTYPE_ALLELE_DEPTHS)) {
-                            gb.AD(decodeInts(genotypeValues.get(i)));
-                        } else if (gtKey.equals(VCFConstants.GENOTYPE_PL_KEY)) {
-                            gb.PL(decodeInts(genotypeValues.get(i)));
-                            PlIsSet = true;
-                        } else if (gtKey.equals(VCFConstants.GENOTYPE_LIKELIHOODS_KEY)) {
-                            // Do not overwrite PL with data from GL
-                            if (!PlIsSet) {
-                                gb.PL(GenotypeLikelihoods.fromGLField(genotypeValues.get(i)).getAsPLs());
-                            }
-                        } else if (gtKey.equals(VCFConstants.DEPTH_KEY)) {
-                            gb.DP(Integer.parseInt(genotypeValues.get(i)));
-                        } else {
-                            gb.attribute(gtKey, genotypeValues.get(i));
+                generateException("There are too many keys for the sample " + sampleName + ", keys = " + format + ", values = " + genotypeValues.column());
+
+            PlIsSet = decodeGenotype(fields, genotypeKeys, genotypeValues, projectedKeys, alleles, PlIsSet);
+
+            // add it to the list
+            try {
+                if (!columnarGenotypes) {
+                    genotypes.add(((BuilderFields) fields).gb.make());
+                }
+            } catch (TribbleException e) {
+                throw new TribbleException.InternalCodecException(e.getMessage() + ", at position " + chr+":"+pos);
+            }
+        }
+
+        if (columnarGenotypes) {
+            return new LazyGenotypesContext.LazyData(columns.columns.make());
+        }
+        return new LazyGenotypesContext.LazyData(genotypes, projectedHeader.getSampleNamesInOrder(), projectedHeader.getSampleNameToOffset());
+    }
+
+    /**
+     * GL is deprecated in favour of PL, but genotypes that only have GL are still decoded, with their GLs converted to PLs
+     */
+    @SuppressWarnings("deprecation")
+    private static final String GENOTYPE_LIKELIHOODS_KEY = VCFConstants.GENOTYPE_LIKELIHOODS_KEY;
+
+    @SuppressWarnings("deprecation")
+    private static int[] getPLsFromGLs(final String GLs) {
+        return GenotypeLikelihoods.fromGLField(GLs).getAsPLs();
+    }
+
+    /**
+     * The fields of one genotype that decodeGenotype sets, written either to a {@link GenotypeBuilder} or directly
+     * into the {@link GenotypeColumns} of all the genotypes of a record
+     */
+    private interface GenotypeFields {
+        void maxAttributes(int n);
+        void alleles(List<Allele> alleles);
+        void phased(boolean phased);
+        void GQ(int GQ);
+        void DP(int DP);
+        void AD(int[] AD);
+        void PL(int[] PL);
+        void filters(List<String> filters);
+        void attribute(String key, Object value);
+    }
+
+    private static final class BuilderFields implements GenotypeFields {
+        private final GenotypeBuilder gb;
+
+        BuilderFields(final GenotypeBuilder gb) {
+            this.gb = gb;
+        }
+
+        @Override public void maxAttributes(final int n) { gb.maxAttributes(n); }
+        @Override public void alleles(final List<Allele> alleles) { gb.alleles(alleles); }
+        @Override public void phased(final boolean phased) { gb.phased(phased); }
+        @Override public void GQ(final int GQ) { gb.GQ(GQ); }
+        @Override public void DP(final int DP) { gb.DP(DP); }
+        @Override public void AD(final int[] AD) { gb.AD(AD); }
+        @Override public void PL(final int[] PL) { gb.PL(PL); }
+        @Override public void filters(final List<String> filters) { gb.filters(filters); }
+        @Override public void attribute(final String key, final Object value) { gb.attribute(key, value); }
+    }
+
+    /**
+     * Writes the fields of each genotype in turn into the columns of all the genotypes of a record
+     */
+    private final class ColumnFields implements GenotypeFields {
+        private final GenotypeColumns.Builder columns;
+        private int sample;
+
+        ColumnFields(final List<Allele> alleles) {
+            this.columns = new GenotypeColumns.Builder(alleles, projectedHeader.getGenotypeSamples(),
+                    projectedHeader.getSampleNamesInOrder(), projectedHeader.getSampleNameToOffset());
+        }
+
+        ColumnFields sample(final int sample) {
+            this.sample = sample;
+            return this;
+        }
+
+        @Override public void maxAttributes(final int n) { }
+        @Override public void alleles(final List<Allele> alleles) { columns.alleles(sample, alleles); }
+        @Override public void phased(final boolean phased) { columns.phased(sample, phased); }
+        @Override public void GQ(final int GQ) { columns.GQ(sample, GQ); }
+        @Override public void DP(final int DP) { columns.DP(sample, DP); }
+        @Override public void AD(final int[] AD) { columns.AD(sample, AD); }
+        @Override public void PL(final int[] PL) { columns.PL(sample, PL); }
+        @Override public void filters(final List<String> filters) { columns.filters(sample, filters); }
+        @Override public void attribute(final String key, final Object value) { columns.attribute(sample, key, value); }
+    }
+
+    /**
+     * The values of one genotype that decodeGenotype reads, held either as Strings or at the offsets found by the
+     * value tokenizer in the bytes of the genotype columns
+     */
+    private interface GenotypeValues {
+        int size();
+        String get(int i);
+        boolean is(int i, String value);
+        int getInt(int i);
+        double getDouble(int i);
+        int[] getInts(int i);
+        List<Allele> getAlleles(int i, List<Allele> alleles);
+        boolean isPhased(int i);
+        String column();
+    }
+
+    /**
+     * Values that are null are not in the decoding projection
+     */
+    private final class StringValues implements GenotypeValues {
+        private final List<String> values;
+        private final String column;
+
+        StringValues(final List<String> values, final String column) {
+            this.values = values;
+            this.column = column;
+        }
+
+        @Override public int size() { return values.size(); }
+        @Override public String get(final int i) { return values.get(i); }
+        @Override public boolean is(final int i, final String value) { return values.get(i).equals(value); }
+        @Override public int getInt(final int i) { return Integer.parseInt(values.get(i)); }
+        @Override public double getDouble(final int i) { return VCFUtils.parseVcfDouble(values.get(i)); }
+        @Override public int[] getInts(final int i) { return decodeInts(values.get(i)); }
+        @Override public List<Allele> getAlleles(final int i, final List<Allele> alleles) { return parseGenotypeAlleles(values.get(i), alleles, alleleMap); }
+        @Override public boolean isPhased(final int i) { return values.get(i).indexOf(VCFConstants.PHASED) != -1; }
+        @Override public String column() { return column; }
+    }
+
+    /**
+     * Parses numbers and GT values without creating Strings; reused for each genotype column of a record
+     */
+    private final class ByteValues implements GenotypeValues {
+        private final byte[] data;
+        private int columnStart;
+        private int columnEnd;
+
+        ByteValues(final byte[] data) {
+            this.data = data;
+        }
+
+        ByteValues column(final int columnStart, final int columnEnd) {
+            this.columnStart = columnStart;
+            this.columnEnd = columnEnd;
+            valueTokenizer.split(data, columnStart, columnEnd, (byte) VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR);
+            return this;
+        }
+
+        private int start(final int i) { return valueTokenizer.start(i); }
+        private int end(final int i) { return valueTokenizer.end(i); }
+
+        @Override public int size() { return valueTokenizer.count(); }
+        @Override public String get(final int i) { return VCFLineTokenizer.toString(data, start(i), end(i)); }
+        @Override public boolean is(final int i, final String value) { return VCFLineTokenizer.regionEquals(data, start(i), end(i), value); }
+        @Override public int getInt(final int i) { return VCFLineTokenizer.parseInt(data, start(i), end(i)); }
+        @Override public double getDouble(final int i) { return VCFLineTokenizer.parseDouble(data, start(i), end(i)); }
+        @Override public int[] getInts(final int i) { return VCFLineTokenizer.parseInts(data, start(i), end(i), (byte) ','); }
+        @Override public List<Allele> getAlleles(final int i, final List<Allele> alleles) { return parseGenotypeAlleles(data, start(i), end(i), alleles); }
+        @Override public boolean isPhased(final int i) { return VCFLineTokenizer.indexOf(data, start(i), end(i), (byte) VCFConstants.PHASED.charAt(0)) != -1; }
+        @Override public String column() { return VCFLineTokenizer.toString(data, columnStart, columnEnd); }
+    }
+
+    /**
+     * decode the values of one genotype into a builder or the columns of all genotypes
+     *
+     * @param genotypeKeys the FORMAT keys
+     * @param genotypeValues the values, after text decoding
+     * @param projectedKeys for each FORMAT key, whether it is projected, or null if all keys are decoded
+     * @param alleles the alleles of the record
+     * @param PlIsSet whether a PL has been decoded for an earlier genotype of the record
+     * @return whether a PL has been decoded for this or an earlier genotype of the record
+     */
+    private boolean decodeGenotype(final GenotypeFields gb,
+                                   final List<String> genotypeKeys,
+                                   final GenotypeValues genotypeValues,
+                                   final boolean[] projectedKeys,
+                                   final List<Allele> alleles,
+                                   boolean PlIsSet) {
+        int genotypeAlleleLocation = -1;
+        if (!genotypeKeys.isEmpty()) {
+            gb.maxAttributes(genotypeKeys.size() - 1);
+
+            for (int i = 0; i < genotypeKeys.size(); i++) {
+                final String gtKey = genotypeKeys.get(i);
+                boolean missing = i >= genotypeValues.size();
+
+                // todo -- all of these on the fly parsing of the missing value should be static constants
+                if (gtKey.equals(VCFConstants.GENOTYPE_KEY)) {
+                    genotypeAlleleLocation = i;
+                } else if ( missing ) {
+                    // if its truly missing (there no provided value) skip adding it to the attributes
+                } else if ( projectedKeys != null && !projectedKeys[i] ) {
+                    // not in the decoding projection
+                } else if (gtKey.equals(VCFConstants.GENOTYPE_FILTER_KEY)) {
+                    final List<String> filters = parseFilters(getCachedString(genotypeValues.get(i)));
+                    if ( filters != null ) gb.filters(filters);
+                } else if ( genotypeValues.is(i, VCFConstants.MISSING_VALUE_v4) ) {
+                    // don't add missing values to the map
+                } else {
+                    if (gtKey.equals(VCFConstants.GENOTYPE_QUALITY_KEY)) {
+                        if ( genotypeValues.is(i, VCFConstants.MISSING_GENOTYPE_QUALITY_v3) )
+                            gb.GQ(-1);
+                        else
+                            gb.GQ((int)Math.round(genotypeValues.getDouble(i)));
+                    } else if (gtKey.equals(VCFConstants.GENOTYPE_ALLELE_DEPTHS)) {
+                        gb.AD(genotypeValues.getInts(i));
+                    } else if (gtKey.equals(VCFConstants.GENOTYPE_PL_KEY)) {
+                        gb.PL(genotypeValues.getInts(i));
+                        PlIsSet = true;
+                    } else if (gtKey.equals(GENOTYPE_LIKELIHOODS_KEY)) {
+                        // Do not overwrite PL with data from GL
+                        if (!PlIsSet) {
+                            gb.PL(getPLsFromGLs(genotypeValues.get(i)));
                         }
+                    } else if (gtKey.equals(VCFConstants.DEPTH_KEY)) {
+                        gb.DP(genotypeValues.getInt(i));
+                    } else {
+                        gb.attribute(gtKey, genotypeValues.get(i));
                     }
                 }
             }
+        }
 
-            // check to make sure we found a genotype field if our version is less than 4.1 file
-            if ( ! version.isAtLeastAsRecentAs(VCFHeaderVersion.VCF4_1) && genotypeAlleleLocation == -1 )
-                generateException("Unable to find the GT field for the record; the GT field is required before VCF4.1");
-            if ( genotypeAlleleLocation > 0 )
-                generateException("Saw GT field at position " + genotypeAlleleLocation + ", but it must be at the first position for genotypes when present");
+        // check to make sure we found a genotype field if our version is less than 4.1 file
+        if ( ! version.isAtLeastAsRecentAs(VCFHeaderVersion.VCF4_1) && genotypeAlleleLocation == -1 )
+            generateException("Unable to find the GT field for the record; the GT field is required before VCF4.1");
+        if ( genotypeAlleleLocation > 0 )
+            generateException("Saw GT field at position " + genotypeAlleleLocation + ", but it must be at the first position for genotypes when present");
 
-            final List<Allele> GTalleles = (genotypeAlleleLocation == -1 ? new ArrayList<Allele>(0) : parseGenotypeAlleles(genotypeValues.get(genotypeAlleleLocation), alleles, alleleMap));
-            gb.alleles(GTalleles);
-            gb.phased(genotypeAlleleLocation != -1 && genotypeValues.get(genotypeAlleleLocation).indexOf(VCFConstants.PHASED) != -1);
+        final boolean decodeGT = genotypeAlleleLocation != -1 && (projectedKeys == null || projectedKeys[genotypeAlleleLocation]);
+        final List<Allele> GTalleles = (!decodeGT ? new ArrayList<Allele>(0) : genotypeValues.getAlleles(genotypeAlleleLocation, alleles));
+        gb.alleles(GTalleles);
+        gb.phased(decodeGT && genotypeValues.isPhased(genotypeAlleleLocation));
 
-            // add it to the list
-            try {
-                genotypes.add(gb.make());
-            } catch (TribbleException e) {
-                throw new TribbleException.InternalCodecException(e.getMessage() + ", at position " + chr+":"+pos);
+        return PlIsSet;
+    }
+
+    /**
+     * split the genotype columns of a line, keeping only the FORMAT column and the columns of the projected samples
+     * @param str the genotype columns
+     * @param genotypeParts the array to hold the FORMAT column followed by the projected sample columns
+     * @param sampleOffsets the offsets of the projected samples, in increasing order
+     * @return the total number of columns, up to the number of columns in the header, as for
+     * {@link ParsingUtils#split(String, String[], char)}
+     */
+    private static int splitProjectedSamples(final String str, final String[] genotypeParts, final int[] sampleOffsets) {
+        int nParts = 0;
+        int nProjected = 0;
+        int start = 0;
+        while (nParts < genotypeParts.length) {
+            final int tab = str.indexOf(VCFConstants.FIELD_SEPARATOR_CHAR, start);
+            final int end = tab == -1 ? str.length() : tab;
+            // column 0 is the FORMAT column, and column n the sample at offset n - 1
+            if (nParts == 0 || (nProjected < sampleOffsets.length && sampleOffsets[nProjected] == nParts - 1)) {
+                if (nParts > 0) nProjected++;
+                genotypeParts[nProjected] = str.substring(start, end);
             }
+            nParts++;
+            if (tab == -1) break;
+            start = tab + 1;
+        }
+        return nParts;
+    }
+
+    /**
+     * split the values of a genotype column, decoding their text
+     * @param projectedKeys for each FORMAT key, whether it is projected, or null if all keys are decoded
+     */
+    private List<String> splitGenotypeValues(final String genotypeColumn, final boolean[] projectedKeys) {
+        return projectedKeys == null ?
+                vcfTextTransformer.decodeText(ParsingUtils.split(genotypeColumn, VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR)) :
+                splitProjectedGenotypeValues(genotypeColumn, projectedKeys);
+    }
+
+    /**
+     * @param genotypeKeys the FORMAT keys of a record
+     * @return for each key, whether it is in the decoding projection, or null if all keys are decoded
+     */
+    private boolean[] getProjectedFormatKeys(final List<String> genotypeKeys) {
+        if (projection.getFormatKeys() == null) {
+            return null;
         }
+        final boolean[] projectedKeys = new boolean[genotypeKeys.size()];
+        for (int i = 0; i < projectedKeys.length; i++) {
+            projectedKeys[i] = projection.includesFormatKey(genotypeKeys.get(i));
+        }
+        return projectedKeys;
+    }
 
-        return new LazyGenotypesContext.LazyData(genotypes, header.getSampleNamesInOrder(), header.getSampleNameToOffset());
+    /**
+     * split the values of a genotype column, without allocating strings for keys that are not projected
+     * @param genotypeColumn the genotype column of one sample
+     * @param projectedKeys for each FORMAT key, whether it is projected
+     * @return a list with one entry per value, which is null for values that are not projected
+     */
+    private List<String> splitProjectedGenotypeValues(final String genotypeColumn, final boolean[] projectedKeys) {
+        final List<String> genotypeValues = new ArrayList<>(projectedKeys.length);
+        int start = 0;
+        while (true) {
+            final int colon = genotypeColumn.indexOf(VCFConstants.GENOTYPE_FIELD_SEPARATOR_CHAR, start);
+            final int end = colon == -1 ? genotypeColumn.length() : colon;
+            final int i = genotypeValues.size();
+            genotypeValues.add(i < projectedKeys.length && projectedKeys[i] ?
+                    vcfTextTransformer.decodeText(genotypeColumn.substring(start, end)) :
+                    null);
+            if (colon == -1) break;
+            start = colon + 1;
+        }
+        return genotypeValues;
     }
 
     private static final int[] decodeInts(final String string) {
@@ -879,6 +1682,23 @@ public abstract class AbstractVCFCodec extends AsciiFeatureCodec<VariantContext>
         this.remappedSampleName = remappedSampleName;
     }
 
+    /**
+     * Decode the genotypes of each record into primitive columns held by a {@link ColumnarGenotypesContext}, rather
+     * than into one {@link Genotype} object per sample.  Defaults to {@link Defaults#USE_COLUMNAR_GENOTYPES}.
+     *
+     * @param columnarGenotypes true to decode genotypes into columns
+     */
+    public void setColumnarGenotypes(final boolean columnarGenotypes) {
+        this.columnarGenotypes = columnarGenotypes;
+    }
+
+    /**
+     * @return true if genotypes are decoded into a {@link ColumnarGenotypesContext}
+     */
+    public boolean isColumnarGenotypes() {
+        return columnarGenotypes;
+    }
+
     protected void generateException(String message) {
         throw new TribbleException(String.format("The provided VCF file is malformed at approximately line number %d: %s", lineNo, message));
     }
@@ -0,0 +1,497 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.variant.vcf;
+
+import htsjdk.samtools.Defaults;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.ParallelBlockCompressedInputStream;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.SharedThreadPool;
+import htsjdk.tribble.FeatureCodec;
+import htsjdk.tribble.TribbleException;
+import htsjdk.tribble.readers.ByteLineIterator;
+import htsjdk.variant.bcf2.BCF2Codec;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Iterator over all the records in a VCF or BCF file that decodes them on a shared pool of worker threads.
+ *
+ * The file is read on the calling thread and cut into batches of whole VCF lines or BCF records, and up to
+ * decodingThreads batches are decoded concurrently. The header is parsed once, on the calling thread, and the
+ * codec of each batch shares the parsed header read-only. Records are always returned in file order. If a batch
+ * fails to decode, the records before the failure are returned before the exception is thrown.
+ *
+ * If fullyDecodeGenotypes is set, genotypes are decoded on the worker threads and codecs are reused from batch to
+ * batch. Otherwise genotypes are decoded lazily, on the thread that first asks for them. Lazy genotype decoding uses
+ * the state of the codec that decoded the record, so each batch then needs a codec of its own.
+ */
+final class ParallelVariantContextIterator implements CloseableIterator<VariantContext> {
+    /** The default size, in bytes, of the batches of records handed to the worker threads. */
+    static final int DEFAULT_BATCH_SIZE = 1024 * 1024;
+
+    private static final int INPUT_BUFFER_SIZE = 512000;
+    private static final int BCF_HEADER_PREFIX_LENGTH = 9;
+    private static final int BCF_RECORD_PREFIX_LENGTH = 8;
+
+    private final Path path;
+    private final Supplier<FeatureCodec<VariantContext, ?>> codecFactory;
+    private final int decodingThreads;
+    private final boolean fullyDecodeGenotypes;
+    private final int batchSize;
+
+    private final InputStream inputStream;
+    // null for BCF files, which are cut into records directly from the input stream
+    private final ByteLineIterator lineIterator;
+    // the codec that parsed the header, which is shared with the codecs that decode the records
+    private final FeatureCodec<VariantContext, ?> headerCodec;
+
+    private byte[] batch;
+    private int batchLength = 0;
+    private boolean endOfInput = false;
+
+    /** Batches that have been handed to the thread pool, in file order. */
+    private final Deque<Future<DecodedBatch>> pendingBatches = new ArrayDeque<>();
+    /** Codecs that have read the header and are not used by a pending batch. */
+    private final Deque<FeatureCodec<VariantContext, ?>> freeCodecs = new ArrayDeque<>();
+
+    private Iterator<VariantContext> records = Collections.emptyIterator();
+    // the exception that ended the current batch, thrown once its records have been returned
+    private RuntimeException failure = null;
+    private VariantContext previousRecord = null;
+    // set by close() to make the batches that are being decoded stop early
+    private volatile boolean closed = false;
+
+    /**
+     * @param path the VCF or BCF file to read
+     * @param isBCF true if path is a BCF file
+     * @param codecFactory creates the codecs used to decode the records, which must not have read a header
+     * @param decodingThreads the number of batches to decode concurrently
+     * @param fullyDecodeGenotypes true to decode the genotypes of each record on the worker threads
+     * @param batchSize the approximate size, in bytes, of each batch
+     */
+    ParallelVariantContextIterator(final Path path,
+                                   final boolean isBCF,
+                                   final Supplier<FeatureCodec<VariantContext, ?>> codecFactory,
+                                   final int decodingThreads,
+                                   final boolean fullyDecodeGenotypes,
+                                   final int batchSize) throws IOException {
+        if (decodingThreads <= 0) {
+            throw new IllegalArgumentException("The number of decoding threads must be > 0: " + decodingThreads);
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be > 0: " + batchSize);
+        }
+        this.path = path;
+        this.codecFactory = codecFactory;
+        this.decodingThreads = decodingThreads;
+        this.fullyDecodeGenotypes = fullyDecodeGenotypes;
+        this.batchSize = batchSize;
+        this.batch = new byte[batchSize];
+        this.inputStream = openInputStream(path);
+        try {
+            final byte[] headerBytes;
+            if (isBCF) {
+                this.lineIterator = null;
+                headerBytes = readBCFHeader();
+            } else {
+                this.lineIterator = new ByteLineIterator(inputStream);
+                headerBytes = readVCFHeader();
+            }
+            this.headerCodec = codecFactory.get();
+            readHeader(headerCodec, headerBytes);
+        } catch (final RuntimeException e) {
+            CloserUtil.close(inputStream);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens path, decompressing it on the calling thread if it is gzipped, or in parallel if it is block compressed
+     * and {@link Defaults#BGZF_DECOMPRESSION_THREADS} is set.
+     */
+    private static InputStream openInputStream(final Path path) throws IOException {
+        final InputStream inputStream = new BufferedInputStream(Files.newInputStream(path), INPUT_BUFFER_SIZE);
+        if (IOUtil.isBlockCompressed(path, true)) {
+            return Defaults.BGZF_DECOMPRESSION_THREADS > 0 ?
+                    new ParallelBlockCompressedInputStream(inputStream, Defaults.BGZF_DECOMPRESSION_THREADS) :
+                    new BlockCompressedInputStream(inputStream);
+        } else if (IOUtil.hasBlockCompressedExtension(path)) {
+            return new GZIPInputStream(inputStream, INPUT_BUFFER_SIZE);
+        }
+        return inputStream;
+    }
+
+    /**
+     * Reads the header lines, which are all the lines before the first record, and puts the first record in the
+     * first batch.
+     */
+    private byte[] readVCFHeader() {
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        while (true) {
+            if (!lineIterator.nextLine()) {
+                endOfInput = true;
+                break;
+            }
+            final byte[] line = lineIterator.getLineBuffer();
+            final int start = lineIterator.getLineStart();
+            final int end = lineIterator.getLineEnd();
+            if (end > start && line[start] == VCFHeader.HEADER_INDICATOR.charAt(0)) {
+                header.write(line, start, end - start);
+                header.write('\n');
+            } else {
+                appendToBatch(line, start, end - start);
+                appendToBatch((byte) '\n');
+                break;
+            }
+        }
+        return header.toByteArray();
+    }
+
+    /**
+     * Reads the BCF magic, the header length and the header text.
+     */
+    private byte[] readBCFHeader() {
+        final byte[] prefix = new byte[BCF_HEADER_PREFIX_LENGTH];
+        final int prefixLength = readFully(prefix, 0, prefix.length);
+        if (prefixLength < prefix.length) {
+            endOfInput = true;
+            return Arrays.copyOf(prefix, prefixLength);
+        }
+        final int textLength = readLittleEndianInt(prefix, prefix.length - 4);
+        if (textLength < 0) {
+            endOfInput = true;
+            return prefix;
+        }
+        final byte[] header = Arrays.copyOf(prefix, prefix.length + textLength);
+        final int read = readFully(header, prefix.length, textLength);
+        if (read < textLength) {
+            endOfInput = true;
+            return Arrays.copyOf(header, prefix.length + read);
+        }
+        return header;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!records.hasNext()) {
+            if (failure != null) {
+                final RuntimeException e = describeFailure(failure);
+                failure = null;
+                close();
+                throw e;
+            }
+            if (!nextBatch()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public VariantContext next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more records in " + path.toUri());
+        }
+        previousRecord = records.next();
+        return previousRecord;
+    }
+
+    /**
+     * Wait for the first pending batch, having read ahead so that decodingThreads more batches are decoded while
+     * it is consumed.
+     */
+    private boolean nextBatch() {
+        fillPipeline();
+        if (pendingBatches.isEmpty()) {
+            return false;
+        }
+        final Future<DecodedBatch> pendingBatch = pendingBatches.removeFirst();
+        fillPipeline();
+
+        final DecodedBatch decodedBatch;
+        try {
+            decodedBatch = pendingBatch.get();
+        } catch (final InterruptedException e) {
+            throw new RuntimeException("Interrupted waiting for VCF decoding thread", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Failed to decode VCF records", e.getCause());
+        }
+        if (decodedBatch.codec != null) {
+            freeCodecs.addLast(decodedBatch.codec);
+        }
+        records = decodedBatch.records.iterator();
+        failure = decodedBatch.failure;
+        return true;
+    }
+
+    private void fillPipeline() {
+        while (!endOfInput && pendingBatches.size() < decodingThreads) {
+            if (lineIterator != null) {
+                readVCFBatch();
+            } else {
+                readBCFBatch();
+            }
+            if (batchLength > 0) {
+                submitBatch();
+            }
+        }
+    }
+
+    private void readVCFBatch() {
+        while (batchLength < batchSize) {
+            if (!lineIterator.nextLine()) {
+                endOfInput = true;
+                return;
+            }
+            final int start = lineIterator.getLineStart();
+            appendToBatch(lineIterator.getLineBuffer(), start, lineIterator.getLineEnd() - start);
+            appendToBatch((byte) '\n');
+        }
+    }
+
+    /**
+     * Reads whole BCF records, each of which is two little-endian lengths followed by that many bytes. A truncated
+     * record ends the input, and is left in the batch for the codec to report.
+     */
+    private void readBCFBatch() {
+        while (batchLength < batchSize) {
+            ensureBatchCapacity(BCF_RECORD_PREFIX_LENGTH);
+            final int prefixLength = readFully(batch, batchLength, BCF_RECORD_PREFIX_LENGTH);
+            batchLength += prefixLength;
+            if (prefixLength < BCF_RECORD_PREFIX_LENGTH) {
+                endOfInput = true;
+                return;
+            }
+            final long recordLength = (long) readLittleEndianInt(batch, batchLength - 8) +
+                    readLittleEndianInt(batch, batchLength - 4);
+            if (recordLength < 0 || recordLength > Integer.MAX_VALUE - batchLength - 8) {
+                endOfInput = true;
+                return;
+            }
+            ensureBatchCapacity((int) recordLength);
+            final int read = readFully(batch, batchLength, (int) recordLength);
+            batchLength += read;
+            if (read < recordLength) {
+                endOfInput = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Queue the current batch to be decoded on the thread pool, by a free codec if genotypes are fully decoded,
+     * otherwise by a new one.
+     */
+    private void submitBatch() {
+        final byte[] data = batch;
+        final int length = batchLength;
+        batch = new byte[batchSize];
+        batchLength = 0;
+
+        final FeatureCodec<VariantContext, ?> freeCodec = fullyDecodeGenotypes && !freeCodecs.isEmpty() ?
+                freeCodecs.removeFirst() :
+                null;
+        pendingBatches.addLast(SharedThreadPool.submit(() -> {
+            final FeatureCodec<VariantContext, ?> codec = freeCodec != null ? freeCodec : newCodec();
+            return decodeBatch(codec, data, length);
+        }));
+    }
+
+    /**
+     * @return a codec that shares the header parsed by headerCodec
+     */
+    private FeatureCodec<VariantContext, ?> newCodec() {
+        final FeatureCodec<VariantContext, ?> codec = codecFactory.get();
+        if (codec instanceof AbstractVCFCodec && headerCodec instanceof AbstractVCFCodec) {
+            ((AbstractVCFCodec) codec).shareHeader((AbstractVCFCodec) headerCodec);
+        } else if (codec instanceof BCF2Codec && headerCodec instanceof BCF2Codec) {
+            ((BCF2Codec) codec).shareHeader((BCF2Codec) headerCodec);
+        } else {
+            throw new IllegalArgumentException("Cannot share the header of " + headerCodec + " with " + codec);
+        }
+        return codec;
+    }
+
+    private static <SOURCE> void readHeader(final FeatureCodec<VariantContext, SOURCE> codec, final byte[] headerBytes) {
+        final SOURCE source = codec.makeSourceFromStream(new ByteArrayInputStream(headerBytes));
+        try {
+            codec.readHeader(source);
+        } catch (final IOException e) {
+            throw new RuntimeIOException(e);
+        } finally {
+            codec.close(source);
+        }
+    }
+
+    private <SOURCE> DecodedBatch decodeBatch(final FeatureCodec<VariantContext, SOURCE> codec, final byte[] data, final int length) {
+        final List<VariantContext> decodedRecords = new ArrayList<>();
+        final SOURCE source = codec.makeSourceFromStream(new ByteArrayInputStream(data, 0, length));
+        try {
+            while (!closed && !codec.isDone(source)) {
+                final VariantContext vc = codec.decode(source);
+                if (vc == null) {
+                    continue;
+                }
+                if (fullyDecodeGenotypes && vc.getGenotypes() instanceof LazyGenotypesContext) {
+                    ((LazyGenotypesContext) vc.getGenotypes()).decode();
+                }
+                decodedRecords.add(vc);
+            }
+        } catch (final IOException e) {
+            return new DecodedBatch(decodedRecords, new RuntimeIOException(e), null);
+        } catch (final RuntimeException e) {
+            return new DecodedBatch(decodedRecords, e, null);
+        } finally {
+            codec.close(source);
+        }
+        return new DecodedBatch(decodedRecords, null, fullyDecodeGenotypes ? codec : null);
+    }
+
+    /**
+     * Adds the file, and for number format errors the preceding record, to an exception thrown while decoding.
+     */
+    private RuntimeException describeFailure(final RuntimeException e) {
+        if (e instanceof TribbleException) {
+            ((TribbleException) e).setSource(path.toUri().toString());
+            return e;
+        } else if (e instanceof NumberFormatException) {
+            final String error;
+            if (previousRecord == null) {
+                error = String.format("Error parsing %s at the first record", path.toUri());
+            } else {
+                error = String.format("Error parsing %s just after record at: %s:%d-%d",
+                        path.toUri(), previousRecord.getContig(), previousRecord.getStart(), previousRecord.getEnd());
+            }
+            return new TribbleException.MalformedFeatureFile(error, path.toUri().toString(), e);
+        }
+        return e;
+    }
+
+    private void appendToBatch(final byte[] bytes, final int offset, final int length) {
+        ensureBatchCapacity(length);
+        System.arraycopy(bytes, offset, batch, batchLength, length);
+        batchLength += length;
+    }
+
+    private void appendToBatch(final byte b) {
+        ensureBatchCapacity(1);
+        batch[batchLength++] = b;
+    }
+
+    private void ensureBatchCapacity(final int length) {
+        if (batchLength + length > batch.length) {
+            batch = Arrays.copyOf(batch, Math.max(batchLength + length, batch.length * 2));
+        }
+    }
+
+    /**
+     * @return the number of bytes read, which is less than length only at the end of the input
+     */
+    private int readFully(final byte[] buffer, final int offset, final int length) {
+        int total = 0;
+        try {
+            while (total < length) {
+                final int read = inputStream.read(buffer, offset + total, length - total);
+                if (read < 0) {
+                    break;
+                }
+                total += read;
+            }
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Unable to read " + path.toUri(), e);
+        }
+        return total;
+    }
+
+    private static int readLittleEndianInt(final byte[] buffer, final int offset) {
+        return (buffer[offset] & 0xFF) |
+                ((buffer[offset + 1] & 0xFF) << 8) |
+                ((buffer[offset + 2] & 0xFF) << 16) |
+                ((buffer[offset + 3] & 0xFF) << 24);
+    }
+
+    /**
+     * Stops decoding, waiting for the batches that are still being decoded, and closes the file.
+     */
+    @Override
+    public void close() {
+        records = Collections.emptyIterator();
+        endOfInput = true;
+        closed = true;
+        for (final Future<DecodedBatch> pendingBatch : pendingBatches) {
+            try {
+                pendingBatch.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (final ExecutionException e) {
+                // the iteration is over, so there is no one to report the failure to
+            }
+        }
+        pendingBatches.clear();
+        freeCodecs.clear();
+        CloserUtil.close(inputStream);
+    }
+
+    private static final class DecodedBatch {
+        private final List<VariantContext> records;
+        private final RuntimeException failure;
+        // the codec that decoded the batch, if it can be reused
+        private final FeatureCodec<VariantContext, ?> codec;
+
+        private DecodedBatch(final List<VariantContext> records, final RuntimeException failure, final FeatureCodec<VariantContext, ?> codec) {
+            this.records = records;
+            this.failure = failure;
+            this.codec = codec;
+        }
+    }
+}
@@ -78,7 +78,7 @@ public class VCFCodec extends AbstractVCFCodec {
     /**
      * Reads all of the header from the provided iterator, but no reads no further.
      * @param lineIterator the line reader to take header lines from
-     * @return The parsed header
+     * @return The parsed header, with only the samples of the decoding projection
      */
     @Override
     public Object readActualHeader(final LineIterator lineIterator) {
@@ -108,8 +108,7 @@ public class VCFCodec extends AbstractVCFCodec {
                     throw new TribbleException.InvalidHeader("We never saw a header line specifying VCF version");
                 }
                 headerStrings.add(lineIterator.next());
-                super.parseHeaderFromLines(headerStrings, version);
-                return this.header;
+                return super.parseHeaderFromLines(headerStrings, version);
             }
             else {
                 throw new TribbleException.InvalidHeader("We never saw the required CHROM header line (starting with one #) for the input VCF file");
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.variant.vcf;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The samples, INFO keys and FORMAT keys that a VCF or BCF codec should decode.  Fields that are not part of the
+ * projection are skipped without being turned into Java objects, so restricting decoding to the fields that a tool
+ * actually uses saves most of the work of parsing records with many samples or annotations.
+ *
+ * <p>Each of the three selections is either null, meaning everything is decoded (the default), or a set of names.
+ * The {@link VCFConstants#END_KEY} INFO key is always decoded, since it defines the extent of the record, and
+ * {@link VCFConstants#GENOTYPE_KEY} is a FORMAT key like any other: when it is not selected genotypes have no alleles.
+ * When samples are selected, the codec decodes only those samples and reports the header given by
+ * {@link #projectHeader(VCFHeader)}, so records and header stay consistent for writing.</p>
+ *
+ * <p>Projections are immutable, the {@code with} methods return a modified copy, for example
+ * {@code VCFDecodingProjection.ALL.withSamples(samples).withFormatKeys(Collections.singleton("GT"))}.</p>
+ */
+public final class VCFDecodingProjection {
+
+    /**
+     * A projection that decodes all samples and fields
+     */
+    public static final VCFDecodingProjection ALL = new VCFDecodingProjection(null, null, null);
+
+    private final Set<String> samples;
+    private final Set<String> infoKeys;
+    private final Set<String> formatKeys;
+
+    private VCFDecodingProjection(final Set<String> samples, final Set<String> infoKeys, final Set<String> formatKeys) {
+        this.samples = samples;
+        this.infoKeys = infoKeys;
+        this.formatKeys = formatKeys;
+    }
+
+    private static Set<String> copyOf(final Collection<String> names) {
+        return names == null ? null : Collections.unmodifiableSet(new LinkedHashSet<>(names));
+    }
+
+    /**
+     * @param samples the samples to decode, or null to decode all samples
+     * @return a copy of this projection that decodes only the given samples
+     */
+    public VCFDecodingProjection withSamples(final Collection<String> samples) {
+        return new VCFDecodingProjection(copyOf(samples), infoKeys, formatKeys);
+    }
+
+    /**
+     * @param infoKeys the INFO keys to decode, or null to decode all keys
+     * @return a copy of this projection that decodes only the given INFO keys (and {@link VCFConstants#END_KEY})
+     */
+    public VCFDecodingProjection withInfoKeys(final Collection<String> infoKeys) {
+        return new VCFDecodingProjection(samples, copyOf(infoKeys), formatKeys);
+    }
+
+    /**
+     * @param formatKeys the FORMAT keys to decode, or null to decode all keys
+     * @return a copy of this projection that decodes only the given FORMAT keys
+     */
+    public VCFDecodingProjection withFormatKeys(final Collection<String> formatKeys) {
+        return new VCFDecodingProjection(samples, infoKeys, copyOf(formatKeys));
+    }
+
+    /**
+     * @return the samples to decode, or null if all samples are decoded
+     */
+    public Set<String> getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return the INFO keys to decode, or null if all keys are decoded
+     */
+    public Set<String> getInfoKeys() {
+        return infoKeys;
+    }
+
+    /**
+     * @return the FORMAT keys to decode, or null if all keys are decoded
+     */
+    public Set<String> getFormatKeys() {
+        return formatKeys;
+    }
+
+    /**
+     * @return true if this projection decodes everything, so that a codec can use its unrestricted code paths
+     */
+    public boolean includesEverything() {
+        return samples == null && infoKeys == null && formatKeys == null;
+    }
+
+    /**
+     * @return true if the INFO field with the given key should be decoded
+     */
+    public boolean includesInfoKey(final String key) {
+        return infoKeys == null || infoKeys.contains(key) || VCFConstants.END_KEY.equals(key);
+    }
+
+    /**
+     * @return true if the FORMAT field with the given key should be decoded
+     */
+    public boolean includesFormatKey(final String key) {
+        return formatKeys == null || formatKeys.contains(key);
+    }
+
+    /**
+     * @return true if the given sample should be decoded
+     */
+    public boolean includesSample(final String sample) {
+        return samples == null || samples.contains(sample);
+    }
+
+    /**
+     * Find the positions, among the samples of a file, of the samples to decode.
+     *
+     * @param header the header of the file being decoded
+     * @return the offsets of the selected samples in {@link VCFHeader#getGenotypeSamples()}, in increasing order, or
+     * null if all samples are decoded
+     * @throws IllegalArgumentException if a selected sample is not in the header
+     */
+    public int[] getSampleOffsets(final VCFHeader header) {
+        if (samples == null) {
+            return null;
+        }
+        final List<String> headerSamples = header.getGenotypeSamples();
+        final int[] offsets = new int[samples.size()];
+        int n = 0;
+        for (int i = 0; i < headerSamples.size(); i++) {
+            if (samples.contains(headerSamples.get(i))) {
+                offsets[n++] = i;
+            }
+        }
+        if (n != samples.size()) {
+            final Set<String> missing = new LinkedHashSet<>(samples);
+            missing.removeAll(headerSamples);
+            throw new IllegalArgumentException("The decoding projection includes samples that are not in the VCF header: " + missing);
+        }
+        return offsets;
+    }
+
+    /**
+     * Make the header that describes records decoded with this projection: the same header lines, and only the
+     * selected samples, in the order in which they appear in the file.  Header lines of fields that are not decoded
+     * are kept, since they are harmless and other tools may rely on them.
+     *
+     * @param header the header of the file being decoded
+     * @return {@code header} itself if all samples are decoded, otherwise a new header
+     * @throws IllegalArgumentException if a selected sample is not in the header
+     */
+    public VCFHeader projectHeader(final VCFHeader header) {
+        final int[] offsets = getSampleOffsets(header);
+        if (offsets == null) {
+            return header;
+        }
+        final List<String> projectedSamples = new ArrayList<>(offsets.length);
+        for (final int offset : offsets) {
+            projectedSamples.add(header.getGenotypeSamples().get(offset));
+        }
+        final VCFHeader projected = new VCFHeader(header.getMetaDataInInputOrder(), projectedSamples);
+        if (header.getVCFHeaderVersion() != null) {
+            projected.setVCFHeaderVersion(header.getVCFHeaderVersion());
+        }
+        return projected;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final VCFDecodingProjection that = (VCFDecodingProjection) o;
+        return Objects.equals(samples, that.samples) &&
+                Objects.equals(infoKeys, that.infoKeys) &&
+                Objects.equals(formatKeys, that.formatKeys);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(samples, infoKeys, formatKeys);
+    }
+
+    @Override
+    public String toString() {
+        return "VCFDecodingProjection{" +
+                "samples=" + (samples == null ? "all" : samples) +
+                ", infoKeys=" + (infoKeys == null ? "all" : infoKeys) +
+                ", formatKeys=" + (formatKeys == null ? "all" : formatKeys) +
+                '}';
+    }
+}
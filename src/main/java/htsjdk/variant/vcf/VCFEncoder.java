@@ -156,10 +156,9 @@ public class VCFEncoder {
         writeInfoString(infoFields, vcfOutput);
 
         // FORMAT
-        final GenotypesContext gc = context.getGenotypes();
-        if (gc.isLazyWithData() && ((LazyGenotypesContext) gc).getUnparsedGenotypeData() instanceof String) {
+        if (writesUnparsedGenotypes(context)) {
             vcfOutput.append(VCFConstants.FIELD_SEPARATOR);
-            vcfOutput.append(((LazyGenotypesContext) gc).getUnparsedGenotypeData().toString());
+            vcfOutput.append(((LazyGenotypesContext) context.getGenotypes()).getUnparsedGenotypeData().toString());
         } else {
             final List<String> genotypeAttributeKeys = context.calcVCFGenotypeKeys(this.header);
             if ( !genotypeAttributeKeys.isEmpty()) {
@@ -248,6 +247,16 @@ public class VCFEncoder {
         return result;
     }
 
+    /**
+     * @return true if the genotypes of context have not been decoded from VCF text, which {@link #write} then copies
+     * to the output without decoding it
+     */
+    public static boolean writesUnparsedGenotypes(final VariantContext context) {
+        final GenotypesContext gc = context.getGenotypes();
+        return gc.isLazyWithData() && (((LazyGenotypesContext) gc).getUnparsedGenotypeData() instanceof String ||
+                ((LazyGenotypesContext) gc).getUnparsedGenotypeData() instanceof AbstractVCFCodec.GenotypeBytes);
+    }
+
     /**
      * Takes a double value and pretty prints it to a String for display
      * <p>
@@ -24,6 +24,7 @@
 
 package htsjdk.variant.vcf;
 
+import htsjdk.samtools.Defaults;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.FileExtensions;
@@ -44,10 +45,20 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Simplified interface for reading from VCF/BCF files.
+ *
+ * If the number of decoding threads is greater than zero (see {@link #setDecodingThreads(int)}), {@link #iterator()}
+ * reads the file on the calling thread and decodes batches of records concurrently on a shared pool of worker
+ * threads, returning them in file order. Queries are always decoded on the calling thread.
  */
 public class VCFFileReader implements VCFReader {
 
     private final FeatureReader<VariantContext> reader;
+    private final Path path;
+    private final VCFDecodingProjection projection;
+
+    private int decodingThreads = Defaults.VCF_DECODING_THREADS;
+    private boolean fullyDecodeGenotypes = false;
+    private int decodingBatchSize = ParallelVariantContextIterator.DEFAULT_BATCH_SIZE;
 
     /**
      * Returns true if the given file appears to be a BCF file.
@@ -112,7 +123,27 @@ public class VCFFileReader implements VCFReader {
      * @return FeatureCodec for input Path
      */
     private static FeatureCodec<VariantContext, ?> getCodecForPath(Path path) {
-        return isBCF(path) ? new BCF2Codec() : new VCFCodec();
+        return getCodecForPath(path, VCFDecodingProjection.ALL);
+    }
+
+    /**
+     * returns Correct Feature codec for Path depending whether
+     * the name seems to indicate that it's a BCF, decoding only the fields in projection.
+     *
+     * @param path to vcf/bcf
+     * @param projection the samples and fields to decode
+     * @return FeatureCodec for input Path
+     */
+    private static FeatureCodec<VariantContext, ?> getCodecForPath(final Path path, final VCFDecodingProjection projection) {
+        if (isBCF(path)) {
+            final BCF2Codec codec = new BCF2Codec();
+            codec.setDecodingProjection(projection);
+            return codec;
+        } else {
+            final VCFCodec codec = new VCFCodec();
+            codec.setDecodingProjection(projection);
+            return codec;
+        }
     }
 
     /**
@@ -142,20 +173,40 @@ public class VCFFileReader implements VCFReader {
      * Allows construction of a VCFFileReader that will or will not assert the presence of an index as desired.
      */
     public VCFFileReader(final Path path, final boolean requireIndex) {
+        this(path, requireIndex, VCFDecodingProjection.ALL);
+    }
+
+    /**
+     * Allows construction of a VCFFileReader with a specified index path.
+     */
+    public VCFFileReader(final Path path, final Path indexPath, final boolean requireIndex) {
+        this(path, indexPath, requireIndex, VCFDecodingProjection.ALL);
+    }
+
+    /**
+     * Constructs a VCFFileReader that decodes only the samples, INFO keys and FORMAT keys in projection, skipping
+     * the other fields. If the projection selects samples, {@link #getHeader()} has only those samples.
+     */
+    public VCFFileReader(final Path path, final boolean requireIndex, final VCFDecodingProjection projection) {
+        this.path = path;
+        this.projection = projection;
         this.reader = AbstractFeatureReader.getFeatureReader(
                 path.toUri().toString(),
-                getCodecForPath(path),
+                getCodecForPath(path, projection),
                 requireIndex);
     }
 
     /**
-     * Allows construction of a VCFFileReader with a specified index path.
+     * Constructs a VCFFileReader with a specified index path, that decodes only the samples, INFO keys and FORMAT
+     * keys in projection. If the projection selects samples, {@link #getHeader()} has only those samples.
      */
-    public VCFFileReader(final Path path, final Path indexPath, final boolean requireIndex) {
+    public VCFFileReader(final Path path, final Path indexPath, final boolean requireIndex, final VCFDecodingProjection projection) {
+        this.path = path;
+        this.projection = projection;
         this.reader = AbstractFeatureReader.getFeatureReader(
                 path.toUri().toString(),
                 indexPath.toUri().toString(),
-                getCodecForPath(path),
+                getCodecForPath(path, projection),
                 requireIndex);
     }
 
@@ -320,12 +371,69 @@ public class VCFFileReader implements VCFReader {
         return getHeader();
     }
 
+    /**
+     * Set the number of batches of records that {@link #iterator()} may decode concurrently, using a shared pool of
+     * worker threads. 0 decodes each record on the calling thread. Iterators that have already been created are
+     * unaffected.
+     *
+     * @param decodingThreads the number of batches to decode concurrently
+     */
+    public void setDecodingThreads(final int decodingThreads) {
+        if (decodingThreads < 0) {
+            throw new IllegalArgumentException("The number of decoding threads must be >= 0: " + decodingThreads);
+        }
+        this.decodingThreads = decodingThreads;
+    }
+
+    public int getDecodingThreads() {
+        return decodingThreads;
+    }
+
+    /**
+     * Set whether iterators that decode records on worker threads should also decode their genotypes there, rather
+     * than leaving them to be decoded lazily on the thread that first asks for them. This moves most of the work of
+     * decoding files with many samples onto the worker threads, and lets each thread reuse its codec between batches.
+     * Fully decoded genotypes are typed and may be written back differently (for example, with fields reformatted),
+     * and take more memory than the lazily decoded form. Default = false, so that decoding threads only change how
+     * fast records are read.
+     *
+     * @param fullyDecodeGenotypes true to decode genotypes on the worker threads
+     */
+    public void setFullyDecodeGenotypes(final boolean fullyDecodeGenotypes) {
+        this.fullyDecodeGenotypes = fullyDecodeGenotypes;
+    }
+
+    public boolean getFullyDecodeGenotypes() {
+        return fullyDecodeGenotypes;
+    }
+
+    /**
+     * Set the approximate size, in bytes, of the batches of records handed to each worker thread when decoding
+     * threads are used. Default = 1MB.
+     *
+     * @param decodingBatchSize the batch size in bytes
+     */
+    public void setDecodingBatchSize(final int decodingBatchSize) {
+        if (decodingBatchSize <= 0) {
+            throw new IllegalArgumentException("The decoding batch size must be > 0: " + decodingBatchSize);
+        }
+        this.decodingBatchSize = decodingBatchSize;
+    }
+
+    public int getDecodingBatchSize() {
+        return decodingBatchSize;
+    }
+
     /**
      * Returns an iterator over all records in this VCF/BCF file.
      */
     @Override
     public CloseableIterator<VariantContext> iterator() {
         try {
+            if (decodingThreads > 0) {
+                return new ParallelVariantContextIterator(path, isBCF(path), () -> getCodecForPath(path, projection),
+                        decodingThreads, fullyDecodeGenotypes, decodingBatchSize);
+            }
             return reader.iterator();
         } catch (final IOException ioe) {
             throw new TribbleException("Could not create an iterator from a feature reader.", ioe);
@@ -184,7 +184,7 @@ public class VCFIteratorBuilder {
 
         @Override
         protected VariantContext advance() {
-            return this.lineIterator.hasNext() ? this.codec.decode(this.lineIterator.next()) : null;
+            return this.lineIterator.hasNext() ? this.codec.decode(this.lineIterator) : null;
         }
 
         @Override
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2021 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+ * THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package htsjdk.variant.vcf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a region of a byte buffer into delimited tokens by recording the offsets of each token, and parses the
+ * values of tokens without creating intermediate Strings.  An instance is reused for every line, so that tokenizing
+ * does not allocate once its offset arrays have grown to the widest line seen.  Text is decoded as UTF-8.
+ */
+final class VCFLineTokenizer {
+    // powers of ten that are exactly representable as doubles
+    private static final double[] EXACT_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+    // the largest number of significant digits whose value is always exactly representable as a double
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int count = 0;
+
+    /**
+     * Split buffer[start, end) into tokens separated by delimiter, as for
+     * {@link htsjdk.tribble.util.ParsingUtils#split(String, String[], char, boolean)}: a leading delimiter is
+     * skipped, and once maxTokens tokens are found the rest of the region is either added to the last token or
+     * dropped.
+     *
+     * @param buffer the buffer holding the region
+     * @param start the offset of the start of the region
+     * @param end the offset just past the end of the region
+     * @param delimiter the token delimiter
+     * @param maxTokens the maximum number of tokens
+     * @param condenseTrailingTokens if true the last token extends to the end of the region
+     * @return the number of tokens
+     */
+    int tokenize(final byte[] buffer, final int start, final int end, final byte delimiter, final int maxTokens,
+                 final boolean condenseTrailingTokens) {
+        count = 0;
+        int tokenStart = start;
+        if (end > start && buffer[start] == delimiter) {
+            if (end - start == 1) {
+                return 0;
+            }
+            tokenStart++;
+        }
+        for (int i = tokenStart; i < end && count < maxTokens; i++) {
+            if (buffer[i] == delimiter) {
+                addToken(tokenStart, i);
+                tokenStart = i + 1;
+            }
+        }
+        if (count < maxTokens) {
+            addToken(tokenStart, end);
+        } else if (condenseTrailingTokens) {
+            ends[count - 1] = end;
+        }
+        return count;
+    }
+
+    /**
+     * Split buffer[start, end) into all of its tokens separated by delimiter, as for
+     * {@link htsjdk.tribble.util.ParsingUtils#split(String, char)}
+     *
+     * @return the number of tokens
+     */
+    int split(final byte[] buffer, final int start, final int end, final byte delimiter) {
+        count = 0;
+        int tokenStart = start;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == delimiter) {
+                addToken(tokenStart, i);
+                tokenStart = i + 1;
+            }
+        }
+        addToken(tokenStart, end);
+        return count;
+    }
+
+    private void addToken(final int start, final int end) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count++] = end;
+    }
+
+    /**
+     * @return the number of tokens found by the last call to tokenize
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * @return the offset of the first byte of the token
+     */
+    int start(final int token) {
+        return starts[token];
+    }
+
+    /**
+     * @return the offset just past the last byte of the token
+     */
+    int end(final int token) {
+        return ends[token];
+    }
+
+    /**
+     * @return the offset of the first occurrence of b in buffer[start, end), or -1
+     */
+    static int indexOf(final byte[] buffer, final int start, final int end, final byte b) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if buffer[start, end) holds exactly the characters of str, which is expected to be ASCII
+     */
+    static boolean regionEquals(final byte[] buffer, final int start, final int end, final String str) {
+        if (end - start != str.length()) {
+            return false;
+        }
+        for (int i = 0; i < str.length(); i++) {
+            if (buffer[start + i] != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if buffer[start, end) holds exactly the given bytes
+     */
+    static boolean regionEquals(final byte[] buffer, final int start, final int end, final byte[] bytes) {
+        if (end - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer[start + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String toString(final byte[] buffer, final int start, final int end) {
+        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parse buffer[start, end) as an int, accepting exactly what {@link Integer#parseInt(String)} accepts
+     *
+     * @throws NumberFormatException if the region is not a valid int
+     */
+    static int parseInt(final byte[] buffer, final int start, final int end) {
+        int i = start;
+        final boolean negative = i < end && buffer[i] == '-';
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            i++;
+        }
+        // nine digits can't overflow; longer or invalid values are left to Integer.parseInt for its exact behavior
+        if (i == end || end - i > 9) {
+            return Integer.parseInt(toString(buffer, start, end));
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            final int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(toString(buffer, start, end));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse buffer[start, end) as a double, giving exactly the result of {@link VCFUtils#parseVcfDouble(String)}.
+     * Plain decimals with few enough digits are parsed in place: the digits, and the power of ten they are divided
+     * by, are both exact doubles, so the single division is correctly rounded.  Anything else is parsed from a String.
+     *
+     * @throws NumberFormatException if the region is not a valid double
+     */
+    static double parseDouble(final byte[] buffer, final int start, final int end) {
+        int i = start;
+        final boolean negative = i < end && buffer[i] == '-';
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            i++;
+        }
+        long mantissa = 0;
+        int nDigits = 0;
+        int nFractionDigits = 0;
+        boolean sawPoint = false;
+        boolean sawDigit = false;
+        for (; i < end; i++) {
+            final byte b = buffer[i];
+            if (b >= '0' && b <= '9') {
+                sawDigit = true;
+                // leading zeros are not significant
+                if (mantissa != 0 || b != '0') {
+                    nDigits++;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (sawPoint) {
+                    nFractionDigits++;
+                }
+                if (nDigits > MAX_EXACT_DIGITS || nFractionDigits >= EXACT_POWERS_OF_TEN.length) {
+                    return VCFUtils.parseVcfDouble(toString(buffer, start, end));
+                }
+            } else if (b == '.' && !sawPoint) {
+                sawPoint = true;
+            } else {
+                return VCFUtils.parseVcfDouble(toString(buffer, start, end));
+            }
+        }
+        // a lone sign or point is not a number
+        if (!sawDigit) {
+            return VCFUtils.parseVcfDouble(toString(buffer, start, end));
+        }
+        final double value = mantissa / EXACT_POWERS_OF_TEN[nFractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse the delimited ints in buffer[start, end)
+     *
+     * @return the values, or null if any of them is not a valid int
+     */
+    static int[] parseInts(final byte[] buffer, final int start, final int end, final byte delimiter) {
+        int n = 1;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == delimiter) {
+                n++;
+            }
+        }
+        final int[] values = new int[n];
+        int valueStart = start;
+        try {
+            for (int v = 0; v < n; v++) {
+                int valueEnd = indexOf(buffer, valueStart, end, delimiter);
+                if (valueEnd == -1) {
+                    valueEnd = end;
+                }
+                values[v] = parseInt(buffer, valueStart, valueEnd);
+                valueStart = valueEnd + 1;
+            }
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+        return values;
+    }
+}
@@ -31,6 +31,12 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 /**
  * @author alecw@broadinstitute.org
@@ -69,4 +75,58 @@ public class BAMIteratorTest extends HtsjdkTest {
                 {"empty_no_empty_gzip_block.bam"}
         };
     }
+
+    private static final File MULTI_RECORD_BAM = new File("src/test/resources/htsjdk/samtools/cram/CEUTrio.HiSeq.WGS.b37.NA12878.20.first.8000.bam");
+
+    private static List<String> readSAMStrings(final SamReader reader) {
+        final List<String> records = new ArrayList<>();
+        for (final SAMRecord rec : reader) {
+            records.add(rec.getSAMString());
+        }
+        return records;
+    }
+
+    @Test
+    public void testReuseRecords() throws IOException {
+        final List<String> expected;
+        try (SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(MULTI_RECORD_BAM)) {
+            expected = readSAMStrings(reader);
+        }
+
+        final List<String> actual = new ArrayList<>();
+        final List<SAMRecord> retained = new ArrayList<>();
+        final Set<SAMRecord> distinctRecords = Collections.newSetFromMap(new IdentityHashMap<>());
+        try (SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).enable(SamReaderFactory.Option.REUSE_RECORDS).open(MULTI_RECORD_BAM);
+             SAMRecordIterator it = reader.iterator().assertSorted(SAMFileHeader.SortOrder.coordinate)) {
+            while (it.hasNext()) {
+                final SAMRecord rec = it.next();
+                distinctRecords.add(rec);
+                actual.add(rec.getSAMString());
+                if (retained.size() < 10) {
+                    retained.add(rec.deepCopy());
+                }
+            }
+        }
+        Assert.assertEquals(actual, expected);
+        Assert.assertTrue(distinctRecords.size() <= 3, "records were not reused");
+        for (int i = 0; i < retained.size(); i++) {
+            Assert.assertEquals(retained.get(i).getSAMString(), expected.get(i));
+        }
+    }
+
+    @Test
+    public void testWriteReusedRecords() throws IOException {
+        final File output = File.createTempFile("testWriteReusedRecords", ".bam");
+        output.deleteOnExit();
+        try (SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).enable(SamReaderFactory.Option.REUSE_RECORDS).open(MULTI_RECORD_BAM);
+             SAMFileWriter writer = new SAMFileWriterFactory().makeBAMWriter(reader.getFileHeader(), true, output)) {
+            for (final SAMRecord rec : reader) {
+                writer.addAlignment(rec);
+            }
+        }
+        try (SamReader expectedReader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(MULTI_RECORD_BAM);
+             SamReader actualReader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(output)) {
+            Assert.assertEquals(readSAMStrings(actualReader), readSAMStrings(expectedReader));
+        }
+    }
 }
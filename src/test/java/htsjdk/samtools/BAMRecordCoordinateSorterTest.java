@@ -0,0 +1,162 @@
+package htsjdk.samtools;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.SortingCollection;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class BAMRecordCoordinateSorterTest extends HtsjdkTest {
+
+    private static SAMRecordSetBuilder makeRecords(final int numPairs) {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.unsorted);
+        final Random random = new Random(42);
+        for (int i = 0; i < numPairs; i++) {
+            // few distinct positions and names that share long prefixes, so that ties must be broken on the raw fields
+            final String name = (random.nextBoolean() ? "readname_" : "readname_with_longer_prefix_") + random.nextInt(numPairs / 4 + 1);
+            final int contig = random.nextInt(3);
+            final int start1 = 1 + random.nextInt(50);
+            final int start2 = 1 + random.nextInt(50);
+            switch (random.nextInt(6)) {
+                case 0:
+                    builder.addUnmappedPair(name);
+                    break;
+                case 1:
+                    builder.addUnmappedFragment(name);
+                    break;
+                case 2:
+                    builder.addFrag(name, contig, start1, random.nextBoolean());
+                    break;
+                default:
+                    builder.addPair(name, contig, start1, start2);
+            }
+        }
+        return builder;
+    }
+
+    private static List<String> sortWithSortingCollection(final SAMRecordSetBuilder builder, final Path tmpDir) {
+        final SortingCollection<SAMRecord> sorter = SortingCollection.newInstance(SAMRecord.class,
+                new BAMRecordCodec(builder.getHeader()), new SAMRecordCoordinateComparator(), 100, tmpDir);
+        for (final SAMRecord rec : builder) {
+            sorter.add(rec);
+        }
+        final List<String> ret = new ArrayList<>();
+        for (final SAMRecord rec : sorter) {
+            ret.add(rec.getSAMString());
+        }
+        sorter.cleanup();
+        return ret;
+    }
+
+    @DataProvider
+    public Object[][] maxRecordsInRam() {
+        return new Object[][]{{100000}, {1000}, {77}, {1}};
+    }
+
+    @Test(dataProvider = "maxRecordsInRam")
+    public void testOrderMatchesSortingCollection(final int maxRecordsInRam) throws IOException {
+        final Path tmpDir = Files.createTempDirectory("BAMRecordCoordinateSorterTest");
+        try {
+            final SAMRecordSetBuilder builder = makeRecords(2000);
+            final List<String> expected = sortWithSortingCollection(builder, tmpDir);
+
+            final BAMRecordCoordinateSorter sorter = new BAMRecordCoordinateSorter(builder.getHeader(), maxRecordsInRam, tmpDir);
+            for (final SAMRecord rec : builder) {
+                sorter.add(rec);
+            }
+            final List<String> actual = new ArrayList<>();
+            try (CloseableIterator<SAMRecord> it = sorter.iterator()) {
+                while (it.hasNext()) {
+                    actual.add(it.next().getSAMString());
+                }
+            }
+            sorter.cleanup();
+            Assert.assertEquals(actual, expected);
+        } finally {
+            IOUtil.recursiveDelete(tmpDir);
+        }
+    }
+
+    @Test
+    public void testOrderMatchesSortingCollectionWithMaxFilesToMerge() throws IOException {
+        final Path tmpDir = Files.createTempDirectory("BAMRecordCoordinateSorterTest");
+        try {
+            final SAMRecordSetBuilder builder = makeRecords(2000);
+            final List<String> expected = sortWithSortingCollection(builder, tmpDir);
+
+            final BAMRecordCoordinateSorter sorter = new BAMRecordCoordinateSorter(builder.getHeader(), 50, tmpDir);
+            sorter.setMaxFilesToMerge(4);
+            for (final SAMRecord rec : builder) {
+                sorter.add(rec);
+            }
+            final List<String> actual = new ArrayList<>();
+            try (CloseableIterator<SAMRecord> it = sorter.iterator()) {
+                while (it.hasNext()) {
+                    actual.add(it.next().getSAMString());
+                }
+            }
+            sorter.cleanup();
+            Assert.assertEquals(actual, expected);
+            try (Stream<Path> remaining = Files.list(tmpDir)) {
+                Assert.assertEquals(remaining.count(), 0L);
+            }
+        } finally {
+            IOUtil.recursiveDelete(tmpDir);
+        }
+    }
+
+    @Test
+    public void testWriterUsesBinaryCoordinateSort() throws IOException {
+        final Path tmpDir = Files.createTempDirectory("BAMRecordCoordinateSorterTest");
+        try {
+            final SAMRecordSetBuilder builder = makeRecords(500);
+            final SAMFileHeader header = builder.getHeader().clone();
+            header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+
+            final List<List<String>> results = new ArrayList<>();
+            for (final boolean binary : new boolean[]{false, true}) {
+                final File bam = tmpDir.resolve("out." + binary + ".bam").toFile();
+                final SAMFileWriterFactory factory = new SAMFileWriterFactory()
+                        .setMaxRecordsInRam(100)
+                        .setTempDirectory(tmpDir.toFile())
+                        .setUseBinaryCoordinateSort(binary);
+                try (SAMFileWriter writer = factory.makeBAMWriter(header, false, bam)) {
+                    for (final SAMRecord rec : builder) {
+                        writer.addAlignment(rec);
+                    }
+                }
+                final List<String> records = new ArrayList<>();
+                try (SamReader reader = SamReaderFactory.makeDefault().open(bam)) {
+                    for (final SAMRecord rec : reader) {
+                        records.add(rec.getSAMString());
+                    }
+                }
+                results.add(records);
+            }
+            Assert.assertEquals(results.get(1).size(), builder.size());
+            Assert.assertEquals(results.get(1), results.get(0));
+        } finally {
+            IOUtil.recursiveDelete(tmpDir);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testAddAfterDoneAdding() throws IOException {
+        final SAMRecordSetBuilder builder = makeRecords(10);
+        final BAMRecordCoordinateSorter sorter = new BAMRecordCoordinateSorter(builder.getHeader(), 10,
+                IOUtil.getDefaultTmpDirPath());
+        sorter.doneAdding();
+        sorter.add(builder.iterator().next());
+    }
+}
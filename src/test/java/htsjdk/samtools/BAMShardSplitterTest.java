@@ -0,0 +1,252 @@
+package htsjdk.samtools;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.seekablestream.SeekableFileStream;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockGunzipper;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.RuntimeIOException;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class BAMShardSplitterTest extends HtsjdkTest {
+    private final static File bamFile = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+
+    private Path tmpDir;
+    private Path unindexedBam;
+    private Path sbiIndexedBam;
+    private List<String> allRecords;
+
+    @BeforeClass
+    public void setup() throws IOException {
+        tmpDir = Files.createTempDirectory("BAMShardSplitterTest");
+        unindexedBam = tmpDir.resolve("unindexed.bam");
+        Files.copy(bamFile.toPath(), unindexedBam);
+        final Path sbiDir = Files.createDirectory(tmpDir.resolve("sbi"));
+        sbiIndexedBam = sbiDir.resolve("sbi.bam");
+        Files.copy(bamFile.toPath(), sbiIndexedBam);
+        BAMSBIIndexer.createIndex(sbiIndexedBam, 100);
+
+        allRecords = new ArrayList<>();
+        try (SamReader reader = SamReaderFactory.makeDefault().open(bamFile)) {
+            reader.forEach(rec -> allRecords.add(rec.getSAMString()));
+        }
+    }
+
+    @AfterClass
+    public void tearDown() {
+        IOUtil.recursiveDelete(tmpDir);
+    }
+
+    @DataProvider
+    public Object[][] shardCounts() {
+        final List<Object[]> ret = new ArrayList<>();
+        for (final String input : new String[]{"bai", "unindexed", "sbi"}) {
+            for (final int numShards : new int[]{1, 2, 3, 8, 50}) {
+                ret.add(new Object[]{input, numShards});
+            }
+        }
+        return ret.toArray(new Object[0][]);
+    }
+
+    private SamReader open(final String input) {
+        final SamReaderFactory factory = SamReaderFactory.makeDefault();
+        switch (input) {
+            case "bai":
+                return factory.open(bamFile);
+            case "unindexed":
+                return factory.open(unindexedBam);
+            case "sbi":
+                return factory.open(sbiIndexedBam);
+            default:
+                throw new IllegalArgumentException(input);
+        }
+    }
+
+    @Test(dataProvider = "shardCounts")
+    public void testShardsCoverFile(final String input, final int numShards) throws IOException {
+        try (SamReader reader = open(input)) {
+            Assert.assertEquals(reader.hasIndex(), input.equals("bai"));
+            final List<SAMFileSpan> shards = reader.getShards(numShards);
+            Assert.assertTrue(shards.size() >= Math.min(numShards, 2) && shards.size() <= numShards, "shards: " + shards.size());
+
+            final List<String> records = new ArrayList<>();
+            long previousEnd = -1;
+            for (final SAMFileSpan shard : shards) {
+                final List<Chunk> chunks = ((BAMFileSpan) shard).getChunks();
+                Assert.assertEquals(chunks.size(), 1);
+                if (previousEnd >= 0) {
+                    Assert.assertEquals(chunks.get(0).getChunkStart(), previousEnd);
+                }
+                previousEnd = chunks.get(0).getChunkEnd();
+
+                int count = 0;
+                try (CloseableIterator<SAMRecord> it = reader.shardIterator(shard)) {
+                    while (it.hasNext()) {
+                        records.add(it.next().getSAMString());
+                        count++;
+                    }
+                }
+                Assert.assertTrue(count > 0);
+            }
+            Assert.assertEquals(previousEnd, Long.MAX_VALUE);
+            Assert.assertEquals(records, allRecords);
+        }
+    }
+
+    @Test
+    public void testConcurrentShardIterators() throws Exception {
+        try (SamReader reader = open("unindexed")) {
+            final List<SAMFileSpan> shards = reader.getShards(6);
+            final ExecutorService executor = Executors.newFixedThreadPool(shards.size());
+            try {
+                final List<Future<List<String>>> results = new ArrayList<>();
+                for (final SAMFileSpan shard : shards) {
+                    results.add(executor.submit(() -> {
+                        final List<String> records = new ArrayList<>();
+                        try (CloseableIterator<SAMRecord> it = reader.shardIterator(shard)) {
+                            it.forEachRemaining(rec -> records.add(rec.getSAMString()));
+                        }
+                        return records;
+                    }));
+                }
+                // the reader's own iterator can be used while shards are read
+                Assert.assertEquals(reader.iterator().stream().count(), allRecords.size());
+
+                final List<String> records = new ArrayList<>();
+                for (final Future<List<String>> result : results) {
+                    records.addAll(result.get());
+                }
+                Assert.assertEquals(records, allRecords);
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testFindRecordStart() throws IOException {
+        final Set<Long> recordStarts = new HashSet<>();
+        final SAMFileHeader header;
+        try (SamReader reader = SamReaderFactory.makeDefault().enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(bamFile)) {
+            header = reader.getFileHeader();
+            for (final SAMRecord rec : reader) {
+                recordStarts.add(((BAMFileSpan) rec.getFileSource().getFilePointer()).getFirstOffset());
+            }
+        }
+        final BAMShardSplitter splitter = new BAMShardSplitter(() -> {
+            try {
+                return new SeekableFileStream(bamFile);
+            } catch (final IOException e) {
+                throw new RuntimeIOException(e);
+            }
+        }, BlockGunzipper.getDefaultInflaterFactory(), header.getSequenceDictionary().size());
+
+        final long fileLength = bamFile.length();
+        for (long address = 1000; address < fileLength; address += 9973) {
+            final long recordStart = splitter.findRecordStart(address, fileLength);
+            if (recordStart >= 0) {
+                Assert.assertTrue(recordStarts.contains(recordStart), BlockCompressedFilePointerUtil.asString(recordStart));
+                Assert.assertTrue(BlockCompressedFilePointerUtil.getBlockAddress(recordStart) >= address);
+            }
+        }
+        Assert.assertEquals(splitter.findRecordStart(fileLength - 10, fileLength), -1);
+    }
+
+    @Test
+    public void testIsRecordStartAtTailOfData() {
+        final SAMRecordSetBuilder records = new SAMRecordSetBuilder();
+        records.addFrag("read1", 0, 100, false);
+        records.addFrag("read2", 0, 200, false);
+        final SAMFileHeader header = records.getHeader();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final BAMRecordCodec codec = new BAMRecordCodec(header);
+        codec.setOutputStream(bytes);
+        final List<Integer> recordStarts = new ArrayList<>();
+        for (final SAMRecord rec : records) {
+            recordStarts.add(bytes.size());
+            codec.encode(rec);
+        }
+        final byte[] data = bytes.toByteArray();
+        final int secondRecord = recordStarts.get(1);
+        final BAMShardSplitter splitter = new BAMShardSplitter(null, null, header.getSequenceDictionary().size());
+
+        // a whole record followed by part of the next one
+        Assert.assertTrue(splitter.isRecordStart(data, 0, secondRecord + 20));
+        // a record start too close to the end of the data to check any of it
+        Assert.assertFalse(splitter.isRecordStart(data, secondRecord, secondRecord + 20));
+        // a first record that is cut off
+        Assert.assertFalse(splitter.isRecordStart(data, 0, secondRecord - 5));
+        Assert.assertTrue(splitter.isRecordStart(data, secondRecord, data.length));
+    }
+
+    @Test
+    public void testIsRecordStartRejectsGarbage() {
+        final BAMShardSplitter splitter = new BAMShardSplitter(null, null, 2);
+        final byte[] letters = new byte[100];
+        Arrays.fill(letters, (byte) 'A');
+        final byte[] negativeSizes = new byte[100];
+        Arrays.fill(negativeSizes, (byte) 0xFF);
+        final byte[] random = new byte[10000];
+        new Random(42).nextBytes(random);
+        for (final byte[] garbage : Arrays.asList(letters, negativeSizes)) {
+            for (int offset = 0; offset < garbage.length; offset++) {
+                Assert.assertFalse(splitter.isRecordStart(garbage, offset, garbage.length));
+            }
+        }
+        // must not fail, whatever sizes the bytes decode to
+        for (int offset = 0; offset < random.length; offset++) {
+            splitter.isRecordStart(random, offset, random.length);
+        }
+    }
+
+    @Test
+    public void testLinearIndexRecordStarts() throws IOException {
+        final Set<Long> recordStarts = new HashSet<>();
+        try (SamReader reader = SamReaderFactory.makeDefault().enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(bamFile)) {
+            for (final SAMRecord rec : reader) {
+                recordStarts.add(((BAMFileSpan) rec.getFileSource().getFilePointer()).getFirstOffset());
+            }
+            final long[] linearIndexStarts = BAMShardSplitter.getLinearIndexRecordStarts(reader.indexing().getIndex(),
+                    reader.getFileHeader().getSequenceDictionary().size());
+            Assert.assertTrue(linearIndexStarts.length > 10);
+            for (int i = 0; i < linearIndexStarts.length; i++) {
+                Assert.assertTrue(recordStarts.contains(linearIndexStarts[i]));
+                Assert.assertTrue(i == 0 || linearIndexStarts[i] > linearIndexStarts[i - 1]);
+            }
+        }
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testSAMInputNotSupported() throws IOException {
+        try (SamReader reader = SamReaderFactory.makeDefault().open(new File("src/test/resources/htsjdk/samtools/coordinate_sorted.sam"))) {
+            reader.getShards(2);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidShardCount() throws IOException {
+        try (SamReader reader = open("bai")) {
+            reader.getShards(0);
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package htsjdk.samtools;
 
 import htsjdk.HtsjdkTest;
+import htsjdk.samtools.cram.build.CramIO;
+import htsjdk.samtools.cram.common.CramVersions;
 import htsjdk.samtools.cram.compression.*;
+import htsjdk.samtools.cram.compression.range.AdaptiveArithmetic;
+import htsjdk.samtools.cram.compression.rans.RANSNx16;
 import htsjdk.samtools.cram.encoding.ByteArrayLenEncoding;
 import htsjdk.samtools.cram.encoding.external.*;
 import htsjdk.samtools.cram.ref.ReferenceSource;
@@ -39,6 +43,40 @@ public class CRAMAllEncodingStrategiesTest extends HtsjdkTest {
         assertRoundtripFidelityWithSamtools(tempOutCRAM, referenceFile);
     }
 
+    @Test(dataProvider = "roundTripTestFiles")
+    public final void testRoundTripCRAM31EncodingStrategy(final File sourceFile, final File referenceFile) throws IOException {
+        final List<CRAMEncodingStrategy> strategies = new ArrayList<>();
+        strategies.add(new CRAMEncodingStrategy().setCRAMVersion(CramVersions.CRAM_v3_1));
+        final CompressionHeaderEncodingMap cram31EncodingMap =
+                new CompressionHeaderEncodingMap(new CRAMEncodingStrategy().setCRAMVersion(CramVersions.CRAM_v3_1));
+        for (final ExternalCompressor compressor : enumerateCRAM31ExternalCompressors()) {
+            for (final DataSeries dataSeries : Arrays.asList(DataSeries.BA_Base, DataSeries.QS_QualityScore, DataSeries.RN_ReadName)) {
+                // the name tokeniser can only be used for NUL terminated read names
+                if (compressor.getMethod() == BlockCompressionMethod.NAME_TOKENISER && dataSeries != DataSeries.RN_ReadName) {
+                    continue;
+                }
+                final CRAMEncodingStrategy strategy = createEncodingStrategyForParams(
+                        5,
+                        CRAMEncodingStrategy.DEFAULT_READS_PER_SLICE,
+                        1,
+                        dataSeries,
+                        cram31EncodingMap.getEncodingDescriptorForDataSeries(dataSeries),
+                        compressor);
+                strategies.add(strategy.setCRAMVersion(CramVersions.CRAM_v3_1));
+            }
+        }
+        for (final CRAMEncodingStrategy strategy : strategies) {
+            final File tempOutCRAM = File.createTempFile("testRoundTripCRAM31", ".cram");
+            tempOutCRAM.deleteOnExit();
+            CRAMTestUtils.writeToCRAMWithEncodingStrategy(strategy, sourceFile, tempOutCRAM, referenceFile);
+            try (final InputStream is = new FileInputStream(tempOutCRAM)) {
+                Assert.assertEquals(CramIO.readCramHeader(is).getCRAMVersion(), CramVersions.CRAM_v3_1);
+            }
+            assertRoundTripFidelity(sourceFile, tempOutCRAM, referenceFile, false);
+            assertRoundtripFidelityWithSamtools(tempOutCRAM, referenceFile);
+        }
+    }
+
     @Test(dataProvider = "roundTripTestFiles")
     public final void testAllEncodingStrategyCombinations(final File cramSourceFile, final File referenceFile) throws IOException {
         for (final Tuple<String, CRAMEncodingStrategy> testStrategy : getAllEncodingStrategies()) {
@@ -144,6 +182,22 @@ public class CRAMAllEncodingStrategiesTest extends HtsjdkTest {
         );
     }
 
+    private List<ExternalCompressor> enumerateCRAM31ExternalCompressors() {
+        return Arrays.asList(
+                compressorCache.getCompressorForMethod(BlockCompressionMethod.RANSNx16, 0),
+                compressorCache.getCompressorForMethod(BlockCompressionMethod.RANSNx16,
+                        RANSNx16.ORDER_FLAG | RANSNx16.N32_FLAG),
+                compressorCache.getCompressorForMethod(BlockCompressionMethod.RANSNx16,
+                        RANSNx16.STRIPE_FLAG | RANSNx16.RLE_FLAG | RANSNx16.PACK_FLAG),
+                compressorCache.getCompressorForMethod(BlockCompressionMethod.ADAPTIVE_ARITHMETIC, 0),
+                compressorCache.getCompressorForMethod(BlockCompressionMethod.ADAPTIVE_ARITHMETIC,
+                        AdaptiveArithmetic.ORDER_FLAG | AdaptiveArithmetic.RLE_FLAG),
+                compressorCache.getCompressorForMethod(BlockCompressionMethod.FQZCOMP, ExternalCompressor.NO_COMPRESSION_ARG),
+                compressorCache.getCompressorForMethod(BlockCompressionMethod.NAME_TOKENISER,
+                        NameTokeniserExternalCompressor.USE_ARITHMETIC)
+        );
+    }
+
     private List<DataSeries> enumerateDataSeries() {
         final List<DataSeries> seriesToUse = new ArrayList<>();
         // skip the ones this implementation doesn't use
@@ -2,9 +2,11 @@ package htsjdk.samtools;
 
 import htsjdk.HtsjdkTest;
 import htsjdk.samtools.cram.ref.ReferenceSource;
+import htsjdk.samtools.cram.structure.CRAMEncodingStrategy;
 import htsjdk.samtools.reference.InMemoryReferenceSequenceFile;
 import htsjdk.samtools.util.CloseableIterator;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.ByteArrayInputStream;
@@ -171,6 +173,65 @@ public class CRAMContainerStreamWriterTest extends HtsjdkTest {
         }
     }
 
+    private List<String> readRecordStrings(final byte[] cramBytes) {
+        final CRAMFileReader cReader = new CRAMFileReader(null, new ByteArrayInputStream(cramBytes), createReferenceSource());
+        final List<String> records = new ArrayList<>();
+        final SAMRecordIterator iterator = cReader.getIterator();
+        while (iterator.hasNext()) {
+            records.add(iterator.next().getSAMString());
+        }
+        return records;
+    }
+
+    private byte[] writeWithEncodingThreads(
+            final List<SAMRecord> samRecords,
+            final int encodingThreads,
+            final OutputStream indexStream) {
+        final SAMFileHeader header = createSAMHeader(SAMFileHeader.SortOrder.coordinate);
+        // use small containers so that many are in flight at once
+        final CRAMEncodingStrategy encodingStrategy = new CRAMEncodingStrategy()
+                .setMinimumSingleReferenceSliceSize(10)
+                .setReadsPerSlice(10)
+                .setSlicesPerContainer(1)
+                .setEncodingThreads(encodingThreads);
+        final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        final CRAMContainerStreamWriter containerStream = new CRAMContainerStreamWriter(
+                encodingStrategy,
+                createReferenceSource(),
+                header,
+                outStream,
+                indexStream == null ? null : new CRAMBAIIndexer(indexStream, header),
+                "test");
+        containerStream.writeHeader();
+        for (final SAMRecord record : samRecords) {
+            containerStream.writeAlignment(record);
+        }
+        containerStream.finish(true);
+        return outStream.toByteArray();
+    }
+
+    @DataProvider(name = "encodingThreads")
+    public Object[][] getEncodingThreads() {
+        return new Object[][]{{1}, {2}, {4}};
+    }
+
+    @Test(dataProvider = "encodingThreads")
+    public void testMultiThreadedEncodingRoundTrip(final int encodingThreads) throws IOException {
+        final List<SAMRecord> samRecords = createRecords(1000);
+        final List<String> expected = readRecordStrings(writeWithEncodingThreads(samRecords, 0, null));
+
+        final ByteArrayOutputStream indexStream = new ByteArrayOutputStream();
+        final byte[] cramBytes = writeWithEncodingThreads(samRecords, encodingThreads, indexStream);
+        Assert.assertEquals(readRecordStrings(cramBytes), expected);
+
+        // the output doesn't depend on the order in which the worker threads finish
+        Assert.assertEquals(writeWithEncodingThreads(samRecords, encodingThreads, null), cramBytes);
+
+        final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        outStream.write(cramBytes);
+        checkCRAMContainerStream(outStream, indexStream, ".bai");
+    }
+
     private void checkCRAMContainerStream(ByteArrayOutputStream outStream, ByteArrayOutputStream indexStream, String indexExtension) throws IOException {
         // write the file out
         final File cramTempFile = File.createTempFile("cramContainerStreamTest", ".cram");
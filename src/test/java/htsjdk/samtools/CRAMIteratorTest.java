@@ -3,10 +3,15 @@ package htsjdk.samtools;
 import htsjdk.HtsjdkTest;
 import htsjdk.samtools.cram.ref.ReferenceSource;
 import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.CloseableIterator;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -42,4 +47,76 @@ public class CRAMIteratorTest extends HtsjdkTest {
         cramFileReader.setValidationStringency(valStringency);
         return cramFileReader.getIterator();
     }
+
+    private static final File MULTI_CONTAINER_CRAM =
+            new File("src/test/resources/htsjdk/samtools/cram/NA12878.20.21.1-100.100-SeqsPerSlice.500-unMapped.cram");
+    private static final File MULTI_CONTAINER_REFERENCE =
+            new File("src/test/resources/htsjdk/samtools/cram/human_g1k_v37.20.21.1-100.fasta");
+
+    private interface IteratorFactory {
+        CloseableIterator<SAMRecord> getIterator(CRAMFileReader reader);
+    }
+
+    private static List<String> readWithDecodingThreads(final int decodingThreads, final IteratorFactory iteratorFactory) throws IOException {
+        final CRAMFileReader reader = new CRAMFileReader(
+                MULTI_CONTAINER_CRAM,
+                new File(MULTI_CONTAINER_CRAM.getPath() + ".crai"),
+                new ReferenceSource(MULTI_CONTAINER_REFERENCE),
+                ValidationStringency.SILENT);
+        reader.setDecodingThreads(decodingThreads);
+        final List<String> records = new ArrayList<>();
+        try (final CloseableIterator<SAMRecord> iterator = iteratorFactory.getIterator(reader)) {
+            while (iterator.hasNext()) {
+                records.add(iterator.next().getSAMString());
+            }
+        } finally {
+            reader.close();
+        }
+        return records;
+    }
+
+    @DataProvider(name = "decodingThreads")
+    public Object[][] getDecodingThreads() {
+        return new Object[][]{{1}, {2}, {8}};
+    }
+
+    @Test(dataProvider = "decodingThreads")
+    public void testParallelDecodingMatchesSerial(final int decodingThreads) throws IOException {
+        final IteratorFactory[] iteratorFactories = {
+                CRAMFileReader::getIterator,
+                CRAMFileReader::queryUnmapped,
+                r -> r.query(new QueryInterval[]{new QueryInterval(0, 1, 0)}, false)
+        };
+        for (final IteratorFactory iteratorFactory : iteratorFactories) {
+            final List<String> expected = readWithDecodingThreads(0, iteratorFactory);
+            Assert.assertFalse(expected.isEmpty());
+            Assert.assertEquals(readWithDecodingThreads(decodingThreads, iteratorFactory), expected);
+        }
+    }
+
+    @Test
+    public void testCloseWithContainersPending() throws IOException {
+        final CRAMFileReader reader = new CRAMFileReader(
+                MULTI_CONTAINER_CRAM,
+                (File) null,
+                new ReferenceSource(MULTI_CONTAINER_REFERENCE),
+                ValidationStringency.SILENT);
+        reader.setDecodingThreads(4);
+        final SAMRecordIterator iterator = reader.getIterator();
+        Assert.assertTrue(iterator.hasNext());
+        iterator.next();
+        iterator.close();
+        Assert.assertFalse(iterator.hasNext());
+        reader.close();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeDecodingThreads() throws IOException {
+        final CRAMFileReader reader = new CRAMFileReader(
+                MULTI_CONTAINER_CRAM,
+                (File) null,
+                new ReferenceSource(MULTI_CONTAINER_REFERENCE),
+                ValidationStringency.SILENT);
+        reader.setDecodingThreads(-1);
+    }
 }
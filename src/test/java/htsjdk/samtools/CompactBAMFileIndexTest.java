@@ -0,0 +1,137 @@
+package htsjdk.samtools;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import htsjdk.HtsjdkTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class CompactBAMFileIndexTest extends HtsjdkTest {
+    private final static File TEST_DATA_DIR = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest");
+
+    private static SAMSequenceDictionary getDictionary(final File bam) throws IOException {
+        try (SamReader reader = SamReaderFactory.makeDefault().open(bam)) {
+            return reader.getFileHeader().getSequenceDictionary();
+        }
+    }
+
+    private static AbstractBAMFileIndex openReferenceIndex(final File indexFile, final SAMSequenceDictionary dictionary) {
+        return indexFile.getName().endsWith(".csi") ? new CSIIndex(indexFile, false, dictionary) :
+                new CachingBAMFileIndex(indexFile, dictionary);
+    }
+
+    // the CSI index returns an empty span where the other indexes return null
+    private static String spanToString(final BAMFileSpan span) {
+        return span == null || span.isEmpty() ? "" : span.toString();
+    }
+
+    @DataProvider
+    public Object[][] indexes() {
+        return new Object[][]{
+                {"index_test.bam", "index_test.bam.bai"},
+                {"index_test.bam", "index_test.bam.csi"},
+                {"long_references.bam", "long_references.bam.csi"},
+        };
+    }
+
+    @Test(dataProvider = "indexes")
+    public void testMatchesIndex(final String bam, final String index) throws IOException {
+        final File indexFile = new File(TEST_DATA_DIR, index);
+        final SAMSequenceDictionary dictionary = getDictionary(new File(TEST_DATA_DIR, bam));
+        final CompactBAMFileIndex compact = new CompactBAMFileIndex(indexFile);
+        final AbstractBAMFileIndex expected = openReferenceIndex(indexFile, dictionary);
+        try {
+            Assert.assertEquals(compact.isCSI(), expected instanceof CSIIndex);
+            Assert.assertEquals(compact.getNumberOfReferences(), expected.getNumberOfReferences());
+            Assert.assertEquals(compact.getStartOfLastLinearBin(), expected.getStartOfLastLinearBin());
+            Assert.assertEquals(compact.getNoCoordinateCount(), expected.getNoCoordinateCount());
+            for (int ref = 0; ref < compact.getNumberOfReferences(); ref++) {
+                final BAMIndexMetaData expectedMetaData = expected.getMetaData(ref);
+                final BAMIndexMetaData metaData = compact.getMetaData(ref);
+                Assert.assertEquals(metaData.getAlignedRecordCount(), expectedMetaData.getAlignedRecordCount());
+                Assert.assertEquals(metaData.getUnalignedRecordCount(), expectedMetaData.getUnalignedRecordCount());
+                Assert.assertEquals(metaData.getFirstOffset(), expectedMetaData.getFirstOffset());
+                Assert.assertEquals(metaData.getLastOffset(), expectedMetaData.getLastOffset());
+
+                final int length = dictionary.getSequence(ref).getSequenceLength();
+                for (int start = 1; start < length; start += length / 100 + 1) {
+                    for (final int width : new int[]{1, 20000, length / 10}) {
+                        Assert.assertEquals(spanToString(compact.getSpanOverlapping(ref, start, start + width)),
+                                spanToString(expected.getSpanOverlapping(ref, start, start + width)),
+                                ref + ":" + start + "+" + width);
+                    }
+                }
+                Assert.assertEquals(spanToString(compact.getSpanOverlapping(ref, 1, -1)),
+                        spanToString(expected.getSpanOverlapping(ref, 1, -1)));
+
+                if (bam.startsWith("long_references")) {
+                    // CSIIndex computes bin positions in an int, which overflows for this binning scheme
+                    continue;
+                }
+                final BrowseableBAMIndex browseable = (BrowseableBAMIndex) expected;
+                for (final Bin bin : compact.getBinsOverlapping(ref, 1, length)) {
+                    Assert.assertEquals(compact.getLevelForBin(bin), browseable.getLevelForBin(bin));
+                    Assert.assertEquals(compact.getFirstLocusInBin(bin), browseable.getFirstLocusInBin(bin));
+                    Assert.assertEquals(compact.getLastLocusInBin(bin), browseable.getLastLocusInBin(bin));
+                    Assert.assertEquals(spanToString(compact.getSpanOverlapping(bin)),
+                            spanToString(browseable.getSpanOverlapping(bin)), bin.toString());
+                }
+            }
+            Assert.assertNull(compact.getSpanOverlapping(compact.getNumberOfReferences(), 1, 100));
+            Assert.assertNull(compact.getMetaData(compact.getNumberOfReferences()));
+        } finally {
+            expected.close();
+        }
+    }
+
+    @Test(dataProvider = "indexes")
+    public void testLoadFromPath(final String bam, final String index) throws IOException {
+        final File indexFile = new File(TEST_DATA_DIR, index);
+        final CompactBAMFileIndex fromFile = new CompactBAMFileIndex(indexFile);
+        try (FileSystem jimfs = Jimfs.newFileSystem(Configuration.unix())) {
+            final Path indexPath = jimfs.getPath(index);
+            Files.copy(indexFile.toPath(), indexPath);
+            final CompactBAMFileIndex fromPath = new CompactBAMFileIndex(indexPath);
+            Assert.assertEquals(fromPath.getNumberOfReferences(), fromFile.getNumberOfReferences());
+            Assert.assertEquals(fromPath.getNoCoordinateCount(), fromFile.getNoCoordinateCount());
+            for (int ref = 0; ref < fromFile.getNumberOfReferences(); ref++) {
+                Assert.assertEquals(spanToString(fromPath.getSpanOverlapping(ref, 1, -1)),
+                        spanToString(fromFile.getSpanOverlapping(ref, 1, -1)));
+            }
+        }
+    }
+
+    @Test(expectedExceptions = htsjdk.samtools.util.RuntimeIOException.class)
+    public void testInvalidIndex() {
+        new CompactBAMFileIndex(new File(TEST_DATA_DIR, "index_test.bam"));
+    }
+
+    @Test
+    public void testSharedCSIIndex() throws IOException {
+        final SamReaderFactory factory = SamReaderFactory.makeDefault().enable(SamReaderFactory.Option.SHARE_INDEXES);
+        final File bam = new File(TEST_DATA_DIR, "index_test.bam");
+        try (SamReader shared = factory.open(SamInputResource.of(bam).index(new File(TEST_DATA_DIR, "index_test.bam.csi")));
+             SamReader unshared = SamReaderFactory.makeDefault().open(SamInputResource.of(bam).index(new File(TEST_DATA_DIR, "index_test.bam.csi")))) {
+            Assert.assertTrue(shared.indexing().getIndex() instanceof SharedBAMFileIndex);
+            int count = 0;
+            try (SAMRecordIterator it1 = shared.queryOverlapping("chrM", 1, 10000);
+                 SAMRecordIterator it2 = unshared.queryOverlapping("chrM", 1, 10000)) {
+                while (it2.hasNext()) {
+                    Assert.assertEquals(it1.next().getSAMString(), it2.next().getSAMString());
+                    count++;
+                }
+                Assert.assertFalse(it1.hasNext());
+            }
+            Assert.assertTrue(count > 0);
+        } finally {
+            SharedBAMFileIndex.clearSharedIndexes();
+        }
+    }
+}
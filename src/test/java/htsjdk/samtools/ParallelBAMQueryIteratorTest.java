@@ -0,0 +1,163 @@
+package htsjdk.samtools;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.seekablestream.SeekableFileStream;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockGunzipper;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.RuntimeIOException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ParallelBAMQueryIteratorTest extends HtsjdkTest {
+    private final static File bamFile = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+
+    private static long pointer(final long blockAddress, final int blockOffset) {
+        return BlockCompressedFilePointerUtil.makeFilePointer(blockAddress, blockOffset);
+    }
+
+    @Test
+    public void testCoalesceChunks() {
+        final long[] chunks = {
+                pointer(0, 10), pointer(100, 5),
+                pointer(150, 0), pointer(200, 0),
+                pointer(10000, 0), pointer(10100, 0),
+                pointer(10050, 0), pointer(10060, 0)
+        };
+        Assert.assertEquals(ParallelBAMQueryIterator.coalesceChunks(chunks, 1000),
+                new long[]{pointer(0, 10), pointer(200, 0), pointer(10000, 0), pointer(10100, 0)});
+        Assert.assertEquals(ParallelBAMQueryIterator.coalesceChunks(chunks, 10),
+                new long[]{pointer(0, 10), pointer(100, 5), pointer(150, 0), pointer(200, 0),
+                        pointer(10000, 0), pointer(10100, 0)});
+        Assert.assertEquals(ParallelBAMQueryIterator.coalesceChunks(new long[0], 1000), new long[0]);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCoalesceChunksOddLength() {
+        ParallelBAMQueryIterator.coalesceChunks(new long[]{0, 1, 2}, 1000);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeQueryThreads() throws IOException {
+        final BAMFileReader reader = new BAMFileReader(bamFile, null, false, false, ValidationStringency.SILENT, DefaultSAMRecordFactory.getInstance());
+        try {
+            reader.setQueryThreads(-1);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static QueryInterval[] makeIntervals(final SAMFileHeader header, final int numPerContig, final int length) {
+        final List<QueryInterval> intervals = new ArrayList<>();
+        for (final SAMSequenceRecord sequence : header.getSequenceDictionary().getSequences()) {
+            final int step = Math.max(1, sequence.getSequenceLength() / numPerContig);
+            for (int start = 1; start <= sequence.getSequenceLength(); start += step) {
+                intervals.add(new QueryInterval(sequence.getSequenceIndex(), start, start + length));
+            }
+        }
+        return QueryInterval.optimizeIntervals(intervals.toArray(new QueryInterval[0]));
+    }
+
+    private static List<String> query(final int threads, final QueryInterval[] intervals, final boolean contained) throws IOException {
+        final List<String> ret = new ArrayList<>();
+        try (SamReader reader = SamReaderFactory.makeDefault()
+                .validationStringency(ValidationStringency.SILENT)
+                .enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS)
+                .open(bamFile)) {
+            ((BAMFileReader) ((SamReader.PrimitiveSamReaderToSamReaderAdapter) reader).underlyingReader()).setQueryThreads(threads);
+            try (CloseableIterator<SAMRecord> it = reader.query(intervals, contained)) {
+                while (it.hasNext()) {
+                    final SAMRecord rec = it.next();
+                    Assert.assertSame(rec.getFileSource().getReader(), reader);
+                    ret.add(rec.getSAMString());
+                }
+            }
+        }
+        return ret;
+    }
+
+    @DataProvider
+    public Object[][] queries() {
+        return new Object[][]{
+                // few long intervals, which exercise batches that continue a range
+                {1, 2, 50000000, false},
+                {4, 2, 50000000, false},
+                {4, 2, 50000000, true},
+                // many short intervals, whose chunks are coalesced
+                {1, 200, 1000, false},
+                {2, 200, 1000, false},
+                {8, 200, 1000, true},
+                {8, 2000, 100, false},
+        };
+    }
+
+    @Test(dataProvider = "queries")
+    public void testMatchesSequentialQuery(final int threads, final int numPerContig, final int length, final boolean contained) throws IOException {
+        final SAMFileHeader header;
+        try (SamReader reader = SamReaderFactory.makeDefault().open(bamFile)) {
+            header = reader.getFileHeader();
+        }
+        final QueryInterval[] intervals = makeIntervals(header, numPerContig, length);
+        final List<String> expected = query(0, intervals, contained);
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(query(threads, intervals, contained), expected);
+    }
+
+    @Test
+    public void testSmallBatches() throws IOException {
+        final SAMFileHeader header;
+        final long[] filePointers;
+        final List<String> expected = new ArrayList<>();
+        try (SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(bamFile)) {
+            header = reader.getFileHeader();
+            final QueryInterval[] intervals = makeIntervals(header, 1, Integer.MAX_VALUE / 2);
+            filePointers = BAMFileReader.getFileSpan(intervals, reader.indexing().getIndex()).toCoordinateArray();
+            final BAMFileReader bamFileReader = (BAMFileReader) ((SamReader.PrimitiveSamReaderToSamReaderAdapter) reader).underlyingReader();
+            try (CloseableIterator<SAMRecord> it = bamFileReader.getIterator(new BAMFileSpan(new Chunk(filePointers[0], filePointers[filePointers.length - 1])))) {
+                it.forEachRemaining(rec -> expected.add(rec.getSAMString()));
+            }
+        }
+        Assert.assertTrue(expected.size() > 1000);
+
+        // batches much smaller than the ranges, so that each range is read by many consecutive tasks
+        final List<String> actual = new ArrayList<>();
+        try (ParallelBAMQueryIterator it = new ParallelBAMQueryIterator(filePointers, header,
+                DefaultSAMRecordFactory.getInstance(), ValidationStringency.SILENT, false, null,
+                () -> {
+                    try {
+                        return new SeekableFileStream(bamFile);
+                    } catch (final IOException e) {
+                        throw new RuntimeIOException(e);
+                    }
+                }, BlockGunzipper.getDefaultInflaterFactory(), 3, 17)) {
+            it.forEachRemaining(rec -> actual.add(rec.getSAMString()));
+        }
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test
+    public void testCloseBeforeExhausted() throws IOException {
+        try (SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(bamFile)) {
+            ((BAMFileReader) ((SamReader.PrimitiveSamReaderToSamReaderAdapter) reader).underlyingReader()).setQueryThreads(4);
+            final QueryInterval[] intervals = makeIntervals(reader.getFileHeader(), 100, 10000);
+            try (CloseableIterator<SAMRecord> it = reader.query(intervals, false)) {
+                Assert.assertTrue(it.hasNext());
+                it.next();
+            }
+            int count = 0;
+            try (CloseableIterator<SAMRecord> it = reader.query(intervals, false)) {
+                while (it.hasNext()) {
+                    it.next();
+                    count++;
+                }
+            }
+            Assert.assertTrue(count > 1);
+        }
+    }
+}
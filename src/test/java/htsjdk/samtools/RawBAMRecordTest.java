@@ -0,0 +1,192 @@
+package htsjdk.samtools;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.util.CloseableIterator;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+public class RawBAMRecordTest extends HtsjdkTest {
+    private static final File BAM = new File("src/test/resources/htsjdk/samtools/cram/CEUTrio.HiSeq.WGS.b37.NA12878.20.first.8000.bam");
+
+    private static SamReader open(final File file) {
+        return SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(file);
+    }
+
+    private static List<String> readSAMStrings(final File file) throws IOException {
+        final List<String> records = new ArrayList<>();
+        try (SamReader reader = open(file)) {
+            for (final SAMRecord rec : reader) {
+                records.add(rec.getSAMString());
+            }
+        }
+        return records;
+    }
+
+    @Test
+    public void testFixedFieldsMatchDecodedRecords() throws IOException {
+        try (SamReader reader = open(BAM);
+             SamReader rawReader = open(BAM);
+             CloseableIterator<RawBAMRecord> rawIterator = rawReader.rawIterator()) {
+            int count = 0;
+            for (final SAMRecord rec : reader) {
+                Assert.assertTrue(rawIterator.hasNext());
+                final RawBAMRecord raw = rawIterator.next();
+                Assert.assertEquals(raw.getReadName(), rec.getReadName());
+                Assert.assertEquals(raw.getReferenceIndex(), rec.getReferenceIndex().intValue());
+                Assert.assertEquals(raw.getAlignmentStart(), rec.getAlignmentStart());
+                Assert.assertEquals(raw.getMappingQuality(), rec.getMappingQuality());
+                Assert.assertEquals(raw.getFlags(), rec.getFlags());
+                Assert.assertEquals(raw.isSet(SAMFlag.READ_UNMAPPED), rec.getReadUnmappedFlag());
+                Assert.assertEquals(raw.getCigarLength(), rec.getCigarLength());
+                Assert.assertEquals(raw.getReadLength(), rec.getReadLength());
+                Assert.assertEquals(raw.getMateReferenceIndex(), rec.getMateReferenceIndex().intValue());
+                Assert.assertEquals(raw.getMateAlignmentStart(), rec.getMateAlignmentStart());
+                Assert.assertEquals(raw.getInferredInsertSize(), rec.getInferredInsertSize());
+                Assert.assertEquals(raw.getLength() - raw.getAttributesOffset(), ((BAMRecord) rec).getAttributesBinarySize());
+                Assert.assertEquals(raw.toSAMRecord(reader.getFileHeader()).getSAMString(), rec.getSAMString());
+                count++;
+            }
+            Assert.assertFalse(rawIterator.hasNext());
+            Assert.assertTrue(count > 0);
+        }
+    }
+
+    @Test
+    public void testRecordIsValidUntilFollowingNext() throws IOException {
+        final List<String> expected = readSAMStrings(BAM);
+        try (SamReader reader = open(BAM);
+             CloseableIterator<RawBAMRecord> it = reader.rawIterator()) {
+            final List<RawBAMRecord> retained = new ArrayList<>();
+            for (int i = 0; it.hasNext(); i++) {
+                final RawBAMRecord rec = it.next();
+                // checking hasNext() must not overwrite the record
+                it.hasNext();
+                Assert.assertEquals(rec.toSAMRecord(reader.getFileHeader()).getSAMString(), expected.get(i));
+                if (i % 100 == 0) {
+                    retained.add(rec.deepCopy());
+                }
+            }
+            for (int i = 0; i < retained.size(); i++) {
+                Assert.assertEquals(retained.get(i).toSAMRecord(reader.getFileHeader()).getSAMString(), expected.get(i * 100));
+            }
+        }
+    }
+
+    @DataProvider
+    public Object[][] writerConfigurations() {
+        return new Object[][]{
+                // format, presorted, create index
+                {".bam", true, false},
+                {".bam", true, true},
+                {".bam", false, false},
+                {".sam", true, false},
+        };
+    }
+
+    @Test(dataProvider = "writerConfigurations")
+    public void testFilterPassthrough(final String extension, final boolean presorted, final boolean createIndex) throws IOException {
+        final Predicate<RawBAMRecord> rawFilter = r -> !r.isSet(SAMFlag.READ_UNMAPPED) && r.getMappingQuality() >= 30;
+        final Predicate<SAMRecord> filter = r -> !r.getReadUnmappedFlag() && r.getMappingQuality() >= 30;
+
+        final File output = File.createTempFile("testFilterPassthrough", extension);
+        output.deleteOnExit();
+        final File index = new File(output.getPath().replaceAll("\\.bam$", ".bai"));
+        index.deleteOnExit();
+        final List<String> expected = new ArrayList<>();
+        try (SamReader reader = open(BAM)) {
+            for (final SAMRecord rec : reader) {
+                if (filter.test(rec)) {
+                    expected.add(rec.getSAMString());
+                }
+            }
+        }
+
+        try (SamReader reader = open(BAM);
+             CloseableIterator<RawBAMRecord> it = reader.rawIterator();
+             SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(createIndex)
+                     .makeWriter(reader.getFileHeader().clone(), presorted, output, null)) {
+            while (it.hasNext()) {
+                final RawBAMRecord rec = it.next();
+                if (rawFilter.test(rec)) {
+                    writer.addRawRecord(rec);
+                }
+            }
+        }
+        Assert.assertEquals(readSAMStrings(output), expected);
+        if (extension.equals(".bam")) {
+            Assert.assertEquals(index.exists(), createIndex);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRawRecordOutOfOrder() throws IOException {
+        final File output = File.createTempFile("testRawRecordOutOfOrder", ".bam");
+        output.deleteOnExit();
+        try (SamReader reader = open(BAM);
+             CloseableIterator<RawBAMRecord> it = reader.rawIterator();
+             SAMFileWriter writer = new SAMFileWriterFactory().makeBAMWriter(reader.getFileHeader(), true, output)) {
+            final RawBAMRecord first = it.next().deepCopy();
+            while (it.hasNext()) {
+                final RawBAMRecord rec = it.next();
+                if (rec.getAlignmentStart() > first.getAlignmentStart()) {
+                    writer.addRawRecord(rec);
+                    break;
+                }
+            }
+            writer.addRawRecord(first);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testReferenceIndexNotInDictionary() throws IOException {
+        final File output = File.createTempFile("testReferenceIndexNotInDictionary", ".bam");
+        output.deleteOnExit();
+        try (SamReader reader = open(BAM);
+             CloseableIterator<RawBAMRecord> it = reader.rawIterator();
+             SAMFileWriter writer = new SAMFileWriterFactory().makeBAMWriter(new SAMFileHeader(), false, output)) {
+            RawBAMRecord rec = it.next();
+            while (rec.getReferenceIndex() < 0) {
+                rec = it.next();
+            }
+            writer.addRawRecord(rec);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testOnlyOneIterator() throws IOException {
+        try (SamReader reader = open(BAM);
+             CloseableIterator<RawBAMRecord> it = reader.rawIterator()) {
+            reader.iterator();
+        }
+    }
+
+    @Test
+    public void testIteratorAfterRawIteratorClosed() throws IOException {
+        try (SamReader reader = open(BAM)) {
+            reader.rawIterator().close();
+            try (SAMRecordIterator it = reader.iterator()) {
+                Assert.assertTrue(it.hasNext());
+            }
+        }
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testRawIteratorRequiresBAM() throws IOException {
+        try (SamReader reader = open(new File("src/test/resources/htsjdk/samtools/roundtrip.sam"))) {
+            reader.rawIterator();
+        }
+    }
+
+    @Test(expectedExceptions = SAMFormatException.class)
+    public void testBlockSizeMismatch() {
+        new RawBAMRecord(new byte[40], 40);
+    }
+}
@@ -1191,4 +1191,97 @@ public class SAMRecordUnitTest extends HtsjdkTest {
         rec.setAlignmentStart(100);
         Assert.assertEquals(100, rec.getAlignmentBlocks().get(0).getReferenceStart());
     }
+
+    private static BAMRecord encodeAndDecodeBAMRecord(final SAMRecord rec) {
+        final BAMRecordCodec codec = new BAMRecordCodec(rec.getHeader());
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        codec.setOutputStream(baos);
+        codec.encode(rec);
+        codec.setInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        return (BAMRecord) codec.decode();
+    }
+
+    private static SAMRecord createRecordWithManyTags() {
+        final SAMRecord rec = new SAMRecordSetBuilder().addFrag("lazy", 0, 1, false, false, "36M", null, 2);
+        rec.setAttribute("RG", "rg1");
+        rec.setAttribute("NM", 3);
+        rec.setAttribute("XA", 'x');
+        rec.setAttribute("XB", -5);
+        rec.setAttribute("XC", 300);
+        rec.setAttribute("XD", -70000);
+        rec.setAttribute("XE", 3000000000L);
+        rec.setAttribute("XF", 1.5f);
+        rec.setAttribute("XH", new byte[]{1, 2, 3});
+        rec.setAttribute("XI", new int[]{1, -2, 3});
+        rec.setAttribute("XS", new short[]{4, 5});
+        rec.setAttribute("XZ", new float[]{});
+        rec.setUnsignedArrayAttribute("XU", new byte[]{(byte) 200});
+        rec.setAttribute("MC", "36M");
+        return rec;
+    }
+
+    @Test
+    public void testBAMRecordSingleTagLookup() {
+        final SAMRecord original = createRecordWithManyTags();
+        final List<SAMRecord.SAMTagAndValue> expected = original.getAttributes();
+
+        for (final SAMRecord.SAMTagAndValue tagAndValue : expected) {
+            final BAMRecord rec = encodeAndDecodeBAMRecord(original);
+            final Object value = rec.getAttribute(tagAndValue.tag);
+            if (value.getClass().isArray()) {
+                Assert.assertTrue(Objects.deepEquals(value, tagAndValue.value), tagAndValue.tag);
+            } else {
+                Assert.assertEquals(value, tagAndValue.value, tagAndValue.tag);
+            }
+            Assert.assertNull(rec.getAttribute("YY"));
+            Assert.assertFalse(rec.hasAttribute("YY"));
+            Assert.assertEquals(rec.getSAMString(), original.getSAMString());
+        }
+    }
+
+    @Test
+    public void testBAMRecordRepeatedTagLookups() {
+        final SAMRecord original = createRecordWithManyTags();
+        final BAMRecord rec = encodeAndDecodeBAMRecord(original);
+        // more lookups than there are tags, so the attributes get decoded part way through
+        for (int i = 0; i < 3 * original.getAttributes().size(); i++) {
+            Assert.assertEquals(rec.getAttribute("NM"), 3);
+            Assert.assertEquals(rec.getStringAttribute("MC"), "36M");
+        }
+        Assert.assertTrue(rec.isUnsignedArrayAttribute("XU"));
+        Assert.assertEquals(rec.getAttributes().size(), original.getAttributes().size());
+
+        // setting an attribute after single tag lookups must keep the others
+        final BAMRecord rec2 = encodeAndDecodeBAMRecord(original);
+        Assert.assertEquals(rec2.getAttribute("RG"), "rg1");
+        rec2.setAttribute("NM", 4);
+        Assert.assertEquals(rec2.getAttribute("NM"), 4);
+        Assert.assertEquals(rec2.getAttribute("RG"), "rg1");
+        Assert.assertEquals(rec2.getAttributes().size(), original.getAttributes().size());
+    }
+
+    @Test
+    public void testBAMRecordTagLookupNoTags() {
+        final SAMRecord original = createTestRecordHelper();
+        original.clearAttributes();
+        final BAMRecord rec = encodeAndDecodeBAMRecord(original);
+        Assert.assertNull(rec.getAttribute("NM"));
+        Assert.assertTrue(rec.getAttributes().isEmpty());
+    }
+
+    @Test(expectedExceptions = SAMFormatException.class)
+    public void testFindTagOffsetsTruncated() {
+        // a tag of type i with only two of its four bytes
+        BinaryTagCodec.findTagOffsets(new byte[]{'N', 'M', 'i', 1, 0}, 0, 5);
+    }
+
+    @Test
+    public void testFindTagOffsets() {
+        final byte[] tags = {'X', 'Z', 'Z', 'a', 'b', 0, 'X', 'B', 'B', 's', 2, 0, 0, 0, 1, 0, 2, 0, 'N', 'M', 'C', 7};
+        Assert.assertEquals(BinaryTagCodec.findTagOffsets(tags, 0, tags.length), new int[]{0, 6, 18});
+        Assert.assertEquals(BinaryTagCodec.getTag(tags, 18), SAMTag.NM.getBinaryTag());
+        Assert.assertEquals(BinaryTagCodec.readTagValue(tags, 18, tags.length, ValidationStringency.STRICT), 7);
+        Assert.assertEquals(BinaryTagCodec.readTagValue(tags, 0, tags.length, ValidationStringency.STRICT), "ab");
+        Assert.assertEquals(BinaryTagCodec.readTagValue(tags, 6, tags.length, ValidationStringency.STRICT), new short[]{1, 2});
+    }
 }
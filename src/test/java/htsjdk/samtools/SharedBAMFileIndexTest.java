@@ -0,0 +1,158 @@
+package htsjdk.samtools;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.util.CloseableIterator;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class SharedBAMFileIndexTest extends HtsjdkTest {
+    private final static File bamFile = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+    private final static File baiFile = new File(bamFile.getPath() + ".bai");
+
+    @AfterMethod
+    public void clearRegistry() {
+        SharedBAMFileIndex.clearSharedIndexes();
+    }
+
+    private static SAMSequenceDictionary getDictionary() throws IOException {
+        try (SamReader reader = SamReaderFactory.makeDefault().open(bamFile)) {
+            return reader.getFileHeader().getSequenceDictionary();
+        }
+    }
+
+    @Test
+    public void testMatchesCachingIndex() throws IOException {
+        final SAMSequenceDictionary dictionary = getDictionary();
+        final SharedBAMFileIndex shared = new SharedBAMFileIndex(baiFile.toPath());
+        final CachingBAMFileIndex caching = new CachingBAMFileIndex(baiFile, dictionary);
+        try {
+            Assert.assertEquals(shared.getNumberOfReferences(), caching.getNumberOfReferences());
+            Assert.assertEquals(shared.getStartOfLastLinearBin(), caching.getStartOfLastLinearBin());
+            Assert.assertEquals(shared.getNoCoordinateCount(), caching.getNoCoordinateCount());
+            for (int ref = 0; ref < dictionary.size(); ref++) {
+                final BAMIndexMetaData expectedMetaData = caching.getMetaData(ref);
+                final BAMIndexMetaData metaData = shared.getMetaData(ref);
+                Assert.assertEquals(metaData.getAlignedRecordCount(), expectedMetaData.getAlignedRecordCount());
+                Assert.assertEquals(metaData.getUnalignedRecordCount(), expectedMetaData.getUnalignedRecordCount());
+
+                final int length = dictionary.getSequence(ref).getSequenceLength();
+                for (int start = 1; start < length; start += length / 50 + 1) {
+                    Assert.assertEquals(String.valueOf(shared.getSpanOverlapping(ref, start, start + 20000)),
+                            String.valueOf(caching.getSpanOverlapping(ref, start, start + 20000)));
+                }
+                for (final Bin bin : shared.getBinsOverlapping(ref, 1, length)) {
+                    Assert.assertEquals(shared.getSpanOverlapping(bin).toString(), caching.getSpanOverlapping(bin).toString());
+                }
+            }
+            Assert.assertNull(shared.getSpanOverlapping(dictionary.size(), 1, 100));
+            Assert.assertNull(shared.getMetaData(dictionary.size()));
+        } finally {
+            shared.close();
+            caching.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        final SAMSequenceDictionary dictionary = getDictionary();
+        final SharedBAMFileIndex shared = SharedBAMFileIndex.getSharedIndex(baiFile.toPath());
+        final List<String> expected = new ArrayList<>();
+        final CachingBAMFileIndex caching = new CachingBAMFileIndex(baiFile, dictionary);
+        for (int i = 0; i < 1000; i++) {
+            final int ref = i % dictionary.size();
+            final int start = 1 + (i * 7919) % dictionary.getSequence(ref).getSequenceLength();
+            expected.add(String.valueOf(caching.getSpanOverlapping(ref, start, start + 10000)));
+        }
+        caching.close();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<List<String>>> results = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                results.add(executor.submit(() -> {
+                    final SharedBAMFileIndex index = SharedBAMFileIndex.getSharedIndex(baiFile.toPath());
+                    final List<String> spans = new ArrayList<>();
+                    for (int i = 0; i < 1000; i++) {
+                        final int ref = i % dictionary.size();
+                        final int start = 1 + (i * 7919) % dictionary.getSequence(ref).getSequenceLength();
+                        spans.add(String.valueOf(index.getSpanOverlapping(ref, start, start + 10000)));
+                    }
+                    Assert.assertSame(index, shared);
+                    return spans;
+                }));
+            }
+            for (final Future<List<String>> result : results) {
+                Assert.assertEquals(result.get(), expected);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRegistry() throws IOException {
+        final Path tmpDir = Files.createTempDirectory("SharedBAMFileIndexTest");
+        final Path indexPath = tmpDir.resolve("index.bai");
+        try {
+            Files.copy(baiFile.toPath(), indexPath);
+            final SharedBAMFileIndex index = SharedBAMFileIndex.getSharedIndex(indexPath);
+            Assert.assertSame(SharedBAMFileIndex.getSharedIndex(indexPath), index);
+            Assert.assertSame(SharedBAMFileIndex.getSharedIndex(tmpDir.resolve("x").resolve("..").resolve("index.bai")), index);
+
+            // a modified file is reloaded
+            Files.copy(baiFile.toPath(), indexPath, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(indexPath, FileTime.fromMillis(Files.getLastModifiedTime(indexPath).toMillis() + 60000));
+            final SharedBAMFileIndex reloaded = SharedBAMFileIndex.getSharedIndex(indexPath);
+            Assert.assertNotSame(reloaded, index);
+            Assert.assertSame(SharedBAMFileIndex.getSharedIndex(indexPath), reloaded);
+
+            Assert.assertTrue(SharedBAMFileIndex.removeSharedIndex(indexPath));
+            Assert.assertFalse(SharedBAMFileIndex.removeSharedIndex(indexPath));
+            Assert.assertNotSame(SharedBAMFileIndex.getSharedIndex(indexPath), reloaded);
+        } finally {
+            Files.deleteIfExists(indexPath);
+            Files.delete(tmpDir);
+        }
+    }
+
+    @Test
+    public void testReadersShareIndex() throws IOException {
+        final SamReaderFactory factory = SamReaderFactory.makeDefault().enable(SamReaderFactory.Option.SHARE_INDEXES);
+        try (SamReader reader1 = factory.open(bamFile);
+             SamReader reader2 = factory.open(bamFile);
+             SamReader unshared = SamReaderFactory.makeDefault().open(bamFile)) {
+            Assert.assertTrue(reader1.indexing().getIndex() instanceof SharedBAMFileIndex);
+            Assert.assertSame(reader1.indexing().getIndex(), reader2.indexing().getIndex());
+            Assert.assertTrue(reader1.indexing().hasBrowseableIndex());
+
+            final QueryInterval[] intervals = {new QueryInterval(0, 1, 50000000), new QueryInterval(1, 100000, 200000)};
+            try (CloseableIterator<SAMRecord> it1 = reader1.query(intervals, false);
+                 CloseableIterator<SAMRecord> it2 = unshared.query(intervals, false)) {
+                int count = 0;
+                while (it2.hasNext()) {
+                    Assert.assertTrue(it1.hasNext());
+                    Assert.assertEquals(it1.next().getSAMString(), it2.next().getSAMString());
+                    count++;
+                }
+                Assert.assertFalse(it1.hasNext());
+                Assert.assertTrue(count > 0);
+            }
+            try (CloseableIterator<SAMRecord> it = reader1.queryUnmapped()) {
+                Assert.assertTrue(it.hasNext());
+            }
+        }
+    }
+}
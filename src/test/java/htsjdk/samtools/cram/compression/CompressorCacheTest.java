@@ -2,6 +2,8 @@ package htsjdk.samtools.cram.compression;
 
 import htsjdk.HtsjdkTest;
 import htsjdk.samtools.Defaults;
+import htsjdk.samtools.cram.compression.range.AdaptiveArithmetic;
+import htsjdk.samtools.cram.compression.rans.RANSNx16;
 import htsjdk.samtools.cram.structure.CompressorCache;
 import htsjdk.samtools.cram.structure.block.BlockCompressionMethod;
 import org.testng.Assert;
@@ -30,6 +32,13 @@ public class CompressorCacheTest extends HtsjdkTest {
                 {BlockCompressionMethod.RANS, 1, RANSExternalCompressor.class},
                 {BlockCompressionMethod.RANS, 0, RANSExternalCompressor.class},
                 {BlockCompressionMethod.RANS, ExternalCompressor.NO_COMPRESSION_ARG, RANSExternalCompressor.class},
+                {BlockCompressionMethod.RANSNx16, ExternalCompressor.NO_COMPRESSION_ARG, RANSNx16ExternalCompressor.class},
+                {BlockCompressionMethod.RANSNx16, RANSNx16.ORDER_FLAG, RANSNx16ExternalCompressor.class},
+                {BlockCompressionMethod.ADAPTIVE_ARITHMETIC, ExternalCompressor.NO_COMPRESSION_ARG, AdaptiveArithmeticExternalCompressor.class},
+                {BlockCompressionMethod.ADAPTIVE_ARITHMETIC, AdaptiveArithmetic.ORDER_FLAG, AdaptiveArithmeticExternalCompressor.class},
+                {BlockCompressionMethod.FQZCOMP, ExternalCompressor.NO_COMPRESSION_ARG, FQZCompExternalCompressor.class},
+                {BlockCompressionMethod.NAME_TOKENISER, ExternalCompressor.NO_COMPRESSION_ARG, NameTokeniserExternalCompressor.class},
+                {BlockCompressionMethod.NAME_TOKENISER, NameTokeniserExternalCompressor.USE_ARITHMETIC, NameTokeniserExternalCompressor.class},
         };
     }
 
@@ -54,6 +63,8 @@ public class CompressorCacheTest extends HtsjdkTest {
                 {BlockCompressionMethod.LZMA, -2},
                 {BlockCompressionMethod.LZMA, 99},
                 {BlockCompressionMethod.RANS, 2},
+                {BlockCompressionMethod.FQZCOMP, 1},
+                {BlockCompressionMethod.NAME_TOKENISER, 2},
         };
     }
 
@@ -0,0 +1,224 @@
+package htsjdk.samtools.cram.compression.fqzcomp;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.cram.CRAMException;
+import htsjdk.samtools.cram.compression.CompressionUtils;
+import htsjdk.samtools.cram.compression.range.ByteModel;
+import htsjdk.samtools.cram.compression.range.RangeCoder;
+import htsjdk.samtools.util.TestUtil;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class FQZCompTest extends HtsjdkTest {
+    private final Random random = new Random(TestUtil.RANDOM_SEED);
+
+    // wrap test arrays so that the test output doesn't include their contents
+    private static class TestCaseWrapper {
+        public final byte[] qualities;
+        public final int[] recordLengths;
+        public TestCaseWrapper(final byte[] qualities, final int[] recordLengths) {
+            this.qualities = qualities;
+            this.recordLengths = recordLengths;
+        }
+        public String toString() {
+            return String.format("%d qualities in %s records",
+                    qualities.length,
+                    recordLengths == null ? "one" : Integer.toString(recordLengths.length));
+        }
+    }
+
+    @DataProvider(name = "fqzcompData")
+    public Object[][] getFQZCompTestData() {
+        final List<Object[]> testCases = new ArrayList<>();
+        testCases.add(new Object[]{new TestCaseWrapper(new byte[0], null)});
+        testCases.add(new Object[]{new TestCaseWrapper(new byte[]{30}, null)});
+        testCases.add(new Object[]{new TestCaseWrapper(new byte[]{0, 0, 0}, null)});
+        testCases.add(new Object[]{new TestCaseWrapper(randomQualities(1000, 2, 40), null)});
+        // a binned alphabet, which is stored with a quality map
+        testCases.add(new Object[]{new TestCaseWrapper(binnedQualities(150 * 100), fixedLengths(150, 100))});
+        testCases.add(new Object[]{new TestCaseWrapper(randomQualities(100 * 50, 2, 40), fixedLengths(100, 50))});
+        testCases.add(new Object[]{new TestCaseWrapper(randomQualities(3 + 1 + 200 + 17, 0, 93), new int[]{3, 1, 200, 17})});
+        testCases.add(new Object[]{new TestCaseWrapper(randomQualities(2000, 0, 255), fixedLengths(20, 100))});
+        testCases.add(new Object[]{new TestCaseWrapper(withDuplicateRecords(), new int[]{50, 50, 50, 40, 40, 50})});
+        return testCases.toArray(new Object[0][]);
+    }
+
+    @Test(dataProvider = "fqzcompData")
+    public void testRoundTrip(final TestCaseWrapper tc) {
+        final FQZComp fqzComp = new FQZComp();
+        final ByteBuffer compressed = fqzComp.compress(ByteBuffer.wrap(tc.qualities), tc.recordLengths);
+        final ByteBuffer uncompressed = fqzComp.uncompress(compressed);
+        Assert.assertFalse(compressed.hasRemaining());
+        Assert.assertEquals(toArray(uncompressed), tc.qualities);
+    }
+
+    @Test
+    public void testCompressesQualities() {
+        final byte[] qualities = binnedQualities(150 * 100);
+        final ByteBuffer compressed = new FQZComp().compress(ByteBuffer.wrap(qualities), fixedLengths(150, 100));
+        Assert.assertTrue(compressed.remaining() < qualities.length / 3);
+    }
+
+    @Test
+    public void testDecodeSelectorsAndReversedRecords() {
+        // Hand assemble a stream using the stream features the encoder doesn't produce: two parameter blocks chosen
+        // through a selector table, and records stored reversed. Neither block uses previous qualities, positions
+        // or deltas, so each record codes its first quality with the parameter block's context, and the rest with
+        // that context plus the selector if the block uses it.
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompressionUtils.writeUint7(out, 9);
+        out.write(5);   // version
+        out.write(0x01 | 0x02 | 0x04);  // multiple parameter blocks, selector table, reversed records
+        out.write(2);   // number of parameter blocks
+        out.write(2);   // largest selector
+        final int[] selectorTable = new int[256];
+        Arrays.fill(selectorTable, 1, selectorTable.length, 1);
+        FQZParam.writeArray(out, selectorTable);
+
+        final int[] noTable = new int[FQZParam.PTAB_SIZE];
+        final FQZParam unmapped = new FQZParam(0x0000, 0, 41,
+                0, 0, 0, 0, 0, 0,
+                FQZParam.identity(FQZParam.QTAB_SIZE), FQZParam.identity(FQZParam.QTAB_SIZE), noTable, noTable);
+        final int[] qmap = FQZParam.identity(FQZParam.QTAB_SIZE);
+        qmap[0] = '#';
+        qmap[1] = 'F';
+        final FQZParam mapped = new FQZParam(0x0100, FQZParam.PFLAG_HAVE_QMAP | FQZParam.PFLAG_DO_SEL, 2,
+                0, 0, 0, 4, 0, 0,
+                qmap, FQZParam.identity(FQZParam.QTAB_SIZE), noTable, noTable);
+        unmapped.write(out);
+        mapped.write(out);
+
+        final RangeCoder rangeCoder = new RangeCoder();
+        final ByteModel selectorModel = new ByteModel(3);
+        final ByteModel[] lengthModels = new ByteModel[4];
+        for (int i = 0; i < lengthModels.length; i++) {
+            lengthModels[i] = new ByteModel(256);
+        }
+        final ByteModel reverseModel = new ByteModel(2);
+        final ByteModel[] qualityModels = new ByteModel[1 << 16];
+        final int[][] records = {
+                // selector, reversed, first context, context, symbols...
+                {0, 0, 0x0000, 0x0000, 30, 31, 32},
+                {1, 1, 0x0100, 0x0110, 0, 1, 1, 1},
+                {2, 0, 0x0100, 0x0120, 1, 0},
+        };
+        for (final int[] record : records) {
+            selectorModel.encodeSymbol(rangeCoder, record[0]);
+            final int length = record.length - 4;
+            for (int i = 0; i < 4; i++) {
+                lengthModels[i].encodeSymbol(rangeCoder, (length >> (8 * i)) & 0xFF);
+            }
+            reverseModel.encodeSymbol(rangeCoder, record[1]);
+            for (int i = 4; i < record.length; i++) {
+                final int context = i == 4 ? record[2] : record[3];
+                if (qualityModels[context] == null) {
+                    qualityModels[context] = new ByteModel(42);
+                }
+                qualityModels[context].encodeSymbol(rangeCoder, record[i]);
+            }
+        }
+        final byte[] encoded = rangeCoder.finishEncode();
+        out.write(encoded, 0, encoded.length);
+
+        final ByteBuffer uncompressed = new FQZComp().uncompress(ByteBuffer.wrap(out.toByteArray()));
+        Assert.assertEquals(toArray(uncompressed), new byte[]{30, 31, 32, 'F', 'F', 'F', '#', 'F', '#'});
+    }
+
+    @DataProvider(name = "tables")
+    public Object[][] getTables() {
+        final int[] steps = new int[FQZParam.PTAB_SIZE];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = Math.min(7, i >> 4);
+        }
+        final int[] longRun = new int[FQZParam.PTAB_SIZE];
+        Arrays.fill(longRun, 600, longRun.length, 1);
+        return new Object[][]{
+                {new int[FQZParam.DTAB_SIZE]},
+                {FQZParam.identity(FQZParam.QTAB_SIZE)},
+                {steps},
+                {longRun},
+        };
+    }
+
+    @Test(dataProvider = "tables")
+    public void testTableRoundTrip(final int[] table) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FQZParam.writeArray(out, table);
+        Assert.assertEquals(FQZParam.readArray(ByteBuffer.wrap(out.toByteArray()), table.length), table);
+    }
+
+    @Test
+    public void testReadStoredTable() {
+        // entry counts 2 and 2, a repeat count of 1 for a third 2, then a count of 1
+        final byte[] stored = {2, 2, 1, 1};
+        Assert.assertEquals(FQZParam.readArray(ByteBuffer.wrap(stored), 7), new int[]{0, 0, 1, 1, 2, 2, 3});
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectMismatchedRecordLengths() {
+        new FQZComp().compress(ByteBuffer.wrap(new byte[10]), new int[]{5, 4});
+    }
+
+    @Test(expectedExceptions = CRAMException.class)
+    public void testRejectUnknownVersion() {
+        final ByteBuffer compressed = new FQZComp().compress(ByteBuffer.wrap(randomQualities(100, 2, 40)));
+        // the version follows the single byte uint7 size
+        compressed.put(1, (byte) 4);
+        new FQZComp().uncompress(compressed);
+    }
+
+    @Test(expectedExceptions = CRAMException.class)
+    public void testTruncatedInput() {
+        final ByteBuffer compressed = new FQZComp().compress(ByteBuffer.wrap(randomQualities(1000, 2, 40)), fixedLengths(100, 10));
+        // the range coder pads its input with zeros, so only truncating the stream header is detected
+        compressed.limit(6);
+        new FQZComp().uncompress(compressed);
+    }
+
+    private static int[] fixedLengths(final int length, final int numRecords) {
+        final int[] lengths = new int[numRecords];
+        Arrays.fill(lengths, length);
+        return lengths;
+    }
+
+    private byte[] randomQualities(final int size, final int min, final int max) {
+        final byte[] qualities = new byte[size];
+        for (int i = 0; i < size; i++) {
+            qualities[i] = (byte) (min + random.nextInt(max - min + 1));
+        }
+        return qualities;
+    }
+
+    // the 4 bins used by modern Illumina instruments, mostly high and degrading towards the end of each read
+    private byte[] binnedQualities(final int size) {
+        final byte[] bins = {2, 12, 23, 37};
+        final byte[] qualities = new byte[size];
+        for (int i = 0; i < size; i++) {
+            final int position = i % 150;
+            qualities[i] = random.nextInt(150) < position / 2 ? bins[random.nextInt(3)] : bins[3];
+        }
+        return qualities;
+    }
+
+    private byte[] withDuplicateRecords() {
+        final byte[] first = randomQualities(50, 2, 40);
+        final byte[] second = randomQualities(40, 2, 40);
+        final ByteBuffer buffer = ByteBuffer.allocate(50 * 4 + 40 * 2);
+        buffer.put(first).put(first).put(randomQualities(50, 2, 40)).put(second).put(second).put(first);
+        return buffer.array();
+    }
+
+    private static byte[] toArray(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
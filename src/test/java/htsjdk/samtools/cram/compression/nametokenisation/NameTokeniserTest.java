@@ -0,0 +1,186 @@
+package htsjdk.samtools.cram.compression.nametokenisation;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.cram.CRAMException;
+import htsjdk.samtools.util.TestUtil;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class NameTokeniserTest extends HtsjdkTest {
+    private final Random random = new Random(TestUtil.RANDOM_SEED);
+
+    // wrap test names so that the test output doesn't include all of them
+    private static class TestCaseWrapper {
+        public final byte[] names;
+        private final String description;
+        public TestCaseWrapper(final String description, final List<String> names) {
+            final StringBuilder sb = new StringBuilder();
+            for (final String name : names) {
+                sb.append(name).append('\0');
+            }
+            this.names = sb.toString().getBytes(StandardCharsets.US_ASCII);
+            this.description = description;
+        }
+        public String toString() {
+            return description;
+        }
+    }
+
+    @DataProvider(name = "nameData")
+    public Object[][] getNameTestData() {
+        final List<TestCaseWrapper> inputs = new ArrayList<>();
+        inputs.add(new TestCaseWrapper("no names", new ArrayList<>()));
+        inputs.add(new TestCaseWrapper("one name", Arrays.asList("read1")));
+        inputs.add(new TestCaseWrapper("empty names", Arrays.asList("", "", "a", "")));
+        inputs.add(new TestCaseWrapper("duplicates", Arrays.asList("q1", "q1", "q1", "q2", "q2")));
+        inputs.add(new TestCaseWrapper("Illumina names", illuminaNames(1000)));
+        inputs.add(new TestCaseWrapper("zero padded names", zeroPaddedNames(1000)));
+        inputs.add(new TestCaseWrapper("changing structure", Arrays.asList(
+                "SRR062634.1", "SRR062634.2", "SRR062634.2/1", "x", "SRR062634.10", "A:B:C",
+                "read_0042", "read_0043", "read_042", "read_0999", "read_1000", "0", "00", "007", "7")));
+        inputs.add(new TestCaseWrapper("large numbers", Arrays.asList(
+                "n999999999", "n1000000000", "n4294967295", "n4294967296", "n18446744073709551616",
+                "n123456789", "n123456790", "n123457000")));
+        inputs.add(new TestCaseWrapper("punctuation only", Arrays.asList(":::", "::", "#/#", "#/#", "-")));
+        inputs.add(new TestCaseWrapper("too many tokens", Arrays.asList(manyTokens(300), manyTokens(300), "a1")));
+
+        final List<Object[]> testCases = new ArrayList<>();
+        for (final TestCaseWrapper input : inputs) {
+            testCases.add(new Object[]{input, false});
+            testCases.add(new Object[]{input, true});
+        }
+        return testCases.toArray(new Object[0][]);
+    }
+
+    @Test(dataProvider = "nameData")
+    public void testRoundTrip(final TestCaseWrapper tc, final boolean useArithmetic) {
+        final NameTokeniser nameTokeniser = new NameTokeniser();
+        final ByteBuffer compressed = nameTokeniser.compress(ByteBuffer.wrap(tc.names), useArithmetic);
+        final ByteBuffer uncompressed = nameTokeniser.uncompress(compressed);
+        Assert.assertFalse(compressed.hasRemaining());
+        Assert.assertEquals(toArray(uncompressed), tc.names);
+    }
+
+    @Test
+    public void testCompressesNames() {
+        final byte[] names = new TestCaseWrapper("Illumina names", illuminaNames(10000)).names;
+        final ByteBuffer compressed = new NameTokeniser().compress(ByteBuffer.wrap(names), false);
+        Assert.assertTrue(compressed.remaining() < names.length / 5);
+    }
+
+    @Test
+    public void testDecodeAssembledStream() {
+        // the names "a1", "b2" and "b2", with every stream stored uncompressed as a rANS Nx16 CAT block
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInt(out, 9);   // uncompressed size
+        writeInt(out, 3);   // number of names
+        out.write(0);       // rANS Nx16 streams
+
+        // position 0: the first name is new, the second differs from the one before and the third duplicates it
+        writeStream(out, 0x80, 6, 6, 5);
+        writeStream(out, 6, 0, 0, 0, 0, 1, 0, 0, 0);
+        writeStream(out, 5, 1, 0, 0, 0);
+        // position 1: every name has an ALPHA token, so the TYPE stream is omitted
+        writeStream(out, 0x80 | 1, 'a', 0, 'b', 0);
+        // position 2: DIGITS then DELTA, where the DIGITS stream holds the same bytes as the DUP stream
+        writeStream(out, 0x80, 7, 11);
+        out.write(0x40 | 7);
+        out.write(0);
+        out.write(5);
+        writeStream(out, 11, 1);
+        // position 3: END
+        writeStream(out, 0x80, 15, 15);
+
+        final ByteBuffer uncompressed = new NameTokeniser().uncompress(ByteBuffer.wrap(out.toByteArray()));
+        Assert.assertEquals(toArray(uncompressed), "a1\0b2\0b2\0".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectUnterminatedNames() {
+        new NameTokeniser().compress(ByteBuffer.wrap("read1\0read2".getBytes(StandardCharsets.US_ASCII)), false);
+    }
+
+    @Test(expectedExceptions = CRAMException.class)
+    public void testRejectWrongSize() {
+        final byte[] names = new TestCaseWrapper("Illumina names", illuminaNames(10)).names;
+        final ByteBuffer compressed = new NameTokeniser().compress(ByteBuffer.wrap(names), false);
+        compressed.put(0, (byte) (compressed.get(0) + 1));
+        new NameTokeniser().uncompress(compressed);
+    }
+
+    @Test(expectedExceptions = CRAMException.class)
+    public void testTruncatedInput() {
+        final byte[] names = new TestCaseWrapper("Illumina names", illuminaNames(100)).names;
+        final ByteBuffer compressed = new NameTokeniser().compress(ByteBuffer.wrap(names), false);
+        compressed.limit(compressed.limit() / 2);
+        new NameTokeniser().uncompress(compressed);
+    }
+
+    private static void writeInt(final ByteArrayOutputStream out, final int value) {
+        for (int i = 0; i < 4; i++) {
+            out.write((value >> (8 * i)) & 0xFF);
+        }
+    }
+
+    // write a stream header followed by a rANS Nx16 CAT block holding data
+    private static void writeStream(final ByteArrayOutputStream out, final int flags, final int... data) {
+        out.write(flags);
+        out.write(data.length + 2);
+        out.write(0x20);
+        out.write(data.length);
+        for (final int b : data) {
+            out.write(b);
+        }
+    }
+
+    private List<String> illuminaNames(final int count) {
+        final List<String> names = new ArrayList<>();
+        int tile = 1101;
+        int x = 1000;
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(500) == 0) {
+                tile++;
+                x = 1000;
+            }
+            x += random.nextInt(100);
+            final String name = String.format("A00123:8:H3KLMDSXY:4:%d:%d:%d", tile, x, 1000 + random.nextInt(30000));
+            names.add(name);
+            if (random.nextInt(4) == 0) {
+                // the mate of a pair
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    private List<String> zeroPaddedNames(final int count) {
+        final List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            names.add(String.format("SRR%07d.%06d", 62634, i * 3 + random.nextInt(3)));
+        }
+        return names;
+    }
+
+    private static String manyTokens(final int count) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i % 2 == 0 ? "a" : ":");
+        }
+        return sb.toString();
+    }
+
+    private static byte[] toArray(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
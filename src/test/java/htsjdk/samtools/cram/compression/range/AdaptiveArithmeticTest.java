@@ -0,0 +1,142 @@
+package htsjdk.samtools.cram.compression.range;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.cram.CRAMException;
+import htsjdk.samtools.util.TestUtil;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class AdaptiveArithmeticTest extends HtsjdkTest {
+    private static final int[] FLAG_COMBINATIONS = {
+            0,
+            AdaptiveArithmetic.ORDER_FLAG,
+            AdaptiveArithmetic.EXT_FLAG,
+            AdaptiveArithmetic.ORDER_FLAG | AdaptiveArithmetic.EXT_FLAG,
+            AdaptiveArithmetic.CAT_FLAG,
+            AdaptiveArithmetic.RLE_FLAG,
+            AdaptiveArithmetic.RLE_FLAG | AdaptiveArithmetic.ORDER_FLAG,
+            AdaptiveArithmetic.PACK_FLAG,
+            AdaptiveArithmetic.PACK_FLAG | AdaptiveArithmetic.ORDER_FLAG,
+            AdaptiveArithmetic.PACK_FLAG | AdaptiveArithmetic.RLE_FLAG | AdaptiveArithmetic.EXT_FLAG,
+            AdaptiveArithmetic.STRIPE_FLAG,
+            AdaptiveArithmetic.STRIPE_FLAG | AdaptiveArithmetic.ORDER_FLAG | AdaptiveArithmetic.RLE_FLAG,
+    };
+
+    private final Random random = new Random(TestUtil.RANDOM_SEED);
+
+    // wrap test arrays so that the test output doesn't include their contents
+    private static class TestCaseWrapper {
+        public final byte[] testArray;
+        public TestCaseWrapper(final byte[] testdata) {
+            this.testArray = testdata;
+        }
+        public String toString() {
+            return String.format("Array of size %d", testArray.length);
+        }
+    }
+
+    @DataProvider(name = "arithmeticData")
+    public Object[][] getArithmeticTestData() {
+        final List<Object[]> testCases = new ArrayList<>();
+        final List<byte[]> inputs = Arrays.asList(
+                new byte[0],
+                new byte[]{0},
+                new byte[]{0, 1},
+                new byte[]{0, 1, 2, 3, 4},
+                new byte[1000],
+                bytesWithValues(1000, i -> (byte) i),
+                bytesWithValues(1000, i -> i < 500 ? (byte) 0 : (byte) 1),
+                bytesWithValues(1001, i -> (byte) "ACGT".charAt(random.nextInt(4))),
+                bytesWithValues(10003, i -> (byte) (i / 37)),
+                randomBytesFromGeometricDistribution(1000, 0.1),
+                randomBytesFromGeometricDistribution(100 * 1000 + 3, 0.01),
+                bytesWithValues(2000, i -> (byte) random.nextInt(256)));
+        for (final byte[] input : inputs) {
+            for (final int flags : FLAG_COMBINATIONS) {
+                testCases.add(new Object[]{new TestCaseWrapper(input), flags});
+            }
+        }
+        return testCases.toArray(new Object[0][]);
+    }
+
+    @Test(dataProvider = "arithmeticData")
+    public void testRoundTrip(final TestCaseWrapper tc, final int flags) {
+        final AdaptiveArithmetic codec = new AdaptiveArithmetic();
+        final ByteBuffer compressed = codec.compress(ByteBuffer.wrap(tc.testArray), flags);
+        final ByteBuffer uncompressed = codec.uncompress(compressed);
+        Assert.assertFalse(compressed.hasRemaining());
+        Assert.assertEquals(toArray(uncompressed), tc.testArray);
+    }
+
+    @Test
+    public void testCompressesRedundantData() {
+        final byte[] data = randomBytesFromGeometricDistribution(10000, 0.5);
+        final AdaptiveArithmetic codec = new AdaptiveArithmetic();
+        for (final int flags : new int[]{0, AdaptiveArithmetic.ORDER_FLAG, AdaptiveArithmetic.EXT_FLAG, AdaptiveArithmetic.STRIPE_FLAG}) {
+            Assert.assertTrue(codec.compress(ByteBuffer.wrap(data), flags).remaining() < data.length / 2);
+        }
+        // a single run is reduced to almost nothing by RLE
+        final byte[] run = new byte[10000];
+        Assert.assertTrue(codec.compress(ByteBuffer.wrap(run), AdaptiveArithmetic.RLE_FLAG).remaining() < 20);
+    }
+
+    @Test
+    public void testIncompressibleDataIsStored() {
+        final byte[] data = bytesWithValues(100, i -> (byte) random.nextInt(256));
+        final ByteBuffer compressed = new AdaptiveArithmetic().compress(ByteBuffer.wrap(data), AdaptiveArithmetic.ORDER_FLAG);
+        Assert.assertEquals(compressed.get(0) & AdaptiveArithmetic.CAT_FLAG, AdaptiveArithmetic.CAT_FLAG);
+        Assert.assertEquals(compressed.remaining(), data.length + 2);
+    }
+
+    @Test
+    public void testReusedInstance() {
+        final AdaptiveArithmetic reused = new AdaptiveArithmetic();
+        for (int i = 0; i < 5; i++) {
+            final byte[] data = randomBytesFromGeometricDistribution(1000 + i * 1000, 0.1 / (i + 1));
+            for (final int flags : FLAG_COMBINATIONS) {
+                final ByteBuffer expected = new AdaptiveArithmetic().compress(ByteBuffer.wrap(data), flags);
+                final ByteBuffer actual = reused.compress(ByteBuffer.wrap(data), flags);
+                Assert.assertEquals(actual, expected);
+                Assert.assertEquals(toArray(reused.uncompress(actual)), data);
+            }
+        }
+    }
+
+    @Test(expectedExceptions = CRAMException.class)
+    public void testTruncatedInput() {
+        final byte[] data = randomBytesFromGeometricDistribution(1000, 0.1);
+        final ByteBuffer compressed = new AdaptiveArithmetic().compress(ByteBuffer.wrap(data), AdaptiveArithmetic.ORDER_FLAG);
+        // the range coder pads its input with zeros, so only truncating the stream header is detected
+        compressed.limit(3);
+        new AdaptiveArithmetic().uncompress(compressed);
+    }
+
+    private interface ByteForIndex {
+        byte get(int index);
+    }
+
+    private static byte[] bytesWithValues(final int n, final ByteForIndex valueForIndex) {
+        final byte[] data = new byte[n];
+        for (int i = 0; i < n; i++) {
+            data[i] = valueForIndex.get(i);
+        }
+        return data;
+    }
+
+    private static byte[] toArray(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private byte[] randomBytesFromGeometricDistribution(final int size, final double p) {
+        return bytesWithValues(size, i -> (byte) (Math.ceil(Math.log(1 - random.nextDouble()) / Math.log(1 - p)) - 1));
+    }
+}
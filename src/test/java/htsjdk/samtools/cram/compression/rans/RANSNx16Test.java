@@ -0,0 +1,141 @@
+package htsjdk.samtools.cram.compression.rans;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.cram.CRAMException;
+import htsjdk.samtools.util.TestUtil;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class RANSNx16Test extends HtsjdkTest {
+    private static final int[] FLAG_COMBINATIONS = {
+            0,
+            RANSNx16.ORDER_FLAG,
+            RANSNx16.N32_FLAG,
+            RANSNx16.ORDER_FLAG | RANSNx16.N32_FLAG,
+            RANSNx16.CAT_FLAG,
+            RANSNx16.RLE_FLAG,
+            RANSNx16.RLE_FLAG | RANSNx16.ORDER_FLAG,
+            RANSNx16.PACK_FLAG,
+            RANSNx16.PACK_FLAG | RANSNx16.ORDER_FLAG,
+            RANSNx16.PACK_FLAG | RANSNx16.RLE_FLAG | RANSNx16.N32_FLAG,
+            RANSNx16.STRIPE_FLAG,
+            RANSNx16.STRIPE_FLAG | RANSNx16.ORDER_FLAG | RANSNx16.RLE_FLAG,
+    };
+
+    private final Random random = new Random(TestUtil.RANDOM_SEED);
+
+    // wrap test arrays so that the test output doesn't include their contents
+    private static class TestCaseWrapper {
+        public final byte[] testArray;
+        public TestCaseWrapper(final byte[] testdata) {
+            this.testArray = testdata;
+        }
+        public String toString() {
+            return String.format("Array of size %d", testArray.length);
+        }
+    }
+
+    @DataProvider(name = "ransNx16Data")
+    public Object[][] getRANSNx16TestData() {
+        final List<Object[]> testCases = new ArrayList<>();
+        final List<byte[]> inputs = Arrays.asList(
+                new byte[0],
+                new byte[]{0},
+                new byte[]{0, 1},
+                new byte[]{0, 1, 2, 3, 4},
+                new byte[1000],
+                bytesWithValues(1000, i -> (byte) i),
+                bytesWithValues(1000, i -> i < 500 ? (byte) 0 : (byte) 1),
+                bytesWithValues(1001, i -> (byte) "ACGT".charAt(random.nextInt(4))),
+                bytesWithValues(10003, i -> (byte) (i / 37)),
+                randomBytesFromGeometricDistribution(1000, 0.1),
+                randomBytesFromGeometricDistribution(100 * 1000 + 3, 0.01),
+                bytesWithValues(2000, i -> (byte) random.nextInt(256)));
+        for (final byte[] input : inputs) {
+            for (final int flags : FLAG_COMBINATIONS) {
+                testCases.add(new Object[]{new TestCaseWrapper(input), flags});
+            }
+        }
+        return testCases.toArray(new Object[0][]);
+    }
+
+    @Test(dataProvider = "ransNx16Data")
+    public void testRoundTrip(final TestCaseWrapper tc, final int flags) {
+        final RANSNx16 rans = new RANSNx16();
+        final ByteBuffer compressed = rans.compress(ByteBuffer.wrap(tc.testArray), flags);
+        final ByteBuffer uncompressed = rans.uncompress(compressed);
+        Assert.assertFalse(compressed.hasRemaining());
+        Assert.assertEquals(toArray(uncompressed), tc.testArray);
+    }
+
+    @Test
+    public void testCompressesRedundantData() {
+        final byte[] data = randomBytesFromGeometricDistribution(10000, 0.5);
+        final RANSNx16 rans = new RANSNx16();
+        for (final int flags : new int[]{0, RANSNx16.ORDER_FLAG, RANSNx16.N32_FLAG, RANSNx16.STRIPE_FLAG}) {
+            Assert.assertTrue(rans.compress(ByteBuffer.wrap(data), flags).remaining() < data.length / 2);
+        }
+        // a single run is reduced to almost nothing by RLE
+        final byte[] run = new byte[10000];
+        Assert.assertTrue(rans.compress(ByteBuffer.wrap(run), RANSNx16.RLE_FLAG).remaining() < 20);
+    }
+
+    @Test
+    public void testIncompressibleDataIsStored() {
+        final byte[] data = bytesWithValues(100, i -> (byte) random.nextInt(256));
+        final ByteBuffer compressed = new RANSNx16().compress(ByteBuffer.wrap(data), RANSNx16.ORDER_FLAG);
+        Assert.assertEquals(compressed.get(0) & RANSNx16.CAT_FLAG, RANSNx16.CAT_FLAG);
+        Assert.assertEquals(compressed.remaining(), data.length + 2);
+    }
+
+    @Test
+    public void testReusedInstance() {
+        final RANSNx16 reused = new RANSNx16();
+        for (int i = 0; i < 5; i++) {
+            final byte[] data = randomBytesFromGeometricDistribution(1000 + i * 1000, 0.1 / (i + 1));
+            for (final int flags : FLAG_COMBINATIONS) {
+                final ByteBuffer expected = new RANSNx16().compress(ByteBuffer.wrap(data), flags);
+                final ByteBuffer actual = reused.compress(ByteBuffer.wrap(data), flags);
+                Assert.assertEquals(actual, expected);
+                Assert.assertEquals(toArray(reused.uncompress(actual)), data);
+            }
+        }
+    }
+
+    @Test(expectedExceptions = CRAMException.class)
+    public void testTruncatedInput() {
+        final byte[] data = randomBytesFromGeometricDistribution(1000, 0.1);
+        final ByteBuffer compressed = new RANSNx16().compress(ByteBuffer.wrap(data), RANSNx16.ORDER_FLAG);
+        compressed.limit(compressed.limit() / 2);
+        new RANSNx16().uncompress(compressed);
+    }
+
+    private interface ByteForIndex {
+        byte get(int index);
+    }
+
+    private static byte[] bytesWithValues(final int n, final ByteForIndex valueForIndex) {
+        final byte[] data = new byte[n];
+        for (int i = 0; i < n; i++) {
+            data[i] = valueForIndex.get(i);
+        }
+        return data;
+    }
+
+    private static byte[] toArray(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private byte[] randomBytesFromGeometricDistribution(final int size, final double p) {
+        return bytesWithValues(size, i -> (byte) (Math.ceil(Math.log(1 - random.nextDouble()) / Math.log(1 - p)) - 1));
+    }
+}
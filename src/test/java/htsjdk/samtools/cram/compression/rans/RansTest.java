@@ -116,6 +116,50 @@ public class RansTest extends HtsjdkTest {
         }
     }
 
+    @Test
+    public void testReusedInstanceMatchesFreshInstance() {
+        // the working tables and buffers of a RANS instance are reused across calls without being reset
+        final RANS reused = new RANS();
+        final byte[][] inputs = {
+                randomBytesFromGeometricDistribution(10000, 0.01),
+                getNBytesWithValues(1003, (n, index) -> (byte) 1),
+                randomBytesFromGeometricDistribution(5, 0.1),
+                randomBytesFromGeometricDistribution(100000, 0.1),
+                getNBytesWithValues(1002, (n, index) -> (byte) index.intValue())
+        };
+        for (final byte[] input : inputs) {
+            for (final RANS.ORDER order : RANS.ORDER.values()) {
+                final ByteBuffer expected = new RANS().compress(ByteBuffer.wrap(input), order);
+                final ByteBuffer actual = reused.compress(ByteBuffer.wrap(input), order);
+                Assert.assertEquals(actual, expected);
+                Assert.assertEquals(reused.uncompress(actual), ByteBuffer.wrap(input));
+            }
+        }
+    }
+
+    @Test
+    public void testUncompressDirectAndSlicedBuffers() {
+        final byte[] data = randomBytesFromGeometricDistribution(1001, 0.01);
+        final RANS rans = new RANS();
+        for (final RANS.ORDER order : RANS.ORDER.values()) {
+            final ByteBuffer compressed = rans.compress(ByteBuffer.wrap(data), order);
+
+            final ByteBuffer direct = ByteBuffer.allocateDirect(compressed.remaining());
+            direct.put(compressed.duplicate());
+            direct.flip();
+            Assert.assertEquals(rans.uncompress(direct), ByteBuffer.wrap(data));
+            Assert.assertFalse(direct.hasRemaining());
+
+            final ByteBuffer padded = ByteBuffer.allocate(compressed.remaining() + 3);
+            padded.position(3);
+            padded.put(compressed.duplicate());
+            padded.position(3);
+            final ByteBuffer sliced = padded.slice();
+            Assert.assertEquals(rans.uncompress(sliced), ByteBuffer.wrap(data));
+            Assert.assertFalse(sliced.hasRemaining());
+        }
+    }
+
     @Test
     public void testRansHeader() {
         final byte[] data = randomBytesFromGeometricDistribution(1000, 0.01);
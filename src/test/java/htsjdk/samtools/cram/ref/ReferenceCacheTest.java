@@ -0,0 +1,66 @@
+package htsjdk.samtools.cram.ref;
+
+import htsjdk.HtsjdkTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ReferenceCacheTest extends HtsjdkTest {
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        final ReferenceCache cache = new ReferenceCache(250);
+        final byte[] a = new byte[100];
+        final byte[] b = new byte[100];
+        final byte[] c = new byte[100];
+        cache.put(a, "a");
+        cache.put(b, "b");
+        Assert.assertSame(cache.get("a"), a); // a is now more recently used than b
+        cache.put(c, "c");
+
+        Assert.assertNull(cache.get("b"));
+        Assert.assertSame(cache.get("a"), a);
+        Assert.assertSame(cache.get("c"), c);
+        Assert.assertEquals(cache.getCachedBytes(), 200);
+        Assert.assertEquals(cache.getNumberOfSequences(), 2);
+        Assert.assertEquals(cache.getEvictionCount(), 1);
+        Assert.assertEquals(cache.getHitCount(), 3);
+        Assert.assertEquals(cache.getMissCount(), 1);
+    }
+
+    @Test
+    public void testAliasesAreCountedOnce() {
+        final ReferenceCache cache = new ReferenceCache(150);
+        final byte[] a = new byte[100];
+        cache.put(a, ReferenceCache.nameKey("ref", "chr1"), ReferenceCache.md5Key("ABCDEF"));
+        Assert.assertEquals(cache.getCachedBytes(), 100);
+        Assert.assertEquals(cache.getNumberOfSequences(), 1);
+        Assert.assertSame(cache.get(ReferenceCache.md5Key("abcdef")), a);
+        Assert.assertSame(cache.get("missing", ReferenceCache.nameKey("ref", "chr1")), a);
+        Assert.assertEquals(cache.getHitCount(), 2);
+        Assert.assertEquals(cache.getMissCount(), 0);
+
+        // replacing one alias keeps the bases cached under the other
+        final byte[] b = new byte[10];
+        cache.put(b, ReferenceCache.nameKey("ref", "chr1"));
+        Assert.assertEquals(cache.getCachedBytes(), 110);
+        Assert.assertSame(cache.get(ReferenceCache.md5Key("abcdef")), a);
+
+        cache.clear();
+        Assert.assertEquals(cache.getCachedBytes(), 0);
+        Assert.assertNull(cache.get(ReferenceCache.md5Key("abcdef")));
+    }
+
+    @Test
+    public void testSequenceLargerThanCacheIsNotCached() {
+        final ReferenceCache cache = new ReferenceCache(10);
+        final byte[] a = new byte[11];
+        Assert.assertSame(cache.put(a, "a"), a);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(cache.getCachedBytes(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        new ReferenceCache(0);
+    }
+}
@@ -7,6 +7,8 @@ import htsjdk.samtools.util.SequenceUtil;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.nio.file.Path;
 import java.util.Arrays;
 
 /**
@@ -31,4 +33,37 @@ public class ReferenceSourceTest extends HtsjdkTest{
         Assert.assertNotEquals(refBasesFromSource, originalRefBases);
         Assert.assertEquals(refBasesFromSource, SequenceUtil.upperCase(originalRefBases));
     }
+
+    @Test
+    public void testSharedReferenceCache() {
+        final Path fasta = new File("src/test/resources/htsjdk/samtools/cram/ce.fa").toPath();
+        final ReferenceCache cache = new ReferenceCache(10 * 1024 * 1024);
+        final SAMSequenceRecord sequenceRecord = new SAMSequenceRecord("CHROMOSOME_I", 0);
+
+        final byte[] bases = new ReferenceSource(fasta, cache).getReferenceBases(sequenceRecord, false);
+        Assert.assertNotNull(bases);
+        Assert.assertEquals(cache.getMissCount(), 1);
+        Assert.assertEquals(cache.getCachedBytes(), bases.length);
+
+        // a different source for the same file uses the cached bases
+        Assert.assertSame(new ReferenceSource(fasta, cache).getReferenceBases(sequenceRecord, false), bases);
+        Assert.assertEquals(cache.getHitCount(), 1);
+        Assert.assertEquals(cache.getNumberOfSequences(), 1);
+    }
+
+    @Test
+    public void testReferenceSequenceFileSourcesDoNotShareSequencesByName() {
+        final byte[] originalRefBases = "acgtnACGTNacgtnACGTN".getBytes();
+        final ReferenceCache cache = new ReferenceCache(1000);
+        final SAMSequenceRecord sequenceRecord = new SAMSequenceRecord("chr1", originalRefBases.length);
+
+        for (final String bases : new String[]{"acgtnACGTNacgtnACGTN", "ttttttttttgggggggggg"}) {
+            final InMemoryReferenceSequenceFile memoryReferenceSequenceFile = new InMemoryReferenceSequenceFile();
+            memoryReferenceSequenceFile.add("chr1", bases.getBytes());
+            // without a path there is nothing to tell the files apart, so their sequences aren't cached by name
+            final ReferenceSource referenceSource = new ReferenceSource(memoryReferenceSequenceFile, cache);
+            Assert.assertEquals(referenceSource.getReferenceBases(sequenceRecord, false), SequenceUtil.upperCase(bases.getBytes()));
+        }
+        Assert.assertEquals(cache.getNumberOfSequences(), 0);
+    }
 }
@@ -68,11 +68,11 @@ public class SliceBlocksTest  extends HtsjdkTest {
         SliceBlocks roundTrippedSliceBlocks;
         final int expectedTotalNumberOfBlocks = DataSeries.values().length + 2;
         try (final ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            sliceBlocks.writeBlocks(CramVersions.CRAM_v3, baos);
+            sliceBlocks.writeBlocks(CramVersions.CRAM_v3_1, baos);
             final byte[] roundTrippedBytes = baos.toByteArray();
             try (final InputStream is = new ByteArrayInputStream(roundTrippedBytes)) {
                 roundTrippedSliceBlocks = new SliceBlocks(
-                        CramVersions.CRAM_v3,
+                        CramVersions.CRAM_v3_1,
                         expectedTotalNumberOfBlocks,
                         is);
             }
@@ -4,6 +4,7 @@ import htsjdk.HtsjdkTest;
 import htsjdk.samtools.cram.structure.block.BlockCompressionMethod;
 import org.testng.annotations.DataProvider;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -26,7 +27,10 @@ public class StructureTestUtils extends HtsjdkTest {
 
     @DataProvider(name="externalCompressionMethods")
     public Object[] getExternalCompressionMethods() {
-        return BlockCompressionMethod.values();
+        // the name tokeniser only accepts NUL terminated read names, not arbitrary block content
+        return Arrays.stream(BlockCompressionMethod.values())
+                .filter(method -> method != BlockCompressionMethod.NAME_TOKENISER)
+                .toArray();
     }
 
 }
@@ -137,4 +137,68 @@ public class BlockTest extends HtsjdkTest {
         final int VALID_CONTENT_ID = 1;
         new Block(BlockCompressionMethod.RAW, contentType, VALID_CONTENT_ID, new byte[0], 0);
     }
+
+    @DataProvider(name = "unsupportedCompressionMethodIds")
+    private Object[][] unsupportedCompressionMethodIds() {
+        return new Object[][] {
+                {9},
+                {10},
+        };
+    }
+
+    @Test(dataProvider = "unsupportedCompressionMethodIds", expectedExceptions = CRAMException.class)
+    public void testRejectUnsupportedCompressionMethod(final int methodId) throws IOException {
+        final byte[] written;
+        try (final ByteArrayOutputStream os = new ByteArrayOutputStream()) {
+            Block.createRawCoreDataBlock("TEST STRING".getBytes()).write(CramVersions.CRAM_v3, os);
+            written = os.toByteArray();
+        }
+        // the compression method is the first byte of a block
+        written[0] = (byte) methodId;
+        try (final InputStream is = new ByteArrayInputStream(written)) {
+            Block.read(CramVersions.CRAM_v3, is);
+        }
+    }
+
+    @DataProvider(name = "cram31CompressionMethods")
+    private Object[][] cram31CompressionMethods() {
+        return new Object[][] {
+                {BlockCompressionMethod.RANSNx16},
+                {BlockCompressionMethod.ADAPTIVE_ARITHMETIC},
+                {BlockCompressionMethod.FQZCOMP},
+                {BlockCompressionMethod.NAME_TOKENISER},
+        };
+    }
+
+    @Test(dataProvider = "cram31CompressionMethods", expectedExceptions = CRAMException.class)
+    public void testRejectCRAM31CompressionMethodOnWrite(final BlockCompressionMethod method) {
+        final Block block = Block.createExternalBlock(method, 1, new byte[1], 1);
+        block.write(CramVersions.CRAM_v3, new ByteArrayOutputStream());
+    }
+
+    @Test(dataProvider = "cram31CompressionMethods", expectedExceptions = CRAMException.class)
+    public void testRejectCRAM31CompressionMethodOnRead(final BlockCompressionMethod method) throws IOException {
+        final byte[] written;
+        try (final ByteArrayOutputStream os = new ByteArrayOutputStream()) {
+            Block.createExternalBlock(method, 1, new byte[1], 1).write(CramVersions.CRAM_v3_1, os);
+            written = os.toByteArray();
+        }
+        try (final InputStream is = new ByteArrayInputStream(written)) {
+            Block.read(CramVersions.CRAM_v3, is);
+        }
+    }
+
+    @Test(dataProvider = "cram31CompressionMethods")
+    public void testCRAM31CompressionMethodRoundTrip(final BlockCompressionMethod method) throws IOException {
+        final byte[] written;
+        try (final ByteArrayOutputStream os = new ByteArrayOutputStream()) {
+            Block.createExternalBlock(method, 1, new byte[]{7}, 1).write(CramVersions.CRAM_v3_1, os);
+            written = os.toByteArray();
+        }
+        try (final InputStream is = new ByteArrayInputStream(written)) {
+            final Block block = Block.read(CramVersions.CRAM_v3_1, is);
+            Assert.assertEquals(block.getCompressionMethod(), method);
+            Assert.assertEquals(block.getCompressedContent(), new byte[]{7});
+        }
+    }
 }
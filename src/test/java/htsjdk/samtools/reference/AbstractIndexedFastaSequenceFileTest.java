@@ -43,6 +43,13 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Test the indexed fasta sequence file reader.
@@ -69,6 +76,8 @@ public class AbstractIndexedFastaSequenceFileTest extends HtsjdkTest {
                 { new IndexedFastaSequenceFile(SEQUENCE_FILE_NODICT) },
                 { new IndexedFastaSequenceFile(SEQUENCE_FILE.toPath()) },
                 { new IndexedFastaSequenceFile(SEQUENCE_FILE_NODICT.toPath()) },
+                { new MemoryMappedFastaSequenceFile(SEQUENCE_FILE.toPath()) },
+                { new MemoryMappedFastaSequenceFile(SEQUENCE_FILE_NODICT.toPath()) },
                 { new BlockCompressedIndexedFastaSequenceFile(SEQUENCE_FILE_BGZ.toPath())}};
     }
 
@@ -89,6 +98,8 @@ public class AbstractIndexedFastaSequenceFileTest extends HtsjdkTest {
                                                new IndexedFastaSequenceFile(SEQUENCE_FILE.toPath()) },
                 new Object[] { ReferenceSequenceFileFactory.getReferenceSequenceFile(SEQUENCE_FILE.toPath(), true),
                                                new IndexedFastaSequenceFile(SEQUENCE_FILE.toPath()) },
+                new Object[] { ReferenceSequenceFileFactory.getReferenceSequenceFile(SEQUENCE_FILE.toPath()),
+                                               new MemoryMappedFastaSequenceFile(SEQUENCE_FILE.toPath()) },
                 new Object[] { ReferenceSequenceFileFactory.getReferenceSequenceFile(
                         SEQUENCE_FILE_BGZ),
                                                new BlockCompressedIndexedFastaSequenceFile(
@@ -369,4 +380,61 @@ public class AbstractIndexedFastaSequenceFileTest extends HtsjdkTest {
                     withFilesAdjacent.getSubsequenceAt("chrM", 100, 1000).getBases());
         }
     }
+
+    @Test(expectedExceptions = SAMException.class)
+    public void testBadInputForMemoryMappedFastaSequenceFile() throws Exception {
+        new MemoryMappedFastaSequenceFile(SEQUENCE_FILE_BGZ.toPath());
+    }
+
+    @Test
+    public void testMemoryMappedCopyBases() throws IOException {
+        try (IndexedFastaSequenceFile expectedFile = new IndexedFastaSequenceFile(SEQUENCE_FILE);
+             MemoryMappedFastaSequenceFile mappedFile = new MemoryMappedFastaSequenceFile(SEQUENCE_FILE.toPath())) {
+            final byte[] destination = new byte[200];
+            Arrays.fill(destination, (byte) '*');
+            Assert.assertEquals(mappedFile.copyBases("chr20", 55, 204, destination, 10), 150);
+            Assert.assertEquals(Arrays.copyOfRange(destination, 10, 160), expectedFile.getSubsequenceAt("chr20", 55, 204).getBases());
+            Assert.assertEquals(destination[9], (byte) '*');
+            Assert.assertEquals(destination[160], (byte) '*');
+            Assert.assertEquals(mappedFile.copyBases("chr20", 55, 54, destination, 200), 0);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMemoryMappedCopyBasesTooLong() throws IOException {
+        try (MemoryMappedFastaSequenceFile mappedFile = new MemoryMappedFastaSequenceFile(SEQUENCE_FILE.toPath())) {
+            mappedFile.copyBases("chr20", 1, 100, new byte[100], 1);
+        }
+    }
+
+    @Test
+    public void testMemoryMappedConcurrentLookups() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (IndexedFastaSequenceFile expectedFile = new IndexedFastaSequenceFile(SEQUENCE_FILE);
+             MemoryMappedFastaSequenceFile mappedFile = new MemoryMappedFastaSequenceFile(SEQUENCE_FILE.toPath())) {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final Random random = new Random(t);
+                final List<long[]> regions = new ArrayList<>();
+                final List<byte[]> expectedBases = new ArrayList<>();
+                for (int i = 0; i < 500; i++) {
+                    final long start = 1 + random.nextInt(CHR20_LENGTH - 300);
+                    final long stop = start + random.nextInt(300);
+                    regions.add(new long[]{start, stop});
+                    expectedBases.add(expectedFile.getSubsequenceAt("chr20", start, stop).getBases());
+                }
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < regions.size(); i++) {
+                        final long[] region = regions.get(i);
+                        Assert.assertEquals(mappedFile.getSubsequenceAt("chr20", region[0], region[1]).getBases(), expectedBases.get(i));
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
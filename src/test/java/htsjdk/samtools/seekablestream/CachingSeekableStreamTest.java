@@ -0,0 +1,269 @@
+package htsjdk.samtools.seekablestream;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamInputResource;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class CachingSeekableStreamTest extends HtsjdkTest {
+
+    private static final File BAM_FILE = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+    private static final File BAI_FILE = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam.bai");
+
+    private static byte[] makeData(final int length) {
+        final byte[] data = new byte[length];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    /** A stream over a byte array that counts reads, and can be made to fail or to hide its length. */
+    private static class TestStream extends ByteArraySeekableStream {
+        private final boolean knownLength;
+        private final AtomicInteger reads;
+        private final boolean failOnPrefetchThreads;
+
+        TestStream(final byte[] bytes, final boolean knownLength, final AtomicInteger reads, final boolean failOnPrefetchThreads) {
+            super(bytes);
+            this.knownLength = knownLength;
+            this.reads = reads;
+            this.failOnPrefetchThreads = failOnPrefetchThreads;
+        }
+
+        @Override
+        public long length() {
+            return knownLength ? super.length() : 0;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (failOnPrefetchThreads && Thread.currentThread().getName().startsWith("CachingSeekableStream")) {
+                throw new IOException("prefetch failure");
+            }
+            reads.incrementAndGet();
+            return super.read(b, off, len);
+        }
+    }
+
+    private static Supplier<SeekableStream> supplier(final byte[] data, final boolean knownLength, final AtomicInteger reads) {
+        return () -> new TestStream(data, knownLength, reads, false);
+    }
+
+    @DataProvider(name = "streams")
+    public Object[][] streams() {
+        final byte[] data = makeData(100_000);
+        final List<Object[]> tests = new ArrayList<>();
+        for (final int blockSize : new int[]{1, 100, 4096, 1000, 200_000}) {
+            for (final boolean knownLength : new boolean[]{true, false}) {
+                tests.add(new Object[]{data, new CachingSeekableStream(new TestStream(data, knownLength, new AtomicInteger(), false), blockSize, 4)});
+                tests.add(new Object[]{data, new CachingSeekableStream(supplier(data, knownLength, new AtomicInteger()), blockSize, 8, 4, 3)});
+            }
+        }
+        return tests.toArray(new Object[0][]);
+    }
+
+    @Test(dataProvider = "streams")
+    public void testRandomReads(final byte[] data, final CachingSeekableStream stream) throws IOException {
+        final Random random = new Random(13);
+        try (final SeekableStream expected = new ByteArraySeekableStream(data)) {
+            for (int i = 0; i < 500; i++) {
+                final long position = random.nextInt(data.length + 10);
+                final int length = random.nextInt(3000);
+                expected.seek(position);
+                stream.seek(position);
+                final byte[] expectedBytes = new byte[length];
+                final byte[] actualBytes = new byte[length];
+                final int expectedRead = expected.read(expectedBytes, 0, length);
+                int actualRead = stream.read(actualBytes, 0, length);
+                Assert.assertEquals(actualRead, length == 0 ? 0 : expectedRead);
+                Assert.assertEquals(actualBytes, expectedBytes);
+                Assert.assertEquals(stream.position(), position + Math.max(0, actualRead));
+                Assert.assertEquals(stream.eof(), stream.position() >= data.length);
+            }
+            stream.seek(0);
+            for (int i = 0; i < 5000; i++) {
+                Assert.assertEquals(stream.read(), data[i] & 0xFF);
+            }
+            stream.seek(data.length - 1);
+            Assert.assertEquals(stream.read(), data[data.length - 1] & 0xFF);
+            Assert.assertEquals(stream.read(), -1);
+            Assert.assertTrue(stream.eof());
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void testSequentialReadAhead() throws IOException {
+        final byte[] data = makeData(1_000_000);
+        final AtomicInteger reads = new AtomicInteger();
+        try (final CachingSeekableStream stream = new CachingSeekableStream(supplier(data, true, reads), 10_000, 32, 16, 4)) {
+            final byte[] actual = new byte[data.length];
+            stream.readFully(actual);
+            Assert.assertEquals(actual, data);
+            Assert.assertEquals(stream.read(), -1);
+
+            final CachingSeekableStream.Statistics statistics = stream.getStatistics();
+            Assert.assertEquals(statistics.getHits() + statistics.getMisses(), 100);
+            Assert.assertTrue(statistics.getPrefetchedBlocks() > 90, statistics.toString());
+            Assert.assertTrue(statistics.getHits() > 90, statistics.toString());
+            Assert.assertTrue(statistics.getHitRate() > 0.9, statistics.toString());
+            Assert.assertEquals(statistics.getBytesFetched(), data.length);
+        }
+    }
+
+    @Test
+    public void testRandomAccessDoesNotReadAhead() throws IOException {
+        final byte[] data = makeData(1_000_000);
+        try (final CachingSeekableStream stream = new CachingSeekableStream(supplier(data, true, new AtomicInteger()), 10_000, 32, 16, 4)) {
+            for (final long position : new long[]{500_000, 100_000, 900_000, 300_000}) {
+                stream.seek(position);
+                Assert.assertEquals(stream.read(), data[(int) position] & 0xFF);
+            }
+            final CachingSeekableStream.Statistics statistics = stream.getStatistics();
+            Assert.assertEquals(statistics.getMisses(), 4);
+            Assert.assertEquals(statistics.getPrefetchedBlocks(), 0);
+            Assert.assertEquals(statistics.getBytesFetched(), 40_000);
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedBlocksAreEvicted() throws IOException {
+        final byte[] data = makeData(1000);
+        final AtomicInteger reads = new AtomicInteger();
+        try (final CachingSeekableStream stream = new CachingSeekableStream(supplier(data, true, reads), 100, 2, 0, 1)) {
+            for (final long position : new long[]{0, 500, 0, 900, 0, 500}) {
+                stream.seek(position);
+                Assert.assertEquals(stream.read(), data[(int) position] & 0xFF);
+            }
+            // blocks 0 and 5 are cached, block 0 is used again, so block 5 is evicted by block 9 and read again
+            final CachingSeekableStream.Statistics statistics = stream.getStatistics();
+            Assert.assertEquals(statistics.getHits(), 2);
+            Assert.assertEquals(statistics.getMisses(), 4);
+            Assert.assertEquals(statistics.getEvictions(), 2);
+            Assert.assertEquals(statistics.getHitRate(), 2.0 / 6);
+        }
+    }
+
+    @Test
+    public void testPrefetch() throws IOException {
+        final byte[] data = makeData(100_000);
+        final AtomicInteger reads = new AtomicInteger();
+        try (final CachingSeekableStream stream = new CachingSeekableStream(supplier(data, true, reads), 1000, 200, 0, 8)) {
+            stream.prefetch(10_500, 60_000);
+            stream.seek(10_000);
+            final byte[] actual = new byte[50_000];
+            stream.readFully(actual);
+            for (int i = 0; i < actual.length; i++) {
+                Assert.assertEquals(actual[i], data[10_000 + i]);
+            }
+            final CachingSeekableStream.Statistics statistics = stream.getStatistics();
+            Assert.assertEquals(statistics.getPrefetchedBlocks(), 50);
+            Assert.assertEquals(statistics.getMisses(), 0);
+            Assert.assertEquals(statistics.getHits(), 50);
+
+            // ranges past the end of the stream are ignored
+            stream.prefetch(99_500, 200_000);
+            Assert.assertEquals(stream.getStatistics().getPrefetchedBlocks(), 51);
+        }
+    }
+
+    @Test
+    public void testFailedPrefetchIsRetried() throws IOException {
+        final byte[] data = makeData(100_000);
+        final AtomicInteger reads = new AtomicInteger();
+        try (final CachingSeekableStream stream = new CachingSeekableStream(
+                () -> new TestStream(data, true, reads, true), 1000, 20, 8, 4)) {
+            final byte[] actual = new byte[data.length];
+            stream.readFully(actual);
+            Assert.assertEquals(actual, data);
+            Assert.assertTrue(stream.getStatistics().getPrefetchedBlocks() > 0);
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testReadErrorIsReported() throws IOException {
+        final SeekableStream failing = new ByteArraySeekableStream(makeData(1000)) {
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                throw new IOException("read failure");
+            }
+        };
+        try (final CachingSeekableStream stream = new CachingSeekableStream(failing)) {
+            stream.read();
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testReadAfterClose() throws IOException {
+        final CachingSeekableStream stream = new CachingSeekableStream(new ByteArraySeekableStream(makeData(1000)));
+        stream.close();
+        stream.read();
+    }
+
+    @DataProvider(name = "invalidArguments")
+    public Object[][] invalidArguments() {
+        return new Object[][]{
+                {0, 10, 1, 1},
+                {100, 0, 0, 1},
+                {100, 10, 10, 1},
+                {100, 10, -1, 1},
+                {100, 10, 1, 0},
+        };
+    }
+
+    @Test(dataProvider = "invalidArguments", expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidArguments(final int blockSize, final int maxCachedBlocks, final int maxReadAheadBlocks, final int fetchStreams) {
+        new CachingSeekableStream(() -> new ByteArraySeekableStream(new byte[10]), blockSize, maxCachedBlocks, maxReadAheadBlocks, fetchStreams);
+    }
+
+    @Test
+    public void testStreamFactory() throws IOException {
+        try (final SeekableStream expected = new SeekableFileStream(BAM_FILE);
+             final SeekableStream stream = SeekableStreamFactory.getInstance().getCachingStreamFor(BAM_FILE.getPath())) {
+            Assert.assertTrue(stream instanceof CachingSeekableStream);
+            Assert.assertEquals(stream.length(), expected.length());
+            Assert.assertEquals(stream.getSource(), expected.getSource());
+            final byte[] expectedBytes = new byte[(int) expected.length()];
+            final byte[] actualBytes = new byte[expectedBytes.length];
+            expected.readFully(expectedBytes);
+            stream.readFully(actualBytes);
+            Assert.assertEquals(actualBytes, expectedBytes);
+        }
+    }
+
+    @Test
+    public void testQueryBamThroughCache() throws IOException {
+        final SamReaderFactory factory = SamReaderFactory.makeDefault();
+        final List<String> expected = new ArrayList<>();
+        try (final SamReader reader = factory.open(BAM_FILE);
+             final SAMRecordIterator iterator = reader.query("chrM", 1000, 5000, false)) {
+            iterator.forEachRemaining(r -> expected.add(r.getSAMString()));
+        }
+        Assert.assertFalse(expected.isEmpty());
+
+        final CachingSeekableStream stream = new CachingSeekableStream(
+                SeekableStreamFactory.getInstance().getCachingStream(new SeekableFileStream(BAM_FILE)), 64 * 1024, 8);
+        final List<String> actual = new ArrayList<>();
+        try (final SamReader reader = factory.open(SamInputResource.of(stream).index(BAI_FILE));
+             final SAMRecordIterator iterator = reader.query("chrM", 1000, 5000, false)) {
+            for (final SAMRecord record : (Iterable<SAMRecord>) () -> iterator) {
+                actual.add(record.getSAMString());
+            }
+        }
+        Assert.assertEquals(actual, expected);
+        Assert.assertTrue(stream.getStatistics().getHits() + stream.getStatistics().getMisses() > 0);
+    }
+}
@@ -25,17 +25,28 @@ package htsjdk.samtools.util;
 
 import htsjdk.HtsjdkTest;
 import htsjdk.samtools.FileTruncatedException;
+import htsjdk.samtools.util.zip.BlockCompressor;
+import htsjdk.samtools.util.zip.BlockInflater;
+import htsjdk.samtools.util.zip.DeflaterBlockCompressor;
 import htsjdk.samtools.util.zip.DeflaterFactory;
+import htsjdk.samtools.util.zip.InflaterFactory;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Random;
 import java.util.zip.Deflater;
@@ -253,4 +264,169 @@ public class BlockCompressedOutputStreamTest extends HtsjdkTest {
         Assert.assertEquals(deflateCalls[0], 3, "deflate calls");
         Assert.assertEquals(reader.readLine(), null);
     }
+
+    @DataProvider(name = "compressionThreads")
+    private Object[][] compressionThreads() {
+        return new Object[][] {{1}, {2}, {4}, {16}};
+    }
+
+    @Test(dataProvider = "compressionThreads")
+    public void testMultiThreadedCompressionMatchesSingleThreaded(final int compressionThreads) throws Exception {
+        final Random random = new Random(42);
+        final byte[] text = "ACGTNacgtn\t0123456789\n".getBytes();
+        final int[] chunkSizes = new int[500];
+        for (int i = 0; i < chunkSizes.length; i++) {
+            chunkSizes[i] = random.nextInt(BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE / 4);
+        }
+
+        final ByteArrayOutputStream serialBytes = new ByteArrayOutputStream();
+        final ByteArrayOutputStream serialGzi = new ByteArrayOutputStream();
+        final List<Long> serialPointers = new ArrayList<>();
+        writeChunks(new BlockCompressedOutputStream(serialBytes, null, 5, new DeflaterFactory(), 0),
+                serialGzi, chunkSizes, text, serialPointers);
+
+        final ByteArrayOutputStream parallelBytes = new ByteArrayOutputStream();
+        final ByteArrayOutputStream parallelGzi = new ByteArrayOutputStream();
+        final List<Long> parallelPointers = new ArrayList<>();
+        writeChunks(new BlockCompressedOutputStream(parallelBytes, null, 5, new DeflaterFactory(), compressionThreads),
+                parallelGzi, chunkSizes, text, parallelPointers);
+
+        Assert.assertEquals(parallelBytes.toByteArray(), serialBytes.toByteArray());
+        Assert.assertEquals(parallelGzi.toByteArray(), serialGzi.toByteArray());
+        Assert.assertEquals(parallelPointers, serialPointers);
+    }
+
+    private static void writeChunks(final BlockCompressedOutputStream bcos, final OutputStream gzi, final int[] chunkSizes,
+                                    final byte[] text, final List<Long> filePointers) throws IOException {
+        bcos.addIndexer(gzi);
+        for (int i = 0; i < chunkSizes.length; i++) {
+            final byte[] chunk = new byte[chunkSizes[i]];
+            for (int j = 0; j < chunk.length; j++) {
+                chunk[j] = text[(i + j) % text.length];
+            }
+            bcos.write(chunk);
+            // only query some of the pointers so that blocks pile up between calls
+            if (i % 10 == 0) {
+                filePointers.add(bcos.getFilePointer());
+            }
+        }
+        bcos.close();
+    }
+
+    @Test(dataProvider = "compressionThreads")
+    public void testDeferredFilePointersMatchFilePointers(final int compressionThreads) throws Exception {
+        final Random random = new Random(42);
+        final int[] chunkSizes = new int[2000];
+        for (int i = 0; i < chunkSizes.length; i++) {
+            chunkSizes[i] = random.nextInt(BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE / 20);
+        }
+
+        final List<Long> expectedPointers = new ArrayList<>();
+        try (final BlockCompressedOutputStream bcos = new BlockCompressedOutputStream(new ByteArrayOutputStream(), null, 5, new DeflaterFactory(), 0)) {
+            for (final int chunkSize : chunkSizes) {
+                expectedPointers.add(bcos.getFilePointer());
+                bcos.write(new byte[chunkSize]);
+            }
+            expectedPointers.add(bcos.getFilePointer());
+        }
+
+        // resolve pointers as soon as possible, as an indexer would, and the remainder after closing the stream
+        final List<Long> resolvedPointers = new ArrayList<>();
+        final Deque<Long> deferredPointers = new ArrayDeque<>();
+        final BlockCompressedOutputStream bcos = new BlockCompressedOutputStream(new ByteArrayOutputStream(), null, 5, new DeflaterFactory(), compressionThreads);
+        for (final int chunkSize : chunkSizes) {
+            deferredPointers.addLast(bcos.getDeferredFilePointer());
+            bcos.write(new byte[chunkSize]);
+            while (!deferredPointers.isEmpty() && bcos.isFilePointerResolvable(deferredPointers.peekFirst())) {
+                resolvedPointers.add(bcos.resolveFilePointer(deferredPointers.removeFirst()));
+            }
+        }
+        deferredPointers.addLast(bcos.getDeferredFilePointer());
+        bcos.close();
+        while (!deferredPointers.isEmpty()) {
+            resolvedPointers.add(bcos.resolveFilePointer(deferredPointers.removeFirst()));
+        }
+        Assert.assertEquals(resolvedPointers, expectedPointers);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeCompressionThreads() {
+        new BlockCompressedOutputStream(new ByteArrayOutputStream(), null, 5, new DeflaterFactory(), -1);
+    }
+
+    @DataProvider(name = "storedBlocks")
+    private Object[][] storedBlocks() {
+        return new Object[][] {{0}, {2}};
+    }
+
+    @Test(dataProvider = "storedBlocks")
+    public void testBlocksThatDoNotCompressAreStored(final int compressionThreads) throws Exception {
+        final int[] compressCalls = {0};
+        // a compressor that never fits, so that every block is written as a stored block
+        final DeflaterFactory neverFits = new DeflaterFactory() {
+            @Override
+            public BlockCompressor makeBlockCompressor(final int compressionLevel) {
+                final BlockCompressor compressor = new DeflaterBlockCompressor(makeDeflater(compressionLevel, true));
+                return (input, inputOffset, inputLength, output, outputOffset, outputLength) -> {
+                    synchronized (compressCalls) {
+                        compressCalls[0]++;
+                    }
+                    return compressor.compress(input, inputOffset, inputLength, output, outputOffset, Math.min(outputLength, 2));
+                };
+            }
+        };
+        final byte[] data = new byte[BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE * 3 + 17];
+        new Random(42).nextBytes(data);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final BlockCompressedOutputStream bcos = new BlockCompressedOutputStream(bytes, null, 9, neverFits, compressionThreads)) {
+            bcos.write(data);
+        }
+        Assert.assertEquals(compressCalls[0], 4);
+        // every block is at most 64K, even though none of them compress
+        Assert.assertEquals(bytes.size(), data.length + 4 * (BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH +
+                BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH + 5) + BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length);
+
+        // check with both the JDK inflater and the pure Java one
+        final InflaterFactory javaInflaterFactory = new InflaterFactory() {
+            @Override
+            public BlockInflater makeBlockDecompressor() {
+                return new BlockInflater();
+            }
+        };
+        for (final InflaterFactory inflaterFactory : new InflaterFactory[]{new InflaterFactory(), javaInflaterFactory}) {
+            try (final BlockCompressedInputStream bcis = new BlockCompressedInputStream(new ByteArrayInputStream(bytes.toByteArray()), true, inflaterFactory)) {
+                bcis.setCheckCrcs(true);
+                final byte[] read = new byte[data.length];
+                new DataInputStream(bcis).readFully(read);
+                Assert.assertEquals(read, data);
+                Assert.assertEquals(bcis.read(), -1);
+            }
+        }
+    }
+
+    @Test
+    public void testCustomBlockCompressor() throws Exception {
+        final List<Integer> blockSizes = new ArrayList<>();
+        final DeflaterFactory factory = new DeflaterFactory() {
+            @Override
+            public BlockCompressor makeBlockCompressor(final int compressionLevel) {
+                final BlockCompressor compressor = super.makeBlockCompressor(compressionLevel);
+                return (input, inputOffset, inputLength, output, outputOffset, outputLength) -> {
+                    blockSizes.add(inputLength);
+                    return compressor.compress(input, inputOffset, inputLength, output, outputOffset, outputLength);
+                };
+            }
+        };
+        final byte[] data = "Hi, Mom!\n".getBytes();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final BlockCompressedOutputStream bcos = new BlockCompressedOutputStream(bytes, (File) null, 5, factory)) {
+            bcos.write(data);
+        }
+        Assert.assertEquals(blockSizes, Collections.singletonList(data.length));
+        try (final BlockCompressedInputStream bcis = new BlockCompressedInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            final byte[] read = new byte[data.length];
+            new DataInputStream(bcis).readFully(read);
+            Assert.assertEquals(read, data);
+        }
+    }
 }
@@ -0,0 +1,105 @@
+package htsjdk.samtools.util;
+
+import htsjdk.HtsjdkTest;
+import htsjdk.samtools.FileTruncatedException;
+import htsjdk.samtools.seekablestream.SeekableFileStream;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ParallelBlockCompressedInputStreamTest extends HtsjdkTest {
+    private static final File BAM_FILE = new File("src/test/resources/htsjdk/samtools/BAMFileIndexTest/index_test.bam");
+    private static final File TRUNCATED_FILE = new File("src/test/resources/htsjdk/tribble/vcfexample.vcf.truncated.gz");
+
+    @DataProvider(name = "decompressionThreads")
+    public Object[][] decompressionThreads() {
+        return new Object[][] {{1}, {2}, {8}};
+    }
+
+    @Test(dataProvider = "decompressionThreads")
+    public void testReadMatchesSingleThreaded(final int decompressionThreads) throws IOException {
+        final List<Long> expectedPointers = new ArrayList<>();
+        final List<Integer> expectedBytes = new ArrayList<>();
+        try (final BlockCompressedInputStream sync = new BlockCompressedInputStream(new SeekableFileStream(BAM_FILE))) {
+            readAll(sync, expectedPointers, expectedBytes);
+        }
+
+        final List<Long> pointers = new ArrayList<>();
+        final List<Integer> bytes = new ArrayList<>();
+        try (final BlockCompressedInputStream parallel = new ParallelBlockCompressedInputStream(new SeekableFileStream(BAM_FILE), decompressionThreads)) {
+            readAll(parallel, pointers, bytes);
+            Assert.assertEquals(parallel.read(), -1);
+        }
+        Assert.assertEquals(pointers, expectedPointers);
+        Assert.assertEquals(bytes, expectedBytes);
+    }
+
+    @Test(dataProvider = "decompressionThreads")
+    public void testNonSeekableStream(final int decompressionThreads) throws IOException {
+        final List<Long> expectedPointers = new ArrayList<>();
+        final List<Integer> expectedBytes = new ArrayList<>();
+        try (final BlockCompressedInputStream sync = new BlockCompressedInputStream(new FileInputStream(BAM_FILE))) {
+            readAll(sync, expectedPointers, expectedBytes);
+        }
+
+        final List<Long> pointers = new ArrayList<>();
+        final List<Integer> bytes = new ArrayList<>();
+        try (final BlockCompressedInputStream parallel = new ParallelBlockCompressedInputStream(new FileInputStream(BAM_FILE), decompressionThreads)) {
+            readAll(parallel, pointers, bytes);
+        }
+        Assert.assertEquals(pointers, expectedPointers);
+        Assert.assertEquals(bytes, expectedBytes);
+    }
+
+    @Test(dataProvider = "decompressionThreads")
+    public void testSeek(final int decompressionThreads) throws IOException {
+        final List<Long> pointers = new ArrayList<>();
+        final List<Integer> bytes = new ArrayList<>();
+        try (final BlockCompressedInputStream sync = new BlockCompressedInputStream(new SeekableFileStream(BAM_FILE))) {
+            readAll(sync, pointers, bytes);
+        }
+
+        final Random random = new Random(0);
+        try (final BlockCompressedInputStream parallel = new ParallelBlockCompressedInputStream(BAM_FILE, decompressionThreads)) {
+            for (int i = 0; i < 200; i++) {
+                final int index = random.nextInt(pointers.size() - 1);
+                parallel.seek(pointers.get(index));
+                Assert.assertEquals(parallel.getFilePointer(), (long) pointers.get(index));
+                // read a little way past the seek position, crossing into read-ahead blocks
+                for (int j = index; j < Math.min(index + 5000, bytes.size()); j++) {
+                    Assert.assertEquals(parallel.read(), (int) bytes.get(j));
+                }
+            }
+        }
+    }
+
+    @Test(expectedExceptions = FileTruncatedException.class)
+    public void testTruncatedFile() throws IOException {
+        try (final BlockCompressedInputStream parallel = new ParallelBlockCompressedInputStream(TRUNCATED_FILE, 4)) {
+            while (parallel.read() != -1) {
+                // read until the exception
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidDecompressionThreads() throws IOException {
+        new ParallelBlockCompressedInputStream(BAM_FILE, 0);
+    }
+
+    private static void readAll(final BlockCompressedInputStream stream, final List<Long> pointers, final List<Integer> bytes) throws IOException {
+        pointers.add(stream.getFilePointer());
+        int b;
+        while ((b = stream.read()) != -1) {
+            bytes.add(b);
+            pointers.add(stream.getFilePointer());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package htsjdk.samtools.util;
+
+import htsjdk.HtsjdkTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+public class SharedThreadPoolTest extends HtsjdkTest {
+
+    @Test
+    public void testTasksRunOnPoolThreads() throws Exception {
+        final Thread caller = Thread.currentThread();
+        final Thread worker = SharedThreadPool.submit(Thread::currentThread).get();
+        Assert.assertNotSame(worker, caller);
+        Assert.assertTrue(worker.isDaemon());
+    }
+
+    @Test(timeOut = 60000)
+    public void testNestedTasksDoNotDeadlock() throws Exception {
+        // more outer tasks than threads, each waiting on an inner task, would deadlock if inner tasks were queued
+        final List<Future<Integer>> outer = new ArrayList<>();
+        for (int i = 0; i < SharedThreadPool.getPoolSize() * 2; i++) {
+            final int value = i;
+            outer.add(SharedThreadPool.submit(() -> {
+                final Thread outerThread = Thread.currentThread();
+                final Future<Thread> inner = SharedThreadPool.submit(Thread::currentThread);
+                Assert.assertSame(inner.get(), outerThread);
+                return value;
+            }));
+        }
+        for (int i = 0; i < outer.size(); i++) {
+            Assert.assertEquals(outer.get(i).get().intValue(), i);
+        }
+    }
+}
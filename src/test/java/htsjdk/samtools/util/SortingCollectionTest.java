@@ -41,6 +41,7 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SortingCollectionTest extends HtsjdkTest {
     // Create a separate directory for files so it is possible to confirm that the directory is emptied
@@ -103,6 +104,74 @@ public class SortingCollectionTest extends HtsjdkTest {
         Assert.assertEquals(tmpDir().list().length, 0);
     }
 
+    @DataProvider(name = "spillAndMergeOptions")
+    public Object[][] spillAndMergeOptions() {
+        return new Object[][] {
+                {false, 2},
+                {false, 3},
+                {true, Integer.MAX_VALUE},
+                {true, 2},
+                {true, 4},
+        };
+    }
+
+    @Test(dataProvider = "spillAndMergeOptions")
+    public void testBackgroundSpillAndMultiPassMerge(final boolean spillInBackground, final int maxFilesToMerge) {
+        final int numStringsToGenerate = 1234;
+        final int maxRecordsInRam = 50;
+        final String[] strings = new String[numStringsToGenerate];
+        int numStringsGenerated = 0;
+        final SortingCollection<String> sortingCollection = makeSortingCollection(maxRecordsInRam);
+        sortingCollection.setSpillInBackground(spillInBackground);
+        sortingCollection.setMaxFilesToMerge(maxFilesToMerge);
+        for (final String s : new RandomStringGenerator(numStringsToGenerate)) {
+            sortingCollection.add(s);
+            strings[numStringsGenerated++] = s;
+        }
+        Arrays.sort(strings, new StringComparator());
+
+        sortingCollection.doneAdding();
+        Assert.assertTrue(tmpDir().list().length <= maxFilesToMerge);
+        sortingCollection.setDestructiveIteration(false);
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+
+        sortingCollection.cleanup();
+        Assert.assertEquals(tmpDir().list().length, 0);
+    }
+
+    @Test
+    public void testMultiPassMergeHoldsAtMostMaxFilesOpen() {
+        final int maxFilesToMerge = 10;
+        final OpenFileCountingCodec codec = new OpenFileCountingCodec(new AtomicInteger(), new AtomicInteger());
+        final SortingCollection<String> sortingCollection =
+                SortingCollection.newInstance(String.class, codec, new StringComparator(), 10, tmpDir());
+        sortingCollection.setMaxFilesToMerge(maxFilesToMerge);
+        final String[] strings = new String[2000];
+        int numStringsGenerated = 0;
+        for (final String s : new RandomStringGenerator(strings.length)) {
+            sortingCollection.add(s);
+            strings[numStringsGenerated++] = s;
+        }
+        Arrays.sort(strings, new StringComparator());
+
+        assertIteratorEqualsList(strings, sortingCollection.iterator());
+        Assert.assertTrue(codec.maxOpenFiles.get() <= maxFilesToMerge, "open files: " + codec.maxOpenFiles.get());
+        sortingCollection.cleanup();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidMaxFilesToMerge() {
+        makeSortingCollection(10).setMaxFilesToMerge(1);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testAddSortedFileWithRecordsInRam() {
+        final SortingCollection<String> sortingCollection = makeSortingCollection(10);
+        sortingCollection.add("1");
+        sortingCollection.addSortedFile(new File(tmpDir(), "sorted.tmp").toPath());
+    }
+
     @Test
     public void spillToDiskTest() {
         final SortingCollection<String> sortingCollection = makeSortingCollection(10);
@@ -182,6 +251,40 @@ public class SortingCollectionTest extends HtsjdkTest {
         }
     }
 
+    /**
+     * Counts the files that are being read at the same time by this codec and all its clones.  A file counts as
+     * open until it has been read to the end.
+     */
+    static class OpenFileCountingCodec extends StringCodec {
+        private final AtomicInteger openFiles;
+        private final AtomicInteger maxOpenFiles;
+
+        OpenFileCountingCodec(final AtomicInteger openFiles, final AtomicInteger maxOpenFiles) {
+            this.openFiles = openFiles;
+            this.maxOpenFiles = maxOpenFiles;
+        }
+
+        @Override
+        public SortingCollection.Codec<String> clone() {
+            return new OpenFileCountingCodec(openFiles, maxOpenFiles);
+        }
+
+        @Override
+        public void setInputStream(final InputStream is) {
+            maxOpenFiles.accumulateAndGet(openFiles.incrementAndGet(), Math::max);
+            super.setInputStream(is);
+        }
+
+        @Override
+        public String decode() {
+            final String value = super.decode();
+            if (value == null) {
+                openFiles.decrementAndGet();
+            }
+            return value;
+        }
+    }
+
     static class StringCodec implements SortingCollection.Codec<String> {
         ByteBuffer byteBuffer = ByteBuffer.allocate(4);
         OutputStream os;
@@ -0,0 +1,180 @@
+package htsjdk.samtools.util.zip;
+
+import htsjdk.HtsjdkTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class BlockInflaterTest extends HtsjdkTest {
+    private static final int BLOCK_SIZE = 65498;
+
+    private static byte[] makeData(final String kind, final int size) {
+        final Random random = new Random(42);
+        final byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            switch (kind) {
+                case "zeros":
+                    break;
+                case "random":
+                    data[i] = (byte) random.nextInt();
+                    break;
+                case "bases":
+                    data[i] = (byte) "ACGT".charAt(random.nextInt(4));
+                    break;
+                case "qualities":
+                    data[i] = (byte) (33 + Math.min(40, (int) Math.abs(random.nextGaussian() * 8)));
+                    break;
+                case "skewed":
+                    // geometrically distributed, so that the rarer symbols have codes longer than the lookup table
+                    data[i] = (byte) Integer.numberOfTrailingZeros(random.nextInt() | 1 << 30);
+                    break;
+                case "text":
+                    data[i] = (byte) ("read_" + (i / 97) + "\tchr1\t").charAt(i % 11);
+                    break;
+                default:
+                    throw new IllegalArgumentException(kind);
+            }
+        }
+        return data;
+    }
+
+    private static byte[] deflate(final byte[] data, final int level, final int strategy) {
+        final Deflater deflater = new Deflater(level, true);
+        deflater.setStrategy(strategy);
+        deflater.setInput(data);
+        deflater.finish();
+        final byte[] buffer = new byte[data.length * 2 + 100];
+        int length = 0;
+        // the first call may only apply the strategy
+        while (!deflater.finished()) {
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        deflater.end();
+        return Arrays.copyOf(buffer, length);
+    }
+
+    @DataProvider
+    public Object[][] roundTripData() {
+        final String[] kinds = {"zeros", "random", "bases", "qualities", "skewed", "text"};
+        final int[] sizes = {0, 1, 100, BLOCK_SIZE};
+        final int[][] levelsAndStrategies = {{0, Deflater.DEFAULT_STRATEGY}, {1, Deflater.DEFAULT_STRATEGY},
+                {5, Deflater.DEFAULT_STRATEGY}, {9, Deflater.DEFAULT_STRATEGY}, {5, Deflater.HUFFMAN_ONLY},
+                {5, Deflater.FILTERED}};
+        final Object[][] tests = new Object[kinds.length * sizes.length * levelsAndStrategies.length][];
+        int i = 0;
+        for (final String kind : kinds) {
+            for (final int size : sizes) {
+                for (final int[] levelAndStrategy : levelsAndStrategies) {
+                    tests[i++] = new Object[]{kind, size, levelAndStrategy[0], levelAndStrategy[1]};
+                }
+            }
+        }
+        return tests;
+    }
+
+    @Test(dataProvider = "roundTripData")
+    public void testMatchesJdkInflater(final String kind, final int size, final int level, final int strategy) throws DataFormatException {
+        final byte[] data = makeData(kind, size);
+        final byte[] compressed = deflate(data, level, strategy);
+
+        // decompress at an offset within larger arrays to check that offsets are respected
+        final byte[] input = new byte[compressed.length + 10];
+        System.arraycopy(compressed, 0, input, 3, compressed.length);
+        final byte[] output = new byte[size + 10];
+        final int length = new BlockInflater().decompress(input, 3, compressed.length, output, 5, size);
+        Assert.assertEquals(length, size);
+        Assert.assertEquals(Arrays.copyOfRange(output, 5, 5 + size), data);
+
+        final byte[] jdkOutput = new byte[size];
+        Assert.assertEquals(new InflaterBlockDecompressor(new Inflater(true)).decompress(compressed, 0, compressed.length, jdkOutput, 0, size), size);
+        Assert.assertEquals(jdkOutput, data);
+    }
+
+    @Test
+    public void testReuse() throws DataFormatException {
+        // alternate between kinds of data so that the dynamic tables from one block don't match the next
+        final BlockInflater inflater = new BlockInflater();
+        final byte[] output = new byte[BLOCK_SIZE];
+        for (int i = 0; i < 20; i++) {
+            final byte[] data = makeData(i % 2 == 0 ? "bases" : "text", BLOCK_SIZE - i);
+            final byte[] compressed = deflate(data, i % 10, Deflater.DEFAULT_STRATEGY);
+            Assert.assertEquals(inflater.decompress(compressed, 0, compressed.length, output, 0, output.length), data.length);
+            Assert.assertEquals(Arrays.copyOf(output, data.length), data);
+        }
+    }
+
+    @Test
+    public void testCrc32() {
+        final byte[] data = makeData("text", 1000);
+        final CRC32 crc32 = new CRC32();
+        crc32.update(data, 10, 500);
+        Assert.assertEquals(new BlockInflater().crc32(data, 10, 500), crc32.getValue());
+    }
+
+    @Test(expectedExceptions = DataFormatException.class)
+    public void testOutputTooSmall() throws DataFormatException {
+        final byte[] compressed = deflate(makeData("text", 1000), 5, Deflater.DEFAULT_STRATEGY);
+        new BlockInflater().decompress(compressed, 0, compressed.length, new byte[999], 0, 999);
+    }
+
+    @Test(expectedExceptions = DataFormatException.class)
+    public void testStoredOutputTooSmall() throws DataFormatException {
+        final byte[] compressed = deflate(makeData("random", 1000), 0, Deflater.DEFAULT_STRATEGY);
+        new BlockInflater().decompress(compressed, 0, compressed.length, new byte[999], 0, 999);
+    }
+
+    @DataProvider
+    public Object[][] truncatedData() {
+        return new Object[][]{{"text", 5}, {"random", 5}, {"random", 0}, {"text", 9}};
+    }
+
+    @Test(dataProvider = "truncatedData", expectedExceptions = DataFormatException.class)
+    public void testTruncated(final String kind, final int level) throws DataFormatException {
+        final byte[] data = makeData(kind, 10000);
+        final byte[] compressed = deflate(data, level, Deflater.DEFAULT_STRATEGY);
+        new BlockInflater().decompress(compressed, 0, compressed.length / 2, new byte[data.length], 0, data.length);
+    }
+
+    @Test
+    public void testInvalidData() {
+        final BlockInflater inflater = new BlockInflater();
+        final byte[] output = new byte[BLOCK_SIZE];
+        // block type 3 is reserved
+        Assert.assertThrows(DataFormatException.class, () -> inflater.decompress(new byte[]{0x07, 0, 0, 0}, 0, 4, output, 0, output.length));
+        // stored block whose length doesn't match its complement
+        Assert.assertThrows(DataFormatException.class, () -> inflater.decompress(new byte[]{0x01, 5, 0, 5, 0, 1, 2, 3, 4, 5}, 0, 10, output, 0, output.length));
+        // fixed Huffman block whose first symbol is a match with nothing before it
+        Assert.assertThrows(DataFormatException.class, () -> inflater.decompress(new byte[]{0x03, 0x02, 0, 0}, 0, 4, output, 0, output.length));
+
+        final Random random = new Random(42);
+        final byte[] valid = deflate(makeData("text", 5000), 5, Deflater.DEFAULT_STRATEGY);
+        for (int i = 0; i < 200; i++) {
+            final byte[] corrupt = valid.clone();
+            corrupt[random.nextInt(corrupt.length)] ^= 1 << random.nextInt(8);
+            try {
+                inflater.decompress(corrupt, 0, corrupt.length, output, 0, output.length);
+            } catch (final DataFormatException e) {
+                // expected for most corruptions, but the only acceptable failure
+            }
+        }
+    }
+
+    @Test
+    public void testInflaterFactory() {
+        Assert.assertTrue(new InflaterFactory().makeBlockDecompressor() instanceof InflaterBlockDecompressor);
+        final InflaterFactory custom = new InflaterFactory() {
+            @Override
+            public BlockDecompressor makeBlockDecompressor() {
+                return new BlockInflater();
+            }
+        };
+        Assert.assertTrue(custom.makeBlockDecompressor() instanceof BlockInflater);
+    }
+}
@@ -0,0 +1,120 @@
+package htsjdk.tribble.readers;
+
+import htsjdk.HtsjdkTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public class ByteLineIteratorTest extends HtsjdkTest {
+
+    @DataProvider(name = "lines")
+    public Object[][] lines() {
+        return new Object[][]{
+                {""},
+                {"a"},
+                {"a\n"},
+                {"a\nb"},
+                {"a\nb\n"},
+                {"a\r\nb\r\n"},
+                {"a\rb\r"},
+                {"a\r\rb"},
+                {"\n\nab\n\n"},
+                {"first line\r\n\r\nthird line, which is longer than the buffer\nlast"},
+        };
+    }
+
+    private static List<String> readWithBufferedReader(final String text) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        final LineReader reader = new SynchronousLineReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    private static ByteLineIterator makeIterator(final String text, final int bufferSize) {
+        return new ByteLineIterator(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), bufferSize);
+    }
+
+    @Test(dataProvider = "lines")
+    public void testNextMatchesReadLine(final String text) throws IOException {
+        for (final int bufferSize : new int[]{1, 2, 3, 7, 64 * 1024}) {
+            final List<String> lines = new ArrayList<>();
+            makeIterator(text, bufferSize).forEachRemaining(lines::add);
+            Assert.assertEquals(lines, readWithBufferedReader(text), "buffer size " + bufferSize);
+        }
+    }
+
+    @Test(dataProvider = "lines")
+    public void testNextLineMatchesReadLine(final String text) throws IOException {
+        for (final int bufferSize : new int[]{1, 2, 3, 7, 64 * 1024}) {
+            final ByteLineIterator iterator = makeIterator(text, bufferSize);
+            final List<String> lines = new ArrayList<>();
+            while (iterator.nextLine()) {
+                lines.add(new String(iterator.getLineBuffer(), iterator.getLineStart(),
+                        iterator.getLineEnd() - iterator.getLineStart(), StandardCharsets.UTF_8));
+            }
+            Assert.assertEquals(lines, readWithBufferedReader(text), "buffer size " + bufferSize);
+            Assert.assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test
+    public void testMixedAccess() {
+        final ByteLineIterator iterator = makeIterator("#header\nline 1\nline 2\nline 3", 4);
+        Assert.assertEquals(iterator.peek(), "#header");
+        Assert.assertEquals(iterator.peek(), "#header");
+        Assert.assertEquals(iterator.next(), "#header");
+        Assert.assertTrue(iterator.nextLine());
+        Assert.assertEquals(new String(iterator.getLineBuffer(), iterator.getLineStart(), iterator.getLineEnd() - iterator.getLineStart(),
+                StandardCharsets.UTF_8), "line 1");
+        Assert.assertEquals(iterator.peek(), "line 2");
+        Assert.assertTrue(iterator.nextLine());
+        Assert.assertEquals(new String(iterator.getLineBuffer(), iterator.getLineStart(), iterator.getLineEnd() - iterator.getLineStart(),
+                StandardCharsets.UTF_8), "line 2");
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertEquals(iterator.next(), "line 3");
+        Assert.assertNull(iterator.peek());
+        Assert.assertFalse(iterator.nextLine());
+    }
+
+    @Test
+    public void testLinesAreDecodedAsUTF8() {
+        final ByteLineIterator iterator = makeIterator("\u00fcn\u00efc\u00f6d\u00e9\tvalues\n", 3);
+        Assert.assertEquals(iterator.next(), "\u00fcn\u00efc\u00f6d\u00e9\tvalues");
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    @Test(expectedExceptions = NoSuchElementException.class)
+    public void testNextAtEnd() {
+        final ByteLineIterator iterator = makeIterator("a", 16);
+        iterator.next();
+        iterator.next();
+    }
+
+    @Test
+    public void testClose() {
+        final boolean[] closed = {false};
+        final InputStream stream = new ByteArrayInputStream(new byte[0]) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        new ByteLineIterator(stream).close();
+        Assert.assertTrue(closed[0]);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidBufferSize() {
+        new ByteLineIterator(new ByteArrayInputStream(new byte[0]), 0);
+    }
+}
@@ -0,0 +1,318 @@
+package htsjdk.variant.variantcontext;
+
+import htsjdk.samtools.util.TestUtil;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.FeatureCodec;
+import htsjdk.tribble.FeatureReader;
+import htsjdk.variant.VariantBaseTest;
+import htsjdk.variant.bcf2.BCF2Codec;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class ColumnarGenotypesContextTest extends VariantBaseTest {
+
+    private static final File VARIANT_DIR = new File("src/test/resources/htsjdk/variant");
+
+    private static final Allele REF = Allele.create("A", true);
+    private static final Allele ALT = Allele.create("C");
+    private static final List<Allele> SITE_ALLELES = Arrays.asList(REF, ALT);
+
+    private static GenotypeColumns makeColumns(final List<String> samples, final List<GenotypeBuilder> genotypes) {
+        final List<String> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        final Map<String, Integer> offsets = new HashMap<>();
+        for (int i = 0; i < samples.size(); i++) {
+            offsets.put(samples.get(i), i);
+        }
+        final GenotypeColumns.Builder builder = new GenotypeColumns.Builder(SITE_ALLELES, samples, sorted, offsets);
+        genotypes.forEach(builder::add);
+        return builder.make();
+    }
+
+    private static List<GenotypeBuilder> makeBuilders() {
+        final Allele other = Allele.create("G");
+        return Arrays.asList(
+                new GenotypeBuilder("s1", Arrays.asList(REF, ALT)).phased(true).GQ(30).DP(12).AD(new int[]{7, 5}).PL(new int[]{50, 0, 60}),
+                new GenotypeBuilder("s2", Arrays.asList(ALT)).DP(3).attribute("XX", "foo"),
+                new GenotypeBuilder("s3", Arrays.asList(REF, ALT, other)).filter("lowQual").PL(new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}),
+                new GenotypeBuilder("s4"),
+                new GenotypeBuilder("s5", Arrays.asList(Allele.NO_CALL, Allele.NO_CALL)).AD(new int[0]).attribute("YY", 3)
+        );
+    }
+
+    @Test
+    public void testColumnsMatchGenotypes() {
+        final List<GenotypeBuilder> builders = makeBuilders();
+        final List<String> samples = Arrays.asList("s1", "s2", "s3", "s4", "s5");
+        final GenotypeColumns columns = makeColumns(samples, builders);
+        Assert.assertEquals(columns.size(), 5);
+        Assert.assertEquals(columns.getMaxPloidy(2), 3);
+        for (int i = 0; i < samples.size(); i++) {
+            final Genotype expected = builders.get(i).make();
+            assertGenotypesAreEqual(columns.getGenotype(i), expected);
+            assertGenotypesAreEqual(columns.getGenotype(samples.get(i)), expected);
+            assertGenotypesAreEqual(columns.toGenotypes().get(i), expected);
+            Assert.assertEquals(columns.getGenotype(i).toString(), expected.toString());
+        }
+        Assert.assertNull(columns.getGenotype("missing"));
+        Assert.assertTrue(columns.getGenotype(0).getAD() != null && columns.getGenotype(3).getAD() == null);
+        Assert.assertEquals(columns.getGenotype(4).getAD(), new int[0]);
+    }
+
+    @Test
+    public void testWriteFieldsDirectly() {
+        final List<String> samples = Arrays.asList("s1", "s2", "s3");
+        final GenotypeColumns.Builder builder = new GenotypeColumns.Builder(SITE_ALLELES, samples, samples, new HashMap<>());
+        // fields are written field by field, as the BCF decoders do, and s2 has no alleles or AD
+        builder.allele(0, REF).allele(0, ALT).allele(2, ALT);
+        builder.phased(0, true);
+        builder.AD(0, new int[]{7, 5}).AD(2, new int[]{1});
+        builder.GQ(1, 20).filter(1, "PASS").filters(2, Arrays.asList("q10", "lowQual"));
+        builder.attribute(2, "XX", "foo");
+        final GenotypeColumns columns = builder.make();
+
+        assertGenotypesAreEqual(columns.getGenotype(0), new GenotypeBuilder("s1", Arrays.asList(REF, ALT)).phased(true).AD(new int[]{7, 5}).make());
+        assertGenotypesAreEqual(columns.getGenotype(1), new GenotypeBuilder("s2").GQ(20).make());
+        assertGenotypesAreEqual(columns.getGenotype(2), new GenotypeBuilder("s3", Collections.singletonList(ALT))
+                .AD(new int[]{1}).filters("q10", "lowQual").attribute("XX", "foo").make());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testAllelesWrittenOutOfOrder() {
+        final List<String> samples = Arrays.asList("s1", "s2");
+        new GenotypeColumns.Builder(SITE_ALLELES, samples, samples, new HashMap<>()).allele(1, REF).allele(0, REF);
+    }
+
+    @Test
+    public void testUniformColumns() {
+        final List<String> samples = new ArrayList<>();
+        final List<GenotypeBuilder> builders = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            samples.add("sample" + i);
+            builders.add(new GenotypeBuilder("sample" + i, Arrays.asList(REF, i % 3 == 0 ? ALT : REF))
+                    .GQ(i % 99).DP(i).AD(new int[]{i, i + 1}).PL(new int[]{i, 0, i * 2}));
+        }
+        final GenotypeColumns columns = makeColumns(samples, builders);
+        Assert.assertEquals(columns.getMaxPloidy(1), 2);
+        for (int i = 0; i < samples.size(); i++) {
+            assertGenotypesAreEqual(columns.getGenotype(i), builders.get(i).make());
+        }
+    }
+
+    @Test
+    public void testManyAlleles() {
+        final List<Allele> alleles = new ArrayList<>();
+        alleles.add(REF);
+        for (int i = 0; i < 200; i++) {
+            alleles.add(Allele.create("C" + new String(new char[i + 1]).replace('\0', 'T')));
+        }
+        final List<String> samples = new ArrayList<>();
+        final List<GenotypeBuilder> builders = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            samples.add("sample" + i);
+            builders.add(new GenotypeBuilder("sample" + i, Arrays.asList(alleles.get(i), alleles.get(i + 1))));
+        }
+        final GenotypeColumns.Builder builder = new GenotypeColumns.Builder(alleles, samples, samples, new HashMap<>());
+        builders.forEach(builder::add);
+        final GenotypeColumns columns = builder.make();
+        for (int i = 0; i < samples.size(); i++) {
+            Assert.assertEquals(columns.getGenotype(i).getAlleles(), Arrays.asList(alleles.get(i), alleles.get(i + 1)));
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testMissingSamples() {
+        makeColumns(Arrays.asList("s1", "s2"), Collections.singletonList(new GenotypeBuilder("s1")));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testTooManySamples() {
+        makeColumns(Collections.singletonList("s1"), Arrays.asList(new GenotypeBuilder("s1"), new GenotypeBuilder("s2")));
+    }
+
+    @Test
+    public void testContextReadsFromColumns() {
+        final List<String> samples = Arrays.asList("s1", "s2", "s3", "s4", "s5");
+        final ColumnarGenotypesContext context = new ColumnarGenotypesContext(makeColumns(samples, makeBuilders()));
+        Assert.assertFalse(context.isLazyWithData());
+        Assert.assertEquals(context.size(), 5);
+        Assert.assertFalse(context.isEmpty());
+        Assert.assertEquals(context.getMaxPloidy(2), 3);
+        Assert.assertEquals(context.getSampleNames(), new HashSet<>(samples));
+        Assert.assertEquals(context.getSampleNamesOrderedByName(), samples);
+        Assert.assertTrue(context.containsSample("s3"));
+        Assert.assertEquals(context.get("s3").getFilters(), "lowQual");
+        Assert.assertEquals(context.get(1).getSampleName(), "s2");
+
+        final Iterator<Genotype> iterator = context.iterator();
+        for (final String sample : samples) {
+            Assert.assertEquals(iterator.next().getSampleName(), sample);
+        }
+        Assert.assertFalse(iterator.hasNext());
+
+        final GenotypesContext subset = context.subsetToSamples(new HashSet<>(Arrays.asList("s1", "s5")));
+        Assert.assertEquals(subset.size(), 2);
+        Assert.assertNotNull(context.getColumns(), "reading should not turn the columns into genotype objects");
+    }
+
+    @Test
+    public void testModifyingContextMakesGenotypes() {
+        final List<String> samples = Arrays.asList("s1", "s2", "s3", "s4", "s5");
+        final List<GenotypeBuilder> builders = makeBuilders();
+        final GenotypeColumns columns = makeColumns(samples, builders);
+        final Map<String, Integer> sharedOffsets = new HashMap<>(columns.getSampleNameToOffset());
+
+        final ColumnarGenotypesContext context = new ColumnarGenotypesContext(columns);
+        final Genotype added = GenotypeBuilder.create("s6", Arrays.asList(REF, REF));
+        context.add(added);
+        Assert.assertNull(context.getColumns());
+        Assert.assertEquals(context.size(), 6);
+        Assert.assertSame(context.get("s6"), added);
+        Assert.assertEquals(context.getSampleNamesOrderedByName(), Arrays.asList("s1", "s2", "s3", "s4", "s5", "s6"));
+        for (int i = 0; i < samples.size(); i++) {
+            assertGenotypesAreEqual(context.get(i), builders.get(i).make());
+        }
+        // the lookup tables given to the columns are not modified
+        Assert.assertEquals(columns.getSampleNameToOffset(), sharedOffsets);
+
+        final ColumnarGenotypesContext removed = new ColumnarGenotypesContext(columns);
+        removed.remove(0);
+        Assert.assertEquals(removed.size(), 4);
+        Assert.assertFalse(removed.containsSample("s1"));
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testImmutable() {
+        final ColumnarGenotypesContext context = new ColumnarGenotypesContext(makeColumns(Collections.singletonList("s1"),
+                Collections.singletonList(new GenotypeBuilder("s1"))));
+        context.immutable();
+        context.add(GenotypeBuilder.create("s2", SITE_ALLELES));
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        final List<String> samples = Arrays.asList("s1", "s2", "s3", "s4", "s5");
+        final List<GenotypeBuilder> builders = makeBuilders();
+        final ColumnarGenotypesContext context = new ColumnarGenotypesContext(makeColumns(samples, builders));
+
+        final Genotype genotype = TestUtil.serializeAndDeserialize(context.get(0));
+        Assert.assertTrue(genotype instanceof FastGenotype);
+        assertGenotypesAreEqual(genotype, builders.get(0).make());
+
+        final GenotypesContext deserialized = TestUtil.serializeAndDeserialize(context);
+        Assert.assertEquals(deserialized.size(), 5);
+        for (int i = 0; i < samples.size(); i++) {
+            assertGenotypesAreEqual(deserialized.get(i), builders.get(i).make());
+        }
+    }
+
+    // --------------------------------------------------------------------------------
+    //
+    // Decoding VCF and BCF files into columns
+    //
+    // --------------------------------------------------------------------------------
+
+    @DataProvider(name = "variantFiles")
+    public Object[][] variantFiles() {
+        return new Object[][]{
+                {"test1.vcf"},
+                {"ex2.vcf"},
+                {"phased.vcf"},
+                {"test_withGLandPL.vcf"},
+                {"HiSeq.10000.vcf"},
+                {"ILLUMINA.wex.broad_phase2_baseline.20111114.both.exome.genotypes.1000.vcf"},
+                {"serialization_test.bcf"},
+                {"VcfThatLacksAnIndex.bcf"},
+        };
+    }
+
+    private static FeatureCodec<VariantContext, ?> makeCodec(final String file, final boolean columnar) {
+        if (file.endsWith(".bcf")) {
+            final BCF2Codec codec = new BCF2Codec();
+            codec.setColumnarGenotypes(columnar);
+            return codec;
+        } else {
+            final VCFCodec codec = new VCFCodec();
+            codec.setColumnarGenotypes(columnar);
+            return codec;
+        }
+    }
+
+    private static List<VariantContext> read(final String file, final boolean columnar) throws IOException {
+        final List<VariantContext> records = new ArrayList<>();
+        try (final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(
+                new File(VARIANT_DIR, file).getAbsolutePath(), makeCodec(file, columnar), false)) {
+            for (final VariantContext vc : reader.iterator()) {
+                records.add(vc);
+            }
+        }
+        return records;
+    }
+
+    @Test(dataProvider = "variantFiles")
+    public void testDecodeColumns(final String file) throws IOException {
+        final List<VariantContext> expected = read(file, false);
+        final List<VariantContext> actual = read(file, true);
+        Assert.assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            final VariantContext vc = actual.get(i);
+            if (vc.hasGenotypes()) {
+                Assert.assertTrue(vc.getGenotypes() instanceof ColumnarGenotypesContext);
+            }
+            assertVariantContextsAreEqual(vc, expected.get(i));
+            Assert.assertEquals(vc.getGenotypes().size(), expected.get(i).getGenotypes().size());
+            for (int j = 0; j < vc.getNSamples(); j++) {
+                assertGenotypesAreEqual(vc.getGenotype(j), expected.get(i).getGenotype(j));
+            }
+            Assert.assertEquals(vc.getCalledChrCount(), expected.get(i).getCalledChrCount());
+        }
+    }
+
+    @Test(dataProvider = "variantFiles")
+    public void testWriteDecodedColumns(final String file) throws IOException {
+        final VCFHeader header;
+        try (final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(
+                new File(VARIANT_DIR, file).getAbsolutePath(), makeCodec(file, false), false)) {
+            header = (VCFHeader) reader.getHeader();
+        }
+        final List<String> outputs = new ArrayList<>();
+        for (final boolean columnar : new boolean[]{false, true}) {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (final VariantContextWriter writer = new VariantContextWriterBuilder()
+                    .setOutputStream(output)
+                    .unsetOption(Options.INDEX_ON_THE_FLY)
+                    .setOption(Options.ALLOW_MISSING_FIELDS_IN_HEADER)
+                    .setReferenceDictionary(header.getSequenceDictionary())
+                    .build()) {
+                writer.writeHeader(header);
+                for (final VariantContext vc : read(file, columnar)) {
+                    // decode the genotypes, so that they are encoded again rather than copied from the input
+                    if (vc.getGenotypes() instanceof LazyGenotypesContext) {
+                        ((LazyGenotypesContext) vc.getGenotypes()).decode();
+                    }
+                    writer.add(vc);
+                }
+            }
+            outputs.add(output.toString());
+        }
+        Assert.assertEquals(outputs.get(1), outputs.get(0));
+    }
+}
@@ -27,6 +27,7 @@ package htsjdk.variant.variantcontext.writer;
 
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.FileExtensions;
 import htsjdk.samtools.util.TestUtil;
 import htsjdk.tribble.AbstractFeatureReader;
@@ -40,6 +41,7 @@ import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.GenotypeBuilder;
 import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
 import htsjdk.variant.vcf.VCFCodec;
@@ -52,6 +54,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -383,5 +386,144 @@ public class VCFWriterUnitTest extends VariantBaseTest {
             writer.add(createVC(header));
         }
     }
-}
 
+    private static final File MULTI_SAMPLE_VCF =
+            new File(VariantBaseTest.variantTestDataRoot, "ILLUMINA.wex.broad_phase2_baseline.20111114.both.exome.genotypes.1000.vcf");
+
+    private File writeWithEncodingThreads(final String extension, final int encodingThreads, final EnumSet<Options> options,
+                                          final boolean decodeGenotypes) throws IOException {
+        final File output = File.createTempFile("testEncodingThreads." + encodingThreads + ".", extension, tempDir);
+        output.deleteOnExit();
+        try (final VCFFileReader reader = new VCFFileReader(MULTI_SAMPLE_VCF, false);
+             final VariantContextWriter writer = new VariantContextWriterBuilder()
+                     .setOutputFile(output)
+                     .setReferenceDictionary(reader.getFileHeader().getSequenceDictionary())
+                     .setOptions(options)
+                     .setEncodingThreads(encodingThreads)
+                     .build()) {
+            writer.writeHeader(reader.getFileHeader());
+            for (final VariantContext vc : reader) {
+                if (decodeGenotypes && vc.getGenotypes() instanceof LazyGenotypesContext) {
+                    // so that the genotypes are encoded, rather than copied from the input
+                    ((LazyGenotypesContext) vc.getGenotypes()).decode();
+                }
+                writer.add(vc);
+            }
+        }
+        return output;
+    }
+
+    private static List<String> queryAll(final File vcf) {
+        final List<String> records = new ArrayList<>();
+        try (final VCFFileReader reader = new VCFFileReader(vcf, true);
+             final CloseableIterator<VariantContext> iterator = reader.query("1", 1, Integer.MAX_VALUE)) {
+            iterator.forEachRemaining(vc -> records.add(vc.toStringDecodeGenotypes()));
+        }
+        return records;
+    }
+
+    @DataProvider(name = "encodingThreadsDataProvider")
+    public Object[][] encodingThreadsDataProvider() {
+        return new Object[][] {
+                {FileExtensions.VCF, 1, false},
+                {FileExtensions.VCF, 4, false},
+                {FileExtensions.VCF, 4, true},
+                {FileExtensions.COMPRESSED_VCF, 1, false},
+                {FileExtensions.COMPRESSED_VCF, 4, false},
+                {FileExtensions.COMPRESSED_VCF, 4, true}
+        };
+    }
+
+    @Test(dataProvider = "encodingThreadsDataProvider")
+    public void testEncodingThreadsMatchesSerial(final String extension, final int encodingThreads, final boolean decodeGenotypes) throws IOException {
+        final EnumSet<Options> options = EnumSet.of(Options.INDEX_ON_THE_FLY);
+        final File serial = writeWithEncodingThreads(extension, 0, options, decodeGenotypes);
+        final File parallel = writeWithEncodingThreads(extension, encodingThreads, options, decodeGenotypes);
+        final String indexExtension = extension.equals(FileExtensions.COMPRESSED_VCF) ? FileExtensions.TABIX_INDEX : FileExtensions.TRIBBLE_INDEX;
+        new File(serial.getAbsolutePath() + indexExtension).deleteOnExit();
+        new File(parallel.getAbsolutePath() + indexExtension).deleteOnExit();
+
+        Assert.assertEquals(Files.readAllBytes(parallel.toPath()), Files.readAllBytes(serial.toPath()));
+        final List<String> expected = queryAll(serial);
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(queryAll(parallel), expected);
+    }
+
+    @Test
+    public void testEncodingThreadsWithoutGenotypes() throws IOException {
+        final EnumSet<Options> options = EnumSet.of(Options.DO_NOT_WRITE_GENOTYPES);
+        final File serial = writeWithEncodingThreads(FileExtensions.VCF, 0, options, false);
+        final File parallel = writeWithEncodingThreads(FileExtensions.VCF, 3, options, false);
+        Assert.assertEquals(Files.readAllBytes(parallel.toPath()), Files.readAllBytes(serial.toPath()));
+    }
+
+    @Test
+    public void testEncodingThreadsWritesRecordsBeforeFailure() throws IOException {
+        final File output = File.createTempFile("testEncodingThreadsFailure.", FileExtensions.VCF, tempDir);
+        output.deleteOnExit();
+        final List<VariantContext> records = new ArrayList<>();
+        final VCFHeader header;
+        try (final VCFFileReader reader = new VCFFileReader(MULTI_SAMPLE_VCF, false)) {
+            header = reader.getFileHeader();
+            reader.iterator().stream().limit(50).forEach(records::add);
+        }
+        // a record with an INFO key that is not in the header can't be encoded
+        records.add(new VariantContextBuilder(records.get(records.size() - 1)).attribute("NOT_IN_HEADER", 1).make());
+
+        final VariantContextWriter writer = new VariantContextWriterBuilder()
+                .setOutputFile(output)
+                .setOptions(VariantContextWriterBuilder.NO_OPTIONS.clone())
+                .setEncodingThreads(2)
+                .build();
+        writer.writeHeader(header);
+        records.forEach(writer::add);
+        Assert.assertThrows(IllegalStateException.class, writer::close);
+
+        try (final VCFFileReader reader = new VCFFileReader(output, false)) {
+            Assert.assertEquals(reader.iterator().stream().count(), records.size() - 1);
+        }
+    }
+
+    @Test
+    public void testEncodingThreadsStopsAtFailureMidStream() throws IOException {
+        final File output = File.createTempFile("testEncodingThreadsMidStreamFailure.", FileExtensions.VCF, tempDir);
+        output.deleteOnExit();
+        final List<VariantContext> fileRecords;
+        final VCFHeader header;
+        try (final VCFFileReader reader = new VCFFileReader(MULTI_SAMPLE_VCF, false)) {
+            header = reader.getFileHeader();
+            fileRecords = reader.iterator().toList();
+        }
+        // enough records for several batches, with one that can't be encoded near the start
+        final List<VariantContext> records = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            records.addAll(fileRecords);
+        }
+        final int badRecord = 10;
+        records.set(badRecord, new VariantContextBuilder(records.get(badRecord)).attribute("NOT_IN_HEADER", 1).make());
+
+        final VariantContextWriter writer = new VariantContextWriterBuilder()
+                .setOutputFile(output)
+                .setOptions(VariantContextWriterBuilder.NO_OPTIONS.clone())
+                .setEncodingThreads(2)
+                .build();
+        writer.writeHeader(header);
+        IllegalStateException failure = null;
+        for (final VariantContext record : records) {
+            try {
+                writer.add(record);
+            } catch (final IllegalStateException e) {
+                failure = e;
+                break;
+            }
+        }
+        Assert.assertNotNull(failure, "the failure should be reported before all records are added");
+        Assert.assertSame(Assert.expectThrows(IllegalStateException.class, () -> writer.add(records.get(0))), failure);
+        Assert.assertSame(Assert.expectThrows(IllegalStateException.class, writer::close), failure);
+
+        // nothing after the failed record is written
+        try (final VCFFileReader reader = new VCFFileReader(output, false)) {
+            Assert.assertEquals(reader.iterator().stream().count(), badRecord);
+        }
+    }
+}
@@ -267,6 +267,28 @@ public class VariantContextWriterBuilderUnitTest extends VariantBaseTest {
         Assert.assertTrue(((VCFWriter) writer).getOutputStream() instanceof BufferedOutputStream, "testBuffering was not buffered when set");
     }
 
+    @Test
+    public void testEncodingThreads() {
+        final VariantContextWriterBuilder builder = new VariantContextWriterBuilder()
+                .setReferenceDictionary(dictionary)
+                .setOutputFile(vcf)
+                .unsetOption(Options.USE_ASYNC_IO);
+
+        VariantContextWriter writer = builder.build();
+        Assert.assertEquals(((VCFWriter) writer).getEncodingThreads(), Defaults.VCF_ENCODING_THREADS, "testEncodingThreads default");
+
+        writer = builder.setEncodingThreads(3).build();
+        Assert.assertEquals(((VCFWriter) writer).getEncodingThreads(), 3, "testEncodingThreads when set");
+
+        writer = builder.setEncodingThreads(0).build();
+        Assert.assertEquals(((VCFWriter) writer).getEncodingThreads(), 0, "testEncodingThreads when unset");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeEncodingThreads() {
+        new VariantContextWriterBuilder().setEncodingThreads(-1);
+    }
+
     @Test
     public void testMD5() {
         final VariantContextWriterBuilder builder = new VariantContextWriterBuilder()
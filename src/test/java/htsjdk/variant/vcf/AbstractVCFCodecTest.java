@@ -2,6 +2,8 @@ package htsjdk.variant.vcf;
 
 import htsjdk.tribble.TribbleException;
 import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.readers.LineIteratorImpl;
+import htsjdk.tribble.readers.SynchronousLineReader;
 import htsjdk.variant.VariantBaseTest;
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.VariantContext;
@@ -10,6 +12,10 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Iterator;
 import java.util.List;
 
@@ -68,6 +74,20 @@ public class AbstractVCFCodecTest extends VariantBaseTest {
         Assert.assertEquals(variant.getGenotype(0).getPL(), new int[]{45, 0, 50});
     }
 
+    @Test
+    public void testSharedHeaderDecodesLikeReadHeader() throws IOException {
+        final List<String> lines = Files.readAllLines(Paths.get("src/test/resources/htsjdk/variant/test_withGLandPL.vcf"));
+        final VCFCodec headerCodec = new VCFCodec();
+        headerCodec.readActualHeader(new LineIteratorImpl(new SynchronousLineReader(new StringReader(String.join("\n", lines)))));
+        final String record = lines.stream().filter(line -> !line.startsWith("#")).findFirst().get();
+
+        final VCFCodec sharingCodec = new VCFCodec();
+        sharingCodec.shareHeader(headerCodec);
+        Assert.assertSame(sharingCodec.getHeader(), headerCodec.getHeader());
+        Assert.assertEquals(sharingCodec.getVersion(), headerCodec.getVersion());
+        Assert.assertEquals(sharingCodec.decode(record).toStringDecodeGenotypes(), headerCodec.decode(record).toStringDecodeGenotypes());
+    }
+
     @DataProvider(name = "caseIntolerantDoubles")
     public Object[][] getCaseIntolerantDoubles() {
         return new Object[][]{
@@ -0,0 +1,333 @@
+package htsjdk.variant.vcf;
+
+import htsjdk.beta.plugin.registry.HtsDefaultRegistry;
+import htsjdk.beta.plugin.variants.VariantsDecoder;
+import htsjdk.beta.plugin.variants.VariantsDecoderOptions;
+import htsjdk.io.HtsPath;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.FileExtensions;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.FeatureCodec;
+import htsjdk.tribble.FeatureReader;
+import htsjdk.tribble.TribbleException;
+import htsjdk.variant.VariantBaseTest;
+import htsjdk.variant.bcf2.BCF2Codec;
+import htsjdk.variant.variantcontext.ColumnarGenotypesContext;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class VCFDecodingProjectionTest extends VariantBaseTest {
+
+    private static final File VARIANT_DIR = new File("src/test/resources/htsjdk/variant");
+    private static final File MANY_SAMPLES_VCF = new File(VARIANT_DIR, "ILLUMINA.wex.broad_phase2_baseline.20111114.both.exome.genotypes.1000.vcf");
+    private static final File EX2_VCF = new File(VARIANT_DIR, "ex2.vcf");
+
+    private File manySamplesBcf;
+    private File ex2Bcf;
+
+    @BeforeClass
+    public void writeBcfs() {
+        manySamplesBcf = writeBcf(MANY_SAMPLES_VCF);
+        ex2Bcf = writeBcf(EX2_VCF);
+    }
+
+    private static File writeBcf(final File vcf) {
+        final File bcf = createTempFile("projection", FileExtensions.BCF);
+        try (final VCFFileReader reader = new VCFFileReader(vcf, false);
+             final VariantContextWriter writer = new VariantContextWriterBuilder()
+                     .setOutputFile(bcf)
+                     .unsetOption(Options.INDEX_ON_THE_FLY)
+                     .build()) {
+            writer.writeHeader(reader.getFileHeader());
+            reader.forEach(writer::add);
+        }
+        return bcf;
+    }
+
+    private static List<VariantContext> read(final File file, final VCFDecodingProjection projection) {
+        final List<VariantContext> records = new ArrayList<>();
+        try (final VCFFileReader reader = new VCFFileReader(file.toPath(), false, projection);
+             final CloseableIterator<VariantContext> iterator = reader.iterator()) {
+            while (iterator.hasNext()) {
+                final VariantContext vc = iterator.next();
+                // force decoding, so that errors in the projected decoding show up here
+                vc.getGenotypes().size();
+                records.add(vc);
+            }
+        }
+        return records;
+    }
+
+    private static Genotype project(final Genotype genotype, final VCFDecodingProjection projection) {
+        final GenotypeBuilder builder = new GenotypeBuilder(genotype.getSampleName());
+        if (projection.includesFormatKey(VCFConstants.GENOTYPE_KEY)) {
+            builder.alleles(genotype.getAlleles()).phased(genotype.isPhased());
+        } else {
+            builder.alleles(Collections.emptyList());
+        }
+        if (projection.includesFormatKey(VCFConstants.GENOTYPE_QUALITY_KEY) && genotype.hasGQ()) {
+            builder.GQ(genotype.getGQ());
+        }
+        if (projection.includesFormatKey(VCFConstants.DEPTH_KEY) && genotype.hasDP()) {
+            builder.DP(genotype.getDP());
+        }
+        if (projection.includesFormatKey(VCFConstants.GENOTYPE_ALLELE_DEPTHS) && genotype.hasAD()) {
+            builder.AD(genotype.getAD());
+        }
+        if (projection.includesFormatKey(VCFConstants.GENOTYPE_PL_KEY) && genotype.hasPL()) {
+            builder.PL(genotype.getPL());
+        }
+        if (projection.includesFormatKey(VCFConstants.GENOTYPE_FILTER_KEY)) {
+            builder.filter(genotype.getFilters());
+        }
+        for (final Map.Entry<String, Object> attribute : genotype.getExtendedAttributes().entrySet()) {
+            if (projection.includesFormatKey(attribute.getKey())) {
+                builder.attribute(attribute.getKey(), attribute.getValue());
+            }
+        }
+        return builder.make();
+    }
+
+    private static void assertProjected(final File file, final VCFDecodingProjection projection) {
+        final List<VariantContext> expected = read(file, VCFDecodingProjection.ALL);
+        final List<VariantContext> actual = read(file, projection);
+        Assert.assertEquals(actual.size(), expected.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            final VariantContext vc = actual.get(i);
+            final VariantContext full = expected.get(i);
+            Assert.assertEquals(vc.getContig(), full.getContig());
+            Assert.assertEquals(vc.getStart(), full.getStart());
+            Assert.assertEquals(vc.getEnd(), full.getEnd());
+            Assert.assertEquals(vc.getAlleles(), full.getAlleles());
+            Assert.assertEquals(vc.getFilters(), full.getFilters());
+
+            final Set<String> expectedInfoKeys = full.getAttributes().keySet().stream()
+                    .filter(projection::includesInfoKey)
+                    .collect(Collectors.toSet());
+            Assert.assertEquals(vc.getAttributes().keySet(), expectedInfoKeys);
+            for (final String key : expectedInfoKeys) {
+                Assert.assertEquals(vc.getAttribute(key), full.getAttribute(key));
+            }
+
+            final List<String> expectedSamples = full.getSampleNamesOrderedByName().stream()
+                    .filter(projection::includesSample)
+                    .collect(Collectors.toList());
+            Assert.assertEquals(vc.getSampleNamesOrderedByName(), expectedSamples);
+            for (final String sample : expectedSamples) {
+                assertGenotypesAreEqual(vc.getGenotype(sample), project(full.getGenotype(sample), projection));
+            }
+        }
+    }
+
+    @DataProvider(name = "projections")
+    public Object[][] projections() {
+        final List<String> manySamples = Arrays.asList("NA21143", "HG00100", "HG00103");
+        return new Object[][]{
+                {MANY_SAMPLES_VCF, VCFDecodingProjection.ALL},
+                {MANY_SAMPLES_VCF, VCFDecodingProjection.ALL.withSamples(manySamples)},
+                {MANY_SAMPLES_VCF, VCFDecodingProjection.ALL.withSamples(Collections.emptyList())},
+                {MANY_SAMPLES_VCF, VCFDecodingProjection.ALL.withInfoKeys(Arrays.asList("AC", "culprit", "DB"))},
+                {MANY_SAMPLES_VCF, VCFDecodingProjection.ALL.withInfoKeys(Collections.emptyList())},
+                {MANY_SAMPLES_VCF, VCFDecodingProjection.ALL.withFormatKeys(Collections.singletonList("GT"))},
+                {MANY_SAMPLES_VCF, VCFDecodingProjection.ALL.withFormatKeys(Arrays.asList("DP", "PL"))},
+                {MANY_SAMPLES_VCF, VCFDecodingProjection.ALL.withSamples(manySamples)
+                        .withInfoKeys(Collections.singletonList("AF"))
+                        .withFormatKeys(Arrays.asList("GT", "AD"))},
+                {EX2_VCF, VCFDecodingProjection.ALL.withSamples(Arrays.asList("NA00003", "NA00001"))},
+                {EX2_VCF, VCFDecodingProjection.ALL.withInfoKeys(Arrays.asList("H2", "AF", "HOMSEQ"))},
+                {EX2_VCF, VCFDecodingProjection.ALL.withFormatKeys(Arrays.asList("HQ", "GQ"))},
+                {EX2_VCF, VCFDecodingProjection.ALL.withSamples(Collections.singletonList("NA00002")).withFormatKeys(Collections.singletonList("CNL"))},
+        };
+    }
+
+    @Test(dataProvider = "projections")
+    public void testVCFProjection(final File vcf, final VCFDecodingProjection projection) {
+        assertProjected(vcf, projection);
+    }
+
+    @Test(dataProvider = "projections")
+    public void testBCFProjection(final File vcf, final VCFDecodingProjection projection) {
+        assertProjected(vcf == EX2_VCF ? ex2Bcf : manySamplesBcf, projection);
+    }
+
+    @Test(dataProvider = "projections")
+    public void testColumnarProjection(final File vcf, final VCFDecodingProjection projection) throws IOException {
+        for (final boolean bcf : new boolean[]{false, true}) {
+            final File file = bcf ? (vcf == EX2_VCF ? ex2Bcf : manySamplesBcf) : vcf;
+            final List<VariantContext> expected = read(file, projection);
+            final List<VariantContext> actual = new ArrayList<>();
+            if (bcf) {
+                final BCF2Codec codec = new BCF2Codec();
+                codec.setDecodingProjection(projection);
+                codec.setColumnarGenotypes(true);
+                readAll(file, codec, actual);
+            } else {
+                final VCFCodec codec = new VCFCodec();
+                codec.setDecodingProjection(projection);
+                codec.setColumnarGenotypes(true);
+                readAll(file, codec, actual);
+            }
+            Assert.assertEquals(actual.size(), expected.size());
+            for (int i = 0; i < expected.size(); i++) {
+                Assert.assertEquals(actual.get(i).getNSamples(), expected.get(i).getNSamples());
+                for (int j = 0; j < expected.get(i).getNSamples(); j++) {
+                    assertGenotypesAreEqual(actual.get(i).getGenotype(j), expected.get(i).getGenotype(j));
+                }
+            }
+        }
+    }
+
+    private static void readAll(final File file, final FeatureCodec<VariantContext, ?> codec, final List<VariantContext> records) throws IOException {
+        try (final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(file.getAbsolutePath(), codec, false)) {
+            for (final VariantContext vc : reader.iterator()) {
+                if (vc.hasGenotypes()) {
+                    Assert.assertTrue(vc.getGenotypes() instanceof ColumnarGenotypesContext);
+                }
+                records.add(vc);
+            }
+        }
+    }
+
+    @Test
+    public void testProjectedHeader() {
+        final VCFDecodingProjection projection = VCFDecodingProjection.ALL.withSamples(Arrays.asList("NA00003", "NA00001"));
+        for (final File file : Arrays.asList(EX2_VCF, ex2Bcf)) {
+            try (final VCFFileReader reader = new VCFFileReader(file.toPath(), false, projection)) {
+                final VCFHeader header = reader.getFileHeader();
+                Assert.assertEquals(header.getGenotypeSamples(), Arrays.asList("NA00001", "NA00003"));
+                Assert.assertNotNull(header.getInfoHeaderLine("HOMSEQ"));
+                Assert.assertNotNull(header.getFormatHeaderLine("HQ"));
+            }
+        }
+
+        try (final VCFFileReader reader = new VCFFileReader(EX2_VCF.toPath(), false, VCFDecodingProjection.ALL.withSamples(Collections.emptyList()))) {
+            Assert.assertFalse(reader.getFileHeader().hasGenotypingData());
+            for (final VariantContext vc : reader) {
+                Assert.assertFalse(vc.hasGenotypes());
+            }
+        }
+    }
+
+    @DataProvider(name = "writeProjected")
+    public Object[][] writeProjected() {
+        return new Object[][]{
+                {false, FileExtensions.VCF},
+                {false, FileExtensions.BCF},
+                {true, FileExtensions.VCF},
+                {true, FileExtensions.BCF},
+        };
+    }
+
+    @Test(dataProvider = "writeProjected")
+    public void testWriteProjectedRecords(final boolean bcfInput, final String outputExtension) {
+        // the records are written without decoding their genotypes, which must not copy the raw genotype data
+        for (final List<String> samples : Arrays.asList(null, Collections.singletonList("NA00002"))) {
+            final VCFDecodingProjection projection = VCFDecodingProjection.ALL
+                    .withSamples(samples)
+                    .withFormatKeys(Arrays.asList("GT", "DP"));
+            final File output = createTempFile("projected", outputExtension);
+            try (final VCFFileReader reader = new VCFFileReader((bcfInput ? ex2Bcf : EX2_VCF).toPath(), false, projection);
+                 final VariantContextWriter writer = new VariantContextWriterBuilder()
+                         .setOutputFile(output)
+                         .unsetOption(Options.INDEX_ON_THE_FLY)
+                         .build()) {
+                writer.writeHeader(reader.getFileHeader());
+                reader.forEach(writer::add);
+            }
+            try (final VCFFileReader reader = new VCFFileReader(output, false)) {
+                Assert.assertEquals(reader.getFileHeader().getGenotypeSamples(),
+                        samples == null ? Arrays.asList("NA00001", "NA00002", "NA00003") : samples);
+                for (final VariantContext vc : reader) {
+                    for (final Genotype genotype : vc.getGenotypes()) {
+                        Assert.assertFalse(genotype.hasGQ());
+                        Assert.assertFalse(genotype.hasExtendedAttribute("HQ"));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInfoProjectionKeepsEnd() {
+        final VCFDecodingProjection projection = VCFDecodingProjection.ALL.withInfoKeys(Collections.emptyList());
+        Assert.assertTrue(projection.includesInfoKey(VCFConstants.END_KEY));
+        Assert.assertFalse(projection.includesInfoKey("AF"));
+
+        final VCFCodec codec = new VCFCodec();
+        codec.setDecodingProjection(projection);
+        codec.setVCFHeader(new VCFHeader(), VCFHeaderVersion.VCF4_2);
+        final VariantContext vc = codec.decode("1\t100\t.\tA\t<DEL>\t.\tPASS\tSVTYPE=DEL;END=200;AF=0.5");
+        Assert.assertEquals(vc.getEnd(), 200);
+        Assert.assertEquals(vc.getAttributes().keySet(), Collections.singleton(VCFConstants.END_KEY));
+    }
+
+    @Test(expectedExceptions = TribbleException.class)
+    public void testMissingSample() {
+        new VCFFileReader(EX2_VCF.toPath(), false, VCFDecodingProjection.ALL.withSamples(Collections.singletonList("NOT_A_SAMPLE")));
+    }
+
+    @Test
+    public void testProjectionDefinition() {
+        Assert.assertTrue(VCFDecodingProjection.ALL.includesEverything());
+        Assert.assertNull(VCFDecodingProjection.ALL.getSamples());
+        Assert.assertTrue(VCFDecodingProjection.ALL.includesSample("anything"));
+
+        final VCFDecodingProjection projection = VCFDecodingProjection.ALL
+                .withSamples(Arrays.asList("b", "a"))
+                .withFormatKeys(Collections.singleton("GT"));
+        Assert.assertFalse(projection.includesEverything());
+        Assert.assertEquals(projection.getSamples(), new HashSet<>(Arrays.asList("a", "b")));
+        Assert.assertTrue(projection.includesFormatKey("GT"));
+        Assert.assertFalse(projection.includesFormatKey("DP"));
+        Assert.assertTrue(projection.includesInfoKey("DP"));
+        Assert.assertEquals(projection, VCFDecodingProjection.ALL.withFormatKeys(Collections.singleton("GT")).withSamples(Arrays.asList("a", "b")));
+        Assert.assertEquals(projection.withSamples(null).withFormatKeys(null), VCFDecodingProjection.ALL);
+    }
+
+    @Test
+    public void testDecoderOptionsProjection() {
+        final VCFDecodingProjection projection = VCFDecodingProjection.ALL
+                .withSamples(Collections.singletonList("NA00001"))
+                .withInfoKeys(Collections.singleton("NS"));
+        final Map<String, Genotype> expected = new HashMap<>();
+        try (final VCFFileReader reader = new VCFFileReader(EX2_VCF.toPath(), false, projection)) {
+            for (final VariantContext vc : reader) {
+                expected.put(vc.getContig() + ":" + vc.getStart(), vc.getGenotype(0));
+            }
+        }
+
+        final VariantsDecoderOptions options = new VariantsDecoderOptions().setDecodingProjection(projection);
+        try (final VariantsDecoder decoder = HtsDefaultRegistry.getVariantsResolver()
+                .getVariantsDecoder(new HtsPath(EX2_VCF.getPath()), options)) {
+            Assert.assertEquals(decoder.getHeader().getGenotypeSamples(), Collections.singletonList("NA00001"));
+            int n = 0;
+            for (final VariantContext vc : decoder) {
+                Assert.assertTrue(vc.getAttributes().keySet().stream().allMatch(projection::includesInfoKey));
+                assertGenotypesAreEqual(vc.getGenotype(0), expected.get(vc.getContig() + ":" + vc.getStart()));
+                n++;
+            }
+            Assert.assertEquals(n, expected.size());
+        }
+    }
+}
@@ -5,8 +5,11 @@ import com.google.common.jimfs.Jimfs;
 import htsjdk.HtsjdkTest;
 import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.seekablestream.SeekableStreamFactory;
+import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.tribble.TestUtils;
+import htsjdk.tribble.TribbleException;
+import htsjdk.variant.variantcontext.VariantContext;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -14,11 +17,14 @@ import org.testng.annotations.Test;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.FileSystem;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Created by farjoun on 10/12/17.
@@ -126,4 +132,137 @@ public class VCFFileReaderTest extends HtsjdkTest {
 
     }
 
+    private static List<String> decodeAll(final VCFFileReader reader) {
+        final List<String> records = new ArrayList<>();
+        try (final CloseableIterator<VariantContext> iterator = reader.iterator()) {
+            iterator.forEachRemaining(vc -> records.add(vc.toStringDecodeGenotypes()));
+        }
+        return records;
+    }
+
+    @DataProvider(name = "parallelDecodingData")
+    public Object[][] parallelDecodingData() {
+        final List<Object[]> tests = new ArrayList<>();
+        for (final String fileName : Arrays.asList("VcfThatLacksAnIndex.vcf", "VcfThatLacksAnIndex.vcf.gz",
+                "HiSeq.10000.vcf.bgz", "serialization_test.bcf", "VcfThatLacksAnIndex.bcf",
+                "ILLUMINA.wex.broad_phase2_baseline.20111114.both.exome.genotypes.1000.vcf")) {
+            for (final int threads : new int[]{1, 4}) {
+                for (final int batchSize : new int[]{1, 4096, ParallelVariantContextIterator.DEFAULT_BATCH_SIZE}) {
+                    tests.add(new Object[]{new File(TEST_DATA_DIR, fileName), threads, batchSize, false});
+                    tests.add(new Object[]{new File(TEST_DATA_DIR, fileName), threads, batchSize, true});
+                }
+            }
+        }
+        return tests.toArray(new Object[0][]);
+    }
+
+    @Test(dataProvider = "parallelDecodingData")
+    public void testParallelDecodingMatchesSerial(final File vcf, final int threads, final int batchSize, final boolean fullyDecodeGenotypes) {
+        try (final VCFFileReader serialReader = new VCFFileReader(vcf, false);
+             final VCFFileReader parallelReader = new VCFFileReader(vcf, false)) {
+            serialReader.setDecodingThreads(0);
+            parallelReader.setDecodingThreads(threads);
+            parallelReader.setDecodingBatchSize(batchSize);
+            parallelReader.setFullyDecodeGenotypes(fullyDecodeGenotypes);
+
+            final List<String> expected = decodeAll(serialReader);
+            Assert.assertFalse(expected.isEmpty());
+            Assert.assertEquals(decodeAll(parallelReader), expected);
+        }
+    }
+
+    @Test
+    public void testParallelDecodingDefaultPreservesRecords() {
+        // by default, decoding threads leave genotypes encoded, so records are written back exactly as when serial
+        final File vcf = new File(TEST_DATA_DIR, "ILLUMINA.wex.broad_phase2_baseline.20111114.both.exome.genotypes.1000.vcf");
+        try (final VCFFileReader serialReader = new VCFFileReader(vcf, false);
+             final VCFFileReader parallelReader = new VCFFileReader(vcf, false)) {
+            serialReader.setDecodingThreads(0);
+            parallelReader.setDecodingThreads(4);
+            Assert.assertFalse(parallelReader.getFullyDecodeGenotypes());
+
+            final VCFEncoder encoder = new VCFEncoder(serialReader.getFileHeader(), true, false);
+            final List<String> expected = encodeAll(serialReader, encoder);
+            Assert.assertFalse(expected.isEmpty());
+            Assert.assertEquals(encodeAll(parallelReader, encoder), expected);
+        }
+    }
+
+    private static List<String> encodeAll(final VCFFileReader reader, final VCFEncoder encoder) {
+        final List<String> records = new ArrayList<>();
+        try (final CloseableIterator<VariantContext> iterator = reader.iterator()) {
+            iterator.forEachRemaining(vc -> records.add(encoder.encode(vc)));
+        }
+        return records;
+    }
+
+    @Test
+    public void testParallelDecodingWithProjection() {
+        final File vcf = new File(TEST_DATA_DIR, "VcfThatLacksAnIndex.vcf");
+        final VCFDecodingProjection projection = VCFDecodingProjection.ALL
+                .withSamples(Arrays.asList("NA12891"))
+                .withFormatKeys(Arrays.asList("GT"));
+        try (final VCFFileReader serialReader = new VCFFileReader(vcf.toPath(), false, projection);
+             final VCFFileReader parallelReader = new VCFFileReader(vcf.toPath(), false, projection)) {
+            serialReader.setDecodingThreads(0);
+            parallelReader.setDecodingThreads(2);
+            parallelReader.setDecodingBatchSize(1024);
+
+            final List<String> expected = decodeAll(serialReader);
+            Assert.assertEquals(decodeAll(parallelReader), expected);
+        }
+    }
+
+    @Test
+    public void testParallelDecodingReturnsRecordsBeforeFailure() throws IOException {
+        final List<String> lines = Files.readAllLines(new File(TEST_DATA_DIR, "VcfThatLacksAnIndex.vcf").toPath());
+        final List<Integer> recordIndexes = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            if (!lines.get(i).startsWith("#")) {
+                recordIndexes.add(i);
+            }
+        }
+        final int badRecord = recordIndexes.size() / 2;
+        final int badLine = recordIndexes.get(badRecord);
+        final String[] fields = lines.get(badLine).split("\t");
+        fields[1] = "notAPosition";
+        lines.set(badLine, Arrays.stream(fields).collect(Collectors.joining("\t")));
+
+        final File vcf = File.createTempFile("parallelDecodingFailure.", ".vcf");
+        vcf.deleteOnExit();
+        Files.write(vcf.toPath(), lines);
+
+        try (final VCFFileReader reader = new VCFFileReader(vcf, false)) {
+            reader.setDecodingThreads(3);
+            reader.setDecodingBatchSize(512);
+            final List<VariantContext> records = new ArrayList<>();
+            try (final CloseableIterator<VariantContext> iterator = reader.iterator()) {
+                Assert.assertThrows(TribbleException.class, () -> iterator.forEachRemaining(records::add));
+                Assert.assertEquals(records.size(), badRecord);
+                Assert.assertFalse(iterator.hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void testParallelDecodingCloseBeforeEnd() {
+        final File vcf = new File(TEST_DATA_DIR, "HiSeq.10000.vcf.bgz");
+        try (final VCFFileReader reader = new VCFFileReader(vcf, false)) {
+            reader.setDecodingThreads(4);
+            reader.setDecodingBatchSize(1024);
+            final CloseableIterator<VariantContext> iterator = reader.iterator();
+            for (int i = 0; i < 10; i++) {
+                Assert.assertNotNull(iterator.next());
+            }
+            iterator.close();
+            Assert.assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNegativeDecodingThreads() {
+        try (final VCFFileReader reader = new VCFFileReader(new File(TEST_DATA_DIR, "VcfThatLacksAnIndex.vcf"), false)) {
+            reader.setDecodingThreads(-1);
+        }
+    }
 }
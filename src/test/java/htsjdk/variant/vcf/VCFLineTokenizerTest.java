@@ -0,0 +1,296 @@
+package htsjdk.variant.vcf;
+
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.FeatureReader;
+import htsjdk.tribble.readers.ByteLineIterator;
+import htsjdk.tribble.util.ParsingUtils;
+import htsjdk.variant.VariantBaseTest;
+import htsjdk.variant.variantcontext.ColumnarGenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+public class VCFLineTokenizerTest extends VariantBaseTest {
+
+    private static final File VARIANT_DIR = new File("src/test/resources/htsjdk/variant");
+
+    private static byte[] bytes(final String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @DataProvider(name = "tokenizeStrings")
+    public Object[][] tokenizeStrings() {
+        return new Object[][]{
+                {""}, {"a"}, {"\t"}, {"\ta"}, {"\t\ta"}, {"a\t"}, {"a\tb"}, {"a\t\tb"},
+                {"a\tb\tc"}, {"a\tb\tc\t"}, {"a\tb\tc\td\te"}, {"a\tb\tc\td\te\t"},
+        };
+    }
+
+    @Test(dataProvider = "tokenizeStrings")
+    public void testTokenizeMatchesParsingUtils(final String str) {
+        final VCFLineTokenizer tokenizer = new VCFLineTokenizer();
+        final byte[] buffer = bytes("xx" + str + "yy");
+        for (final boolean condense : new boolean[]{false, true}) {
+            for (int maxTokens = 1; maxTokens <= 4; maxTokens++) {
+                final String[] expected = new String[maxTokens];
+                final int nExpected = ParsingUtils.split(str, expected, '\t', condense);
+                final int n = tokenizer.tokenize(buffer, 2, buffer.length - 2, (byte) '\t', maxTokens, condense);
+                Assert.assertEquals(n, nExpected);
+                Assert.assertEquals(tokenizer.count(), nExpected);
+                for (int i = 0; i < n; i++) {
+                    Assert.assertEquals(VCFLineTokenizer.toString(buffer, tokenizer.start(i), tokenizer.end(i)), expected[i],
+                            "token " + i + " of " + maxTokens + ", condense = " + condense);
+                }
+            }
+        }
+    }
+
+    @Test(dataProvider = "tokenizeStrings")
+    public void testSplitMatchesParsingUtils(final String str) {
+        final VCFLineTokenizer tokenizer = new VCFLineTokenizer();
+        final byte[] buffer = bytes(str);
+        final List<String> expected = ParsingUtils.split(str, '\t');
+        Assert.assertEquals(tokenizer.split(buffer, 0, buffer.length, (byte) '\t'), expected.size());
+        final List<String> actual = new ArrayList<>();
+        for (int i = 0; i < tokenizer.count(); i++) {
+            actual.add(VCFLineTokenizer.toString(buffer, tokenizer.start(i), tokenizer.end(i)));
+        }
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test
+    public void testTokenizeManyTokens() {
+        final VCFLineTokenizer tokenizer = new VCFLineTokenizer();
+        final StringBuilder line = new StringBuilder("0");
+        for (int i = 1; i < 1000; i++) {
+            line.append('\t').append(i);
+        }
+        final byte[] buffer = bytes(line.toString());
+        Assert.assertEquals(tokenizer.tokenize(buffer, 0, buffer.length, (byte) '\t', Integer.MAX_VALUE, false), 1000);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(VCFLineTokenizer.parseInt(buffer, tokenizer.start(i), tokenizer.end(i)), i);
+        }
+    }
+
+    @DataProvider(name = "ints")
+    public Object[][] ints() {
+        return new Object[][]{
+                {"0"}, {"7"}, {"-7"}, {"+7"}, {"-0"}, {"123456789"}, {"-123456789"}, {"2147483647"}, {"-2147483648"},
+                {"2147483648"}, {"-2147483649"}, {"00000000000012"}, {""}, {"-"}, {"+"}, {"."}, {"1.5"}, {"1a"}, {" 1"}, {"1e3"},
+        };
+    }
+
+    @Test(dataProvider = "ints")
+    public void testParseIntMatchesParseInt(final String str) {
+        final byte[] buffer = bytes("9" + str + "9");
+        Integer expected;
+        try {
+            expected = Integer.parseInt(str);
+        } catch (final NumberFormatException e) {
+            expected = null;
+        }
+        Integer actual;
+        try {
+            actual = VCFLineTokenizer.parseInt(buffer, 1, buffer.length - 1);
+        } catch (final NumberFormatException e) {
+            actual = null;
+        }
+        Assert.assertEquals(actual, expected);
+    }
+
+    @DataProvider(name = "doubles")
+    public Object[][] doubles() {
+        return new Object[][]{
+                {"0"}, {"-0"}, {"0.0"}, {"-0.0"}, {"1"}, {"+1"}, {"1."}, {".5"}, {"-.5"}, {"3.14159"}, {"29.75"},
+                {"0.1"}, {"0.3"}, {"123456789012345"}, {"1234567890123456789"}, {"0.000000000000000000000001"},
+                {"1.00000000000000000001"}, {"1e10"}, {"1E-5"}, {"1.5f"}, {"1.5d"}, {"NaN"}, {"nan"}, {"Inf"}, {"-inf"},
+                {"+Infinity"}, {"-Infinity"}, {"0x1p3"}, {""}, {"."}, {"-"}, {"+."}, {"1.2.3"}, {"abc"}, {" 1"},
+        };
+    }
+
+    @Test(dataProvider = "doubles")
+    public void testParseDoubleMatchesParseVcfDouble(final String str) {
+        assertParseDoubleMatches(str);
+    }
+
+    @Test
+    public void testParseRandomDoubles() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            final double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 4);
+            // values as they are written to VCFs, and with fewer digits
+            assertParseDoubleMatches(VCFEncoder.formatVCFDouble(value));
+            assertParseDoubleMatches(String.format("%.3f", value));
+            assertParseDoubleMatches(Double.toString(value));
+        }
+    }
+
+    private static void assertParseDoubleMatches(final String str) {
+        final byte[] buffer = bytes(":" + str + ":");
+        Double expected;
+        try {
+            expected = VCFUtils.parseVcfDouble(str);
+        } catch (final NumberFormatException e) {
+            expected = null;
+        }
+        Double actual;
+        try {
+            actual = VCFLineTokenizer.parseDouble(buffer, 1, buffer.length - 1);
+        } catch (final NumberFormatException e) {
+            actual = null;
+        }
+        // compare the bits, so that 0.0 and -0.0 differ
+        Assert.assertEquals(actual == null ? null : Double.doubleToRawLongBits(actual),
+                expected == null ? null : Double.doubleToRawLongBits(expected), str);
+    }
+
+    @Test
+    public void testParseInts() {
+        final byte[] buffer = bytes("10,0,-3,+4");
+        Assert.assertEquals(VCFLineTokenizer.parseInts(buffer, 0, buffer.length, (byte) ','), new int[]{10, 0, -3, 4});
+        Assert.assertEquals(VCFLineTokenizer.parseInts(buffer, 0, 2, (byte) ','), new int[]{10});
+        Assert.assertNull(VCFLineTokenizer.parseInts(bytes("1,.,3"), 0, 5, (byte) ','));
+        Assert.assertNull(VCFLineTokenizer.parseInts(bytes("1,,3"), 0, 4, (byte) ','));
+    }
+
+    @Test
+    public void testRegionEquals() {
+        final byte[] buffer = bytes("PASS;q10");
+        Assert.assertTrue(VCFLineTokenizer.regionEquals(buffer, 0, 4, "PASS"));
+        Assert.assertFalse(VCFLineTokenizer.regionEquals(buffer, 0, 4, "PAS"));
+        Assert.assertFalse(VCFLineTokenizer.regionEquals(buffer, 0, 3, "PASS"));
+        Assert.assertTrue(VCFLineTokenizer.regionEquals(buffer, 5, 8, bytes("q10")));
+        Assert.assertFalse(VCFLineTokenizer.regionEquals(buffer, 5, 8, bytes("q11")));
+        Assert.assertFalse(VCFLineTokenizer.regionEquals(bytes("é"), 0, 2, "é"));
+        Assert.assertEquals(VCFLineTokenizer.indexOf(buffer, 0, buffer.length, (byte) ';'), 4);
+        Assert.assertEquals(VCFLineTokenizer.indexOf(buffer, 0, 4, (byte) ';'), -1);
+    }
+
+    @DataProvider(name = "variantFiles")
+    public Object[][] variantFiles() {
+        return new Object[][]{
+                {"test1.vcf"},
+                {"ex2.vcf"},
+                {"phased.vcf"},
+                {"test_withGLandPL.vcf"},
+                {"test_withNanQual.vcf"},
+                {"test_withPosInfQual.vcf"},
+                {"HiSeq.10000.vcf"},
+                {"HiSeq.10000.vcf.bgz"},
+                {"NA12891.vcf.gz"},
+                {"dbsnp_135.b37.1000.vcf"},
+                {"structuralvariants.vcf"},
+                {"Vcf4.2WithSourceVersionInfoFields.vcf"},
+                {"ILLUMINA.wex.broad_phase2_baseline.20111114.both.exome.genotypes.1000.vcf"},
+                {"vcf43/all43Features.vcf"},
+                {"vcf43/all43FeaturesCompressed.vcf.gz"},
+        };
+    }
+
+    private static List<VariantContext> read(final String file, final boolean byteDecoding, final boolean columnar,
+                                             final VCFDecodingProjection projection) throws IOException {
+        final VCFCodec codec = new VCFCodec();
+        codec.setByteDecoding(byteDecoding);
+        codec.setColumnarGenotypes(columnar);
+        codec.setDecodingProjection(projection);
+        final List<VariantContext> records = new ArrayList<>();
+        try (final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(
+                new File(VARIANT_DIR, file).getAbsolutePath(), codec, false)) {
+            for (final VariantContext vc : reader.iterator()) {
+                records.add(vc);
+            }
+        }
+        return records;
+    }
+
+    private static void assertSameRecords(final List<VariantContext> actual, final List<VariantContext> expected) {
+        Assert.assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertVariantContextsAreEqual(actual.get(i), expected.get(i));
+            // the String form includes every attribute and genotype field, with their types
+            Assert.assertEquals(actual.get(i).toStringDecodeGenotypes(), expected.get(i).toStringDecodeGenotypes());
+            for (int j = 0; j < expected.get(i).getNSamples(); j++) {
+                assertGenotypesAreEqual(actual.get(i).getGenotype(j), expected.get(i).getGenotype(j));
+            }
+        }
+    }
+
+    @Test(dataProvider = "variantFiles")
+    public void testByteDecodingMatchesStringDecoding(final String file) throws IOException {
+        final List<VariantContext> expected = read(file, false, false, VCFDecodingProjection.ALL);
+        Assert.assertFalse(expected.isEmpty());
+        assertSameRecords(read(file, true, false, VCFDecodingProjection.ALL), expected);
+    }
+
+    @Test(dataProvider = "variantFiles")
+    public void testByteDecodingColumnarGenotypes(final String file) throws IOException {
+        final List<VariantContext> actual = read(file, true, true, VCFDecodingProjection.ALL);
+        for (final VariantContext vc : actual) {
+            if (vc.hasGenotypes()) {
+                Assert.assertTrue(vc.getGenotypes() instanceof ColumnarGenotypesContext);
+            }
+        }
+        assertSameRecords(actual, read(file, false, true, VCFDecodingProjection.ALL));
+    }
+
+    @Test
+    public void testByteDecodingWithProjection() throws IOException {
+        final String file = "ILLUMINA.wex.broad_phase2_baseline.20111114.both.exome.genotypes.1000.vcf";
+        final VCFDecodingProjection projection = VCFDecodingProjection.ALL
+                .withSamples(Arrays.asList("NA21143", "HG00100", "HG00103"))
+                .withInfoKeys(Arrays.asList("AC", "AN"))
+                .withFormatKeys(Arrays.asList("GT", "GQ"));
+        final List<VariantContext> actual = read(file, true, false, projection);
+        assertSameRecords(actual, read(file, false, false, projection));
+        Assert.assertEquals(actual.get(0).getNSamples(), 3);
+    }
+
+    @Test
+    public void testMakeSourceFromStream() throws IOException {
+        final VCFCodec codec = new VCFCodec();
+        codec.setByteDecoding(false);
+        Assert.assertFalse(codec.makeSourceFromStream(new ByteArrayInputStream(new byte[0])) instanceof ByteLineIterator);
+        codec.setByteDecoding(true);
+        Assert.assertTrue(codec.isByteDecoding());
+        final String vcf = "##fileformat=VCFv4.2\n" +
+                "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tS1\tS2\n" +
+                "1\t100\trs1\tA\tC,G\t29.5\tPASS\tDP=10;AF=0.5,0.25;DB\tGT:DP:AD\t0|1:4:1,3,0\t./.:.:.\r\n" +
+                "1\t200\t.\tAC\tA\t.\tq10;s50\t.\tGT\t1/1\t0/0\n";
+        final ByteLineIterator source = (ByteLineIterator) codec.makeSourceFromStream(new ByteArrayInputStream(bytes(vcf)));
+        final VCFHeader header = (VCFHeader) codec.readActualHeader(source);
+        Assert.assertEquals(header.getGenotypeSamples(), Arrays.asList("S1", "S2"));
+
+        final VariantContext first = codec.decode(source);
+        Assert.assertTrue(first.getGenotypes() instanceof LazyGenotypesContext);
+        Assert.assertEquals(first.getStart(), 100);
+        Assert.assertEquals(first.getID(), "rs1");
+        Assert.assertEquals(first.getPhredScaledQual(), 29.5);
+        Assert.assertEquals(first.getAttribute("AF"), Arrays.asList("0.5", "0.25"));
+        Assert.assertEquals(first.getAttribute("DB"), true);
+        Assert.assertEquals(first.getGenotype("S1").getAD(), new int[]{1, 3, 0});
+        Assert.assertEquals(first.getGenotype("S1").getDP(), 4);
+        Assert.assertTrue(first.getGenotype("S1").isPhased());
+        Assert.assertTrue(first.getGenotype("S2").isNoCall());
+        Assert.assertFalse(first.getGenotype("S2").hasDP());
+
+        final VariantContext second = codec.decode(source);
+        Assert.assertEquals(second.getEnd(), 201);
+        Assert.assertFalse(second.hasID());
+        Assert.assertFalse(second.hasLog10PError());
+        Assert.assertEquals(second.getFilters(), new HashSet<>(Arrays.asList("q10", "s50")));
+        Assert.assertTrue(second.getGenotype("S1").isHomVar());
+        Assert.assertTrue(codec.isDone(source));
+    }
+}